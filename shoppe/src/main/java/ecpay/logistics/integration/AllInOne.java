@@ -1,7 +1,14 @@
 package ecpay.logistics.integration;
 
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -112,6 +119,21 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String create(Object obj){
+		String result = send(prepareCreate(obj));
+		System.out.println(result);
+		return result;
+	}
+	
+	/**
+	 * 物流訂單產生（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> createAsync(Object obj){
+		return sendAsync(() -> prepareCreate(obj));
+	}
+	
+	private PreparedCall prepareCreate(Object obj){
 		boolean isFormPost;
 		if(obj instanceof CreateCVSObj){
 			((CreateCVSObj) obj).setPlatformID(PlatformID);
@@ -133,28 +155,24 @@ public class AllInOne extends AllInOneBase{
 			isFormPost = ((CreateHomeObj) obj).getClientReplyURL().isEmpty()? false: true;
 		} else
 			throw new EcpayException(ErrorMessage.UNDIFINED_OBJECT);
-		String result = "";
 		try{
 			VerifyCreate verify = new VerifyCreate();
 			createUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
 			verify.verifyCreate(obj);
 			if(isFormPost){
-				result = genHtmlCode(obj, createUrl, true);
-			} else{
-				String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
-				log.info("Create generate CheckMacValue: "+CheckMacValue);
-				String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
-				log.info("Create post String: "+httpValue);
-				result = EcpayFunction.httpPost(createUrl, httpValue, "UTF-8");
+				return PreparedCall.html(genHtmlCode(obj, createUrl, true));
 			}
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			log.info("Create generate CheckMacValue: "+CheckMacValue);
+			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
+			log.info("Create post String: "+httpValue);
+			return PreparedCall.post(createUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		System.out.println(result);
-		return result;
 	}
 	
 	/**
@@ -163,6 +181,19 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String returnHome(ReturnHomeObj obj){
+		return send(prepareReturnHome(obj));
+	}
+	
+	/**
+	 * 宅配逆物流訂單（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> returnHomeAsync(ReturnHomeObj obj){
+		return sendAsync(() -> prepareReturnHome(obj));
+	}
+	
+	private PreparedCall prepareReturnHome(ReturnHomeObj obj){
 		obj.setPlatformID(PlatformID);
 		if(!PlatformID.isEmpty() && obj.getMerchantID().isEmpty()){
 			obj.setMerchantID(MerchantID);
@@ -171,24 +202,21 @@ public class AllInOne extends AllInOneBase{
 			obj.setMerchantID(MerchantID);
 		}
 		log.info("ReturnHome params: "+obj.toString());
-		String result = "";
-		String CheckMacValue = "";
 		try{
 			VerifyReturnHome verify = new VerifyReturnHome();
 			returnHomeUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
 			verify.verifyReturnHome(obj);
-			CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
 			log.info("ReturnHome generate CheckMacValue: "+CheckMacValue);
 			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
 			log.info("ReturnHome post String: "+httpValue);
-			result = EcpayFunction.httpPost(returnHomeUrl, httpValue, "UTF-8");
+			return PreparedCall.post(returnHomeUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		return result;
 	}
 	
 	/**
@@ -197,6 +225,19 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String returnCVS(ReturnCVSObj obj){
+		return send(prepareReturnCVS(obj));
+	}
+	
+	/**
+	 * 超商取貨逆物流訂單(全家超商 B2C)（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> returnCVSAsync(ReturnCVSObj obj){
+		return sendAsync(() -> prepareReturnCVS(obj));
+	}
+	
+	private PreparedCall prepareReturnCVS(ReturnCVSObj obj){
 		obj.setPlatformID(PlatformID);
 		if(!PlatformID.isEmpty() && obj.getMerchantID().isEmpty()){
 			obj.setMerchantID(MerchantID);
@@ -205,24 +246,21 @@ public class AllInOne extends AllInOneBase{
 			obj.setMerchantID(MerchantID);
 		}
 		log.info("ReturnCVS params: "+obj.toString());
-		String result = "";
-		String CheckMacValue = "";
 		try{
 			VerifyReturnCVS verify = new VerifyReturnCVS();
 			returnCVSUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
 			verify.verifyReturnCVS(obj);
-			CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
 			log.info("ReturnCVS generate CheckMacValue: "+CheckMacValue);
 			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
 			log.info("ReturnCVS post String: "+httpValue);
-			result = EcpayFunction.httpPost(returnCVSUrl, httpValue, "UTF-8");
+			return PreparedCall.post(returnCVSUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		return result;
 	}
 	
 	/**
@@ -231,6 +269,19 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String logisticsCheckAccounts(LogisticsCheckAccountsObj obj){
+		return send(prepareLogisticsCheckAccounts(obj));
+	}
+	
+	/**
+	 * 全家逆物流核帳(全家超商 B2C)（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> logisticsCheckAccountsAsync(LogisticsCheckAccountsObj obj){
+		return sendAsync(() -> prepareLogisticsCheckAccounts(obj));
+	}
+	
+	private PreparedCall prepareLogisticsCheckAccounts(LogisticsCheckAccountsObj obj){
 		obj.setPlatformID(PlatformID);
 		if(!PlatformID.isEmpty() && obj.getMerchantID().isEmpty()){
 			obj.setMerchantID(MerchantID);
@@ -239,23 +290,20 @@ public class AllInOne extends AllInOneBase{
 			obj.setMerchantID(MerchantID);
 		}
 		log.info("LogisticsCheckAccounts params: "+obj.toString());
-		String result = "";
-		String CheckMacValue = "";
 		try{
 			VerifyLogisticsCheckAccounts verify = new VerifyLogisticsCheckAccounts();
 			logisticsCheckAccountsUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
-			CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
 			log.info("LogisticsCheckAccounts generate CheckMacValue: "+CheckMacValue);
 			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
 			log.info("LogisticsCheckAccounts post string: "+httpValue);
-			result = EcpayFunction.httpPost(logisticsCheckAccountsUrl, httpValue, "UTF-8");
+			return PreparedCall.post(logisticsCheckAccountsUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		return result;
 	}
 	
 	/**
@@ -264,6 +312,19 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String returnHiLifeCVS(ReturnHiLifeCVSObj obj){
+		return send(prepareReturnHiLifeCVS(obj));
+	}
+	
+	/**
+	 * 超商取貨逆物流訂單(萊爾富超商 B2C)（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> returnHiLifeCVSAsync(ReturnHiLifeCVSObj obj){
+		return sendAsync(() -> prepareReturnHiLifeCVS(obj));
+	}
+	
+	private PreparedCall prepareReturnHiLifeCVS(ReturnHiLifeCVSObj obj){
 		obj.setPlatformID(PlatformID);
 		if(!PlatformID.isEmpty() && obj.getMerchantID().isEmpty()){
 			obj.setMerchantID(MerchantID);
@@ -272,24 +333,21 @@ public class AllInOne extends AllInOneBase{
 			obj.setMerchantID(MerchantID);
 		}
 		log.info("ReturnHiLifeCVS params: "+obj.toString());
-		String result = "";
-		String CheckMacValue = "";
 		try{
 			VerifyReturnHiLifeCVS verify = new VerifyReturnHiLifeCVS();
 			returnHiLifeCVSUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
 			verify.verifyReturnHiLifeCVS(obj);
-			CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
 			log.info("ReturnHiLifeCVS generate CheckMacValue: "+CheckMacValue);
 			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
 			log.info("ReturnHiLifeCVS post string: "+httpValue);
-			result = EcpayFunction.httpPost(returnHiLifeCVSUrl, httpValue, "UTF-8");
+			return PreparedCall.post(returnHiLifeCVSUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		return result;
 	}
 	
 	/**
@@ -298,6 +356,19 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String returnUniMartCVS(ReturnUniMartCVSObj obj){
+		return send(prepareReturnUniMartCVS(obj));
+	}
+	
+	/**
+	 * 超商取貨逆物流訂單(統一超商 B2C)（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> returnUniMartCVSAsync(ReturnUniMartCVSObj obj){
+		return sendAsync(() -> prepareReturnUniMartCVS(obj));
+	}
+	
+	private PreparedCall prepareReturnUniMartCVS(ReturnUniMartCVSObj obj){
 		obj.setPlatformID(PlatformID);
 		if(!PlatformID.isEmpty() && obj.getMerchantID().isEmpty()){
 			obj.setMerchantID(MerchantID);
@@ -306,24 +377,21 @@ public class AllInOne extends AllInOneBase{
 			obj.setMerchantID(MerchantID);
 		}
 		log.info("ReturnUniMartCVS params: "+obj.toString());
-		String result = "";
-		String CheckMacValue = "";
 		try{
 			VerifyReturnUniMartCVS verify = new VerifyReturnUniMartCVS();
 			returnUniMartCVSUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
 			verify.verifyReturnUniMartCVS(obj);
-			CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
 			log.info("ReturnUniMartCVS generate CheckMacValue: "+CheckMacValue);
 			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
 			log.info("ReturnUniMartCVS post string: "+httpValue);
-			result = EcpayFunction.httpPost(returnUniMartCVSUrl, httpValue, "UTF-8");
+			return PreparedCall.post(returnUniMartCVSUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		return result;
 	}
 	
 	/**
@@ -332,6 +400,19 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String updateShipmentInfo(UpdateShipmentInfoObj obj){
+		return send(prepareUpdateShipmentInfo(obj));
+	}
+	
+	/**
+	 * 提供廠商修改出貨日期、取貨門市(統一超商 B2C)（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> updateShipmentInfoAsync(UpdateShipmentInfoObj obj){
+		return sendAsync(() -> prepareUpdateShipmentInfo(obj));
+	}
+	
+	private PreparedCall prepareUpdateShipmentInfo(UpdateShipmentInfoObj obj){
 		obj.setPlatformID(PlatformID);
 		if(!PlatformID.isEmpty() && obj.getMerchantID().isEmpty()){
 			obj.setMerchantID(MerchantID);
@@ -340,24 +421,21 @@ public class AllInOne extends AllInOneBase{
 			obj.setMerchantID(MerchantID);
 		}
 		log.info("UpdateShipmentInfo params: "+obj.toString());
-		String result = "";
-		String CheckMacValue = "";
 		try{
 			VerifyUpdateShipmentInfo verify = new VerifyUpdateShipmentInfo();
 			updateShipmentInfoUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
 			verify.verifyUpdateShipmentInfo(obj);
-			CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
 			log.info("UpdateShipmentInfo generate CheckMacValue: "+CheckMacValue);
 			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
 			log.info("UpdateShipmentInfo post string: "+httpValue);
-			result = EcpayFunction.httpPost(updateShipmentInfoUrl, httpValue, "UTF-8");
+			return PreparedCall.post(updateShipmentInfoUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		return result;
 	}
 	
 	/**
@@ -366,6 +444,19 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String updateStoreInfo(UpdateStoreInfoObj obj){
+		return send(prepareUpdateStoreInfo(obj));
+	}
+	
+	/**
+	 * 更新門市(統一超商C2C)（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> updateStoreInfoAsync(UpdateStoreInfoObj obj){
+		return sendAsync(() -> prepareUpdateStoreInfo(obj));
+	}
+	
+	private PreparedCall prepareUpdateStoreInfo(UpdateStoreInfoObj obj){
 		obj.setPlatformID(PlatformID);
 		if(!PlatformID.isEmpty() && obj.getMerchantID().isEmpty()){
 			obj.setMerchantID(MerchantID);
@@ -374,24 +465,21 @@ public class AllInOne extends AllInOneBase{
 			obj.setMerchantID(MerchantID);
 		}
 		log.info("UpdateStoreInfo params: "+obj.toString());
-		String result = "";
-		String CheckMacValue = "";
 		try{
 			VerifyUpdateStoreInfo verify = new VerifyUpdateStoreInfo();
 			updateStoreInfoUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
 			verify.verifyUpdateStoreInfo(obj);
-			CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
 			log.info("UpdateStoreInfo generate CheckMacValue: "+CheckMacValue);
 			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
 			log.info("UpdateStoreInfo post string: "+httpValue);
-			result = EcpayFunction.httpPost(updateStoreInfoUrl, httpValue, "UTF-8");
+			return PreparedCall.post(updateStoreInfoUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		return result;
 	}
 	
 	/**
@@ -400,6 +488,19 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String cancelC2COrder(CancelC2COrderObj obj){
+		return send(prepareCancelC2COrder(obj));
+	}
+	
+	/**
+	 * 取消訂單(統一超商C2C)（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> cancelC2COrderAsync(CancelC2COrderObj obj){
+		return sendAsync(() -> prepareCancelC2COrder(obj));
+	}
+	
+	private PreparedCall prepareCancelC2COrder(CancelC2COrderObj obj){
 		obj.setPlatformID(PlatformID);
 		if(!PlatformID.isEmpty() && obj.getMerchantID().isEmpty()){
 			obj.setMerchantID(MerchantID);
@@ -408,23 +509,20 @@ public class AllInOne extends AllInOneBase{
 			obj.setMerchantID(MerchantID);
 		}
 		log.info("CancelC2COrder params: "+obj.toString());
-		String result = "";
-		String CheckMacValue = "";
 		try{
 			VerifyCancelC2COrder verify = new VerifyCancelC2COrder();
 			cancelC2COrderUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
-			CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
 			log.info("CancelC2COrder generate CheckMacValue: "+CheckMacValue);
 			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
 			log.info("CancelC2COrder post string: "+httpValue);
-			result = EcpayFunction.httpPost(cancelC2COrderUrl, httpValue, "UTF-8");
+			return PreparedCall.post(cancelC2COrderUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		return result;
 	}
 	
 	/**
@@ -433,6 +531,19 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String queryLogisticsTradeInfo(QueryLogisticsTradeInfoObj obj){
+		return send(prepareQueryLogisticsTradeInfo(obj));
+	}
+	
+	/**
+	 * 物流訂單查詢（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> queryLogisticsTradeInfoAsync(QueryLogisticsTradeInfoObj obj){
+		return sendAsync(() -> prepareQueryLogisticsTradeInfo(obj));
+	}
+	
+	private PreparedCall prepareQueryLogisticsTradeInfo(QueryLogisticsTradeInfoObj obj){
 		obj.setPlatformID(PlatformID);
 		if(!PlatformID.isEmpty() && obj.getMerchantID().isEmpty()){
 			obj.setMerchantID(MerchantID);
@@ -442,23 +553,20 @@ public class AllInOne extends AllInOneBase{
 		}
 		obj.setTimeStamp(EcpayFunction.genUnixTimeStamp());
 		log.info("QueryLogisticsTradeInfo params: "+obj.toString());
-		String result = "";
-		String CheckMacValue = "";
 		try{
 			VerifyQueryLogisticsTradeInfo verify = new VerifyQueryLogisticsTradeInfo();
 			queryLogisticsTradeInfoUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
-			CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
 			log.info("QueryLogisticsTradeInfo generate CheckMacValue: "+CheckMacValue);
 			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
 			log.info("QueryLogisticsTradeInfo post string: "+httpValue);
-			result = EcpayFunction.httpPost(queryLogisticsTradeInfoUrl, httpValue, "UTF-8");
+			return PreparedCall.post(queryLogisticsTradeInfoUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		return result;
 	}
 	
 	/**
@@ -561,6 +669,19 @@ public class AllInOne extends AllInOneBase{
 	 * @return string
 	 */
 	public String createTestData(CreateTestDataObj obj){
+		return send(prepareCreateTestData(obj));
+	}
+	
+	/**
+	 * 產生 B2C 測標資料（非同步）
+	 * @param obj
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<String> createTestDataAsync(CreateTestDataObj obj){
+		return sendAsync(() -> prepareCreateTestData(obj));
+	}
+	
+	private PreparedCall prepareCreateTestData(CreateTestDataObj obj){
 		boolean isFormPost = obj.getClientReplyURL().isEmpty()? false: true;
 		obj.setPlatformID(PlatformID);
 		if(!PlatformID.isEmpty() && obj.getMerchantID().isEmpty()){
@@ -570,27 +691,204 @@ public class AllInOne extends AllInOneBase{
 			obj.setMerchantID(MerchantID);
 		}
 		log.info("CreateTestData params: "+obj.toString());
-		String result = "";
 		try{
 			VerifyCreateTestData verify = new VerifyCreateTestData();
 			createTestDataUrl = verify.getAPIUrl(operatingMode);
 			verify.verifyParams(obj);
 			if(isFormPost){
-				result = genHtmlCode(obj, createTestDataUrl, true);
-			} else{
-				String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
-				log.info("CreateTestData generate CheckMacValue: "+CheckMacValue);
-				String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
-				log.info("CreateTestData post string: "+httpValue);
-				result = EcpayFunction.httpPost(createTestDataUrl, httpValue, "UTF-8");
+				return PreparedCall.html(genHtmlCode(obj, createTestDataUrl, true));
 			}
-			
+			String CheckMacValue = EcpayFunction.genCheckMacValue(HashKey, HashIV, obj);
+			log.info("CreateTestData generate CheckMacValue: "+CheckMacValue);
+			String httpValue = EcpayFunction.genHttpValue(obj, CheckMacValue);
+			log.info("CreateTestData post string: "+httpValue);
+			return PreparedCall.post(createTestDataUrl, httpValue);
 		} catch(EcpayException e){
 			e.ShowExceptionMessage();
 			log.error(e.getNewExceptionMessage());
 			throw new EcpayException(e.getNewExceptionMessage());
 		}
-		return result;
+	}
+	
+	/**
+	 * 批次送出多筆請求，同時進行中的請求不超過 parallelism 筆，一筆完成才送出下一筆
+	 * 例：allInOne.bulk(list, allInOne::queryLogisticsTradeInfoAsync, 8)
+	 * @param objs
+	 * @param call 對應的非同步方法
+	 * @param parallelism 同時進行的請求數上限
+	 * @return BulkResult 依原本順序的回應與錯誤，全部完成後才結束
+	 */
+	public <T> CompletableFuture<BulkResult<T>> bulk(List<T> objs, Function<T, CompletableFuture<String>> call, int parallelism){
+		BulkResult<T> result = new BulkResult<T>(objs);
+		CompletableFuture<BulkResult<T>> done = new CompletableFuture<BulkResult<T>>();
+		if(objs.isEmpty()){
+			done.complete(result);
+			return done;
+		}
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger remaining = new AtomicInteger(objs.size());
+		int window = Math.max(1, Math.min(parallelism, objs.size()));
+		for(int i = 0; i < window; i++){
+			bulkNext(objs, call, result, next, remaining, done);
+		}
+		return done;
+	}
+	
+	private <T> void bulkNext(List<T> objs, Function<T, CompletableFuture<String>> call, BulkResult<T> result,
+			AtomicInteger next, AtomicInteger remaining, CompletableFuture<BulkResult<T>> done){
+		// 已經完成的（例如參數驗證失敗）直接在迴圈中處理，避免遞迴過深
+		while(true){
+			int index = next.getAndIncrement();
+			if(index >= objs.size()){
+				return;
+			}
+			CompletableFuture<String> future;
+			try{
+				future = call.apply(objs.get(index));
+			} catch(RuntimeException | EcpayException e){
+				future = CompletableFuture.failedFuture(e);
+			}
+			if(!future.isDone()){
+				future.whenComplete((response, error) -> {
+					if(bulkRecord(result, index, response, error, remaining, done)){
+						bulkNext(objs, call, result, next, remaining, done);
+					}
+				});
+				return;
+			}
+			String response = null;
+			Throwable error = null;
+			try{
+				response = future.join();
+			} catch(CompletionException | CancellationException e){
+				error = e;
+			}
+			if(!bulkRecord(result, index, response, error, remaining, done)){
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * @return 是否還有未完成的請求
+	 */
+	private static <T> boolean bulkRecord(BulkResult<T> result, int index, String response, Throwable error,
+			AtomicInteger remaining, CompletableFuture<BulkResult<T>> done){
+		if(error != null){
+			result.errors[index] = unwrap(error);
+		} else{
+			result.responses[index] = response;
+		}
+		if(remaining.decrementAndGet() == 0){
+			done.complete(result);
+			return false;
+		}
+		return true;
+	}
+	
+	private String send(PreparedCall call){
+		if(call.html != null){
+			return call.html;
+		}
+		try{
+			return getTransport().post(call.url, call.body, "UTF-8");
+		} catch(EcpayException e){
+			e.ShowExceptionMessage();
+			log.error(e.getNewExceptionMessage());
+			throw new EcpayException(e.getNewExceptionMessage());
+		}
+	}
+	
+	private CompletableFuture<String> sendAsync(Supplier<PreparedCall> prepare){
+		PreparedCall call;
+		try{
+			call = prepare.get();
+		} catch(EcpayException e){
+			return CompletableFuture.failedFuture(e);
+		}
+		if(call.html != null){
+			return CompletableFuture.completedFuture(call.html);
+		}
+		return getTransport().postAsync(call.url, call.body, "UTF-8").whenComplete((response, error) -> {
+			if(error != null){
+				Throwable cause = unwrap(error);
+				log.error(cause instanceof EcpayException ? ((EcpayException) cause).getNewExceptionMessage() : cause.getMessage());
+			}
+		});
+	}
+	
+	private static Throwable unwrap(Throwable error){
+		while(error instanceof CompletionException && error.getCause() != null){
+			error = error.getCause();
+		}
+		return error;
+	}
+	
+	/**
+	 * 已驗證並簽章的請求；需要導頁的表單則直接是 html
+	 */
+	private final static class PreparedCall{
+		private final String url;
+		private final String body;
+		private final String html;
+		
+		private PreparedCall(String url, String body, String html){
+			this.url = url;
+			this.body = body;
+			this.html = html;
+		}
+		
+		private static PreparedCall post(String url, String body){
+			return new PreparedCall(url, body, null);
+		}
+		
+		private static PreparedCall html(String html){
+			return new PreparedCall(null, null, html);
+		}
+	}
+	
+	/**
+	 * 批次請求的結果，responses 與 errors 的索引對應傳入的順序，成功的筆數 errors 為 null
+	 */
+	public final static class BulkResult<T>{
+		private final List<T> objs;
+		private final String[] responses;
+		private final Throwable[] errors;
+		
+		private BulkResult(List<T> objs){
+			this.objs = objs;
+			this.responses = new String[objs.size()];
+			this.errors = new Throwable[objs.size()];
+		}
+		
+		public int size(){
+			return objs.size();
+		}
+		
+		public T getObj(int index){
+			return objs.get(index);
+		}
+		
+		public String getResponse(int index){
+			return responses[index];
+		}
+		
+		public Throwable getError(int index){
+			return errors[index];
+		}
+		
+		public boolean isSuccess(int index){
+			return errors[index] == null;
+		}
+		
+		public int getFailureCount(){
+			int count = 0;
+			for(Throwable error : errors){
+				if(error != null)
+					count++;
+			}
+			return count;
+		}
 	}
 	
 	private String genHtmlCode(Object obj, String url, boolean needCheckMacValue){
@@ -8,6 +8,8 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import ecpay.logistics.integration.ecpayOperator.EcpayFunction;
+import ecpay.logistics.integration.ecpayOperator.HttpTransport;
+import ecpay.logistics.integration.ecpayOperator.PooledHttpTransport;
 import ecpay.logistics.integration.errorMsg.ErrorMessage;
 import ecpay.logistics.integration.exception.EcpayException;
 
@@ -37,6 +39,7 @@ public class AllInOneBase {
 	protected static String printHILIFEC2COrderInfoUrl;
 	protected static String printOKMARTC2COrderInfoUrl;
 	protected static Document verifyDoc;
+	private static volatile HttpTransport transport;
 	public AllInOneBase(){
 //		try{
 			Document doc;
@@ -72,8 +75,56 @@ public class AllInOneBase {
 			if(HashKey == null){
 				throw new EcpayException(ErrorMessage.MInfo_NOT_SETTING);
 			}
+			// HttpClient（選填）
+			if(transport == null){
+				initTransport(doc);
+			}
 //		} catch(UnsupportedEncodingException e){
 //			e.printStackTrace();
 //		}
 	}
+	
+	/**
+	 * 依設定檔的 HttpClient 逾時設定建立連線池，未設定時使用共用的預設實例
+	 * @param doc
+	 */
+	private static synchronized void initTransport(Document doc){
+		if(transport != null){
+			return;
+		}
+		NodeList nodeList = doc.getElementsByTagName("HttpClient");
+		if(nodeList.getLength() == 0){
+			transport = PooledHttpTransport.shared();
+			return;
+		}
+		Element ele = (Element)nodeList.item(0);
+		long connectTimeout = readMillis(ele, "ConnectTimeoutMillis", PooledHttpTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+		long requestTimeout = readMillis(ele, "RequestTimeoutMillis", PooledHttpTransport.DEFAULT_REQUEST_TIMEOUT_MILLIS);
+		transport = new PooledHttpTransport(connectTimeout, requestTimeout);
+	}
+	
+	private static long readMillis(Element ele, String tagName, long defaultValue){
+		NodeList nodeList = ele.getElementsByTagName(tagName);
+		if(nodeList.getLength() == 0 || nodeList.item(0).getTextContent().trim().isEmpty()){
+			return defaultValue;
+		}
+		try{
+			return Long.parseLong(nodeList.item(0).getTextContent().trim());
+		} catch(NumberFormatException e){
+			throw new EcpayException(tagName + " 必須是毫秒數");
+		}
+	}
+	
+	/**
+	 * 替換物流 API 的 HTTP 傳輸層（例如測試時改用本機 stub）
+	 * @param httpTransport
+	 */
+	public static void setTransport(HttpTransport httpTransport){
+		transport = httpTransport;
+	}
+	
+	protected static HttpTransport getTransport(){
+		HttpTransport current = transport;
+		return current != null ? current : PooledHttpTransport.shared();
+	}
 }
@@ -0,0 +1,359 @@
+package ecpay.logistics.integration.ecpayOperator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import ecpay.logistics.integration.errorMsg.ErrorMessage;
+import ecpay.logistics.integration.exception.EcpayException;
+
+/**
+ * 綠界 CheckMacValue 編碼（金流表單、金流通知、物流 API 共用）
+ *
+ * 規則：參數依名稱排序（不分大小寫）組成 HashKey=...&amp;k=v...&amp;HashIV=...，
+ * 以 UTF-8 做 urlencode、轉小寫並還原 .NET 不編碼的 ! ( ) 後取 MD5，輸出大寫十六進位。
+ * 排序用的陣列、編碼緩衝區與 MessageDigest 都是每個執行緒重複使用，編碼一次掃過字元直接寫入位元組，
+ * 不產生中間字串；物件參數的欄位順序與 getter 在第一次使用該類別時建立並快取。
+ */
+public final class CheckMacValueCodec {
+
+	private static final String CHECK_MAC_VALUE = "CheckMacValue";
+
+	// 逐個字元不分大小寫比較，相同時再依原字串排序，讓結果固定。
+	// String.CASE_INSENSITIVE_ORDER 以 code point 比較，遇到不成對的代理字元時不具遞移性，排序結果會隨 Map 走訪順序改變
+	private static final Comparator<String> NAME_ORDER = CheckMacValueCodec::compareNames;
+
+	private static final byte[] HEX_LOWER = "0123456789abcdef".getBytes();
+
+	private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+
+	private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+	private static final ClassValue<ObjectCodec> OBJECT_CODECS = new ClassValue<ObjectCodec>() {
+		@Override
+		protected ObjectCodec computeValue(Class<?> type) {
+			return new ObjectCodec(type);
+		}
+	};
+
+	private CheckMacValueCodec() {
+	}
+
+	/**
+	 * 每個執行緒的暫存：排序用的參數名稱、編碼後的位元組與 MD5
+	 */
+	private static final class Buffers {
+		private String[] names = new String[32];
+		private byte[] bytes = new byte[1024];
+		private int length;
+		private final MessageDigest md5;
+
+		private Buffers() {
+			try {
+				md5 = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("不支援 MD5", e);
+			}
+		}
+
+		private String[] names(int size) {
+			if (names.length < size) {
+				names = new String[Math.max(size, names.length * 2)];
+			}
+			return names;
+		}
+
+		private void reset() {
+			length = 0;
+		}
+
+		private void ensure(int extra) {
+			if (length + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(length + extra, bytes.length * 2));
+			}
+		}
+
+		private void put(int b) {
+			bytes[length++] = (byte) b;
+		}
+
+		private void putEscaped(int b) {
+			put('%');
+			put(HEX_LOWER[(b >>> 4) & 0x0F]);
+			put(HEX_LOWER[b & 0x0F]);
+		}
+
+		/**
+		 * 等同 URLEncoder.encode(s, "UTF-8").toLowerCase() 再把 %21 %28 %29 換回 ! ( )
+		 */
+		private void append(String s) {
+			int n = s.length();
+			ensure(n * 3);
+			for (int i = 0; i < n; i++) {
+				char c = s.charAt(i);
+				if (c < 0x80) {
+					if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '*' || c == '_'
+							|| c == '!' || c == '(' || c == ')') {
+						put(c);
+					} else if (c >= 'A' && c <= 'Z') {
+						put(c + ('a' - 'A'));
+					} else if (c == ' ') {
+						put('+');
+					} else {
+						putEscaped(c);
+					}
+					continue;
+				}
+				int codePoint = c;
+				if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+					codePoint = Character.toCodePoint(c, s.charAt(++i));
+				} else if (Character.isSurrogate(c)) {
+					// 不成對的代理字元，URLEncoder 會以 ? 取代
+					putEscaped('?');
+					continue;
+				}
+				// 後面每個字元至少保留 3 個位元組
+				ensure(12 + (n - i - 1) * 3);
+				if (codePoint < 0x800) {
+					putEscaped(0xC0 | (codePoint >> 6));
+					putEscaped(0x80 | (codePoint & 0x3F));
+				} else if (codePoint < 0x10000) {
+					putEscaped(0xE0 | (codePoint >> 12));
+					putEscaped(0x80 | ((codePoint >> 6) & 0x3F));
+					putEscaped(0x80 | (codePoint & 0x3F));
+				} else {
+					putEscaped(0xF0 | (codePoint >> 18));
+					putEscaped(0x80 | ((codePoint >> 12) & 0x3F));
+					putEscaped(0x80 | ((codePoint >> 6) & 0x3F));
+					putEscaped(0x80 | (codePoint & 0x3F));
+				}
+			}
+		}
+
+		private void appendPair(String name, String value) {
+			append("&");
+			append(name);
+			append("=");
+			append(value);
+		}
+
+		private byte[] digest() {
+			md5.reset();
+			md5.update(bytes, 0, length);
+			return md5.digest();
+		}
+	}
+
+	/**
+	 * 以參數 Map 產生檢查碼，略過 CheckMacValue 本身
+	 */
+	public static String sign(String hashKey, String hashIv, Map<String, String> params) {
+		return toHex(digest(hashKey, hashIv, params, false));
+	}
+
+	/**
+	 * 以參數 Map 產生檢查碼
+	 *
+	 * @param skipBlank 是否略過空值參數
+	 */
+	public static String sign(String hashKey, String hashIv, Map<String, String> params, boolean skipBlank) {
+		return toHex(digest(hashKey, hashIv, params, skipBlank));
+	}
+
+	/**
+	 * 驗證參數中的 CheckMacValue（不複製參數 Map）
+	 */
+	public static boolean verify(String hashKey, String hashIv, Map<String, String> params) {
+		return verify(hashKey, hashIv, params, false);
+	}
+
+	public static boolean verify(String hashKey, String hashIv, Map<String, String> params, boolean skipBlank) {
+		String received = params.get(CHECK_MAC_VALUE);
+		if (received == null) {
+			return false;
+		}
+		received = received.trim();
+		byte[] expected = digest(hashKey, hashIv, params, skipBlank);
+		if (received.length() != expected.length * 2) {
+			return false;
+		}
+		int diff = 0;
+		for (int i = 0; i < expected.length; i++) {
+			int b = hexValue(received.charAt(i * 2)) << 4 | hexValue(received.charAt(i * 2 + 1));
+			diff |= b ^ (expected[i] & 0xFF);
+		}
+		return diff == 0;
+	}
+
+	/**
+	 * 取得物件參數的編碼器（依類別快取）
+	 */
+	public static ObjectCodec forClass(Class<?> cls) {
+		return OBJECT_CODECS.get(cls);
+	}
+
+	private static byte[] digest(String hashKey, String hashIv, Map<String, String> params, boolean skipBlank) {
+		Buffers buffers = BUFFERS.get();
+		String[] names = buffers.names(params.size());
+		int count = 0;
+		for (Map.Entry<String, String> entry : params.entrySet()) {
+			String name = entry.getKey();
+			if (CHECK_MAC_VALUE.equals(name)) {
+				continue;
+			}
+			if (skipBlank && (entry.getValue() == null || entry.getValue().isBlank())) {
+				continue;
+			}
+			names[count++] = name;
+		}
+		Arrays.sort(names, 0, count, NAME_ORDER);
+
+		buffers.reset();
+		buffers.append("HashKey=");
+		buffers.append(hashKey);
+		for (int i = 0; i < count; i++) {
+			buffers.appendPair(names[i], String.valueOf(params.get(names[i])));
+		}
+		Arrays.fill(names, 0, count, null);
+		buffers.append("&HashIV=");
+		buffers.append(hashIv);
+		return buffers.digest();
+	}
+
+	private static int compareNames(String a, String b) {
+		int n = Math.min(a.length(), b.length());
+		for (int i = 0; i < n; i++) {
+			char x = a.charAt(i);
+			char y = b.charAt(i);
+			if (x != y) {
+				x = Character.toLowerCase(Character.toUpperCase(x));
+				y = Character.toLowerCase(Character.toUpperCase(y));
+				if (x != y) {
+					return x - y;
+				}
+			}
+		}
+		if (a.length() != b.length()) {
+			return a.length() - b.length();
+		}
+		return a.compareTo(b);
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int v = bytes[i] & 0xFF;
+			hex[i * 2] = HEX_UPPER[v >>> 4];
+			hex[i * 2 + 1] = HEX_UPPER[v & 0x0F];
+		}
+		return new String(hex);
+	}
+
+	private static int hexValue(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		return 0x100;
+	}
+
+	/**
+	 * 物流 domain 物件（*Obj）的參數編碼器
+	 *
+	 * 欄位依名稱排序（不分大小寫），每個欄位對應 get + 首字大寫 的 getter。
+	 */
+	public static final class ObjectCodec {
+		private final String[] names;
+		// 沒有對應 getter 的欄位為 null，用到時才丟例外（與原本逐次反射的行為相同）
+		private final MethodHandle[] getters;
+
+		private ObjectCodec(Class<?> cls) {
+			List<String> fieldNames = new ArrayList<>();
+			for (Field field : cls.getDeclaredFields()) {
+				fieldNames.add(field.getName());
+			}
+			fieldNames.sort(NAME_ORDER);
+			names = fieldNames.toArray(new String[0]);
+			getters = new MethodHandle[names.length];
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			for (int i = 0; i < names.length; i++) {
+				String name = names[i];
+				try {
+					getters[i] = lookup
+							.unreflect(cls.getMethod("get" + name.substring(0, 1).toUpperCase() + name.substring(1)))
+							.asType(MethodType.methodType(Object.class, Object.class));
+				} catch (NoSuchMethodException | IllegalAccessException e) {
+					getters[i] = null;
+				}
+			}
+		}
+
+		private String value(int index, Object obj, String errorMessage) {
+			MethodHandle getter = getters[index];
+			if (getter == null) {
+				throw new EcpayException(errorMessage);
+			}
+			Object value;
+			try {
+				value = (Object) getter.invokeExact(obj);
+			} catch (Throwable e) {
+				throw new EcpayException(errorMessage);
+			}
+			if (value == null) {
+				throw new EcpayException(errorMessage);
+			}
+			return value.toString();
+		}
+
+		/**
+		 * 產生檢查碼，略過 CheckMacValue 欄位
+		 */
+		public String checkMacValue(String hashKey, String hashIv, Object obj) {
+			Buffers buffers = BUFFERS.get();
+			buffers.reset();
+			buffers.append("HashKey=");
+			buffers.append(hashKey);
+			for (int i = 0; i < names.length; i++) {
+				if (!CHECK_MAC_VALUE.equals(names[i])) {
+					buffers.appendPair(names[i], value(i, obj, ErrorMessage.GEN_CHECK_MAC_VALUE_FAIL));
+				}
+			}
+			buffers.append("&HashIV=");
+			buffers.append(hashIv);
+			return toHex(buffers.digest());
+		}
+
+		/**
+		 * 組成 http 參數字串（值不做編碼，與原本的格式相同），最後加上檢查碼
+		 */
+		public String httpValue(Object obj, String checkMacValue) {
+			StringBuilder sb = new StringBuilder(names.length * 24 + 48);
+			for (int i = 0; i < names.length; i++) {
+				sb.append(names[i]).append('=').append(value(i, obj, ErrorMessage.OBJ_MISSING_FIELD)).append('&');
+			}
+			return sb.append("CheckMacValue=").append(checkMacValue).toString();
+		}
+
+		public Hashtable<String, String> toHashtable(Object obj) {
+			Hashtable<String, String> result = new Hashtable<>(names.length * 2);
+			for (int i = 0; i < names.length; i++) {
+				result.put(names[i], value(i, obj, ErrorMessage.OBJ_MISSING_FIELD));
+			}
+			return result;
+		}
+	}
+}
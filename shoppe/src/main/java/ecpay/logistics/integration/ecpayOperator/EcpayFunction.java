@@ -1,36 +1,15 @@
 package ecpay.logistics.integration.ecpayOperator;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLEncoder;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.Hashtable;
-import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.w3c.dom.Document;
 
-import ecpay.logistics.integration.config.EcpayConfig;
 import ecpay.logistics.integration.errorMsg.ErrorMessage;
 import ecpay.logistics.integration.exception.EcpayException;
 
@@ -40,8 +19,6 @@ import ecpay.logistics.integration.exception.EcpayException;
  *
  */
 public class EcpayFunction {
-	private final static char[] hexArray = "0123456789ABCDEF".toCharArray();
-	
 	/**
 	 * 產生檢查碼
 	 * @param key
@@ -50,22 +27,7 @@ public class EcpayFunction {
 	 * @return
 	 */
 	public final static String genCheckMacValue(String key, String iv, Object obj) {
-		Class<?> cls = obj.getClass();
-		List<String> fieldNames = getSortedFieldNames(cls);
-		String data = "";
-		try{
-			for(String name: fieldNames){
-				if(name != "CheckMacValue"){
-					Method method = cls.getMethod("get"+name.substring(0, 1).toUpperCase()+name.substring(1), null);
-					data = data + '&' + name + '=' + method.invoke(obj).toString();
-				}
-			}
-			String urlEncode = urlEncode("HashKey=" + key + data + "&HashIV=" + iv).toLowerCase();
-			urlEncode = netUrlEncode(urlEncode);
-			return hash(urlEncode.getBytes(), "MD5");
-		} catch(Exception e){
-			throw new EcpayException(ErrorMessage.GEN_CHECK_MAC_VALUE_FAIL);
-		}
+		return CheckMacValueCodec.forClass(obj.getClass()).checkMacValue(key, iv, obj);
 	}
 	
 	/**
@@ -76,19 +38,7 @@ public class EcpayFunction {
 	 * @return
 	 */
 	public final static String genCheckMacValue(String key, String iv, Hashtable<String, String> params){
-		Set<String> keySet = params.keySet();
-		TreeSet<String> treeSet = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
-		treeSet.addAll(keySet);
-		String name[] = treeSet.toArray(new String[treeSet.size()]);
-		String paramStr = "";
-		for(int i = 0; i < name.length; i++){
-			if(!name[i].equals("CheckMacValue")){
-				paramStr += "&" + name[i] + "=" + params.get(name[i]);
-			}
-		}
-		String urlEncode = urlEncode("Hashkey=" + key + paramStr + "&HashIV=" + iv).toLowerCase();
-		urlEncode = netUrlEncode(urlEncode);
-		return hash(urlEncode.getBytes(), "MD5");
+		return CheckMacValueCodec.sign(key, iv, params);
 	}
 	
 	/**
@@ -98,20 +48,7 @@ public class EcpayFunction {
 	 * @return string
 	 */
 	public final static String genHttpValue(Object obj, String CheckMacValue){
-		Class<?> cls = obj.getClass();
-		List<String> fieldNames = getSortedFieldNames(cls);
-		Method method;
-		String result = "";
-		for(int i = 0; i < fieldNames.size(); i++){
-			try {
-				method = cls.getMethod("get"+fieldNames.get(i).substring(0, 1).toUpperCase()+fieldNames.get(i).substring(1), null);
-				fieldNames.set(i, fieldNames.get(i) + '=' + invokeMethod(method, obj));
-			} catch (Exception e) {
-				throw new EcpayException(ErrorMessage.OBJ_MISSING_FIELD);
-			}
-			result = result + fieldNames.get(i) + '&';
-		}
-		return result + "CheckMacValue=" + CheckMacValue;
+		return CheckMacValueCodec.forClass(obj.getClass()).httpValue(obj, CheckMacValue);
 	}
 	
 	/**
@@ -120,65 +57,17 @@ public class EcpayFunction {
 	 * @return Hashtable
 	 */
 	public final static Hashtable<String, String>objToHashtable(Object obj) {
-		Class<?> cls = obj.getClass();
-		Hashtable<String, String> resultDict = new Hashtable<String, String>();
-		List<String> fieldNames = getSortedFieldNames(cls);
-		for(int i = 0; i < fieldNames.size(); i++){
-			Method method;
-			try {
-				method = cls.getMethod("get"+fieldNames.get(i).substring(0, 1).toUpperCase()+fieldNames.get(i).substring(1), null);
-				resultDict.put(fieldNames.get(i), invokeMethod(method, obj));
-			} catch (Exception e) {
-				throw new EcpayException(ErrorMessage.OBJ_MISSING_FIELD);
-			}
-		}
-		return resultDict;
-	}
-	
-	private final static String invokeMethod(Method method, Object obj){
-		try {
-			return method.invoke(obj, null).toString();
-		} catch (Exception e) {
-			throw new EcpayException(ErrorMessage.OBJ_MISSING_FIELD);
-		}
+		return CheckMacValueCodec.forClass(obj.getClass()).toHashtable(obj);
 	}
 	
 	/**
-	 * client http post的功能
+	 * client http post的功能（共用連線池）
 	 * @param url
 	 * @param urlParameters
 	 * @return response string
 	 */
 	public final static String httpPost(String url, String urlParameters, String encoding){
-		try{
-			URL obj = new URL(url);
-			HttpURLConnection connection = null;
-			if (obj.getProtocol().toLowerCase().equals("https")) {
-				connection = (HttpsURLConnection) obj.openConnection();
-				trustAllHosts((HttpsURLConnection) connection);
-			}
-			else {
-				connection = (HttpURLConnection) obj.openConnection();
-			}
-			connection.setRequestMethod("POST");
-			connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/99.0.2171.71 Safari/537.36 EcPay JAVA API Version " + EcpayConfig.version);
-			connection.setRequestProperty("Accept-Language", encoding);
-			connection.setDoOutput(true);
-			DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-			wr.write(urlParameters.getBytes(encoding));
-			wr.flush();
-			wr.close();
-			BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), encoding));
-			String inputLine;
-			StringBuffer response = new StringBuffer();
-			while ((inputLine = in.readLine()) != null) {
-				response.append(inputLine);
-			}
-			in.close();
-			return response.toString();
-		} catch(Exception e){
-			throw new EcpayException(e.getMessage());
-		}
+		return PooledHttpTransport.shared().post(url, urlParameters, encoding);
 	}
 	
 	/**
@@ -203,53 +92,6 @@ public class EcpayFunction {
 		}
 	}
 	
-	/**
-	 * https 處理
-	 */
-	private static void trustAllHosts(HttpsURLConnection connection) {
-	    X509TrustManager easyTrustManager = new X509TrustManager() {
-	        public void checkClientTrusted(
-	                X509Certificate[] chain,
-	                String authType) throws CertificateException {
-	            // Oh, I am easy!
-	        }
-	        public void checkServerTrusted(
-	                X509Certificate[] chain,
-	                String authType) throws CertificateException {
-	            // Oh, I am easy!
-	        }
-	        public X509Certificate[] getAcceptedIssuers() {
-	            return null;
-	        }
-	    };
-	    // Create a trust manager that does not validate certificate chains
-	    TrustManager[] trustAllCerts = new TrustManager[] {easyTrustManager};
-	    // Install the all-trusting trust manager
-	    try {
-	        SSLContext sc = SSLContext.getInstance("TLS");
-	        sc.init(null, trustAllCerts, new java.security.SecureRandom());
-	        connection.setSSLSocketFactory(sc.getSocketFactory());
-	    } 
-	    catch (Exception e) {
-	    	e.printStackTrace();
-	    }
-	}
-	
-	/**
-	 * 針對物件內屬性的參數作排序
-	 * @param Class
-	 * @return List
-	 */
-	private static List<String> getSortedFieldNames(Class<?> cls){
-		Field[] fields = cls.getDeclaredFields();
-		List<String> fieldNames = new ArrayList<String>();
-		for(Field field: fields){
-			fieldNames.add(field.getName());
-		}
-		Collections.sort(fieldNames, String.CASE_INSENSITIVE_ORDER);
-		return fieldNames;
-	}
-	
 	/**
 	 * 將資料做 urlEncode編碼
 	 * @param data
@@ -264,48 +106,4 @@ public class EcpayFunction {
 		return result;
 	}
 	
-	/**
-	 * 將做完的urlEncode字串做轉換符合 .NET語言的轉換規則
-	 * @param url
-	 * @return .Net url encoded string
-	 */
-	private static String netUrlEncode(String url){
-		String netUrlEncode = url.replaceAll("%21", "\\!").replaceAll("%28", "\\(").replaceAll("%29", "\\)");
-		return netUrlEncode;
-	}
-	
-	/**
-	 * 將 byte array 資料做 hash md5或 sha256 運算，並回傳 hex值的字串資料
-	 * @param data
-	 * @param isMD5
-	 * @return string
-	 */
-	private final static String hash(byte data[], String mode){
-		MessageDigest md = null;
-		try{
-			if(mode == "MD5"){
-				md = MessageDigest.getInstance("MD5");
-			}
-			else if(mode == "SHA-256"){
-				md = MessageDigest.getInstance("SHA-256");
-			}
-		} catch(NoSuchAlgorithmException e){
-		}
-		return bytesToHex(md.digest(data));
-	}
-	
-	/**
-	 * 將 byte array 資料轉換成 hex字串值
-	 * @param bytes
-	 * @return string
-	 */
-	private final static String bytesToHex(byte[] bytes) {
-	    char[] hexChars = new char[bytes.length * 2];
-	    for ( int j = 0; j < bytes.length; j++ ) {
-	        int v = bytes[j] & 0xFF;
-	        hexChars[j * 2] = hexArray[v >>> 4];
-	        hexChars[j * 2 + 1] = hexArray[v & 0x0F];
-	    }
-	    return new String(hexChars);
-	}
 }
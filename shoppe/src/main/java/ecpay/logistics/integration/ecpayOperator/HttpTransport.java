@@ -0,0 +1,28 @@
+package ecpay.logistics.integration.ecpayOperator;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 物流 API 的 HTTP 傳輸層，可替換成測試用的實作
+ * @see ecpay.logistics.integration.AllInOneBase#setTransport(HttpTransport)
+ */
+public interface HttpTransport {
+
+	/**
+	 * 以 application/x-www-form-urlencoded 送出並等待回應
+	 * @param url
+	 * @param urlParameters
+	 * @param encoding
+	 * @return response string（移除換行）
+	 */
+	String post(String url, String urlParameters, String encoding);
+
+	/**
+	 * 非同步送出，不佔用呼叫端執行緒；失敗時以 EcpayException 結束
+	 * @param url
+	 * @param urlParameters
+	 * @param encoding
+	 * @return response string（移除換行）
+	 */
+	CompletableFuture<String> postAsync(String url, String urlParameters, String encoding);
+}
@@ -0,0 +1,121 @@
+package ecpay.logistics.integration.ecpayOperator;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import ecpay.logistics.integration.config.EcpayConfig;
+import ecpay.logistics.integration.exception.EcpayException;
+
+/**
+ * 以共用的 java.net.http.HttpClient 送出物流 API 請求
+ *
+ * 連線由 HttpClient 的連線池保留（keep-alive），同一主機的後續請求不需要重新做 TCP/TLS 交握；
+ * 憑證使用 JVM 預設的信任設定驗證。
+ */
+public class PooledHttpTransport implements HttpTransport {
+	public final static long DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+	public final static long DEFAULT_REQUEST_TIMEOUT_MILLIS = 30000;
+
+	private final static String USER_AGENT = "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/99.0.2171.71 Safari/537.36 EcPay JAVA API Version " + EcpayConfig.version;
+
+	private static volatile PooledHttpTransport shared;
+
+	private final HttpClient client;
+	private final Duration requestTimeout;
+
+	public PooledHttpTransport(long connectTimeoutMillis, long requestTimeoutMillis){
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+				.build();
+		this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+	}
+
+	/**
+	 * 預設逾時設定的共用實例
+	 * @return PooledHttpTransport
+	 */
+	public static PooledHttpTransport shared(){
+		PooledHttpTransport transport = shared;
+		if(transport == null){
+			synchronized(PooledHttpTransport.class){
+				transport = shared;
+				if(transport == null){
+					transport = new PooledHttpTransport(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_REQUEST_TIMEOUT_MILLIS);
+					shared = transport;
+				}
+			}
+		}
+		return transport;
+	}
+
+	@Override
+	public String post(String url, String urlParameters, String encoding){
+		try {
+			return postAsync(url, urlParameters, encoding).join();
+		} catch(CompletionException e){
+			throw toEcpayException(e);
+		}
+	}
+
+	@Override
+	public CompletableFuture<String> postAsync(String url, String urlParameters, String encoding){
+		HttpRequest request;
+		Charset charset;
+		try {
+			charset = Charset.forName(encoding);
+			request = HttpRequest.newBuilder(URI.create(url))
+					.timeout(requestTimeout)
+					.header("User-Agent", USER_AGENT)
+					.header("Accept-Language", encoding)
+					.header("Content-Type", "application/x-www-form-urlencoded")
+					.POST(HttpRequest.BodyPublishers.ofByteArray(urlParameters.getBytes(charset)))
+					.build();
+		} catch(RuntimeException e){
+			return CompletableFuture.failedFuture(new EcpayException(e.getMessage()));
+		}
+		return client.sendAsync(request, HttpResponse.BodyHandlers.ofString(charset))
+				.handle((response, error) -> {
+					if(error != null){
+						throw toEcpayException(error);
+					}
+					if(response.statusCode() >= 400){
+						throw new EcpayException("Server returned HTTP response code: " + response.statusCode() + " for URL: " + url);
+					}
+					// 與原本逐行讀取後串接的結果相同
+					return stripLineBreaks(response.body());
+				});
+	}
+
+	private static EcpayException toEcpayException(Throwable error){
+		Throwable cause = error;
+		while(cause instanceof CompletionException && cause.getCause() != null){
+			cause = cause.getCause();
+		}
+		if(cause instanceof EcpayException){
+			return (EcpayException) cause;
+		}
+		return new EcpayException(cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName());
+	}
+
+	private static String stripLineBreaks(String body){
+		if(body.indexOf('\n') < 0 && body.indexOf('\r') < 0){
+			return body;
+		}
+		StringBuilder builder = new StringBuilder(body.length());
+		for(int i = 0; i < body.length(); i++){
+			char c = body.charAt(i);
+			if(c != '\n' && c != '\r'){
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+}
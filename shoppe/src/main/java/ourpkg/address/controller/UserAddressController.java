@@ -22,12 +22,12 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import ourpkg.address.AddressTypeCorrespond;
-import ourpkg.address.AddressTypeRepository;
 import ourpkg.address.CVSAddressDto;
 import ourpkg.address.UserAddress;
 import ourpkg.address.UserAddressRepository;
 import ourpkg.address.dto.UserAddressDTO;
 import ourpkg.address.service.UserAddressService;
+import ourpkg.referencedata.ReferenceDataRegistry;
 import ourpkg.user_role_permission.user.User;
 import ourpkg.user_role_permission.user.UserRepository;
 
@@ -45,7 +45,7 @@ public class UserAddressController {
 	private UserRepository userRepository;
 	
 	@Autowired
-	private AddressTypeRepository addressTypeRepository;
+	private ReferenceDataRegistry referenceData;
 
 	
 	// 透過 userId 取得所有地址
@@ -110,7 +110,7 @@ public class UserAddressController {
 	    User user = userOpt.get();
 
 	    // 🔒 強制 addressType 為宅配（typeId = 1）
-	    Optional<AddressTypeCorrespond> typeOpt = addressTypeRepository.findById(1);
+	    Optional<AddressTypeCorrespond> typeOpt = referenceData.findAddressType(1);
 	    if (typeOpt.isEmpty()) {
 	        return ResponseEntity.badRequest().body("找不到對應的地址類型");
 	    }
@@ -174,7 +174,7 @@ public class UserAddressController {
 	    User user = userOpt.get();
 
 	    // 🔒 強制 addressType 為超商（typeId = 2）
-	    Optional<AddressTypeCorrespond> typeOpt = addressTypeRepository.findById(2);
+	    Optional<AddressTypeCorrespond> typeOpt = referenceData.findAddressType(2);
 	    if (typeOpt.isEmpty()) {
 	        return ResponseEntity.badRequest().body("找不到對應的地址類型");
 	    }
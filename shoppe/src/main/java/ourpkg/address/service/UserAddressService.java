@@ -9,10 +9,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import ourpkg.address.AddressTypeCorrespond;
-import ourpkg.address.AddressTypeRepository;
 import ourpkg.address.CVSAddressDto;
 import ourpkg.address.UserAddress;
 import ourpkg.address.UserAddressRepository;
+import ourpkg.referencedata.ReferenceDataRegistry;
 import ourpkg.user_role_permission.user.User;
 import ourpkg.user_role_permission.user.UserRepository;
 
@@ -26,7 +26,7 @@ public class UserAddressService {
 	    private UserRepository userRepository;
 	    
 	    @Autowired
-	    private AddressTypeRepository addressTypeRepository;
+	    private ReferenceDataRegistry referenceData;
 
 
 	    // 透過 user_id 取得該用戶的所有地址
@@ -93,7 +93,7 @@ public class UserAddressService {
 	        User user = userRepository.findById(dto.getUserId())
 	                .orElseThrow(() -> new RuntimeException("使用者不存在"));
 
-	        AddressTypeCorrespond addressType = addressTypeRepository.findById(dto.getAddressTypeId())
+	        AddressTypeCorrespond addressType = referenceData.findAddressType(dto.getAddressTypeId())
 	                .orElseThrow(() -> new RuntimeException("地址類型不存在"));
 
 	        UserAddress address = new UserAddress();
@@ -3,9 +3,14 @@ package ourpkg.attribute;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface AttributeRepo extends JpaRepository<Attribute, Integer>{
 
 	List<Attribute> findByCategory2List_Id(Integer category2Id);
 
+	// 只取名稱，供規格字典預先載入
+	@Query("SELECT a.name FROM Attribute a WHERE a.name IS NOT NULL")
+	List<String> findAllNames();
+
 }
@@ -3,9 +3,14 @@ package ourpkg.attribute;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface AttributeValueRepo extends JpaRepository<AttributeValue, Integer> {
 
 	List<AttributeValue> findByAttribute_Id(Integer attributeId);
 
+	// 只取名稱，供規格字典預先載入
+	@Query("SELECT v.name FROM AttributeValue v WHERE v.name IS NOT NULL")
+	List<String> findAllNames();
+
 }
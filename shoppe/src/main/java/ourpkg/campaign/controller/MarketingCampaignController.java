@@ -23,6 +23,7 @@ import ourpkg.campaign.dto.CampaignCouponDTO;
 import ourpkg.campaign.dto.MarketingCampaignDTO;
 import ourpkg.campaign.service.MarketingCampaignService;
 import ourpkg.campaign.service.MarketingCampaignService.ServiceResult;
+import ourpkg.jwt.CachedPrincipal;
 import ourpkg.user_role_permission.user.User;
 import ourpkg.user_role_permission.user.UserRepository;
 
@@ -241,7 +242,12 @@ public class MarketingCampaignController {
             return user.getUserId();
         }
         
-        // 方式2: 處理 JsonWebTokenAuthentication 中的 Spring UserDetails
+        // 方式2: JWT 認證快取的使用者快照
+        if (authentication.getPrincipal() instanceof CachedPrincipal principal && principal.getUserId() != null) {
+            return principal.getUserId();
+        }
+        
+        // 方式3: 處理 JsonWebTokenAuthentication 中的 Spring UserDetails
         if (authentication.getPrincipal() instanceof org.springframework.security.core.userdetails.UserDetails) {
             UserDetails userDetails = (UserDetails) authentication.getPrincipal();
             String username = userDetails.getUsername();
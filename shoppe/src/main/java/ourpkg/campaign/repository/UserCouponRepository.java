@@ -65,6 +65,14 @@ public interface UserCouponRepository extends JpaRepository<UserCoupon, Integer>
     @Query("SELECT COUNT(uc) FROM UserCoupon uc WHERE uc.campaignId = :campaignId AND uc.couponId = :couponId")
     long countByCampaignIdAndCouponId(@Param("campaignId") Integer campaignId, @Param("couponId") Integer couponId);
     
+    // 用戶可用的優惠券，欄位順序：userCouponId, couponId
+    @Query("SELECT uc.userCouponId, uc.couponId FROM UserCoupon uc WHERE uc.userId = :userId AND uc.status = 'ACTIVE'")
+    List<Object[]> findActiveCouponRows(@Param("userId") Integer userId);
+    
+    // 已持有該優惠券的使用者（UQ_User_Coupon 限制每人每張優惠券只能有一筆）
+    @Query("SELECT uc.userId FROM UserCoupon uc WHERE uc.couponId = :couponId")
+    List<Integer> findUserIdsByCouponId(@Param("couponId") Integer couponId);
+    
     boolean existsByUserIdAndCouponIdAndStatus(Integer userId, Integer couponId, String status);
 
     @Modifying
@@ -0,0 +1,317 @@
+package ourpkg.campaign.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import ourpkg.campaign.entity.CampaignCoupon;
+import ourpkg.campaign.entity.MarketingCampaign;
+import ourpkg.campaign.repository.CampaignCouponRepository;
+import ourpkg.campaign.repository.MarketingCampaignRepository;
+import ourpkg.campaign.repository.UserCouponRepository;
+import ourpkg.campaign.service.MarketingCampaignService.ServiceResult;
+import ourpkg.user_role_permission.user.UserRepository;
+
+/**
+ * 活動優惠券領取
+ *
+ * 每張活動優惠券第一次被領取時，從資料庫載入剩餘數量與已領取的使用者建立 {@link CampaignCouponGate}，
+ * 之後已領完、重複領取、不在活動期間的請求都在記憶體中拒絕，不碰資料庫；只有通過閘門的領取才以主鍵確認用戶存在。
+ * 通過閘門的領取排入佇列，由背景執行緒每個寫入間隔分組寫入：同一張優惠券一批只扣一次剩餘數量
+ * （條件更新，不會扣到負數）並批次新增 UserCoupon，呼叫端等到所屬批次提交後才回傳結果。
+ * 整批失敗時改為逐筆寫入，逐筆失敗的領取會還原並重新載入閘門。
+ *
+ * 多台伺服器時各自的閘門只是第一道過濾，數量仍以資料庫的條件更新為準。
+ */
+@Service
+public class CampaignCouponClaimService {
+
+    private static final Logger log = LoggerFactory.getLogger(CampaignCouponClaimService.class);
+
+    private static final String DECREASE_SQL = "UPDATE CampaignCoupon SET remaining_quantity = remaining_quantity - ?, "
+            + "updated_at = GETDATE() WHERE campaign_id = ? AND coupon_id = ? AND remaining_quantity >= ?";
+
+    private static final String INSERT_SQL = "INSERT INTO UserCoupon (user_id, coupon_id, campaign_id, acquired_date, status) "
+            + "VALUES (?, ?, ?, ?, 'ACTIVE')";
+
+    @Autowired
+    private MarketingCampaignRepository marketingCampaignRepository;
+
+    @Autowired
+    private CampaignCouponRepository campaignCouponRepository;
+
+    @Autowired
+    private UserCouponRepository userCouponRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${coupon.claim.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${coupon.claim.flush-interval-ms:20}")
+    private long flushIntervalMillis;
+
+    @Value("${coupon.claim.await-ms:5000}")
+    private long awaitMillis;
+
+    // "活動ID:優惠券ID" -> 閘門
+    private final Map<String, CampaignCouponGate> gates = new ConcurrentHashMap<>();
+
+    private final LinkedBlockingQueue<PendingClaim> queue = new LinkedBlockingQueue<>();
+
+    private volatile boolean running = true;
+
+    private Thread writer;
+
+    private static final class PendingClaim {
+        private final Integer userId;
+        private final Integer campaignId;
+        private final Integer couponId;
+        private final LocalDateTime acquiredDate = LocalDateTime.now();
+        private final CompletableFuture<ServiceResult<Boolean>> result = new CompletableFuture<>();
+
+        private PendingClaim(Integer userId, Integer campaignId, Integer couponId) {
+            this.userId = userId;
+            this.campaignId = campaignId;
+            this.couponId = couponId;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        writer = new Thread(this::runWriter, "coupon-claim-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(5000);
+    }
+
+    /**
+     * 領取活動優惠券，通過閘門後等到寫入資料庫才回傳
+     */
+    public ServiceResult<Boolean> claim(Integer userId, Integer campaignId, Integer couponId) {
+        CampaignCouponGate gate = gateFor(campaignId, couponId);
+        if (gate == null) {
+            return new ServiceResult<>(false, "該活動中沒有此優惠券");
+        }
+
+        switch (gate.tryClaim(userId, LocalDateTime.now())) {
+        case NOT_RUNNING:
+            return new ServiceResult<>(false, "該行銷活動不在有效期內");
+        case ALREADY_CLAIMED:
+            return new ServiceResult<>(false, "您已領取過該優惠券");
+        case SOLD_OUT:
+            return new ServiceResult<>(false, "該優惠券已被領完");
+        default:
+            break;
+        }
+
+        if (!userRepository.existsById(userId)) {
+            gate.release(userId);
+            return new ServiceResult<>(false, "用戶不存在: " + userId);
+        }
+
+        PendingClaim claim = new PendingClaim(userId, campaignId, couponId);
+        if (!running) {
+            gate.release(userId);
+            return new ServiceResult<>(false, "系統維護中，請稍後再試");
+        }
+        queue.add(claim);
+        try {
+            return claim.result.get(awaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 仍在佇列中，稍後會寫入
+            return new ServiceResult<>(false, "領取處理中，請稍後到我的優惠券查看");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ServiceResult<>(false, "領取處理中，請稍後到我的優惠券查看");
+        } catch (ExecutionException e) {
+            return new ServiceResult<>(false, "領取優惠券時發生錯誤: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * 用戶是否已領取（閘門已載入時不查資料庫）
+     */
+    public boolean hasClaimed(Integer userId, Integer campaignId, Integer couponId) {
+        CampaignCouponGate gate = gates.get(key(campaignId, couponId));
+        if (gate != null) {
+            return gate.hasClaimed(userId);
+        }
+        return userCouponRepository.hasUserRedeemedCampaignCoupon(userId, campaignId, couponId);
+    }
+
+    /**
+     * 活動或活動優惠券異動後移除閘門（有交易時等提交後才移除）
+     */
+    public void invalidateCampaign(Integer campaignId) {
+        String prefix = campaignId + ":";
+        Runnable action = () -> gates.keySet().removeIf(key -> key.startsWith(prefix));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private CampaignCouponGate gateFor(Integer campaignId, Integer couponId) {
+        String key = key(campaignId, couponId);
+        CampaignCouponGate gate = gates.get(key);
+        if (gate != null) {
+            return gate;
+        }
+        synchronized (this) {
+            gate = gates.get(key);
+            if (gate != null) {
+                return gate;
+            }
+            CampaignCoupon campaignCoupon = campaignCouponRepository.findByCampaignIdAndCouponId(campaignId, couponId)
+                    .orElse(null);
+            MarketingCampaign campaign = marketingCampaignRepository.findById(campaignId).orElse(null);
+            if (campaignCoupon == null || campaign == null) {
+                return null;
+            }
+            gate = new CampaignCouponGate("ACTIVE".equals(campaign.getStatus()), campaign.getStartDate(),
+                    campaign.getEndDate(), campaignCoupon.getRemainingQuantity(),
+                    userCouponRepository.findUserIdsByCouponId(couponId));
+            gates.put(key, gate);
+            return gate;
+        }
+    }
+
+    private static String key(Integer campaignId, Integer couponId) {
+        return campaignId + ":" + couponId;
+    }
+
+    private void runWriter() {
+        List<PendingClaim> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingClaim first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                Map<String, List<PendingClaim>> groups = new LinkedHashMap<>();
+                for (PendingClaim claim : batch) {
+                    groups.computeIfAbsent(key(claim.campaignId, claim.couponId), k -> new ArrayList<>()).add(claim);
+                }
+                groups.values().forEach(this::persistGroup);
+            } catch (InterruptedException e) {
+                // stop() 中斷等待，迴圈條件會把剩下的佇列寫完
+            } catch (RuntimeException e) {
+                log.error("寫入優惠券領取紀錄時發生錯誤", e);
+                batch.forEach(claim -> fail(claim, "領取優惠券時發生錯誤: " + e.getMessage()));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 同一張活動優惠券的領取一次寫入，失敗時改為逐筆寫入
+     */
+    private void persistGroup(List<PendingClaim> group) {
+        PendingClaim head = group.get(0);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                int updated = jdbcTemplate.update(DECREASE_SQL, group.size(), head.campaignId, head.couponId,
+                        group.size());
+                if (updated == 0) {
+                    throw new IllegalStateException("剩餘數量不足");
+                }
+                jdbcTemplate.batchUpdate(INSERT_SQL, group, group.size(), (ps, claim) -> {
+                    ps.setInt(1, claim.userId);
+                    ps.setInt(2, claim.couponId);
+                    ps.setInt(3, claim.campaignId);
+                    ps.setTimestamp(4, Timestamp.valueOf(claim.acquiredDate));
+                });
+            });
+            group.forEach(claim -> claim.result.complete(new ServiceResult<>(true, "優惠券領取成功", true)));
+        } catch (RuntimeException e) {
+            if (group.size() > 1) {
+                log.warn("批次寫入 {} 筆優惠券領取失敗，改為逐筆寫入: {}", group.size(), e.getMessage());
+            }
+            group.forEach(this::persistOne);
+        }
+    }
+
+    private void persistOne(PendingClaim claim) {
+        try {
+            Boolean saved = transactionTemplate.execute(status -> {
+                if (jdbcTemplate.update(DECREASE_SQL, 1, claim.campaignId, claim.couponId, 1) == 0) {
+                    return false;
+                }
+                jdbcTemplate.update(INSERT_SQL, claim.userId, claim.couponId, claim.campaignId,
+                        Timestamp.valueOf(claim.acquiredDate));
+                return true;
+            });
+            if (Objects.equals(saved, Boolean.TRUE)) {
+                claim.result.complete(new ServiceResult<>(true, "優惠券領取成功", true));
+            } else {
+                fail(claim, "該優惠券已被領完");
+            }
+        } catch (DuplicateKeyException e) {
+            fail(claim, "您已領取過該優惠券");
+        } catch (DataIntegrityViolationException e) {
+            // 外鍵失敗：檢查後用戶或優惠券被刪除
+            log.warn("寫入優惠券領取紀錄違反外鍵: userId={}, couponId={}, {}", claim.userId, claim.couponId,
+                    e.getMostSpecificCause().getMessage());
+            fail(claim, "領取失敗，用戶或優惠券已不存在");
+        } catch (RuntimeException e) {
+            log.warn("寫入優惠券領取紀錄失敗: userId={}, couponId={}", claim.userId, claim.couponId, e);
+            fail(claim, "領取優惠券時發生錯誤: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 領取失敗：閘門與資料庫不一致，移除閘門讓下一次領取重新載入
+     */
+    private void fail(PendingClaim claim, String message) {
+        gates.remove(key(claim.campaignId, claim.couponId));
+        claim.result.complete(new ServiceResult<>(false, message));
+    }
+}
@@ -0,0 +1,77 @@
+package ourpkg.campaign.service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 單一活動優惠券的領取閘門（記憶體中）
+ *
+ * 剩餘數量以 CAS 扣減，不會扣到負數；已領取的使用者記在集合中，同一人第二次領取直接拒絕。
+ * 兩者都在通過檢查時才變動，寫入資料庫失敗時以 {@link #release(Integer)} 還原。
+ */
+public class CampaignCouponGate {
+
+    /**
+     * 領取結果
+     */
+    public enum Outcome {
+        ACCEPTED, NOT_RUNNING, ALREADY_CLAIMED, SOLD_OUT
+    }
+
+    private final boolean active;
+    private final LocalDateTime startDate;
+    private final LocalDateTime endDate;
+    private final AtomicInteger remaining;
+    private final Set<Integer> claimedUsers = ConcurrentHashMap.newKeySet();
+
+    public CampaignCouponGate(boolean active, LocalDateTime startDate, LocalDateTime endDate, int remaining,
+            Collection<Integer> claimedUserIds) {
+        this.active = active;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.remaining = new AtomicInteger(Math.max(remaining, 0));
+        this.claimedUsers.addAll(claimedUserIds);
+    }
+
+    public Outcome tryClaim(Integer userId, LocalDateTime now) {
+        if (!active || startDate.isAfter(now) || endDate.isBefore(now)) {
+            return Outcome.NOT_RUNNING;
+        }
+        // 先擋掉已領完的，避免大量請求進到下面的集合
+        if (remaining.get() <= 0) {
+            return Outcome.SOLD_OUT;
+        }
+        if (!claimedUsers.add(userId)) {
+            return Outcome.ALREADY_CLAIMED;
+        }
+        int current;
+        do {
+            current = remaining.get();
+            if (current <= 0) {
+                claimedUsers.remove(userId);
+                return Outcome.SOLD_OUT;
+            }
+        } while (!remaining.compareAndSet(current, current - 1));
+        return Outcome.ACCEPTED;
+    }
+
+    /**
+     * 還原一筆已通過但寫入失敗的領取
+     */
+    public void release(Integer userId) {
+        if (claimedUsers.remove(userId)) {
+            remaining.incrementAndGet();
+        }
+    }
+
+    public int remaining() {
+        return remaining.get();
+    }
+
+    public boolean hasClaimed(Integer userId) {
+        return claimedUsers.contains(userId);
+    }
+}
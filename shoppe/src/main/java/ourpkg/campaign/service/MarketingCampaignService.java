@@ -14,7 +14,6 @@ import ourpkg.campaign.dto.CampaignCouponDTO;
 import ourpkg.campaign.dto.MarketingCampaignDTO;
 import ourpkg.campaign.entity.CampaignCoupon;
 import ourpkg.campaign.entity.MarketingCampaign;
-import ourpkg.campaign.entity.UserCoupon;
 import ourpkg.campaign.repository.CampaignCouponRepository;
 import ourpkg.campaign.repository.MarketingCampaignRepository;
 import ourpkg.campaign.repository.UserCouponRepository;
@@ -46,6 +45,9 @@ public class MarketingCampaignService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private CampaignCouponClaimService campaignCouponClaimService;
+    
     // 結果類，用於返回操作結果和相關數據
     public static class ServiceResult<T> {
         private boolean success;
@@ -152,6 +154,7 @@ public class MarketingCampaignService {
             campaign.setUpdatedAt(LocalDateTime.now());
             
             MarketingCampaign updatedCampaign = marketingCampaignRepository.save(campaign);
+            campaignCouponClaimService.invalidateCampaign(campaignId);
             
             // 查詢該活動綁定的優惠券數量
             long couponCount = campaignCouponRepository.findByCampaignId(updatedCampaign.getCampaignId()).size();
@@ -303,7 +306,7 @@ public class MarketingCampaignService {
                 // 檢查用戶是否已領取該優惠券
                 boolean isRedeemed = false;
                 if (userId != null) {
-                    isRedeemed = userCouponRepository.hasUserRedeemedCampaignCoupon(userId, campaignId, cc.getCoupon().getCouponId());
+                    isRedeemed = campaignCouponClaimService.hasClaimed(userId, campaignId, cc.getCoupon().getCouponId());
                 }
                 
                 result.add(convertToCampaignCouponDTO(cc, isRedeemed));
@@ -317,74 +320,11 @@ public class MarketingCampaignService {
     
     /**
      * 用戶領取優惠券
+     * 數量與重複領取由 CampaignCouponClaimService 在記憶體中檢查，通過後批次寫入資料庫
      */
-    @Transactional
     public ServiceResult<Boolean> redeemCoupon(Integer userId, Integer campaignId, Integer couponId) {
         try {
-            // 檢查用戶是否存在
-            Optional<User> userOpt = userRepository.findById(userId);
-            if (!userOpt.isPresent()) {
-                return new ServiceResult<>(false, "用戶不存在: " + userId);
-            }
-            User user = userOpt.get();
-            
-            // 檢查活動是否存在且處於活躍狀態
-            Optional<MarketingCampaign> campaignOpt = marketingCampaignRepository.findById(campaignId);
-            if (!campaignOpt.isPresent()) {
-                return new ServiceResult<>(false, "行銷活動不存在: " + campaignId);
-            }
-            MarketingCampaign campaign = campaignOpt.get();
-            
-            LocalDateTime now = LocalDateTime.now();
-            if (!campaign.getStatus().equals("ACTIVE") ||
-                campaign.getStartDate().isAfter(now) ||
-                campaign.getEndDate().isBefore(now)) {
-                return new ServiceResult<>(false, "該行銷活動不在有效期內");
-            }
-            
-            // 檢查優惠券是否存在
-            Optional<Coupon> couponOpt = couponRepository.findById(couponId);
-            if (!couponOpt.isPresent()) {
-                return new ServiceResult<>(false, "優惠券不存在: " + couponId);
-            }
-            Coupon coupon = couponOpt.get();
-            
-            // 檢查用戶是否已領取過該優惠券
-            if (userCouponRepository.hasUserRedeemedCampaignCoupon(userId, campaignId, couponId)) {
-                return new ServiceResult<>(false, "您已領取過該優惠券");
-            }
-            
-            // 檢查優惠券是否仍有剩餘數量
-            Optional<CampaignCoupon> campaignCouponOpt = campaignCouponRepository.findByCampaignIdAndCouponId(campaignId, couponId);
-            if (!campaignCouponOpt.isPresent()) {
-                return new ServiceResult<>(false, "該活動中沒有此優惠券");
-            }
-            CampaignCoupon campaignCoupon = campaignCouponOpt.get();
-            
-            if (campaignCoupon.getRemainingQuantity() <= 0) {
-                return new ServiceResult<>(false, "該優惠券已被領完");
-            }
-            
-            // 扣減優惠券數量
-            int updated = campaignCouponRepository.decreaseCouponQuantity(campaignId, couponId);
-            if (updated <= 0) {
-                return new ServiceResult<>(false, "優惠券領取失敗，可能已被領完");
-            }
-            
-            // 創建用戶優惠券記錄
-            UserCoupon userCoupon = new UserCoupon();
-            userCoupon.setUserId(userId);
-            userCoupon.setCouponId(couponId);
-            userCoupon.setCampaignId(campaignId);
-            userCoupon.setUser(user);
-            userCoupon.setCoupon(coupon);
-            userCoupon.setCampaign(campaign);
-            userCoupon.setAcquiredDate(LocalDateTime.now());
-            userCoupon.setStatus("ACTIVE");
-            
-            userCouponRepository.save(userCoupon);
-            
-            return new ServiceResult<>(true, "優惠券領取成功", true);
+            return campaignCouponClaimService.claim(userId, campaignId, couponId);
         } catch (Exception e) {
             return new ServiceResult<>(false, "領取優惠券時發生錯誤: " + e.getMessage());
         }
@@ -417,6 +357,7 @@ public class MarketingCampaignService {
             
             // 從活動中移除優惠券
             campaignCouponRepository.delete(campaignCoupon);
+            campaignCouponClaimService.invalidateCampaign(campaignId);
             
             return new ServiceResult<>(true, "優惠券已從活動中移除", true);
         } catch (Exception e) {
@@ -453,6 +394,7 @@ public class MarketingCampaignService {
             
             // 刪除活動
             marketingCampaignRepository.delete(campaign);
+            campaignCouponClaimService.invalidateCampaign(campaignId);
             
             return new ServiceResult<>(true, "行銷活動刪除成功", true);
         } catch (Exception e) {
@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -17,4 +19,14 @@ public interface CartRepository extends JpaRepository<Cart, Integer> {
 
 	void deleteBySku_SkuId(Integer id);
 
+    /**
+     * 購物車頁面用：一次查出購物車、SKU、商品、店鋪需要的欄位（只取純量，不載入實體及其 EAGER 關聯）
+     *
+     * 欄位順序：cartId, quantity, skuId, price, stock, specPairs, productId, productName, shopId, shopName
+     */
+    @Query("SELECT c.cartId, c.quantity, s.skuId, s.price, s.stock, s.specPairs, p.productId, p.productName, "
+            + "sh.shopId, sh.shopName "
+            + "FROM Cart c JOIN c.sku s JOIN s.product p LEFT JOIN p.shop sh "
+            + "WHERE c.user.userId = :userId ORDER BY c.cartId")
+    List<Object[]> findCartViewRows(@Param("userId") Integer userId);
 }
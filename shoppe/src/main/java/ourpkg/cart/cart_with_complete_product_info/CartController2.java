@@ -88,4 +88,15 @@ public class CartController2 {
 			return ResponseEntity.badRequest().body(e.getMessage());
 		}
 	}
+
+	// ✅ 取得使用者的購物車（依店鋪分組）
+	@GetMapping("/{userId}/by-shop")
+	public ResponseEntity<?> getCartGroupedByShop(@PathVariable int userId) {
+		try {
+			List<CartShopGroupDTO2> groups = cartService2.getCartGroupedByShop(userId);
+			return ResponseEntity.ok(groups);
+		} catch (RuntimeException e) {
+			return ResponseEntity.badRequest().body(e.getMessage());
+		}
+	}
 }
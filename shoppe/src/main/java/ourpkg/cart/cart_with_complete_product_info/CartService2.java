@@ -1,10 +1,14 @@
 package ourpkg.cart.cart_with_complete_product_info;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -17,6 +21,7 @@ import ourpkg.product.ProductImage;
 import ourpkg.product.ProductImageRepository;
 import ourpkg.sku.Sku;
 import ourpkg.sku.SkuRepository;
+import ourpkg.sku.spec.SpecPairs;
 import ourpkg.user_role_permission.user.User;
 import ourpkg.user_role_permission.user.UserRepository;
 
@@ -97,14 +102,58 @@ public class CartService2 {
 	}
 
 	public List<CartItemDTO2> getCartByUserId(int userId) {
-		List<Cart> cartItems = cartRepository.findByUser_UserId(userId);
+		// 購物車、SKU、商品、店鋪一次查詢
+		List<Object[]> rows = cartRepository.findCartViewRows(userId);
 
-		if (cartItems.isEmpty()) {
+		if (rows.isEmpty()) {
 			throw new RuntimeException("購物車內沒有商品");
 		}
 
-		// 使用新的方法創建增強的 CartItemDTO2
-		return cartItems.stream().map(this::createEnhancedCartItemDTO2).collect(Collectors.toList());
+		// 所有商品的封面圖一次查詢
+		Set<Integer> productIds = new HashSet<>();
+		for (Object[] row : rows) {
+			productIds.add((Integer) row[6]);
+		}
+		Map<Integer, String> coverImages = new HashMap<>();
+		for (Object[] row : productImageRepository.findCoverImageRowsByProductIds(productIds)) {
+			coverImages.putIfAbsent((Integer) row[0], (String) row[1]);
+		}
+
+		List<CartItemDTO2> cartItems = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			Integer productId = (Integer) row[6];
+			Integer shopId = (Integer) row[8];
+			cartItems.add(new CartItemDTO2(
+					(Integer) row[0], // cartId
+					(Integer) row[2], // skuId
+					row[7] != null ? (String) row[7] : "未知商品",
+					(Integer) row[1], // quantity
+					(BigDecimal) row[3], // price
+					coverImages.getOrDefault(productId, "/img/default-product.jpg"),
+					new LinkedHashMap<>(SpecPairs.parse((String) row[5]).asMap()),
+					productId,
+					shopId != null ? (String) row[9] : "未知店鋪",
+					shopId,
+					(Integer) row[4])); // stock
+		}
+		return cartItems;
+	}
+
+	/**
+	 * 購物車依店鋪分組（同一店鋪的商品放在一起，並計算小計），店鋪順序依第一次出現的順序
+	 */
+	public List<CartShopGroupDTO2> getCartGroupedByShop(int userId) {
+		Map<Integer, CartShopGroupDTO2> groups = new LinkedHashMap<>();
+		for (CartItemDTO2 item : getCartByUserId(userId)) {
+			CartShopGroupDTO2 group = groups.computeIfAbsent(item.getShopId(),
+					shopId -> new CartShopGroupDTO2(shopId, item.getShopName(), new ArrayList<>(), BigDecimal.ZERO));
+			group.getItems().add(item);
+			if (item.getPrice() != null && item.getQuantity() != null) {
+				BigDecimal lineTotal = item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity()));
+				group.setSubtotal(group.getSubtotal().add(lineTotal));
+			}
+		}
+		return new ArrayList<>(groups.values());
 	}
 
 	/**
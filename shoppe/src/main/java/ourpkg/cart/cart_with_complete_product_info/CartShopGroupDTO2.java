@@ -0,0 +1,22 @@
+package ourpkg.cart.cart_with_complete_product_info;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CartShopGroupDTO2 {
+
+	private Integer shopId; // 店鋪ID
+	private String shopName; // 店鋪名稱
+	private List<CartItemDTO2> items; // 該店鋪的購物車項目
+	private BigDecimal subtotal; // 該店鋪小計（單價 x 數量）
+
+}
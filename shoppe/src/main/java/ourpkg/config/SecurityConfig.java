@@ -131,6 +131,7 @@ public class SecurityConfig {
                 "https://logistics-stage.ecpay.com.tw"));// ✅ 綠界的地圖頁 Origin
         configuration.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"));
         configuration.setAllowedHeaders(List.of("*"));
+        configuration.setExposedHeaders(List.of("X-Next-Cursor")); // 訂單列表下一頁游標
         configuration.setAllowCredentials(true); // ✅ 允許攜帶 Cookie（像是 JWT）
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
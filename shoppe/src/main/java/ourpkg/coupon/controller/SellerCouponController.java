@@ -19,6 +19,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import ourpkg.coupon.dto.CouponSearchResult;
 import ourpkg.coupon.dto.PublicCouponDTO;
 import ourpkg.coupon.dto.SellerCouponDTO;
 import ourpkg.coupon.entity.Coupon;
@@ -150,12 +151,14 @@ public class SellerCouponController {
 	@GetMapping("/unclaimed")
 	public ResponseEntity<Map<String, Object>> getUnclaimedCoupons(@RequestParam(required = false) String search,
 			@RequestParam(required = false, defaultValue = "1") int page,
-			@RequestParam(required = false, defaultValue = "10") int rows) { // Adjust default rows
-		log.debug("Public fetching unclaimed coupons page: {}, rows: {}, search: '{}'", page, rows, search);
+			@RequestParam(required = false, defaultValue = "10") int rows, // Adjust default rows
+			@RequestParam(required = false) Integer after) { // 上一頁回傳的 nextCursor，有給時忽略 page
+		log.debug("Public fetching unclaimed coupons page: {}, rows: {}, search: '{}', after: {}", page, rows, search, after);
 		Map<String, Object> responseBody = new HashMap<>();
 		try {
-			List<Coupon> coupons = couponService.getUnclaimedCoupons(search, page, rows);
-			int totalCount = couponService.countUnclaimed(search); // Get total count
+			CouponSearchResult result = couponService.searchUnclaimedCoupons(search, after, page, rows);
+			List<Coupon> coupons = result.getCoupons();
+			long totalCount = result.getTotalItems();
 
 			// ... (Formatting logic similar to previous version) ...
 			List<Map<String, Object>> couponList = new ArrayList<>();
@@ -179,6 +182,7 @@ public class SellerCouponController {
 			responseBody.put("rowsPerPage", rows);
 			responseBody.put("totalCount", totalCount);
 			responseBody.put("totalPages", (int) Math.ceil((double) totalCount / rows));
+			responseBody.put("nextCursor", result.getNextCursor());
 
 			return ResponseEntity.ok(responseBody);
 		} catch (Exception e) {
@@ -18,8 +18,10 @@ import ourpkg.campaign.dto.UserCouponDTO;
 import ourpkg.campaign.entity.UserCoupon;
 import ourpkg.campaign.repository.UserCouponRepository;
 import ourpkg.campaign.service.UserCouponService;
+import ourpkg.coupon.dto.CartCouponQuoteDTO;
 import ourpkg.coupon.entity.Coupon;
 import ourpkg.coupon.repository.CouponRepository;
+import ourpkg.coupon.service.CouponPricingService;
 import ourpkg.user_role_permission.user.service.UserService;
 
 @RestController
@@ -39,6 +41,9 @@ public class UserCouponController {
     @Autowired
     private UserCouponService userCouponService;
 
+    @Autowired
+    private CouponPricingService couponPricingService;
+
     @GetMapping("/available")
     public ResponseEntity<List<UserCouponDTO>> getAvailableCoupons() {
         Integer userId = userService.getCurrentUserId();
@@ -114,6 +119,15 @@ public class UserCouponController {
         return ResponseEntity.ok(dto);
     }
 
+    /**
+     * 以目前的購物車試算所有可用優惠券，回傳每間商店折扣最多的一張
+     */
+    @GetMapping("/best-for-cart")
+    public ResponseEntity<List<CartCouponQuoteDTO>> getBestCouponsForCart() {
+        Integer userId = userService.getCurrentUserId();
+        return ResponseEntity.ok(couponPricingService.quoteCart(userId));
+    }
+
     @GetMapping("/with-banner/{userId}")
     public ResponseEntity<List<CouponWithBannerDTO>> getUserCoupons(
             @PathVariable Integer userId,
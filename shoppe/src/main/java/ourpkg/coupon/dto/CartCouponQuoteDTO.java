@@ -0,0 +1,32 @@
+package ourpkg.coupon.dto;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * 購物車中一間商店的小計，以及用戶每張可用優惠券套用後的金額
+ */
+@Data
+public class CartCouponQuoteDTO {
+	private Integer shopId;
+	private String shopName;
+	private BigDecimal subtotal;
+	// 折扣最多的優惠券，沒有適用的優惠券時為 null
+	private CouponQuote best;
+	// 依折扣金額由大到小排列
+	private List<CouponQuote> quotes = new ArrayList<>();
+
+	@Data
+	public static class CouponQuote {
+		private Integer userCouponId;
+		private Integer couponId;
+		private String couponName;
+		private String discountType;
+		private BigDecimal discountValue;
+		private BigDecimal discount;
+		private BigDecimal finalTotal;
+	}
+}
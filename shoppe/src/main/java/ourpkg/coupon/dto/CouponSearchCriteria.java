@@ -0,0 +1,67 @@
+package ourpkg.coupon.dto;
+
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * 優惠券查詢條件（管理員列表與公開的未領取列表共用）
+ *
+ * 以 couponId 由新到舊排序；afterCouponId 是上一頁最後一筆的ID，傳入後只取比它舊的（keyset 分頁）。
+ */
+@Data
+public class CouponSearchCriteria {
+	// 數字時比對優惠券ID或商店ID，否則比對名稱或代碼（不分大小寫）
+	private String searchText;
+	// 名稱包含（公開列表只比對名稱）
+	private String nameContains;
+	private Integer couponId;
+	private Integer shopId;
+	private String discountType;
+	// true：只取目前有效期間內的
+	private boolean activeNow;
+	// null 表示不限
+	private Boolean redeemed;
+	private Integer afterCouponId;
+	private int size = 10;
+
+	/**
+	 * 由管理員列表的查詢參數建立，不認得的參數忽略
+	 */
+	public static CouponSearchCriteria fromParams(Map<String, Object> params) {
+		CouponSearchCriteria criteria = new CouponSearchCriteria();
+		criteria.setSearchText(text(params.get("searchText")));
+		criteria.setCouponId(integer(params.get("couponId")));
+		criteria.setShopId(integer(params.get("shopId")));
+		criteria.setDiscountType(text(params.get("discountType")));
+		criteria.setActiveNow(Boolean.parseBoolean(String.valueOf(params.get("isActiveNow"))));
+		criteria.setAfterCouponId(integer(params.get("after")));
+		return criteria;
+	}
+
+	/**
+	 * 總筆數快取的鍵（不含分頁）
+	 */
+	public String countKey() {
+		return searchText + "|" + nameContains + "|" + couponId + "|" + shopId + "|" + discountType + "|" + activeNow + "|" + redeemed;
+	}
+
+	private static String text(Object value) {
+		if (value == null || value.toString().trim().isEmpty()) {
+			return null;
+		}
+		return value.toString().trim();
+	}
+
+	private static Integer integer(Object value) {
+		String text = text(value);
+		if (text == null) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(text);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("查詢參數必須是數字: " + text);
+		}
+	}
+}
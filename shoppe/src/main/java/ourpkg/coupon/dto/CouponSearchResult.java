@@ -0,0 +1,18 @@
+package ourpkg.coupon.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import ourpkg.coupon.entity.Coupon;
+
+@Data
+@AllArgsConstructor
+public class CouponSearchResult {
+	private List<Coupon> coupons;
+	// 下一頁的 afterCouponId，沒有下一頁時為 null
+	private Integer nextCursor;
+	private long totalItems;
+	// 總筆數取自快取，可能與目前資料略有差異
+	private boolean totalApproximate;
+}
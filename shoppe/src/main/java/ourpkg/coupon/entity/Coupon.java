@@ -11,6 +11,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToOne;
@@ -26,7 +27,10 @@ import ourpkg.shop.Shop;
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "Coupon")
+@Table(name = "Coupon", indexes = { @Index(name = "ix_coupon_shop", columnList = "coupon_shop_id, coupon_id"),
+		@Index(name = "ix_coupon_redeemed", columnList = "redeemed, coupon_id"),
+		@Index(name = "ix_coupon_dates", columnList = "start_date, end_date"),
+		@Index(name = "ix_coupon_created_at", columnList = "created_at") })
 public class Coupon {
 	
 
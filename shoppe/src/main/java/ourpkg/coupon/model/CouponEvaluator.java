@@ -0,0 +1,136 @@
+package ourpkg.coupon.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Date;
+import java.util.function.UnaryOperator;
+
+import ourpkg.coupon.entity.Coupon;
+
+/**
+ * 編譯後的優惠券規則（不可修改）
+ *
+ * 建立時就解析折扣類型、把有效期間轉成毫秒、算好折扣倍率，之後驗證與計價都不必再讀實體或解析字串。
+ * 金額計算結果四捨五入到小數兩位，與訂單金額欄位一致。
+ */
+public final class CouponEvaluator {
+
+    private final Integer couponId;
+    private final String couponCode;
+    private final String couponName;
+    private final String description;
+    private final Integer shopId;
+    private final String discountTypeName;
+    private final DiscountType discountType;
+    private final BigDecimal discountValue;
+    private final long startMillis;
+    private final long endMillis;
+    // 原價 -> 折扣後金額，折扣類型不支援時為 null
+    private final UnaryOperator<BigDecimal> discount;
+
+    private CouponEvaluator(Coupon coupon, DiscountType discountType, UnaryOperator<BigDecimal> discount) {
+        this.couponId = coupon.getCouponId();
+        this.couponCode = coupon.getCouponCode();
+        this.couponName = coupon.getCouponName();
+        this.description = coupon.getDescription();
+        this.shopId = coupon.getShop() != null ? coupon.getShop().getShopId() : null;
+        this.discountTypeName = coupon.getDiscountType();
+        this.discountType = discountType;
+        this.discountValue = coupon.getDiscountValue();
+        this.startMillis = coupon.getStartDate().getTime();
+        this.endMillis = coupon.getEndDate().getTime();
+        this.discount = discount;
+    }
+
+    public static CouponEvaluator compile(Coupon coupon) {
+        DiscountType type = parseType(coupon.getDiscountType());
+        BigDecimal value = coupon.getDiscountValue();
+        UnaryOperator<BigDecimal> discount = null;
+        if (type == DiscountType.PERCENTAGE) {
+            // 折扣值為百分比，例如 10 表示打九折
+            BigDecimal multiplier = BigDecimal.ONE.subtract(value.movePointLeft(2));
+            discount = total -> total.multiply(multiplier).setScale(2, RoundingMode.HALF_UP);
+        } else if (type == DiscountType.FIXED_AMOUNT) {
+            discount = total -> total.subtract(value).max(BigDecimal.ZERO).setScale(2, RoundingMode.HALF_UP);
+        }
+        return new CouponEvaluator(coupon, type, discount);
+    }
+
+    private static DiscountType parseType(String discountType) {
+        if (discountType == null) {
+            return null;
+        }
+        try {
+            return DiscountType.valueOf(discountType.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 是否在有效期間內（含開始與結束時間）
+     */
+    public boolean isValidAt(long nowMillis) {
+        return nowMillis >= startMillis && nowMillis <= endMillis;
+    }
+
+    public boolean appliesToShop(Integer shopId) {
+        return this.shopId != null && this.shopId.equals(shopId);
+    }
+
+    public boolean isSupported() {
+        return discount != null;
+    }
+
+    /**
+     * 套用折扣後的金額（不低於 0）
+     *
+     * @throws RuntimeException 不支援的折扣類型
+     */
+    public BigDecimal discountedTotal(BigDecimal originalTotal) {
+        if (discount == null) {
+            throw new RuntimeException("❌ 不支援的折扣類型：" + discountTypeName);
+        }
+        return discount.apply(originalTotal);
+    }
+
+    public Integer getCouponId() {
+        return couponId;
+    }
+
+    public String getCouponCode() {
+        return couponCode;
+    }
+
+    public String getCouponName() {
+        return couponName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Integer getShopId() {
+        return shopId;
+    }
+
+    public String getDiscountTypeName() {
+        return discountTypeName;
+    }
+
+    public DiscountType getDiscountType() {
+        return discountType;
+    }
+
+    public BigDecimal getDiscountValue() {
+        return discountValue;
+    }
+
+    public Date getStartDate() {
+        return new Date(startMillis);
+    }
+
+    public Date getEndDate() {
+        return new Date(endMillis);
+    }
+}
@@ -0,0 +1,103 @@
+package ourpkg.coupon.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ourpkg.coupon.model.CouponEvaluator;
+import ourpkg.coupon.repository.CouponRepository;
+
+/**
+ * 優惠券規則快取，以優惠券ID與代碼查詢編譯好的 {@link CouponEvaluator}
+ *
+ * 優惠券只在管理員核准新增、修改或刪除時變動，由 CouponService 在交易提交後呼叫 {@link #invalidate(Integer)}。
+ * 每次作廢遞增版本號，載入前後版本不同就不放入快取，避免載入途中的變更被舊資料蓋掉。
+ */
+@Component
+public class CouponEvaluatorCache {
+
+	@Autowired
+	private CouponRepository couponRepository;
+
+	@Value("${coupon.evaluator-cache.max-size:10000}")
+	private int maxSize;
+
+	private final Map<Integer, CouponEvaluator> byId = new ConcurrentHashMap<>();
+
+	private final Map<String, List<CouponEvaluator>> byCode = new ConcurrentHashMap<>();
+
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * @return 優惠券不存在時回傳 null
+	 */
+	public CouponEvaluator get(Integer couponId) {
+		CouponEvaluator evaluator = byId.get(couponId);
+		if (evaluator != null) {
+			return evaluator;
+		}
+		long loadedVersion = version.get();
+		evaluator = couponRepository.findById(couponId).map(CouponEvaluator::compile).orElse(null);
+		if (evaluator != null) {
+			put(byId, couponId, evaluator, loadedVersion);
+		}
+		return evaluator;
+	}
+
+	/**
+	 * 代碼相同的所有優惠券（不同商店可能使用相同代碼）
+	 */
+	public List<CouponEvaluator> getByCode(String couponCode) {
+		List<CouponEvaluator> evaluators = byCode.get(couponCode);
+		if (evaluators != null) {
+			return evaluators;
+		}
+		long loadedVersion = version.get();
+		evaluators = couponRepository.findAllByCouponCode(couponCode).stream().map(CouponEvaluator::compile).toList();
+		put(byCode, couponCode, evaluators, loadedVersion);
+		return evaluators;
+	}
+
+	/**
+	 * 優惠券新增、修改或刪除後作廢（有交易時等提交後才作廢）；代碼可能改變，所以代碼索引整個清除
+	 */
+	public void invalidate(Integer couponId) {
+		Runnable action = () -> {
+			synchronized (this) {
+				version.incrementAndGet();
+				if (couponId != null) {
+					byId.remove(couponId);
+				}
+				byCode.clear();
+			}
+		};
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		} else {
+			action.run();
+		}
+	}
+
+	private <K, V> void put(Map<K, V> map, K key, V value, long loadedVersion) {
+		if (map.size() >= maxSize) {
+			map.clear();
+		}
+		synchronized (this) {
+			if (version.get() == loadedVersion) {
+				map.put(key, value);
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package ourpkg.coupon.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import ourpkg.campaign.repository.UserCouponRepository;
+import ourpkg.cart.CartRepository;
+import ourpkg.coupon.dto.CartCouponQuoteDTO;
+import ourpkg.coupon.dto.CartCouponQuoteDTO.CouponQuote;
+import ourpkg.coupon.model.CouponEvaluator;
+
+/**
+ * 以用戶目前的購物車試算所有可用優惠券，找出每間商店折扣最多的一張
+ *
+ * 購物車與用戶優惠券各查一次，其餘都用快取中的 {@link CouponEvaluator} 計算。
+ * 計算方式與下單時相同（OrderService 另外把最低金額限制為 1 元）。
+ */
+@Service
+public class CouponPricingService {
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private UserCouponRepository userCouponRepository;
+
+	@Autowired
+	private CouponEvaluatorCache couponEvaluatorCache;
+
+	public List<CartCouponQuoteDTO> quoteCart(Integer userId) {
+		// 依商店加總小計，欄位順序見 CartRepository.findCartViewRows
+		Map<Integer, CartCouponQuoteDTO> shops = new LinkedHashMap<>();
+		for (Object[] row : cartRepository.findCartViewRows(userId)) {
+			Integer shopId = (Integer) row[8];
+			if (shopId == null) {
+				continue;
+			}
+			BigDecimal price = (BigDecimal) row[3];
+			Integer quantity = (Integer) row[1];
+			CartCouponQuoteDTO shop = shops.computeIfAbsent(shopId, id -> {
+				CartCouponQuoteDTO dto = new CartCouponQuoteDTO();
+				dto.setShopId(id);
+				dto.setShopName((String) row[9]);
+				dto.setSubtotal(BigDecimal.ZERO);
+				return dto;
+			});
+			shop.setSubtotal(shop.getSubtotal().add(price.multiply(BigDecimal.valueOf(quantity))));
+		}
+		if (shops.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		long now = System.currentTimeMillis();
+		for (Object[] row : userCouponRepository.findActiveCouponRows(userId)) {
+			CouponEvaluator evaluator = couponEvaluatorCache.get((Integer) row[1]);
+			if (evaluator == null || !evaluator.isSupported() || !evaluator.isValidAt(now)) {
+				continue;
+			}
+			CartCouponQuoteDTO shop = shops.get(evaluator.getShopId());
+			if (shop == null) {
+				continue;
+			}
+			BigDecimal finalTotal = evaluator.discountedTotal(shop.getSubtotal());
+			CouponQuote quote = new CouponQuote();
+			quote.setUserCouponId((Integer) row[0]);
+			quote.setCouponId(evaluator.getCouponId());
+			quote.setCouponName(evaluator.getCouponName());
+			quote.setDiscountType(evaluator.getDiscountTypeName());
+			quote.setDiscountValue(evaluator.getDiscountValue());
+			quote.setDiscount(shop.getSubtotal().subtract(finalTotal));
+			quote.setFinalTotal(finalTotal);
+			shop.getQuotes().add(quote);
+		}
+
+		for (CartCouponQuoteDTO shop : shops.values()) {
+			shop.getQuotes().sort(Comparator.comparing(CouponQuote::getDiscount).reversed());
+			if (!shop.getQuotes().isEmpty()) {
+				shop.setBest(shop.getQuotes().get(0));
+			}
+		}
+		return new ArrayList<>(shops.values());
+	}
+}
@@ -0,0 +1,228 @@
+package ourpkg.coupon.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import ourpkg.coupon.dto.CouponSearchCriteria;
+import ourpkg.coupon.dto.CouponSearchResult;
+import ourpkg.coupon.entity.Coupon;
+
+/**
+ * 優惠券列表查詢與統計
+ *
+ * 列表以 couponId 由新到舊做 keyset 分頁（主鍵索引，翻到多深都只讀一頁）；舊的頁碼參數仍可使用，但深頁會變慢。
+ * 總筆數只在第一頁精確計算並快取，之後的頁面沿用快取值（存活時間內可能與目前資料略有差異）。
+ */
+@Service
+public class CouponQueryService {
+
+	// 月統計最多回溯的月數
+	public static final int MAX_STATS_MONTHS = 600;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private NamedParameterJdbcTemplate jdbcTemplate;
+
+	@Value("${coupon.count-cache.ttl-ms:60000}")
+	private long countTtlMillis;
+
+	@Value("${coupon.count-cache.max-size:1000}")
+	private int countMaxSize;
+
+	private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+
+	private static final class CachedCount {
+		private final long value;
+		private final long expiresAt;
+
+		private CachedCount(long value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * 查詢一頁優惠券
+	 *
+	 * @param offset 沒有 afterCouponId 時使用的位移（舊的頁碼分頁），keyset 分頁傳 0
+	 */
+	@Transactional(readOnly = true)
+	public CouponSearchResult search(CouponSearchCriteria criteria, int offset) {
+		int size = Math.max(1, criteria.getSize());
+
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Coupon> cq = cb.createQuery(Coupon.class);
+		Root<Coupon> coupon = cq.from(Coupon.class);
+		List<Predicate> predicates = predicates(cb, coupon, criteria);
+		if (criteria.getAfterCouponId() != null) {
+			predicates.add(cb.lessThan(coupon.get("couponId"), criteria.getAfterCouponId()));
+		}
+		cq.where(predicates.toArray(new Predicate[0]));
+		cq.orderBy(cb.desc(coupon.get("couponId")));
+
+		TypedQuery<Coupon> query = entityManager.createQuery(cq);
+		if (criteria.getAfterCouponId() == null && offset > 0) {
+			query.setFirstResult(offset);
+		}
+		// 多取一筆判斷是否還有下一頁
+		query.setMaxResults(size + 1);
+		List<Coupon> coupons = new ArrayList<>(query.getResultList());
+
+		Integer nextCursor = null;
+		if (coupons.size() > size) {
+			coupons.remove(size);
+			nextCursor = coupons.get(size - 1).getCouponId();
+		}
+
+		boolean firstPage = criteria.getAfterCouponId() == null && offset == 0;
+		String key = criteria.countKey();
+		CachedCount cached = counts.get(key);
+		if (!firstPage && cached != null && cached.expiresAt > System.currentTimeMillis()) {
+			return new CouponSearchResult(coupons, nextCursor, cached.value, true);
+		}
+		long total = (firstPage && nextCursor == null) ? coupons.size() : count(criteria);
+		if (counts.size() >= countMaxSize) {
+			counts.clear();
+		}
+		counts.put(key, new CachedCount(total, System.currentTimeMillis() + countTtlMillis));
+		return new CouponSearchResult(coupons, nextCursor, total, false);
+	}
+
+	private long count(CouponSearchCriteria criteria) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+		Root<Coupon> coupon = cq.from(Coupon.class);
+		cq.select(cb.count(coupon));
+		cq.where(predicates(cb, coupon, criteria).toArray(new Predicate[0]));
+		return entityManager.createQuery(cq).getSingleResult();
+	}
+
+	private List<Predicate> predicates(CriteriaBuilder cb, Root<Coupon> coupon, CouponSearchCriteria criteria) {
+		List<Predicate> predicates = new ArrayList<>();
+		String searchText = criteria.getSearchText();
+		if (searchText != null) {
+			Integer searchId = null;
+			try {
+				searchId = Integer.valueOf(searchText);
+			} catch (NumberFormatException e) {
+				// 不是數字就比對名稱或代碼
+			}
+			if (searchId != null) {
+				predicates.add(cb.or(cb.equal(coupon.get("couponId"), searchId),
+						cb.equal(coupon.get("shop").get("shopId"), searchId)));
+			} else {
+				String pattern = "%" + searchText.toLowerCase() + "%";
+				predicates.add(cb.or(cb.like(cb.lower(coupon.get("couponName")), pattern),
+						cb.like(cb.lower(coupon.get("couponCode")), pattern)));
+			}
+		}
+		if (criteria.getNameContains() != null) {
+			predicates.add(cb.like(coupon.get("couponName"), "%" + criteria.getNameContains() + "%"));
+		}
+		if (criteria.getCouponId() != null) {
+			predicates.add(cb.equal(coupon.get("couponId"), criteria.getCouponId()));
+		}
+		if (criteria.getShopId() != null) {
+			predicates.add(cb.equal(coupon.get("shop").get("shopId"), criteria.getShopId()));
+		}
+		if (criteria.getDiscountType() != null) {
+			predicates.add(cb.equal(coupon.get("discountType"), criteria.getDiscountType()));
+		}
+		if (criteria.isActiveNow()) {
+			Date now = new Date();
+			predicates.add(cb.lessThanOrEqualTo(coupon.get("startDate"), now));
+			predicates.add(cb.greaterThanOrEqualTo(coupon.get("endDate"), now));
+		}
+		if (criteria.getRedeemed() != null) {
+			predicates.add(cb.equal(coupon.get("redeemed"), criteria.getRedeemed()));
+		}
+		return predicates;
+	}
+
+	/**
+	 * 最近幾個月（含當月）每月新增數與月底有效數，一次查詢取得
+	 *
+	 * 依月份分組的查詢只掃 Coupon 一次範圍：每張優惠券在建立月份記一筆新增，在開始月份記 +1、
+	 * 月底不再有效的第一個月份記 -1，月底有效數就是 +1/-1 依月份的累加。
+	 *
+	 * @return "labels"（yyyy-MM）、"newCounts"、"currentCounts"
+	 * @throws IllegalArgumentException months 不在 1 到 {@value #MAX_STATS_MONTHS} 之間
+	 */
+	@Transactional(readOnly = true)
+	public Map<String, Object> monthlyStats(int months) {
+		if (months <= 0 || months > MAX_STATS_MONTHS) {
+			throw new IllegalArgumentException("統計月數必須介於 1 到 " + MAX_STATS_MONTHS + " 之間: " + months);
+		}
+		YearMonth first = YearMonth.now().minusMonths(months - 1);
+		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM");
+		LocalDateTime from = first.atDay(1).atStartOfDay();
+		LocalDateTime to = from.plusMonths(months);
+
+		List<String> labels = new ArrayList<>(months);
+		for (int i = 0; i < months; i++) {
+			labels.add(first.plusMonths(i).format(formatter));
+		}
+
+		// 月份以距第一個月的月數表示；月底最後一刻仍有效才算，所以結束時間加 1 毫秒後的月份就是不再有效的第一個月
+		String sql = "SELECT e.idx, SUM(e.new_count) AS new_count, SUM(e.delta) AS delta FROM ("
+				+ "SELECT DATEDIFF(MONTH, :from, c.created_at) AS idx, 1 AS new_count, 0 AS delta FROM Coupon c "
+				+ "WHERE c.created_at >= :from AND c.created_at < :to "
+				+ "UNION ALL SELECT CASE WHEN c.start_date < :from THEN 0 ELSE DATEDIFF(MONTH, :from, c.start_date) END, 0, 1 "
+				+ "FROM Coupon c WHERE c.start_date < :to AND c.end_date >= :firstEnd "
+				+ "UNION ALL SELECT DATEDIFF(MONTH, :from, DATEADD(MILLISECOND, 1, c.end_date)), 0, -1 "
+				+ "FROM Coupon c WHERE c.start_date < :to AND c.end_date >= :firstEnd AND c.end_date < :lastEnd"
+				+ ") e GROUP BY e.idx";
+		MapSqlParameterSource params = new MapSqlParameterSource("from", Timestamp.valueOf(from))
+				.addValue("to", Timestamp.valueOf(to))
+				.addValue("firstEnd", Timestamp.valueOf(from.plusMonths(1).minusNanos(1_000_000)))
+				.addValue("lastEnd", Timestamp.valueOf(to.minusNanos(1_000_000)));
+
+		long[] newByMonth = new long[months];
+		long[] deltaByMonth = new long[months];
+		jdbcTemplate.query(sql, params, rs -> {
+			int idx = rs.getInt("idx");
+			if (idx >= 0 && idx < months) {
+				newByMonth[idx] = rs.getLong("new_count");
+				deltaByMonth[idx] = rs.getLong("delta");
+			}
+		});
+
+		List<Long> newCounts = new ArrayList<>(months);
+		List<Long> activeCounts = new ArrayList<>(months);
+		long active = 0;
+		for (int i = 0; i < months; i++) {
+			active += deltaByMonth[i];
+			newCounts.add(newByMonth[i]);
+			activeCounts.add(active);
+		}
+
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("labels", labels);
+		stats.put("newCounts", newCounts);
+		stats.put("currentCounts", activeCounts); // 代表 "月底有效數量"
+		return stats;
+	}
+}
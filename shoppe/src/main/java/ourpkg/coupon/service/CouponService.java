@@ -1,17 +1,12 @@
 package ourpkg.coupon.service;
 
-import java.time.YearMonth;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -21,7 +16,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.NoResultException;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
@@ -31,10 +25,13 @@ import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
 import ourpkg.coupon.dto.AdminCouponApplicationDTO;
 import ourpkg.coupon.dto.AdminCouponDTO;
+import ourpkg.coupon.dto.CouponSearchCriteria;
+import ourpkg.coupon.dto.CouponSearchResult;
 import ourpkg.coupon.dto.PublicCouponDTO;
 import ourpkg.coupon.dto.SellerCouponDTO;
 import ourpkg.coupon.entity.Coupon;
 import ourpkg.coupon.entity.CouponApplication;
+import ourpkg.coupon.model.CouponEvaluator;
 import ourpkg.coupon.repository.CouponApplicationRepository;
 import ourpkg.coupon.repository.CouponRepository;
 import ourpkg.coupon.util.DatetimeConverter;
@@ -51,6 +48,12 @@ public class CouponService {
 	@Autowired
 	private CouponRepository couponRepository;
 
+	@Autowired
+	private CouponEvaluatorCache couponEvaluatorCache;
+
+	@Autowired
+	private CouponQueryService couponQueryService;
+
 	@Autowired
 	private UserService userService;
 
@@ -377,7 +380,9 @@ public class CouponService {
 			throw new IllegalArgumentException("此商店已存在使用中的相同優惠券名稱");
 		}
 
-		return couponRepository.save(coupon);
+		Coupon saved = couponRepository.save(coupon);
+		couponEvaluatorCache.invalidate(saved.getCouponId());
+		return saved;
 	}
 
 	@Transactional
@@ -426,7 +431,9 @@ public class CouponService {
 		// Add uniqueness checks if name/code changed
 
 		existing.setUpdatedAt(new Date());
-		return couponRepository.save(existing);
+		Coupon saved = couponRepository.save(existing);
+		couponEvaluatorCache.invalidate(saved.getCouponId());
+		return saved;
 	}
 
 	@Transactional
@@ -443,6 +450,7 @@ public class CouponService {
 			// coupon)
 			// If FKs are set to SET NULL, deletion should be okay.
 			couponRepository.deleteById(couponId);
+			couponEvaluatorCache.invalidate(couponId);
 			log.info("Coupon ID [{}] deleted internally by Admin [{}].", couponId, adminUserId);
 			return true;
 		} catch (Exception e) {
@@ -457,148 +465,6 @@ public class CouponService {
 		return couponRepository.findById(couponId).orElseThrow(() -> new RuntimeException("找不到優惠券 ID: " + couponId));
 	}
 
-	  @Transactional(readOnly = true)
-	    public List<Coupon> findCouponsInternal(Map<String, Object> criteria, int start, int rows) {
-	         log.debug("Admin finding coupons internally with criteria: {}", criteria);
-	         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-	         CriteriaQuery<Coupon> cq = cb.createQuery(Coupon.class);
-	         Root<Coupon> couponRoot = cq.from(Coupon.class);
-	         // 提前 Join shop，LEFT JOIN 較安全
-	         Join<Coupon, Shop> shopJoin = couponRoot.join("shop", JoinType.LEFT);
-	         List<Predicate> mainPredicates = new ArrayList<>(); // 用於 AND 組合
-
-	         // --- *** 修改：處理通用 searchText *** ---
-	         Object searchTextValue = criteria.get("searchText");
-	         if (searchTextValue != null && !searchTextValue.toString().trim().isEmpty()) {
-	             String searchTextTrimmed = searchTextValue.toString().trim();
-	             Predicate searchCondition = null; // 用於 OR 組合
-	             Integer searchId = null;
-
-	             try {
-	                 searchId = Integer.parseInt(searchTextTrimmed);
-	                 // --- 精確數字搜尋 (ID 或 Shop ID) ---
-	                 log.debug("Search text is numeric. Searching for Coupon ID or Shop ID: {}", searchId);
-	                 Predicate couponIdMatch = cb.equal(couponRoot.get("couponId"), searchId);
-	                 // 確保 shopJoin 在這裡可用
-	                 Predicate shopIdMatch = cb.equal(shopJoin.get("shopId"), searchId);
-	                 searchCondition = cb.or(couponIdMatch, shopIdMatch);
-	             } catch (NumberFormatException e) {
-	                 // --- 文字搜尋 (名稱或代碼，不分大小寫) ---
-	                 String lowerSearchText = "%" + searchTextTrimmed.toLowerCase() + "%";
-	                 log.debug("Search text is not numeric. Searching for Name or Code (case-insensitive): {}", lowerSearchText);
-	                 Predicate nameMatch = cb.like(cb.lower(couponRoot.get("couponName")), lowerSearchText);
-	                 Predicate codeMatch = cb.like(cb.lower(couponRoot.get("couponCode")), lowerSearchText);
-	                 searchCondition = cb.or(nameMatch, codeMatch);
-	             }
-	             // 將 searchText 的 OR 條件加入主 Predicate 列表
-	             if (searchCondition != null) {
-	                 mainPredicates.add(searchCondition);
-	             }
-	         }
-	         // --- *** 結束 searchText 處理 *** ---
-
-	         // 處理其他獨立的篩選條件 (使用 AND 連接)
-	         criteria.forEach((key, value) -> {
-	            // 排除 searchText 和分頁參數
-	            if ("searchText".equals(key) || "page".equals(key) || "size".equals(key) || value == null || (value instanceof String && ((String) value).isEmpty())) {
-	                return;
-	            }
-	            try {
-	                switch (key) {
-	                    // 注意：如果 searchText 是數字，這裡的 couponId/shopId 條件會與上面的 OR 條件 AND 在一起
-	                    // 這可能不是預期行為，如果希望獨立篩選優先，則需要調整邏輯
-	                    // 例如：如果傳了 searchText，就忽略獨立的 couponId/shopId 參數？
-	                    case "couponId":
-	                        // 只有在 searchText 不是數字時才考慮獨立的 couponId 篩選？
-	                        // if (searchId == null) // 或者總是允許，讓它們 AND 在一起
-	                        mainPredicates.add(cb.equal(couponRoot.get("couponId"), value));
-	                        break;
-	                    case "shopId":
-	                        // 只有在 searchText 不是數字時才考慮獨立的 shopId 篩選？
-	                        // if (searchId == null)
-	                        mainPredicates.add(cb.equal(shopJoin.get("shopId"), value)); // 使用 Join
-	                        break;
-	                    case "discountType":
-	                        mainPredicates.add(cb.equal(couponRoot.get("discountType"), value));
-	                        break;
-	                    case "isActiveNow":
-	                         if (Boolean.TRUE.equals(value)) {
-	                             Date now = new Date();
-	                             mainPredicates.add(cb.lessThanOrEqualTo(couponRoot.get("startDate"), now));
-	                             mainPredicates.add(cb.greaterThanOrEqualTo(couponRoot.get("endDate"), now));
-	                         }
-	                         break;
-	                    default:
-	                         log.warn("Unsupported criteria key in findCouponsInternal: {}", key);
-	                 }
-	            } catch (Exception e) {
-	                 log.error("Error processing criteria key '{}' with value '{}': {}", key, value, e.getMessage());
-	            }
-	         });
-
-	         cq.where(mainPredicates.toArray(new Predicate[0])); // 所有條件用 AND 連接
-	         cq.orderBy(cb.desc(couponRoot.get("createdAt")));
-
-	         TypedQuery<Coupon> query = entityManager.createQuery(cq);
-	         if (start >= 0 && rows > 0) {
-	            query.setFirstResult(start);
-	            query.setMaxResults(rows);
-	         }
-	         return query.getResultList();
-	    }
-
-	     // Admin: Count coupons using dynamic criteria (再次修正版)
-	     public long countCouponsInternal(Map<String, Object> criteria) {
-	         log.debug("Admin counting coupons internally with criteria: {}", criteria);
-	         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-	         CriteriaQuery<Long> cq = cb.createQuery(Long.class);
-	         Root<Coupon> couponRoot = cq.from(Coupon.class);
-	         Join<Coupon, Shop> shopJoin = couponRoot.join("shop", JoinType.LEFT); // 提前 Join
-	         cq.select(cb.count(couponRoot));
-	         List<Predicate> mainPredicates = new ArrayList<>(); // 主條件列表
-
-	         // --- *** 修改：處理通用 searchText (邏輯同上) *** ---
-	         Object searchTextValue = criteria.get("searchText");
-	         if (searchTextValue != null && !searchTextValue.toString().trim().isEmpty()) {
-	              String searchTextTrimmed = searchTextValue.toString().trim();
-	             Predicate searchCondition = null;
-	             Integer searchId = null;
-	             try { searchId = Integer.parseInt(searchTextTrimmed); } catch (NumberFormatException e) { /* ignore */ }
-
-	             if (searchId != null) {
-	                 Predicate couponIdMatch = cb.equal(couponRoot.get("couponId"), searchId);
-	                 Predicate shopIdMatch = cb.equal(shopJoin.get("shopId"), searchId);
-	                 searchCondition = cb.or(couponIdMatch, shopIdMatch);
-	             } else {
-	                 String lowerSearchText = "%" + searchTextTrimmed.toLowerCase() + "%";
-	                 Predicate nameMatch = cb.like(cb.lower(couponRoot.get("couponName")), lowerSearchText);
-	                 Predicate codeMatch = cb.like(cb.lower(couponRoot.get("couponCode")), lowerSearchText);
-	                 searchCondition = cb.or(nameMatch, codeMatch);
-	             }
-	              if (searchCondition != null) {
-	                 mainPredicates.add(searchCondition);
-	             }
-	             criteria.remove("searchText"); // 從 criteria 移除以免下面重複處理
-	         }
-	         // --- *** 結束 searchText 處理 *** ---
-
-	         // 處理其他獨立的篩選條件 (邏輯同上)
-	          criteria.forEach((key, value) -> {
-	             if ("page".equals(key) || "size".equals(key) || value == null || (value instanceof String && ((String) value).isEmpty())) return;
-	             try {
-	                 switch (key) {
-	                    case "couponId": mainPredicates.add(cb.equal(couponRoot.get("couponId"), value)); break;
-	                    case "shopId": mainPredicates.add(cb.equal(shopJoin.get("shopId"), value)); break; // 使用 Join
-	                    case "discountType": mainPredicates.add(cb.equal(couponRoot.get("discountType"), value)); break;
-	                    case "isActiveNow": if (Boolean.TRUE.equals(value)) { Date now = new Date(); mainPredicates.add(cb.lessThanOrEqualTo(couponRoot.get("startDate"), now)); mainPredicates.add(cb.greaterThanOrEqualTo(couponRoot.get("endDate"), now)); } break;
-	                    default: log.warn("Unsupported criteria key in countCouponsInternal: {}", key);
-	                 }
-	             } catch (Exception e) { log.error("Error processing count criteria key '{}': {}", key, e.getMessage()); }
-	         });
-
-	         cq.where(mainPredicates.toArray(new Predicate[0])); // 所有條件用 AND 連接
-	         return entityManager.createQuery(cq).getSingleResult();
-	    }
 
      
 	// === Helper Methods ===
@@ -672,42 +538,23 @@ public class CouponService {
 		return couponRepository.findByRedeemedTrue();
 	}
 
-	// 計算「未領取」的優惠券總數（可支援 search）
-	public int countUnclaimed(String search) {
-		if (search == null || search.trim().isEmpty()) {
-			return couponRepository.countByRedeemedFalse();
-		} else {
-			return couponRepository.countByRedeemedFalseAndCouponNameLike("%" + search + "%");
-		}
-	}
-
-	// 取得「未領取」優惠券（分頁 + 搜尋）
-	public List<Coupon> getUnclaimedCoupons(String search, int page, int rows) {
-		int offset = (page - 1) * rows;
-		if (search == null || search.trim().isEmpty()) {
-			return couponRepository.findUnclaimedPage(offset, rows);
-		} else {
-			return couponRepository.findUnclaimedPageByName("%" + search + "%", offset, rows);
-		}
+	// 「未領取」優惠券（搜尋名稱；after 為上一頁最後一筆的ID，沒有時以頁碼分頁，page 從 1 開始）
+	public CouponSearchResult searchUnclaimedCoupons(String search, Integer after, int page, int rows) {
+		return searchByRedeemed(false, search, after, page, rows);
 	}
 
-	// 計算「已領取」的優惠券總數
-	public int countRedeemed(String search) {
-		if (search == null || search.trim().isEmpty()) {
-			return couponRepository.countByRedeemedTrue();
-		} else {
-			return couponRepository.countByRedeemedTrueAndCouponNameLike("%" + search + "%");
-		}
+	// 「已領取」優惠券（參數同上）
+	public CouponSearchResult searchRedeemedCoupons(String search, Integer after, int page, int rows) {
+		return searchByRedeemed(true, search, after, page, rows);
 	}
 
-	// 取得「已領取」優惠券（分頁 + 搜尋）
-	public List<Coupon> getRedeemedCoupons(String search, int page, int rows) {
-		int offset = (page - 1) * rows;
-		if (search == null || search.trim().isEmpty()) {
-			return couponRepository.findRedeemedPage(offset, rows);
-		} else {
-			return couponRepository.findRedeemedPageByName("%" + search + "%", offset, rows);
-		}
+	private CouponSearchResult searchByRedeemed(boolean redeemed, String search, Integer after, int page, int rows) {
+		CouponSearchCriteria criteria = new CouponSearchCriteria();
+		criteria.setRedeemed(redeemed);
+		criteria.setNameContains(search == null || search.trim().isEmpty() ? null : search.trim());
+		criteria.setAfterCouponId(after);
+		criteria.setSize(rows);
+		return couponQueryService.search(criteria, after == null ? Math.max(page - 1, 0) * rows : 0);
 	}
 
 	 /**
@@ -803,46 +650,44 @@ public class CouponService {
      * @return 有效的 PublicCouponDTO。
      * @throws RuntimeException 若找不到、已過期、不適用等。
      */
-	    @Transactional(readOnly = true) // 查詢操作
 	    public PublicCouponDTO validateAndGetCouponByCode(String couponCode, Integer shopId) {
 	        log.debug("Validating coupon code [{}] for shopId [{}]", couponCode, shopId);
 	        if (couponCode == null || couponCode.trim().isEmpty()) {
 	            throw new IllegalArgumentException("優惠券代碼不可為空");
 	        }
 
-	        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-	        CriteriaQuery<Coupon> cq = cb.createQuery(Coupon.class);
-	        Root<Coupon> couponRoot = cq.from(Coupon.class);
-	        List<Predicate> predicates = new ArrayList<>();
-	        Date now = new Date();
+	        // 規則由快取中編譯好的 CouponEvaluator 判斷（已開始、未結束、適用商店）
+	        long now = System.currentTimeMillis();
+	        List<CouponEvaluator> matches = couponEvaluatorCache.getByCode(couponCode).stream()
+	                .filter(evaluator -> evaluator.isValidAt(now))
+	                .filter(evaluator -> shopId == null || evaluator.appliesToShop(shopId))
+	                .toList();
 
-	        predicates.add(cb.equal(couponRoot.get("couponCode"), couponCode));       // 符合代碼
-	        predicates.add(cb.lessThanOrEqualTo(couponRoot.get("startDate"), now)); // 已開始
-	        predicates.add(cb.greaterThanOrEqualTo(couponRoot.get("endDate"), now));   // 未結束
-
-	        // *** 修正：明確定義 Join ***
-	        if (shopId != null) {
-	            Join<Coupon, Shop> shopJoin = couponRoot.join("shop", JoinType.INNER);
-	            predicates.add(cb.equal(shopJoin.get("shopId"), shopId));
-	        }
-	        // else: 不篩選 shopId
-
-	        cq.where(predicates.toArray(new Predicate[0]));
-
-	        TypedQuery<Coupon> query = entityManager.createQuery(cq);
-	        try {
-	            Coupon coupon = query.getSingleResult();
-	            log.info("Coupon code [{}] validated successfully for couponId [{}]", couponCode, coupon.getCouponId());
-	            return convertToPublicDTO(coupon);
-	        } catch (NoResultException e) {
+	        if (matches.isEmpty()) {
 	            log.warn("Coupon code [{}] not found or not valid/active for shopId [{}]", couponCode, shopId);
 	            throw new RuntimeException("無效或不適用的優惠券代碼"); // 或自訂 NotFoundException
-	        } catch (Exception e) {
-	            log.error("Error validating coupon code [{}]: {}", couponCode, e.getMessage(), e);
+	        }
+	        if (matches.size() > 1) {
+	            log.error("Coupon code [{}] matches {} active coupons for shopId [{}]", couponCode, matches.size(), shopId);
 	            throw new RuntimeException("驗證優惠券代碼時發生錯誤");
 	        }
+	        CouponEvaluator evaluator = matches.get(0);
+	        log.info("Coupon code [{}] validated successfully for couponId [{}]", couponCode, evaluator.getCouponId());
+	        return convertToPublicDTO(evaluator);
 	    }
 
+    private PublicCouponDTO convertToPublicDTO(CouponEvaluator evaluator) {
+        PublicCouponDTO dto = new PublicCouponDTO();
+        dto.setCouponId(evaluator.getCouponId());
+        dto.setCouponName(evaluator.getCouponName());
+        dto.setDescription(evaluator.getDescription());
+        dto.setDiscountType(evaluator.getDiscountTypeName());
+        dto.setDiscountValue(evaluator.getDiscountValue());
+        dto.setStartDate(DatetimeConverter.toString(evaluator.getStartDate(), "yyyy-MM-dd"));
+        dto.setEndDate(DatetimeConverter.toString(evaluator.getEndDate(), "yyyy-MM-dd"));
+        return dto;
+    }
+
     // --- Helper Method to convert Coupon to PublicCouponDTO ---
     private PublicCouponDTO convertToPublicDTO(Coupon coupon) {
         if (coupon == null) return null;
@@ -956,14 +801,15 @@ public class CouponService {
         return convertToAdminDTO(coupon); // Convert to DTO
     }
 
-    // Example modification for findCouponsInternal:
-    public Map<String, Object> findCouponsInternalDTO(Map<String, Object> criteria, int page, int size) {
-         log.debug("Admin finding coupons internally as DTOs with criteria: {}", criteria);
-         int start = page * size;
-         List<Coupon> coupons = findCouponsInternal(criteria, start, size); // Use existing internal method
-         long totalCount = countCouponsInternal(criteria); // Use existing internal method
+    // 管理員優惠券列表：after 為上一頁最後一筆的ID（keyset 分頁），沒有時以頁碼分頁（page 從 0 開始）
+    public Map<String, Object> findCouponsInternalDTO(Map<String, Object> params, int page, int size) {
+         log.debug("Admin finding coupons internally as DTOs with criteria: {}", params);
+         CouponSearchCriteria criteria = CouponSearchCriteria.fromParams(params);
+         criteria.setSize(size);
+         CouponSearchResult result = couponQueryService.search(criteria,
+                 criteria.getAfterCouponId() == null ? page * size : 0);
 
-         List<AdminCouponDTO> dtoList = coupons.stream()
+         List<AdminCouponDTO> dtoList = result.getCoupons().stream()
                                              .map(this::convertToAdminDTO)
                                              .collect(Collectors.toList());
 
@@ -971,8 +817,10 @@ public class CouponService {
          response.put("list", dtoList);
          response.put("currentPage", page);
          response.put("itemsPerPage", size);
-         response.put("totalItems", totalCount);
-         response.put("totalPages", (int) Math.ceil((double) totalCount / size));
+         response.put("totalItems", result.getTotalItems());
+         response.put("totalPages", (int) Math.ceil((double) result.getTotalItems() / size));
+         response.put("totalApproximate", result.isTotalApproximate());
+         response.put("nextCursor", result.getNextCursor());
          return response;
     }
 
@@ -991,88 +839,12 @@ public class CouponService {
       * @param monthsToGoBack 要回溯的月數 (例如 6 代表包含當月在內的最近 6 個月)。
       * @return Map 包含 "labels" (月份字串列表), "newCounts" (每月新增數列表), "currentCounts" (每月月底有效數列表)。
       */
-     @Transactional(readOnly = true) // 查詢操作
      public Map<String, Object> getMonthlyCouponStats(int monthsToGoBack) {
          log.debug("Fetching monthly coupon stats for the last {} months.", monthsToGoBack);
          if (monthsToGoBack <= 0) {
              monthsToGoBack = 6; // 預設值
          }
-
-         List<String> labels = new ArrayList<>();
-         List<Long> newCountsList = new ArrayList<>();
-         List<Long> currentCountsList = new ArrayList<>();
-
-         // 1. 確定日期範圍和月份列表
-         Calendar calendar = Calendar.getInstance();
-         // 將時間設為當月最後一天，確保計算當月月底數據
-         calendar.set(Calendar.DAY_OF_MONTH, calendar.getActualMaximum(Calendar.DAY_OF_MONTH));
-         setEndOfDay(calendar); // 將時間設為 23:59:59.999
-         Date endDateExclusive = calendar.getTime(); // 當月最後一天的結束，用於 newCounts 查詢
-
-         calendar.add(Calendar.MONTH, -(monthsToGoBack - 1)); // 回溯到起始月份
-         calendar.set(Calendar.DAY_OF_MONTH, 1); // 設定為該月第一天
-         setStartOfDay(calendar); // 將時間設為 00:00:00.000
-         Date startDateInclusive = calendar.getTime(); // 起始日期的開始
-
-         List<YearMonth> months = IntStream.range(0, monthsToGoBack)
-                 .mapToObj(i -> YearMonth.from(startDateInclusive.toInstant().atZone(ZoneId.systemDefault())).plusMonths(i))
-                 .collect(Collectors.toList());
-
-         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM");
-
-         // 2. 查詢期間內每月新增數量
-         List<Map<String, Object>> monthlyNewCountsData = couponRepository.findMonthlyCreationCounts(startDateInclusive, endDateExclusive);
-         Map<String, Long> newCountsMap = monthlyNewCountsData.stream()
-                 .collect(Collectors.toMap(
-                         map -> (String) map.get("monthYear"), // key: "yyyy-MM"
-                         map -> ((Number) map.get("count")).longValue() // value: count (轉為 Long)
-                 ));
-
-         // 3. 迭代月份列表，查詢月底有效數量並組合結果
-         for (YearMonth month : months) {
-             String monthLabel = month.format(formatter);
-             labels.add(monthLabel); // 加入標籤
-
-             // 取得該月新增數量 (若無則為 0)
-             newCountsList.add(newCountsMap.getOrDefault(monthLabel, 0L));
-
-             // 計算該月最後一天的日期
-             Calendar monthEndCal = Calendar.getInstance();
-             monthEndCal.set(Calendar.YEAR, month.getYear());
-             monthEndCal.set(Calendar.MONTH, month.getMonthValue() - 1); // Calendar 月份從 0 開始
-             monthEndCal.set(Calendar.DAY_OF_MONTH, monthEndCal.getActualMaximum(Calendar.DAY_OF_MONTH));
-             setEndOfDay(monthEndCal); // 設定為該日結束時間
-             Date monthEndDate = monthEndCal.getTime();
-
-             // 查詢該月月底的有效數量
-             long activeCount = couponRepository.countActiveAtDate(monthEndDate);
-             currentCountsList.add(activeCount);
-         }
-
-         // 4. 組合最終結果 Map
-         Map<String, Object> stats = new HashMap<>();
-         stats.put("labels", labels);
-         stats.put("newCounts", newCountsList);
-         stats.put("currentCounts", currentCountsList); // 代表 "月底有效數量"
-
-         log.debug("Monthly stats result: {}", stats);
-         return stats;
-     }
-
-     // Helper to set Calendar to end of day
-     private void setEndOfDay(Calendar cal) {
-         cal.set(Calendar.HOUR_OF_DAY, 23);
-         cal.set(Calendar.MINUTE, 59);
-         cal.set(Calendar.SECOND, 59);
-         cal.set(Calendar.MILLISECOND, 999);
-     }
-
-     // Helper to set Calendar to start of day
-     private void setStartOfDay(Calendar cal) {
-         cal.set(Calendar.HOUR_OF_DAY, 0);
-         cal.set(Calendar.MINUTE, 0);
-         cal.set(Calendar.SECOND, 0);
-         cal.set(Calendar.MILLISECOND, 0);
+         return couponQueryService.monthlyStats(monthsToGoBack);
      }
      
      /**
@@ -2,14 +2,19 @@ package ourpkg.customerService.config;
 
 import java.text.ParseException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
-import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -19,135 +24,188 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import ourpkg.jwt.JsonWebTokenUtility;
-
-@Component 
-public class AuthChannelInterceptor implements ChannelInterceptor{
-	private static final Logger log = LoggerFactory.getLogger(AuthChannelInterceptor.class);
-
-
-
-    private final JsonWebTokenUtility jsonWebTokenUtility; // <--- 注入 JsonWebTokenUtility
-    private final UserDetailsService userDetailsService; // <--- 注入 UserDetailsService
+import ourpkg.jwt.PrincipalCache;
+
+/**
+ * WebSocket（STOMP）連線認證
+ *
+ * CONNECT 時驗證一次 JWT，把 userId 與 Principal 存進這條連線的 session attributes，
+ * 之後同一條連線的其他指令直接沿用，不再解析 token 或查資料庫。CONNECT 以令牌桶限制速率，
+ * 部署後大量用戶同時重連時超出的連線會收到 ERROR，由前端稍後重試。
+ *
+ * 不逐筆記錄日誌，改以 Actuator 指標觀察：
+ * chat.ws.inbound.frames（依 command 計數）、chat.ws.inbound.handle（依 command 與 handler 的處理時間）、
+ * chat.ws.connect.auth（CONNECT 認證時間，依 outcome 區分）。
+ */
+@Component
+public class AuthChannelInterceptor implements ExecutorChannelInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(AuthChannelInterceptor.class);
+
+    static final String USER_ID_ATTRIBUTE = "userId";
+    static final String PRINCIPAL_ATTRIBUTE = "principal";
+
+    private final JsonWebTokenUtility jsonWebTokenUtility;
+    private final UserDetailsService userDetailsService;
+    private final PrincipalCache principalCache;
+    private final MeterRegistry meterRegistry;
+
+    private final double connectPermitsPerSecond;
+    private final double connectBurst;
+    private double connectTokens;
+    private long connectRefilledAt = System.nanoTime();
+
+    private final Map<String, Counter> frameCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> handleTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> connectTimers = new ConcurrentHashMap<>();
+
+    // 同一個執行緒上 beforeHandle 到 afterMessageHandled 的開始時間
+    private final ThreadLocal<Long> handleStartedAt = new ThreadLocal<>();
 
     // 使用建構函數注入依賴
-    public AuthChannelInterceptor(JsonWebTokenUtility jsonWebTokenUtility, UserDetailsService userDetailsService) {
+    public AuthChannelInterceptor(JsonWebTokenUtility jsonWebTokenUtility, UserDetailsService userDetailsService,
+            PrincipalCache principalCache, MeterRegistry meterRegistry,
+            @Value("${chat.ws.connect-rate-per-sec:200}") double connectPermitsPerSecond,
+            @Value("${chat.ws.connect-burst:400}") double connectBurst) {
         this.jsonWebTokenUtility = jsonWebTokenUtility;
         this.userDetailsService = userDetailsService;
-        log.info(">>> AuthChannelInterceptor Bean CREATED <<<");
+        this.principalCache = principalCache;
+        this.meterRegistry = meterRegistry;
+        this.connectPermitsPerSecond = connectPermitsPerSecond;
+        this.connectBurst = connectBurst;
+        this.connectTokens = connectBurst;
     }
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
-    	 log.error("!!!!!!!! AuthChannelInterceptor preSend CALLED !!!!!!!!"); // 使用 ERROR 級別確保輸出
         StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        StompCommand command = accessor.getCommand();
+        frameCounters.computeIfAbsent(command.name(),
+                name -> Counter.builder("chat.ws.inbound.frames").tag("command", name).register(meterRegistry))
+                .increment();
 
-        // 只處理 CONNECT 指令
-        if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand())) {
+        if (StompCommand.CONNECT.equals(command)) {
+            return authenticate(message, accessor);
+        }
 
-            // --- 開始詳細日誌記錄 ---
-            String sessionId = accessor.getSessionId();
-            log.error("========== [CONNECT-{}] START Interceptor Processing ==========", sessionId);
-            log.error(">>> [CONNECT-{}] WebSocket CONNECT 指令收到。", sessionId);
+        // 其他指令沿用 CONNECT 時存下的 Principal
+        if (accessor.getUser() == null && accessor.getSessionAttributes() != null) {
+            Object principal = accessor.getSessionAttributes().get(PRINCIPAL_ATTRIBUTE);
+            if (principal instanceof Authentication authentication) {
+                accessor.setUser(authentication);
+            }
+        }
+        return message;
+    }
+
+    private Message<?> authenticate(Message<?> message, StompHeaderAccessor accessor) {
+        long startedAt = System.nanoTime();
+        String outcome = "rejected";
+        try {
+            Map<String, Object> sessionAttributes = accessor.getSessionAttributes();
+            if (sessionAttributes != null && sessionAttributes.get(PRINCIPAL_ATTRIBUTE) instanceof Authentication cached) {
+                accessor.setUser(cached);
+                outcome = "cached";
+                return message;
+            }
 
             String authHeader = accessor.getFirstNativeHeader("Authorization");
-            log.info(">>> [CONNECT-{}] Received Authorization Header: {}", sessionId, authHeader); // 使用 INFO
-            String jwt = null;
-
-            if (StringUtils.hasText(authHeader) && authHeader.startsWith("Bearer ")) {
-                jwt = authHeader.substring(7);
-                log.info(">>> [CONNECT-{}] Extracted JWT from Header.", sessionId); // 使用 INFO
-
-                // --- 嘗試解析 JWT Payload ---
-                try {
-                    // **假設使用 nimbus-jose-jwt 庫**
-                    SignedJWT signedJWT = SignedJWT.parse(jwt);
-                    JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
-                    Map<String, Object> claimsMap = claims.getClaims();
-                    log.info(">>> [CONNECT-{}] DECODED JWT Payload Claims: {}", sessionId, claimsMap); // 記錄所有 Claims
-                    Object userIdClaim = claims.getClaim("userId");
-                    String subjectClaim = claims.getSubject();
-                    log.info(">>> [CONNECT-{}] DECODED JWT userId Claim: {} (Type: {})", sessionId, userIdClaim, (userIdClaim != null ? userIdClaim.getClass().getName() : "N/A"));
-                    log.info(">>> [CONNECT-{}] DECODED JWT Subject (username) Claim: {}", sessionId, subjectClaim);
-                } catch (ParseException e) {
-                    log.error(">>> [CONNECT-{}] FAILED to parse JWT: {}", sessionId, e.getMessage());
-                } catch (Exception e) {
-                     log.error(">>> [CONNECT-{}] UNEXPECTED error during JWT decoding: {}", sessionId, e.getMessage(), e);
-                }
-                // --- 解析記錄結束 ---
-
-            } else {
-                log.warn(">>> [CONNECT-{}] WebSocket CONNECT missing Authorization Bearer Token header.", sessionId);
+            if (!StringUtils.hasText(authHeader) || !authHeader.startsWith("Bearer ")) {
+                // 沒有 token 視為匿名連線
+                outcome = "anonymous";
+                return message;
             }
 
-            if (StringUtils.hasText(jwt)) {
-                Integer authenticatedUserId = null;
-                String username = null;
-
-                try {
-                    // 1. 驗證 Token
-                    log.debug(">>> [CONNECT-{}] Validating JWT with JsonWebTokenUtility...", sessionId);
-                    JWTClaimsSet claimsSet = jsonWebTokenUtility.validateToken(jwt);
-
-                    // 2. 檢查驗證結果
-                    if (claimsSet != null) {
-                        log.info(">>> [CONNECT-{}] JWT validation successful.", sessionId);
-                        log.debug(">>> [CONNECT-{}] Validated ClaimsSet: {}", sessionId, claimsSet.getClaims());
-
-                        // 3. 提取 userId
-                        try {
-                            // **再次確認 JWT 中 userId 的 Claim 名稱和類型**
-                            authenticatedUserId = claimsSet.getIntegerClaim("userId"); // 假設是 Integer
-                            log.info(">>> [CONNECT-{}] Extracted userId from ClaimsSet: {}", sessionId, authenticatedUserId); // 使用 INFO
-                        } catch (Exception e) {
-                            log.error(">>> [CONNECT-{}] FAILED to extract 'userId' (Integer) from ClaimsSet: {}", sessionId, e.getMessage());
-                        }
-
-                        if (authenticatedUserId != null) {
-                            // 4. **【關鍵】設置 Session Attribute**
-                            accessor.getSessionAttributes().put("userId", authenticatedUserId);
-                            // ** 立刻讀回來確認 **
-                            Object userIdInSession = accessor.getSessionAttributes().get("userId");
-                            log.info(">>> [CONNECT-{}] *** Set session attribute 'userId' to: {}. Read back value: {} ***", sessionId, authenticatedUserId, userIdInSession); // 使用 INFO
-
-                            // 5. 設置 Principal
-                            try {
-                                username = claimsSet.getSubject();
-                                log.debug(">>> [CONNECT-{}] Attempting to set Principal using Subject (username): {}", sessionId, username);
-                                if (username != null) {
-                                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                                    Authentication authentication = new UsernamePasswordAuthenticationToken(
-                                        userDetails, null, userDetails.getAuthorities());
-                                    accessor.setUser(authentication);
-                                    log.info(">>> [CONNECT-{}] *** Set Spring Security Principal for user: '{}' (ID: {}) ***", sessionId, authentication.getName(), authenticatedUserId); // 使用 INFO
-                                } else {
-                                    log.warn(">>> [CONNECT-{}] Username (subject) not found in JWT claims, cannot set Principal.", sessionId);
-                                }
-                            } catch (Exception ex) {
-                                log.error(">>> [CONNECT-{}] Error loading UserDetails or setting Principal for username '{}': {}", sessionId, username, ex.getMessage(), ex);
-                            }
-
-                        } else { // authenticatedUserId == null
-                            log.error(">>> [CONNECT-{}] Could not extract valid 'userId' claim from token. Rejecting connection.", sessionId);
-                            return null;
-                        }
-
-                    } else { // claimsSet == null
-                        log.warn(">>> [CONNECT-{}] Invalid JWT received (validation failed or expired). Rejecting connection.", sessionId);
-                        return null;
-                    }
-                } catch (Exception e) {
-                    log.error(">>> [CONNECT-{}] Error processing JWT: {}", sessionId, e.getMessage(), e);
-                    return null;
-                }
-            } else { // jwt 為空
-                log.info(">>> [CONNECT-{}] No JWT found. Handling as anonymous or rejecting.", sessionId);
-                // return null; // 如果不允許匿名
+            if (!tryAcquireConnect()) {
+                outcome = "throttled";
+                throw new MessageDeliveryException(message, "連線過於頻繁，請稍後再試");
+            }
+
+            String token = authHeader.substring(7);
+            JWTClaimsSet claimsSet = jsonWebTokenUtility.validateToken(token);
+            if (claimsSet == null) {
+                return null;
+            }
+            Integer userId;
+            try {
+                userId = claimsSet.getIntegerClaim("userId");
+            } catch (ParseException e) {
+                userId = null;
             }
-            log.info("========== [CONNECT-{}] END Interceptor Processing ==========", sessionId);
+            String username = claimsSet.getSubject();
+            if (userId == null || username == null) {
+                log.warn("WebSocket CONNECT 的 token 缺少 userId 或 subject，拒絕連線: session={}", accessor.getSessionId());
+                return null;
+            }
+
+            UserDetails userDetails = principalCache.get(token, username, userDetailsService::loadUserByUsername);
+            Authentication authentication = new UsernamePasswordAuthenticationToken(userDetails, null,
+                    userDetails.getAuthorities());
+            accessor.setUser(authentication);
+            if (sessionAttributes != null) {
+                sessionAttributes.put(USER_ID_ATTRIBUTE, userId);
+                sessionAttributes.put(PRINCIPAL_ATTRIBUTE, authentication);
+            }
+            outcome = "authenticated";
+            return message;
+        } catch (MessageDeliveryException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            log.warn("WebSocket CONNECT 認證失敗: session={}, {}", accessor.getSessionId(), e.getMessage());
+            return null;
+        } finally {
+            long elapsed = System.nanoTime() - startedAt;
+            connectTimers.computeIfAbsent(outcome,
+                    name -> Timer.builder("chat.ws.connect.auth").tag("outcome", name).publishPercentileHistogram()
+                            .register(meterRegistry))
+                    .record(elapsed, TimeUnit.NANOSECONDS);
         }
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        handleStartedAt.set(System.nanoTime());
         return message;
     }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+            Exception ex) {
+        Long startedAt = handleStartedAt.get();
+        handleStartedAt.remove();
+        if (startedAt == null) {
+            return;
+        }
+        StompCommand command = StompHeaderAccessor.getCommand(message.getHeaders());
+        if (command == null) {
+            return;
+        }
+        String handlerName = handler.getClass().getSimpleName();
+        handleTimers.computeIfAbsent(command.name() + '|' + handlerName,
+                key -> Timer.builder("chat.ws.inbound.handle").tag("command", command.name())
+                        .tag("handler", handlerName).publishPercentileHistogram().register(meterRegistry))
+                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * CONNECT 令牌桶，每秒補充 connectPermitsPerSecond 個，最多累積 connectBurst 個
+     */
+    private synchronized boolean tryAcquireConnect() {
+        long now = System.nanoTime();
+        connectTokens = Math.min(connectBurst,
+                connectTokens + (now - connectRefilledAt) * connectPermitsPerSecond / 1_000_000_000d);
+        connectRefilledAt = now;
+        if (connectTokens < 1) {
+            return false;
+        }
+        connectTokens -= 1;
+        return true;
+    }
 }
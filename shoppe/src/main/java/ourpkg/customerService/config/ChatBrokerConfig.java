@@ -0,0 +1,26 @@
+package ourpkg.customerService.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import ourpkg.customerService.service.ChatFanout;
+import ourpkg.customerService.service.InProcessChatFanout;
+
+/**
+ * 聊天推播在多台伺服器之間轉送的通道
+ *
+ * chat.broker.fanout=in-process 使用同一個 JVM 內的假通道，測試時在單機上啟動多個 context
+ * 並設定相同的 chat.broker.cluster 即可模擬多台伺服器。正式環境自行提供 ChatFanout bean
+ * （例如接到訊息佇列），不需要設定 chat.broker.fanout。
+ */
+@Configuration
+public class ChatBrokerConfig {
+
+	@Bean(destroyMethod = "close")
+	@ConditionalOnProperty(name = "chat.broker.fanout", havingValue = "in-process")
+	public ChatFanout inProcessChatFanout(@Value("${chat.broker.cluster:chat}") String cluster) {
+		return new InProcessChatFanout(cluster);
+	}
+}
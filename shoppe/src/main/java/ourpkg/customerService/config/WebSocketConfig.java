@@ -40,6 +40,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 	@Override
 	public void configureMessageBroker(MessageBrokerRegistry registry) {
 		// 設定消息代理（可選，但建議用於聊天室）
+		// chat.broker.mode=relay 時每台伺服器仍使用自己的 simple broker，聊天推播由 ChatMessagePublisher 轉送到其他伺服器
 		registry.enableSimpleBroker("/topic", "/queue"); // 訂閱前綴（例如：/topic/messages）
 		registry.setApplicationDestinationPrefixes("/app"); // 服務端接收前綴（例如：/app/send）
 		registry.setUserDestinationPrefix("/user");
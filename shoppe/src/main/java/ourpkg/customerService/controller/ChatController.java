@@ -14,9 +14,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -37,6 +35,10 @@ import ourpkg.customerService.dto.ConversationDTO;
 import ourpkg.customerService.dto.ShopDTO;
 import ourpkg.customerService.entity.ChatMessageEntity;
 import ourpkg.customerService.entity.ChatRoomEntity;
+import ourpkg.customerService.service.ChatMessagePublisher;
+import ourpkg.customerService.service.ChatMessageSpool;
+import ourpkg.customerService.service.ChatMessageWriteBehind;
+import ourpkg.customerService.service.ChatRoomMembershipCache;
 import ourpkg.customerService.service.ChatService;
 import ourpkg.shop.SellerShopRepository;
 import ourpkg.shop.Shop;
@@ -52,13 +54,19 @@ public class ChatController {
 	@Autowired
 	private ChatService chatService;
 	@Autowired
-	private SimpMessagingTemplate simpMessagingTemplate;
+	private ChatMessagePublisher chatMessagePublisher;
 	@Autowired
 	private UserService userService;
 
 	@Autowired
 	private SellerShopRepository shopRepository;
 
+	@Autowired
+	private ChatRoomMembershipCache membershipCache;
+
+	@Autowired
+	private ChatMessageWriteBehind chatMessageWriteBehind;
+
 	// ==== 聊天室建立端點 ====
 	@PostMapping("/create")
 	@Transactional
@@ -77,14 +85,18 @@ public class ChatController {
 
 // 推送通知给卖家
 		Shop shop = shopRepository.findById(chatRequest.getShopId()).orElseThrow();
-		simpMessagingTemplate.convertAndSendToUser(shop.getUser().getUserId().toString(), "/queue/new-chat",
+		chatMessagePublisher.sendToUser(shop.getUser().getUserId().toString(), "/queue/new-chat",
 				Map.of("shopId", shop.getShopId()));
 		return ResponseEntity.ok(Map.of("chatRoomId", chatRoom.getChatRoomId(), "alreadyExists", false));
 	}
 
+	/**
+	 * 分頁取得聊天紀錄（由舊到新），往回捲動時把目前最舊一則的 messageId 當作 before 傳入，
+	 * 回傳筆數少於 limit 表示已經沒有更早的訊息
+	 */
 	@GetMapping("/{chatRoomId}/messages")
-	// 1. 修改返回類型為 List<ChatMessageDTO>
 	public ResponseEntity<List<ChatMessageDTO>> getMessages(@PathVariable Integer chatRoomId,
+			@RequestParam(required = false) Integer before, @RequestParam(defaultValue = "30") int limit,
 			Authentication authentication) {
 		User currentUser = userService.findByUsername(authentication.getName())
 				.orElseThrow(() -> new AccessDeniedException("使用者未登入"));
@@ -92,16 +104,7 @@ public class ChatController {
 		// 權限驗證
 		chatService.validateChatRoom(chatRoomId, currentUser.getUserId());
 
-		// 從 Service 獲取 Entity 列表
-		List<ChatMessageEntity> messageEntities = chatService.getMessages(chatRoomId);
-
-		// 2. 將 Entity 列表轉換為 DTO 列表
-		List<ChatMessageDTO> messageDTOs = messageEntities.stream().map(this::convertToMessageDTOWithSenderInfo) // 使用包含
-																													// Sender
-																													// 資訊的轉換方法
-				.collect(Collectors.toList());
-
-		return ResponseEntity.ok(messageDTOs);
+		return ResponseEntity.ok(chatService.getMessagePage(chatRoomId, before, limit));
 	}
 
 	// 3. 提供或修改一個轉換方法，確保包含 senderId 或 sender DTO
@@ -171,124 +174,55 @@ public class ChatController {
 	}
 
 	// ==== WebSocket 訊息處理 ====
+	// 成員驗證走快取，訊息寫入暫存檔後立即廣播，資料庫寫入由 ChatMessageWriteBehind 批次處理。
+	// 前端協定（與改為延後寫入前不同）：
+	// 1. /topic/chat/{chatRoomId} 收到的訊息 id 為 null、pending 為 true，以送出時帶的 tempId 識別
+	// 2. 寫入完成後 /topic/chat/{chatRoomId}/ack 會收到 {id, tempId, senderId}，前端需訂閱並以 tempId 換成正式ID，
+	//    標記已讀、刪除等需要訊息ID的操作要等 ack 之後才能進行
+	// 3. 寫入失敗被略過的訊息不會有 ack；重新載入聊天紀錄（REST）時只會出現已寫入的訊息
 	@MessageMapping("/chat/{chatRoomId}/send")
-	@SendTo("/topic/chat/{chatRoomId}") // 保留 @SendTo 以廣播訊息本身
-	@Transactional
-	public Map<String, Object> handleChatMessage(@DestinationVariable Integer chatRoomId,
+	public void handleChatMessage(@DestinationVariable Integer chatRoomId,
 			@Payload ChatMessageDTO messageDTO, SimpMessageHeaderAccessor headerAccessor) {
 
 		String sessionId = headerAccessor.getSessionId(); // 獲取 Session ID
-		log.info("========== [MSG-{}] START Controller Processing ==========", sessionId); // 標記開始
-
-		// --- 【必要日誌 A】記錄從 Session 讀取的 userId ---
 		Integer userIdFromSession = (Integer) headerAccessor.getSessionAttributes().get("userId");
-		log.info(">>> [MSG-{}] userId from session attributes: {}", sessionId, userIdFromSession);
-
-		// --- 【必要日誌 B】記錄從客戶端收到的原始 DTO ---
-		// 注意：如果 DTO 包含敏感資訊，請考慮只記錄部分欄位或調整日誌級別
-		log.info(">>> [MSG-{}] Received DTO from client (@Payload): {}", sessionId, messageDTO);
 
-		// --- 執行原本的驗證和填充邏輯 ---
 		if (userIdFromSession == null) {
 			log.error(">>> [MSG-{}] WebSocket session attribute 'userId' is NULL. Rejecting message.", sessionId);
-			// 考慮是否要拋出異常或返回錯誤訊息給客戶端 (需要不同機制，不能直接 return null)
 			throw new AccessDeniedException("用戶未識別 (Session無userId)");
 		}
-
-		messageDTO.setChatRoomId(chatRoomId); // 設置 ChatRoom ID
-
-		if (messageDTO.getSender() == null || messageDTO.getSender().getUserId() == null) {
-			log.debug(">>> [MSG-{}] Payload DTO missing sender info. Populating from session userId: {}", sessionId,
-					userIdFromSession);
-			UserDTO senderDto = new UserDTO();
-			senderDto.setUserId(userIdFromSession);
-			// 這裡可以選擇性地加入查找 username 的邏輯，但 Service 層也會做
-			// userService.findById(userIdFromSession).ifPresent(u ->
-			// senderDto.setUserName(u.getUsername()));
-			messageDTO.setSender(senderDto);
-		} else if (!messageDTO.getSender().getUserId().equals(userIdFromSession)) {
+		if (messageDTO.getSender() != null && messageDTO.getSender().getUserId() != null
+				&& !messageDTO.getSender().getUserId().equals(userIdFromSession)) {
 			log.error(">>> [MSG-{}] Mismatch! Payload Sender ID: {} != Session User ID: {}. Rejecting message.",
 					sessionId, messageDTO.getSender().getUserId(), userIdFromSession);
 			throw new AccessDeniedException("发送者ID与认证用户不符");
 		}
-		// 確保頂層 userId 也設置正確（來自 Session）
-		messageDTO.setUserId(userIdFromSession);
-		// --- 【必要日誌 C】記錄傳遞給 Service 前的 DTO ---
-		log.info(">>> [MSG-{}] DTO state before calling chatService.saveMessage: {}", sessionId, messageDTO);
-
-		// --- 呼叫 Service ---
-		ChatMessageDTO savedMessageDTO = chatService.saveMessage(messageDTO);
-		log.debug(">>> [MSG-{}] Received DTO back from chatService.saveMessage: {}", sessionId, savedMessageDTO); // 記錄
-																													// Service
-																													// 返回結果
-
-		// --- 推送未讀數更新 ---
-		try {
-			ChatRoomEntity chatRoom = chatService.getChatRoomById(chatRoomId); // 獲取聊天室實體 (包含 User 實體)
-			UserDTO senderDTO = savedMessageDTO.getSender(); // *** 從 DTO 獲取 senderDTO ***
-			if (senderDTO == null || senderDTO.getUserId() == null) {
-				log.error("儲存後的訊息 DTO 缺少發送者資訊！無法判斷接收者。");
-				throw new IllegalStateException("無法從已存訊息中確定發送者");
-			}
-			Integer senderId = senderDTO.getUserId(); // *** 從 senderDTO 獲取發送者 ID ***
-
-			User recipientEntity = null; // ** 接收者需要是 User 實體，以便檢查角色和獲取 username **
-
-			// 判斷接收者 User 實體
-			if (chatRoom.getBuyer() != null && chatRoom.getBuyer().getUserId().equals(senderId)) {
-				recipientEntity = chatRoom.getSeller(); // 接收者是聊天室的 Seller User 實體
-			} else if (chatRoom.getSeller() != null && chatRoom.getSeller().getUserId().equals(senderId)) {
-				recipientEntity = chatRoom.getBuyer(); // 接收者是聊天室的 Buyer User 實體
-			}
-
-			// 如果找到了接收者，並且接收者是賣家，則推送更新
-			if (recipientEntity != null
-					&& recipientEntity.getRole().stream().anyMatch(role -> role.getRoleName().equals("SELLER"))) {
-				Integer recipientId = recipientEntity.getUserId();
-				String recipientUsername = recipientEntity.getUsername(); // *** 從 User 實體獲取 username ***
-
-				log.info("接收者是賣家 (ID: {}), 正在計算其未讀數...", recipientId);
-				Map<Integer, Integer> updatedUnreadCounts = chatService.getUnreadCounts(recipientId);
-
-				String destination = "/queue/unread-update";
-				log.info("準備推送未讀數更新給使用者 '{}' (Principal Name)，目的地: {}, 內容: {}", recipientUsername, destination,
-						updatedUnreadCounts);
+		if (messageDTO.getContent() == null || messageDTO.getContent().isBlank()) {
+			throw new IllegalArgumentException("消息内容不能为空");
+		}
 
-				// *** 使用 recipientUsername (Spring Security Principal Name) 作為推送目標 ***
-				simpMessagingTemplate.convertAndSendToUser(recipientUsername, // 使用 Username
-						destination, updatedUnreadCounts);
-				log.info("已推送未讀數更新給使用者 '{}'", recipientUsername);
-			} else {
-				log.debug("接收者不是賣家或未找到，跳過未讀數推送。接收者 User ID: {}",
-						recipientEntity != null ? recipientEntity.getUserId() : "null");
-			}
-		} catch (Exception e) {
-			log.error("為聊天室 ID {} 推送未讀數更新時發生錯誤: {}", chatRoomId, e.getMessage(), e);
-			// 這裡不應中斷主訊息的廣播
+		// 權限驗證（快取的聊天室成員）
+		ChatRoomMembershipCache.Membership membership = membershipCache.get(chatRoomId);
+		if (!membership.isMember(userIdFromSession)) {
+			throw new AccessDeniedException("使用者 " + userIdFromSession + " 無權訪問此聊天室");
 		}
-		// --- 推送邏輯結束 ---
+		String senderName = membership.nameOf(userIdFromSession);
 
-		// --- 【必要日誌 D】記錄廣播前的最終 Sender 資訊 ---
-        log.info(">>> [MSG-{}] === Final Check Before Broadcast ===", sessionId);
-        Integer finalSenderId = (savedMessageDTO.getSender() != null) ? savedMessageDTO.getSender().getUserId() : null;
-        String finalSenderName = savedMessageDTO.getSenderName(); // 使用優先處理過的頂層 senderName
-        log.info(">>> [MSG-{}] Broadcasting with Sender ID: {}", sessionId, finalSenderId);
-        log.info(">>> [MSG-{}] Broadcasting with Sender Name: {}", sessionId, finalSenderName);
-        log.info(">>> [MSG-{}] ====================================", sessionId);
+		ChatMessageSpool.Entry entry = chatMessageWriteBehind.submit(chatRoomId, userIdFromSession, senderName,
+				messageDTO.getContent(), messageDTO.getTempId());
 
-		// 構建要廣播到 /topic/chat/{chatRoomId} 的訊息內容 (使用 savedMessageDTO)
+		// 構建要廣播到 /topic/chat/{chatRoomId} 的訊息內容，正式ID寫入資料庫後另外送出
 		Map<String, Object> response = new HashMap<>();
-		response.put("id", savedMessageDTO.getMessageId()); // 使用後端生成的 ID
+		response.put("id", null);
 		response.put("tempId", messageDTO.getTempId()); // 回傳前端的臨時 ID
-		response.put("content", savedMessageDTO.getContent());
-		response.put("senderId", savedMessageDTO.getSender().getUserId()); // *** 從 sender DTO 取 ID ***
-		response.put("senderName", savedMessageDTO.getSender().getUserName()); // *** 從 sender DTO 取 Name ***
-		response.put("timestamp", savedMessageDTO.getTimestamp().toString()); // 確保格式一致
-		response.put("isRead", savedMessageDTO.isRead()); // 包含讀取狀態
-
-		 log.info("========== [MSG-{}] END Controller Processing ==========", sessionId); // 標記結束
-		// 如果使用 @SendTo，直接 return response
-		return response;
+		response.put("content", entry.getContent());
+		response.put("senderId", userIdFromSession);
+		response.put("senderName", senderName);
+		response.put("timestamp", entry.getSentAt().toString()); // 確保格式一致
+		response.put("isRead", false);
+		response.put("pending", true);
+		// 不用 @SendTo，relay 模式才能同時轉送到其他伺服器
+		chatMessagePublisher.sendToTopic("/topic/chat/" + chatRoomId, response);
 	}
 
 	// 新增根据店铺ID获取聊天室的端点
@@ -431,12 +365,12 @@ public class ChatController {
 		response.put("timestamp", savedMessage.getTimestamp());
 
 		// 6. 广播消息
-		simpMessagingTemplate.convertAndSend("/topic/chat/" + chatRoomId, savedMessage);
+		chatMessagePublisher.sendToTopic("/topic/chat/" + chatRoomId, savedMessage);
 
 		// 7. 更新未读计数
 		Integer receiverId = chatService.getChatRoomById(chatRoomId).getSeller().getUserId();
 		Integer unreadCount = chatService.getUnreadCount(chatRoomId, receiverId);
-		simpMessagingTemplate.convertAndSendToUser(receiverId.toString(), "/queue/notifications",
+		chatMessagePublisher.sendToUser(receiverId.toString(), "/queue/notifications",
 				Map.of("chatRoomId", chatRoomId, "unreadCount", unreadCount));
 		return ResponseEntity.ok(response);
 	}
@@ -451,7 +385,7 @@ public class ChatController {
 		chatService.markMessagesAsRead(chatRoomId, user.getUserId());
 
 		// 广播已读状态
-		simpMessagingTemplate.convertAndSend("/topic/chat/" + chatRoomId + "/read-status",
+		chatMessagePublisher.sendToTopic("/topic/chat/" + chatRoomId + "/read-status",
 				Map.of("readerId", user.getUserId()));
 
 		return ResponseEntity.ok().build();
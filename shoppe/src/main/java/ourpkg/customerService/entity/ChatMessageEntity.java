@@ -13,6 +13,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
@@ -28,7 +29,7 @@ import ourpkg.user_role_permission.user.User;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "ChatMessage")
+@Table(name = "ChatMessage", indexes = @Index(name = "ix_chat_message_room", columnList = "chat_room_id, chatMessage_id"))
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"}) // 避免 JSON 解析錯誤
 public class ChatMessageEntity {
 	@Id
@@ -63,6 +63,23 @@ public class ChatRoomEntity {
 	@Column(name = "last_active_at")
 	private LocalDateTime lastActiveAt;
 
+	// 以下三個欄位只由 ChatRoomRepository / ChatMessageWriteBehind 的更新語法維護，
+	// 儲存實體時不會寫入，避免用記憶體中的舊值蓋掉並行更新的結果
+
+	// 買家的未讀數（賣家發送、買家尚未讀取）
+	@Column(name = "buyer_unread_count", nullable = false, insertable = false, updatable = false,
+			columnDefinition = "int not null default 0")
+	private Integer buyerUnreadCount = 0;
+
+	// 賣家的未讀數（買家發送、賣家尚未讀取）
+	@Column(name = "seller_unread_count", nullable = false, insertable = false, updatable = false,
+			columnDefinition = "int not null default 0")
+	private Integer sellerUnreadCount = 0;
+
+	// 最後一則訊息的ID
+	@Column(name = "last_message_id", insertable = false, updatable = false)
+	private Integer lastMessageId;
+
 	// 添加更新方法
 	public void updateLastActive() {
 	    this.lastActiveAt = LocalDateTime.now();
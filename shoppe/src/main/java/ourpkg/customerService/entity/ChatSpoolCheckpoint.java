@@ -0,0 +1,38 @@
+package ourpkg.customerService.entity;
+
+import java.util.Date;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 聊天訊息暫存檔的寫入進度，和訊息在同一個交易內更新，重啟後從 lastSeq 之後重送
+ */
+@Entity
+@Table(name = "chat_spool_checkpoint")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSpoolCheckpoint {
+
+	// 每台主機各自的暫存檔，以 chat.write-behind.node-id 區分
+	@Id
+	@Column(name = "node_id", length = 50)
+	private String nodeId;
+
+	@Column(name = "last_seq", nullable = false)
+	private Long lastSeq;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "updated_at")
+	private Date updatedAt;
+}
@@ -3,7 +3,9 @@ package ourpkg.customerService.repository;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -20,6 +22,28 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessageEntity,
     // 根據關聯的聊天室的主鍵（假設為 chatRoomId）查詢消息並按 timestamp 排序
     List<ChatMessageEntity> findByChatRoomEntityChatRoomIdOrderByTimestampAsc(Integer chatRoomId);
 
+    // 聊天室最新的訊息（由新到舊，筆數由 Pageable 決定），只取純量欄位：
+    // [訊息ID, 內容, 時間, 發送者ID, 發送者名稱, 是否已讀]
+    @Query("SELECT m.messageId, m.content, m.timestamp, s.userId, COALESCE(s.userName, m.senderName), m.isRead " +
+           "FROM ChatMessageEntity m JOIN m.sender s " +
+           "WHERE m.chatRoomEntity.chatRoomId = :chatRoomId " +
+           "ORDER BY m.messageId DESC")
+    List<Object[]> findLatestMessageRows(@Param("chatRoomId") Integer chatRoomId, Pageable pageable);
+
+    // 往前翻頁：訊息ID小於 beforeId 的訊息（由新到舊），欄位同上
+    @Query("SELECT m.messageId, m.content, m.timestamp, s.userId, COALESCE(s.userName, m.senderName), m.isRead " +
+           "FROM ChatMessageEntity m JOIN m.sender s " +
+           "WHERE m.chatRoomEntity.chatRoomId = :chatRoomId AND m.messageId < :beforeId " +
+           "ORDER BY m.messageId DESC")
+    List<Object[]> findMessageRowsBefore(@Param("chatRoomId") Integer chatRoomId, @Param("beforeId") Integer beforeId,
+            Pageable pageable);
+
+    // 讀者以外的人發送的未讀訊息全部標為已讀
+    @Modifying
+    @Query("UPDATE ChatMessageEntity m SET m.isRead = true " +
+           "WHERE m.chatRoomEntity.chatRoomId = :chatRoomId AND m.isRead = false AND m.sender.userId <> :userId")
+    int markReadByRecipient(@Param("chatRoomId") Integer chatRoomId, @Param("userId") Integer userId);
+
     // 使用 chatRoomEntity.chatRoomId 作为查询条件
     Integer countByChatRoomEntityChatRoomIdAndIsReadFalseAndSenderUserIdNot(
             Integer chatRoomId, 
@@ -4,10 +4,13 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
 import ourpkg.customerService.entity.ChatRoomEntity;
 import ourpkg.shop.Shop;
 import ourpkg.user_role_permission.user.User;
@@ -23,6 +26,11 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoomEntity, Intege
 	        "LEFT JOIN FETCH cr.seller " +
 	        "WHERE cr.chatRoomId = :chatRoomId")
 	Optional<ChatRoomEntity> findWithAssociations(@Param("chatRoomId") Integer chatRoomId);
+
+	// 鎖住聊天室列：寫入新訊息與標記已讀都先取得這個鎖，再更新 ChatMessage
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT cr FROM ChatRoomEntity cr WHERE cr.chatRoomId = :chatRoomId")
+	Optional<ChatRoomEntity> findByIdForUpdate(@Param("chatRoomId") Integer chatRoomId);
     
     
 	List<ChatRoomEntity> findBySeller_UserId(Integer sellerId);
@@ -75,4 +83,59 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoomEntity, Intege
            "ORDER BY cr.lastActiveAt DESC NULLS LAST, cr.createdAt DESC")
     List<ChatRoomEntity> findByBuyerUserIdWithDetailsOrderByLastActiveDesc(@Param("buyerId") Integer buyerId);
     // --- >>> 新增方法結束 <<< ---
+
+    // 聊天室成員：[買家ID, 買家名稱, 賣家ID, 賣家名稱]
+    @Query("SELECT cr.buyer.userId, cr.buyer.userName, cr.seller.userId, cr.seller.userName " +
+           "FROM ChatRoomEntity cr WHERE cr.chatRoomId = :chatRoomId")
+    List<Object[]> findMembershipRows(@Param("chatRoomId") Integer chatRoomId);
+
+    // ==== 未讀數與最後一則訊息（只能由這些更新語法維護） ====
+
+    // 新訊息：對方的未讀數加一，並更新最後一則訊息
+    @Modifying
+    @Query("UPDATE ChatRoomEntity cr SET " +
+           "cr.sellerUnreadCount = cr.sellerUnreadCount + CASE WHEN cr.buyer.userId = :senderId THEN 1 ELSE 0 END, " +
+           "cr.buyerUnreadCount = cr.buyerUnreadCount + CASE WHEN cr.seller.userId = :senderId THEN 1 ELSE 0 END, " +
+           "cr.lastMessageId = CASE WHEN cr.lastMessageId IS NULL OR cr.lastMessageId < :messageId " +
+           "THEN :messageId ELSE cr.lastMessageId END " +
+           "WHERE cr.chatRoomId = :chatRoomId")
+    int recordNewMessage(@Param("chatRoomId") Integer chatRoomId, @Param("senderId") Integer senderId,
+            @Param("messageId") Integer messageId);
+
+    // 已讀：讀者（買家或賣家）的未讀數歸零
+    @Modifying
+    @Query("UPDATE ChatRoomEntity cr SET " +
+           "cr.buyerUnreadCount = CASE WHEN cr.buyer.userId = :userId THEN 0 ELSE cr.buyerUnreadCount END, " +
+           "cr.sellerUnreadCount = CASE WHEN cr.seller.userId = :userId THEN 0 ELSE cr.sellerUnreadCount END " +
+           "WHERE cr.chatRoomId = :chatRoomId")
+    int resetUnreadCount(@Param("chatRoomId") Integer chatRoomId, @Param("userId") Integer userId);
+
+    // 聊天室的 [買家ID, 賣家ID, 買家未讀數, 賣家未讀數]
+    @Query("SELECT cr.buyer.userId, cr.seller.userId, cr.buyerUnreadCount, cr.sellerUnreadCount " +
+           "FROM ChatRoomEntity cr WHERE cr.chatRoomId = :chatRoomId")
+    List<Object[]> findUnreadCountRows(@Param("chatRoomId") Integer chatRoomId);
+
+    // 賣家各店鋪的未讀總數：[店鋪ID, 未讀數]
+    @Query("SELECT sh.shopId, SUM(cr.sellerUnreadCount) FROM ChatRoomEntity cr " +
+           "JOIN cr.seller u JOIN u.shop sh " +
+           "WHERE u.userId = :sellerId " +
+           "GROUP BY sh.shopId HAVING SUM(cr.sellerUnreadCount) > 0")
+    List<Object[]> sumSellerUnreadByShop(@Param("sellerId") Integer sellerId);
+
+    // 對話列表（一次查詢，最後一則訊息由 lastMessageId 直接取得）：
+    // [聊天室ID, 最後活躍時間, 建立時間, 買家ID, 買家名稱, 賣家ID, 賣家名稱, 店鋪ID, 店鋪名稱,
+    //  買家未讀數, 賣家未讀數, 最後訊息內容, 最後訊息發送者, 最後訊息時間]
+    @Query("SELECT cr.chatRoomId, cr.lastActiveAt, cr.createdAt, b.userId, b.userName, s.userId, s.userName, " +
+           "sh.shopId, sh.shopName, cr.buyerUnreadCount, cr.sellerUnreadCount, m.content, m.senderName, m.timestamp " +
+           "FROM ChatRoomEntity cr JOIN cr.buyer b JOIN cr.seller s LEFT JOIN s.shop sh " +
+           "LEFT JOIN ChatMessageEntity m ON m.messageId = cr.lastMessageId " +
+           "WHERE s.userId = :sellerId")
+    List<Object[]> findSellerConversationRows(@Param("sellerId") Integer sellerId);
+
+    @Query("SELECT cr.chatRoomId, cr.lastActiveAt, cr.createdAt, b.userId, b.userName, s.userId, s.userName, " +
+           "sh.shopId, sh.shopName, cr.buyerUnreadCount, cr.sellerUnreadCount, m.content, m.senderName, m.timestamp " +
+           "FROM ChatRoomEntity cr JOIN cr.buyer b JOIN cr.seller s LEFT JOIN s.shop sh " +
+           "LEFT JOIN ChatMessageEntity m ON m.messageId = cr.lastMessageId " +
+           "WHERE b.userId = :buyerId")
+    List<Object[]> findBuyerConversationRows(@Param("buyerId") Integer buyerId);
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+package ourpkg.customerService.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import ourpkg.customerService.entity.ChatSpoolCheckpoint;
+
+public interface ChatSpoolCheckpointRepository extends JpaRepository<ChatSpoolCheckpoint, String> {
+
+}
@@ -0,0 +1,57 @@
+package ourpkg.customerService.service;
+
+import java.util.function.Consumer;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 多台伺服器之間轉送聊天推播的通道（chat.broker.mode=relay 時使用）
+ *
+ * 每台伺服器只持有連到自己的 WebSocket 連線，所以發送端把要推送的內容交給通道，
+ * 其他伺服器收到後再推送給自己的連線。實作只需要送到「其他」伺服器，本機由發送端自己推送。
+ * 通道只需盡力送達：訊息本身已寫入資料庫或暫存檔，推播遺失時前端重新載入聊天紀錄即可取得。
+ */
+public interface ChatFanout {
+
+	/**
+	 * 送給其他伺服器
+	 */
+	void publish(Broadcast broadcast);
+
+	/**
+	 * 註冊收到其他伺服器推播時的處理，收到的順序與同一台伺服器發送的順序相同
+	 */
+	void subscribe(Consumer<Broadcast> listener);
+
+	/**
+	 * 通道中傳遞的內容，payload 是已轉成 JSON 的訊息本體
+	 */
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	class Broadcast {
+
+		public enum Kind {
+			// 推送到 destination（user 不為 null 時是該使用者的 /user 目的地）
+			DELIVER,
+			// 聊天室有新訊息或已讀狀態改變，其他伺服器的聊天紀錄緩衝區需要重新載入
+			ROOM_CHANGED
+		}
+
+		private Kind kind;
+		private String destination;
+		private String user;
+		private String payload;
+		private Integer chatRoomId;
+
+		public static Broadcast deliver(String destination, String user, String payload) {
+			return new Broadcast(Kind.DELIVER, destination, user, payload, null);
+		}
+
+		public static Broadcast roomChanged(Integer chatRoomId) {
+			return new Broadcast(Kind.ROOM_CHANGED, null, null, null, chatRoomId);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package ourpkg.customerService.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ourpkg.customerService.dto.ChatMessageDTO;
+import ourpkg.user_role_permission.user.dto.UserDTO;
+
+/**
+ * 每個聊天室最近 N 則訊息的環狀緩衝區
+ *
+ * 打開聊天室時先從資料庫載入最新的一頁並建立緩衝區，之後新訊息在交易提交後加入，
+ * 往回捲動只要還在緩衝區範圍內就不查資料庫。緩衝區只保存連續的最新訊息，
+ * 若載入期間有新訊息提交（分段計數改變），載入結果就不放入，避免漏掉訊息。
+ * 閒置超過存活時間的聊天室會被移除。
+ *
+ * 多台伺服器（chat.broker.mode=relay）時，其他伺服器的緩衝區看不到本機的變更，
+ * 所以每次變更都會通知 {@link #onRoomChanged} 註冊的處理，由它請其他伺服器移除該聊天室。
+ */
+@Component
+public class ChatHistoryBuffer {
+
+	// 分段計數的數量，必須是 2 的次方
+	private static final int STAMP_STRIPES = 64;
+
+	@Value("${chat.history-buffer.capacity:100}")
+	private int capacity;
+
+	@Value("${chat.history-buffer.max-rooms:10000}")
+	private int maxRooms;
+
+	@Value("${chat.history-buffer.idle-ms:1800000}")
+	private long idleMillis;
+
+	private final Map<Integer, RoomBuffer> rooms = new ConcurrentHashMap<>();
+
+	// 每個分段有新訊息或狀態變更的次數
+	private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+
+	private volatile Consumer<Integer> roomChangedListener = chatRoomId -> {
+	};
+
+	/**
+	 * 緩衝區保存的訊息（不可修改，除了已讀狀態）
+	 */
+	static final class BufferedMessage {
+		private final Integer messageId;
+		private final Integer chatRoomId;
+		private final String content;
+		private final LocalDateTime timestamp;
+		private final Integer senderId;
+		private final String senderName;
+		private volatile boolean read;
+
+		BufferedMessage(Integer messageId, Integer chatRoomId, String content, LocalDateTime timestamp, Integer senderId,
+				String senderName, boolean read) {
+			this.messageId = messageId;
+			this.chatRoomId = chatRoomId;
+			this.content = content;
+			this.timestamp = timestamp;
+			this.senderId = senderId;
+			this.senderName = senderName;
+			this.read = read;
+		}
+
+		ChatMessageDTO toDTO() {
+			UserDTO sender = new UserDTO();
+			sender.setUserId(senderId);
+			sender.setUserName(senderName);
+			return ChatMessageDTO.builder().messageId(messageId).chatRoomId(chatRoomId).content(content)
+					.timestamp(timestamp).sender(sender).senderName(senderName).isRead(read).build();
+		}
+	}
+
+	/**
+	 * 單一聊天室的環狀緩衝區，依訊息ID由舊到新排列
+	 */
+	private static final class RoomBuffer {
+		private final BufferedMessage[] ring;
+		private int start = 0;
+		private int size = 0;
+		// 緩衝區是否已包含這個聊天室最舊的訊息（整個聊天室都在記憶體中）
+		private boolean complete;
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		private RoomBuffer(int capacity, boolean complete) {
+			this.ring = new BufferedMessage[capacity];
+			this.complete = complete;
+		}
+
+		private BufferedMessage at(int index) {
+			return ring[(start + index) % ring.length];
+		}
+
+		/**
+		 * 依訊息ID插入（提交順序可能與ID順序不同），滿了就丟掉最舊的一則
+		 */
+		private void insert(BufferedMessage message) {
+			int position = size;
+			while (position > 0 && at(position - 1).messageId > message.messageId) {
+				position--;
+			}
+			if (position > 0 && at(position - 1).messageId.equals(message.messageId)) {
+				return;
+			}
+			if (size == ring.length) {
+				if (position == 0) {
+					// 比緩衝區內最舊的還舊，不需要保存
+					return;
+				}
+				start = (start + 1) % ring.length;
+				size--;
+				position--;
+				complete = false;
+			}
+			for (int i = size; i > position; i--) {
+				ring[(start + i) % ring.length] = at(i - 1);
+			}
+			ring[(start + position) % ring.length] = message;
+			size++;
+		}
+	}
+
+	/**
+	 * 從緩衝區讀取一頁訊息（由舊到新）
+	 *
+	 * @param beforeMessageId 只取ID小於此值的訊息，null 表示最新的一頁
+	 * @return 緩衝區無法完整提供這一頁時回傳 null，呼叫端應改查資料庫
+	 */
+	public List<ChatMessageDTO> readPage(Integer chatRoomId, Integer beforeMessageId, int limit) {
+		RoomBuffer room = rooms.get(chatRoomId);
+		if (room == null) {
+			return null;
+		}
+		room.lastAccess = System.currentTimeMillis();
+		synchronized (room) {
+			int end = room.size;
+			if (beforeMessageId != null) {
+				while (end > 0 && room.at(end - 1).messageId >= beforeMessageId) {
+					end--;
+				}
+			}
+			if (end < limit && !room.complete) {
+				return null;
+			}
+			int from = Math.max(0, end - limit);
+			List<ChatMessageDTO> page = new ArrayList<>(end - from);
+			for (int i = from; i < end; i++) {
+				page.add(room.at(i).toDTO());
+			}
+			return page;
+		}
+	}
+
+	/**
+	 * 目前的分段計數，載入資料庫前取得，放入緩衝區時傳回 {@link #seed}
+	 */
+	public long stamp(Integer chatRoomId) {
+		return stamps.get(stripe(chatRoomId));
+	}
+
+	/**
+	 * 以資料庫載入的最新訊息建立緩衝區
+	 *
+	 * @param newestFirst 由新到舊的訊息（最多取容量筆）
+	 * @param complete    是否已包含這個聊天室全部的訊息
+	 * @param stamp       載入前的 {@link #stamp(Integer)}，期間有變動就不放入
+	 */
+	public void seed(Integer chatRoomId, List<BufferedMessage> newestFirst, boolean complete, long stamp) {
+		RoomBuffer room = new RoomBuffer(capacity, complete && newestFirst.size() <= capacity);
+		for (int i = Math.min(newestFirst.size(), capacity) - 1; i >= 0; i--) {
+			room.insert(newestFirst.get(i));
+		}
+		if (rooms.size() >= maxRooms) {
+			evictIdle();
+			if (rooms.size() >= maxRooms) {
+				rooms.clear();
+			}
+		}
+		synchronized (this) {
+			if (stamps.get(stripe(chatRoomId)) == stamp) {
+				rooms.putIfAbsent(chatRoomId, room);
+			}
+		}
+	}
+
+	/**
+	 * 新訊息寫入資料庫後加入緩衝區（有交易時等提交後才加入）
+	 */
+	public void append(ChatMessageDTO message) {
+		if (message.getChatRoomId() == null || message.getMessageId() == null) {
+			return;
+		}
+		Integer senderId = message.getSender() != null ? message.getSender().getUserId() : message.getUserId();
+		BufferedMessage buffered = new BufferedMessage(message.getMessageId(), message.getChatRoomId(),
+				message.getContent(), message.getTimestamp(), senderId, message.getSenderName(), message.isRead());
+		afterCommit(() -> {
+			bump(buffered.chatRoomId);
+			RoomBuffer room = rooms.get(buffered.chatRoomId);
+			if (room != null) {
+				synchronized (room) {
+					room.insert(buffered);
+				}
+			}
+			roomChangedListener.accept(buffered.chatRoomId);
+		});
+	}
+
+	/**
+	 * 讀者以外的人發送的訊息標記為已讀（有交易時等提交後才更新）
+	 */
+	public void markRead(Integer chatRoomId, Integer readerId) {
+		afterCommit(() -> {
+			bump(chatRoomId);
+			RoomBuffer room = rooms.get(chatRoomId);
+			if (room != null) {
+				synchronized (room) {
+					for (int i = 0; i < room.size; i++) {
+						BufferedMessage message = room.at(i);
+						if (!readerId.equals(message.senderId)) {
+							message.read = true;
+						}
+					}
+				}
+			}
+			roomChangedListener.accept(chatRoomId);
+		});
+	}
+
+	public void invalidate(Integer chatRoomId) {
+		bump(chatRoomId);
+		rooms.remove(chatRoomId);
+	}
+
+	/**
+	 * 註冊本機變更聊天室後的處理（提交後呼叫），只能有一個
+	 */
+	public void onRoomChanged(Consumer<Integer> listener) {
+		this.roomChangedListener = listener;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	@Scheduled(fixedDelayString = "${chat.history-buffer.sweep-interval-ms:300000}")
+	public void evictIdle() {
+		long threshold = System.currentTimeMillis() - idleMillis;
+		rooms.values().removeIf(room -> room.lastAccess < threshold);
+	}
+
+	private void bump(Integer chatRoomId) {
+		synchronized (this) {
+			stamps.incrementAndGet(stripe(chatRoomId));
+		}
+	}
+
+	private void afterCommit(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		} else {
+			action.run();
+		}
+	}
+
+	private static int stripe(Integer chatRoomId) {
+		int h = chatRoomId.hashCode();
+		return (h ^ (h >>> 16)) & (STAMP_STRIPES - 1);
+	}
+}
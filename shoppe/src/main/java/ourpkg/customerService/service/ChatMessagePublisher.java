@@ -0,0 +1,112 @@
+package ourpkg.customerService.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 聊天相關的 WebSocket 推播（/topic/chat/**、/user/queue/**）都經過這裡
+ *
+ * chat.broker.mode=simple（預設）：只有一台伺服器，直接交給本機的 simple broker。
+ * chat.broker.mode=relay：水平擴充時每台伺服器只持有部分連線，推播先送到本機，
+ * 再透過 {@link ChatFanout} 轉給其他伺服器，由它們推送給自己的連線；
+ * 使用者目的地在沒有該使用者連線的伺服器上會直接被丟棄。
+ */
+@Component
+public class ChatMessagePublisher {
+
+	private static final Logger log = LoggerFactory.getLogger(ChatMessagePublisher.class);
+
+	@Autowired
+	private SimpMessagingTemplate simpMessagingTemplate;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ObjectProvider<ChatFanout> fanoutProvider;
+
+	@Autowired
+	private ChatHistoryBuffer chatHistoryBuffer;
+
+	@Value("${chat.broker.mode:simple}")
+	private String mode;
+
+	private ChatFanout fanout;
+
+	@PostConstruct
+	public void init() {
+		if ("simple".equalsIgnoreCase(mode)) {
+			return;
+		}
+		if (!"relay".equalsIgnoreCase(mode)) {
+			throw new IllegalStateException("chat.broker.mode 只能是 simple 或 relay: " + mode);
+		}
+		fanout = fanoutProvider.getIfAvailable();
+		if (fanout == null) {
+			throw new IllegalStateException("chat.broker.mode=relay 需要提供 ChatFanout（例如 chat.broker.fanout=in-process）");
+		}
+		fanout.subscribe(this::receive);
+		chatHistoryBuffer.onRoomChanged(chatRoomId -> fanout.publish(ChatFanout.Broadcast.roomChanged(chatRoomId)));
+		log.info("聊天推播使用 relay 模式: {}", fanout.getClass().getSimpleName());
+	}
+
+	/**
+	 * 推送到所有訂閱 destination 的連線
+	 */
+	public void sendToTopic(String destination, Object payload) {
+		simpMessagingTemplate.convertAndSend(destination, payload);
+		relay(destination, null, payload);
+	}
+
+	/**
+	 * 推送到使用者的 /user 目的地，user 是連線的 Principal 名稱
+	 */
+	public void sendToUser(String user, String destination, Object payload) {
+		simpMessagingTemplate.convertAndSendToUser(user, destination, payload);
+		relay(destination, user, payload);
+	}
+
+	private void relay(String destination, String user, Object payload) {
+		if (fanout == null) {
+			return;
+		}
+		try {
+			fanout.publish(ChatFanout.Broadcast.deliver(destination, user, objectMapper.writeValueAsString(payload)));
+		} catch (JsonProcessingException e) {
+			log.warn("聊天推播轉成 JSON 失敗: {}", destination, e);
+		} catch (RuntimeException e) {
+			// 其他伺服器收不到不影響本機，訊息本身已經保存
+			log.warn("聊天推播轉送到其他伺服器失敗: {}", destination, e);
+		}
+	}
+
+	private void receive(ChatFanout.Broadcast broadcast) {
+		switch (broadcast.getKind()) {
+		case ROOM_CHANGED -> chatHistoryBuffer.invalidate(broadcast.getChatRoomId());
+		case DELIVER -> {
+			Object payload;
+			try {
+				payload = objectMapper.readTree(broadcast.getPayload());
+			} catch (JsonProcessingException e) {
+				log.warn("無法解析其他伺服器的聊天推播: {}", broadcast.getDestination(), e);
+				return;
+			}
+			if (broadcast.getUser() != null) {
+				simpMessagingTemplate.convertAndSendToUser(broadcast.getUser(), broadcast.getDestination(), payload);
+			} else {
+				simpMessagingTemplate.convertAndSend(broadcast.getDestination(), payload);
+			}
+		}
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package ourpkg.customerService.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 尚未寫入資料庫的聊天訊息暫存檔
+ *
+ * 每則訊息在廣播前先附加一行 JSON 到目前的區段檔（chat-spool-{第一個序號}.log），
+ * 寫入後立即 flush 到作業系統，程式當掉也不會遺失；force 到磁碟則由寫入執行緒每批做一次。
+ * 資料庫提交到某個序號後，序號都不超過它的舊區段檔就會被刪除。
+ *
+ * 連續寫入失敗的批次移到 dead-letter 目錄（chat-dead-letter-{第一個序號}.log），之後以新的序號重新附加到區段檔，
+ * 檔名改為 .requeued-{最後一個新序號}，等資料庫提交到該序號後才刪除；讀回區段檔時會略過 dead-letter 中的原序號，
+ * 避免資料庫進度沒有更新到時同一則訊息被寫入兩次。
+ */
+public class ChatMessageSpool {
+
+	private static final Logger log = LoggerFactory.getLogger(ChatMessageSpool.class);
+
+	private static final String SEGMENT_PREFIX = "chat-spool-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private static final String DEAD_LETTER_DIR = "dead-letter";
+	private static final String DEAD_LETTER_PREFIX = "chat-dead-letter-";
+	private static final String REQUEUED_MARK = ".requeued-";
+
+	private final Path dir;
+	private final Path deadLetterDir;
+	private final long segmentBytes;
+	private final ObjectMapper objectMapper;
+
+	// 區段檔第一個序號 -> 檔案
+	private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+	private long nextSeq = 1;
+	private FileOutputStream out;
+	private BufferedWriter writer;
+
+	/**
+	 * 暫存的訊息，序號由 {@link #append} 指定
+	 */
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Entry {
+		private long seq;
+		private Integer chatRoomId;
+		private Integer senderId;
+		private String senderName;
+		private String content;
+		private LocalDateTime sentAt;
+		private String tempId;
+	}
+
+	public ChatMessageSpool(Path dir, long segmentBytes, ObjectMapper objectMapper) {
+		this.dir = dir;
+		this.deadLetterDir = dir.resolve(DEAD_LETTER_DIR);
+		this.segmentBytes = segmentBytes;
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * 讀回所有區段檔中序號大於 committedSeq 的訊息（依序號排列），並開啟新的區段檔供之後寫入
+	 */
+	public synchronized List<Entry> recover(long committedSeq) {
+		List<Entry> pending = new ArrayList<>();
+		long maxSeq = committedSeq;
+		try {
+			Files.createDirectories(dir);
+			Files.createDirectories(deadLetterDir);
+			// 已移到 dead-letter 的原序號不從區段檔重送
+			Set<Long> deadLettered = new HashSet<>();
+			for (Path path : deadLetterFiles()) {
+				for (Entry entry : readEntries(path)) {
+					deadLettered.add(entry.getSeq());
+					maxSeq = Math.max(maxSeq, entry.getSeq());
+				}
+				maxSeq = Math.max(maxSeq, requeuedUpTo(path));
+			}
+			try (Stream<Path> files = Files.list(dir)) {
+				files.filter(this::isSegment).forEach(path -> segments.put(firstSeqOf(path), path));
+			}
+			for (Path path : segments.values()) {
+				for (Entry entry : readEntries(path)) {
+					maxSeq = Math.max(maxSeq, entry.getSeq());
+					if (entry.getSeq() > committedSeq && !deadLettered.contains(entry.getSeq())) {
+						pending.add(entry);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("讀取聊天暫存檔失敗: " + dir, e);
+		}
+		pending.sort((a, b) -> Long.compare(a.getSeq(), b.getSeq()));
+		nextSeq = maxSeq + 1;
+		openSegment();
+		return pending;
+	}
+
+	/**
+	 * 指定序號並寫入暫存檔
+	 *
+	 * @return 指定的序號
+	 */
+	public synchronized long append(Entry entry) {
+		entry.setSeq(nextSeq);
+		try {
+			String line = objectMapper.writeValueAsString(entry);
+			writer.write(line);
+			writer.newLine();
+			writer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException("寫入聊天暫存檔失敗", e);
+		}
+		return nextSeq++;
+	}
+
+	/**
+	 * 把已寫入的內容 force 到磁碟
+	 */
+	public synchronized void force() {
+		try {
+			out.getChannel().force(false);
+		} catch (IOException e) {
+			throw new UncheckedIOException("聊天暫存檔寫入磁碟失敗", e);
+		}
+	}
+
+	/**
+	 * 資料庫已提交到 committedSeq：目前區段檔太大就換新檔，並刪除全部已提交的舊區段檔
+	 */
+	public synchronized void committed(long committedSeq) {
+		try {
+			if (out.getChannel().size() >= segmentBytes) {
+				closeSegment();
+				openSegment();
+			}
+		} catch (IOException e) {
+			log.warn("讀取聊天暫存檔大小失敗", e);
+		}
+		while (segments.size() > 1) {
+			Long first = segments.firstKey();
+			Long next = segments.higherKey(first);
+			if (next - 1 > committedSeq) {
+				break;
+			}
+			Path path = segments.remove(first);
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				log.warn("刪除聊天暫存檔失敗: {}", path, e);
+			}
+		}
+		for (Path path : deadLetterFiles()) {
+			long upTo = requeuedUpTo(path);
+			if (upTo > 0 && upTo <= committedSeq) {
+				try {
+					Files.deleteIfExists(path);
+				} catch (IOException e) {
+					log.warn("刪除聊天 dead-letter 檔失敗: {}", path, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 把寫入失敗的批次移到 dead-letter 檔（寫入磁碟後才回傳），呼叫端之後可以把這些序號視為已處理
+	 */
+	public synchronized void deadLetter(List<Entry> entries) {
+		Path path = deadLetterDir.resolve(DEAD_LETTER_PREFIX + entries.get(0).getSeq() + SEGMENT_SUFFIX);
+		try (FileOutputStream file = new FileOutputStream(path.toFile(), true);
+				BufferedWriter deadLetterWriter = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8))) {
+			for (Entry entry : entries) {
+				deadLetterWriter.write(objectMapper.writeValueAsString(entry));
+				deadLetterWriter.newLine();
+			}
+			deadLetterWriter.flush();
+			file.getChannel().force(false);
+		} catch (IOException e) {
+			throw new UncheckedIOException("寫入聊天 dead-letter 檔失敗: " + path, e);
+		}
+	}
+
+	/**
+	 * 以新的序號把 dead-letter 中的訊息重新附加到區段檔，一次處理整個檔案，總數不超過 limit
+	 *
+	 * @return 重新附加的訊息（依新序號排列），呼叫端負責排入寫入佇列
+	 */
+	public synchronized List<Entry> requeueDeadLetters(int limit) {
+		List<Entry> requeued = new ArrayList<>();
+		for (Path path : deadLetterFiles()) {
+			if (requeuedUpTo(path) > 0) {
+				continue;
+			}
+			List<Entry> entries = readEntries(path);
+			if (requeued.size() + entries.size() > limit) {
+				break;
+			}
+			for (Entry entry : entries) {
+				Entry copy = new Entry(0, entry.getChatRoomId(), entry.getSenderId(), entry.getSenderName(),
+						entry.getContent(), entry.getSentAt(), entry.getTempId());
+				append(copy);
+				requeued.add(copy);
+			}
+			force();
+			try {
+				Files.move(path, path.resolveSibling(path.getFileName() + REQUEUED_MARK + (nextSeq - 1)));
+			} catch (IOException e) {
+				throw new UncheckedIOException("更新聊天 dead-letter 檔失敗: " + path, e);
+			}
+		}
+		return requeued;
+	}
+
+	/**
+	 * dead-letter 中尚未重新附加的訊息數
+	 */
+	public synchronized int deadLetterCount() {
+		int count = 0;
+		for (Path path : deadLetterFiles()) {
+			if (requeuedUpTo(path) == 0) {
+				count += readEntries(path).size();
+			}
+		}
+		return count;
+	}
+
+	public synchronized void close() {
+		closeSegment();
+	}
+
+	private void openSegment() {
+		Path path = dir.resolve(SEGMENT_PREFIX + nextSeq + SEGMENT_SUFFIX);
+		try {
+			out = new FileOutputStream(path.toFile(), true);
+			writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new UncheckedIOException("建立聊天暫存檔失敗: " + path, e);
+		}
+		segments.put(nextSeq, path);
+	}
+
+	private void closeSegment() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.flush();
+			out.getChannel().force(false);
+			writer.close();
+		} catch (IOException e) {
+			log.warn("關閉聊天暫存檔失敗", e);
+		}
+		writer = null;
+		out = null;
+	}
+
+	private List<Entry> readEntries(Path path) {
+		List<Entry> entries = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				try {
+					entries.add(objectMapper.readValue(line, Entry.class));
+				} catch (JsonProcessingException e) {
+					// 當機時最後一行可能只寫了一半
+					log.warn("略過無法解析的聊天暫存紀錄: {} ({})", path.getFileName(), e.getOriginalMessage());
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("讀取聊天暫存檔失敗: " + path, e);
+		}
+		return entries;
+	}
+
+	private List<Path> deadLetterFiles() {
+		if (!Files.isDirectory(deadLetterDir)) {
+			return List.of();
+		}
+		try (Stream<Path> files = Files.list(deadLetterDir)) {
+			return files.filter(path -> path.getFileName().toString().startsWith(DEAD_LETTER_PREFIX))
+					.sorted(Comparator.comparingLong(this::firstSeqOfDeadLetter)).toList();
+		} catch (IOException e) {
+			throw new UncheckedIOException("讀取聊天 dead-letter 目錄失敗: " + deadLetterDir, e);
+		}
+	}
+
+	/**
+	 * 已重新附加的 dead-letter 檔回傳最後一個新序號，尚未重新附加的回傳 0
+	 */
+	private long requeuedUpTo(Path path) {
+		String name = path.getFileName().toString();
+		int mark = name.indexOf(REQUEUED_MARK);
+		return mark < 0 ? 0 : Long.parseLong(name.substring(mark + REQUEUED_MARK.length()));
+	}
+
+	private long firstSeqOfDeadLetter(Path path) {
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(DEAD_LETTER_PREFIX.length(), name.indexOf(SEGMENT_SUFFIX)));
+	}
+
+	private boolean isSegment(Path path) {
+		String name = path.getFileName().toString();
+		return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+	}
+
+	private long firstSeqOf(Path path) {
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+}
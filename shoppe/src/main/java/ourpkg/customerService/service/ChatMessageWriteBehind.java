@@ -0,0 +1,561 @@
+package ourpkg.customerService.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import ourpkg.customerService.dto.ChatMessageDTO;
+import ourpkg.customerService.entity.ChatSpoolCheckpoint;
+import ourpkg.customerService.repository.ChatSpoolCheckpointRepository;
+import ourpkg.customerService.service.ChatMessageSpool.Entry;
+import ourpkg.user_role_permission.user.dto.UserDTO;
+
+/**
+ * WebSocket 聊天訊息的延後寫入
+ *
+ * 訊息先寫進本機暫存檔並放入有上限的佇列，呼叫端隨即廣播；背景執行緒每個寫入間隔把佇列中的訊息
+ * 以多列 MERGE 一次寫入（順便取回資料庫產生的訊息ID），同一批內每個聊天室的 last_active_at、
+ * 未讀數與最後一則訊息只更新一次，暫存檔進度和訊息在同一個交易內提交。寫入後把訊息ID廣播到 /topic/chat/{chatRoomId}/ack，
+ * 讓前端把 tempId 換成正式ID，並加入 ChatHistoryBuffer。
+ *
+ * 佇列滿了（資料庫跟不上或暫時無法連線）時發送端會等待，超過等待時間就拒絕這則訊息。
+ * 同一批連續寫入失敗 chat.write-behind.max-attempts 次就移到暫存檔的 dead-letter，釋放佇列空間，
+ * 由排程定期重新排入。程式重啟時暫存檔中尚未提交的訊息會先重送。
+ */
+@Service
+public class ChatMessageWriteBehind {
+
+	private static final Logger log = LoggerFactory.getLogger(ChatMessageWriteBehind.class);
+
+	// 每列 6 個參數，SQL Server 單一語法參數上限為 2100
+	private static final int ROWS_PER_STATEMENT = 300;
+
+	private static final long MAX_RETRY_DELAY_MS = 5000;
+
+	// 未讀數補算完成的標記（node_id 不會和主機名稱或設定值重複）
+	private static final String UNREAD_BACKFILL_MARKER = "#unread-backfill";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private ChatSpoolCheckpointRepository checkpointRepository;
+
+	@Autowired
+	private ChatHistoryBuffer chatHistoryBuffer;
+
+	@Autowired
+	private ChatRoomMembershipCache membershipCache;
+
+	@Autowired
+	private ChatService chatService;
+
+	@Autowired
+	private ChatMessagePublisher chatMessagePublisher;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	// 暫存檔進度以 node-id 區分；未設定時單機模式沿用 default，relay 模式以主機名稱和埠號區分
+	@Value("${chat.write-behind.node-id:}")
+	private String configuredNodeId;
+
+	@Value("${chat.broker.mode:simple}")
+	private String brokerMode;
+
+	@Value("${server.port:8080}")
+	private String serverPort;
+
+	@Value("${chat.write-behind.max-attempts:10}")
+	private int maxAttempts;
+
+	@Value("${chat.unread-backfill.enabled:true}")
+	private boolean unreadBackfillEnabled;
+
+	@Value("${chat.write-behind.spool-dir:data/chat-spool}")
+	private String spoolDir;
+
+	@Value("${chat.write-behind.segment-bytes:67108864}")
+	private long segmentBytes;
+
+	@Value("${chat.write-behind.queue-capacity:100000}")
+	private int queueCapacity;
+
+	@Value("${chat.write-behind.batch-size:2000}")
+	private int batchSize;
+
+	@Value("${chat.write-behind.flush-interval-ms:50}")
+	private long flushIntervalMillis;
+
+	@Value("${chat.write-behind.offer-timeout-ms:2000}")
+	private long offerTimeoutMillis;
+
+	private ChatMessageSpool spool;
+
+	private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+
+	// 佇列加上寫入中的訊息數上限
+	private Semaphore permits;
+
+	private volatile boolean running = true;
+
+	private volatile long committedSeq;
+
+	private String nodeId;
+
+	private Thread writer;
+
+	@PostConstruct
+	public void start() {
+		nodeId = resolveNodeId();
+		committedSeq = checkpointRepository.findById(nodeId).map(ChatSpoolCheckpoint::getLastSeq).orElse(0L);
+		spool = new ChatMessageSpool(Paths.get(spoolDir), segmentBytes, objectMapper);
+		List<Entry> recovered = spool.recover(committedSeq);
+		if (!recovered.isEmpty()) {
+			log.info("聊天暫存檔中有 {} 則訊息尚未寫入資料庫，重新寫入", recovered.size());
+		}
+		permits = new Semaphore(Math.max(queueCapacity, recovered.size()));
+		permits.acquireUninterruptibly(recovered.size());
+		queue.addAll(recovered);
+
+		writer = new Thread(this::runWriter, "chat-write-behind");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * 寫入暫存檔並排入佇列，回傳後即可廣播
+	 *
+	 * @throws RuntimeException 佇列已滿且等待逾時
+	 */
+	public Entry submit(Integer chatRoomId, Integer senderId, String senderName, String content, String tempId) {
+		if (!running) {
+			throw new RuntimeException("聊天服務關閉中，請稍後再試");
+		}
+		try {
+			if (!permits.tryAcquire(offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new RuntimeException("聊天訊息過多，請稍後再試");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("發送訊息被中斷", e);
+		}
+
+		Entry entry = new Entry(0, chatRoomId, senderId, senderName, content, LocalDateTime.now(), tempId);
+		try {
+			// 暫存檔的序號順序必須和佇列順序一致
+			synchronized (this) {
+				spool.append(entry);
+				queue.add(entry);
+			}
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+		return entry;
+	}
+
+	public int pendingCount() {
+		return queue.size();
+	}
+
+	/**
+	 * 多台伺服器共用資料庫時每台的暫存檔進度必須分開，否則重啟時會跳過或重複寫入訊息
+	 */
+	private String resolveNodeId() {
+		boolean relay = "relay".equalsIgnoreCase(brokerMode);
+		if (configuredNodeId != null && !configuredNodeId.isBlank()) {
+			String configured = configuredNodeId.trim();
+			if (relay && "default".equals(configured)) {
+				throw new IllegalStateException("chat.broker.mode=relay 時每台伺服器需設定不同的 chat.write-behind.node-id");
+			}
+			return configured;
+		}
+		if (!relay) {
+			return "default";
+		}
+		String host = System.getenv("HOSTNAME");
+		if (host == null || host.isBlank()) {
+			try {
+				host = InetAddress.getLocalHost().getHostName();
+			} catch (UnknownHostException e) {
+				throw new IllegalStateException("無法取得主機名稱，chat.broker.mode=relay 時請設定 chat.write-behind.node-id", e);
+			}
+		}
+		String derived = host + ":" + serverPort;
+		log.info("chat.write-behind.node-id 未設定，使用 {}", derived);
+		return derived;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		running = false;
+		writer.interrupt();
+		try {
+			writer.join(30_000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		spool.close();
+	}
+
+	private void runWriter() {
+		List<Entry> batch = new ArrayList<>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				Entry first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				collect(batch, System.currentTimeMillis() + flushIntervalMillis);
+			} catch (InterruptedException e) {
+				// 關閉時被中斷，繼續把佇列寫完
+			}
+			if (!batch.isEmpty()) {
+				int size = batch.size();
+				if (persistWithRetry(batch)) {
+					permits.release(size);
+				}
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * 在寫入間隔內盡量收集到一整批，讓同一聊天室的 last_active_at 合併成一次更新
+	 */
+	private void collect(List<Entry> batch, long deadline) throws InterruptedException {
+		while (batch.size() < batchSize) {
+			queue.drainTo(batch, batchSize - batch.size());
+			long wait = deadline - System.currentTimeMillis();
+			if (batch.size() >= batchSize || wait <= 0 || !running) {
+				return;
+			}
+			Entry next = queue.poll(wait, TimeUnit.MILLISECONDS);
+			if (next == null) {
+				return;
+			}
+			batch.add(next);
+		}
+	}
+
+	/**
+	 * 寫入失敗就等待後重試（資料庫暫時無法連線時佇列會被填滿，由發送端等待），重試次數用完就移到 dead-letter；
+	 * 資料本身有問題時改為逐筆寫入，跳過有問題的訊息
+	 *
+	 * @return 是否已全部處理完（關閉期間放棄時為 false，留待下次啟動由暫存檔重送）
+	 */
+	private boolean persistWithRetry(List<Entry> batch) {
+		long delay = 100;
+		int attempts = 0;
+		boolean oneByOne = false;
+		while (true) {
+			batch.removeIf(entry -> entry.getSeq() <= committedSeq);
+			if (batch.isEmpty()) {
+				return true;
+			}
+			try {
+				if (oneByOne) {
+					persistOneByOne(batch);
+				} else {
+					persist(batch);
+				}
+				return true;
+			} catch (DataIntegrityViolationException e) {
+				log.warn("聊天訊息批次寫入失敗，改為逐筆寫入: {}", e.getMostSpecificCause().getMessage());
+				oneByOne = true;
+			} catch (RuntimeException e) {
+				if (!running) {
+					log.error("關閉時聊天訊息寫入失敗，{} 則訊息留在暫存檔待下次啟動重送", batch.size(), e);
+					return false;
+				}
+				if (++attempts >= maxAttempts) {
+					deadLetter(batch, e);
+					return true;
+				}
+				log.warn("聊天訊息寫入失敗，{} 毫秒後重試: {}", delay, e.getMessage());
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					// 關閉中，下一輪會直接放棄
+				}
+				delay = Math.min(delay * 2, MAX_RETRY_DELAY_MS);
+			}
+		}
+	}
+
+	/**
+	 * 把重試次數用完的批次移到 dead-letter 並視為已處理，資料庫進度能寫就順便寫入
+	 * （寫不進去時重啟後由暫存檔略過 dead-letter 中的序號）
+	 */
+	private void deadLetter(List<Entry> batch, RuntimeException cause) {
+		log.error("聊天訊息連續寫入失敗 {} 次，{} 則訊息移到 dead-letter 稍後重新排入", maxAttempts, batch.size(), cause);
+		spool.deadLetter(batch);
+		long lastSeq = batch.get(batch.size() - 1).getSeq();
+		committedSeq = lastSeq;
+		spool.committed(lastSeq);
+		try {
+			transactionTemplate.executeWithoutResult(status -> saveCheckpoint(lastSeq));
+		} catch (RuntimeException e) {
+			log.warn("聊天暫存檔進度寫入失敗: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * 把 dead-letter 中的訊息以新的序號重新排入寫入佇列，佇列空間不夠時留到下一次
+	 */
+	@Scheduled(initialDelayString = "${chat.write-behind.dead-letter-retry-ms:300000}",
+			fixedDelayString = "${chat.write-behind.dead-letter-retry-ms:300000}")
+	public void requeueDeadLetters() {
+		if (!running) {
+			return;
+		}
+		int available = permits.drainPermits();
+		List<Entry> requeued = List.of();
+		try {
+			// 和 submit 相同，暫存檔的序號順序必須和佇列順序一致
+			synchronized (this) {
+				requeued = spool.requeueDeadLetters(available);
+				queue.addAll(requeued);
+			}
+		} finally {
+			permits.release(available - requeued.size());
+		}
+		if (!requeued.isEmpty()) {
+			log.info("已將 {} 則 dead-letter 聊天訊息重新排入", requeued.size());
+		}
+	}
+
+	public int deadLetterCount() {
+		return spool.deadLetterCount();
+	}
+
+	private void persistOneByOne(List<Entry> batch) {
+		for (Entry entry : batch) {
+			try {
+				persist(List.of(entry));
+			} catch (DataIntegrityViolationException e) {
+				// 例如聊天室或使用者已被刪除，這則訊息無法寫入，只記錄ID後跳過（訊息內容不寫進日誌）
+				log.error("聊天訊息無法寫入，已略過: seq={}, chatRoomId={}, senderId={}: {}", entry.getSeq(),
+						entry.getChatRoomId(), entry.getSenderId(), e.getMostSpecificCause().getMessage());
+				transactionTemplate.executeWithoutResult(status -> saveCheckpoint(entry.getSeq()));
+				committedSeq = entry.getSeq();
+				spool.committed(committedSeq);
+			}
+		}
+	}
+
+	/**
+	 * 一個交易內寫入訊息、更新聊天室最後活躍時間與暫存檔進度，提交後通知前端
+	 */
+	private void persist(List<Entry> batch) {
+		spool.force();
+		Map<Long, Integer> messageIds = new HashMap<>();
+		long lastSeq = batch.get(batch.size() - 1).getSeq();
+
+		transactionTemplate.executeWithoutResult(status -> {
+			// 先更新聊天室（鎖住該列）再寫訊息，和標記已讀的順序一致
+			updateRooms(batch);
+			for (int from = 0; from < batch.size(); from += ROWS_PER_STATEMENT) {
+				insertMessages(batch.subList(from, Math.min(batch.size(), from + ROWS_PER_STATEMENT)), messageIds);
+			}
+			updateLastMessageIds(batch, messageIds);
+			saveCheckpoint(lastSeq);
+		});
+
+		committedSeq = lastSeq;
+		spool.committed(lastSeq);
+		afterPersist(batch, messageIds);
+	}
+
+	/**
+	 * 多列 MERGE 寫入並取回每列的訊息ID（INSERT ... OUTPUT 無法對應回來源列，MERGE 可以輸出來源的序號）
+	 */
+	private void insertMessages(List<Entry> rows, Map<Long, Integer> messageIds) {
+		StringBuilder sql = new StringBuilder("MERGE INTO ChatMessage AS t USING (VALUES ");
+		List<Object> args = new ArrayList<>(rows.size() * 6);
+		for (int i = 0; i < rows.size(); i++) {
+			Entry entry = rows.get(i);
+			sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?)");
+			args.add(entry.getSeq());
+			args.add(entry.getChatRoomId());
+			args.add(entry.getSenderId());
+			args.add(entry.getContent());
+			args.add(Timestamp.valueOf(entry.getSentAt()));
+			args.add(entry.getSenderName());
+		}
+		sql.append(") AS s (seq, chat_room_id, sender_id, content, sent_at, sender_name) ON 1 = 0 ")
+				.append("WHEN NOT MATCHED THEN INSERT (chat_room_id, sender_id, content, [timestamp], sender_name, is_read) ")
+				.append("VALUES (s.chat_room_id, s.sender_id, s.content, s.sent_at, s.sender_name, 0) ")
+				.append("OUTPUT s.seq, INSERTED.chatMessage_id;");
+
+		jdbcTemplate.query(sql.toString(), rs -> {
+			messageIds.put(rs.getLong(1), rs.getInt(2));
+		}, args.toArray());
+	}
+
+	/**
+	 * 每個聊天室更新一次：最後活躍時間取最晚的一則，買家發的訊息加到賣家未讀數，賣家發的加到買家未讀數
+	 */
+	private void updateRooms(List<Entry> batch) {
+		Map<Integer, RoomUpdate> updates = new LinkedHashMap<>();
+		for (Entry entry : batch) {
+			RoomUpdate update = updates.computeIfAbsent(entry.getChatRoomId(), id -> new RoomUpdate());
+			if (update.lastActiveAt == null || entry.getSentAt().isAfter(update.lastActiveAt)) {
+				update.lastActiveAt = entry.getSentAt();
+			}
+			ChatRoomMembershipCache.Membership membership;
+			try {
+				membership = membershipCache.get(entry.getChatRoomId());
+			} catch (EntityNotFoundException e) {
+				// 聊天室已不存在，寫入訊息時會失敗並被略過
+				continue;
+			}
+			if (membership.isBuyer(entry.getSenderId())) {
+				update.sellerUnread++;
+			} else if (entry.getSenderId().equals(membership.getSellerId())) {
+				update.buyerUnread++;
+			}
+		}
+
+		List<Object[]> args = new ArrayList<>(updates.size());
+		updates.forEach((chatRoomId, update) -> {
+			Timestamp timestamp = Timestamp.valueOf(update.lastActiveAt);
+			args.add(new Object[] { timestamp, timestamp, update.sellerUnread, update.buyerUnread, chatRoomId });
+		});
+		jdbcTemplate.batchUpdate("UPDATE ChatRoom SET last_active_at = CASE WHEN last_active_at IS NULL "
+				+ "OR last_active_at < ? THEN ? ELSE last_active_at END, "
+				+ "seller_unread_count = seller_unread_count + ?, buyer_unread_count = buyer_unread_count + ? "
+				+ "WHERE chat_room_id = ?", args);
+	}
+
+	private void updateLastMessageIds(List<Entry> batch, Map<Long, Integer> messageIds) {
+		Map<Integer, Integer> lastMessageIds = new LinkedHashMap<>();
+		for (Entry entry : batch) {
+			Integer messageId = messageIds.get(entry.getSeq());
+			if (messageId != null) {
+				lastMessageIds.merge(entry.getChatRoomId(), messageId, Math::max);
+			}
+		}
+		List<Object[]> args = new ArrayList<>(lastMessageIds.size());
+		lastMessageIds.forEach((chatRoomId, messageId) -> args.add(new Object[] { messageId, chatRoomId, messageId }));
+		jdbcTemplate.batchUpdate("UPDATE ChatRoom SET last_message_id = ? WHERE chat_room_id = ? "
+				+ "AND (last_message_id IS NULL OR last_message_id < ?)", args);
+	}
+
+	/**
+	 * 加入未讀數欄位前就有訊息的聊天室（last_message_id 還是空的），依現有訊息補上計數
+	 *
+	 * 只需要在升級後執行一次：完成後在 chat_spool_checkpoint 留下標記，之後啟動直接略過；
+	 * 也可以用 chat.unread-backfill.enabled=false 關閉。
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void backfillUnreadCounters() {
+		if (!unreadBackfillEnabled || checkpointRepository.existsById(UNREAD_BACKFILL_MARKER)) {
+			return;
+		}
+		Integer rooms = transactionTemplate.execute(status -> {
+			int updated = jdbcTemplate.update("UPDATE cr SET "
+					+ "buyer_unread_count = (SELECT COUNT(*) FROM ChatMessage m WHERE m.chat_room_id = cr.chat_room_id "
+					+ "AND m.is_read = 0 AND m.sender_id <> cr.buyer_id), "
+					+ "seller_unread_count = (SELECT COUNT(*) FROM ChatMessage m WHERE m.chat_room_id = cr.chat_room_id "
+					+ "AND m.is_read = 0 AND m.sender_id <> cr.seller_id), "
+					+ "last_message_id = (SELECT MAX(m.chatMessage_id) FROM ChatMessage m "
+					+ "WHERE m.chat_room_id = cr.chat_room_id) "
+					+ "FROM ChatRoom cr WITH (UPDLOCK) WHERE cr.last_message_id IS NULL "
+					+ "AND EXISTS (SELECT 1 FROM ChatMessage m WHERE m.chat_room_id = cr.chat_room_id)");
+			checkpointRepository.save(new ChatSpoolCheckpoint(UNREAD_BACKFILL_MARKER, 0L, new Date()));
+			return updated;
+		});
+		if (rooms != null && rooms > 0) {
+			log.info("已補上 {} 個聊天室的未讀數與最後一則訊息", rooms);
+		}
+	}
+
+	private static final class RoomUpdate {
+		private LocalDateTime lastActiveAt;
+		private int sellerUnread;
+		private int buyerUnread;
+	}
+
+	private void saveCheckpoint(long lastSeq) {
+		checkpointRepository.save(new ChatSpoolCheckpoint(nodeId, lastSeq, new Date()));
+	}
+
+	/**
+	 * 通知前端訊息已寫入、加入聊天紀錄緩衝區，並推送賣家的未讀數
+	 */
+	private void afterPersist(List<Entry> batch, Map<Long, Integer> messageIds) {
+		Map<Integer, Integer> sellersToNotify = new LinkedHashMap<>();
+		for (Entry entry : batch) {
+			Integer messageId = messageIds.get(entry.getSeq());
+			if (messageId == null) {
+				continue;
+			}
+			try {
+				UserDTO sender = new UserDTO();
+				sender.setUserId(entry.getSenderId());
+				sender.setUserName(entry.getSenderName());
+				chatHistoryBuffer.append(ChatMessageDTO.builder().messageId(messageId).chatRoomId(entry.getChatRoomId())
+						.content(entry.getContent()).timestamp(entry.getSentAt()).sender(sender)
+						.senderName(entry.getSenderName()).isRead(false).build());
+
+				Map<String, Object> ack = new HashMap<>();
+				ack.put("id", messageId);
+				ack.put("tempId", entry.getTempId());
+				ack.put("senderId", entry.getSenderId());
+				chatMessagePublisher.sendToTopic("/topic/chat/" + entry.getChatRoomId() + "/ack", ack);
+
+				// 買家發的訊息才需要更新賣家的未讀數
+				ChatRoomMembershipCache.Membership membership = membershipCache.get(entry.getChatRoomId());
+				if (membership.isBuyer(entry.getSenderId())) {
+					sellersToNotify.put(membership.getSellerId(), entry.getChatRoomId());
+				}
+			} catch (RuntimeException e) {
+				log.warn("聊天訊息寫入後通知失敗: messageId={}", messageId, e);
+			}
+		}
+
+		sellersToNotify.forEach((sellerId, chatRoomId) -> {
+			try {
+				String sellerName = membershipCache.get(chatRoomId).getSellerName();
+				chatMessagePublisher.sendToUser(sellerName, "/queue/unread-update",
+						chatService.getUnreadCounts(sellerId));
+			} catch (RuntimeException e) {
+				log.warn("推送賣家 {} 的未讀數失敗", sellerId, e);
+			}
+		});
+	}
+}
@@ -0,0 +1,112 @@
+package ourpkg.customerService.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.persistence.EntityNotFoundException;
+import ourpkg.customerService.repository.ChatRoomRepository;
+
+/**
+ * 聊天室成員（買家、賣家）快取，WebSocket 發送訊息時用來驗證權限，不必每則訊息都查資料庫
+ *
+ * 聊天室建立後買家與賣家不會再變，只有名稱可能修改，所以只靠存活時間重新載入。
+ */
+@Component
+public class ChatRoomMembershipCache {
+
+	@Autowired
+	private ChatRoomRepository chatRoomRepository;
+
+	@Value("${chat.membership-cache.ttl-ms:600000}")
+	private long ttlMillis;
+
+	@Value("${chat.membership-cache.max-size:50000}")
+	private int maxSize;
+
+	private final Map<Integer, Membership> memberships = new ConcurrentHashMap<>();
+
+	/**
+	 * 聊天室的買家與賣家
+	 */
+	public static final class Membership {
+		private final Integer chatRoomId;
+		private final Integer buyerId;
+		private final String buyerName;
+		private final Integer sellerId;
+		private final String sellerName;
+		private final long expiresAt;
+
+		private Membership(Integer chatRoomId, Integer buyerId, String buyerName, Integer sellerId, String sellerName,
+				long expiresAt) {
+			this.chatRoomId = chatRoomId;
+			this.buyerId = buyerId;
+			this.buyerName = buyerName;
+			this.sellerId = sellerId;
+			this.sellerName = sellerName;
+			this.expiresAt = expiresAt;
+		}
+
+		public Integer getChatRoomId() {
+			return chatRoomId;
+		}
+
+		public Integer getBuyerId() {
+			return buyerId;
+		}
+
+		public Integer getSellerId() {
+			return sellerId;
+		}
+
+		public boolean isMember(Integer userId) {
+			return userId != null && (userId.equals(buyerId) || userId.equals(sellerId));
+		}
+
+		public boolean isBuyer(Integer userId) {
+			return userId != null && userId.equals(buyerId);
+		}
+
+		/**
+		 * 成員的使用者名稱，不是成員時回傳 null
+		 */
+		public String nameOf(Integer userId) {
+			if (isBuyer(userId)) {
+				return buyerName;
+			}
+			return userId != null && userId.equals(sellerId) ? sellerName : null;
+		}
+
+		public String getSellerName() {
+			return sellerName;
+		}
+	}
+
+	/**
+	 * @throws EntityNotFoundException 聊天室不存在
+	 */
+	public Membership get(Integer chatRoomId) {
+		Membership membership = memberships.get(chatRoomId);
+		if (membership != null && membership.expiresAt > System.currentTimeMillis()) {
+			return membership;
+		}
+
+		List<Object[]> rows = chatRoomRepository.findMembershipRows(chatRoomId);
+		if (rows.isEmpty()) {
+			throw new EntityNotFoundException("聊天室不存在 (ID: " + chatRoomId + ")");
+		}
+		Object[] row = rows.get(0);
+		membership = new Membership(chatRoomId, (Integer) row[0], (String) row[1], (Integer) row[2], (String) row[3],
+				System.currentTimeMillis() + ttlMillis);
+
+		if (memberships.size() >= maxSize) {
+			memberships.clear();
+		}
+		memberships.put(chatRoomId, membership);
+		return membership;
+	}
+}
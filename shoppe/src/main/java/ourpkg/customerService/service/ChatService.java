@@ -1,8 +1,7 @@
 package ourpkg.customerService.service;
 
 import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -12,6 +11,7 @@ import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,8 +22,8 @@ import ourpkg.customerService.dto.ConversationDTO;
 import ourpkg.customerService.entity.ChatMessageEntity;
 import ourpkg.customerService.entity.ChatRoomEntity;
 import ourpkg.customerService.repository.ChatMessageRepository;
-import ourpkg.customerService.repository.ChatMessageRepository.UnreadCountProjection;
 import ourpkg.customerService.repository.ChatRoomRepository;
+import ourpkg.customerService.service.ChatHistoryBuffer.BufferedMessage;
 import ourpkg.shop.SellerShopRepository;
 import ourpkg.shop.Shop;
 import ourpkg.user_role_permission.user.User;
@@ -40,6 +40,12 @@ public class ChatService {
 	private UserRepository userRepository;
 	@Autowired
 	private SellerShopRepository sellerShopRepository;
+	@Autowired
+	private ChatHistoryBuffer chatHistoryBuffer;
+
+	// 聊天紀錄每頁預設筆數與上限
+	public static final int DEFAULT_PAGE_SIZE = 30;
+	public static final int MAX_PAGE_SIZE = 100;
 	
 	 private static final Logger log = LoggerFactory.getLogger(ChatService.class); // 加入這行
 
@@ -60,11 +66,25 @@ public class ChatService {
 		return chatRoomRepository.save(chatRoom);
 	}
 
+	/**
+	 * 使用者在聊天室的未讀數（聊天室上維護的計數，不掃描訊息）
+	 */
 	@Transactional
-	public Integer getUnreadCount(Integer chatRoomId, Integer sellerId) {
-		// 使用正確的 Repository 方法名：SenderUserId 對應 User.userId
+	public Integer getUnreadCount(Integer chatRoomId, Integer userId) {
+		List<Object[]> rows = chatRoomRepository.findUnreadCountRows(chatRoomId);
+		if (rows.isEmpty()) {
+			return 0;
+		}
+		Object[] row = rows.get(0);
+		if (userId.equals(row[0])) {
+			return (Integer) row[2];
+		}
+		if (userId.equals(row[1])) {
+			return (Integer) row[3];
+		}
+		// 不是聊天室成員，照原本的定義計算
 		return chatMessageRepository.countByChatRoomEntityChatRoomIdAndIsReadFalseAndSenderUserIdNot(chatRoomId,
-				sellerId);
+				userId);
 	}
 
 	@Transactional
@@ -86,14 +106,6 @@ public class ChatService {
 		ChatRoomEntity chatRoom = chatRoomRepository.findWithAssociations(chatRoomId)
 				.orElseThrow(() -> new EntityNotFoundException("聊天室不存在 (ID: " + chatRoomId + ")"));
 
-		// 强制校验卖家权限
-		if (chatRoom.getSeller() != null && chatRoom.getSeller().getUserId().equals(currentUserId)) {
-			// ✅ 新增：检查是否存在买家消息
-			Integer buyerMessageCount = chatMessageRepository
-					.countByChatRoomEntityChatRoomIdAndIsReadFalseAndSenderUserIdNot(chatRoomId, currentUserId);
-			
-		}
-
 		// 先檢查現有的買家與賣家欄位
 		boolean isBuyer = chatRoom.getBuyer() != null && chatRoom.getBuyer().getUserId().equals(currentUserId);
 		boolean isSeller = chatRoom.getSeller() != null && chatRoom.getSeller().getUserId().equals(currentUserId);
@@ -137,6 +149,8 @@ public class ChatService {
 
         // 先驗證權限
         ChatRoomEntity chatRoom = validateChatRoom(chatRoomId, senderId);
+        // 先鎖住聊天室列再寫訊息，和標記已讀、延後寫入的順序一致，避免死結
+        chatRoomRepository.findByIdForUpdate(chatRoomId);
         chatRoom.updateLastActive(); // 更新房間活躍時間
         User sender = userRepository.findById(senderId)
                 .orElseThrow(() -> new EntityNotFoundException("使用者不存在 (ID: " + senderId + ")")); // 加入 ID 到錯誤訊息
@@ -173,6 +187,9 @@ public class ChatService {
             // 只有在 save 成功且不拋異常時，才會執行到這裡
             log.debug("ChatMessageEntity 已成功儲存，資料庫 ID: {}", (savedMessage != null ? savedMessage.getMessageId() : "null"));
 
+            // 對方未讀數加一、更新最後一則訊息（和訊息同一個交易）
+            chatRoomRepository.recordNewMessage(chatRoomId, senderId, savedMessage.getMessageId());
+
         } catch (Exception e) {
             // ******** 捕獲所有可能的異常並詳細記錄 ********
             log.error("!!!!!! 資料庫儲存訊息或聊天室 (來自 sendMessage 方法) 時發生嚴重錯誤 !!!!!!", e); // 包含詳細異常堆疊訊息
@@ -188,6 +205,8 @@ public class ChatService {
              throw new IllegalStateException("儲存訊息後未能獲取已保存的實體 (來自 sendMessage)");
         }
 
+        chatHistoryBuffer.append(convertToDTO(savedMessage));
+
         log.debug("sendMessage 方法成功完成，返回 savedMessage (ID: {})", savedMessage.getMessageId());
         return savedMessage; // 返回保存後的 Entity
     }
@@ -209,6 +228,55 @@ public class ChatService {
 		return messages;
 	}
 
+	/**
+	 * 以訊息ID為游標分頁查詢聊天紀錄，結果由舊到新排列
+	 *
+	 * 最新的幾頁直接由 ChatHistoryBuffer 提供；緩衝區沒有或不夠時才查資料庫，
+	 * 查最新一頁時順便建立該聊天室的緩衝區。
+	 *
+	 * @param beforeMessageId 只取ID小於此值的訊息（上一頁最舊一則的ID），null 表示最新的一頁
+	 * @param limit           筆數（1 ~ {@link #MAX_PAGE_SIZE}）
+	 */
+	public List<ChatMessageDTO> getMessagePage(Integer chatRoomId, Integer beforeMessageId, int limit) {
+		if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("每頁筆數必須介於 1 到 " + MAX_PAGE_SIZE + " 之間");
+		}
+		List<ChatMessageDTO> buffered = chatHistoryBuffer.readPage(chatRoomId, beforeMessageId, limit);
+		if (buffered != null) {
+			return buffered;
+		}
+
+		List<Object[]> rows;
+		List<BufferedMessage> newestFirst;
+		if (beforeMessageId == null) {
+			// 多取一筆，用來判斷是否已載入整個聊天室
+			int fetchSize = Math.max(limit, chatHistoryBuffer.capacity()) + 1;
+			long stamp = chatHistoryBuffer.stamp(chatRoomId);
+			rows = chatMessageRepository.findLatestMessageRows(chatRoomId, PageRequest.of(0, fetchSize));
+			newestFirst = toBufferedMessages(chatRoomId, rows);
+			chatHistoryBuffer.seed(chatRoomId, newestFirst, rows.size() < fetchSize, stamp);
+		} else {
+			rows = chatMessageRepository.findMessageRowsBefore(chatRoomId, beforeMessageId, PageRequest.of(0, limit));
+			newestFirst = toBufferedMessages(chatRoomId, rows);
+		}
+
+		int count = Math.min(limit, newestFirst.size());
+		List<ChatMessageDTO> page = new ArrayList<>(count);
+		for (int i = count - 1; i >= 0; i--) {
+			page.add(newestFirst.get(i).toDTO());
+		}
+		return page;
+	}
+
+	private List<BufferedMessage> toBufferedMessages(Integer chatRoomId, List<Object[]> rows) {
+		List<BufferedMessage> messages = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			messages.add(new BufferedMessage((Integer) row[0], chatRoomId, (String) row[1], (LocalDateTime) row[2],
+					(Integer) row[3], (String) row[4], Boolean.TRUE.equals(row[5])));
+		}
+		return messages;
+	}
+
 	@Transactional
 	public ChatRoomEntity getChatRoomById(Integer chatRoomId) {
 		return chatRoomRepository.findById(chatRoomId)
@@ -240,8 +308,8 @@ public class ChatService {
         final Integer finalSenderId = determinedSenderId;
         log.info("[saveMessage] Determined finalSenderId: {}", finalSenderId); // 改為 INFO
         
-        // 步驟 4：查詢 ChatRoom (這裡 lambda 沒用 senderId，所以沒問題)
-        ChatRoomEntity chatRoom = chatRoomRepository.findById(messageDTO.getChatRoomId())
+        // 步驟 4：查詢並鎖住 ChatRoom（先鎖聊天室再寫訊息，和標記已讀的順序一致）
+        ChatRoomEntity chatRoom = chatRoomRepository.findByIdForUpdate(messageDTO.getChatRoomId())
                 .orElseThrow(() -> new EntityNotFoundException("聊天室不存在 (ID: " + messageDTO.getChatRoomId() + ")"));
 
         // *** 步驟 5：使用 finalSenderId 進行查詢和在 Lambda 中引用 ***
@@ -259,8 +327,10 @@ public class ChatService {
         log.debug("準備儲存訊息 Entity: ...");
         ChatMessageEntity savedEntity = chatMessageRepository.save(message);
         log.debug("訊息 Entity 已儲存，ID: {}", savedEntity.getMessageId());
+        chatRoomRepository.recordNewMessage(chatRoom.getChatRoomId(), finalSenderId, savedEntity.getMessageId());
 
         ChatMessageDTO resultDTO = convertToDTO(savedEntity);
+        chatHistoryBuffer.append(resultDTO);
         log.info("[saveMessage] Converted result DTO: Sender ID: {}, Sender Name: {}",
                 resultDTO.getSender() != null ? resultDTO.getSender().getUserId() : "null",
                 resultDTO.getSender() != null ? resultDTO.getSender().getUserName() : "null"); // 改為 INFO
@@ -285,48 +355,32 @@ public class ChatService {
 		return chatRoomRepository.findByShop_ShopIdWithUnreadMessages(shopId, shopId);
 	}
 
+	/**
+	 * 標記已讀並把讀者的未讀數歸零
+	 *
+	 * 先更新聊天室（鎖住該列）再更新訊息；sendMessage、saveMessage 與延後寫入也都是先鎖聊天室再寫訊息，
+	 * 所以兩者不會交錯（也不會互相等待造成死結），計數歸零時不會漏掉同時寫入的訊息。
+	 */
 	@Transactional
 	public void markMessagesAsRead(Integer chatRoomId, Integer userId) {
-		List<ChatMessageEntity> messages = chatMessageRepository.findUnreadMessages(chatRoomId, userId);
-		messages.forEach(msg -> msg.setIsRead(true));
+		chatRoomRepository.resetUnreadCount(chatRoomId, userId);
+		chatMessageRepository.markReadByRecipient(chatRoomId, userId);
+		chatHistoryBuffer.markRead(chatRoomId, userId);
 	}
 
 	
+/**
+ * 賣家各店鋪的未讀總數 Map<shopId, unreadCount>（只包含有未讀的店鋪）
+ */
 @Transactional
 public Map<Integer, Integer> getUnreadCounts(Integer sellerId) {
-    // 1. 獲取賣家所有店鋪
-    // 使用 sellerShopRepository (假設它關聯了用戶和商店)
-    List<Shop> shops = sellerShopRepository.findByUser_UserId(sellerId);
-    log.info("賣家 {} 擁有的商店列表: {}", sellerId, shops); // 建議加入日誌
-
-    // 2. 若無店鋪直接返回空結果
-    if (shops.isEmpty()) {
-        log.info("賣家 {} 沒有任何商店，返回空的未讀計數。", sellerId); // 建議加入日誌
-        return Collections.emptyMap();
-    }
-
-    // 3. 提取店鋪ID列表
-    List<Integer> shopIds = shops.stream()
-            .map(Shop::getShopId)
-            .collect(Collectors.toList());
-    log.info("賣家 {} 擁有的 shop IDs: {}", sellerId, shopIds); // 建議加入日誌
-
-    // 4. 批量查詢未讀計數
-    // 呼叫 chatMessageRepository.countUnreadByShopsAndSeller(shopIds, sellerId)
-    // 這個 Repository 方法是現在最關鍵的未知部分
-    List<Object[]> results = chatMessageRepository.countUnreadByShopsAndSeller(shopIds, sellerId);
-    // 建議加入日誌，打印從資料庫查到的原始結果
-    log.info("Repository 為賣家 {} 查詢到的原始未讀計數結果: {}", sellerId,
-             results.stream().map(Arrays::toString).collect(Collectors.toList()));
-
-    // 5. 轉換為 Map<shopId, unreadCount>
-    // 假設 results 是 Object[]，其中 result[0] 是 shopId (Integer)，result[1] 是 count (Long)
+    List<Object[]> results = chatRoomRepository.sumSellerUnreadByShop(sellerId);
     Map<Integer, Integer> unreadCountsMap = results.stream()
             .collect(Collectors.toMap(
-                    result -> (Integer) result[0], // 如果類型不是 Integer 會拋 ClassCastException
-                    result -> ((Long) result[1]).intValue() // 如果類型不是 Long 會拋 ClassCastException
+                    result -> (Integer) result[0],
+                    result -> ((Number) result[1]).intValue()
             ));
-    log.info("為賣家 {} 產生的最終未讀計數 Map: {}", sellerId, unreadCountsMap); // 建議加入日誌
+    log.debug("為賣家 {} 產生的最終未讀計數 Map: {}", sellerId, unreadCountsMap);
     return unreadCountsMap;
 }
 
@@ -452,82 +506,16 @@ public Map<Integer, Integer> getUnreadCounts(Integer sellerId) {
     // --- >>> 獲取賣家對話列表的核心方法 <<< ---
     @Transactional
     public List<ConversationDTO> getSellerConversations(Integer sellerId) {
-        log.info("開始獲取賣家 ID: {} 的對話列表", sellerId);
-
-        // 1. 獲取聊天室及關聯數據 (已按 lastActiveAt 排序)
-        List<ChatRoomEntity> rooms = chatRoomRepository.findBySellerUserIdWithDetailsOrderByLastActiveDesc(sellerId);
-        log.debug("為賣家 {} 找到 {} 個聊天室", sellerId, rooms.size());
-
-        if (rooms.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        // 2. 批量獲取未讀數
-        List<UnreadCountProjection> unreadCountsRaw = chatMessageRepository.countUnreadMessagesPerRoomForSeller(sellerId);
-        Map<Integer, Integer> unreadCountsMap = unreadCountsRaw.stream()
-                .collect(Collectors.toMap(
-                        UnreadCountProjection::getChatRoomId,
-                        p -> p.getUnreadCount().intValue()
-                ));
-        log.debug("獲取到未讀訊息數 Map: {}", unreadCountsMap);
-
-        // 3. 轉換為 ConversationDTO 列表，並獲取最後一條訊息
-        List<ConversationDTO> conversations = rooms.stream()
-            .map(room -> {
-            	
-            	 // --- >>> 在這裡加入詳細日誌 <<< ---
-                log.info(">>> Mapping Room Entity: ID={}, BuyerID={}, SellerID={}, LastActive={}",
-                         room.getChatRoomId(),
-                         room.getBuyer() != null ? room.getBuyer().getUserId() : "null",
-                         room.getSeller() != null ? room.getSeller().getUserId() : "null",
-                         room.getLastActiveAt());
-                // --- >>> ---
-            	
-                ConversationDTO dto = new ConversationDTO();
-                dto.setChatRoomId(room.getChatRoomId());
+        // 一次查詢取得聊天室、買家、商店、未讀數與最後一則訊息
+        List<ConversationDTO> conversations = chatRoomRepository.findSellerConversationRows(sellerId).stream()
+            .map(row -> {
+                ConversationDTO dto = toConversation(row);
                 dto.setSellerId(sellerId);
-                dto.setLastActiveAt(room.getLastActiveAt()); // 使用 ChatRoom 的最後活躍時間
-
-                // 買家信息
-                if (room.getBuyer() != null) {
-                    dto.setBuyerId(room.getBuyer().getUserId());
-                    dto.setBuyerName(room.getBuyer().getUsername());
-                } else {
-                    dto.setBuyerName("未知買家");
-                }
-
-                // 商店信息
-                if (room.getSeller() != null && room.getSeller().getShop() != null) {
-                    dto.setShopId(room.getSeller().getShop().getShopId());
-                    dto.setShopName(room.getSeller().getShop().getShopName());
-                } else {
-                    dto.setShopName("未知商店");
-                }
-
-                // 未讀數
-                dto.setUnreadCount(unreadCountsMap.getOrDefault(room.getChatRoomId(), 0));
-
-                // 獲取最後一條訊息 (可能 N+1，但對於列表通常可接受，或後續優化)
-                Optional<ChatMessageEntity> lastMessageOpt = chatMessageRepository.findTopByChatRoomEntityOrderByTimestampDesc(room);
-                if (lastMessageOpt.isPresent()) {
-                    ChatMessageEntity lastMessage = lastMessageOpt.get();
-                    // 截斷預覽內容，避免過長
-                    String preview = lastMessage.getContent();
-                    if (preview != null && preview.length() > 30) { // 限制長度
-                        preview = preview.substring(0, 30) + "...";
-                    }
-                    dto.setLastMessageContentPreview(preview);
-                    dto.setLastMessageSenderName(lastMessage.getSenderName()); // 使用 Message 上的 SenderName
-                    dto.setLastMessageTimestamp(lastMessage.getTimestamp());
-                } else {
-                    // 如果沒有訊息，可以使用聊天室創建時間或 null
-                    dto.setLastMessageTimestamp(room.getCreatedAt());
-                    dto.setLastMessageContentPreview("尚無訊息");
-                }
-
+                dto.setBuyerName(row[4] != null ? (String) row[4] : "未知買家");
+                dto.setUnreadCount((Integer) row[10]);
                 return dto;
             })
-            // 可以根據 lastMessageTimestamp 再次排序，確保精確
+            // 根據最後訊息時間排序
             .sorted(Comparator.comparing(ConversationDTO::getLastMessageTimestamp, Comparator.nullsLast(Comparator.reverseOrder())))
             .collect(Collectors.toList());
 
@@ -539,73 +527,14 @@ public Map<Integer, Integer> getUnreadCounts(Integer sellerId) {
     // --- >>> 新增方法：獲取買家的對話列表 <<< ---
     @Transactional // 查詢操作
     public List<ConversationDTO> getBuyerConversations(Integer buyerId) {
-        log.info("開始獲取買家 ID: {} 的對話列表", buyerId);
-
-        // 1. 獲取該買家所有的聊天室 (包含預加載的關聯數據)
-        List<ChatRoomEntity> rooms = chatRoomRepository.findByBuyerUserIdWithDetailsOrderByLastActiveDesc(buyerId);
-        log.debug("為買家 {} 找到 {} 個聊天室", buyerId, rooms.size());
-
-        if (rooms.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        // 2. 批量獲取所有相關聊天室中買家的未讀訊息數
-        List<UnreadCountProjection> unreadCountsRaw = chatMessageRepository.countUnreadMessagesPerRoomForBuyer(buyerId);
-        Map<Integer, Integer> unreadCountsMap = unreadCountsRaw.stream()
-                .collect(Collectors.toMap(
-                        UnreadCountProjection::getChatRoomId,
-                        p -> p.getUnreadCount().intValue()
-                ));
-        log.debug("獲取到買家未讀訊息數 Map: {}", unreadCountsMap);
-
-        // 3. 轉換為 ConversationDTO 列表，並獲取最後一條訊息
-        List<ConversationDTO> conversations = rooms.stream()
-            .map(room -> {
-                ConversationDTO dto = new ConversationDTO();
-                dto.setChatRoomId(room.getChatRoomId());
+        List<ConversationDTO> conversations = chatRoomRepository.findBuyerConversationRows(buyerId).stream()
+            .map(row -> {
+                ConversationDTO dto = toConversation(row);
                 dto.setBuyerId(buyerId); // 買家 ID 已知
-
-                // 安全地獲取賣家和商店信息
-                if (room.getSeller() != null) {
-                    dto.setSellerId(room.getSeller().getUserId());
-                    dto.setBuyerName(room.getSeller().getUsername()); // 對於買家，顯示的是賣家名稱
-                    if (room.getSeller().getShop() != null) {
-                        dto.setShopId(room.getSeller().getShop().getShopId());
-                        dto.setShopName(room.getSeller().getShop().getShopName());
-                    } else {
-                         dto.setShopName("未知商店");
-                    }
-                } else {
-                    log.warn("聊天室 ID: {} 的賣家信息為 null", room.getChatRoomId());
-                    dto.setBuyerName("未知賣家"); // 顯示對方是未知賣家
-                    dto.setShopName("未知商店");
-                }
-
-                // 從 Map 中獲取買家的未讀數
-                dto.setUnreadCount(unreadCountsMap.getOrDefault(room.getChatRoomId(), 0));
-
-                // 使用 ChatRoom 的 lastActiveAt
-                dto.setLastActiveAt(room.getLastActiveAt());
-
-                // 獲取最後一條訊息
-                Optional<ChatMessageEntity> lastMessageOpt = chatMessageRepository.findTopByChatRoomEntityOrderByTimestampDesc(room);
-                if (lastMessageOpt.isPresent()) {
-                    ChatMessageEntity lastMessage = lastMessageOpt.get();
-                    String preview = lastMessage.getContent();
-                    if (preview != null && preview.length() > 30) {
-                        preview = preview.substring(0, 30) + "...";
-                    }
-                    dto.setLastMessageContentPreview(preview);
-                    dto.setLastMessageSenderName(lastMessage.getSenderName());
-                    dto.setLastMessageTimestamp(lastMessage.getTimestamp());
-                } else {
-                    dto.setLastMessageTimestamp(room.getCreatedAt());
-                    dto.setLastMessageContentPreview("尚無訊息");
-                }
-
+                dto.setBuyerName(row[6] != null ? (String) row[6] : "未知賣家"); // 對於買家，顯示的是賣家名稱
+                dto.setUnreadCount((Integer) row[9]);
                 return dto;
             })
-            // 根據最後訊息時間排序
             .sorted(Comparator.comparing(ConversationDTO::getLastMessageTimestamp, Comparator.nullsLast(Comparator.reverseOrder())))
             .collect(Collectors.toList());
 
@@ -614,4 +543,37 @@ public Map<Integer, Integer> getUnreadCounts(Integer sellerId) {
     }
     // --- >>> 方法結束 <<< ---
 
+    /**
+     * 由 ChatRoomRepository 的對話列表查詢結果建立 DTO（買家名稱與未讀數由呼叫端依身分設定）
+     */
+    private ConversationDTO toConversation(Object[] row) {
+        ConversationDTO dto = new ConversationDTO();
+        dto.setChatRoomId((Integer) row[0]);
+        dto.setLastActiveAt((LocalDateTime) row[1]);
+        dto.setBuyerId((Integer) row[3]);
+        dto.setSellerId((Integer) row[5]);
+        if (row[7] != null) {
+            dto.setShopId((Integer) row[7]);
+            dto.setShopName((String) row[8]);
+        } else {
+            dto.setShopName("未知商店");
+        }
+
+        if (row[13] != null) {
+            // 截斷預覽內容，避免過長
+            String preview = (String) row[11];
+            if (preview != null && preview.length() > 30) {
+                preview = preview.substring(0, 30) + "...";
+            }
+            dto.setLastMessageContentPreview(preview);
+            dto.setLastMessageSenderName((String) row[12]);
+            dto.setLastMessageTimestamp((LocalDateTime) row[13]);
+        } else {
+            // 如果沒有訊息，使用聊天室創建時間
+            dto.setLastMessageTimestamp((LocalDateTime) row[2]);
+            dto.setLastMessageContentPreview("尚無訊息");
+        }
+        return dto;
+    }
+
 }
\ No newline at end of file
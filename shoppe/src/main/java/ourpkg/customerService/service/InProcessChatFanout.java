@@ -0,0 +1,77 @@
+package ourpkg.customerService.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 同一個 JVM 內的假通道，用來在單機上啟動多個 Spring context 模擬多台伺服器
+ *
+ * 同一個 cluster 名稱的實例共用同一組訂閱者；每個實例用自己的單一執行緒依序處理收到的推播，
+ * 模擬真正的通道是非同步送達，且不會把推播送回發送的實例。
+ */
+public class InProcessChatFanout implements ChatFanout {
+
+	private static final Logger log = LoggerFactory.getLogger(InProcessChatFanout.class);
+
+	// cluster 名稱 -> 加入的實例
+	private static final Map<String, List<InProcessChatFanout>> CLUSTERS = new ConcurrentHashMap<>();
+
+	private final String cluster;
+	private final List<Consumer<Broadcast>> listeners = new CopyOnWriteArrayList<>();
+	private final ExecutorService inbox;
+
+	public InProcessChatFanout(String cluster) {
+		this.cluster = cluster;
+		this.inbox = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "chat-fanout-" + cluster);
+			thread.setDaemon(true);
+			return thread;
+		});
+		CLUSTERS.computeIfAbsent(cluster, key -> new CopyOnWriteArrayList<>()).add(this);
+	}
+
+	@Override
+	public void publish(Broadcast broadcast) {
+		for (InProcessChatFanout node : CLUSTERS.getOrDefault(cluster, List.of())) {
+			if (node != this) {
+				node.receive(broadcast);
+			}
+		}
+	}
+
+	@Override
+	public void subscribe(Consumer<Broadcast> listener) {
+		listeners.add(listener);
+	}
+
+	private void receive(Broadcast broadcast) {
+		inbox.execute(() -> {
+			for (Consumer<Broadcast> listener : listeners) {
+				try {
+					listener.accept(broadcast);
+				} catch (RuntimeException e) {
+					log.warn("處理聊天推播失敗: {}", broadcast.getDestination(), e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 離開 cluster 並停止處理，context 關閉時呼叫
+	 */
+	public void close() {
+		List<InProcessChatFanout> nodes = CLUSTERS.get(cluster);
+		if (nodes != null) {
+			nodes.remove(this);
+		}
+		inbox.shutdown();
+	}
+}
@@ -1,6 +1,7 @@
 package ourpkg.dataAnalysis;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -12,10 +13,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import lombok.RequiredArgsConstructor;
 import ourpkg.dataAnalysis.DTOs.CustomerFrequencyDTO;
@@ -26,8 +30,12 @@ import ourpkg.dataAnalysis.DTOs.SalesForecastDTO;
 import ourpkg.dataAnalysis.DTOs.SellerStatisticsDTO;
 import ourpkg.dataAnalysis.DTOs.ShopDTO;
 import ourpkg.dataAnalysis.DTOs.TopProductDTO;
+import ourpkg.dataAnalysis.forecast.ShopSalesForecastService;
+import ourpkg.dataAnalysis.forecast.ShopSalesForecastService.ShopForecast;
+import ourpkg.dataAnalysis.rollup.SalesRollupService;
 import ourpkg.exception.ResourceNotFoundException;
 import ourpkg.exception.UnauthorizedException;
+import ourpkg.order.OrderChangedEvent;
 
 @Service
 @RequiredArgsConstructor
@@ -35,6 +43,26 @@ public class SellerAnalyticsService {
 
 	private final DataSource dataSource;
 
+	private final ShopSalesForecastService shopSalesForecastService;
+
+	private final SalesRollupService salesRollupService;
+
+	@Value("${analytics.statistics.cache-ttl-seconds:30}")
+	private long statisticsCacheTtlSeconds;
+
+	// 商店ID -> 統計數據快取
+	private final Map<Integer, CachedStatistics> statisticsCache = new ConcurrentHashMap<>();
+
+	private static final class CachedStatistics {
+		private final SellerStatisticsDTO statistics;
+		private final long expiresAt;
+
+		private CachedStatistics(SellerStatisticsDTO statistics, long expiresAt) {
+			this.statistics = statistics;
+			this.expiresAt = expiresAt;
+		}
+	}
+
 	/**
 	 * 根據用戶ID獲取商店ID
 	 */
@@ -106,159 +134,173 @@ public class SellerAnalyticsService {
 
 	/**
 	 * 獲取賣家統計數據
+	 *
+	 * 訂單數與營業額讀 shop_daily_sales（每天一列），活躍客戶只查近三個月的訂單；
+	 * 彙總表回補完成前改用訂單明細計算。結果依商店快取幾秒，儀表板重新整理不會每次都打資料庫；
+	 * 訂單建立、取消、刪除或付款狀態變更會在交易提交後作廢該商店的快取（見 {@link #onOrderChanged}），
+	 * 商品數量的變動則等快取過期。
 	 */
 	public SellerStatisticsDTO getSellerStatistics(Integer shopId) {
-		SellerStatisticsDTO statistics = new SellerStatisticsDTO();
-
-		// 獲取總訂單數
-		String totalOrdersSql = "SELECT COUNT(DISTINCT o.order_id) AS total_orders " + "FROM [Order] o "
-				+ "JOIN OrderItem oi ON o.order_id = oi.order_id " + "WHERE oi.shop_id = ?";
-
-		// 獲取總銷售額
-		String totalSalesSql = "SELECT SUM(oi.unit_price * oi.quantity) AS total_sales " + "FROM OrderItem oi "
-				+ "WHERE oi.shop_id = ?";
-
-		// 獲取本月訂單數
-		String monthlyOrdersSql = "SELECT COUNT(DISTINCT o.order_id) AS monthly_orders " + "FROM [Order] o "
-				+ "JOIN OrderItem oi ON o.order_id = oi.order_id "
-				+ "WHERE oi.shop_id = ? AND YEAR(o.created_at) = YEAR(GETDATE()) "
-				+ "AND MONTH(o.created_at) = MONTH(GETDATE())";
-
-		// 獲取本月銷售額
-		String monthlySalesSql = "SELECT SUM(oi.unit_price * oi.quantity) AS monthly_sales " + "FROM [Order] o "
-				+ "JOIN OrderItem oi ON o.order_id = oi.order_id "
-				+ "WHERE oi.shop_id = ? AND YEAR(o.created_at) = YEAR(GETDATE()) "
-				+ "AND MONTH(o.created_at) = MONTH(GETDATE())";
-
-		// 獲取上月總訂單數
-		String lastMonthOrdersSql = "SELECT COUNT(DISTINCT o.order_id) AS last_month_orders " + "FROM [Order] o "
-				+ "JOIN OrderItem oi ON o.order_id = oi.order_id " + "WHERE oi.shop_id = ? AND "
-				+ "((YEAR(o.created_at) = YEAR(DATEADD(month, -1, GETDATE())) AND "
-				+ "MONTH(o.created_at) = MONTH(DATEADD(month, -1, GETDATE()))) OR "
-				+ "(YEAR(o.created_at) = YEAR(GETDATE()) AND "
-				+ "MONTH(o.created_at) = MONTH(DATEADD(month, -1, GETDATE()))))";
-
-		// 獲取上月總銷售額
-		String lastMonthSalesSql = "SELECT SUM(oi.unit_price * oi.quantity) AS last_month_sales " + "FROM [Order] o "
-				+ "JOIN OrderItem oi ON o.order_id = oi.order_id " + "WHERE oi.shop_id = ? AND "
-				+ "((YEAR(o.created_at) = YEAR(DATEADD(month, -1, GETDATE())) AND "
-				+ "MONTH(o.created_at) = MONTH(DATEADD(month, -1, GETDATE()))) OR "
-				+ "(YEAR(o.created_at) = YEAR(GETDATE()) AND "
-				+ "MONTH(o.created_at) = MONTH(DATEADD(month, -1, GETDATE()))))";
-
-		// 獲取活躍客戶數 (3個月內有購買的客戶)
-		String activeCustomersSql = "SELECT COUNT(DISTINCT o.user_id) AS active_customers " + "FROM [Order] o "
-				+ "JOIN OrderItem oi ON o.order_id = oi.order_id "
-				+ "WHERE oi.shop_id = ? AND o.created_at >= DATEADD(month, -3, GETDATE())";
-
-		// 獲取總商品數
-		String totalProductsSql = "SELECT COUNT(DISTINCT p.product_id) AS total_products " + "FROM Product p "
-				+ "WHERE p.shop_id = ?";
-
-		// 獲取上架商品數
-		String activeProductsSql = "SELECT COUNT(DISTINCT p.product_id) AS active_products " + "FROM Product p "
-				+ "WHERE p.shop_id = ? AND p.active = 1";
-
-		try (Connection conn = dataSource.getConnection();
-				PreparedStatement totalOrdersStmt = conn.prepareStatement(totalOrdersSql);
-				PreparedStatement totalSalesStmt = conn.prepareStatement(totalSalesSql);
-				PreparedStatement monthlyOrdersStmt = conn.prepareStatement(monthlyOrdersSql);
-				PreparedStatement monthlySalesStmt = conn.prepareStatement(monthlySalesSql);
-				PreparedStatement lastMonthOrdersStmt = conn.prepareStatement(lastMonthOrdersSql);
-				PreparedStatement lastMonthSalesStmt = conn.prepareStatement(lastMonthSalesSql);
-				PreparedStatement activeCustomersStmt = conn.prepareStatement(activeCustomersSql);
-				PreparedStatement totalProductsStmt = conn.prepareStatement(totalProductsSql);
-				PreparedStatement activeProductsStmt = conn.prepareStatement(activeProductsSql)) {
-
-			// 設置參數
-			totalOrdersStmt.setInt(1, shopId);
-			totalSalesStmt.setInt(1, shopId);
-			monthlyOrdersStmt.setInt(1, shopId);
-			monthlySalesStmt.setInt(1, shopId);
-			lastMonthOrdersStmt.setInt(1, shopId);
-			lastMonthSalesStmt.setInt(1, shopId);
-			activeCustomersStmt.setInt(1, shopId);
-			totalProductsStmt.setInt(1, shopId);
-			activeProductsStmt.setInt(1, shopId);
-
-			// 查詢總訂單數
-			ResultSet totalOrdersRs = totalOrdersStmt.executeQuery();
-			if (totalOrdersRs.next()) {
-				statistics.setTotalOrders(totalOrdersRs.getInt("total_orders"));
-			}
+		long now = System.currentTimeMillis();
+		CachedStatistics cached = statisticsCache.get(shopId);
+		if (cached != null && cached.expiresAt > now) {
+			return cached.statistics;
+		}
 
-			// 查詢總銷售額
-			ResultSet totalSalesRs = totalSalesStmt.executeQuery();
-			if (totalSalesRs.next()) {
-				BigDecimal totalSales = totalSalesRs.getBigDecimal("total_sales");
-				statistics.setTotalSales(totalSales != null ? totalSales : BigDecimal.ZERO);
-			}
+		SellerStatisticsDTO statistics = loadSellerStatistics(shopId);
+		statisticsCache.put(shopId, new CachedStatistics(statistics, now + statisticsCacheTtlSeconds * 1000L));
+		return statistics;
+	}
 
-			// 查詢本月訂單數
-			ResultSet monthlyOrdersRs = monthlyOrdersStmt.executeQuery();
-			if (monthlyOrdersRs.next()) {
-				statistics.setCurrentMonthOrders(monthlyOrdersRs.getInt("monthly_orders"));
-			}
+	/**
+	 * 清除某商店的統計快取
+	 */
+	public void evictSellerStatistics(Integer shopId) {
+		statisticsCache.remove(shopId);
+	}
 
-			// 查詢本月銷售額
-			ResultSet monthlySalesRs = monthlySalesStmt.executeQuery();
-			if (monthlySalesRs.next()) {
-				BigDecimal monthlySales = monthlySalesRs.getBigDecimal("monthly_sales");
-				statistics.setCurrentMonthSales(monthlySales != null ? monthlySales : BigDecimal.ZERO);
-			}
+	/**
+	 * 訂單異動提交後作廢相關商店的統計快取（沒有交易時立即執行）
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onOrderChanged(OrderChangedEvent event) {
+		event.getShopIds().forEach(this::evictSellerStatistics);
+	}
 
-			// 查詢上月訂單數
-			ResultSet lastMonthOrdersRs = lastMonthOrdersStmt.executeQuery();
-			if (lastMonthOrdersRs.next()) {
-				statistics.setLastMonthOrders(lastMonthOrdersRs.getInt("last_month_orders"));
-			}
+	private SellerStatisticsDTO loadSellerStatistics(Integer shopId) {
+		LocalDate today = LocalDate.now();
+		LocalDateTime currentMonthStart = today.withDayOfMonth(1).atStartOfDay();
+		LocalDateTime lastMonthStart = currentMonthStart.minusMonths(1);
+		LocalDateTime activeSince = LocalDateTime.now().minusMonths(3);
+
+		SellerStatisticsDTO statistics = salesRollupService.isBackfillCompleted()
+				? loadStatisticsFromRollup(shopId, currentMonthStart.toLocalDate(), lastMonthStart.toLocalDate(),
+						activeSince)
+				: loadStatisticsFromOrders(shopId, currentMonthStart, lastMonthStart, activeSince);
+
+		// 計算同比增長率
+		if (statistics.getLastMonthOrders() > 0) {
+			double orderGrowth = ((double) statistics.getCurrentMonthOrders() / statistics.getLastMonthOrders() - 1)
+					* 100;
+			statistics.setOrderGrowth(Math.round(orderGrowth * 10) / 10.0); // 取一位小數
+		}
 
-			// 查詢上月銷售額
-			ResultSet lastMonthSalesRs = lastMonthSalesStmt.executeQuery();
-			if (lastMonthSalesRs.next()) {
-				BigDecimal lastMonthSales = lastMonthSalesRs.getBigDecimal("last_month_sales");
-				statistics.setLastMonthSales(lastMonthSales != null ? lastMonthSales : BigDecimal.ZERO);
-			}
+		if (statistics.getLastMonthSales().compareTo(BigDecimal.ZERO) > 0) {
+			double salesGrowth = (statistics.getCurrentMonthSales().doubleValue()
+					/ statistics.getLastMonthSales().doubleValue() - 1) * 100;
+			statistics.setSalesGrowth(Math.round(salesGrowth * 10) / 10.0); // 取一位小數
+		}
+		return statistics;
+	}
 
-			// 計算同比增長率
-			if (statistics.getLastMonthOrders() > 0) {
-				double orderGrowth = ((double) statistics.getCurrentMonthOrders() / statistics.getLastMonthOrders() - 1)
-						* 100;
-				statistics.setOrderGrowth(Math.round(orderGrowth * 10) / 10.0); // 取一位小數
-			}
+	/**
+	 * 從彙總表計算，讀取的列數只和營業天數有關；已取消的訂單不計入，與銷售趨勢、熱銷商品一致
+	 */
+	private SellerStatisticsDTO loadStatisticsFromRollup(Integer shopId, LocalDate currentMonthStart,
+			LocalDate lastMonthStart, LocalDateTime activeSince) {
+		String sql = "SELECT SUM(sd.order_count) AS total_orders, "
+				+ "  SUM(sd.revenue) AS total_sales, "
+				+ "  SUM(CASE WHEN sd.sales_date >= ? THEN sd.order_count ELSE 0 END) AS monthly_orders, "
+				+ "  SUM(CASE WHEN sd.sales_date >= ? THEN sd.revenue ELSE 0 END) AS monthly_sales, "
+				+ "  SUM(CASE WHEN sd.sales_date >= ? AND sd.sales_date < ? THEN sd.order_count ELSE 0 END) AS last_month_orders, "
+				+ "  SUM(CASE WHEN sd.sales_date >= ? AND sd.sales_date < ? THEN sd.revenue ELSE 0 END) AS last_month_sales, "
+				+ "  (SELECT COUNT(DISTINCT o.user_id) FROM [Order] o "
+				+ "    WHERE o.created_at >= ? "
+				+ "    AND NOT EXISTS (SELECT 1 FROM OrderStatusCorrespond osc WHERE osc.id = o.order_status_id AND osc.name = ?) "
+				+ "    AND EXISTS (SELECT 1 FROM OrderItem oi WHERE oi.order_id = o.order_id AND oi.shop_id = ?)"
+				+ "  ) AS active_customers, "
+				+ "  (SELECT COUNT(*) FROM Product p WHERE p.shop_id = ?) AS total_products, "
+				+ "  (SELECT COUNT(*) FROM Product p WHERE p.shop_id = ? AND p.active = 1) AS active_products "
+				+ "FROM shop_daily_sales sd "
+				+ "WHERE sd.shop_id = ?";
 
-			if (statistics.getLastMonthSales().compareTo(BigDecimal.ZERO) > 0) {
-				double salesGrowth = (statistics.getCurrentMonthSales().doubleValue()
-						/ statistics.getLastMonthSales().doubleValue() - 1) * 100;
-				statistics.setSalesGrowth(Math.round(salesGrowth * 10) / 10.0); // 取一位小數
-			}
+		try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-			// 查詢活躍客戶數
-			ResultSet activeCustomersRs = activeCustomersStmt.executeQuery();
-			if (activeCustomersRs.next()) {
-				statistics.setActiveCustomers(activeCustomersRs.getInt("active_customers"));
-			}
+			int i = 1;
+			stmt.setObject(i++, currentMonthStart);
+			stmt.setObject(i++, currentMonthStart);
+			stmt.setObject(i++, lastMonthStart);
+			stmt.setObject(i++, currentMonthStart);
+			stmt.setObject(i++, lastMonthStart);
+			stmt.setObject(i++, currentMonthStart);
+			stmt.setObject(i++, activeSince);
+			stmt.setString(i++, SalesRollupService.CANCELED_STATUS);
+			stmt.setInt(i++, shopId);
+			stmt.setInt(i++, shopId);
+			stmt.setInt(i++, shopId);
+			stmt.setInt(i++, shopId);
+
+			return readStatistics(stmt.executeQuery());
+		} catch (SQLException e) {
+			throw new RuntimeException("資料庫錯誤", e);
+		}
+	}
 
-			// 查詢總商品數
-			ResultSet totalProductsRs = totalProductsStmt.executeQuery();
-			if (totalProductsRs.next()) {
-				statistics.setTotalProducts(totalProductsRs.getInt("total_products"));
-			}
+	/**
+	 * 彙總表回補完成前的算法：把訂單先依訂單彙總，再用條件加總算出各區間的數字
+	 */
+	private SellerStatisticsDTO loadStatisticsFromOrders(Integer shopId, LocalDateTime currentMonthStart,
+			LocalDateTime lastMonthStart, LocalDateTime activeSince) {
+		String sql = "WITH shop_orders AS ( "
+				+ "  SELECT o.order_id, o.user_id, o.created_at, SUM(oi.unit_price * oi.quantity) AS order_sales "
+				+ "  FROM [Order] o JOIN OrderItem oi ON o.order_id = oi.order_id "
+				+ "  WHERE oi.shop_id = ? "
+				+ "  GROUP BY o.order_id, o.user_id, o.created_at "
+				+ ") "
+				+ "SELECT COUNT(*) AS total_orders, "
+				+ "  SUM(order_sales) AS total_sales, "
+				+ "  SUM(CASE WHEN created_at >= ? THEN 1 ELSE 0 END) AS monthly_orders, "
+				+ "  SUM(CASE WHEN created_at >= ? THEN order_sales ELSE 0 END) AS monthly_sales, "
+				+ "  SUM(CASE WHEN created_at >= ? AND created_at < ? THEN 1 ELSE 0 END) AS last_month_orders, "
+				+ "  SUM(CASE WHEN created_at >= ? AND created_at < ? THEN order_sales ELSE 0 END) AS last_month_sales, "
+				+ "  COUNT(DISTINCT CASE WHEN created_at >= ? THEN user_id END) AS active_customers, "
+				+ "  (SELECT COUNT(*) FROM Product p WHERE p.shop_id = ?) AS total_products, "
+				+ "  (SELECT COUNT(*) FROM Product p WHERE p.shop_id = ? AND p.active = 1) AS active_products "
+				+ "FROM shop_orders";
 
-			// 查詢上架商品數
-			ResultSet activeProductsRs = activeProductsStmt.executeQuery();
-			if (activeProductsRs.next()) {
-				statistics.setActiveProducts(activeProductsRs.getInt("active_products"));
-			}
+		try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-			return statistics;
+			// 設置參數
+			int i = 1;
+			stmt.setInt(i++, shopId);
+			stmt.setObject(i++, currentMonthStart);
+			stmt.setObject(i++, currentMonthStart);
+			stmt.setObject(i++, lastMonthStart);
+			stmt.setObject(i++, currentMonthStart);
+			stmt.setObject(i++, lastMonthStart);
+			stmt.setObject(i++, currentMonthStart);
+			stmt.setObject(i++, activeSince);
+			stmt.setInt(i++, shopId);
+			stmt.setInt(i++, shopId);
+
+			return readStatistics(stmt.executeQuery());
 		} catch (SQLException e) {
 			throw new RuntimeException("資料庫錯誤", e);
 		}
 	}
 
+	private static SellerStatisticsDTO readStatistics(ResultSet rs) throws SQLException {
+		SellerStatisticsDTO statistics = new SellerStatisticsDTO();
+		if (rs.next()) {
+			statistics.setTotalOrders(rs.getInt("total_orders"));
+			statistics.setTotalSales(orZero(rs.getBigDecimal("total_sales")));
+			statistics.setCurrentMonthOrders(rs.getInt("monthly_orders"));
+			statistics.setCurrentMonthSales(orZero(rs.getBigDecimal("monthly_sales")));
+			statistics.setLastMonthOrders(rs.getInt("last_month_orders"));
+			statistics.setLastMonthSales(orZero(rs.getBigDecimal("last_month_sales")));
+			statistics.setActiveCustomers(rs.getInt("active_customers"));
+			statistics.setTotalProducts(rs.getInt("total_products"));
+			statistics.setActiveProducts(rs.getInt("active_products"));
+		}
+		return statistics;
+	}
+
+	private static BigDecimal orZero(BigDecimal value) {
+		return value != null ? value : BigDecimal.ZERO;
+	}
+
 	/**
-	 * 獲取銷售數據趨勢
+	 * 獲取銷售數據趨勢（讀 shop_daily_sales 彙總表）
 	 */
 	public SalesDataDTO getSalesData(Integer shopId, String timeRange) {
 		// 根據時間範圍確定查詢時間和格式化方式
@@ -296,16 +338,14 @@ public class SellerAnalyticsService {
 		String sql;
 		if (timeRange.equals("year")) {
 			// 年視圖按月匯總
-			sql = "SELECT FORMAT(o.created_at, 'yyyy-MM') AS date, "
-					+ "SUM(oi.unit_price * oi.quantity) AS daily_sales " + "FROM [Order] o "
-					+ "JOIN OrderItem oi ON o.order_id = oi.order_id " + "WHERE oi.shop_id = ? AND o.created_at >= ? "
-					+ "GROUP BY FORMAT(o.created_at, 'yyyy-MM') " + "ORDER BY date";
+			sql = "SELECT FORMAT(sd.sales_date, 'yyyy-MM') AS date, " + "SUM(sd.revenue) AS daily_sales "
+					+ "FROM shop_daily_sales sd " + "WHERE sd.shop_id = ? AND sd.sales_date >= ? "
+					+ "GROUP BY FORMAT(sd.sales_date, 'yyyy-MM') " + "ORDER BY date";
 		} else {
-			// 其他視圖按日匯總
-			sql = "SELECT CONVERT(VARCHAR, o.created_at, 23) AS date, "
-					+ "SUM(oi.unit_price * oi.quantity) AS daily_sales " + "FROM [Order] o "
-					+ "JOIN OrderItem oi ON o.order_id = oi.order_id " + "WHERE oi.shop_id = ? AND o.created_at >= ? "
-					+ "GROUP BY CONVERT(VARCHAR, o.created_at, 23) " + "ORDER BY date";
+			// 其他視圖按日，彙總表本身就是一天一列
+			sql = "SELECT CONVERT(VARCHAR, sd.sales_date, 23) AS date, " + "sd.revenue AS daily_sales "
+					+ "FROM shop_daily_sales sd " + "WHERE sd.shop_id = ? AND sd.sales_date >= ? "
+					+ "ORDER BY sd.sales_date";
 		}
 
 		// 準備返回結果
@@ -316,7 +356,7 @@ public class SellerAnalyticsService {
 		try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
 
 			stmt.setInt(1, shopId);
-			stmt.setObject(2, startDateTime);
+			stmt.setObject(2, startDateTime.toLocalDate());
 			ResultSet rs = stmt.executeQuery();
 
 			// 處理查詢結果
@@ -369,14 +409,14 @@ public class SellerAnalyticsService {
 	}
 
 	/**
-	 * 獲取熱銷商品排行
+	 * 獲取熱銷商品排行（讀 sku_daily_sales 彙總表）
 	 */
 	public List<TopProductDTO> getTopProducts(Integer shopId, Integer limit) {
-		String sql = "SELECT p.product_id, p.product_name, " + "SUM(oi.quantity) AS total_quantity, "
-				+ "SUM(oi.unit_price * oi.quantity) AS total_revenue " + "FROM OrderItem oi "
-				+ "JOIN SKU s ON oi.sku_id = s.sku_id " + "JOIN Product p ON s.product_id = p.product_id "
-				+ "WHERE oi.shop_id = ? " + "GROUP BY p.product_id, p.product_name " + "ORDER BY total_revenue DESC "
-				+ "OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+		String sql = "SELECT p.product_id, p.product_name, " + "SUM(sd.quantity) AS total_quantity, "
+				+ "SUM(sd.revenue) AS total_revenue " + "FROM sku_daily_sales sd "
+				+ "JOIN Product p ON sd.product_id = p.product_id " + "WHERE sd.shop_id = ? "
+				+ "GROUP BY p.product_id, p.product_name " + "HAVING SUM(sd.quantity) > 0 "
+				+ "ORDER BY total_revenue DESC " + "OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
 
 		List<TopProductDTO> topProducts = new ArrayList<>();
 
@@ -434,12 +474,12 @@ public class SellerAnalyticsService {
 	}
 
 	/**
-	 * 獲取客戶購買頻率分布
+	 * 獲取客戶購買頻率分布（讀 shop_customer_orders 彙總表）
 	 */
 	public List<CustomerFrequencyDTO> getCustomerFrequency(Integer shopId) {
-		String sql = "WITH CustomerOrders AS ( " + "  SELECT o.user_id, COUNT(DISTINCT o.order_id) AS order_count "
-				+ "  FROM [Order] o " + "  JOIN OrderItem oi ON o.order_id = oi.order_id " + "  WHERE oi.shop_id = ? "
-				+ "  GROUP BY o.user_id " + ") " + "SELECT " + "  CASE " + "    WHEN order_count = 1 THEN '1次' "
+		String sql = "WITH CustomerOrders AS ( " + "  SELECT sco.user_id, sco.order_count "
+				+ "  FROM shop_customer_orders sco " + "  WHERE sco.shop_id = ? AND sco.order_count > 0 " + ") "
+				+ "SELECT " + "  CASE " + "    WHEN order_count = 1 THEN '1次' "
 				+ "    WHEN order_count BETWEEN 2 AND 3 THEN '2-3次' "
 				+ "    WHEN order_count BETWEEN 4 AND 5 THEN '4-5次' "
 				+ "    WHEN order_count BETWEEN 6 AND 10 THEN '6-10次' " + "    ELSE '10次以上' " + "  END AS frequency, "
@@ -503,84 +543,31 @@ public class SellerAnalyticsService {
 	}
 
 	/**
-	 * 獲取銷售預測數據 注意：這只是一個簡單的預測模型，實際應用中可能需要更複雜的算法
+	 * 獲取銷售預測數據（Holt-Winters 週季節性模型，每晚預先算好）
 	 */
 	public SalesForecastDTO getSalesForecast(Integer shopId, Integer days) {
-		// 獲取過去同等天數的銷售數據做為參考
-		String historySql = "SELECT CONVERT(VARCHAR, o.created_at, 23) AS date, "
-				+ "COUNT(DISTINCT o.order_id) AS daily_orders, " + "SUM(oi.unit_price * oi.quantity) AS daily_sales "
-				+ "FROM [Order] o " + "JOIN OrderItem oi ON o.order_id = oi.order_id "
-				+ "WHERE oi.shop_id = ? AND o.created_at >= DATEADD(day, -?, GETDATE()) "
-				+ "GROUP BY CONVERT(VARCHAR, o.created_at, 23) " + "ORDER BY date";
-
-		// 獲取店鋪過去30天平均值
-		String avgSql = "SELECT " + "AVG(daily_orders) AS avg_orders, " + "AVG(daily_sales) AS avg_sales " + "FROM ( "
-				+ "  SELECT " + "    CONVERT(VARCHAR, o.created_at, 23) AS date, "
-				+ "    COUNT(DISTINCT o.order_id) AS daily_orders, "
-				+ "    SUM(oi.unit_price * oi.quantity) AS daily_sales " + "  FROM [Order] o "
-				+ "  JOIN OrderItem oi ON o.order_id = oi.order_id "
-				+ "  WHERE oi.shop_id = ? AND o.created_at >= DATEADD(day, -30, GETDATE()) "
-				+ "  GROUP BY CONVERT(VARCHAR, o.created_at, 23) " + ") AS daily_stats";
-
-		try (Connection conn = dataSource.getConnection();
-				PreparedStatement historyStmt = conn.prepareStatement(historySql);
-				PreparedStatement avgStmt = conn.prepareStatement(avgSql)) {
-
-			// 獲取歷史銷售數據
-			historyStmt.setInt(1, shopId);
-			historyStmt.setInt(2, days);
-			ResultSet historyRs = historyStmt.executeQuery();
-
-			// 獲取平均值
-			avgStmt.setInt(1, shopId);
-			ResultSet avgRs = avgStmt.executeQuery();
-
-			// 計算平均每日訂單和銷售額
-			double avgDailyOrders = 0;
-			double avgDailySales = 0;
-
-			if (avgRs.next()) {
-				avgDailyOrders = avgRs.getDouble("avg_orders");
-				avgDailySales = avgRs.getDouble("avg_sales");
-			}
-
-			// 創建預測數據
-			SalesForecastDTO forecast = new SalesForecastDTO();
-			List<String> labels = new ArrayList<>();
-			List<BigDecimal> values = new ArrayList<>();
-
-			// 預計訂單總數和總銷售額
-			int totalOrders = (int) Math.round(avgDailyOrders * days);
-			BigDecimal totalRevenue = BigDecimal.valueOf(avgDailySales * days);
-
-			forecast.setOrderCount(totalOrders);
-			forecast.setRevenue(totalRevenue);
-
-			// 生成未來日期
-			LocalDate startDate = LocalDate.now();
-			for (int i = 0; i < days; i++) {
-				LocalDate forecastDate = startDate.plusDays(i);
-				labels.add(forecastDate.format(DateTimeFormatter.ofPattern("M/d")));
-
-				// 產生預測值，加入一些隨機波動
-				double randomFactor = 0.8 + (Math.random() * 0.4); // 0.8 - 1.2 之間的隨機因子
-				double forecastValue = avgDailySales * randomFactor;
+		ShopForecast shopForecast = shopSalesForecastService.getForecast(shopId, days);
 
-				// 星期效應（週末銷售更好）
-				int dayOfWeek = forecastDate.getDayOfWeek().getValue();
-				if (dayOfWeek == 6 || dayOfWeek == 7) { // 週六週日
-					forecastValue *= 1.3;
-				}
+		SalesForecastDTO forecast = new SalesForecastDTO();
+		List<String> labels = new ArrayList<>();
+		List<BigDecimal> values = new ArrayList<>();
 
-				values.add(BigDecimal.valueOf(forecastValue));
-			}
+		double totalOrders = 0;
+		double totalRevenue = 0;
+		DateTimeFormatter labelFormat = DateTimeFormatter.ofPattern("M/d");
+		for (int i = 0; i < days; i++) {
+			labels.add(shopForecast.getStartDate().plusDays(i).format(labelFormat));
+			values.add(BigDecimal.valueOf(shopForecast.getRevenue(i)).setScale(2, RoundingMode.HALF_UP));
+			totalOrders += shopForecast.getOrders(i);
+			totalRevenue += shopForecast.getRevenue(i);
+		}
 
-			forecast.getData().setLabels(labels);
-			forecast.getData().setValues(values);
+		// 預計訂單總數和總銷售額
+		forecast.setOrderCount((int) Math.round(totalOrders));
+		forecast.setRevenue(BigDecimal.valueOf(totalRevenue).setScale(2, RoundingMode.HALF_UP));
+		forecast.getData().setLabels(labels);
+		forecast.getData().setValues(values);
 
-			return forecast;
-		} catch (SQLException e) {
-			throw new RuntimeException("資料庫錯誤", e);
-		}
+		return forecast;
 	}
-}
\ No newline at end of file
+}
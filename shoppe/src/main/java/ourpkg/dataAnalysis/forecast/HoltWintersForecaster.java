@@ -0,0 +1,114 @@
+package ourpkg.dataAnalysis.forecast;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * 加法型 Holt-Winters（阻尼趨勢 + 週季節性）
+ *
+ * 參數用小格點搜尋一步預測誤差最小的組合，全程只用 double[]，同一份輸入一定得到同樣的結果。
+ * 歷史不足兩週時退回用平均值。
+ */
+@Component
+public class HoltWintersForecaster implements SalesForecaster {
+
+	private static final int SEASON = 7;
+	private static final double PHI = 0.9; // 趨勢阻尼，避免長天期預測一路往上/往下衝
+
+	private static final double[] ALPHAS = { 0.1, 0.3, 0.5, 0.7, 0.9 };
+	private static final double[] BETAS = { 0.0, 0.05, 0.15 };
+	private static final double[] GAMMAS = { 0.05, 0.2, 0.4 };
+
+	@Override
+	public double[] forecast(double[] history, int horizon) {
+		double[] out = new double[Math.max(horizon, 0)];
+		int n = history.length;
+		if (n == 0 || horizon <= 0) {
+			return out;
+		}
+
+		if (n < 2 * SEASON) {
+			double mean = 0;
+			for (double value : history) {
+				mean += value;
+			}
+			mean /= n;
+			for (int h = 0; h < horizon; h++) {
+				out[h] = mean;
+			}
+			return out;
+		}
+
+		double[] seasonal = new double[SEASON];
+		double bestSse = Double.MAX_VALUE;
+		double bestAlpha = ALPHAS[0];
+		double bestBeta = BETAS[0];
+		double bestGamma = GAMMAS[0];
+
+		for (double alpha : ALPHAS) {
+			for (double beta : BETAS) {
+				for (double gamma : GAMMAS) {
+					double sse = run(history, alpha, beta, gamma, seasonal, null);
+					if (sse < bestSse) {
+						bestSse = sse;
+						bestAlpha = alpha;
+						bestBeta = beta;
+						bestGamma = gamma;
+					}
+				}
+			}
+		}
+
+		run(history, bestAlpha, bestBeta, bestGamma, seasonal, out);
+		for (int h = 0; h < horizon; h++) {
+			if (out[h] < 0) {
+				out[h] = 0; // 銷售額不會是負的
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * 跑一次平滑，回傳一步預測的誤差平方和；out 不為 null 時順便寫入預測值
+	 */
+	private double run(double[] y, double alpha, double beta, double gamma, double[] seasonal, double[] out) {
+		int n = y.length;
+
+		// 用前兩週初始化水準、趨勢與季節項
+		double level = 0;
+		double nextSeason = 0;
+		for (int i = 0; i < SEASON; i++) {
+			level += y[i];
+			nextSeason += y[i + SEASON];
+		}
+		level /= SEASON;
+		nextSeason /= SEASON;
+		double trend = (nextSeason - level) / SEASON;
+		for (int i = 0; i < SEASON; i++) {
+			seasonal[i] = y[i] - level;
+		}
+
+		double sse = 0;
+		for (int t = SEASON; t < n; t++) {
+			int s = t % SEASON;
+			double predicted = level + PHI * trend + seasonal[s];
+			double error = y[t] - predicted;
+			sse += error * error;
+
+			double previousLevel = level;
+			level = alpha * (y[t] - seasonal[s]) + (1 - alpha) * (level + PHI * trend);
+			trend = beta * (level - previousLevel) + (1 - beta) * PHI * trend;
+			seasonal[s] = gamma * (y[t] - level) + (1 - gamma) * seasonal[s];
+		}
+
+		if (out != null) {
+			double damped = 0;
+			double phiPower = 1;
+			for (int h = 0; h < out.length; h++) {
+				phiPower *= PHI;
+				damped += phiPower;
+				out[h] = level + damped * trend + seasonal[(n + h) % SEASON];
+			}
+		}
+		return sse;
+	}
+}
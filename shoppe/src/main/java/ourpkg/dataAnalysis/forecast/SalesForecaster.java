@@ -0,0 +1,14 @@
+package ourpkg.dataAnalysis.forecast;
+
+/**
+ * 每日序列預測模型
+ */
+public interface SalesForecaster {
+
+	/**
+	 * @param history 依日期排列的歷史值（最後一筆是昨天）
+	 * @param horizon 要預測的天數
+	 * @return 長度為 horizon 的預測值，第一筆是今天
+	 */
+	double[] forecast(double[] history, int horizon);
+}
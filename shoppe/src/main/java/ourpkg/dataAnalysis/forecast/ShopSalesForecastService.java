@@ -0,0 +1,217 @@
+package ourpkg.dataAnalysis.forecast;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * 商店銷售預測
+ *
+ * 每晚把所有商店最近 N 天的 shop_daily_sales 一次讀成 double[]，用 ForkJoinPool 平行擬合，
+ * 結果放在記憶體；白天的預測請求直接讀快取。快取不是今天算的（例如新商店或服務剛啟動）
+ * 才會當場算一次。
+ */
+@Service
+public class ShopSalesForecastService {
+
+	private static final Logger log = LoggerFactory.getLogger(ShopSalesForecastService.class);
+
+	private static final int SHOPS_PER_TASK = 32;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private SalesForecaster forecaster;
+
+	@Value("${analytics.forecast.history-days:182}")
+	private int historyDays;
+
+	@Value("${analytics.forecast.horizon-days:90}")
+	private int horizonDays;
+
+	@Value("${analytics.forecast.parallelism:0}")
+	private int parallelism;
+
+	// 商店ID -> 預測結果
+	private final Map<Integer, ShopForecast> forecasts = new ConcurrentHashMap<>();
+
+	/**
+	 * 某商店從 startDate（含）起每天的預測銷售額與訂單數
+	 */
+	public static final class ShopForecast {
+		private final LocalDate startDate;
+		private final double[] revenue;
+		private final double[] orders;
+
+		private ShopForecast(LocalDate startDate, double[] revenue, double[] orders) {
+			this.startDate = startDate;
+			this.revenue = revenue;
+			this.orders = orders;
+		}
+
+		public LocalDate getStartDate() {
+			return startDate;
+		}
+
+		public int getHorizon() {
+			return revenue.length;
+		}
+
+		public double getRevenue(int day) {
+			return revenue[day];
+		}
+
+		public double getOrders(int day) {
+			return orders[day];
+		}
+	}
+
+	/**
+	 * 商店每日歷史，最後一筆是昨天
+	 */
+	private static final class ShopSeries {
+		private final Integer shopId;
+		private final double[] revenue;
+		private final double[] orders;
+
+		private ShopSeries(Integer shopId, int length) {
+			this.shopId = shopId;
+			this.revenue = new double[length];
+			this.orders = new double[length];
+		}
+	}
+
+	/**
+	 * 取得商店未來 days 天的預測（從今天開始）
+	 */
+	public ShopForecast getForecast(Integer shopId, int days) {
+		LocalDate today = LocalDate.now();
+		ShopForecast cached = forecasts.get(shopId);
+		if (cached != null && cached.startDate.equals(today) && cached.getHorizon() >= days) {
+			return cached;
+		}
+
+		ShopSeries series = loadSeries(shopId, today).get(shopId);
+		if (series == null) {
+			series = new ShopSeries(shopId, historyDays);
+		}
+		ShopForecast forecast = fit(series, today, Math.max(days, horizonDays));
+		forecasts.put(shopId, forecast);
+		return forecast;
+	}
+
+	/**
+	 * 每晚重新擬合所有有銷售紀錄的商店
+	 */
+	@Scheduled(cron = "${analytics.forecast.cron:0 30 3 * * *}")
+	public void precomputeAll() {
+		long start = System.currentTimeMillis();
+		LocalDate today = LocalDate.now();
+		ShopSeries[] all = loadSeries(null, today).values().toArray(new ShopSeries[0]);
+
+		ForkJoinPool pool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+		try {
+			pool.invoke(new FitTask(all, 0, all.length, today));
+		} finally {
+			if (pool != ForkJoinPool.commonPool()) {
+				pool.shutdown();
+			}
+		}
+
+		// 過期的預測（例如商店已經很久沒有銷售）不再保留
+		forecasts.values().removeIf(forecast -> !forecast.startDate.equals(today));
+		log.info("銷售預測重算完成，商店 {} 家，耗時 {} ms", all.length, System.currentTimeMillis() - start);
+	}
+
+	private final class FitTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final ShopSeries[] series;
+		private final int from;
+		private final int to;
+		private final LocalDate today;
+
+		private FitTask(ShopSeries[] series, int from, int to, LocalDate today) {
+			this.series = series;
+			this.from = from;
+			this.to = to;
+			this.today = today;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SHOPS_PER_TASK) {
+				for (int i = from; i < to; i++) {
+					forecasts.put(series[i].shopId, fit(series[i], today, horizonDays));
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new FitTask(series, from, mid, today), new FitTask(series, mid, to, today));
+		}
+	}
+
+	private ShopForecast fit(ShopSeries series, LocalDate today, int horizon) {
+		// 商店開始有銷售之前的 0 不算進歷史，不然新商店的預測會被拉低
+		int first = 0;
+		while (first < series.orders.length && series.orders[first] == 0) {
+			first++;
+		}
+		double[] revenue = first == 0 ? series.revenue
+				: Arrays.copyOfRange(series.revenue, first, series.revenue.length);
+		double[] orders = first == 0 ? series.orders : Arrays.copyOfRange(series.orders, first, series.orders.length);
+		return new ShopForecast(today, forecaster.forecast(revenue, horizon), forecaster.forecast(orders, horizon));
+	}
+
+	/**
+	 * 讀取 [today - historyDays, today) 的每日彙總，沒有紀錄的日子為 0
+	 *
+	 * @param shopId 為 null 時讀全部商店
+	 */
+	private Map<Integer, ShopSeries> loadSeries(Integer shopId, LocalDate today) {
+		LocalDate from = today.minusDays(historyDays);
+		String sql = "SELECT shop_id, sales_date, order_count, revenue FROM shop_daily_sales "
+				+ "WHERE sales_date >= ? AND sales_date < ?" + (shopId != null ? " AND shop_id = ?" : "");
+
+		Map<Integer, ShopSeries> result = new HashMap<>();
+		try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setDate(1, Date.valueOf(from));
+			stmt.setDate(2, Date.valueOf(today));
+			if (shopId != null) {
+				stmt.setInt(3, shopId);
+			}
+
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				int id = rs.getInt("shop_id");
+				int day = (int) ChronoUnit.DAYS.between(from, rs.getDate("sales_date").toLocalDate());
+				ShopSeries series = result.computeIfAbsent(id, key -> new ShopSeries(key, historyDays));
+				series.orders[day] = rs.getInt("order_count");
+				series.revenue[day] = rs.getDouble("revenue");
+			}
+			return result;
+		} catch (SQLException e) {
+			throw new RuntimeException("資料庫錯誤", e);
+		}
+	}
+}
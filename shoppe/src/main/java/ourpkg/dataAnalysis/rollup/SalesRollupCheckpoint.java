@@ -0,0 +1,44 @@
+package ourpkg.dataAnalysis.rollup;
+
+import java.util.Date;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 回補作業進度，重啟後從 lastOrderId 繼續
+ */
+@Entity
+@Table(name = "sales_rollup_checkpoint")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesRollupCheckpoint {
+
+	@Id
+	@Column(name = "job_name", length = 50)
+	private String jobName;
+
+	// 回補開始時最大的訂單ID，之後的訂單由即時更新負責
+	@Column(name = "cutoff_order_id", nullable = false)
+	private Integer cutoffOrderId;
+
+	@Column(name = "last_order_id", nullable = false)
+	private Integer lastOrderId;
+
+	@Column(name = "completed", nullable = false)
+	private Boolean completed;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "updated_at")
+	private Date updatedAt;
+}
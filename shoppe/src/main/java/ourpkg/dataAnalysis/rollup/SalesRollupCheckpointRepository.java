@@ -0,0 +1,18 @@
+package ourpkg.dataAnalysis.rollup;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.persistence.LockModeType;
+
+public interface SalesRollupCheckpointRepository extends JpaRepository<SalesRollupCheckpoint, String> {
+
+	// 鎖住進度列（不存在時鎖住該鍵值範圍），即時更新與回補的每一批依序判斷由誰計入訂單
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT c FROM SalesRollupCheckpoint c WHERE c.jobName = :jobName")
+	Optional<SalesRollupCheckpoint> findByIdForUpdate(@Param("jobName") String jobName);
+}
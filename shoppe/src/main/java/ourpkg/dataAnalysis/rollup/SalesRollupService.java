@@ -0,0 +1,321 @@
+package ourpkg.dataAnalysis.rollup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import ourpkg.order.Order;
+import ourpkg.order.OrderChangedEvent;
+import ourpkg.order.OrderItem;
+import ourpkg.order.OrderRepository;
+
+/**
+ * 銷售彙總表維護
+ *
+ * 訂單建立時把金額與數量加進 shop_daily_sales / sku_daily_sales / shop_customer_orders，
+ * 取消時扣回，和訂單本身在同一個交易內完成。舊訂單由排程分批回補，進度記在
+ * sales_rollup_checkpoint，重啟後可以接續。
+ *
+ * 回補開始時記下的訂單ID上限（cutoff）之後不會再變，讀到一次就留在記憶體：新訂單的ID一定大於上限，
+ * 不用碰進度列就能直接計入，結帳不會因為回補而排隊。只有異動上限以內的舊訂單（例如回補期間取消舊訂單）時，
+ * 才鎖住進度列判斷訂單是否落在回補尚未處理的區間 (lastOrderId, cutoffOrderId]，落在區間內就交給回補；
+ * 回補的每一批也先鎖住同一列，所以同一筆訂單只會被計入一次。回補完成後完全不讀進度列。
+ *
+ * 每張訂單對三張彙總表各送一次 JDBC 批次 MERGE，語句往返次數與訂單涵蓋的商店數、SKU 數無關；
+ * 批次內依鍵值排序，同時結帳的訂單以相同順序鎖列，不會互相死結。
+ */
+@Service
+public class SalesRollupService {
+
+	private static final Logger log = LoggerFactory.getLogger(SalesRollupService.class);
+
+	public static final String CANCELED_STATUS = "已取消";
+
+	private static final String BACKFILL_JOB = "sales_rollup_backfill";
+
+	// 累加（或扣除）某商店某天的訂單數與營業額，沒有資料列就新增
+	static final String SHOP_DAILY_SALES_UPSERT = "MERGE shop_daily_sales WITH (HOLDLOCK) AS t "
+			+ "USING (SELECT ? AS shop_id, ? AS sales_date, ? AS orders, ? AS revenue) AS s "
+			+ "ON t.shop_id = s.shop_id AND t.sales_date = s.sales_date "
+			+ "WHEN MATCHED THEN UPDATE SET t.order_count = t.order_count + s.orders, t.revenue = t.revenue + s.revenue "
+			+ "WHEN NOT MATCHED THEN INSERT (shop_id, sales_date, order_count, revenue) "
+			+ "VALUES (s.shop_id, s.sales_date, s.orders, s.revenue);";
+
+	// 累加（或扣除）某 SKU 某天的銷售數量與金額，沒有資料列就新增
+	static final String SKU_DAILY_SALES_UPSERT = "MERGE sku_daily_sales WITH (HOLDLOCK) AS t "
+			+ "USING (SELECT ? AS sku_id, ? AS sales_date, ? AS shop_id, ? AS product_id, ? AS quantity, ? AS revenue) AS s "
+			+ "ON t.sku_id = s.sku_id AND t.sales_date = s.sales_date "
+			+ "WHEN MATCHED THEN UPDATE SET t.quantity = t.quantity + s.quantity, t.revenue = t.revenue + s.revenue "
+			+ "WHEN NOT MATCHED THEN INSERT (sku_id, sales_date, shop_id, product_id, quantity, revenue) "
+			+ "VALUES (s.sku_id, s.sales_date, s.shop_id, s.product_id, s.quantity, s.revenue);";
+
+	// 累加（或扣除）客戶在商店的下單次數，沒有資料列就新增
+	static final String SHOP_CUSTOMER_ORDERS_UPSERT = "MERGE shop_customer_orders WITH (HOLDLOCK) AS t "
+			+ "USING (SELECT ? AS shop_id, ? AS user_id, ? AS orders) AS s "
+			+ "ON t.shop_id = s.shop_id AND t.user_id = s.user_id "
+			+ "WHEN MATCHED THEN UPDATE SET t.order_count = t.order_count + s.orders "
+			+ "WHEN NOT MATCHED THEN INSERT (shop_id, user_id, order_count) VALUES (s.shop_id, s.user_id, s.orders);";
+
+	@Autowired
+	private ShopDailySalesRepository shopDailySalesRepository;
+
+	@Autowired
+	private SkuDailySalesRepository skuDailySalesRepository;
+
+	@Autowired
+	private ShopCustomerOrdersRepository shopCustomerOrdersRepository;
+
+	@Autowired
+	private SalesRollupCheckpointRepository checkpointRepository;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Value("${analytics.rollup.backfill-batch-size:500}")
+	private int backfillBatchSize;
+
+	// 回補完成後就不會再變動，之後的即時更新不用再讀進度列
+	private volatile boolean backfillCompleted = false;
+
+	// 回補的訂單ID上限，進度列建立後就不會再變；null 表示這台伺服器還沒讀到
+	private volatile Integer backfillCutoff;
+
+	/**
+	 * 新訂單計入彙總（所有建立訂單的路徑都會經過這裡，一併通知賣家統計作廢快取）
+	 */
+	@Transactional
+	public void recordOrder(Order order, List<OrderItem> items) {
+		eventPublisher.publishEvent(new OrderChangedEvent(order, items));
+		if (coveredByBackfill(order.getOrderId())) {
+			// 回補跑到這筆時會計入
+			return;
+		}
+		apply(order, items, 1);
+	}
+
+	/**
+	 * 訂單取消（或刪除）時從彙總扣回
+	 */
+	@Transactional
+	public void revertOrder(Order order) {
+		eventPublisher.publishEvent(new OrderChangedEvent(order, order.getOrderItem()));
+		if (coveredByBackfill(order.getOrderId())) {
+			// 回補還沒跑到這筆，回補時會直接略過已取消訂單
+			return;
+		}
+		apply(order, order.getOrderItem(), -1);
+	}
+
+	/**
+	 * 訂單是否由回補負責（回補進行中且訂單ID落在還沒處理的區間）
+	 */
+	private boolean coveredByBackfill(Integer orderId) {
+		if (backfillCompleted || orderId == null) {
+			return false;
+		}
+		Integer cutoff = backfillCutoff;
+		if (cutoff == null) {
+			SalesRollupCheckpoint checkpoint = checkpointRepository.findById(BACKFILL_JOB).orElse(null);
+			if (checkpoint != null) {
+				remember(checkpoint);
+				cutoff = checkpoint.getCutoffOrderId();
+			}
+		}
+		if (backfillCompleted || (cutoff != null && orderId > cutoff)) {
+			// 回補開始後才建立的訂單，回補不會處理
+			return false;
+		}
+
+		// 回補還沒開始，或訂單落在上限以內：鎖住進度列（不存在時鎖住鍵值範圍）再判斷
+		SalesRollupCheckpoint checkpoint = checkpointRepository.findByIdForUpdate(BACKFILL_JOB).orElse(null);
+		if (checkpoint == null) {
+			// 回補還沒開始，開始時會清空彙總表並重算到當時最大的訂單
+			return false;
+		}
+		remember(checkpoint);
+		if (backfillCompleted) {
+			return false;
+		}
+		return orderId > checkpoint.getLastOrderId() && orderId <= checkpoint.getCutoffOrderId();
+	}
+
+	private void remember(SalesRollupCheckpoint checkpoint) {
+		backfillCutoff = checkpoint.getCutoffOrderId();
+		if (Boolean.TRUE.equals(checkpoint.getCompleted())) {
+			backfillCompleted = true;
+		}
+	}
+
+	/**
+	 * 每次處理一批舊訂單，直到追上回補開始時的最大訂單ID
+	 */
+	@Scheduled(initialDelayString = "${analytics.rollup.backfill-initial-delay-ms:30000}",
+			fixedDelayString = "${analytics.rollup.backfill-interval-ms:5000}")
+	@Transactional
+	public void backfillBatch() {
+		if (backfillCompleted) {
+			return;
+		}
+		SalesRollupCheckpoint checkpoint = checkpointRepository.findByIdForUpdate(BACKFILL_JOB).orElse(null);
+		if (checkpoint == null) {
+			checkpoint = startBackfill();
+		}
+		if (Boolean.TRUE.equals(checkpoint.getCompleted())) {
+			backfillCompleted = true;
+			return;
+		}
+
+		List<Integer> orderIds = orderRepository.findOrderIdsBetween(checkpoint.getLastOrderId(),
+				checkpoint.getCutoffOrderId(), PageRequest.of(0, backfillBatchSize));
+
+		if (orderIds.isEmpty()) {
+			checkpoint.setCompleted(true);
+			checkpoint.setUpdatedAt(new Date());
+			checkpointRepository.save(checkpoint);
+			backfillCompleted = true;
+			log.info("銷售彙總回補完成，處理到訂單 {}", checkpoint.getCutoffOrderId());
+			return;
+		}
+
+		for (Order order : orderRepository.findWithItemsByOrderIdIn(orderIds)) {
+			if (order.getOrderStatusCorrespond() != null
+					&& CANCELED_STATUS.equals(order.getOrderStatusCorrespond().getName())) {
+				continue;
+			}
+			apply(order, order.getOrderItem(), 1);
+		}
+
+		int last = orderIds.get(orderIds.size() - 1);
+		checkpoint.setLastOrderId(last);
+		checkpoint.setUpdatedAt(new Date());
+		checkpointRepository.save(checkpoint);
+	}
+
+	/**
+	 * 第一次回補：清空彙總表，記下目前最大訂單ID，之前的訂單全部重算
+	 *
+	 * 先寫入進度列：已經判斷過「回補還沒開始」的即時更新持有該鍵值的範圍鎖，寫入會等它們的交易提交，
+	 * 所以讀最大訂單ID時它們的訂單都已可見、清空時也會一併清掉它們的計數，之後由回補重算；
+	 * 之後的即時更新則要等這個交易提交才能讀到進度列，看到的一定是清空後的區間。
+	 */
+	private SalesRollupCheckpoint startBackfill() {
+		SalesRollupCheckpoint checkpoint = checkpointRepository
+				.saveAndFlush(new SalesRollupCheckpoint(BACKFILL_JOB, 0, 0, false, new Date()));
+
+		Integer maxOrderId = orderRepository.findMaxOrderId();
+
+		shopDailySalesRepository.deleteAllInBatch();
+		skuDailySalesRepository.deleteAllInBatch();
+		shopCustomerOrdersRepository.deleteAllInBatch();
+
+		checkpoint.setCutoffOrderId(maxOrderId != null ? maxOrderId : 0);
+		checkpoint.setUpdatedAt(new Date());
+		log.info("開始回補銷售彙總，訂單ID上限 {}", checkpoint.getCutoffOrderId());
+		return checkpointRepository.save(checkpoint);
+	}
+
+	private void apply(Order order, List<OrderItem> items, int sign) {
+		if (order == null || items == null || items.isEmpty()) {
+			return;
+		}
+
+		LocalDate salesDate = toLocalDate(order.getCreatedAt());
+		Integer userId = order.getUser() != null ? order.getUser().getUserId() : null;
+
+		Map<Integer, BigDecimal> revenueByShop = new TreeMap<>();
+		Map<Integer, SkuTotal> totalBySku = new TreeMap<>();
+
+		for (OrderItem item : items) {
+			if (item.getShop() == null || item.getSku() == null) {
+				continue;
+			}
+			BigDecimal lineTotal = item.getUnitPrice().multiply(BigDecimal.valueOf(item.getQuantity()));
+			revenueByShop.merge(item.getShop().getShopId(), lineTotal, BigDecimal::add);
+
+			SkuTotal skuTotal = totalBySku.computeIfAbsent(item.getSku().getSkuId(),
+					skuId -> new SkuTotal(item.getShop().getShopId(), item.getSku().getProduct().getProductId()));
+			skuTotal.quantity += item.getQuantity();
+			skuTotal.revenue = skuTotal.revenue.add(lineTotal);
+		}
+		if (revenueByShop.isEmpty()) {
+			return;
+		}
+
+		BigDecimal factor = BigDecimal.valueOf(sign);
+		List<Map.Entry<Integer, BigDecimal>> shops = new ArrayList<>(revenueByShop.entrySet());
+		jdbcTemplate.batchUpdate(SHOP_DAILY_SALES_UPSERT, shops, shops.size(), (ps, shop) -> {
+			ps.setInt(1, shop.getKey());
+			ps.setObject(2, salesDate);
+			ps.setInt(3, sign);
+			ps.setBigDecimal(4, shop.getValue().multiply(factor));
+		});
+		if (userId != null) {
+			jdbcTemplate.batchUpdate(SHOP_CUSTOMER_ORDERS_UPSERT, shops, shops.size(), (ps, shop) -> {
+				ps.setInt(1, shop.getKey());
+				ps.setInt(2, userId);
+				ps.setInt(3, sign);
+			});
+		}
+		List<Map.Entry<Integer, SkuTotal>> skus = new ArrayList<>(totalBySku.entrySet());
+		jdbcTemplate.batchUpdate(SKU_DAILY_SALES_UPSERT, skus, skus.size(), (ps, sku) -> {
+			SkuTotal total = sku.getValue();
+			ps.setInt(1, sku.getKey());
+			ps.setObject(2, salesDate);
+			ps.setInt(3, total.shopId);
+			ps.setInt(4, total.productId);
+			ps.setInt(5, total.quantity * sign);
+			ps.setBigDecimal(6, total.revenue.multiply(factor));
+		});
+	}
+
+	private static LocalDate toLocalDate(Date date) {
+		if (date == null) {
+			return LocalDate.now();
+		}
+		return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+	}
+
+	private static final class SkuTotal {
+		private final Integer shopId;
+		private final Integer productId;
+		private int quantity;
+		private BigDecimal revenue = BigDecimal.ZERO;
+
+		private SkuTotal(Integer shopId, Integer productId) {
+			this.shopId = shopId;
+			this.productId = productId;
+		}
+	}
+
+	/**
+	 * 回補是否已完成（完成前彙總表只包含部分歷史資料）；完成後只看記憶體中的旗標
+	 */
+	public boolean isBackfillCompleted() {
+		if (!backfillCompleted) {
+			checkpointRepository.findById(BACKFILL_JOB).ifPresent(this::remember);
+		}
+		return backfillCompleted;
+	}
+}
@@ -0,0 +1,35 @@
+package ourpkg.dataAnalysis.rollup;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 每位客戶在商店的下單次數（供購買頻率分布使用）
+ */
+@Entity
+@Table(name = "shop_customer_orders")
+@IdClass(ShopCustomerOrdersId.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopCustomerOrders {
+
+	@Id
+	@Column(name = "shop_id")
+	private Integer shopId;
+
+	@Id
+	@Column(name = "user_id")
+	private Integer userId;
+
+	@Column(name = "order_count", nullable = false)
+	private Integer orderCount;
+}
@@ -0,0 +1,15 @@
+package ourpkg.dataAnalysis.rollup;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class ShopCustomerOrdersId implements Serializable {
+	private Integer shopId;
+	private Integer userId;
+}
@@ -0,0 +1,6 @@
+package ourpkg.dataAnalysis.rollup;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ShopCustomerOrdersRepository extends JpaRepository<ShopCustomerOrders, ShopCustomerOrdersId> {
+}
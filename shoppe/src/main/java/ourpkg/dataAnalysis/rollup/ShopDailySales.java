@@ -0,0 +1,41 @@
+package ourpkg.dataAnalysis.rollup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 商店每日銷售彙總（不含已取消訂單）
+ */
+@Entity
+@Table(name = "shop_daily_sales")
+@IdClass(ShopDailySalesId.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopDailySales {
+
+	@Id
+	@Column(name = "shop_id")
+	private Integer shopId;
+
+	@Id
+	@Column(name = "sales_date")
+	private LocalDate salesDate;
+
+	@Column(name = "order_count", nullable = false)
+	private Integer orderCount;
+
+	@Column(name = "revenue", nullable = false, precision = 18, scale = 2)
+	private BigDecimal revenue;
+}
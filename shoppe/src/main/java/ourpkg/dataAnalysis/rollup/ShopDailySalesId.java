@@ -0,0 +1,16 @@
+package ourpkg.dataAnalysis.rollup;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class ShopDailySalesId implements Serializable {
+	private Integer shopId;
+	private LocalDate salesDate;
+}
@@ -0,0 +1,48 @@
+package ourpkg.dataAnalysis.rollup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * SKU 每日銷售彙總（不含已取消訂單）
+ */
+@Entity
+@Table(name = "sku_daily_sales", indexes = @Index(name = "ix_sku_daily_sales_shop", columnList = "shop_id, sales_date"))
+@IdClass(SkuDailySalesId.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SkuDailySales {
+
+	@Id
+	@Column(name = "sku_id")
+	private Integer skuId;
+
+	@Id
+	@Column(name = "sales_date")
+	private LocalDate salesDate;
+
+	@Column(name = "shop_id", nullable = false)
+	private Integer shopId;
+
+	@Column(name = "product_id", nullable = false)
+	private Integer productId;
+
+	@Column(name = "quantity", nullable = false)
+	private Integer quantity;
+
+	@Column(name = "revenue", nullable = false, precision = 18, scale = 2)
+	private BigDecimal revenue;
+}
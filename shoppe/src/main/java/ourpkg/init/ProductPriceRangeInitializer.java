@@ -0,0 +1,35 @@
+package ourpkg.init;
+
+import java.util.logging.Logger;
+
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import ourpkg.product.ProductRepository;
+
+/**
+ * 商品價格區間初始化器 補算 Product.min_price / max_price（欄位新增前的商品、初始化器直接寫入的 SKU）
+ * 依賴於ProductAndImageInitializer已經建立的商品與SKU
+ */
+@Component
+@Order(4)
+public class ProductPriceRangeInitializer implements CommandLineRunner {
+
+	private static final Logger logger = Logger.getLogger(ProductPriceRangeInitializer.class.getName());
+	private final ProductRepository productRepository;
+
+	public ProductPriceRangeInitializer(ProductRepository productRepository) {
+		this.productRepository = productRepository;
+	}
+
+	@Override
+	@Transactional
+	public void run(String... args) throws Exception {
+		int updated = productRepository.fillMissingPriceRanges();
+		if (updated > 0) {
+			logger.info("已補算 " + updated + " 筆商品的價格區間");
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package ourpkg.init;
+
+import java.util.logging.Logger;
+
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import ourpkg.attribute.AttributeRepo;
+import ourpkg.attribute.AttributeValueRepo;
+import ourpkg.sku.spec.SpecDictionary;
+
+/**
+ * 規格字典初始化器 以 Attribute / AttributeValue 的名稱預先建立 SpecDictionary，
+ * 讓分類屬性的規格名稱與值共用同一組字串（賣家自訂的規格不加入字典）
+ */
+@Component
+@Order(5)
+public class SpecDictionaryInitializer implements CommandLineRunner {
+
+	private static final Logger logger = Logger.getLogger(SpecDictionaryInitializer.class.getName());
+	private final AttributeRepo attributeRepo;
+	private final AttributeValueRepo attributeValueRepo;
+
+	public SpecDictionaryInitializer(AttributeRepo attributeRepo, AttributeValueRepo attributeValueRepo) {
+		this.attributeRepo = attributeRepo;
+		this.attributeValueRepo = attributeValueRepo;
+	}
+
+	@Override
+	public void run(String... args) throws Exception {
+		attributeRepo.findAllNames().forEach(SpecDictionary::register);
+		attributeValueRepo.findAllNames().forEach(SpecDictionary::register);
+		logger.info("規格字典已載入 " + SpecDictionary.size() + " 個名稱與值");
+	}
+}
@@ -0,0 +1,82 @@
+package ourpkg.jwt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import ourpkg.user_role_permission.user.User;
+
+/**
+ * {@link PrincipalCache} 快取的使用者快照（ID、帳號、權限、帳號狀態），建立後不可修改，
+ * 不含密碼也不持有 JPA 實體，可安全地讓多個請求共用
+ */
+public final class CachedPrincipal implements UserDetails {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Integer userId;
+	private final String username;
+	private final List<GrantedAuthority> authorities;
+	private final boolean enabled;
+	private final boolean accountNonLocked;
+
+	private CachedPrincipal(Integer userId, String username, List<GrantedAuthority> authorities, boolean enabled,
+			boolean accountNonLocked) {
+		this.userId = userId;
+		this.username = username;
+		this.authorities = authorities;
+		this.enabled = enabled;
+		this.accountNonLocked = accountNonLocked;
+	}
+
+	/**
+	 * 從剛載入的使用者資訊建立快照
+	 */
+	public static CachedPrincipal of(UserDetails userDetails) {
+		List<GrantedAuthority> authorities = new ArrayList<>();
+		for (GrantedAuthority authority : userDetails.getAuthorities()) {
+			authorities.add(new SimpleGrantedAuthority(authority.getAuthority()));
+		}
+		Integer userId = userDetails instanceof User user ? user.getUserId() : null;
+		return new CachedPrincipal(userId, userDetails.getUsername(), List.copyOf(authorities),
+				userDetails.isEnabled(), userDetails.isAccountNonLocked());
+	}
+
+	public Integer getUserId() {
+		return userId;
+	}
+
+	@Override
+	public String getUsername() {
+		return username;
+	}
+
+	@Override
+	public String getPassword() {
+		return null;
+	}
+
+	@Override
+	public Collection<? extends GrantedAuthority> getAuthorities() {
+		return authorities;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public boolean isAccountNonLocked() {
+		return accountNonLocked;
+	}
+
+	@Override
+	public String toString() {
+		return "CachedPrincipal[userId=" + userId + ", username=" + username + ", authorities=" + authorities + "]";
+	}
+}
@@ -27,10 +27,13 @@ import ourpkg.user_role_permission.user.UserDetailsServiceImpl;
 public class JsonWebTokenInterceptor extends OncePerRequestFilter {
     private final JsonWebTokenUtility jsonWebTokenUtility;
     private final UserDetailsServiceImpl userDetailsService;
+    private final PrincipalCache principalCache;
 
-    public JsonWebTokenInterceptor(JsonWebTokenUtility jsonWebTokenUtility, UserDetailsServiceImpl userDetailsService) {
+    public JsonWebTokenInterceptor(JsonWebTokenUtility jsonWebTokenUtility, UserDetailsServiceImpl userDetailsService,
+            PrincipalCache principalCache) {
         this.jsonWebTokenUtility = jsonWebTokenUtility;
         this.userDetailsService = userDetailsService;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -58,18 +61,16 @@ public class JsonWebTokenInterceptor extends OncePerRequestFilter {
             if (claimsSet != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                 String username = claimsSet.getSubject();
                 
-                // 嘗試從數據庫加載用戶（方法二）
+                // 嘗試從數據庫加載用戶（方法二），角色、密碼、狀態沒變動前直接使用快取
                 try {
                     // 使用 UserDetailsService 載入完整的用戶資訊 (在@Transactional內執行)
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                    UserDetails userDetails = principalCache.get(token, username, userDetailsService::loadUserByUsername);
                     
                     // 建立認證物件，使用從資料庫載入的UserDetails，包含最新的權限
                     JsonWebTokenAuthentication authentication = new JsonWebTokenAuthentication(userDetails, token);
                     authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     
                     SecurityContextHolder.getContext().setAuthentication(authentication);
-                    
-                    System.out.println("JWT 認證成功 (方法二)，用戶: " + username + ", 權限: " + userDetails.getAuthorities());
                 } catch (Exception ex) {
                     // 如果數據庫加載失敗，回退到從JWT中提取權限（方法一）
                     System.out.println("方法二失敗，切換到方法一: " + ex.getMessage());
@@ -5,10 +5,14 @@ import java.text.ParseException;
 import java.time.Instant;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.JWSSigner;
@@ -35,10 +39,36 @@ public class JsonWebTokenUtility {
     @Value("${jwt.secret}") // 從 application.properties 讀取固定金鑰
     private String secretKey;
     
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private int verifiedCacheMaxSize;
+
+    // MACSigner / MACVerifier 是執行緒安全的，啟動時建立一次即可
+    private JWSSigner signer;
+    private JWSVerifier verifier;
+
+    // 已驗證過的 Token 的 SHA-256 雜湊 -> 解析結果，到 Token 的 exp 為止（和 PrincipalCache 一樣不保留原始 token）
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+
+    private static final class VerifiedToken {
+        private final JWTClaimsSet claimsSet;
+        private final long expiresAt;
+
+        private VerifiedToken(JWTClaimsSet claimsSet, long expiresAt) {
+            this.claimsSet = claimsSet;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     @PostConstruct
     public void init() {
         // 使用 application.properties 內的金鑰，確保程式重啟時不會變動
         sharedKey = secretKey.getBytes();
+        try {
+            signer = new MACSigner(sharedKey);
+            verifier = new MACVerifier(sharedKey);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("jwt.secret 長度不足，HMAC 金鑰至少需要 256 位元", e);
+        }
     }
 
 //    @PostConstruct
@@ -72,9 +102,6 @@ public class JsonWebTokenUtility {
         Instant now = Instant.now();
         Instant expireTime = now.plusSeconds(expiryMinutes * 60);
         try {
-            // 建立HMAC signer
-            JWSSigner signer = new MACSigner(sharedKey);
-
             // 準備 JWT 主體
             JWTClaimsSet.Builder claimsBuilder = new JWTClaimsSet.Builder()
                     .issuer(issuer)
@@ -107,23 +134,60 @@ public class JsonWebTokenUtility {
     }
 
     /**
-     * 驗證 JWT
+     * 驗證 JWT，簽章與期限都正確才回傳 Claims，否則回傳 null
+     *
+     * 驗證過的 Token 會快取到 exp 為止，同一個 Token 再次驗證時不用重新解析與計算 HMAC。
      */
     public JWTClaimsSet validateToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        String key = TokenDigest.sha256(token);
+
+        VerifiedToken cached = verifiedTokens.get(key);
+        if (cached != null) {
+            if (now < cached.expiresAt) {
+                return cached.claimsSet;
+            }
+            verifiedTokens.remove(key);
+            return null;
+        }
+
         try {
-            JWSVerifier verifier = new MACVerifier(sharedKey);
             SignedJWT signedJWT = SignedJWT.parse(token);
             JWTClaimsSet claimsSet = signedJWT.getJWTClaimsSet();
+            Date expirationTime = claimsSet.getExpirationTime();
 
-            if (signedJWT.verify(verifier) && new Date().before(claimsSet.getExpirationTime())) {
+            if (expirationTime != null && now < expirationTime.getTime() && signedJWT.verify(verifier)) {
+                cacheVerifiedToken(key, new VerifiedToken(claimsSet, expirationTime.getTime()));
                 return claimsSet;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+        } catch (ParseException | JOSEException e) {
+            // 格式錯誤或簽章不符，視為無效 Token
         }
         return null;
     }
 
+    private void cacheVerifiedToken(String key, VerifiedToken verified) {
+        if (verifiedTokens.size() >= verifiedCacheMaxSize) {
+            evictExpiredTokens();
+            if (verifiedTokens.size() >= verifiedCacheMaxSize) {
+                verifiedTokens.clear();
+            }
+        }
+        verifiedTokens.put(key, verified);
+    }
+
+    /**
+     * 定期移除已過期的 Token
+     */
+    @Scheduled(fixedDelayString = "${jwt.verified-cache.sweep-interval-ms:60000}")
+    public void evictExpiredTokens() {
+        long now = System.currentTimeMillis();
+        verifiedTokens.values().removeIf(verified -> verified.expiresAt <= now);
+    }
+
     /**
      * 檢查是否為有效的 Reset Password Token
      */
@@ -164,9 +228,6 @@ public class JsonWebTokenUtility {
         Instant now = Instant.now();
         Instant expireTime = now.plusSeconds(expiryMinutes * 60);
         try {
-            // 建立HMAC signer
-            JWSSigner signer = new MACSigner(sharedKey);
-
             // 準備 JWT 主體
             JWTClaimsSet.Builder claimsBuilder = new JWTClaimsSet.Builder()
                     .issuer(issuer)
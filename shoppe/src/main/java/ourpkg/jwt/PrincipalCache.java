@@ -0,0 +1,136 @@
+package ourpkg.jwt;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JWT 認證用的使用者快取（角色、權限、帳號狀態），避免每個請求都查資料庫
+ *
+ * 以 token 的 SHA-256 雜湊為鍵，記憶體中不保留原始 token；存放的是不可修改的 {@link CachedPrincipal} 快照，
+ * 不會把同一個 User 實體交給多個請求共用。
+ * 每次作廢都會遞增一個全域序號，並記為該使用者的安全版本；快取項目記下開始載入時的序號，
+ * 使用者的安全版本比它新就視為過期。這樣載入途中發生的變更也不會被舊資料蓋掉。
+ * 角色、密碼、狀態變更時呼叫 {@link #invalidateUser(Integer)}，角色權限變更時呼叫 {@link #invalidateAll()}；
+ * 另有存活時間作為多台主機部署時的上限。
+ */
+@Component
+public class PrincipalCache {
+
+	@Value("${jwt.principal-cache.ttl-ms:300000}")
+	private long ttlMillis;
+
+	@Value("${jwt.principal-cache.max-size:10000}")
+	private int maxSize;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	// 使用者ID -> 最後一次作廢時的序號
+	private final Map<Integer, Long> securityVersions = new ConcurrentHashMap<>();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private volatile long globalVersion = 0;
+
+	private static final class Entry {
+		private final CachedPrincipal principal;
+		private final long loadedSequence;
+		private final long expiresAt;
+
+		private Entry(CachedPrincipal principal, long loadedSequence, long expiresAt) {
+			this.principal = principal;
+			this.loadedSequence = loadedSequence;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * 取得 token 對應的使用者快照，沒有或已過期時呼叫 loader 依 username 從資料庫載入
+	 */
+	public CachedPrincipal get(String token, String username, Function<String, UserDetails> loader) {
+		String key = TokenDigest.sha256(token);
+		Entry entry = entries.get(key);
+		if (entry != null && isValid(entry)) {
+			return entry.principal;
+		}
+
+		long loadedSequence = sequence.get();
+		CachedPrincipal principal = CachedPrincipal.of(loader.apply(username));
+
+		if (entries.size() >= maxSize) {
+			evictExpired();
+			if (entries.size() >= maxSize) {
+				entries.clear();
+			}
+		}
+		entries.put(key, new Entry(principal, loadedSequence, System.currentTimeMillis() + ttlMillis));
+		return principal;
+	}
+
+	/**
+	 * 使用者的角色、密碼或狀態有變，交易提交後再作廢一次，避免提交前被重新載入舊資料
+	 */
+	public void invalidateUser(Integer userId) {
+		if (userId == null) {
+			return;
+		}
+		bump(userId);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					bump(userId);
+				}
+			});
+		}
+	}
+
+	/**
+	 * 角色的權限有變，所有使用者都要重新載入
+	 */
+	public void invalidateAll() {
+		globalVersion = sequence.incrementAndGet();
+		entries.clear();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					globalVersion = sequence.incrementAndGet();
+					entries.clear();
+				}
+			});
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${jwt.principal-cache.sweep-interval-ms:60000}")
+	public void evictExpired() {
+		long now = System.currentTimeMillis();
+		entries.values().removeIf(entry -> entry.expiresAt <= now);
+	}
+
+	private void bump(Integer userId) {
+		long version = sequence.incrementAndGet();
+		securityVersions.put(userId, version);
+		entries.values().removeIf(entry -> userId.equals(entry.principal.getUserId()));
+	}
+
+	private boolean isValid(Entry entry) {
+		if (entry.expiresAt <= System.currentTimeMillis() || globalVersion > entry.loadedSequence) {
+			return false;
+		}
+		Integer userId = entry.principal.getUserId();
+		if (userId == null) {
+			return true;
+		}
+		Long version = securityVersions.get(userId);
+		return version == null || version <= entry.loadedSequence;
+	}
+}
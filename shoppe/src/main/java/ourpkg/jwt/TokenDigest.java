@@ -0,0 +1,24 @@
+package ourpkg.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Token 的 SHA-256 雜湊，快取以此為鍵，記憶體中不保留原始 token（heap dump 也拿不到可用的 token）
+ */
+final class TokenDigest {
+
+	private TokenDigest() {
+	}
+
+	static String sha256(String token) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("JVM 不支援 SHA-256", e);
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package ourpkg.order;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import lombok.Getter;
+
+/**
+ * 訂單建立、取消、刪除或付款狀態變更，交易提交後由賣家統計作廢相關商店的快取
+ *
+ * 商店ID在發布時就從訂單明細取出，訂單刪除後監聽端不必再查資料庫。
+ */
+@Getter
+public class OrderChangedEvent {
+	private final Integer orderId;
+	private final Set<Integer> shopIds;
+
+	public OrderChangedEvent(Order order, Collection<OrderItem> items) {
+		this.orderId = order.getOrderId();
+		Set<Integer> ids = new HashSet<>();
+		if (items != null) {
+			for (OrderItem item : items) {
+				if (item.getShop() != null) {
+					ids.add(item.getShop().getShopId());
+				}
+			}
+		}
+		this.shopIds = Set.copyOf(ids);
+	}
+}
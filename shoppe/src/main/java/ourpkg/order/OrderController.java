@@ -1,15 +1,26 @@
 package ourpkg.order;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -24,8 +35,10 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
 import ourpkg.address.OrderAddress;
@@ -44,6 +57,11 @@ import ourpkg.user_role_permission.user.service.UserService;
 @ResponseBody
 public class OrderController {
 
+	private static final Logger log = LoggerFactory.getLogger(OrderController.class);
+
+	// 舊列表分頁時，下一頁游標（最後一筆訂單ID）的回應標頭
+	static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
 	@Autowired
 	private OrderService orderService;
 
@@ -62,6 +80,9 @@ public class OrderController {
 //新============================================
 	@Autowired
 	private UserRepository userRepository;
+
+	@Autowired
+	private OrderQueryService orderQueryService;
 	    
 	@PostMapping("/create")
 	public ResponseEntity<?> createOrder(@RequestBody OrderRequest orderRequest) {
@@ -202,9 +223,13 @@ public class OrderController {
 		}
 	}
 
+	/**
+	 * 賣家訂單列表：帶 after 或 size 時只回傳一頁，下一頁游標放在 X-Next-Cursor 標頭；都不帶時回傳全部
+	 */
 	@PreAuthorize("hasAnyRole('SELLER', 'SUPER_ADMIN')")
 	@GetMapping("/seller/orders")
-	public ResponseEntity<ApiResponse<List<OrderDto>>> getSellerOrders() {
+	public ResponseEntity<ApiResponse<List<OrderDto>>> getSellerOrders(@RequestParam(required = false) Integer after,
+			@RequestParam(required = false) Integer size) {
 		try {
 			// 獲取當前賣家ID
 			Integer sellerId = userService.getCurrentUserId();
@@ -213,29 +238,15 @@ public class OrderController {
 						.body(new ApiResponse<>(401, "error", "未登入或身份驗證失敗", null));
 			}
 
-			// 獲取賣家的訂單
-			List<Order> orders = orderService.getOrdersForSeller(sellerId);
-
-			// 如果沒有訂單，返回空列表但狀態是成功的
-			if (orders.isEmpty()) {
-				return ResponseEntity.ok(new ApiResponse<>(200, "success", "沒有訂單記錄", Collections.emptyList()));
-			}
-
-			// 將訂單轉換為DTO
-			List<OrderDto> orderDtos = convertOrdersToDto(orders);
-
-			// 返回成功響應
-			return ResponseEntity.ok(new ApiResponse<>(200, "success", "賣家訂單查詢成功", orderDtos));
+			OrderListCriteria criteria = new OrderListCriteria();
+			criteria.setSellerId(sellerId);
+			return legacyList(criteria, after, size, this::convertOrdersToDto, "賣家訂單查詢成功");
 		} catch (AccessDeniedException e) {
 			// 捕獲權限錯誤
 			System.err.println("權限不足: " + e.getMessage());
 			return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiResponse<>(403, "error", "您沒有賣家權限", null));
 		} catch (Exception e) {
-			// 記錄異常
-			System.err.println("獲取賣家訂單時發生錯誤: " + e.getMessage());
-			e.printStackTrace();
-
-			// 返回錯誤響應
+			log.error("獲取賣家訂單時發生錯誤", e);
 			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
 					.body(new ApiResponse<>(500, "error", "獲取賣家訂單失敗: " + e.getMessage(), null));
 		}
@@ -386,75 +397,216 @@ public class OrderController {
 		return formattedAddress.toString();
 	}
 
+	/**
+	 * 管理員訂單列表，after、size 同賣家列表
+	 */
 	@PreAuthorize("hasAnyRole('SUPER_ADMIN','ADMIN')")
 	@GetMapping("/admin/orders")
-	public ResponseEntity<ApiResponse<List<OrderDto>>> getAllOrders() {
+	public ResponseEntity<ApiResponse<List<OrderDto>>> getAllOrders(@RequestParam(required = false) Integer after,
+			@RequestParam(required = false) Integer size) {
 		try {
-			// 獲取所有訂單
-			List<Order> orders = orderService.getAllOrders();
-
-			// 如果沒有訂單，返回空列表但狀態是成功的
-			if (orders.isEmpty()) {
-				return ResponseEntity.ok(new ApiResponse<>(200, "success", "沒有訂單記錄", Collections.emptyList()));
-			}
-
-			List<OrderDto> orderDtos = orders.stream().map(order -> {
-			    List<OrderItemDto> orderItemDtos = order.getOrderItem().stream().map(item -> {
-			        Product product = item.getSku().getProduct();
-			        String imageUrl = productImageRepository
-			                .findPrimaryImageByProduct_ProductId(product.getProductId())
-			                .orElse("");
-			        return new OrderItemDto(
-			                product.getProductName(),
-			                item.getQuantity(),
-			                item.getUnitPrice(),
-			                imageUrl,
-			                product.getProductId()
-			        );
-			    }).collect(Collectors.toList());
-
-			    User user = order.getUser();
-			    String username = (user != null && user.getUsername() != null && !user.getUsername().isBlank())
-			        ? user.getUsername()
-			        : "未知用戶";
-
-			    return new OrderDto(
-			            order.getOrderId(),
-			            order.getTotalPrice(),
-			            order.getOrderStatusCorrespond().getName(),
-			            orderItemDtos,
-			            order.getCreatedAt(),
-			            order.getUpdatedAt(),
-			            user != null ? user.getUserId() : null,
-			            username,
-			            user != null ? user.getEmail() : null,
-			            user != null ? user.getPhone() : null,
-			            formatAddress(order.getBillingAddress()),
-			            formatAddress(order.getShippingAddress()),
-			            getPaymentMethodName(order),
-			            getPaymentStatusName(order),
-			            getShipmentMethodName(order),
-			            getShipmentStatusName(order),
-			            getTrackingNumber(order)
-			    );
-			}).collect(Collectors.toList());
-			// 返回成功響應
-			return ResponseEntity.ok(new ApiResponse<>(200, "success", "所有訂單查詢成功", orderDtos));
+			return legacyList(new OrderListCriteria(), after, size, this::convertOrdersToListDto, "所有訂單查詢成功");
 		} catch (AccessDeniedException e) {
 			// 捕獲權限錯誤
 			System.err.println("權限不足: " + e.getMessage());
 			return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiResponse<>(403, "error", "您沒有管理員權限", null));
 		} catch (Exception e) {
-			// 記錄異常
-			System.err.println("獲取所有訂單時發生錯誤: " + e.getMessage());
-			e.printStackTrace();
+			log.error("獲取所有訂單時發生錯誤", e);
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(new ApiResponse<>(500, "error", "獲取所有訂單失敗: " + e.getMessage(), null));
+		}
+	}
 
-			// 返回錯誤響應
+	/**
+	 * 舊的列表回應格式（List&lt;OrderDto&gt;），一律經由分頁查詢取資料
+	 *
+	 * 帶 after 或 size 時只查一頁；都不帶時逐頁查出全部，每頁轉成 DTO 後即釋放該頁的訂單實體。
+	 */
+	private ResponseEntity<ApiResponse<List<OrderDto>>> legacyList(OrderListCriteria criteria, Integer after,
+			Integer size, Function<List<Order>, List<OrderDto>> converter, String message) {
+		HttpHeaders headers = new HttpHeaders();
+		List<OrderDto> orderDtos = new ArrayList<>();
+		if (after != null || size != null) {
+			criteria.setAfterOrderId(after);
+			if (size != null) {
+				criteria.setSize(size);
+			}
+			OrderQueryService.Slice slice = orderService.findOrderPage(criteria);
+			orderDtos.addAll(converter.apply(slice.getOrders()));
+			if (slice.getNextCursor() != null) {
+				headers.set(NEXT_CURSOR_HEADER, String.valueOf(slice.getNextCursor()));
+			}
+		} else {
+			orderService.forEachOrderPage(criteria, orders -> orderDtos.addAll(converter.apply(orders)));
+		}
+
+		// 如果沒有訂單，返回空列表但狀態是成功的
+		if (orderDtos.isEmpty()) {
+			return ResponseEntity.ok().headers(headers)
+					.body(new ApiResponse<>(200, "success", "沒有訂單記錄", Collections.emptyList()));
+		}
+		return ResponseEntity.ok().headers(headers).body(new ApiResponse<>(200, "success", message, orderDtos));
+	}
+
+	/**
+	 * 賣家訂單分頁列表：after 為上一頁回傳的 nextCursor，to 為結束日期（含當天）
+	 */
+	@PreAuthorize("hasAnyRole('SELLER', 'SUPER_ADMIN')")
+	@GetMapping("/seller/orders/page")
+	public ResponseEntity<ApiResponse<OrderPageDto>> getSellerOrderPage(@RequestParam(required = false) String status,
+			@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+			@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date to,
+			@RequestParam(required = false) Integer after,
+			@RequestParam(required = false, defaultValue = "20") int size) {
+		Integer sellerId = userService.getCurrentUserId();
+		if (sellerId == null) {
+			return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+					.body(new ApiResponse<>(401, "error", "未登入或身份驗證失敗", null));
+		}
+		try {
+			OrderListCriteria criteria = listCriteria(null, status, from, to, after, size);
+			criteria.setSellerId(sellerId);
+			return ResponseEntity.ok(new ApiResponse<>(200, "success", "賣家訂單查詢成功", toPage(criteria)));
+		} catch (Exception e) {
+			log.error("賣家訂單分頁查詢失敗", e);
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(new ApiResponse<>(500, "error", "獲取賣家訂單失敗: " + e.getMessage(), null));
+		}
+	}
+
+	/**
+	 * 管理員訂單分頁列表，參數同賣家列表，另可依商店篩選
+	 */
+	@PreAuthorize("hasAnyRole('SUPER_ADMIN','ADMIN')")
+	@GetMapping("/admin/orders/page")
+	public ResponseEntity<ApiResponse<OrderPageDto>> getAdminOrderPage(@RequestParam(required = false) Integer shopId,
+			@RequestParam(required = false) String status,
+			@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+			@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date to,
+			@RequestParam(required = false) Integer after,
+			@RequestParam(required = false, defaultValue = "20") int size) {
+		try {
+			OrderListCriteria criteria = listCriteria(shopId, status, from, to, after, size);
+			return ResponseEntity.ok(new ApiResponse<>(200, "success", "所有訂單查詢成功", toPage(criteria)));
+		} catch (Exception e) {
+			log.error("管理員訂單分頁查詢失敗", e);
 			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
 					.body(new ApiResponse<>(500, "error", "獲取所有訂單失敗: " + e.getMessage(), null));
 		}
 	}
 
+	/**
+	 * 賣家訂單匯出（format=csv 或 ndjson），邊查邊寫，不受筆數限制
+	 */
+	@PreAuthorize("hasAnyRole('SELLER', 'SUPER_ADMIN')")
+	@GetMapping("/seller/orders/export")
+	public ResponseEntity<StreamingResponseBody> exportSellerOrders(
+			@RequestParam(required = false, defaultValue = "csv") String format,
+			@RequestParam(required = false) String status,
+			@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+			@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date to) {
+		Integer sellerId = userService.getCurrentUserId();
+		if (sellerId == null) {
+			return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+		}
+		OrderListCriteria criteria = listCriteria(null, status, from, to, null, 0);
+		criteria.setSellerId(sellerId);
+		return exportResponse(criteria, format, "seller-orders");
+	}
+
+	/**
+	 * 管理員訂單匯出
+	 */
+	@PreAuthorize("hasAnyRole('SUPER_ADMIN','ADMIN')")
+	@GetMapping("/admin/orders/export")
+	public ResponseEntity<StreamingResponseBody> exportAllOrders(
+			@RequestParam(required = false, defaultValue = "csv") String format,
+			@RequestParam(required = false) Integer shopId,
+			@RequestParam(required = false) String status,
+			@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+			@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date to) {
+		return exportResponse(listCriteria(shopId, status, from, to, null, 0), format, "orders");
+	}
+
+	private OrderListCriteria listCriteria(Integer shopId, String status, Date from, Date to, Integer after, int size) {
+		OrderListCriteria criteria = new OrderListCriteria();
+		criteria.setShopId(shopId);
+		criteria.setStatus(StringUtils.hasText(status) ? status.trim() : null);
+		criteria.setFrom(from);
+		// 結束日期含當天
+		criteria.setTo(to != null ? new Date(to.getTime() + 24L * 60 * 60 * 1000) : null);
+		criteria.setAfterOrderId(after);
+		criteria.setSize(size);
+		return criteria;
+	}
+
+	private OrderPageDto toPage(OrderListCriteria criteria) {
+		OrderQueryService.Slice slice = orderService.findOrderPage(criteria);
+		return new OrderPageDto(convertOrdersToListDto(slice.getOrders()), slice.getNextCursor());
+	}
+
+	private List<OrderDto> convertOrdersToListDto(List<Order> orders) {
+		Map<Integer, String> coverImages = loadCoverImages(orders);
+		return orders.stream().map(order -> convertOrderToListDto(order, coverImages)).collect(Collectors.toList());
+	}
+
+	private ResponseEntity<StreamingResponseBody> exportResponse(OrderListCriteria criteria, String format,
+			String fileName) {
+		if (!"csv".equalsIgnoreCase(format) && !"ndjson".equalsIgnoreCase(format)) {
+			return ResponseEntity.badRequest().build();
+		}
+		boolean csv = "csv".equalsIgnoreCase(format);
+		StreamingResponseBody body = out -> orderQueryService.export(criteria, format, out);
+		return ResponseEntity.ok()
+				.header(HttpHeaders.CONTENT_DISPOSITION,
+						"attachment; filename=\"" + fileName + (csv ? ".csv" : ".ndjson") + "\"")
+				.contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+						: new MediaType("application", "x-ndjson", StandardCharsets.UTF_8))
+				.body(body);
+	}
+
+	/**
+	 * 一次查出這些訂單所有商品的封面圖片（productId -> 圖片路徑）
+	 */
+	private Map<Integer, String> loadCoverImages(List<Order> orders) {
+		Set<Integer> productIds = new HashSet<>();
+		for (Order order : orders) {
+			if (order.getOrderItem() != null) {
+				for (OrderItem item : order.getOrderItem()) {
+					productIds.add(item.getSku().getProduct().getProductId());
+				}
+			}
+		}
+		Map<Integer, String> coverImages = new HashMap<>();
+		if (!productIds.isEmpty()) {
+			for (Object[] row : productImageRepository.findCoverImageRowsByProductIds(productIds)) {
+				coverImages.putIfAbsent((Integer) row[0], (String) row[1]);
+			}
+		}
+		return coverImages;
+	}
+
+	private OrderDto convertOrderToListDto(Order order, Map<Integer, String> coverImages) {
+		List<OrderItemDto> orderItemDtos = order.getOrderItem() == null ? Collections.emptyList()
+				: order.getOrderItem().stream().map(item -> {
+					Product product = item.getSku().getProduct();
+					return new OrderItemDto(product.getProductName(), item.getQuantity(), item.getUnitPrice(),
+							coverImages.getOrDefault(product.getProductId(), ""), product.getProductId());
+				}).collect(Collectors.toList());
+
+		User user = order.getUser();
+		String username = (user != null && user.getUsername() != null && !user.getUsername().isBlank())
+				? user.getUsername()
+				: "未知用戶";
+
+		return new OrderDto(order.getOrderId(), order.getTotalPrice(), order.getOrderStatusCorrespond().getName(),
+				orderItemDtos, order.getCreatedAt(), order.getUpdatedAt(), user != null ? user.getUserId() : null,
+				username, user != null ? user.getEmail() : null, user != null ? user.getPhone() : null,
+				formatAddress(order.getBillingAddress()), formatAddress(order.getShippingAddress()),
+				getPaymentMethodName(order), getPaymentStatusName(order), getShipmentMethodName(order),
+				getShipmentStatusName(order), getTrackingNumber(order));
+	}
+
 	// 輔助方法，獲取付款方式名稱
 	private String getPaymentMethodName(Order order) {
 		if (order.getPayment() != null && !order.getPayment().isEmpty()) {
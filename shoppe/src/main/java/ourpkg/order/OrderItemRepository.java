@@ -1,6 +1,7 @@
 package ourpkg.order;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -72,6 +73,32 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Integer> {
                   "ORDER BY sale_date ASC", 
            nativeQuery = true)
     Map<String, Integer> getDailySalesCountLast30Days(@Param("productId") Integer productId);
+
+    /**
+     * 批次計算多個商品底下每個SKU的銷售數量與金額（含已刪除的SKU）
+     *
+     * 欄位順序：productId, skuId, soldCount, totalAmount
+     */
+    @Query("SELECT oi.sku.product.productId, oi.sku.skuId, SUM(oi.quantity), SUM(oi.unitPrice * oi.quantity) "
+            + "FROM OrderItem oi WHERE oi.sku.product.productId IN :productIds "
+            + "GROUP BY oi.sku.product.productId, oi.sku.skuId")
+    List<Object[]> sumSalesBySkuForProducts(@Param("productIds") Collection<Integer> productIds);
+
+    /**
+     * 批次查詢多個商品最近30天的每日銷售數量
+     *
+     * 欄位順序：productId, sale_date (yyyy-MM-dd), daily_count
+     */
+    @Query(value = "SELECT s.product_id, CONVERT(VARCHAR(10), o.created_at, 120) AS sale_date, SUM(oi.quantity) AS daily_count " +
+                  "FROM OrderItem oi " +
+                  "JOIN [Order] o ON oi.order_id = o.order_id " +
+                  "JOIN SKU s ON oi.sku_id = s.sku_id " +
+                  "WHERE s.product_id IN (:productIds) " +
+                  "AND o.created_at >= DATEADD(day, -30, GETDATE()) " +
+                  "GROUP BY s.product_id, CONVERT(VARCHAR(10), o.created_at, 120) " +
+                  "ORDER BY sale_date ASC",
+           nativeQuery = true)
+    List<Object[]> getDailySalesCountLast30DaysForProducts(@Param("productIds") Collection<Integer> productIds);
 	// ============================================by chien
 	
 	
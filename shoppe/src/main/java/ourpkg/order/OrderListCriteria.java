@@ -0,0 +1,30 @@
+package ourpkg.order;
+
+import java.util.Date;
+
+import lombok.Data;
+
+/**
+ * 訂單列表條件（賣家、管理員共用）
+ *
+ * 列表依 orderId 由新到舊排列；afterOrderId 為上一頁最後一筆的訂單ID。
+ */
+@Data
+public class OrderListCriteria {
+
+	// 賣家：只看含有自己商店商品的訂單
+	private Integer sellerId;
+
+	private Integer shopId;
+
+	// 訂單狀態名稱（OrderStatusCorrespond.name）
+	private String status;
+
+	// 建立時間範圍，from 含、to 不含
+	private Date from;
+	private Date to;
+
+	private Integer afterOrderId;
+
+	private int size = 20;
+}
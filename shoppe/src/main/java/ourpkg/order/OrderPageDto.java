@@ -0,0 +1,18 @@
+package ourpkg.order;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一頁訂單，nextCursor 為 null 表示沒有下一頁
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPageDto {
+	private List<OrderDto> list;
+	private Integer nextCursor;
+}
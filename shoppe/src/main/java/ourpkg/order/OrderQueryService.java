@@ -0,0 +1,280 @@
+package ourpkg.order;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+
+/**
+ * 賣家、管理員的訂單列表與匯出
+ *
+ * 列表分兩階段：先以 keyset（orderId 由新到舊）查出一頁的訂單ID，再依ID一次載入訂單、明細、商品與地址，
+ * 付款與出貨紀錄各用一次查詢補上，不在記憶體中對 fetch join 的結果分頁。
+ * 匯出以 JDBC forward-only 游標逐筆寫出，每張訂單一行，記憶體用量與筆數無關。
+ */
+@Service
+public class OrderQueryService {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${order.list.max-size:100}")
+	private int maxPageSize;
+
+	@Value("${order.export.fetch-size:500}")
+	private int exportFetchSize;
+
+	/**
+	 * 一頁訂單（已載入列表需要的關聯）
+	 */
+	public static final class Slice {
+		private final List<Order> orders;
+		private final Integer nextCursor;
+
+		private Slice(List<Order> orders, Integer nextCursor) {
+			this.orders = orders;
+			this.nextCursor = nextCursor;
+		}
+
+		public List<Order> getOrders() {
+			return orders;
+		}
+
+		public Integer getNextCursor() {
+			return nextCursor;
+		}
+	}
+
+	@Transactional(readOnly = true)
+	public Slice findPage(OrderListCriteria criteria) {
+		int size = Math.min(Math.max(1, criteria.getSize()), maxPageSize);
+
+		// 第一階段：只查這一頁的訂單ID（多取一筆判斷是否還有下一頁）
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Integer> cq = cb.createQuery(Integer.class);
+		Root<Order> order = cq.from(Order.class);
+		List<Predicate> predicates = predicates(cb, cq, order, criteria);
+		if (criteria.getAfterOrderId() != null) {
+			predicates.add(cb.lessThan(order.get("orderId"), criteria.getAfterOrderId()));
+		}
+		cq.select(order.get("orderId")).where(predicates.toArray(new Predicate[0]))
+				.orderBy(cb.desc(order.get("orderId")));
+		List<Integer> ids = new ArrayList<>(entityManager.createQuery(cq).setMaxResults(size + 1).getResultList());
+
+		Integer nextCursor = null;
+		if (ids.size() > size) {
+			ids.remove(size);
+			nextCursor = ids.get(size - 1);
+		}
+		if (ids.isEmpty()) {
+			return new Slice(Collections.emptyList(), null);
+		}
+
+		// 第二階段：依ID載入關聯
+		Map<Integer, Order> byId = new HashMap<>();
+		for (Order o : orderRepository.findListGraphByOrderIdIn(ids)) {
+			byId.put(o.getOrderId(), o);
+		}
+		// 同一個持久化內容中，這兩次查詢會初始化上面訂單的付款、出貨紀錄
+		orderRepository.findWithPaymentsByOrderIdIn(ids);
+		orderRepository.findWithShipmentsByOrderIdIn(ids);
+
+		List<Order> orders = new ArrayList<>(ids.size());
+		for (Integer id : ids) {
+			Order o = byId.get(id);
+			if (o != null) {
+				orders.add(o);
+			}
+		}
+		return new Slice(orders, nextCursor);
+	}
+
+	/**
+	 * 依條件逐頁處理全部訂單（忽略 afterOrderId 與 size，每頁 order.list.max-size 筆）
+	 *
+	 * 每頁交給 consumer 轉換後即清空持久化內容，同時只保留一頁的訂單實體。
+	 */
+	@Transactional(readOnly = true)
+	public void forEachPage(OrderListCriteria criteria, Consumer<List<Order>> consumer) {
+		criteria.setSize(maxPageSize);
+		criteria.setAfterOrderId(null);
+		while (true) {
+			Slice slice = findPage(criteria);
+			if (!slice.getOrders().isEmpty()) {
+				consumer.accept(slice.getOrders());
+			}
+			entityManager.clear();
+			if (slice.getNextCursor() == null) {
+				return;
+			}
+			criteria.setAfterOrderId(slice.getNextCursor());
+		}
+	}
+
+	private List<Predicate> predicates(CriteriaBuilder cb, CriteriaQuery<?> cq, Root<Order> order,
+			OrderListCriteria criteria) {
+		List<Predicate> predicates = new ArrayList<>();
+		if (criteria.getSellerId() != null || criteria.getShopId() != null) {
+			Subquery<Integer> items = cq.subquery(Integer.class);
+			Root<OrderItem> item = items.from(OrderItem.class);
+			List<Predicate> itemPredicates = new ArrayList<>();
+			itemPredicates.add(cb.equal(item.get("order"), order));
+			if (criteria.getSellerId() != null) {
+				itemPredicates.add(cb.equal(item.get("shop").get("user").get("userId"), criteria.getSellerId()));
+			}
+			if (criteria.getShopId() != null) {
+				itemPredicates.add(cb.equal(item.get("shop").get("shopId"), criteria.getShopId()));
+			}
+			items.select(item.get("itemId")).where(itemPredicates.toArray(new Predicate[0]));
+			predicates.add(cb.exists(items));
+		}
+		if (criteria.getStatus() != null) {
+			predicates.add(cb.equal(order.get("orderStatusCorrespond").get("name"), criteria.getStatus()));
+		}
+		if (criteria.getFrom() != null) {
+			predicates.add(cb.greaterThanOrEqualTo(order.get("createdAt"), criteria.getFrom()));
+		}
+		if (criteria.getTo() != null) {
+			predicates.add(cb.lessThan(order.get("createdAt"), criteria.getTo()));
+		}
+		return predicates;
+	}
+
+	/**
+	 * 依條件匯出訂單（忽略 afterOrderId 與 size），每張訂單一行
+	 *
+	 * @param format "csv" 或 "ndjson"
+	 */
+	public void export(OrderListCriteria criteria, String format, OutputStream out) throws IOException {
+		boolean csv = "csv".equalsIgnoreCase(format);
+		StringBuilder sql = new StringBuilder("SELECT o.[order_id], o.[created_at], st.[name] AS status_name, "
+				+ "u.[user_id], u.[user_name], u.[email], o.[total_price], "
+				+ "(SELECT COALESCE(SUM(oi.quantity), 0) FROM OrderItem oi WHERE oi.order_id = o.[order_id]) AS item_quantity "
+				+ "FROM [Order] o JOIN [OrderStatusCorrespond] st ON st.[id] = o.[order_status_id] "
+				+ "JOIN [User] u ON u.[user_id] = o.[user_id] WHERE 1 = 1");
+		List<Object> params = new ArrayList<>();
+		if (criteria.getSellerId() != null) {
+			sql.append(" AND EXISTS (SELECT 1 FROM OrderItem oi JOIN [Shop] sh ON sh.[shop_id] = oi.shop_id "
+					+ "WHERE oi.order_id = o.[order_id] AND sh.[user_id] = ?)");
+			params.add(criteria.getSellerId());
+		}
+		if (criteria.getShopId() != null) {
+			sql.append(" AND EXISTS (SELECT 1 FROM OrderItem oi WHERE oi.order_id = o.[order_id] AND oi.shop_id = ?)");
+			params.add(criteria.getShopId());
+		}
+		if (criteria.getStatus() != null) {
+			sql.append(" AND st.[name] = ?");
+			params.add(criteria.getStatus());
+		}
+		if (criteria.getFrom() != null) {
+			sql.append(" AND o.[created_at] >= ?");
+			params.add(new Timestamp(criteria.getFrom().getTime()));
+		}
+		if (criteria.getTo() != null) {
+			sql.append(" AND o.[created_at] < ?");
+			params.add(new Timestamp(criteria.getTo().getTime()));
+		}
+		sql.append(" ORDER BY o.[order_id] DESC");
+
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		if (csv) {
+			// BOM 讓 Excel 以 UTF-8 開啟中文
+			writer.write('\uFEFF');
+			writer.write("訂單ID,建立時間,狀態,用戶ID,用戶名稱,Email,總金額,商品數量\n");
+		}
+
+		try (Connection conn = dataSource.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+						ResultSet.CONCUR_READ_ONLY)) {
+			stmt.setFetchSize(exportFetchSize);
+			for (int i = 0; i < params.size(); i++) {
+				stmt.setObject(i + 1, params.get(i));
+			}
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Timestamp createdAt = rs.getTimestamp("created_at");
+					Map<String, Object> row = new LinkedHashMap<>();
+					row.put("orderId", rs.getInt("order_id"));
+					row.put("createdAt", createdAt != null ? dateFormat.format(createdAt) : null);
+					row.put("status", rs.getString("status_name"));
+					row.put("userId", rs.getInt("user_id"));
+					row.put("userName", rs.getString("user_name"));
+					row.put("email", rs.getString("email"));
+					row.put("totalPrice", rs.getBigDecimal("total_price"));
+					row.put("itemQuantity", rs.getInt("item_quantity"));
+
+					if (csv) {
+						boolean first = true;
+						for (Object value : row.values()) {
+							if (!first) {
+								writer.write(',');
+							}
+							writer.write(csvField(value));
+							first = false;
+						}
+						writer.write('\n');
+					} else {
+						writer.write(objectMapper.writeValueAsString(row));
+						writer.write('\n');
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException("匯出訂單失敗", e);
+		}
+		writer.flush();
+	}
+
+	private static String csvField(Object value) {
+		if (value == null) {
+			return "";
+		}
+		String text = value.toString();
+		if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+			return text;
+		}
+		return '"' + text.replace("\"", "\"\"") + '"';
+	}
+}
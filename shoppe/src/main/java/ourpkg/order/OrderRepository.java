@@ -4,11 +4,14 @@ import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
 import ourpkg.payment.Payment;
 
 @Repository
@@ -46,16 +49,24 @@ public interface OrderRepository extends JpaRepository<Order, Integer> {
     		"ORDER BY o.createdAt DESC")
     		List<Order> findOrdersByShopOwner(@Param("sellerId") Integer sellerId);
     
-    // 管理員查詢所有訂單 (已有產品查詢)
+    // 訂單列表第二階段：依一頁的訂單ID載入用戶、明細、商品、地址與狀態
     @Query("SELECT DISTINCT o FROM Order o " +
            "LEFT JOIN FETCH o.user u " +
            "LEFT JOIN FETCH o.orderItem oi " +
            "LEFT JOIN FETCH oi.sku s " +
-           "LEFT JOIN FETCH s.product p " +  // 已有這行，確保加載產品資訊
+           "LEFT JOIN FETCH s.product p " +
            "LEFT JOIN FETCH o.orderAddressBilling " +
            "LEFT JOIN FETCH o.orderAddressShipping " +
-           "ORDER BY o.createdAt DESC")
-    List<Order> findAllOrdersWithItems();
+           "LEFT JOIN FETCH o.orderStatusCorrespond " +
+           "WHERE o.orderId IN :orderIds")
+    List<Order> findListGraphByOrderIdIn(@Param("orderIds") List<Integer> orderIds);
+
+    // 付款、出貨紀錄與明細都是 List，無法在同一個查詢 fetch，分開補上
+    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.payment WHERE o.orderId IN :orderIds")
+    List<Order> findWithPaymentsByOrderIdIn(@Param("orderIds") List<Integer> orderIds);
+
+    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.shipment WHERE o.orderId IN :orderIds")
+    List<Order> findWithShipmentsByOrderIdIn(@Param("orderIds") List<Integer> orderIds);
     
     //訂單評價
     @Query("SELECT DISTINCT o FROM Order o " +
@@ -82,6 +93,11 @@ public interface OrderRepository extends JpaRepository<Order, Integer> {
 
     @Query("SELECT o FROM Order o LEFT JOIN FETCH o.orderItem WHERE o.orderId = :orderId")
 	Optional<Order> findOrderWithItems(@Param("orderId") Integer orderId);
+
+	// 鎖住訂單列再判斷狀態，避免同一訂單的多筆付款通知同時套用
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT o FROM Order o WHERE o.orderId = :orderId")
+	Optional<Order> findByIdForUpdate(@Param("orderId") Integer orderId);
 	
 	@Query("SELECT o FROM Order o " +
 		       "LEFT JOIN FETCH o.orderItem " +
@@ -92,4 +108,20 @@ public interface OrderRepository extends JpaRepository<Order, Integer> {
 		Optional<Order> findFullOrderById(@Param("orderId") Integer orderId);
 
 
+	// 銷售彙總回補：依訂單ID分批
+	@Query("SELECT o.orderId FROM Order o WHERE o.orderId > :afterId AND o.orderId <= :cutoffId ORDER BY o.orderId")
+	List<Integer> findOrderIdsBetween(@Param("afterId") Integer afterId, @Param("cutoffId") Integer cutoffId,
+			Pageable pageable);
+
+	@Query("SELECT MAX(o.orderId) FROM Order o")
+	Integer findMaxOrderId();
+
+	@Query("SELECT DISTINCT o FROM Order o " +
+		       "LEFT JOIN FETCH o.orderItem oi " +
+		       "LEFT JOIN FETCH oi.sku s " +
+		       "LEFT JOIN FETCH s.product " +
+		       "LEFT JOIN FETCH o.orderStatusCorrespond " +
+		       "WHERE o.orderId IN :orderIds")
+	List<Order> findWithItemsByOrderIdIn(@Param("orderIds") List<Integer> orderIds);
+
 }
\ No newline at end of file
@@ -3,20 +3,23 @@ package ourpkg.order;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import ourpkg.address.AddressTypeCorrespond;
-import ourpkg.address.AddressTypeRepository;
 import ourpkg.address.OrderAddress;
 import ourpkg.address.OrderAddressRepository;
 import ourpkg.address.UserAddress;
@@ -24,29 +27,31 @@ import ourpkg.campaign.entity.UserCoupon;
 import ourpkg.campaign.repository.UserCouponRepository;
 import ourpkg.cart.Cart;
 import ourpkg.cart.CartRepository;
-import ourpkg.coupon.entity.Coupon;
-import ourpkg.coupon.model.DiscountType;
+import ourpkg.coupon.model.CouponEvaluator;
+import ourpkg.coupon.service.CouponEvaluatorCache;
+import ourpkg.dataAnalysis.rollup.SalesRollupService;
 import ourpkg.notification.Notification;
 import ourpkg.notification.NotificationRepository;
 import ourpkg.payment.Payment;
 import ourpkg.payment.PaymentMethod;
-import ourpkg.payment.PaymentMethodRepository;
 import ourpkg.payment.PaymentRepository;
 import ourpkg.payment.PaymentStatus;
-import ourpkg.payment.PaymentStatusRepository;
 import ourpkg.product.Product;
 import ourpkg.product.ProductImageRepository;
 import ourpkg.product.ProductRepository;
+import ourpkg.referencedata.OrderStatusCode;
+import ourpkg.referencedata.PaymentMethodCode;
+import ourpkg.referencedata.PaymentStatusCode;
+import ourpkg.referencedata.ReferenceDataRegistry;
 import ourpkg.review.ReviewRepository;
 import ourpkg.shipment.Shipment;
 import ourpkg.shipment.ShipmentMethod;
-import ourpkg.shipment.ShipmentMethodRepository;
 import ourpkg.shipment.ShipmentRepository;
 import ourpkg.shipment.ShipmentStatus;
-import ourpkg.shipment.ShipmentStatusRepository;
 import ourpkg.shop.Shop;
 import ourpkg.sku.Sku;
 import ourpkg.sku.SkuRepository;
+import ourpkg.sku.inventory.StockReservationService;
 import ourpkg.user_role_permission.user.User;
 import ourpkg.user_role_permission.user.UserRepository;
 import ourpkg.user_role_permission.user.service.UserService;
@@ -60,9 +65,6 @@ public class OrderService {
 	@Autowired
 	private OrderRepository orderRepository;
 
-	@Autowired
-	private OrderStatusCorrespondRepository statusCorrespondRepository;
-
 	@Autowired
 	private OrderItemRepository orderItemRepository;
 
@@ -73,42 +75,42 @@ public class OrderService {
 	private SkuRepository skuRepository;
 
 	@Autowired
-	private UserService userService; // 獲取當前登入用戶
+	private JdbcTemplate jdbcTemplate;
 
 	@Autowired
-	private OrderStatusRepository orderStatusRepository;
-	
-	@Autowired
-	private OrderStatusHistoryRepository orderStatusHistoryRepository;
+	private StockReservationService stockReservationService;
 
 	@Autowired
-	private OrderAddressRepository orderAddressRepository;
-	
-	
+	private OrderQueryService orderQueryService;
+
 	@Autowired
-	private ShipmentMethodRepository shipmentMethodRepository;
+	private ReferenceDataRegistry referenceData;
 
 	@Autowired
-	private ShipmentStatusRepository shipmentStatusRepository;
+	private SalesRollupService salesRollupService;
 
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
 
 	@Autowired
-	private ShipmentRepository shipmentRepository;
+	private UserService userService; // 獲取當前登入用戶
 
 	@Autowired
-	private AddressTypeRepository addressTypeRepository;
+	private OrderStatusHistoryRepository orderStatusHistoryRepository;
 
 	@Autowired
-	private UserRepository userRepository;
+	private OrderAddressRepository orderAddressRepository;
+	
+	
 
 	@Autowired
-	private PaymentRepository paymentRepository;
+	private ShipmentRepository shipmentRepository;
 
 	@Autowired
-	private PaymentStatusRepository paymentStatusRepository;
+	private UserRepository userRepository;
 
 	@Autowired
-	private PaymentMethodRepository paymentMethodRepository;
+	private PaymentRepository paymentRepository;
 
 	@Autowired
 	private NotificationRepository notificationRepository;
@@ -122,6 +124,9 @@ public class OrderService {
 	@Autowired
 	private UserCouponRepository userCouponRepository;
 
+	@Autowired
+	private CouponEvaluatorCache couponEvaluatorCache;
+
 //新============================================
 	@Autowired
 	private ProductImageRepository productImageRepository; // 添加 ProductImageRepository 依賴
@@ -143,13 +148,13 @@ public class OrderService {
 	    addr.setZipCode(request.getReceiverZipCode());
 	    addr.setStreetEtc(request.getReceiverAddress());
 
-	    AddressTypeCorrespond shippingType = addressTypeRepository.findById(2)
+	    AddressTypeCorrespond shippingType = referenceData.findAddressType(2)
 	        .orElseThrow(() -> new RuntimeException("找不到 AddressType 2"));
 	    addr.setAddressTypeCorrespond(shippingType);
 	    orderAddressRepository.save(addr);
 
 	    // ✅ 訂單狀態（預設：未付款）
-	    OrderStatusCorrespond status = statusCorrespondRepository.findById(1)
+	    OrderStatusCorrespond status = referenceData.findOrderStatus(1)
 	        .orElseThrow(() -> new RuntimeException("找不到訂單狀態 ID 1"));
 
 	    // ✅ 建立訂單主檔
@@ -159,25 +164,44 @@ public class OrderService {
 	    order.setOrderAddressShipping(addr);
 	    order.setOrderStatusCorrespond(status);
 
-	    // ✅ 處理訂單商品
+	    // ✅ 處理訂單商品：一次查出所有 SKU 的價格與商店，不逐筆 findById
+	    Map<Integer, Object[]> skuRows = new HashMap<>();
+	    List<Integer> skuIds = request.getItems().stream().map(OrderItemRequest::getSkuId).distinct().toList();
+	    for (Object[] row : skuRepository.findOrderLineRowsBySkuIds(skuIds)) {
+	        skuRows.put((Integer) row[0], row);
+	    }
+
 	    List<OrderItem> itemList = new ArrayList<>();
+	    Map<Integer, Integer> quantities = new LinkedHashMap<>();
 	    BigDecimal originalTotal = BigDecimal.ZERO;
 
 	    for (OrderItemRequest itemReq : request.getItems()) {
 	        Integer skuId = itemReq.getSkuId();
 	        Integer qty = itemReq.getQuantity();
 
-	        Sku sku = skuRepository.findById(skuId)
-	            .orElseThrow(() -> new RuntimeException("找不到 SKU：" + skuId));
-	        BigDecimal unitPrice = sku.getPrice();
+	        Object[] row = skuRows.get(skuId);
+	        if (row == null) {
+	            throw new RuntimeException("找不到 SKU：" + skuId);
+	        }
+	        BigDecimal unitPrice = (BigDecimal) row[1];
 	        BigDecimal subTotal = unitPrice.multiply(BigDecimal.valueOf(qty));
 	        originalTotal = originalTotal.add(subTotal);
 
-	        Shop shop = sku.getProduct().getShop();
-	        if (shop == null) {
+	        if (row[4] == null) {
 	            throw new RuntimeException("商品沒有對應的商店");
 	        }
 
+	        // 只帶ID的實例，明細以 JDBC 寫入，不經過持久化內容
+	        Product product = new Product();
+	        product.setProductId((Integer) row[2]);
+	        product.setProductName((String) row[3]);
+	        Sku sku = new Sku();
+	        sku.setSkuId(skuId);
+	        sku.setPrice(unitPrice);
+	        sku.setProduct(product);
+	        Shop shop = new Shop();
+	        shop.setShopId((Integer) row[4]);
+
 	        OrderItem item = new OrderItem();
 	        item.setOrder(order);
 	        item.setSku(sku);
@@ -186,9 +210,14 @@ public class OrderService {
 	        item.setShop(shop);
 
 	        itemList.add(item);
+	        quantities.merge(skuId, qty, Integer::sum);
 	    }
 
+	    // ✅ 扣庫存（條件式更新，不足時整筆回滾）
+	    stockReservationService.reserve(quantities);
+
 	    BigDecimal finalTotal = originalTotal;
+	    Integer usedCouponId = null;
 
 	 // ✅ 處理優惠券邏輯（新增部分）
 	    if (request.getUserCouponId() != null) {
@@ -208,74 +237,57 @@ public class OrderService {
 	            throw new RuntimeException("優惠券已使用或失效");
 	        }
 
-	        Coupon coupon = userCoupon.getCoupon();
+	        // 規則由快取中編譯好的 CouponEvaluator 判斷，不必載入優惠券實體
+	        CouponEvaluator coupon = couponEvaluatorCache.get(userCoupon.getCouponId());
+	        if (coupon == null) {
+	            throw new RuntimeException("找不到優惠券");
+	        }
 	        Integer shopIdInOrder = itemList.get(0).getShop().getShopId();
 
-	        if (!coupon.getShop().getShopId().equals(shopIdInOrder)) {
+	        if (!coupon.appliesToShop(shopIdInOrder)) {
 	            throw new RuntimeException("這張優惠券不適用於該商店");
 	        }
 
-	        Date now = new Date();
-	        if (now.before(coupon.getStartDate()) || now.after(coupon.getEndDate())) {
+	        if (!coupon.isValidAt(System.currentTimeMillis())) {
 	            throw new RuntimeException("優惠券不在有效期內");
 	        }
 
-	        DiscountType discountType;
-	        try {
-	            discountType = DiscountType.valueOf(coupon.getDiscountType().toUpperCase());
-	        } catch (IllegalArgumentException e) {
-	            throw new RuntimeException("❌ 不支援的折扣類型：" + coupon.getDiscountType());
-	        }
-
 	        // ✅ 根據折扣類型計算
-	        switch (discountType) {
-	            case PERCENTAGE -> {
-	                finalTotal = originalTotal.multiply(BigDecimal.ONE.subtract(
-	                    coupon.getDiscountValue().divide(BigDecimal.valueOf(100))
-	                ));
-	            }
-	            case FIXED_AMOUNT -> {
-	                finalTotal = originalTotal.subtract(coupon.getDiscountValue());
-	            }
-	            default -> throw new RuntimeException("❌ 未知折扣類型");
-	        }
+	        finalTotal = coupon.discountedTotal(originalTotal);
 
 	        // ✅ 最少金額為 1 元，避免串接綠界錯誤
 	        finalTotal = finalTotal.max(BigDecimal.ONE);
 
-	        LocalDateTime currentDateTime = LocalDateTime.now();
-	        userCouponRepository.useCoupon(userCouponId, currentDateTime, order.getOrderId());
+	        usedCouponId = userCouponId;
 	    }
 
 
 	    // ✅ 設定訂單總金額（折扣後）
+	    // 明細不掛在訂單上，避免 cascade 逐筆 INSERT（IDENTITY 主鍵時 Hibernate 無法批次寫入）
 	    order.setTotalPrice(finalTotal);
-	    order.setOrderItem(itemList);
 	    order = orderRepository.save(order);
-	    orderItemRepository.saveAll(itemList);
+	    insertOrderItems(order.getOrderId(), itemList);
+	    if (usedCouponId != null) {
+	        userCouponRepository.useCoupon(usedCouponId, LocalDateTime.now(), order.getOrderId());
+	    }
+	    salesRollupService.recordOrder(order, itemList);
 
 	    System.out.println("✅ 訂單建立成功，總金額：" + finalTotal);
 
 	    // ✅ 處理付款方式（支援英文代碼）
 	    String methodInput = request.getPaymentMethod().trim();
-	    Optional<PaymentMethod> optionalMethod = paymentMethodRepository.findByNameIgnoreCase(methodInput);
+	    Optional<PaymentMethod> optionalMethod = referenceData.findPaymentMethod(methodInput);
 
 	    if (optionalMethod.isEmpty()) {
-	        String mappedName = switch (methodInput.toUpperCase()) {
-	            case "CREDIT" -> "信用卡";
-	            case "CASH_ON_DELIVERY" -> "貨到付款";
-	            case "ATM" -> "ATM";
-	            case "APPLE_PAY" -> "Apple Pay";
-	            case "LINE_PAY" -> "LINE Pay";
-	            default -> throw new RuntimeException("❌ 不支援的付款方式：" + methodInput);
-	        };
-	        optionalMethod = paymentMethodRepository.findByNameIgnoreCase(mappedName);
+	        PaymentMethodCode code = PaymentMethodCode.fromCode(methodInput)
+	            .orElseThrow(() -> new RuntimeException("❌ 不支援的付款方式：" + methodInput));
+	        optionalMethod = referenceData.findPaymentMethod(code.getDisplayName());
 	    }
 
 	    PaymentMethod method = optionalMethod
 	        .orElseThrow(() -> new RuntimeException("找不到付款方式：" + methodInput));
 
-	    PaymentStatus payStatus = paymentStatusRepository.findByName("未付款")
+	    PaymentStatus payStatus = referenceData.findPaymentStatus(PaymentStatusCode.UNPAID.getDisplayName())
 	        .orElseThrow(() -> new RuntimeException("找不到付款狀態"));
 
 	    // ✅ 建立付款資訊（不需寫入金額欄位，若沒有對應欄位就省略）
@@ -285,9 +297,30 @@ public class OrderService {
 	    payment.setPaymentStatus(payStatus);
 	    paymentRepository.save(payment);
 
+	    // ✅ 未付款前保留庫存，逾時自動釋放
+	    stockReservationService.hold(order.getOrderId(), quantities);
+
+	    // ✅ 回傳的訂單帶上明細：先移出持久化內容，提交時才不會因 cascade 再寫一次明細
+	    entityManager.flush();
+	    entityManager.detach(order);
+	    order.setOrderItem(itemList);
 	    return order;
 	}
 
+	/**
+	 * 以一次 JDBC 批次寫入訂單明細
+	 */
+	private void insertOrderItems(Integer orderId, List<OrderItem> items) {
+		jdbcTemplate.batchUpdate("INSERT INTO OrderItem (order_id, sku_id, shop_id, unit_price, quantity) VALUES (?, ?, ?, ?, ?)",
+				items, items.size(), (ps, item) -> {
+					ps.setInt(1, orderId);
+					ps.setInt(2, item.getSku().getSkuId());
+					ps.setInt(3, item.getShop().getShopId());
+					ps.setBigDecimal(4, item.getUnitPrice());
+					ps.setInt(5, item.getQuantity());
+				});
+	}
+
 
 
 	
@@ -313,17 +346,19 @@ public class OrderService {
 		// 計算總價
 		BigDecimal totalPrice = BigDecimal.ZERO;
 		List<OrderItem> orderItems = new ArrayList<>();
+		Map<Integer, Integer> quantities = new LinkedHashMap<>();
 
 		for (Cart cart : cartItems) {
 			Sku sku = cart.getSku();
-			if (sku.getStock() < cart.getQuantity()) {
-				throw new RuntimeException("庫存不足，無法結帳");
-			}
 			totalPrice = totalPrice.add(sku.getPrice().multiply(BigDecimal.valueOf(cart.getQuantity())));
+			quantities.merge(sku.getSkuId(), cart.getQuantity(), Integer::sum);
 		}
 
+		// 扣庫存
+		stockReservationService.reserve(quantities);
+
 		Optional<OrderAddress> byIdopt = orderAddressRepository.findById(1);
-		Optional<OrderStatusCorrespond> statusopt = statusCorrespondRepository.findById(1);
+		Optional<OrderStatusCorrespond> statusopt = referenceData.findOrderStatus(1);
 
 		if (byIdopt.isEmpty() || statusopt.isEmpty()) {
 			throw new RuntimeException("地址或訂單狀態對應資料缺失");
@@ -344,9 +379,6 @@ public class OrderService {
 
 		for (Cart cart : cartItems) {
 			Sku sku = cart.getSku();
-			if (sku.getStock() < cart.getQuantity()) {
-				throw new RuntimeException("庫存不足，無法結帳");
-			}
 
 			OrderItem orderItem = new OrderItem();
 			orderItem.setOrder(order);
@@ -360,23 +392,25 @@ public class OrderService {
 			}
 			orderItem.setShop(shop);
 			orderItems.add(orderItem);
-
-			sku.setStock(sku.getStock() - cart.getQuantity());
-			skuRepository.save(sku);
 		}
 
 		orderItemRepository.saveAll(orderItems);
+		salesRollupService.recordOrder(order, orderItems);
 
 		// ✅ 建立付款紀錄
 		Payment payment = new Payment();
 		payment.setOrder(order);
-		payment.setPaymentStatusById(1, paymentStatusRepository);
-		payment.setPaymentMethodById(1, paymentMethodRepository);
+		payment.setPaymentStatus(referenceData.findPaymentStatus(1)
+				.orElseThrow(() -> new RuntimeException("找不到 PaymentStatus ID: 1")));
+		payment.setPaymentMethod(referenceData.findPaymentMethod(1)
+				.orElseThrow(() -> new RuntimeException("找不到 PaymentMethod ID: 1")));
 		paymentRepository.save(payment);
 
 		// ✅ 清空購物車
 		cartRepository.deleteAll(cartItems);
 
+		stockReservationService.hold(order.getOrderId(), quantities);
+
 		return new OrderDto(order.getOrderId(), order.getTotalPrice(), "訂單建立成功");
 	}
 
@@ -385,41 +419,16 @@ public class OrderService {
 		return orderRepository.findOrdersByUserId(userId);
 	}
 
-	// 🔥 賣家查詢自己的訂單
-	public List<Order> getOrdersForSeller(Integer sellerId) {
-		List<Order> orders = orderRepository.findOrdersByShopOwner(sellerId);
-
-		if (orders.isEmpty()) {
-			System.out.println("⚠️ 賣家 (ID: " + sellerId + ") 沒有任何訂單");
-		} else {
-			System.out.println("✅ 賣家 (ID: " + sellerId + ") 的訂單數量：" + orders.size());
-		}
-
-		return orders;
+	// 舊的不分頁列表（賣家、管理員）：逐頁處理全部訂單
+	public void forEachOrderPage(OrderListCriteria criteria, Consumer<List<Order>> consumer) {
+		orderQueryService.forEachPage(criteria, consumer);
 	}
 
-	public List<Order> getAllOrders() {
-		List<Order> orders = orderRepository.findAllOrdersWithItems();
-
-		if (orders.isEmpty()) {
-			System.out.println("⚠️ 沒有任何訂單！");
-		} else {
-			System.out.println("✅ 總共找到 " + orders.size() + " 筆訂單");
-		}
-
-		return orders;
+	// 分頁列表（賣家、管理員）
+	public OrderQueryService.Slice findOrderPage(OrderListCriteria criteria) {
+		return orderQueryService.findPage(criteria);
 	}
-	// 英文狀態代碼對應中文名稱
-	private static final Map<String, String> ORDER_STATUS_MAP = Map.of(
-	    "PENDING", "未付款",
-	    "PAID", "已付款",
-	    "PREPARING", "備貨中",
-	    "PROCESSING", "處理中",
-	    "SHIPPED", "已出貨",
-	    "DELIVERED", "已送達",
-	    "CANCELLED", "已取消",
-	    "COMPLETED", "已完成"
-	);
+
 	/**
 	 * 更新訂單資訊
 	 * 
@@ -439,15 +448,25 @@ public class OrderService {
 	        if (request.getStatus() != null && !request.getStatus().isEmpty()) {
 	            try {
 	                String inputStatus = request.getStatus().trim();
-	                String mappedStatus = ORDER_STATUS_MAP.getOrDefault(inputStatus.toUpperCase(), inputStatus);
-
-	                System.out.println("嘗試更新訂單狀態: " + mappedStatus);
+	                System.out.println("嘗試更新訂單狀態: " + inputStatus);
 
-	                OrderStatusCorrespond orderStatus = orderStatusRepository.findByName(mappedStatus)
-	                    .orElseThrow(() -> new RuntimeException("無效的訂單狀態: " + mappedStatus));
+	                // 英文代碼（OrderStatusCode）或中文名稱
+	                OrderStatusCorrespond orderStatus = referenceData.resolveOrderStatus(inputStatus)
+	                    .orElseThrow(() -> new RuntimeException("無效的訂單狀態: " + inputStatus));
 
 	                System.out.println("找到訂單狀態: " + orderStatus.getName() + ", ID: " + orderStatus.getId());
+	                boolean wasCanceled = isCanceled(order);
 	                order.setOrderStatusCorrespond(orderStatus);
+
+	                // 取消／恢復訂單時同步銷售彙總與庫存預留
+	                if (!wasCanceled && isCanceled(order)) {
+	                    salesRollupService.revertOrder(order);
+	                    stockReservationService.release(orderId);
+	                } else if (wasCanceled && !isCanceled(order)) {
+	                    stockReservationService.reinstate(orderId,
+	                            !OrderStatusCode.PENDING.getDisplayName().equals(orderStatus.getName()));
+	                    salesRollupService.recordOrder(order, order.getOrderItem());
+	                }
 	            } catch (Exception e) {
 	                System.err.println("更新訂單狀態時出錯: " + e.getMessage());
 	                throw new RuntimeException("更新訂單狀態失敗: " + e.getMessage(), e);
@@ -476,26 +495,12 @@ public class OrderService {
 						billingAddress = new OrderAddress();
 
 						// 設置必要的關聯屬性
-						AddressTypeCorrespond billingType = null;
+						AddressTypeCorrespond billingType;
 						try {
-							billingType = addressTypeRepository.findByName("Billing").orElse(null);
-
-							if (billingType == null) {
-								System.out.println("Billing地址類型不存在，正在創建");
-								// 創建新的地址類型
-								billingType = new AddressTypeCorrespond();
-								billingType.setName("Billing");
-								billingType = addressTypeRepository.save(billingType);
-							}
+							billingType = referenceData.addressTypeOrCreate("Billing");
 						} catch (Exception e) {
-							// 如果創建過程中發生異常，嘗試再次查詢
-							System.out.println("創建Billing地址類型時發生異常，再次嘗試查詢: " + e.getMessage());
-							billingType = addressTypeRepository.findByName("Billing").orElse(null);
-
-							if (billingType == null) {
-								System.err.println("最終無法找到或創建Billing地址類型");
-								throw new RuntimeException("設置帳單地址失敗: 無法找到或創建地址類型");
-							}
+							System.err.println("最終無法找到或創建Billing地址類型");
+							throw new RuntimeException("設置帳單地址失敗: 無法找到或創建地址類型");
 						}
 
 						billingAddress.setAddressTypeCorrespond(billingType);
@@ -529,26 +534,12 @@ public class OrderService {
 						shippingAddress = new OrderAddress();
 
 						// 設置必要的關聯屬性
-						AddressTypeCorrespond shippingType = null;
+						AddressTypeCorrespond shippingType;
 						try {
-							shippingType = addressTypeRepository.findByName("Shipping").orElse(null);
-
-							if (shippingType == null) {
-								System.out.println("Shipping地址類型不存在，正在創建");
-								// 創建新的地址類型
-								shippingType = new AddressTypeCorrespond();
-								shippingType.setName("Shipping");
-								shippingType = addressTypeRepository.save(shippingType);
-							}
+							shippingType = referenceData.addressTypeOrCreate("Shipping");
 						} catch (Exception e) {
-							// 如果創建過程中發生異常，嘗試再次查詢
-							System.out.println("創建Shipping地址類型時發生異常，再次嘗試查詢: " + e.getMessage());
-							shippingType = addressTypeRepository.findByName("Shipping").orElse(null);
-
-							if (shippingType == null) {
-								System.err.println("最終無法找到或創建Shipping地址類型");
-								throw new RuntimeException("設置收貨地址失敗: 無法找到或創建地址類型");
-							}
+							System.err.println("最終無法找到或創建Shipping地址類型");
+							throw new RuntimeException("設置收貨地址失敗: 無法找到或創建地址類型");
 						}
 
 						shippingAddress.setAddressTypeCorrespond(shippingType);
@@ -597,22 +588,13 @@ public class OrderService {
 			if (request.getPaymentMethod() != null && !request.getPaymentMethod().isEmpty()) {
 				try {
 					System.out.println("嘗試查找付款方式: " + request.getPaymentMethod());
-					paymentMethod = paymentMethodRepository.findByNameIgnoreCase(request.getPaymentMethod()).orElse(null);
-
-					if (paymentMethod == null) {
-						System.out.println("付款方式不存在，正在創建: " + request.getPaymentMethod());
-						// 創建並保存新的付款方式
-						paymentMethod = new PaymentMethod();
-						paymentMethod.setName(request.getPaymentMethod());
-						paymentMethod = paymentMethodRepository.save(paymentMethod);
-						System.out.println("成功創建付款方式: " + paymentMethod.getName() + ", ID: " + paymentMethod.getId());
-					} else {
-						System.out.println("找到現有付款方式: " + paymentMethod.getName() + ", ID: " + paymentMethod.getId());
-					}
+					// 不存在就新增
+					paymentMethod = referenceData.paymentMethodOrCreate(request.getPaymentMethod());
+					System.out.println("付款方式: " + paymentMethod.getName() + ", ID: " + paymentMethod.getId());
 				} catch (Exception e) {
 					System.out.println("查詢或創建付款方式時出錯: " + e.getMessage());
 					// 再次嘗試查詢，如果失敗則忽略付款方式更新
-					paymentMethod = paymentMethodRepository.findByNameIgnoreCase(request.getPaymentMethod()).orElse(null);
+					paymentMethod = referenceData.findPaymentMethod(request.getPaymentMethod()).orElse(null);
 				}
 			}
 
@@ -621,22 +603,13 @@ public class OrderService {
 			if (request.getPaymentStatus() != null && !request.getPaymentStatus().isEmpty()) {
 				try {
 					System.out.println("嘗試查找付款狀態: " + request.getPaymentStatus());
-					paymentStatus = paymentStatusRepository.findByName(request.getPaymentStatus()).orElse(null);
-
-					if (paymentStatus == null) {
-						System.out.println("付款狀態不存在，正在創建: " + request.getPaymentStatus());
-						// 創建並保存新的付款狀態
-						paymentStatus = new PaymentStatus();
-						paymentStatus.setName(request.getPaymentStatus());
-						paymentStatus = paymentStatusRepository.save(paymentStatus);
-						System.out.println("成功創建付款狀態: " + paymentStatus.getName() + ", ID: " + paymentStatus.getId());
-					} else {
-						System.out.println("找到現有付款狀態: " + paymentStatus.getName() + ", ID: " + paymentStatus.getId());
-					}
+					// 不存在就新增
+					paymentStatus = referenceData.paymentStatusOrCreate(request.getPaymentStatus());
+					System.out.println("付款狀態: " + paymentStatus.getName() + ", ID: " + paymentStatus.getId());
 				} catch (Exception e) {
 					System.out.println("查詢或創建付款狀態時出錯: " + e.getMessage());
 					// 再次嘗試查詢，如果失敗則忽略付款狀態更新
-					paymentStatus = paymentStatusRepository.findByName(request.getPaymentStatus()).orElse(null);
+					paymentStatus = referenceData.findPaymentStatus(request.getPaymentStatus()).orElse(null);
 				}
 			}
 
@@ -701,6 +674,8 @@ public class OrderService {
 				order = orderRepository.save(order);
 			}
 
+			eventPublisher.publishEvent(new OrderChangedEvent(order, order.getOrderItem()));
+
 		} catch (Exception e) {
 			System.err.println("更新付款信息時出錯: " + e.getMessage());
 			e.printStackTrace();
@@ -720,22 +695,13 @@ public class OrderService {
 			if (request.getShipmentMethod() != null && !request.getShipmentMethod().isEmpty()) {
 				try {
 					System.out.println("嘗試查找運送方式: " + request.getShipmentMethod());
-					shipmentMethod = shipmentMethodRepository.findByName(request.getShipmentMethod()).orElse(null);
-
-					if (shipmentMethod == null) {
-						System.out.println("運送方式不存在，正在創建: " + request.getShipmentMethod());
-						// 創建並保存新的運送方式
-						shipmentMethod = new ShipmentMethod();
-						shipmentMethod.setName(request.getShipmentMethod());
-						shipmentMethod = shipmentMethodRepository.save(shipmentMethod);
-						System.out.println("成功創建運送方式: " + shipmentMethod.getName() + ", ID: " + shipmentMethod.getId());
-					} else {
-						System.out.println("找到現有運送方式: " + shipmentMethod.getName() + ", ID: " + shipmentMethod.getId());
-					}
+					// 不存在就新增
+					shipmentMethod = referenceData.shipmentMethodOrCreate(request.getShipmentMethod());
+					System.out.println("運送方式: " + shipmentMethod.getName() + ", ID: " + shipmentMethod.getId());
 				} catch (Exception e) {
 					System.out.println("查詢或創建運送方式時出錯: " + e.getMessage());
 					// 再次嘗試查詢，如果失敗則忽略運送方式更新
-					shipmentMethod = shipmentMethodRepository.findByName(request.getShipmentMethod()).orElse(null);
+					shipmentMethod = referenceData.findShipmentMethod(request.getShipmentMethod()).orElse(null);
 				}
 			}
 
@@ -744,22 +710,13 @@ public class OrderService {
 			if (request.getShipmentStatus() != null && !request.getShipmentStatus().isEmpty()) {
 				try {
 					System.out.println("嘗試查找運送狀態: " + request.getShipmentStatus());
-					shipmentStatus = shipmentStatusRepository.findByName(request.getShipmentStatus()).orElse(null);
-
-					if (shipmentStatus == null) {
-						System.out.println("運送狀態不存在，正在創建: " + request.getShipmentStatus());
-						// 創建並保存新的運送狀態
-						shipmentStatus = new ShipmentStatus();
-						shipmentStatus.setName(request.getShipmentStatus());
-						shipmentStatus = shipmentStatusRepository.save(shipmentStatus);
-						System.out.println("成功創建運送狀態: " + shipmentStatus.getName() + ", ID: " + shipmentStatus.getId());
-					} else {
-						System.out.println("找到現有運送狀態: " + shipmentStatus.getName() + ", ID: " + shipmentStatus.getId());
-					}
+					// 不存在就新增
+					shipmentStatus = referenceData.shipmentStatusOrCreate(request.getShipmentStatus());
+					System.out.println("運送狀態: " + shipmentStatus.getName() + ", ID: " + shipmentStatus.getId());
 				} catch (Exception e) {
 					System.out.println("查詢或創建運送狀態時出錯: " + e.getMessage());
 					// 再次嘗試查詢，如果失敗則忽略運送狀態更新
-					shipmentStatus = shipmentStatusRepository.findByName(request.getShipmentStatus()).orElse(null);
+					shipmentStatus = referenceData.findShipmentStatus(request.getShipmentStatus()).orElse(null);
 				}
 			}
 
@@ -898,10 +855,19 @@ public class OrderService {
 	public void deleteOrder(int orderId) {
 		Order order = orderRepository.findById(orderId).orElseThrow(() -> new RuntimeException("訂單不存在"));
 
-		// 刪除訂單前的任何必要清理
+		// 刪除訂單前的任何必要清理：還沒取消的訂單先還回佔用中的庫存
+		if (!isCanceled(order)) {
+			salesRollupService.revertOrder(order);
+			stockReservationService.release(orderId);
+		}
 		orderRepository.delete(order);
 	}
 
+	private boolean isCanceled(Order order) {
+		return order.getOrderStatusCorrespond() != null
+				&& SalesRollupService.CANCELED_STATUS.equals(order.getOrderStatusCorrespond().getName());
+	}
+
 	@Transactional
 	public OrderDto createAdvancedOrder(int userId) {
 		// 1. 驗證用戶
@@ -923,6 +889,7 @@ public class OrderService {
 
 		// 5. 處理訂單項目
 		List<OrderItem> orderItems = processOrderItems(order, cartItems);
+		salesRollupService.recordOrder(order, orderItems);
 
 		// 6. 建立付款記錄
 		createPaymentRecord(order);
@@ -940,9 +907,6 @@ public class OrderService {
 	private BigDecimal calculateTotalPrice(List<Cart> cartItems) {
 		return cartItems.stream().map(cart -> {
 			Sku sku = cart.getSku();
-			if (sku.getStock() < cart.getQuantity()) {
-				throw new RuntimeException("庫存不足，無法結帳");
-			}
 			return sku.getPrice().multiply(BigDecimal.valueOf(cart.getQuantity()));
 		}).reduce(BigDecimal.ZERO, BigDecimal::add);
 	}
@@ -954,11 +918,7 @@ public class OrderService {
 
 	// 獲取訂單待付款狀態
 	private OrderStatusCorrespond getPendingOrderStatus() {
-	    return statusCorrespondRepository.findByName("未付款").orElseGet(() -> {
-	        OrderStatusCorrespond newStatus = new OrderStatusCorrespond();
-	        newStatus.setName("未付款");
-	        return statusCorrespondRepository.save(newStatus);
-	    });
+	    return referenceData.orderStatusOrCreate("未付款");
 	}
 
 	// 創建訂單實體
@@ -977,15 +937,17 @@ public class OrderService {
 	// 處理訂單項目
 	private List<OrderItem> processOrderItems(Order order, List<Cart> cartItems) {
 		List<OrderItem> orderItems = new ArrayList<>();
+		Map<Integer, Integer> quantities = new LinkedHashMap<>();
+		for (Cart cart : cartItems) {
+			quantities.merge(cart.getSku().getSkuId(), cart.getQuantity(), Integer::sum);
+		}
+
+		// 扣庫存
+		stockReservationService.reserve(quantities);
 
 		for (Cart cart : cartItems) {
 			Sku sku = cart.getSku();
 
-			// 檢查庫存
-			if (sku.getStock() < cart.getQuantity()) {
-				throw new RuntimeException("庫存不足，無法結帳");
-			}
-
 			// 創建訂單項目
 			OrderItem orderItem = new OrderItem();
 			orderItem.setOrder(order);
@@ -999,12 +961,10 @@ public class OrderService {
 
 			orderItem.setShop(shop);
 			orderItems.add(orderItem);
-
-			// 更新庫存
-			sku.setStock(sku.getStock() - cart.getQuantity());
-			skuRepository.save(sku);
 		}
 
+		stockReservationService.hold(order.getOrderId(), quantities);
+
 		return orderItemRepository.saveAll(orderItems);
 	}
 
@@ -1088,19 +1048,12 @@ public class OrderService {
 		payment.setOrder(order);
 
 		// 設置初始支付狀態為「未付款」
-		PaymentStatus initialStatus = paymentStatusRepository.findByName("未付款").orElseGet(() -> {
-			PaymentStatus newStatus = new PaymentStatus();
-			newStatus.setName("未付款");
-			return paymentStatusRepository.save(newStatus);
-		});
+		PaymentStatus initialStatus = referenceData.paymentStatusOrCreate("未付款");
 		payment.setPaymentStatus(initialStatus);
 
 		// 設置默認支付方式（如果有）
-		PaymentMethod defaultMethod = paymentMethodRepository.findById(1).orElseGet(() -> {
-			PaymentMethod newMethod = new PaymentMethod();
-			newMethod.setName("信用卡");
-			return paymentMethodRepository.save(newMethod);
-		});
+		PaymentMethod defaultMethod = referenceData.findPaymentMethod(1)
+				.orElseGet(() -> referenceData.paymentMethodOrCreate("信用卡"));
 		payment.setPaymentMethod(defaultMethod);
 
 		// 保存支付記錄
@@ -1130,10 +1083,14 @@ public class OrderService {
 	public Order cancelOrder(int orderId) {
 		Order order = orderRepository.findById(orderId).orElseThrow(() -> new RuntimeException("訂單不存在"));
 
-		OrderStatusCorrespond canceledStatus = statusCorrespondRepository.findByName("已取消")
+		OrderStatusCorrespond canceledStatus = referenceData.findOrderStatus(OrderStatusCode.CANCELLED.getDisplayName())
 				.orElseThrow(() -> new RuntimeException("訂單狀態 '已取消' 未定義"));
 
+		if (!isCanceled(order)) {
+			salesRollupService.revertOrder(order);
+		}
 		order.setOrderStatusCorrespond(canceledStatus);
+		stockReservationService.release(orderId);
 		return orderRepository.save(order);
 	}
 
@@ -1143,7 +1100,7 @@ public class OrderService {
 		Order order = orderRepository.findById(orderId).orElseThrow(() -> new RuntimeException("訂單不存在"));
 
 		// 2. 查「配送中」狀態對應物件
-		OrderStatusCorrespond shippedStatus = statusCorrespondRepository.findById(4)
+		OrderStatusCorrespond shippedStatus = referenceData.findOrderStatus(4)
 				.orElseThrow(() -> new RuntimeException("訂單狀態 '配送中' 未定義"));
 
 		// 3. 更新訂單狀態為「配送中」
@@ -1237,10 +1194,9 @@ public class OrderService {
         BigDecimal unitPrice = (orderRequest.getPrice() != null && orderRequest.getPrice() > 0) 
                 ? BigDecimal.valueOf(orderRequest.getPrice()) 
                 : primarySku.getPrice();
-        // 檢查庫存
-        if (primarySku.getStock() < orderRequest.getQuantity()) {
-            throw new RuntimeException("庫存不足，無法下單");
-        }
+        // 扣庫存（條件式更新，不足時整筆回滾）
+        Map<Integer, Integer> quantities = Map.of(primarySku.getSkuId(), orderRequest.getQuantity());
+        stockReservationService.reserve(quantities);
         
         if (orderRequest.getAmount() <= 0) {
             // 在這裡使用 unitPrice 計算總金額
@@ -1280,12 +1236,7 @@ public class OrderService {
         order.setOrderAddressShipping(orderAddressShipping);
         
         // 7. 設置訂單狀態（未付款）
-        OrderStatusCorrespond statusCorrespond = statusCorrespondRepository.findByName("未付款")
-                .orElseGet(() -> {
-                    OrderStatusCorrespond newStatus = new OrderStatusCorrespond();
-                    newStatus.setName("未付款");
-                    return statusCorrespondRepository.save(newStatus);
-                });
+        OrderStatusCorrespond statusCorrespond = referenceData.orderStatusOrCreate("未付款");
         order.setOrderStatusCorrespond(statusCorrespond);
         
         // 保存訂單
@@ -1299,6 +1250,7 @@ public class OrderService {
         orderItem.setUnitPrice(unitPrice);
         orderItem.setQuantity(orderRequest.getQuantity());
         orderItemRepository.save(orderItem);
+        salesRollupService.recordOrder(order, List.of(orderItem));
         
         // 更新訂單的orderItem列表
         if (order.getOrderItem() == null) {
@@ -1317,33 +1269,18 @@ public class OrderService {
         payment.setOrder(order);
         
         // 設置支付方式 - 綠界支付
-        PaymentMethod paymentMethod = paymentMethodRepository.findByNameIgnoreCase("綠界支付")
-                .orElseGet(() -> {
-                    PaymentMethod newMethod = new PaymentMethod();
-                    newMethod.setName("綠界支付");
-                    return paymentMethodRepository.save(newMethod);
-                });
+        PaymentMethod paymentMethod = referenceData.paymentMethodOrCreate("綠界支付");
         payment.setPaymentMethod(paymentMethod);
      // 改為「保持原付款方式不變」或是「找不到就新增」
         PaymentMethod method = payment.getPaymentMethod();
         if (method == null || !"CREDIT".equalsIgnoreCase(method.getName())) {
-            method = paymentMethodRepository.findByNameIgnoreCase("CREDIT")
-                .orElseGet(() -> {
-                    PaymentMethod m = new PaymentMethod();
-                    m.setName("CREDIT");
-                    return paymentMethodRepository.save(m);
-                });
+            method = referenceData.paymentMethodOrCreate("CREDIT");
             payment.setPaymentMethod(method);
         }
 
         
         // 設置支付狀態 - 待付款
-        PaymentStatus paymentStatus = paymentStatusRepository.findByName("待付款")
-                .orElseGet(() -> {
-                    PaymentStatus newStatus = new PaymentStatus();
-                    newStatus.setName("待付款");
-                    return paymentStatusRepository.save(newStatus);
-                });
+        PaymentStatus paymentStatus = referenceData.paymentStatusOrCreate("待付款");
         payment.setPaymentStatus(paymentStatus);
         
         paymentRepository.save(payment);
@@ -1354,9 +1291,8 @@ public class OrderService {
         }
         order.getPayment().add(payment);
         
-        // 更新庫存
-        primarySku.setStock(primarySku.getStock() - orderRequest.getQuantity());
-        skuRepository.save(primarySku);
+        // 未付款前保留庫存，逾時自動釋放
+        stockReservationService.hold(order.getOrderId(), quantities);
         
         return orderRepository.save(order);
     }
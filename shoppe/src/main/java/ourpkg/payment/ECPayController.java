@@ -1,14 +1,10 @@
 package ourpkg.payment;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.net.URLEncoder;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -19,9 +15,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -33,15 +29,20 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.util.HtmlUtils;
 
 import jakarta.servlet.http.HttpServletResponse;
+import ecpay.logistics.integration.ecpayOperator.CheckMacValueCodec;
 import ourpkg.order.Order;
+import ourpkg.order.OrderChangedEvent;
 import ourpkg.order.OrderRepository;
 import ourpkg.order.OrderRequest;
 import ourpkg.order.OrderService;
 import ourpkg.order.OrderStatusCorrespond;
-import ourpkg.order.OrderStatusCorrespondRepository;
 import ourpkg.order.OrderStatusHistory;
 import ourpkg.order.OrderStatusHistoryRepository;
 import ourpkg.order.UpdateOrderRequest;
+import ourpkg.payment.inbox.PaymentNotificationInbox;
+import ourpkg.referencedata.PaymentStatusCode;
+import ourpkg.referencedata.ReferenceDataRegistry;
+import ourpkg.sku.inventory.StockReservationService;
 
 @RestController
 @RequestMapping("/api/payment")
@@ -82,16 +83,19 @@ public class ECPayController {
 	private EcpayProperties ecpayProperties;
 
 	@Autowired
-	private OrderStatusCorrespondRepository orderStatusCorrespondRepository;
+	private ReferenceDataRegistry referenceData;
 
 	@Autowired
-	private PaymentStatusRepository paymentStatusRepository;
+	private PaymentRepository paymentRepository;
 
 	@Autowired
-	private PaymentRepository paymentRepository;
+	private StockReservationService stockReservationService;
+
+	@Autowired
+	private PaymentNotificationInbox paymentNotificationInbox;
 
 	@Autowired
-	private PaymentMethodRepository paymentMethodRepository;
+	private ApplicationEventPublisher eventPublisher;
 
 //    @PostMapping("/orders/actions/create")
 //    public ResponseEntity<?> createOrder(@Valid @RequestBody OrderRequest orderRequest) {
@@ -150,24 +154,12 @@ public class ECPayController {
 //        }
 //    }
 	public boolean verifyPaymentResponse(Map<String, String> responseData) {
-		String receivedCheckMac = responseData.get("CheckMacValue");
-
-		// 1️⃣ 建立一份乾淨的參數 map（不包含 CheckMacValue、自動去空值）
-		Map<String, String> filteredData = new HashMap<>();
-		for (Map.Entry<String, String> entry : responseData.entrySet()) {
-			String key = entry.getKey();
-			String value = entry.getValue();
-			if (!"CheckMacValue".equals(key) && value != null && !value.isBlank()) {
-				filteredData.put(key, value);
-			}
+		// 略過空值參數，直接在原本的 map 上計算
+		boolean valid = CheckMacValueCodec.verify(hashKey, hashIv, responseData, true);
+		if (!valid) {
+			logger.warn("CheckMacValue 驗證失敗: 收到={}", responseData.get("CheckMacValue"));
 		}
-
-		// 2️⃣ 計算 CheckMacValue
-		String calculatedCheckMac = generateCheckMacValue(filteredData);
-
-		logger.warn("CheckMacValue 驗證結果: 收到={}, 計算={}", receivedCheckMac, calculatedCheckMac);
-
-		return receivedCheckMac != null && receivedCheckMac.trim().equalsIgnoreCase(calculatedCheckMac.trim());
+		return valid;
 	}
 
 	@GetMapping("/order/{orderId}")
@@ -191,11 +183,12 @@ public class ECPayController {
 			// 記錄訂單的支付請求
 			logger.info("創建支付請求: {}", orderRequest);
 
-			String orderIdStr = String.format("%06d", order.getOrderId()); // 補0到6位
-			String timestampPart = String.valueOf(System.currentTimeMillis()).substring(9); // 取最後4位時間戳
-			String merchantTradeNo = "ORD" + orderIdStr + timestampPart; // e.g., ORD0001238800
+			String merchantTradeNo = MerchantTradeNo.forOrder(order.getOrderId(), System.currentTimeMillis());
 			orderRequest.setMerchantTradeNo(merchantTradeNo);
+			createPaymentIfNotExist(order, merchantTradeNo);
 
+			// 開始綠界付款期限，逾時未付款會被取消並歸還庫存
+			stockReservationService.startPaymentWindow(order.getOrderId());
 			return createECPayOrder(orderRequest);
 		} else {
 			logger.warn("找不到訂單: orderId={}", orderId);
@@ -222,9 +215,6 @@ public class ECPayController {
 			// ✅ 確保使用最新的折扣後金額
 			logger.info("✅ 準備綠界付款，訂單總金額（折扣後）：{}", order.getTotalPrice());
 
-			// ✅ 建立 payment 紀錄（如尚未建立）
-			createPaymentIfNotExist(order);
-
 			// ✅ 準備綠界訂單資料
 			OrderRequest orderRequest = new OrderRequest();
 			orderRequest.setAmount(order.getTotalPrice().setScale(0, RoundingMode.HALF_UP).intValue()); // 四捨五入為整數
@@ -232,11 +222,12 @@ public class ECPayController {
 			orderRequest.setItemName(getItemNameFromOrder(order));
 
 			// ✅ 統一格式處理訂單號
-			String orderIdStr = String.format("%06d", order.getOrderId()); // 補0到6位
-			String timestampPart = String.valueOf(System.currentTimeMillis()).substring(9); // 取最後幾位
-			String merchantTradeNo = "ORD" + orderIdStr + timestampPart; // 確保長度 < 20
+			String merchantTradeNo = MerchantTradeNo.forOrder(order.getOrderId(), System.currentTimeMillis());
 			orderRequest.setMerchantTradeNo(merchantTradeNo);
 
+			// ✅ 建立 payment 紀錄（如尚未建立），並記下這次的訂單號
+			createPaymentIfNotExist(order, merchantTradeNo);
+
 			// ✅ 設定 ReturnURL 與 ClientBackURL
 			String fullReturnUrl = ensureUrlPrefix(ecpayProperties.getReturnUrl());
 			orderRequest.setReturnUrl(fullReturnUrl);
@@ -247,6 +238,9 @@ public class ECPayController {
 			// ✅ 產生綠界付款表單 HTML
 			String ecpayFormHtml = createECPayOrder(orderRequest);
 
+			// 開始綠界付款期限，逾時未付款會被取消並歸還庫存
+			stockReservationService.startPaymentWindow(order.getOrderId());
+
 			return ResponseEntity.ok(
 					Map.of("redirectUrl", ecpayApiUrl, "formHtml", ecpayFormHtml, "merchantTradeNo", merchantTradeNo));
 
@@ -257,13 +251,17 @@ public class ECPayController {
 		}
 	}
 
-	// 建立 payment 紀錄
-	private void createPaymentIfNotExist(Order order) {
+	// 建立 payment 紀錄；付款通知以 MerchantTradeNo 找回這筆 payment 與訂單
+	private void createPaymentIfNotExist(Order order, String merchantTradeNo) {
 		List<Payment> existing = paymentRepository.findByOrderOrderId(order.getOrderId());
 
-		// 如果已經有 payment，就略過
+		// 如果已經有 payment，只更新訂單號
 		if (!existing.isEmpty()) {
-			logger.info("✅ 訂單已有 Payment 記錄，略過建立: orderId={}", order.getOrderId());
+			Payment latest = existing.stream().max(Comparator.comparing(Payment::getPaymentId)).get();
+			latest.setMerchantTradeNo(merchantTradeNo);
+			paymentRepository.save(latest);
+			logger.info("✅ 訂單已有 Payment 記錄，更新訂單號: orderId={}, merchantTradeNo={}", order.getOrderId(),
+					merchantTradeNo);
 			return;
 		}
 
@@ -272,17 +270,17 @@ public class ECPayController {
 		Payment payment = new Payment();
 		payment.setOrder(order);
 
-		// ✅ 應該使用 PaymentMethodRepository 來查找付款方式
-		PaymentMethod method = paymentMethodRepository.findByNameIgnoreCase("CREDIT")
+		// ✅ 付款方式、付款狀態從對照表快取取得
+		PaymentMethod method = referenceData.findPaymentMethod("CREDIT")
 				.orElseThrow(() -> new RuntimeException("找不到付款方式 CREDIT"));
 
-		// ✅ 使用 PaymentStatusRepository 來查找付款狀態
-		PaymentStatus status = paymentStatusRepository.findByName("未付款")
+		PaymentStatus status = referenceData.findPaymentStatus(PaymentStatusCode.UNPAID.getDisplayName())
 				.orElseThrow(() -> new RuntimeException("找不到付款狀態 未付款"));
 
 		// 正確設值
 		payment.setPaymentMethod(method);
 		payment.setPaymentStatus(status);
+		payment.setMerchantTradeNo(merchantTradeNo);
 
 		paymentRepository.save(payment);
 
@@ -325,26 +323,8 @@ public class ECPayController {
 
 		params.put("ChoosePayment", "ALL");
 
-		// 記錄原始參數字串，用於調試
-		String originalParamsString = buildCheckMacValueString(params, hashKey, hashIv);
-		logger.info("原始字串: {}", originalParamsString);
-
-		// URL 編碼
-		String encodedParams;
-		try {
-			encodedParams = URLEncoder.encode(originalParamsString, "UTF-8");
-			logger.info("URL編碼結果: {}", encodedParams);
-		} catch (UnsupportedEncodingException e) {
-			logger.error("URL編碼失敗", e);
-			throw new RuntimeException("URL編碼失敗", e);
-		}
-
-		// 轉為小寫
-		String lowerCaseParams = encodedParams.toLowerCase();
-		logger.info("編碼後字串: {}", lowerCaseParams);
-
 		// 產生檢查碼並加入到參數中
-		String checkMacValue = generateCheckMacValue(params);
+		String checkMacValue = CheckMacValueCodec.sign(hashKey, hashIv, params, true);
 		params.put("CheckMacValue", checkMacValue);
 
 		return generateAutoPostForm(params, ecpayApiUrl);
@@ -370,80 +350,6 @@ public class ECPayController {
 		return url;
 	}
 
-	// 構建用於生成 CheckMacValue 的字串
-	private String buildCheckMacValueString(Map<String, String> params, String hashKey, String hashIv) {
-		// 1. 參數按照字母順序排序
-		List<String> keys = new ArrayList<>(params.keySet());
-		Collections.sort(keys);
-
-		// 2. 按照順序組成字符串，格式為 key1=value1&key2=value2...
-		StringBuilder sb = new StringBuilder();
-		sb.append("HashKey=").append(hashKey);
-
-		for (String key : keys) {
-			sb.append("&").append(key).append("=").append(params.get(key));
-		}
-
-		sb.append("&HashIV=").append(hashIv);
-
-		return sb.toString();
-	}
-
-	private String generateCheckMacValue(Map<String, String> params) {
-		// 1️⃣ 排除空值與 CheckMacValue 自身
-		Map<String, String> filtered = new HashMap<>();
-		for (Map.Entry<String, String> entry : params.entrySet()) {
-			String key = entry.getKey();
-			String value = entry.getValue();
-			if (!"CheckMacValue".equals(key) && value != null && !value.isBlank()) {
-				filtered.put(key, value);
-			}
-		}
-
-		// 2️⃣ 將參數依 key 排序（A-Z）
-		List<String> sortedKeys = new ArrayList<>(filtered.keySet());
-		Collections.sort(sortedKeys);
-
-		// 3️⃣ 組成字串：HashKey=...&key1=val1&key2=val2...&HashIV=...
-		StringBuilder raw = new StringBuilder();
-		raw.append("HashKey=").append(hashKey);
-		for (String key : sortedKeys) {
-			raw.append("&").append(key).append("=").append(filtered.get(key));
-		}
-		raw.append("&HashIV=").append(hashIv);
-
-		String rawString = raw.toString();
-		logger.debug("CheckMac 原始字串: {}", rawString);
-
-		// 4️⃣ URL 編碼並轉小寫
-		try {
-			String encoded = URLEncoder.encode(rawString, "UTF-8").toLowerCase()
-
-					// 5️⃣ 符號轉換（符合 ECPay RFC3986 規範）
-					.replaceAll("%21", "!").replaceAll("%28", "(").replaceAll("%29", ")").replaceAll("%2a", "*")
-					.replaceAll("%2d", "-").replaceAll("%2e", ".").replaceAll("%5f", "_");
-
-			logger.debug("CheckMac 編碼後字串: {}", encoded);
-
-			// 6️⃣ MD5 加密
-			java.security.MessageDigest md = java.security.MessageDigest.getInstance("MD5");
-			byte[] hash = md.digest(encoded.getBytes("UTF-8"));
-
-			// 7️⃣ 轉成大寫的十六進位字串
-			StringBuilder hex = new StringBuilder();
-			for (byte b : hash) {
-				String hexStr = Integer.toHexString(0xff & b);
-				if (hexStr.length() == 1)
-					hex.append('0');
-				hex.append(hexStr);
-			}
-			return hex.toString().toUpperCase();
-
-		} catch (Exception e) {
-			throw new RuntimeException("CheckMacValue 產生失敗", e);
-		}
-	}
-
 	// 生成自動提交表單
 	private String generateAutoPostForm(Map<String, String> params, String url) {
 		// ✅ 直接指定返回商店的頁面為 /shop
@@ -556,64 +462,27 @@ public class ECPayController {
 //        }
 //    }
 //    
+	/**
+	 * 綠界付款結果通知：驗證後寫入收件匣就回覆 1|OK，訂單狀態由背景執行緒更新
+	 *
+	 * 綠界重送的同一筆通知（MerchantTradeNo + TradeNo 相同）不會重複處理。
+	 */
 	@PostMapping("/notify")
 	@ResponseBody
 	public String handlePaymentNotification(@RequestParam Map<String, String> responseData) {
-		logger.info("📩 接收到綠界支付通知: {}", responseData);
-//        boolean isDevMode = true;
+		logger.info("📩 接收到綠界支付通知: MerchantTradeNo={}, TradeNo={}, RtnCode={}",
+				responseData.get("MerchantTradeNo"), responseData.get("TradeNo"), responseData.get("RtnCode"));
 		try {
 			// 1️⃣ 驗證 CheckMacValue
 			if (!paymentService.verifyPaymentResponse(responseData)) {
 				logger.error("❌ 支付通知驗證失敗");
 				return "0|Error: Verification failed";
-//        	if (!isDevMode && !paymentService.verifyPaymentResponse(responseData)) {
-//        	    logger.error("❌ 支付通知驗證失敗");
-//        	    return "0|Error: Verification failed";
-			}
-
-			String merchantTradeNo = responseData.get("MerchantTradeNo");
-			String rtnCode = responseData.get("RtnCode");
-			String tradeAmt = responseData.get("TradeAmt");
-
-			logger.info("✅ 驗證成功 merchantTradeNo={}, rtnCode={}, tradeAmt={}", merchantTradeNo, rtnCode, tradeAmt);
-
-			// 2️⃣ 解析訂單 ID：ORDER{orderId}_{timestamp}
-			String orderIdStr = merchantTradeNo.replaceAll("^ORDER(\\d+)_.*$", "$1");
-			int orderId = Integer.parseInt(orderIdStr);
-
-			logger.info("🔍 成功解析出訂單 ID: {}", orderId);
-
-			// 3️⃣ 根據付款狀態更新
-			if ("1".equals(rtnCode)) {
-				logger.info("💰 綠界回傳成功，準備更新訂單與付款狀態");
-				updateOrderStatusToPaid(orderId);
-			} else {
-				logger.warn("⚠️ 綠界回傳付款失敗 (rtnCode={})，可選擇記錄付款失敗狀態", rtnCode);
 			}
 
+			// 2️⃣ 寫入收件匣（重送的通知直接回覆成功）
+			paymentNotificationInbox.accept(responseData);
 			return "1|OK";
 
-		} catch (NumberFormatException e) {
-			logger.warn("⚠️ 訂單 ID 解析失敗，嘗試用金額查找：{}", e.getMessage());
-
-			try {
-				BigDecimal amount = new BigDecimal(responseData.get("TradeAmt"));
-				List<Order> orders = orderRepository.findByTotalPriceAndOrderStatusCorrespond_Id(amount, 1); // 1 = 未付款
-
-				if (!orders.isEmpty()) {
-					Order fallbackOrder = orders.get(0);
-					updateOrderStatusToPaid(fallbackOrder.getOrderId());
-					return "1|OK";
-				} else {
-					logger.error("❌ 根據金額找不到未付款訂單");
-					return "0|Error: Order not found";
-				}
-
-			} catch (Exception ex) {
-				logger.error("❌ 用金額查訂單時出錯: {}", ex.getMessage(), ex);
-				return "0|Error: " + ex.getMessage();
-			}
-
 		} catch (Exception e) {
 			logger.error("❌ 處理綠界通知時發生錯誤: {}", e.getMessage(), e);
 			return "0|Error: " + e.getMessage();
@@ -696,6 +565,7 @@ public class ECPayController {
 				request.setStatus("未付款"); // 使用較通用的狀態名稱
 				request.setPaymentMethod("MOBILE_TRANSFER"); // 設置付款方式
 				orderService.updateOrder(orderId, request);
+				stockReservationService.confirm(orderId); // 線下付款，不套用綠界付款逾時
 
 				// 生成轉帳信息
 				Map<String, Object> transferInfo = generateTransferInfo(order);
@@ -709,6 +579,7 @@ public class ECPayController {
 				request.setPaymentMethod("CASH_ON_DELIVERY"); // 設置付款方式
 				request.setPaymentStatus("待付款"); // 貨到付款的付款狀態
 				orderService.updateOrder(orderId, request);
+				stockReservationService.confirm(orderId); // 貨到付款，不套用綠界付款逾時
 
 				return ResponseEntity
 						.ok(Map.of("status", "success", "method", "CASH_ON_DELIVERY", "message", "訂單已確認，將於送達時付款"));
@@ -783,71 +654,6 @@ public class ECPayController {
 		return itemNames.toString();
 	}
 
-	@Transactional
-	private void updateOrderStatusToPaid(Integer orderId) {
-		try {
-			Optional<Order> orderOpt = orderRepository.findOrderWithItems(orderId);
-			if (orderOpt.isEmpty()) {
-				logger.error("❌ 找不到訂單：orderId={}", orderId);
-				return;
-			}
-
-			Order order = orderOpt.get();
-
-			// 1️⃣ 檢查狀態是否為未付款
-			if (order.getOrderStatusCorrespond().getId() != 1) {
-				logger.warn("⚠️ 訂單狀態非未付款：orderId={}, currentStatus={}", orderId,
-						order.getOrderStatusCorrespond().getId());
-				return;
-			}
-
-			// 2️⃣ 更新訂單狀態為已付款
-			OrderStatusCorrespond paidStatus = orderStatusCorrespondRepository.findById(2)
-					.orElseThrow(() -> new RuntimeException("❌ 找不到『已付款』狀態記錄"));
-			order.setOrderStatusCorrespond(paidStatus);
-			orderRepository.save(order);
-			logger.info("✅ 訂單狀態已更新為已付款");
-
-			// 3️⃣ 寫入狀態歷史紀錄
-			OrderStatusHistory history = new OrderStatusHistory();
-			history.setOrder(order);
-			history.setOrderStatusCorrespond(paidStatus);
-			orderStatusHistoryRepository.save(history);
-			logger.info("📝 記錄訂單狀態歷史完成");
-
-			// 4️⃣ 更新付款狀態與付款方式
-			List<Payment> payments = paymentRepository.findByOrderOrderId(orderId);
-			if (!payments.isEmpty()) {
-				Payment payment = payments.get(0);
-
-				// 狀態：已付款
-				PaymentStatus paymentStatus = paymentStatusRepository.findByName("已付款").orElseGet(() -> {
-					PaymentStatus newStatus = new PaymentStatus();
-					newStatus.setName("已付款");
-					return paymentStatusRepository.save(newStatus);
-				});
-
-				// 方式：信用卡
-				PaymentMethod method = paymentMethodRepository.findByNameIgnoreCase("CREDIT").orElseGet(() -> {
-					PaymentMethod m = new PaymentMethod();
-					m.setName("CREDIT");
-					return paymentMethodRepository.save(m);
-				});
-
-				payment.setPaymentStatus(paymentStatus);
-				payment.setPaymentMethod(method);
-				paymentRepository.save(payment);
-
-				logger.info("✅ 付款狀態與付款方式更新完成：已付款 / 信用卡");
-			} else {
-				logger.warn("⚠️ 找不到付款紀錄，無法更新付款狀態與方式");
-			}
-
-		} catch (Exception e) {
-			logger.error("❌ 更新訂單為已付款時發生錯誤: {}", e.getMessage(), e);
-		}
-	}
-
 	/**
 	 * 更新訂單狀態為支付失敗
 	 */
@@ -868,12 +674,8 @@ public class ECPayController {
 			}
 
 			// 1️⃣ 查詢「付款失敗」狀態
-			OrderStatusCorrespond failedStatus = orderStatusCorrespondRepository.findById(3).orElseGet(() -> {
-				OrderStatusCorrespond status = new OrderStatusCorrespond();
-				status.setId(3);
-				status.setName("付款失敗");
-				return orderStatusCorrespondRepository.save(status);
-			});
+			OrderStatusCorrespond failedStatus = referenceData.findOrderStatus(3)
+					.orElseGet(() -> referenceData.orderStatusOrCreate("付款失敗"));
 
 			// 2️⃣ 更新訂單狀態
 			order.setOrderStatusCorrespond(failedStatus);
@@ -890,11 +692,7 @@ public class ECPayController {
 			List<Payment> payments = paymentRepository.findByOrderOrderId(orderId);
 			if (!payments.isEmpty()) {
 				Payment payment = payments.get(0);
-				PaymentStatus failedPayStatus = paymentStatusRepository.findByName("付款失敗").orElseGet(() -> {
-					PaymentStatus status = new PaymentStatus();
-					status.setName("付款失敗");
-					return paymentStatusRepository.save(status);
-				});
+				PaymentStatus failedPayStatus = referenceData.paymentStatusOrCreate("付款失敗");
 
 				payment.setPaymentStatus(failedPayStatus);
 				paymentRepository.save(payment);
@@ -902,6 +700,7 @@ public class ECPayController {
 			} else {
 				logger.warn("⚠️ 沒有找到付款紀錄，付款狀態無法更新");
 			}
+			eventPublisher.publishEvent(new OrderChangedEvent(order, order.getOrderItem()));
 
 		} catch (Exception e) {
 			logger.error("❌ 更新訂單狀態為付款失敗時發生錯誤: {}", e.getMessage(), e);
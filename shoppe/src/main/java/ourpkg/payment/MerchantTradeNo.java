@@ -0,0 +1,46 @@
+package ourpkg.payment;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 綠界 MerchantTradeNo 的產生與解析
+ *
+ * 格式為 ORD + 補0到6位的訂單ID + 時間戳末4位，例如 ORD0001238800。訂單ID超過6位時照樣全部寫入，
+ * 解析時固定把最後4位當成時間戳。
+ */
+public final class MerchantTradeNo {
+
+	private static final Pattern FORMAT = Pattern.compile("^ORD(\\d{6,})\\d{4}$");
+
+	// 舊版表單使用的 ORDER{orderId}_{timestamp}
+	private static final Pattern LEGACY_FORMAT = Pattern.compile("^ORDER(\\d+)_.*$");
+
+	private MerchantTradeNo() {
+	}
+
+	public static String forOrder(Integer orderId, long epochMillis) {
+		return "ORD" + String.format("%06d", orderId) + String.format("%04d", Math.floorMod(epochMillis, 10_000L));
+	}
+
+	/**
+	 * @return 無法解析時為 null
+	 */
+	public static Integer parseOrderId(String merchantTradeNo) {
+		if (merchantTradeNo == null) {
+			return null;
+		}
+		Matcher matcher = FORMAT.matcher(merchantTradeNo);
+		if (!matcher.matches()) {
+			matcher = LEGACY_FORMAT.matcher(merchantTradeNo);
+			if (!matcher.matches()) {
+				return null;
+			}
+		}
+		try {
+			return Integer.valueOf(matcher.group(1));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
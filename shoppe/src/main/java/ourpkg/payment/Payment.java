@@ -10,6 +10,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
@@ -22,7 +23,7 @@ import lombok.Setter;
 import ourpkg.order.Order;
 
 @Entity
-@Table(name = "[Payment]")
+@Table(name = "[Payment]", indexes = @Index(name = "ix_payment_merchant_trade_no", columnList = "merchant_trade_no"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -45,6 +46,10 @@ public class Payment {
     @ManyToOne
     @JoinColumn(name = "[payment_status_id]", nullable = false)
     private PaymentStatus paymentStatus;
+
+    // 最近一次送到綠界的 MerchantTradeNo，付款通知由此找回訂單
+    @Column(name = "merchant_trade_no", length = 20)
+    private String merchantTradeNo;
     
     @Column(name = "created_at")
     private LocalDateTime createdAt;
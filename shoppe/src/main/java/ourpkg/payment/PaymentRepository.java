@@ -13,6 +13,8 @@ public interface PaymentRepository extends JpaRepository<Payment, Integer>{
 
 	
 	 List<Payment> findByOrderOrderId(int orderId);
+
+	 Optional<Payment> findFirstByMerchantTradeNoOrderByPaymentIdDesc(String merchantTradeNo);
 	 
 
 }
@@ -1,16 +1,11 @@
 package ourpkg.payment;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
-import java.net.URLEncoder;
 import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -24,6 +19,7 @@ import org.springframework.web.util.HtmlUtils;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletResponse;
+import ecpay.logistics.integration.ecpayOperator.CheckMacValueCodec;
 import ourpkg.order.Order;
 import ourpkg.order.OrderRequest;
 
@@ -117,26 +113,8 @@ public class PaymentService {
             params.put("ClientBackURL", ensureUrlPrefix(clientBackUrl));
         }
         
-        // 記錄原始參數字串，用於調試
-        String originalParamsString = buildCheckMacValueString(params, hashKey, hashIv);
-        logger.info("原始字串: {}", originalParamsString);
-        
-        // URL 編碼
-        String encodedParams = null;
-        try {
-            encodedParams = URLEncoder.encode(originalParamsString, "UTF-8");
-            logger.info("URL編碼結果: {}", encodedParams);
-        } catch (UnsupportedEncodingException e) {
-            logger.error("URL編碼失敗", e);
-            throw new RuntimeException("URL編碼失敗", e);
-        }
-        
-        // 轉為小寫
-        String lowerCaseParams = encodedParams.toLowerCase();
-        logger.info("編碼後字串: {}", lowerCaseParams);
-        
         // 產生檢查碼並加入到參數中
-        String checkMacValue = generateCheckMacValue(params, hashKey, hashIv);
+        String checkMacValue = CheckMacValueCodec.sign(hashKey, hashIv, params);
         params.put("CheckMacValue", checkMacValue);
         
         return generateAutoPostForm(params, ecpayApiUrl);
@@ -227,21 +205,11 @@ public class PaymentService {
             return false;
         }
         
-        // 保存原始的檢查碼用於比較
-        String receivedCheckMacValue = responseData.get("CheckMacValue");
-        
-        // 創建新的Map，因為需要移除CheckMacValue才能重新計算
-        Map<String, String> verificationMap = new HashMap<>(responseData);
-        verificationMap.remove("CheckMacValue");
-        
-        // 重新計算CheckMacValue
-        String calculatedCheckMacValue = generateCheckMacValue(verificationMap, hashKey, hashIv);
-        
-        // 比較原始和計算的檢查碼
-        boolean isValid = receivedCheckMacValue.equalsIgnoreCase(calculatedCheckMacValue);
+        // 直接在回調參數上重新計算（自動略過CheckMacValue），不複製整個map
+        boolean isValid = CheckMacValueCodec.verify(hashKey, hashIv, responseData);
         
         if (!isValid) {
-            logger.warn("CheckMacValue驗證失敗: 收到={}, 計算={}", receivedCheckMacValue, calculatedCheckMacValue);
+            logger.warn("CheckMacValue驗證失敗: 收到={}", responseData.get("CheckMacValue"));
         }
         
         return isValid;
@@ -262,66 +230,6 @@ public class PaymentService {
         return sdf.format(new Date());
     }
     
-    /**
-     * 構建用於生成 CheckMacValue 的字串
-     */
-    private String buildCheckMacValueString(Map<String, String> params, String hashKey, String hashIv) {
-        // 1. 參數按照字母順序排序
-        List<String> keys = new ArrayList<>(params.keySet());
-        Collections.sort(keys);
-        
-        // 2. 按照順序組成字符串，格式為 key1=value1&key2=value2...
-        StringBuilder sb = new StringBuilder();
-        sb.append("HashKey=").append(hashKey);
-        
-        for (String key : keys) {
-            sb.append("&").append(key).append("=").append(params.get(key));
-        }
-        
-        sb.append("&HashIV=").append(hashIv);
-        
-        return sb.toString();
-    }
-    
-    /**
-     * 生成檢查碼
-     */
-    private String generateCheckMacValue(Map<String, String> params, String hashKey, String hashIv) {
-        // 1. 構建原始字串
-        String originalString = buildCheckMacValueString(params, hashKey, hashIv);
-        
-        // 2. URL 編碼
-        String urlEncodedString;
-        try {
-            urlEncodedString = URLEncoder.encode(originalString, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException("URL 編碼失敗", e);
-        }
-        
-        // 3. 轉為小寫
-        urlEncodedString = urlEncodedString.toLowerCase();
-        
-        // 4. MD5 加密
-        String checkMacValue;
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] hash = md.digest(urlEncodedString.getBytes("UTF-8"));
-            
-            // 轉為 16 進制字符串
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            checkMacValue = hexString.toString().toUpperCase();
-        } catch (Exception e) {
-            throw new RuntimeException("MD5 加密失敗", e);
-        }
-        
-        return checkMacValue;
-    }
-    
     private String getMD5(String input) {
         try {
             MessageDigest md = MessageDigest.getInstance("MD5");
@@ -0,0 +1,82 @@
+package ourpkg.payment.inbox;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 綠界付款通知收件匣
+ *
+ * 同一筆交易（MerchantTradeNo + TradeNo）只會有一列，綠界重送的通知不會重複處理。
+ */
+@Entity
+@Table(name = "payment_notification", uniqueConstraints = @UniqueConstraint(name = "uk_payment_notification_trade", columnNames = {
+		"merchant_trade_no", "trade_no" }), indexes = @Index(name = "ix_payment_notification_status", columnList = "status, id"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentNotification {
+
+	public static final String RECEIVED = "RECEIVED"; // 待處理（含重試中）
+	public static final String PROCESSED = "PROCESSED"; // 已套用到訂單
+	public static final String IGNORED = "IGNORED"; // 不需變更訂單（付款失敗、訂單已非未付款）
+	public static final String FAILED = "FAILED"; // 重試次數用完，需人工處理後重播
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "id")
+	private Long id;
+
+	@Column(name = "merchant_trade_no", length = 50, nullable = false)
+	private String merchantTradeNo;
+
+	// 綠界交易編號，沒有帶時存空字串
+	@Column(name = "trade_no", length = 50, nullable = false)
+	private String tradeNo;
+
+	// 由 MerchantTradeNo 對應到的訂單ID，找不到為 null
+	@Column(name = "order_id")
+	private Integer orderId;
+
+	@Column(name = "rtn_code", length = 10)
+	private String rtnCode;
+
+	@Column(name = "trade_amt", precision = 10, scale = 2)
+	private BigDecimal tradeAmt;
+
+	// 原始通知參數（JSON）
+	@Column(name = "payload", columnDefinition = "NVARCHAR(MAX)")
+	private String payload;
+
+	@Column(name = "status", length = 20, nullable = false)
+	private String status;
+
+	@Column(name = "attempts", nullable = false)
+	private Integer attempts;
+
+	@Column(name = "last_error", columnDefinition = "NVARCHAR(500)")
+	private String lastError;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "received_at", nullable = false)
+	private Date receivedAt;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "processed_at")
+	private Date processedAt;
+}
@@ -0,0 +1,50 @@
+package ourpkg.payment.inbox;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 付款通知收件匣的查詢與重播
+ */
+@RestController
+@RequestMapping("/api/admin/payment-notifications")
+@PreAuthorize("hasAnyRole('SUPER_ADMIN','ADMIN')")
+public class PaymentNotificationController {
+
+	@Autowired
+	private PaymentNotificationInbox paymentNotificationInbox;
+
+	@GetMapping
+	public ResponseEntity<Map<String, Object>> list(@RequestParam(defaultValue = "FAILED") String status,
+			@RequestParam(defaultValue = "50") int limit) {
+		List<PaymentNotification> list = paymentNotificationInbox.findByStatus(status.toUpperCase(), limit);
+		return ResponseEntity.ok(Map.of("success", true, "list", list, "pending", paymentNotificationInbox.pendingCount()));
+	}
+
+	@PostMapping("/{id}/replay")
+	public ResponseEntity<Map<String, Object>> replay(@PathVariable Long id) {
+		try {
+			boolean queued = paymentNotificationInbox.replay(id);
+			return ResponseEntity.ok(Map.of("success", queued, "message", queued ? "已重新排入處理" : "重播失敗"));
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+		}
+	}
+
+	// 重播所有 FAILED 的通知
+	@PostMapping("/replay")
+	public ResponseEntity<Map<String, Object>> replayFailed() {
+		int count = paymentNotificationInbox.replayFailed();
+		return ResponseEntity.ok(Map.of("success", true, "count", count, "message", "已重新排入 " + count + " 筆通知"));
+	}
+}
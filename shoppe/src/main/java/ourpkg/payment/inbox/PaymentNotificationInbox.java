@@ -0,0 +1,343 @@
+package ourpkg.payment.inbox;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import ourpkg.payment.MerchantTradeNo;
+import ourpkg.payment.Payment;
+import ourpkg.payment.PaymentRepository;
+
+/**
+ * 綠界付款通知收件匣
+ *
+ * 回呼只驗證 CheckMacValue 並把通知寫進 payment_notification（MerchantTradeNo + TradeNo 唯一，
+ * 重送的通知直接視為已收到），寫入後立即回覆 1|OK。背景執行緒從佇列批次取出通知，
+ * 每筆在一個交易內套用到訂單並標記完成；失敗會累計次數，由排程重試，次數用完改為 FAILED 等待重播。
+ * 佇列只是加速用，程式重啟或佇列已滿時由排程從資料表補回待處理的通知。
+ */
+@Service
+public class PaymentNotificationInbox {
+
+	private static final Logger log = LoggerFactory.getLogger(PaymentNotificationInbox.class);
+
+	private static final int MAX_ERROR_LENGTH = 500;
+
+	@Autowired
+	private PaymentNotificationRepository repository;
+
+	@Autowired
+	private PaymentTransitionService transitions;
+
+	@Autowired
+	private PaymentRepository paymentRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${payment.inbox.workers:2}")
+	private int workerCount;
+
+	@Value("${payment.inbox.batch-size:50}")
+	private int batchSize;
+
+	@Value("${payment.inbox.queue-capacity:10000}")
+	private int queueCapacity;
+
+	@Value("${payment.inbox.max-attempts:5}")
+	private int maxAttempts;
+
+	@Value("${payment.inbox.sweep-batch:500}")
+	private int sweepBatch;
+
+	private LinkedBlockingQueue<Long> queue;
+
+	// 已在佇列中的通知ID，排程補回時不重複排入
+	private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private volatile boolean running = true;
+
+	// 各階段耗時：寫入收件匣、在佇列等待、套用到訂單
+	private Timer persistTimer;
+	private Timer queueTimer;
+	private Timer applyTimer;
+
+	private Counter acceptedCounter;
+	private Counter duplicateCounter;
+
+	@PostConstruct
+	public void start() {
+		queue = new LinkedBlockingQueue<>(queueCapacity);
+		persistTimer = stageTimer("persist");
+		queueTimer = stageTimer("queue");
+		applyTimer = stageTimer("apply");
+		acceptedCounter = meterRegistry.counter("payment.notification.received", "outcome", "accepted");
+		duplicateCounter = meterRegistry.counter("payment.notification.received", "outcome", "duplicate");
+		Gauge.builder("payment.notification.queue", queue, LinkedBlockingQueue::size).register(meterRegistry);
+
+		for (int i = 0; i < Math.max(1, workerCount); i++) {
+			Thread worker = new Thread(this::runWorker, "payment-notification-" + i);
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+	}
+
+	private Timer stageTimer(String stage) {
+		return Timer.builder("payment.notification.stage").tag("stage", stage).publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		running = false;
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+		for (Thread worker : workers) {
+			try {
+				worker.join(10_000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * 寫入已通過 CheckMacValue 驗證的通知
+	 *
+	 * @return false 表示同一筆交易的通知已經收過
+	 */
+	public boolean accept(Map<String, String> params) {
+		long startedAt = System.nanoTime();
+		PaymentNotification notification = new PaymentNotification();
+		String merchantTradeNo = params.get("MerchantTradeNo");
+		if (merchantTradeNo == null || merchantTradeNo.isBlank()) {
+			throw new IllegalArgumentException("缺少 MerchantTradeNo");
+		}
+		String tradeNo = params.getOrDefault("TradeNo", "");
+		notification.setMerchantTradeNo(merchantTradeNo);
+		notification.setTradeNo(tradeNo);
+		notification.setOrderId(resolveOrderId(merchantTradeNo));
+		notification.setRtnCode(params.get("RtnCode"));
+		notification.setTradeAmt(parseAmount(params.get("TradeAmt")));
+		notification.setPayload(toJson(params));
+		notification.setStatus(PaymentNotification.RECEIVED);
+		notification.setAttempts(0);
+		notification.setReceivedAt(new Date());
+
+		try {
+			notification = repository.save(notification);
+		} catch (DataIntegrityViolationException e) {
+			if (repository.findByMerchantTradeNoAndTradeNo(merchantTradeNo, tradeNo).isPresent()) {
+				duplicateCounter.increment();
+				log.info("綠界重送的付款通知，略過：merchantTradeNo={}, tradeNo={}", merchantTradeNo, tradeNo);
+				return false;
+			}
+			throw e;
+		} finally {
+			persistTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+		}
+
+		acceptedCounter.increment();
+		enqueue(notification.getId());
+		return true;
+	}
+
+	/**
+	 * 重播一筆通知（不論目前狀態），套用到訂單的動作本身可重複執行
+	 */
+	public boolean replay(Long id) {
+		Integer updated = transactionTemplate.execute(status -> repository.replay(id));
+		if (updated == null || updated == 0) {
+			return repository.findById(id).map(n -> PaymentNotification.RECEIVED.equals(n.getStatus()))
+					.orElseThrow(() -> new IllegalArgumentException("找不到付款通知：" + id));
+		}
+		enqueue(id);
+		return true;
+	}
+
+	/**
+	 * 重播所有 FAILED 的通知
+	 */
+	public int replayFailed() {
+		Integer updated = transactionTemplate.execute(status -> repository.replayFailed());
+		sweep();
+		return updated == null ? 0 : updated;
+	}
+
+	public List<PaymentNotification> findByStatus(String status, int limit) {
+		return repository.findByStatusOrderByIdDesc(status, PageRequest.of(0, Math.max(1, Math.min(limit, 500))));
+	}
+
+	public int pendingCount() {
+		return queue.size();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void recoverPending() {
+		sweep();
+	}
+
+	/**
+	 * 把資料表中待處理的通知排回佇列（重啟、佇列已滿、重試）
+	 */
+	@Scheduled(initialDelayString = "${payment.inbox.sweep-interval-ms:30000}",
+			fixedDelayString = "${payment.inbox.sweep-interval-ms:30000}")
+	public void sweep() {
+		List<Long> ids = repository.findIdsByStatus(PaymentNotification.RECEIVED, PageRequest.of(0, sweepBatch));
+		ids.forEach(this::enqueue);
+	}
+
+	private void enqueue(Long id) {
+		if (queued.add(id) && !queue.offer(id)) {
+			// 佇列已滿，留在資料表等排程補回
+			queued.remove(id);
+		}
+	}
+
+	private void runWorker() {
+		List<Long> batch = new ArrayList<>(batchSize);
+		while (running) {
+			try {
+				Long first = queue.poll(1, TimeUnit.SECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+			} catch (InterruptedException e) {
+				// 關閉中
+				continue;
+			}
+			try {
+				process(batch);
+			} catch (RuntimeException e) {
+				// 資料庫暫時無法連線等，通知仍是 RECEIVED，等排程重試
+				log.warn("處理付款通知失敗，{} 筆等待重試: {}", batch.size(), e.getMessage());
+			} finally {
+				queued.removeAll(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * 一次載入整批通知，逐筆在各自的交易內套用，一筆失敗不影響其他筆
+	 */
+	private void process(List<Long> ids) {
+		long now = System.currentTimeMillis();
+		for (PaymentNotification notification : repository.findAllById(ids)) {
+			if (!PaymentNotification.RECEIVED.equals(notification.getStatus())) {
+				continue;
+			}
+			if (notification.getAttempts() == 0) {
+				queueTimer.record(Math.max(0, now - notification.getReceivedAt().getTime()), TimeUnit.MILLISECONDS);
+			}
+			long startedAt = System.nanoTime();
+			try {
+				transactionTemplate.executeWithoutResult(status -> apply(notification));
+			} catch (RuntimeException e) {
+				log.warn("付款通知 {} 套用失敗（第 {} 次）: {}", notification.getId(), notification.getAttempts() + 1,
+						e.getMessage());
+				String error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+				if (error.length() > MAX_ERROR_LENGTH) {
+					error = error.substring(0, MAX_ERROR_LENGTH);
+				}
+				String message = error;
+				transactionTemplate
+						.executeWithoutResult(status -> repository.recordFailure(notification.getId(), message, maxAttempts));
+			} finally {
+				applyTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	/**
+	 * 套用一筆通知並標記完成，只在狀態仍是 RECEIVED 時生效，重複處理不會有副作用
+	 */
+	private void apply(PaymentNotification notification) {
+		Long id = notification.getId();
+		Date now = new Date();
+		if (notification.getOrderId() == null) {
+			repository.complete(id, PaymentNotification.FAILED, "無法由 MerchantTradeNo 找到訂單", now);
+			return;
+		}
+		if (!"1".equals(notification.getRtnCode())) {
+			repository.complete(id, PaymentNotification.IGNORED, "綠界回傳付款失敗 RtnCode=" + notification.getRtnCode(),
+					now);
+			return;
+		}
+		// 訂單列在 markPaid 中被鎖住，同一訂單的通知會依序套用
+		boolean changed = transitions.markPaid(notification.getOrderId());
+		repository.complete(id, changed ? PaymentNotification.PROCESSED : PaymentNotification.IGNORED,
+				changed ? null : "訂單狀態非未付款", now);
+	}
+
+	/**
+	 * 先找建立付款表單時記下 MerchantTradeNo 的 payment，找不到（舊表單、訂單號已被新表單覆蓋）才從訂單號解析
+	 */
+	private Integer resolveOrderId(String merchantTradeNo) {
+		Optional<Payment> payment = paymentRepository.findFirstByMerchantTradeNoOrderByPaymentIdDesc(merchantTradeNo);
+		if (payment.isPresent() && payment.get().getOrder() != null) {
+			return payment.get().getOrder().getOrderId();
+		}
+		return MerchantTradeNo.parseOrderId(merchantTradeNo);
+	}
+
+	private static BigDecimal parseAmount(String tradeAmt) {
+		if (tradeAmt == null || tradeAmt.isBlank()) {
+			return null;
+		}
+		try {
+			return new BigDecimal(tradeAmt.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private String toJson(Map<String, String> params) {
+		try {
+			return objectMapper.writeValueAsString(new TreeMap<>(params));
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException("付款通知序列化失敗", e);
+		}
+	}
+}
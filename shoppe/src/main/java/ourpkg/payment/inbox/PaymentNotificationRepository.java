@@ -0,0 +1,54 @@
+package ourpkg.payment.inbox;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface PaymentNotificationRepository extends JpaRepository<PaymentNotification, Long> {
+
+	Optional<PaymentNotification> findByMerchantTradeNoAndTradeNo(String merchantTradeNo, String tradeNo);
+
+	List<PaymentNotification> findByStatusOrderByIdDesc(String status, Pageable pageable);
+
+	@Query("SELECT n.id FROM PaymentNotification n WHERE n.status = :status ORDER BY n.id")
+	List<Long> findIdsByStatus(@Param("status") String status, Pageable pageable);
+
+	/**
+	 * 認領一筆待處理的通知，回傳 0 代表已被其他執行緒處理
+	 *
+	 * 與套用訂單狀態在同一個交易內，套用失敗時一起回滾回 RECEIVED。
+	 */
+	@Modifying
+	@Query("UPDATE PaymentNotification n SET n.status = :status, n.processedAt = :now, n.lastError = :note "
+			+ "WHERE n.id = :id AND n.status = 'RECEIVED'")
+	int complete(@Param("id") Long id, @Param("status") String status, @Param("note") String note,
+			@Param("now") Date now);
+
+	/**
+	 * 記錄一次失敗，用完重試次數就改為 FAILED
+	 */
+	@Modifying
+	@Query("UPDATE PaymentNotification n SET n.attempts = n.attempts + 1, n.lastError = :error, "
+			+ "n.status = CASE WHEN n.attempts + 1 >= :maxAttempts THEN 'FAILED' ELSE 'RECEIVED' END "
+			+ "WHERE n.id = :id AND n.status = 'RECEIVED'")
+	int recordFailure(@Param("id") Long id, @Param("error") String error, @Param("maxAttempts") int maxAttempts);
+
+	/**
+	 * 重播：改回 RECEIVED 並清除重試次數
+	 */
+	@Modifying
+	@Query("UPDATE PaymentNotification n SET n.status = 'RECEIVED', n.attempts = 0, n.lastError = NULL, "
+			+ "n.processedAt = NULL WHERE n.id = :id AND n.status <> 'RECEIVED'")
+	int replay(@Param("id") Long id);
+
+	@Modifying
+	@Query("UPDATE PaymentNotification n SET n.status = 'RECEIVED', n.attempts = 0, n.lastError = NULL, "
+			+ "n.processedAt = NULL WHERE n.status = 'FAILED'")
+	int replayFailed();
+}
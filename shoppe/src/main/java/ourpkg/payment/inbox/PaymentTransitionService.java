@@ -0,0 +1,105 @@
+package ourpkg.payment.inbox;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import ourpkg.order.Order;
+import ourpkg.order.OrderChangedEvent;
+import ourpkg.order.OrderRepository;
+import ourpkg.order.OrderStatusCorrespond;
+import ourpkg.order.OrderStatusHistory;
+import ourpkg.order.OrderStatusHistoryRepository;
+import ourpkg.payment.Payment;
+import ourpkg.payment.PaymentMethod;
+import ourpkg.payment.PaymentRepository;
+import ourpkg.payment.PaymentStatus;
+import ourpkg.referencedata.ReferenceDataRegistry;
+import ourpkg.sku.inventory.StockReservationService;
+
+/**
+ * 綠界付款結果套用到訂單
+ *
+ * 重複套用不會有副作用：訂單已非未付款時直接回傳 false。
+ */
+@Service
+public class PaymentTransitionService {
+
+	private static final Logger logger = LoggerFactory.getLogger(PaymentTransitionService.class);
+
+	private static final int UNPAID_STATUS_ID = 1; // 未付款
+
+	private static final int PAID_STATUS_ID = 2; // 已付款
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private OrderStatusHistoryRepository orderStatusHistoryRepository;
+
+	@Autowired
+	private PaymentRepository paymentRepository;
+
+	@Autowired
+	private ReferenceDataRegistry referenceData;
+
+	@Autowired
+	private StockReservationService stockReservationService;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	/**
+	 * 把未付款訂單改為已付款，並更新付款狀態與付款方式
+	 *
+	 * @return 是否有變更；訂單已付款、已取消等情況回傳 false
+	 * @throws IllegalStateException 找不到訂單或狀態對照
+	 */
+	@Transactional
+	public boolean markPaid(Integer orderId) {
+		Order order = orderRepository.findByIdForUpdate(orderId)
+				.orElseThrow(() -> new IllegalStateException("找不到訂單：" + orderId));
+
+		// 1️⃣ 檢查狀態是否為未付款
+		if (order.getOrderStatusCorrespond().getId() != UNPAID_STATUS_ID) {
+			logger.warn("⚠️ 訂單狀態非未付款：orderId={}, currentStatus={}", orderId,
+					order.getOrderStatusCorrespond().getId());
+			return false;
+		}
+
+		// 2️⃣ 更新訂單狀態為已付款
+		OrderStatusCorrespond paidStatus = referenceData.findOrderStatus(PAID_STATUS_ID)
+				.orElseThrow(() -> new IllegalStateException("❌ 找不到『已付款』狀態記錄"));
+		order.setOrderStatusCorrespond(paidStatus);
+		orderRepository.save(order);
+		stockReservationService.confirm(orderId);
+
+		// 3️⃣ 寫入狀態歷史紀錄
+		OrderStatusHistory history = new OrderStatusHistory();
+		history.setOrder(order);
+		history.setOrderStatusCorrespond(paidStatus);
+		orderStatusHistoryRepository.save(history);
+
+		// 4️⃣ 更新付款狀態與付款方式
+		List<Payment> payments = paymentRepository.findByOrderOrderId(orderId);
+		if (!payments.isEmpty()) {
+			Payment payment = payments.get(0);
+			PaymentStatus paymentStatus = referenceData.paymentStatusOrCreate("已付款");
+			PaymentMethod method = referenceData.paymentMethodOrCreate("CREDIT");
+			payment.setPaymentStatus(paymentStatus);
+			payment.setPaymentMethod(method);
+			paymentRepository.save(payment);
+		} else {
+			logger.warn("⚠️ 找不到付款紀錄，無法更新付款狀態與方式：orderId={}", orderId);
+		}
+
+		eventPublisher.publishEvent(new OrderChangedEvent(order, order.getOrderItem()));
+		logger.info("✅ 訂單 {} 已更新為已付款", orderId);
+		return true;
+	}
+}
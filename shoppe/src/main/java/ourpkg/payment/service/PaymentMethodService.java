@@ -14,6 +14,7 @@ import ourpkg.payment.dto.PaymentMethodUpdateDTO;
 import ourpkg.payment.mapper.PaymentMethodCreateMapper;
 import ourpkg.payment.mapper.PaymentMethodResMapper;
 import ourpkg.payment.mapper.PaymentMethodUpdateMapper;
+import ourpkg.referencedata.ReferenceDataRegistry;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +25,7 @@ public class PaymentMethodService {
 	private final PaymentMethodCreateMapper createMapper;
 	private final PaymentMethodUpdateMapper updateMapper;
 	private final PaymentMethodResMapper resMapper;
+	private final ReferenceDataRegistry referenceData; // 異動後重新載入對照表快取
 	
 	/** 查詢所有支付方式（無條件） */
 	public List<PaymentMethodResDTO> getAll() {
@@ -38,7 +40,9 @@ public class PaymentMethodService {
 	/** 新增支付方式 */
 	public PaymentMethodResDTO create(PaymentMethodCreateDTO dto) {
 		PaymentMethod entity = createMapper.toEntity(dto);
-		return resMapper.toDto(repo.save(entity));
+		PaymentMethodResDTO saved = resMapper.toDto(repo.save(entity));
+		referenceData.reload();
+		return saved;
 	}
 
 	/** 更新支付方式 */
@@ -46,7 +50,9 @@ public class PaymentMethodService {
 		PaymentMethod entity = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("該支付方式 ID 不存在"));
 
 		entity = updateMapper.toEntity(entity, dto);
-		return resMapper.toDto(repo.save(entity));
+		PaymentMethodResDTO saved = resMapper.toDto(repo.save(entity));
+		referenceData.reload();
+		return saved;
 	}
 
 	/** 刪除支付方式（需先檢查該支付方式 是否存在於 支付）*/
@@ -58,5 +64,6 @@ public class PaymentMethodService {
 		}
 
 		repo.delete(entity);
+		referenceData.reload();
 	}
 }
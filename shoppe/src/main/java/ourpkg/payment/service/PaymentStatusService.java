@@ -14,6 +14,7 @@ import ourpkg.payment.dto.PaymentStatusUpdateDTO;
 import ourpkg.payment.mapper.PaymentStatusCreateMapper;
 import ourpkg.payment.mapper.PaymentStatusResMapper;
 import ourpkg.payment.mapper.PaymentStatusUpdateMapper;
+import ourpkg.referencedata.ReferenceDataRegistry;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +25,7 @@ public class PaymentStatusService {
 	private final PaymentStatusCreateMapper createMapper;
 	private final PaymentStatusUpdateMapper updateMapper;
 	private final PaymentStatusResMapper resMapper;
+	private final ReferenceDataRegistry referenceData; // 異動後重新載入對照表快取
 	
 	/** 查詢所有支付狀態（無條件） */
 	public List<PaymentStatusResDTO> getAll() {
@@ -38,7 +40,9 @@ public class PaymentStatusService {
 	/** 新增支付狀態 */
 	public PaymentStatusResDTO create(PaymentStatusCreateDTO dto) {
 		PaymentStatus entity = createMapper.toEntity(dto);
-		return resMapper.toDto(repo.save(entity));
+		PaymentStatusResDTO saved = resMapper.toDto(repo.save(entity));
+		referenceData.reload();
+		return saved;
 	}
 
 	/** 更新支付狀態 */
@@ -46,7 +50,9 @@ public class PaymentStatusService {
 		PaymentStatus entity = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("該支付狀態 ID 不存在"));
 
 		entity = updateMapper.toEntity(entity, dto);
-		return resMapper.toDto(repo.save(entity));
+		PaymentStatusResDTO saved = resMapper.toDto(repo.save(entity));
+		referenceData.reload();
+		return saved;
 	}
 
 	/** 刪除支付狀態（需先檢查該支付狀態 是否存在於 支付）*/
@@ -58,5 +64,6 @@ public class PaymentStatusService {
 		}
 
 		repo.delete(entity);
+		referenceData.reload();
 	}
 }
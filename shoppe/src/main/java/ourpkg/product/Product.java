@@ -1,5 +1,6 @@
 package ourpkg.product;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -13,6 +14,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
@@ -35,7 +37,7 @@ import ourpkg.sku.Sku;
 import ourpkg.user_role_permission.user.User;
 
 @Entity
-@Table(name = "[Product]")
+@Table(name = "[Product]", indexes = @Index(name = "ix_product_price_range", columnList = "min_price, max_price"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -95,6 +97,13 @@ public class Product {
 	@Column(name = "[is_deleted]")
 	private Boolean isDeleted = false; // 標記刪除，預設0
 
+	// 未刪除 SKU 的最低/最高價格，由 ProductRepository.refreshPriceRange 維護，JPA 不寫入
+	@Column(name = "[min_price]", insertable = false, updatable = false)
+	private BigDecimal minPrice;
+
+	@Column(name = "[max_price]", insertable = false, updatable = false)
+	private BigDecimal maxPrice;
+
 	public String getName() {
 		return this.productName; // 返回productName屬性
 	}
@@ -1,6 +1,7 @@
 package ourpkg.product;
 
 import java.util.List;
+import java.util.Collection;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -57,4 +58,23 @@ public interface ProductImageRepository extends JpaRepository<ProductImage, Inte
 	@Query("UPDATE ProductImage pi SET pi.isPrimary = false WHERE pi.product.productId = :productId")
 	void resetAllPrimaryImages(@Param("productId") Integer productId);
 
+	/**
+	 * 批次查詢多個商品的圖片欄位，依商品與顯示順序排序
+	 *
+	 * 欄位順序：productId, imageId, imagePath, isPrimary, displayOrder
+	 */
+	@Query("SELECT pi.product.productId, pi.imageId, pi.imagePath, pi.isPrimary, pi.displayOrder "
+			+ "FROM ProductImage pi WHERE pi.product.productId IN :productIds "
+			+ "ORDER BY pi.product.productId, pi.displayOrder, pi.imageId")
+	List<Object[]> findImageRowsByProductIds(@Param("productIds") Collection<Integer> productIds);
+
+	/**
+	 * 批次查詢多個商品的封面圖片路徑，每個商品的第一筆為主圖（沒有主圖則為排序最小的圖片）
+	 *
+	 * 欄位順序：productId, imagePath
+	 */
+	@Query("SELECT pi.product.productId, pi.imagePath FROM ProductImage pi WHERE pi.product.productId IN :productIds "
+			+ "ORDER BY pi.product.productId, pi.isPrimary DESC, pi.displayOrder")
+	List<Object[]> findCoverImageRowsByProductIds(@Param("productIds") Collection<Integer> productIds);
+
 }
@@ -1,6 +1,7 @@
 package ourpkg.product;
 
 import java.util.List;
+import java.util.Collection;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
@@ -8,8 +9,10 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import ourpkg.shop.Shop;
 
@@ -121,4 +124,38 @@ public interface ProductRepository extends JpaRepository<Product, Integer>, JpaS
 	    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.skuList LEFT JOIN FETCH p.productImages WHERE p.shop.shopId = :shopId")
 	    List<Product> findProductsWithDetailsByShopId(@Param("shopId") Integer shopId);
 
+	/**
+	 * 重新計算商品的最低/最高價格（SKU 新增、修改、刪除後呼叫）
+	 */
+	@Modifying(flushAutomatically = true)
+	@Transactional
+	@Query(value = "UPDATE [Product] SET "
+			+ "min_price = (SELECT MIN(s.price) FROM [SKU] s WHERE s.product_id = :productId AND s.is_deleted = 0), "
+			+ "max_price = (SELECT MAX(s.price) FROM [SKU] s WHERE s.product_id = :productId AND s.is_deleted = 0) "
+			+ "WHERE product_id = :productId", nativeQuery = true)
+	int refreshPriceRange(@Param("productId") Integer productId);
+
+	/**
+	 * 補算尚未有價格區間的商品（既有資料、直接以 SQL 新增的 SKU）
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "UPDATE p SET "
+			+ "min_price = (SELECT MIN(s.price) FROM [SKU] s WHERE s.product_id = p.product_id AND s.is_deleted = 0), "
+			+ "max_price = (SELECT MAX(s.price) FROM [SKU] s WHERE s.product_id = p.product_id AND s.is_deleted = 0) "
+			+ "FROM [Product] p WHERE p.min_price IS NULL "
+			+ "AND EXISTS (SELECT 1 FROM [SKU] s WHERE s.product_id = p.product_id AND s.is_deleted = 0)", nativeQuery = true)
+	int fillMissingPriceRanges();
+
+	/**
+	 * 批次查詢商品完整資訊用的基本欄位（商品、分類、店鋪），只取純量欄位，不會觸發關聯的額外查詢
+	 *
+	 * 欄位順序：productId, productName, description, active, createdAt, updatedAt,
+	 * category1Id, category1Name, category2Id, category2Name, shopId, shopName, shopDescription, shopIsActive
+	 */
+	@Query("SELECT p.productId, p.productName, p.description, p.active, p.createdAt, p.updatedAt, "
+			+ "c1.id, c1.name, c2.id, c2.name, s.shopId, s.shopName, s.description, s.isActive "
+			+ "FROM Product p LEFT JOIN p.category1 c1 LEFT JOIN p.category2 c2 LEFT JOIN p.shop s "
+			+ "WHERE p.productId IN :productIds AND p.isDeleted = false")
+	List<Object[]> findCompleteInfoRows(@Param("productIds") Collection<Integer> productIds);
 }
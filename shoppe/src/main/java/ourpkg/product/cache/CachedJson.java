@@ -0,0 +1,59 @@
+package ourpkg.product.cache;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+/**
+ * 快取中的回應內容：載入時序列化一次的 JSON，之後不可變，所有請求共用同一個實例
+ *
+ * 以 {@link JsonValue} 原樣寫出，命中時不複製、不重新序列化；型別參數標示內容對應的 DTO。
+ * 需要修改內容時用 {@link #read} 取得獨立的 DTO。
+ */
+public final class CachedJson<T> {
+
+	private final String json;
+
+	private final Class<T> type;
+
+	private final int weight;
+
+	private CachedJson(String json, Class<T> type, int weight) {
+		this.json = json;
+		this.type = type;
+		this.weight = weight;
+	}
+
+	static <T> CachedJson<T> of(ObjectMapper objectMapper, T value, Class<T> type, int weight) {
+		try {
+			return new CachedJson<>(objectMapper.writeValueAsString(value), type, weight);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("無法序列化 " + type.getSimpleName(), e);
+		}
+	}
+
+	@JsonValue
+	public RawValue value() {
+		return new RawValue(json);
+	}
+
+	public String json() {
+		return json;
+	}
+
+	/**
+	 * 反序列化成新的 DTO（每次都是獨立的物件）
+	 */
+	public T read(ObjectMapper objectMapper) {
+		try {
+			return objectMapper.readValue(json, type);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("無法反序列化 " + type.getSimpleName(), e);
+		}
+	}
+
+	int weight() {
+		return weight;
+	}
+}
@@ -0,0 +1,106 @@
+package ourpkg.product.cache;
+
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import ourpkg.product.search.ProductChangedEvent;
+import ourpkg.product.version2.complete_query.ProductCompleteResponseDTO4;
+import ourpkg.product.version2.dto.ProductDetailDTO;
+
+/**
+ * 商品詳情快取
+ *
+ * 快取組裝完成的商品詳情（商品頁 getProductActiveDetail 與完整查詢 getCompleteProduct），
+ * 以商品ID為鍵，容量以權重計算（1 + SKU 數 + 圖片數）。商品、SKU、圖片、評價或審核狀態異動時
+ * 由 ProductChangedEvent 在交易提交後作廢；下單扣庫存不逐筆作廢，靠寫入後 30 秒過期更新庫存顯示
+ * （結帳時仍以資料庫庫存為準）。命中、未命中與淘汰次數透過 Actuator 的
+ * /actuator/metrics/product.detail.cache.* 查看。
+ *
+ * 作廢只在本機生效：事件不跨伺服器傳遞，其他節點上的同一商品最多在 expire-after-write-ms
+ * （預設 30 秒）內仍回傳舊內容。需要更即時時調低該設定，或改用共用快取。
+ *
+ * 快取存的是載入時序列化一次的 {@link CachedJson}，內容不可變，所有請求共用同一份，
+ * 命中時不複製也不重新序列化。
+ */
+@Component
+public class ProductDetailCache implements MeterBinder {
+
+	private final WTinyLfuCache<Integer, CachedJson<ProductDetailDTO>> detailCache;
+
+	private final WTinyLfuCache<Integer, CachedJson<ProductCompleteResponseDTO4>> completeCache;
+
+	private final ObjectMapper objectMapper;
+
+	public ProductDetailCache(@Value("${product.detail-cache.max-weight:20000}") long maxWeight,
+			@Value("${product.detail-cache.expire-after-write-ms:30000}") long expireAfterWriteMillis,
+			ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+		this.detailCache = new WTinyLfuCache<>(maxWeight, expireAfterWriteMillis, CachedJson::weight);
+		this.completeCache = new WTinyLfuCache<>(maxWeight, expireAfterWriteMillis, CachedJson::weight);
+	}
+
+	public CachedJson<ProductDetailDTO> getDetail(Integer productId, Function<Integer, ProductDetailDTO> loader) {
+		return detailCache.get(productId, id -> {
+			ProductDetailDTO dto = loader.apply(id);
+			return dto != null ? CachedJson.of(objectMapper, dto, ProductDetailDTO.class,
+					1 + (dto.getSkus() != null ? dto.getSkus().size() : 0)) : null;
+		});
+	}
+
+	public CachedJson<ProductCompleteResponseDTO4> getComplete(Integer productId,
+			Function<Integer, ProductCompleteResponseDTO4> loader) {
+		return completeCache.get(productId, id -> {
+			ProductCompleteResponseDTO4 dto = loader.apply(id);
+			return dto != null ? CachedJson.of(objectMapper, dto, ProductCompleteResponseDTO4.class,
+					1 + (dto.getSkus() != null ? dto.getSkus().size() : 0)
+							+ (dto.getImages() != null ? dto.getImages().size() : 0)) : null;
+		});
+	}
+
+	public void invalidate(Integer productId) {
+		detailCache.invalidate(productId);
+		completeCache.invalidate(productId);
+	}
+
+	public void invalidateAll() {
+		detailCache.invalidateAll();
+		completeCache.invalidateAll();
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onProductChanged(ProductChangedEvent event) {
+		if (event.getProductId() != null) {
+			invalidate(event.getProductId());
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		bind(registry, "detail", detailCache);
+		bind(registry, "complete", completeCache);
+	}
+
+	private static void bind(MeterRegistry registry, String name, WTinyLfuCache<?, ?> cache) {
+		FunctionCounter.builder("product.detail.cache.gets", cache, WTinyLfuCache::hitCount).tag("cache", name)
+				.tag("result", "hit").description("商品詳情快取命中次數").register(registry);
+		FunctionCounter.builder("product.detail.cache.gets", cache, WTinyLfuCache::missCount).tag("cache", name)
+				.tag("result", "miss").description("商品詳情快取未命中次數").register(registry);
+		FunctionCounter.builder("product.detail.cache.evictions", cache, WTinyLfuCache::evictionCount)
+				.tag("cache", name).description("因容量不足被淘汰的筆數").register(registry);
+		Gauge.builder("product.detail.cache.size", cache, WTinyLfuCache::size).tag("cache", name)
+				.description("目前快取筆數").register(registry);
+		Gauge.builder("product.detail.cache.weight", cache, WTinyLfuCache::weight).tag("cache", name)
+				.description("目前快取權重").register(registry);
+		Gauge.builder("product.detail.cache.max.weight", cache, WTinyLfuCache::maxWeight).tag("cache", name)
+				.description("快取權重上限").register(registry);
+	}
+}
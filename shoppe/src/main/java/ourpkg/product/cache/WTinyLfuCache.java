@@ -0,0 +1,461 @@
+package ourpkg.product.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * 依權重限制大小的記憶體快取，淘汰策略仿 W-TinyLFU
+ *
+ * 新資料先進入約佔 1% 的視窗區（LRU），被擠出視窗時要和主區（SLRU：試用區 + 保護區）最久沒用到的
+ * 資料比較近期存取頻率，頻率較高的留下。頻率用 4 個雜湊的 Count-Min Sketch 估算，累積一定次數後全部減半，
+ * 讓過去的熱門資料逐漸退場。這樣偶發的大量單次讀取（例如爬蟲掃過全部商品）不會把真正熱門的商品擠出去。
+ *
+ * 讀取不加鎖：資料放在 ConcurrentHashMap，命中時只把節點丟進分段的讀取緩衝區，緩衝區累積到一定數量
+ * 才由搶到鎖的執行緒一次補做頻率計數與 LRU 調整；緩衝區滿了直接丟棄這筆紀錄（只影響淘汰的精確度）。
+ * 串列、權重與頻率由同一把鎖保護；載入資料在鎖外進行，載入期間該鍵若被作廢，結果不會寫入快取。
+ * 可另外設定寫入後的存活時間，讓無法逐筆作廢的變動（例如下單扣庫存）最多只延遲這段時間。
+ */
+public class WTinyLfuCache<K, V> {
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	// 作廢計數的分段數，必須是 2 的次方
+	private static final int STAMP_STRIPES = 64;
+
+	// 讀取緩衝區的分段數與每段大小，都必須是 2 的次方
+	private static final int READ_BUFFER_STRIPES = 16;
+	private static final int READ_BUFFER_SIZE = 32;
+
+	// 單一分段累積到這個數量就嘗試整理
+	private static final int READ_BUFFER_DRAIN_THRESHOLD = 16;
+
+	private final long maxWeight;
+	private final long expireAfterWriteNanos;
+	private final long windowMaxWeight;
+	private final long protectedMaxWeight;
+	private final ToIntFunction<V> weigher;
+
+	private final Map<K, Node<K, V>> data = new ConcurrentHashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final ReadBuffer<K, V>[] readBuffers;
+	private final Node<K, V>[] heads;
+	private final long[] segmentWeights = new long[3];
+	private final FrequencySketch sketch;
+
+	// 每個分段被作廢的次數，用來判斷載入期間資料是否已過期
+	private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxWeight              權重上限
+	 * @param expireAfterWriteMillis 寫入後多久過期，0 表示不過期
+	 * @param weigher                計算每筆資料的權重（至少為 1）
+	 */
+	@SuppressWarnings("unchecked")
+	public WTinyLfuCache(long maxWeight, long expireAfterWriteMillis, ToIntFunction<V> weigher) {
+		if (maxWeight <= 0) {
+			throw new IllegalArgumentException("快取容量必須大於 0");
+		}
+		this.maxWeight = maxWeight;
+		this.expireAfterWriteNanos = expireAfterWriteMillis > 0 ? expireAfterWriteMillis * 1_000_000L : 0;
+		this.windowMaxWeight = Math.max(1, maxWeight / 100);
+		this.protectedMaxWeight = (maxWeight - windowMaxWeight) * 4 / 5;
+		this.weigher = weigher;
+		this.heads = new Node[] { Node.sentinel(), Node.sentinel(), Node.sentinel() };
+		this.sketch = new FrequencySketch(maxWeight);
+		this.readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+		for (int i = 0; i < READ_BUFFER_STRIPES; i++) {
+			readBuffers[i] = new ReadBuffer<>();
+		}
+	}
+
+	/**
+	 * 取得快取資料，沒有時呼叫 loader 載入後放入快取（loader 回傳 null 或丟出例外時不快取）
+	 */
+	public V get(K key, Function<K, V> loader) {
+		Node<K, V> node = data.get(key);
+		if (node != null && expireAfterWriteNanos > 0 && System.nanoTime() - node.writtenAt > expireAfterWriteNanos) {
+			removeExpired(node);
+			node = null;
+		}
+		if (node != null) {
+			hits.increment();
+			afterRead(node);
+			return node.value;
+		}
+		long stamp = stamps.get(stripe(key));
+		misses.increment();
+
+		V value = loader.apply(key);
+		if (value != null) {
+			lock.lock();
+			try {
+				// 載入期間被作廢就不放進快取，避免存入舊資料
+				if (stamps.get(stripe(key)) == stamp) {
+					drainReadBuffers();
+					sketch.increment(key.hashCode());
+					put(key, value);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * 移除指定鍵的資料，並讓目前正在載入的舊資料不會寫入快取
+	 */
+	public void invalidate(K key) {
+		lock.lock();
+		try {
+			stamps.incrementAndGet(stripe(key));
+			Node<K, V> node = data.remove(key);
+			if (node != null) {
+				unlink(node);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void invalidateAll() {
+		lock.lock();
+		try {
+			for (int i = 0; i < STAMP_STRIPES; i++) {
+				stamps.incrementAndGet(i);
+			}
+			data.clear();
+			for (int i = 0; i < heads.length; i++) {
+				heads[i].prev = heads[i];
+				heads[i].next = heads[i];
+				segmentWeights[i] = 0;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		return data.size();
+	}
+
+	public long weight() {
+		lock.lock();
+		try {
+			return totalWeight();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long maxWeight() {
+		return maxWeight;
+	}
+
+	public long hitCount() {
+		return hits.sum();
+	}
+
+	public long missCount() {
+		return misses.sum();
+	}
+
+	public long evictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * 命中後記錄到讀取緩衝區，累積夠多時順便整理；搶不到鎖就留給下一個執行緒
+	 */
+	private void afterRead(Node<K, V> node) {
+		ReadBuffer<K, V> buffer = readBuffers[System.identityHashCode(Thread.currentThread()) & (READ_BUFFER_STRIPES - 1)];
+		if (buffer.offer(node) >= READ_BUFFER_DRAIN_THRESHOLD && lock.tryLock()) {
+			try {
+				drainReadBuffers();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void removeExpired(Node<K, V> node) {
+		lock.lock();
+		try {
+			if (data.remove(node.key, node)) {
+				unlink(node);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 補做緩衝區內命中紀錄的頻率計數與 LRU 調整，已被移除的節點略過（需持有鎖）
+	 */
+	private void drainReadBuffers() {
+		for (ReadBuffer<K, V> buffer : readBuffers) {
+			buffer.drainTo(node -> {
+				if (data.get(node.key) == node) {
+					sketch.increment(node.key.hashCode());
+					onHit(node);
+				}
+			});
+		}
+	}
+
+	private long totalWeight() {
+		return segmentWeights[WINDOW] + segmentWeights[PROBATION] + segmentWeights[PROTECTED];
+	}
+
+	private void put(K key, V value) {
+		int weight = Math.max(1, weigher.applyAsInt(value));
+		if (weight > maxWeight) {
+			return;
+		}
+		Node<K, V> old = data.remove(key);
+		if (old != null) {
+			unlink(old);
+		}
+		Node<K, V> node = new Node<>(key, value, weight);
+		data.put(key, node);
+		link(node, WINDOW);
+		evictFromWindow();
+	}
+
+	private void onHit(Node<K, V> node) {
+		if (node.segment == PROBATION) {
+			// 試用區再次被讀到就升到保護區，保護區滿了把最舊的降回試用區
+			unlink(node);
+			link(node, PROTECTED);
+			while (segmentWeights[PROTECTED] > protectedMaxWeight) {
+				Node<K, V> demoted = heads[PROTECTED].next;
+				unlink(demoted);
+				link(demoted, PROBATION);
+			}
+		} else {
+			int segment = node.segment;
+			unlink(node);
+			link(node, segment);
+		}
+	}
+
+	/**
+	 * 視窗區超出容量時，把最舊的資料移到主區當候選者，主區超出容量時由頻率決定淘汰誰
+	 */
+	private void evictFromWindow() {
+		while (segmentWeights[WINDOW] > windowMaxWeight) {
+			Node<K, V> candidate = heads[WINDOW].next;
+			unlink(candidate);
+			link(candidate, PROBATION);
+			evictFromMain(candidate);
+		}
+		// 視窗區本身夠大但總量仍超出（例如單筆權重很大）
+		while (totalWeight() > maxWeight) {
+			Node<K, V> victim = heads[PROBATION].next != heads[PROBATION] ? heads[PROBATION].next
+					: heads[PROTECTED].next != heads[PROTECTED] ? heads[PROTECTED].next : heads[WINDOW].next;
+			evict(victim);
+		}
+	}
+
+	private void evictFromMain(Node<K, V> candidate) {
+		while (totalWeight() > maxWeight) {
+			Node<K, V> victim = heads[PROBATION].next;
+			if (victim == candidate || victim == heads[PROBATION]) {
+				victim = heads[PROTECTED].next;
+				if (victim == heads[PROTECTED]) {
+					evict(candidate);
+					return;
+				}
+			}
+			if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+				evict(victim);
+			} else {
+				evict(candidate);
+				return;
+			}
+		}
+	}
+
+	private void evict(Node<K, V> node) {
+		data.remove(node.key);
+		unlink(node);
+		evictions.increment();
+	}
+
+	private void link(Node<K, V> node, int segment) {
+		Node<K, V> head = heads[segment];
+		node.segment = segment;
+		node.prev = head.prev;
+		node.next = head;
+		head.prev.next = node;
+		head.prev = node;
+		segmentWeights[segment] += node.weight;
+	}
+
+	private void unlink(Node<K, V> node) {
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = null;
+		node.next = null;
+		segmentWeights[node.segment] -= node.weight;
+	}
+
+	private static int stripe(Object key) {
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & (STAMP_STRIPES - 1);
+	}
+
+	/**
+	 * 雙向環狀串列節點，每個區段的 head 是哨兵，head.next 是最久沒用到的資料
+	 */
+	private static final class Node<K, V> {
+		private final K key;
+		private final V value;
+		private final int weight;
+		private final long writtenAt = System.nanoTime();
+		private int segment;
+		private Node<K, V> prev;
+		private Node<K, V> next;
+
+		private Node(K key, V value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+
+		private static <K, V> Node<K, V> sentinel() {
+			Node<K, V> node = new Node<>(null, null, 0);
+			node.prev = node;
+			node.next = node;
+			return node;
+		}
+	}
+
+	/**
+	 * 多個執行緒寫入、持有鎖的執行緒讀出的環狀緩衝區，寫滿或搶寫失敗就丟棄
+	 */
+	private static final class ReadBuffer<K, V> {
+
+		private final AtomicReferenceArray<Node<K, V>> slots = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+		private final AtomicLong writeCount = new AtomicLong();
+		private volatile long readCount;
+
+		/**
+		 * @return 寫入後尚未整理的筆數，沒寫入時回傳 0
+		 */
+		private int offer(Node<K, V> node) {
+			long head = readCount;
+			long tail = writeCount.get();
+			long pending = tail - head;
+			if (pending >= READ_BUFFER_SIZE) {
+				return READ_BUFFER_SIZE;
+			}
+			if (!writeCount.compareAndSet(tail, tail + 1)) {
+				return 0;
+			}
+			slots.lazySet((int) tail & (READ_BUFFER_SIZE - 1), node);
+			return (int) pending + 1;
+		}
+
+		private void drainTo(Consumer<Node<K, V>> consumer) {
+			long head = readCount;
+			long tail = writeCount.get();
+			while (head < tail) {
+				int index = (int) head & (READ_BUFFER_SIZE - 1);
+				Node<K, V> node = slots.get(index);
+				if (node == null) {
+					// 寫入者已佔位但尚未放入，下次再處理
+					break;
+				}
+				slots.lazySet(index, null);
+				consumer.accept(node);
+				head++;
+			}
+			readCount = head;
+		}
+	}
+
+	/**
+	 * 4 位元計數器的 Count-Min Sketch，每個 long 存 16 個計數器，上限 15
+	 */
+	private static final class FrequencySketch {
+
+		private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+				0xcbf29ce484222325L };
+
+		private final long[] table;
+		private final int sampleSize;
+		private int additions;
+
+		// 每單位權重約 16 個計數器，計數器太少時冷門資料容易因碰撞被高估而擠掉熱門資料
+		private FrequencySketch(long maxWeight) {
+			int counters = (int) Math.min(1 << 24, Math.max(64, Long.highestOneBit(maxWeight * 16 - 1) << 1));
+			this.table = new long[counters / 16];
+			this.sampleSize = (int) Math.min(Integer.MAX_VALUE, maxWeight * 10);
+		}
+
+		private int frequency(int hash) {
+			int min = 15;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int index = index(hash, i);
+				min = Math.min(min, (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & 0xfL));
+			}
+			return min;
+		}
+
+		private void increment(int hash) {
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int index = index(hash, i);
+				int slot = index >>> 4;
+				int shift = (index & 15) << 2;
+				if (((table[slot] >>> shift) & 0xfL) < 15) {
+					table[slot] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++additions >= sampleSize) {
+				reset();
+			}
+		}
+
+		/**
+		 * 所有計數器減半，讓頻率反映近期的存取
+		 */
+		private void reset() {
+			for (int i = 0; i < table.length; i++) {
+				table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+			}
+			additions /= 2;
+		}
+
+		private int index(int hash, int i) {
+			long h = (spread(hash) + SEEDS[i]) * SEEDS[i];
+			h ^= h >>> 32;
+			return (int) h & (table.length * 16 - 1);
+		}
+
+		/**
+		 * 先打散 hashCode，連續整數鍵（商品ID）才不會落在相關的計數器上
+		 */
+		private static int spread(int x) {
+			x = ((x >>> 16) ^ x) * 0x45d9f3b;
+			x = ((x >>> 16) ^ x) * 0x45d9f3b;
+			return (x >>> 16) ^ x;
+		}
+	}
+}
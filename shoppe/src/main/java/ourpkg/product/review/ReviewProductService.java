@@ -5,12 +5,14 @@ import java.util.Calendar;
 import java.util.Date;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import ourpkg.product.Product;
+import ourpkg.product.search.ProductChangedEvent;
 import ourpkg.user_role_permission.user.User;
 import ourpkg.user_role_permission.user.UserRepository;
 
@@ -23,6 +25,9 @@ public class ReviewProductService {
 	@Autowired
 	private UserRepository userRepository;
 
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
 
 	
     /**
@@ -44,6 +49,7 @@ public class ReviewProductService {
 
         // 儲存更新的商品
         productRepository.save(product);
+        eventPublisher.publishEvent(new ProductChangedEvent(productId));
         
         return product;
     }
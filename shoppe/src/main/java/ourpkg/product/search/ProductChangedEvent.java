@@ -0,0 +1,14 @@
+package ourpkg.product.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 商品或其 SKU、圖片、評價有異動（新增、修改、刪除、審核），交易提交後由搜尋索引重新載入該商品，
+ * 並作廢商品詳情快取
+ */
+@Getter
+@AllArgsConstructor
+public class ProductChangedEvent {
+	private final Integer productId;
+}
@@ -0,0 +1,81 @@
+package ourpkg.product.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 索引中的一筆商品：篩選用的欄位加上各欄位的詞頻
+ */
+final class ProductSearchDocument {
+
+	static final int NAME = 0;
+	static final int DESCRIPTION = 1;
+	static final int CATEGORY = 2;
+	static final int SPEC = 3;
+	static final int FIELD_COUNT = 4;
+
+	final int productId;
+	final int shopId;
+	final int category1Id;
+	final int category2Id;
+	final boolean active;
+	final boolean reviewed;
+	final double[] prices; // 未刪除 SKU 的價格，已排序
+	final List<Map<String, Integer>> termFreqs; // 依欄位
+	final int[] lengths;
+
+	ProductSearchDocument(int productId, int shopId, int category1Id, int category2Id, boolean active,
+			boolean reviewed, double[] prices, List<Map<String, Integer>> termFreqs) {
+		this.productId = productId;
+		this.shopId = shopId;
+		this.category1Id = category1Id;
+		this.category2Id = category2Id;
+		this.active = active;
+		this.reviewed = reviewed;
+		this.prices = prices;
+		this.termFreqs = termFreqs;
+		this.lengths = new int[FIELD_COUNT];
+		for (int field = 0; field < FIELD_COUNT; field++) {
+			int length = 0;
+			for (int tf : termFreqs.get(field).values()) {
+				length += tf;
+			}
+			lengths[field] = length;
+		}
+	}
+
+	/**
+	 * 由原始文字建立文件，fieldTexts 依 NAME、DESCRIPTION、CATEGORY、SPEC 排列
+	 */
+	static ProductSearchDocument of(int productId, int shopId, int category1Id, int category2Id, boolean active,
+			boolean reviewed, double[] prices, String... fieldTexts) {
+		List<Map<String, Integer>> termFreqs = new ArrayList<>(FIELD_COUNT);
+		for (int field = 0; field < FIELD_COUNT; field++) {
+			Map<String, Integer> freqs = new HashMap<>();
+			String text = field < fieldTexts.length ? fieldTexts[field] : null;
+			for (String token : SearchTokenizer.tokenizeForIndex(text)) {
+				freqs.merge(token, 1, Integer::sum);
+			}
+			termFreqs.add(freqs);
+		}
+		double[] sorted = prices.clone();
+		Arrays.sort(sorted);
+		return new ProductSearchDocument(productId, shopId, category1Id, category2Id, active, reviewed, sorted,
+				termFreqs);
+	}
+
+	boolean hasPriceBetween(double min, double max) {
+		int i = Arrays.binarySearch(prices, min);
+		if (i < 0) {
+			i = -i - 1;
+		}
+		return i < prices.length && prices[i] <= max;
+	}
+
+	double lowestPrice() {
+		return prices.length > 0 ? prices[0] : Double.NaN;
+	}
+}
@@ -0,0 +1,19 @@
+package ourpkg.product.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 搜尋結果依店鋪、分類、價格區間的商品數
+ */
+@Getter
+@Setter
+public class ProductSearchFacetsDTO {
+	private Map<Integer, Long> shops = new LinkedHashMap<>();
+	private Map<Integer, Long> category1 = new LinkedHashMap<>();
+	private Map<Integer, Long> category2 = new LinkedHashMap<>();
+	private Map<String, Long> priceRanges = new LinkedHashMap<>(); // 依最低價格歸類，例如 "100-500"
+}
@@ -0,0 +1,17 @@
+package ourpkg.product.search;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 搜尋結果：當頁商品ID（依相關度排序）、總筆數與各維度統計
+ */
+@Getter
+@AllArgsConstructor
+public class ProductSearchHits {
+	private final List<Integer> productIds;
+	private final long total;
+	private final ProductSearchFacetsDTO facets; // 沒有要求統計時為 null
+}
@@ -0,0 +1,444 @@
+package ourpkg.product.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 商品倒排索引
+ *
+ * 每個欄位各自一份 詞 -> (商品ID -> 詞頻)，以 BM25 計分，名稱欄位權重最高。
+ * 多個查詢詞之間是 AND：每個詞都要出現在至少一個被查詢的欄位。最後一個英數字詞用前綴比對，
+ * 打到一半的字也查得到。讀寫以 ReadWriteLock 保護，查詢之間不互相阻塞。
+ */
+final class ProductSearchIndex {
+
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+	private static final double[] FIELD_WEIGHTS = { 3.0, 1.0, 1.5, 1.0 };
+	private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+	private static final double[] PRICE_BOUNDS = { 100, 500, 1000, 5000 };
+	private static final String[] PRICE_LABELS = { "0-100", "100-500", "500-1000", "1000-5000", "5000+" };
+
+	private static final int SEGMENT_MAGIC = 0x50534547; // "PSEG"
+	private static final int SEGMENT_VERSION = 1;
+
+	private final Map<Integer, ProductSearchDocument> docs = new HashMap<>();
+	private final List<TreeMap<String, Map<Integer, Integer>>> postings = new ArrayList<>();
+	private final long[] totalLengths = new long[ProductSearchDocument.FIELD_COUNT];
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	ProductSearchIndex() {
+		for (int field = 0; field < ProductSearchDocument.FIELD_COUNT; field++) {
+			postings.add(new TreeMap<>());
+		}
+	}
+
+	int size() {
+		lock.readLock().lock();
+		try {
+			return docs.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 新增或取代一筆商品
+	 */
+	void put(ProductSearchDocument doc) {
+		lock.writeLock().lock();
+		try {
+			removeInternal(doc.productId);
+			docs.put(doc.productId, doc);
+			for (int field = 0; field < ProductSearchDocument.FIELD_COUNT; field++) {
+				TreeMap<String, Map<Integer, Integer>> fieldPostings = postings.get(field);
+				for (Map.Entry<String, Integer> entry : doc.termFreqs.get(field).entrySet()) {
+					fieldPostings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(doc.productId,
+							entry.getValue());
+				}
+				totalLengths[field] += doc.lengths[field];
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	void remove(int productId) {
+		lock.writeLock().lock();
+		try {
+			removeInternal(productId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void removeInternal(int productId) {
+		ProductSearchDocument old = docs.remove(productId);
+		if (old == null) {
+			return;
+		}
+		for (int field = 0; field < ProductSearchDocument.FIELD_COUNT; field++) {
+			TreeMap<String, Map<Integer, Integer>> fieldPostings = postings.get(field);
+			for (String term : old.termFreqs.get(field).keySet()) {
+				Map<Integer, Integer> posting = fieldPostings.get(term);
+				if (posting != null) {
+					posting.remove(productId);
+					if (posting.isEmpty()) {
+						fieldPostings.remove(term);
+					}
+				}
+			}
+			totalLengths[field] -= old.lengths[field];
+		}
+	}
+
+	// 查詢 開始========================================================
+
+	/**
+	 * 一個查詢詞展開後在各欄位命中的 posting；商品只要命中其中之一就算符合這個詞
+	 */
+	private static final class TermGroup {
+		private final List<Integer> fields = new ArrayList<>();
+		private final List<Map<Integer, Integer>> lists = new ArrayList<>();
+		private int estimatedSize;
+
+		private boolean contains(int productId) {
+			for (Map<Integer, Integer> list : lists) {
+				if (list.containsKey(productId)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	ProductSearchHits search(ProductSearchQuery query, int page, int size, boolean withFacets) {
+		lock.readLock().lock();
+		try {
+			List<TermGroup> groups = new ArrayList<>();
+			boolean textMatchable = addGroups(groups, query.getKeyword(), null)
+					&& addGroups(groups, query.getNameKeyword(), ProductSearchDocument.NAME)
+					&& addGroups(groups, query.getDescKeyword(), ProductSearchDocument.DESCRIPTION);
+			if (!textMatchable) {
+				return new ProductSearchHits(new ArrayList<>(), 0, withFacets ? new ProductSearchFacetsDTO() : null);
+			}
+
+			// 從最短的 posting 開始，其他詞用 contains 檢查
+			Collection<Integer> candidates;
+			if (groups.isEmpty()) {
+				candidates = docs.keySet();
+			} else {
+				TermGroup smallest = groups.get(0);
+				for (TermGroup group : groups) {
+					if (group.estimatedSize < smallest.estimatedSize) {
+						smallest = group;
+					}
+				}
+				Set<Integer> ids = new HashSet<>();
+				for (Map<Integer, Integer> list : smallest.lists) {
+					ids.addAll(list.keySet());
+				}
+				candidates = ids;
+			}
+
+			double min = query.getMinPrice() != null ? query.getMinPrice().doubleValue() : Double.NEGATIVE_INFINITY;
+			double max = query.getMaxPrice() != null ? query.getMaxPrice().doubleValue() : Double.POSITIVE_INFINITY;
+
+			List<ProductSearchDocument> matched = new ArrayList<>();
+			List<Double> scores = new ArrayList<>();
+			outer: for (Integer productId : candidates) {
+				ProductSearchDocument doc = docs.get(productId);
+				if (doc == null || !matchesFilters(doc, query, min, max)) {
+					continue;
+				}
+				for (TermGroup group : groups) {
+					if (!group.contains(productId)) {
+						continue outer;
+					}
+				}
+				matched.add(doc);
+				scores.add(score(doc, groups));
+			}
+
+			Integer[] order = new Integer[matched.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> {
+				int byScore = Double.compare(scores.get(b), scores.get(a));
+				return byScore != 0 ? byScore : Integer.compare(matched.get(a).productId, matched.get(b).productId);
+			});
+
+			List<Integer> pageIds = new ArrayList<>();
+			long from = (long) page * size;
+			for (long i = from; i < order.length && i < from + size; i++) {
+				pageIds.add(matched.get(order[(int) i]).productId);
+			}
+
+			return new ProductSearchHits(pageIds, matched.size(), withFacets ? facets(matched) : null);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 把一段查詢文字展開成 TermGroup；有文字卻沒有任何詞命中索引時回傳 false（不可能有結果）
+	 */
+	private boolean addGroups(List<TermGroup> groups, String text, Integer onlyField) {
+		if (text == null || text.trim().isEmpty()) {
+			return true;
+		}
+		List<String> tokens = new ArrayList<>(new LinkedHashSet<>(SearchTokenizer.tokenizeForQuery(text)));
+		if (tokens.isEmpty()) {
+			return false;
+		}
+
+		for (int t = 0; t < tokens.size(); t++) {
+			String token = tokens.get(t);
+			boolean prefix = t == tokens.size() - 1 && SearchTokenizer.isWord(token);
+			TermGroup group = new TermGroup();
+
+			for (int field = 0; field < ProductSearchDocument.FIELD_COUNT; field++) {
+				if (onlyField != null && onlyField != field) {
+					continue;
+				}
+				TreeMap<String, Map<Integer, Integer>> fieldPostings = postings.get(field);
+				if (prefix) {
+					SortedMap<String, Map<Integer, Integer>> range = fieldPostings.subMap(token, token + Character.MAX_VALUE);
+					int expanded = 0;
+					for (Map.Entry<String, Map<Integer, Integer>> entry : range.entrySet()) {
+						if (expanded++ >= MAX_PREFIX_EXPANSIONS) {
+							break;
+						}
+						addToGroup(group, field, entry.getValue());
+					}
+				} else {
+					Map<Integer, Integer> list = fieldPostings.get(token);
+					if (list != null) {
+						addToGroup(group, field, list);
+					}
+				}
+			}
+
+			if (group.lists.isEmpty()) {
+				return false;
+			}
+			groups.add(group);
+		}
+		return true;
+	}
+
+	private static void addToGroup(TermGroup group, int field, Map<Integer, Integer> list) {
+		group.fields.add(field);
+		group.lists.add(list);
+		group.estimatedSize += list.size();
+	}
+
+	private static boolean matchesFilters(ProductSearchDocument doc, ProductSearchQuery query, double min, double max) {
+		if (query.isPublicOnly() && !(doc.active && doc.reviewed)) {
+			return false;
+		}
+		if (query.getShopId() != null && doc.shopId != query.getShopId()) {
+			return false;
+		}
+		if (query.getCategory1Id() != null && doc.category1Id != query.getCategory1Id()) {
+			return false;
+		}
+		if (query.getCategory2Id() != null && doc.category2Id != query.getCategory2Id()) {
+			return false;
+		}
+		return !query.hasPriceRange() || doc.hasPriceBetween(min, max);
+	}
+
+	private double score(ProductSearchDocument doc, List<TermGroup> groups) {
+		int docCount = docs.size();
+		double score = 0;
+		for (TermGroup group : groups) {
+			for (int i = 0; i < group.lists.size(); i++) {
+				Integer tf = group.lists.get(i).get(doc.productId);
+				if (tf == null) {
+					continue;
+				}
+				int field = group.fields.get(i);
+				int df = group.lists.get(i).size();
+				double idf = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+				double avgLength = docCount > 0 ? (double) totalLengths[field] / docCount : 1;
+				double norm = 1 - B + B * (avgLength > 0 ? doc.lengths[field] / avgLength : 1);
+				score += FIELD_WEIGHTS[field] * idf * (tf * (K1 + 1)) / (tf + K1 * norm);
+			}
+		}
+		return score;
+	}
+
+	private static ProductSearchFacetsDTO facets(List<ProductSearchDocument> matched) {
+		Map<Integer, Long> shops = new TreeMap<>();
+		Map<Integer, Long> category1 = new TreeMap<>();
+		Map<Integer, Long> category2 = new TreeMap<>();
+		long[] priceCounts = new long[PRICE_LABELS.length];
+
+		for (ProductSearchDocument doc : matched) {
+			shops.merge(doc.shopId, 1L, Long::sum);
+			category1.merge(doc.category1Id, 1L, Long::sum);
+			category2.merge(doc.category2Id, 1L, Long::sum);
+
+			double lowest = doc.lowestPrice();
+			if (!Double.isNaN(lowest)) {
+				int bucket = 0;
+				while (bucket < PRICE_BOUNDS.length && lowest >= PRICE_BOUNDS[bucket]) {
+					bucket++;
+				}
+				priceCounts[bucket]++;
+			}
+		}
+
+		ProductSearchFacetsDTO facets = new ProductSearchFacetsDTO();
+		facets.getShops().putAll(shops);
+		facets.getCategory1().putAll(category1);
+		facets.getCategory2().putAll(category2);
+		for (int i = 0; i < PRICE_LABELS.length; i++) {
+			facets.getPriceRanges().put(PRICE_LABELS[i], priceCounts[i]);
+		}
+		return facets;
+	}
+
+	// 查詢 結束========================================================
+	// 區段檔 開始========================================================
+
+	/**
+	 * 區段檔的標頭資訊
+	 */
+	static final class SegmentInfo {
+		final long createdAt;
+		final int maxSkuId;
+
+		SegmentInfo(long createdAt, int maxSkuId) {
+			this.createdAt = createdAt;
+			this.maxSkuId = maxSkuId;
+		}
+	}
+
+	/**
+	 * 寫出區段檔：先寫暫存檔再原子性地改名，結尾附 CRC32
+	 */
+	void writeSegment(Path file, SegmentInfo info) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		lock.readLock().lock();
+		try (OutputStream fileOut = Files.newOutputStream(tmp)) {
+			CRC32 crc = new CRC32();
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new CheckedOutputStream(fileOut, crc), 1 << 16));
+			out.writeInt(SEGMENT_MAGIC);
+			out.writeInt(SEGMENT_VERSION);
+			out.writeLong(info.createdAt);
+			out.writeInt(info.maxSkuId);
+			out.writeInt(docs.size());
+
+			for (ProductSearchDocument doc : docs.values()) {
+				out.writeInt(doc.productId);
+				out.writeInt(doc.shopId);
+				out.writeInt(doc.category1Id);
+				out.writeInt(doc.category2Id);
+				out.writeByte((doc.active ? 1 : 0) | (doc.reviewed ? 2 : 0));
+				out.writeInt(doc.prices.length);
+				for (double price : doc.prices) {
+					out.writeDouble(price);
+				}
+				for (Map<String, Integer> freqs : doc.termFreqs) {
+					out.writeInt(freqs.size());
+					for (Map.Entry<String, Integer> entry : freqs.entrySet()) {
+						byte[] bytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+						out.writeInt(bytes.length);
+						out.write(bytes);
+						out.writeInt(entry.getValue());
+					}
+				}
+			}
+			out.flush();
+			// CRC 本身不列入計算
+			new DataOutputStream(fileOut).writeLong(crc.getValue());
+		} finally {
+			lock.readLock().unlock();
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * 以記憶體映射讀入區段檔，格式或 CRC 不符時丟 IOException
+	 */
+	static SegmentInfo readSegment(Path file, ProductSearchIndex target) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize < 32) {
+				throw new IOException("區段檔太小: " + file);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+			ByteBuffer body = buffer.duplicate();
+			body.limit((int) fileSize - 8);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			if (crc.getValue() != buffer.getLong((int) fileSize - 8)) {
+				throw new IOException("區段檔 CRC 不符: " + file);
+			}
+
+			if (buffer.getInt() != SEGMENT_MAGIC || buffer.getInt() != SEGMENT_VERSION) {
+				throw new IOException("區段檔格式不符: " + file);
+			}
+			SegmentInfo info = new SegmentInfo(buffer.getLong(), buffer.getInt());
+			int docCount = buffer.getInt();
+
+			for (int d = 0; d < docCount; d++) {
+				int productId = buffer.getInt();
+				int shopId = buffer.getInt();
+				int category1Id = buffer.getInt();
+				int category2Id = buffer.getInt();
+				byte flags = buffer.get();
+				double[] prices = new double[buffer.getInt()];
+				for (int i = 0; i < prices.length; i++) {
+					prices[i] = buffer.getDouble();
+				}
+				List<Map<String, Integer>> termFreqs = new ArrayList<>(ProductSearchDocument.FIELD_COUNT);
+				for (int field = 0; field < ProductSearchDocument.FIELD_COUNT; field++) {
+					int termCount = buffer.getInt();
+					Map<String, Integer> freqs = new HashMap<>(termCount * 2);
+					for (int t = 0; t < termCount; t++) {
+						byte[] bytes = new byte[buffer.getInt()];
+						buffer.get(bytes);
+						freqs.put(new String(bytes, StandardCharsets.UTF_8), buffer.getInt());
+					}
+					termFreqs.add(freqs);
+				}
+				target.put(new ProductSearchDocument(productId, shopId, category1Id, category2Id, (flags & 1) != 0,
+						(flags & 2) != 0, prices, termFreqs));
+			}
+			return info;
+		}
+	}
+
+	// 區段檔 結束========================================================
+}
@@ -0,0 +1,37 @@
+package ourpkg.product.search;
+
+import java.math.BigDecimal;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 商品搜尋條件，未設定的條件不篩選
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProductSearchQuery {
+	private String keyword; // 比對名稱、描述、分類名稱、規格值
+	private String nameKeyword; // 只比對名稱
+	private String descKeyword; // 只比對描述
+	private Integer shopId;
+	private Integer category1Id;
+	private Integer category2Id;
+	private BigDecimal minPrice;
+	private BigDecimal maxPrice;
+	private boolean publicOnly; // 只要已上架且審核通過的商品
+
+	public boolean hasText() {
+		return !isBlank(keyword) || !isBlank(nameKeyword) || !isBlank(descKeyword);
+	}
+
+	public boolean hasPriceRange() {
+		return minPrice != null || maxPrice != null;
+	}
+
+	private static boolean isBlank(String text) {
+		return text == null || text.trim().isEmpty();
+	}
+}
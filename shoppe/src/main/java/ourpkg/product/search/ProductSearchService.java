@@ -0,0 +1,412 @@
+package ourpkg.product.search;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import jakarta.annotation.PreDestroy;
+import ourpkg.sku.spec.SpecPairs;
+
+/**
+ * 商品全文搜尋索引的維護與查詢
+ *
+ * 啟動時讀入最新的區段檔，再補上區段檔之後異動的商品；沒有區段檔才從資料庫完整重建（背景執行，
+ * 建好之前 isReady() 為 false，呼叫端應退回資料庫查詢）。商品異動由 ProductChangedEvent
+ * 在交易提交後通知，排程每秒批次重新載入。每晚完整重建一次，順便修正分類改名等沒有發事件的變動。
+ *
+ * 索引是每個節點各自一份，事件只會通知發生異動的節點；其他節點靠定期輪詢 Product 與 SKU 的
+ * updated_at 補上（預設 30 秒），直接以 SQL 刪除的資料要等每晚重建才會移除。
+ */
+@Service
+public class ProductSearchService {
+
+	private static final Logger log = LoggerFactory.getLogger(ProductSearchService.class);
+
+	private static final String SEGMENT_PREFIX = "products-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	// 區段檔時間往前推，避免與寫檔同時發生的異動被漏掉
+	private static final long CATCH_UP_MARGIN_MS = 60_000L;
+
+	// 在指定時間之後修改過的商品，以及修改過 SKU 的商品
+	private static final String CHANGED_SQL = "SELECT product_id FROM [Product] WHERE updated_at >= :since "
+			+ "UNION SELECT product_id FROM [SKU] WHERE updated_at >= :since";
+
+	private static final String PRODUCT_SQL = "SELECT p.product_id, p.shop_id, p.c1_id, p.c2_id, p.product_name, "
+			+ "p.description, p.active, p.review_status, p.is_deleted, c1.name AS c1_name, c2.name AS c2_name "
+			+ "FROM [Product] p LEFT JOIN [Category1] c1 ON c1.id = p.c1_id LEFT JOIN [Category2] c2 ON c2.id = p.c2_id ";
+
+	@Autowired
+	private NamedParameterJdbcTemplate jdbcTemplate;
+
+	@Value("${product.search.index-dir:data/search-index}")
+	private String indexDir;
+
+	@Value("${product.search.batch-size:500}")
+	private int batchSize;
+
+	private volatile ProductSearchIndex index = new ProductSearchIndex();
+	private volatile boolean ready = false;
+	private volatile boolean dirty = false;
+	private volatile boolean rebuilding = false;
+
+	// 上次向資料庫查詢異動的時間，其他節點的異動由此之後補上
+	private volatile long lastPolledAt;
+
+	// 等待重新載入的商品ID
+	private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+	// 重建期間異動的商品，重建完成後要再套用一次
+	private final Set<Integer> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * 搜尋商品
+	 *
+	 * @param page       頁碼 (從0開始)
+	 * @param size       每頁大小
+	 * @param withFacets 是否一併統計店鋪、分類、價格區間
+	 */
+	public ProductSearchHits search(ProductSearchQuery query, int page, int size, boolean withFacets) {
+		return index.search(query, page, size, withFacets);
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onProductChanged(ProductChangedEvent event) {
+		if (event.getProductId() == null) {
+			return;
+		}
+		pending.add(event.getProductId());
+		if (rebuilding) {
+			changedDuringRebuild.add(event.getProductId());
+		}
+	}
+
+	/**
+	 * 批次重新載入異動的商品
+	 */
+	@Scheduled(fixedDelayString = "${product.search.refresh-interval-ms:1000}")
+	public void applyPendingChanges() {
+		if (!ready || pending.isEmpty()) {
+			return;
+		}
+		List<Integer> ids = new ArrayList<>(pending);
+		pending.removeAll(ids);
+
+		try {
+			reindex(index, ids);
+		} catch (RuntimeException e) {
+			pending.addAll(ids); // 下次再試
+			log.warn("商品索引更新失敗，稍後重試: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * 補上其他節點造成的異動（本節點的異動已由事件處理，重複載入無妨）
+	 */
+	@Scheduled(fixedDelayString = "${product.search.poll-interval-ms:30000}")
+	public void pollChanges() {
+		if (!ready) {
+			return;
+		}
+		long polledAt = System.currentTimeMillis();
+		try {
+			pending.addAll(jdbcTemplate.queryForList(CHANGED_SQL,
+					new MapSqlParameterSource("since", new Timestamp(lastPolledAt - CATCH_UP_MARGIN_MS)), Integer.class));
+			lastPolledAt = polledAt;
+		} catch (RuntimeException e) {
+			log.warn("商品索引輪詢異動失敗，稍後重試: {}", e.getMessage());
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void initialize() {
+		Thread loader = new Thread(() -> {
+			try {
+				if (!loadLatestSegment()) {
+					rebuild();
+				}
+			} catch (RuntimeException e) {
+				log.error("商品搜尋索引初始化失敗，查詢將使用資料庫", e);
+			}
+		}, "product-search-init");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/**
+	 * 從資料庫完整重建索引，建好後整個換掉
+	 */
+	@Scheduled(cron = "${product.search.rebuild-cron:0 0 4 * * *}")
+	public synchronized void rebuild() {
+		long start = System.currentTimeMillis();
+		rebuilding = true;
+		changedDuringRebuild.clear();
+		try {
+			ProductSearchIndex fresh = new ProductSearchIndex();
+			int afterId = 0;
+			while (true) {
+				List<ProductRow> rows = jdbcTemplate.query(PRODUCT_SQL
+						+ "WHERE p.product_id > :afterId AND p.is_deleted = 0 ORDER BY p.product_id "
+						+ "OFFSET 0 ROWS FETCH NEXT :limit ROWS ONLY",
+						new MapSqlParameterSource("afterId", afterId).addValue("limit", batchSize),
+						(rs, rowNum) -> ProductRow.from(rs));
+				if (rows.isEmpty()) {
+					break;
+				}
+				for (ProductSearchDocument doc : toDocuments(rows)) {
+					fresh.put(doc);
+				}
+				afterId = rows.get(rows.size() - 1).productId;
+			}
+
+			index = fresh;
+			lastPolledAt = start;
+			ready = true;
+			dirty = true;
+			pending.addAll(changedDuringRebuild);
+			log.info("商品搜尋索引重建完成，商品 {} 筆，耗時 {} ms", fresh.size(), System.currentTimeMillis() - start);
+		} finally {
+			rebuilding = false;
+		}
+		snapshotIfDirty();
+	}
+
+	/**
+	 * 有異動時把索引寫成新的區段檔，並刪除舊的
+	 */
+	@Scheduled(fixedDelayString = "${product.search.snapshot-interval-ms:600000}")
+	public synchronized void snapshotIfDirty() {
+		if (!ready || !dirty) {
+			return;
+		}
+		dirty = false;
+		long createdAt = System.currentTimeMillis();
+		try {
+			Path dir = Files.createDirectories(Paths.get(indexDir));
+			Integer maxSkuId = jdbcTemplate.queryForObject("SELECT MAX(sku_id) FROM [SKU]",
+					new MapSqlParameterSource(), Integer.class);
+			Path file = dir.resolve(SEGMENT_PREFIX + createdAt + SEGMENT_SUFFIX);
+			index.writeSegment(file, new ProductSearchIndex.SegmentInfo(createdAt, maxSkuId != null ? maxSkuId : 0));
+
+			for (Path old : listSegments(dir)) {
+				if (!old.equals(file)) {
+					Files.deleteIfExists(old);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			dirty = true;
+			log.warn("商品搜尋索引寫檔失敗: {}", e.getMessage());
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		snapshotIfDirty();
+	}
+
+	/**
+	 * 讀入最新的區段檔並補上之後異動的商品，成功回傳 true
+	 */
+	private synchronized boolean loadLatestSegment() {
+		Path dir = Paths.get(indexDir);
+		if (!Files.isDirectory(dir)) {
+			return false;
+		}
+		try {
+			List<Path> segments = listSegments(dir);
+			if (segments.isEmpty()) {
+				return false;
+			}
+			Path latest = segments.get(segments.size() - 1);
+			rebuilding = true;
+			changedDuringRebuild.clear();
+
+			ProductSearchIndex loaded = new ProductSearchIndex();
+			ProductSearchIndex.SegmentInfo info = ProductSearchIndex.readSegment(latest, loaded);
+
+			// 區段檔之後修改過的商品與 SKU，以及新增過 SKU 的商品（沒有 updated_at 的舊資料或直接以 SQL 新增的）
+			long caughtUpAt = System.currentTimeMillis();
+			List<Integer> changed = jdbcTemplate.queryForList(
+					CHANGED_SQL + " UNION SELECT product_id FROM [SKU] WHERE sku_id > :maxSkuId",
+					new MapSqlParameterSource("since", new Timestamp(info.createdAt - CATCH_UP_MARGIN_MS))
+							.addValue("maxSkuId", info.maxSkuId),
+					Integer.class);
+			reindex(loaded, changed);
+
+			index = loaded;
+			lastPolledAt = caughtUpAt;
+			ready = true;
+			pending.addAll(changedDuringRebuild);
+			log.info("商品搜尋索引由區段檔載入，商品 {} 筆，補更新 {} 筆", loaded.size(), changed.size());
+			return true;
+		} catch (IOException | RuntimeException e) {
+			log.warn("商品搜尋索引區段檔無法使用，改為重建: {}", e.getMessage());
+			return false;
+		} finally {
+			rebuilding = false;
+		}
+	}
+
+	private static List<Path> listSegments(Path dir) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			// 檔名含建立時間，依時間排序
+			return files.filter(path -> {
+				String name = path.getFileName().toString();
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}).sorted((a, b) -> Long.compare(segmentTime(a), segmentTime(b))).collect(Collectors.toList());
+		}
+	}
+
+	private static long segmentTime(Path path) {
+		String name = path.getFileName().toString();
+		try {
+			return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * 重新載入指定商品；已刪除或不存在的從索引移除
+	 */
+	private void reindex(ProductSearchIndex target, Collection<Integer> productIds) {
+		List<Integer> ids = new ArrayList<>(new HashSet<>(productIds));
+		for (int from = 0; from < ids.size(); from += batchSize) {
+			List<Integer> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+			List<ProductRow> rows = jdbcTemplate.query(PRODUCT_SQL + "WHERE p.product_id IN (:ids)",
+					new MapSqlParameterSource("ids", chunk), (rs, rowNum) -> ProductRow.from(rs));
+
+			Set<Integer> found = new HashSet<>();
+			List<ProductRow> alive = new ArrayList<>();
+			for (ProductRow row : rows) {
+				if (!row.deleted) {
+					alive.add(row);
+					found.add(row.productId);
+				}
+			}
+			for (ProductSearchDocument doc : toDocuments(alive)) {
+				target.put(doc);
+			}
+			for (Integer id : chunk) {
+				if (!found.contains(id)) {
+					target.remove(id);
+				}
+			}
+		}
+		dirty = true;
+	}
+
+	/**
+	 * 一次查出這批商品的 SKU 價格與規格值，組成索引文件
+	 */
+	private List<ProductSearchDocument> toDocuments(List<ProductRow> rows) {
+		if (rows.isEmpty()) {
+			return new ArrayList<>();
+		}
+		List<Integer> ids = rows.stream().map(row -> row.productId).collect(Collectors.toList());
+		Map<Integer, List<Double>> prices = new HashMap<>();
+		Map<Integer, StringBuilder> specs = new HashMap<>();
+
+		jdbcTemplate.query("SELECT product_id, price, spec_pairs FROM [SKU] WHERE is_deleted = 0 AND product_id IN (:ids)",
+				new MapSqlParameterSource("ids", ids), rs -> {
+					int productId = rs.getInt("product_id");
+					if (rs.getBigDecimal("price") != null) {
+						prices.computeIfAbsent(productId, k -> new ArrayList<>()).add(rs.getBigDecimal("price").doubleValue());
+					}
+					StringBuilder text = specs.computeIfAbsent(productId, k -> new StringBuilder());
+					for (String value : parseSpecValues(rs.getString("spec_pairs"))) {
+						text.append(value).append(' ');
+					}
+				});
+
+		List<ProductSearchDocument> docs = new ArrayList<>(rows.size());
+		for (ProductRow row : rows) {
+			List<Double> productPrices = prices.getOrDefault(row.productId, new ArrayList<>());
+			double[] priceArray = new double[productPrices.size()];
+			for (int i = 0; i < priceArray.length; i++) {
+				priceArray[i] = productPrices.get(i);
+			}
+			StringBuilder spec = specs.get(row.productId);
+			docs.add(ProductSearchDocument.of(row.productId, row.shopId, row.category1Id, row.category2Id, row.active,
+					row.reviewed, priceArray, row.productName, row.description,
+					(row.category1Name != null ? row.category1Name : "") + " "
+							+ (row.category2Name != null ? row.category2Name : ""),
+					spec != null ? spec.toString() : null));
+		}
+		return docs;
+	}
+
+	private Collection<String> parseSpecValues(String specPairs) {
+		if (specPairs == null || specPairs.isEmpty()) {
+			return new ArrayList<>();
+		}
+		try {
+			return SpecPairs.parse(specPairs).asMap().values();
+		} catch (IllegalArgumentException e) {
+			return new ArrayList<>();
+		}
+	}
+
+	/**
+	 * 索引需要的商品欄位
+	 */
+	private static final class ProductRow {
+		private int productId;
+		private int shopId;
+		private int category1Id;
+		private int category2Id;
+		private String productName;
+		private String description;
+		private boolean active;
+		private boolean reviewed;
+		private boolean deleted;
+		private String category1Name;
+		private String category2Name;
+
+		private static ProductRow from(ResultSet rs) throws SQLException {
+			ProductRow row = new ProductRow();
+			row.productId = rs.getInt("product_id");
+			row.shopId = rs.getInt("shop_id");
+			row.category1Id = rs.getInt("c1_id");
+			row.category2Id = rs.getInt("c2_id");
+			row.productName = rs.getString("product_name");
+			row.description = rs.getString("description");
+			row.active = rs.getBoolean("active");
+			row.reviewed = rs.getBoolean("review_status");
+			row.deleted = rs.getBoolean("is_deleted");
+			row.category1Name = rs.getString("c1_name");
+			row.category2Name = rs.getString("c2_name");
+			return row;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package ourpkg.product.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 搜尋用斷詞
+ *
+ * 英數字連續片段當一個詞；中日韓文字沒有空白分詞，索引時同時產生單字與相鄰兩字（bigram），
+ * 查詢時兩字以上只用 bigram，單字才用單字，效果接近原本的 LIKE '%關鍵字%'。
+ * 全形字先經 NFKC 轉半形，英文一律小寫。
+ */
+public final class SearchTokenizer {
+
+	private SearchTokenizer() {
+	}
+
+	/**
+	 * 索引用：CJK 片段同時輸出單字與 bigram
+	 */
+	public static List<String> tokenizeForIndex(String text) {
+		List<String> tokens = new ArrayList<>();
+		tokenize(text, tokens, true);
+		return tokens;
+	}
+
+	/**
+	 * 查詢用：CJK 片段兩字以上只輸出 bigram
+	 */
+	public static List<String> tokenizeForQuery(String text) {
+		List<String> tokens = new ArrayList<>();
+		tokenize(text, tokens, false);
+		return tokens;
+	}
+
+	private static void tokenize(String text, List<String> out, boolean withUnigrams) {
+		if (text == null || text.isEmpty()) {
+			return;
+		}
+		String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+
+		StringBuilder word = new StringBuilder();
+		List<String> cjkRun = new ArrayList<>();
+		int i = 0;
+		while (i < normalized.length()) {
+			int cp = normalized.codePointAt(i);
+			i += Character.charCount(cp);
+
+			if (isCjk(cp)) {
+				flushWord(word, out);
+				cjkRun.add(new String(Character.toChars(cp)));
+			} else if (Character.isLetterOrDigit(cp)) {
+				flushCjk(cjkRun, out, withUnigrams);
+				word.appendCodePoint(cp);
+			} else {
+				flushWord(word, out);
+				flushCjk(cjkRun, out, withUnigrams);
+			}
+		}
+		flushWord(word, out);
+		flushCjk(cjkRun, out, withUnigrams);
+	}
+
+	private static void flushWord(StringBuilder word, List<String> out) {
+		if (word.length() > 0) {
+			out.add(word.toString());
+			word.setLength(0);
+		}
+	}
+
+	private static void flushCjk(List<String> run, List<String> out, boolean withUnigrams) {
+		if (run.isEmpty()) {
+			return;
+		}
+		if (run.size() == 1 || withUnigrams) {
+			out.addAll(run);
+		}
+		for (int i = 0; i + 1 < run.size(); i++) {
+			out.add(run.get(i) + run.get(i + 1));
+		}
+		run.clear();
+	}
+
+	private static boolean isCjk(int cp) {
+		Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+		return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+				|| script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+	}
+
+	/**
+	 * 是否為英數字詞（最後一個英數字詞查詢時用前綴比對）
+	 */
+	static boolean isWord(String token) {
+		return !token.isEmpty() && !isCjk(token.codePointAt(0));
+	}
+}
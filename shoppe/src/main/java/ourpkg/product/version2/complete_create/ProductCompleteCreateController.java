@@ -13,6 +13,7 @@ import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -41,6 +42,7 @@ import ourpkg.product.ProductImage;
 import ourpkg.product.ProductImageRepository;
 import ourpkg.product.ProductRepository;
 import ourpkg.product.ProductShopRepository;
+import ourpkg.product.search.ProductChangedEvent;
 import ourpkg.product.version2.controller_service.ImageFileService;
 import ourpkg.shop.Shop;
 import ourpkg.sku.Sku;
@@ -76,6 +78,8 @@ public class ProductCompleteCreateController {
 	private final ImageFileService imageFileService;
 	@Autowired
 	private final ObjectMapper objectMapper;
+	@Autowired
+	private final ApplicationEventPublisher eventPublisher;
 
 	/**
 	 * 一次性新增商品、圖片和SKU
@@ -175,9 +179,13 @@ public class ProductCompleteCreateController {
 
 			logger.info("成功創建 {} 個 SKU", createdSkus.size());
 
+			// 計算商品價格區間
+			repo.refreshPriceRange(savedProduct.getProductId());
+
 			// 重新查詢商品以獲取完整資訊
 			Product finalProduct = repo.findById(savedProduct.getProductId())
 					.orElseThrow(() -> new RuntimeException("無法找到剛保存的商品"));
+			eventPublisher.publishEvent(new ProductChangedEvent(finalProduct.getProductId()));
 
 			// 組合結果並返回
 			return buildCompleteResponse(finalProduct, createdSkus);
@@ -0,0 +1,270 @@
+package ourpkg.product.version2.complete_query;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import ourpkg.order.OrderItemRepository;
+import ourpkg.product.ProductImageRepository;
+import ourpkg.product.ProductRepository;
+import ourpkg.product.cache.CachedJson;
+import ourpkg.product.cache.ProductDetailCache;
+import ourpkg.sku.spec.SpecPairs;
+import ourpkg.sku.SkuRepository;
+
+/**
+ * 商品完整資訊批次組裝
+ *
+ * 不論幾個商品、幾個SKU或圖片，查詢次數固定：基本資訊、圖片、SKU 各一次，需要銷售資訊時再加兩次。
+ * 全部只取純量欄位，避免載入 Product 實體時 EAGER 關聯（skuList、shop、分類、審核者）逐筆補查。
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductCompleteQueryService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProductCompleteQueryService.class);
+
+	// 單次批次查詢的商品數上限（SQL Server 參數上限為 2100）
+	public static final int MAX_BATCH_SIZE = 100;
+
+	private final ProductRepository productRepo;
+
+	private final ProductImageRepository productImageRepo;
+
+	private final SkuRepository skuRepo;
+
+	private final OrderItemRepository orderItemRepo;
+
+	private final ProductDetailCache productDetailCache;
+
+	/**
+	 * 查詢單一商品的完整資訊（不含銷售資訊），走商品詳情快取，回傳共用、已序列化的內容
+	 *
+	 * @throws IllegalArgumentException 商品不存在或已刪除
+	 */
+	public CachedJson<ProductCompleteResponseDTO4> loadCachedComplete(Integer productId) {
+		return productDetailCache.getComplete(productId, id -> loadComplete(id, false));
+	}
+
+	/**
+	 * 查詢單一商品的完整資訊（不經過快取）
+	 *
+	 * @throws IllegalArgumentException 商品不存在或已刪除
+	 */
+	public ProductCompleteResponseDTO4 loadComplete(Integer productId, boolean includeSales) {
+		List<ProductCompleteResponseDTO4> result = loadComplete(Collections.singletonList(productId), includeSales);
+		if (result.isEmpty()) {
+			throw new IllegalArgumentException("該商品 ID 不存在或已被刪除: " + productId);
+		}
+		return result.get(0);
+	}
+
+	/**
+	 * 批次查詢商品完整資訊，結果依傳入的ID順序排列，不存在或已刪除的商品會被略過
+	 *
+	 * @param productIds   商品ID列表（最多 {@link #MAX_BATCH_SIZE} 筆）
+	 * @param includeSales 是否包含銷售信息
+	 */
+	public List<ProductCompleteResponseDTO4> loadComplete(List<Integer> productIds, boolean includeSales) {
+		Set<Integer> ids = new LinkedHashSet<>(productIds);
+		ids.remove(null);
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		if (ids.size() > MAX_BATCH_SIZE) {
+			throw new IllegalArgumentException("一次最多查詢 " + MAX_BATCH_SIZE + " 個商品");
+		}
+
+		// 1. 商品、分類、店鋪
+		Map<Integer, ProductCompleteResponseDTO4> responses = new HashMap<>();
+		for (Object[] row : productRepo.findCompleteInfoRows(ids)) {
+			responses.put((Integer) row[0], toResponse(row));
+		}
+		if (responses.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Set<Integer> foundIds = responses.keySet();
+
+		// 2. 圖片
+		for (Object[] row : productImageRepo.findImageRowsByProductIds(foundIds)) {
+			ProductCompleteResponseDTO4 response = responses.get((Integer) row[0]);
+			ProductImageDTO4 imageDTO4 = new ProductImageDTO4((Integer) row[1], (String) row[2], (Boolean) row[3],
+					(Integer) row[4]);
+			response.getImages().add(imageDTO4);
+			if (Boolean.TRUE.equals(imageDTO4.getIsPrimary())) {
+				response.setPrimaryImage(imageDTO4);
+			}
+		}
+
+		// 3. SKU
+		for (Object[] row : skuRepo.findSkuRowsByProductIds(foundIds)) {
+			ProductCompleteResponseDTO4 response = responses.get((Integer) row[0]);
+			SpecPairs specs = parseSpecPairs((Integer) row[1], (String) row[4]);
+			response.getSkus().add(new SkuInfoDTO4((Integer) row[1], (BigDecimal) row[2], (Integer) row[3],
+					new LinkedHashMap<>(specs.asMap()), specs.describe()));
+		}
+
+		for (ProductCompleteResponseDTO4 response : responses.values()) {
+			completeSkuSummary(response);
+		}
+
+		// 4. 銷售資訊
+		if (includeSales) {
+			addSalesInfo(responses);
+		}
+
+		List<ProductCompleteResponseDTO4> result = new ArrayList<>(responses.size());
+		for (Integer id : ids) {
+			ProductCompleteResponseDTO4 response = responses.get(id);
+			if (response != null) {
+				result.add(response);
+			}
+		}
+		logger.info("批次查詢商品完整信息: 要求 {} 筆，找到 {} 筆", ids.size(), result.size());
+		return result;
+	}
+
+	private ProductCompleteResponseDTO4 toResponse(Object[] row) {
+		ProductBasicInfoDTO4 basicInfo = new ProductBasicInfoDTO4();
+		basicInfo.setProductId((Integer) row[0]);
+		basicInfo.setProductName((String) row[1]);
+		basicInfo.setDescription((String) row[2]);
+		basicInfo.setActive((Boolean) row[3]);
+		basicInfo.setCreatedAt((Date) row[4]);
+		basicInfo.setUpdatedAt((Date) row[5]);
+		basicInfo.setCategory1Id((Integer) row[6]);
+		basicInfo.setCategory1Name((String) row[7]);
+		basicInfo.setCategory2Id((Integer) row[8]);
+		basicInfo.setCategory2Name((String) row[9]);
+
+		ShopInfoDTO4 shopInfo = null;
+		if (row[10] != null) {
+			shopInfo = new ShopInfoDTO4((Integer) row[10], (String) row[11], (String) row[12], (Boolean) row[13]);
+		}
+
+		ProductCompleteResponseDTO4 response = new ProductCompleteResponseDTO4();
+		response.setBasicInfo(basicInfo);
+		response.setShop(shopInfo);
+		response.setImages(new ArrayList<>());
+		response.setSkus(new ArrayList<>());
+		return response;
+	}
+
+	/**
+	 * 依已載入的SKU計算規格、價格範圍與總庫存
+	 */
+	private void completeSkuSummary(ProductCompleteResponseDTO4 response) {
+		List<SkuInfoDTO4> skus = response.getSkus();
+
+		BigDecimal minPrice = skus.stream().map(SkuInfoDTO4::getPrice).min(BigDecimal::compareTo)
+				.orElse(BigDecimal.ZERO);
+		BigDecimal maxPrice = skus.stream().map(SkuInfoDTO4::getPrice).max(BigDecimal::compareTo)
+				.orElse(BigDecimal.ZERO);
+		response.getBasicInfo().setPriceRange(new PriceRangeDTO4(minPrice, maxPrice));
+
+		response.setSpecifications(extractSpecifications(skus));
+		response.setTotalStock(skus.stream().mapToInt(SkuInfoDTO4::getStock).sum());
+	}
+
+	private void addSalesInfo(Map<Integer, ProductCompleteResponseDTO4> responses) {
+		Set<Integer> productIds = responses.keySet();
+
+		// SKU ID -> [銷售數量, 銷售金額]；商品總計包含已刪除SKU的歷史銷售
+		Map<Integer, Object[]> salesBySku = new HashMap<>();
+		Map<Integer, Integer> soldByProduct = new HashMap<>();
+		Map<Integer, BigDecimal> amountByProduct = new HashMap<>();
+		for (Object[] row : orderItemRepo.sumSalesBySkuForProducts(productIds)) {
+			Integer productId = (Integer) row[0];
+			int soldCount = row[2] != null ? ((Number) row[2]).intValue() : 0;
+			BigDecimal amount = row[3] != null ? (BigDecimal) row[3] : BigDecimal.ZERO;
+			salesBySku.put((Integer) row[1], new Object[] { soldCount, amount });
+			soldByProduct.merge(productId, soldCount, Integer::sum);
+			amountByProduct.merge(productId, amount, BigDecimal::add);
+		}
+
+		Map<Integer, Map<String, Integer>> dailyByProduct = new HashMap<>();
+		try {
+			for (Object[] row : orderItemRepo.getDailySalesCountLast30DaysForProducts(productIds)) {
+				dailyByProduct.computeIfAbsent(((Number) row[0]).intValue(), k -> new LinkedHashMap<>())
+						.put((String) row[1], ((Number) row[2]).intValue());
+			}
+		} catch (Exception e) {
+			// 如果獲取失敗，每日趨勢使用空Map
+			logger.warn("獲取商品每日銷售趨勢失敗", e);
+		}
+
+		LocalDateTime now = LocalDateTime.now();
+		responses.forEach((productId, response) -> {
+			SalesInfoDTO4 salesInfo = new SalesInfoDTO4();
+			int totalSoldCount = soldByProduct.getOrDefault(productId, 0);
+			salesInfo.setTotalSoldCount(totalSoldCount);
+			salesInfo.setTotalSalesAmount(amountByProduct.getOrDefault(productId, BigDecimal.ZERO));
+
+			// 系統中沒有瀏覽次數統計，暫時設為0，轉化率也就為0
+			salesInfo.setTotalViewCount(0);
+			salesInfo.setConversionRate(0.0);
+
+			List<SkuSalesDTO4> skuSalesList = new ArrayList<>();
+			for (SkuInfoDTO4 sku : response.getSkus()) {
+				Object[] sales = salesBySku.get(sku.getSkuId());
+				skuSalesList.add(new SkuSalesDTO4(sku.getSkuId(), sales != null ? (Integer) sales[0] : 0,
+						sales != null ? (BigDecimal) sales[1] : BigDecimal.ZERO, sku.getPrice(), sku.getStock()));
+			}
+			salesInfo.setSkuSalesDetails(skuSalesList);
+			salesInfo.setDailySalesLast30Days(dailyByProduct.getOrDefault(productId, new LinkedHashMap<>()));
+			salesInfo.setLastUpdated(now);
+
+			response.setSalesInfo(salesInfo);
+		});
+	}
+
+	private SpecPairs parseSpecPairs(Integer skuId, String specPairs) {
+		try {
+			return SpecPairs.parse(specPairs);
+		} catch (IllegalArgumentException e) {
+			// 單一SKU資料有誤不影響整批查詢
+			logger.warn("SKU 規格 JSON 解析失敗: skuId={}, specPairs={}", skuId, specPairs);
+			return SpecPairs.EMPTY;
+		}
+	}
+
+	/**
+	 * 從SKU列表中提取規格信息
+	 */
+	private List<ProductSpecDTO4> extractSpecifications(List<SkuInfoDTO4> skus) {
+		if (skus == null || skus.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		// 每種規格類型的值集合
+		Map<String, Set<String>> specValueMap = new HashMap<>();
+		for (SkuInfoDTO4 sku : skus) {
+			Map<String, String> specPairs = sku.getSpecPairs();
+			if (specPairs != null) {
+				specPairs.forEach(
+						(specName, specValue) -> specValueMap.computeIfAbsent(specName, k -> new HashSet<>()).add(specValue));
+			}
+		}
+
+		return specValueMap.entrySet().stream().map(entry -> {
+			List<SpecValueDTO4> specValues = entry.getValue().stream().map(SpecValueDTO4::new)
+					.collect(Collectors.toList());
+			return new ProductSpecDTO4(entry.getKey(), specValues);
+		}).collect(Collectors.toList());
+	}
+}
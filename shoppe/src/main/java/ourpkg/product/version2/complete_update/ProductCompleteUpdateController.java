@@ -13,6 +13,7 @@ import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -37,6 +38,7 @@ import ourpkg.product.ProductImage;
 import ourpkg.product.ProductImageRepository;
 import ourpkg.product.ProductRepository;
 import ourpkg.product.ProductShopRepository;
+import ourpkg.product.search.ProductChangedEvent;
 import ourpkg.product.version2.controller_service.ImageFileService;
 import ourpkg.shop.Shop;
 import ourpkg.sku.Sku;
@@ -68,6 +70,8 @@ private final JsonWebTokenUtility jsonWebTokenUtility;
     private final ImageFileService imageFileService;
     @Autowired
     private final ObjectMapper objectMapper;
+    @Autowired
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * 一次性更新商品、圖片和SKU
@@ -204,8 +208,12 @@ private final JsonWebTokenUtility jsonWebTokenUtility;
                 deleteProductSkus(product, updateData.getDeleteSkuIds());
             }
 
+            // 重算商品價格區間
+            repo.refreshPriceRange(productId);
+
             // 保存更新後的商品
             Product savedProduct = repo.save(product);
+            eventPublisher.publishEvent(new ProductChangedEvent(productId));
 
             // 獲取所有未刪除的SKU
             List<Sku> allActiveSkus = skuRepo.findByProduct_ProductIdAndIsDeletedFalse(productId);
@@ -32,6 +32,8 @@ import ourpkg.jwt.JsonWebTokenUtility;
 import ourpkg.product.Product;
 import ourpkg.product.ProductImage;
 import ourpkg.product.ProductRepository;
+import ourpkg.product.cache.CachedJson;
+import ourpkg.product.search.ProductSearchFacetsDTO;
 import ourpkg.product.version2.dto.ProductDetailDTO;
 import ourpkg.product.version2.dto.ProductPublicDTO;
 import ourpkg.product.version2.dto.ProductResDTO;
@@ -67,7 +69,7 @@ public class ProductController {
 	* 獲取單一商品詳情：僅包含活跃規格（不包括已软删除的SKU）
 	*/
 	@GetMapping("/{id}/active-detail")
-	public ResponseEntity<ProductDetailDTO> getProductActiveDetail(@PathVariable Integer id) {
+	public ResponseEntity<CachedJson<ProductDetailDTO>> getProductActiveDetail(@PathVariable Integer id) {
 	    return ResponseEntity.ok(productService.getProductActiveDetail(id));
 	}
 	
@@ -136,6 +138,17 @@ public class ProductController {
 		return ResponseEntity.ok(publicDtoPage);
 	}
 
+	/**
+	 * 公開商品搜尋結果的篩選統計（店鋪、分類、價格區間的商品數），條件同 /public
+	 */
+	@GetMapping("/public/facets")
+	public ResponseEntity<ProductSearchFacetsDTO> getPublicProductFacets(@RequestParam(required = false) Integer shopId,
+			@RequestParam(required = false) Integer category1Id, @RequestParam(required = false) Integer category2Id,
+			@RequestParam(required = false) String nameKeyword) {
+		return ResponseEntity
+				.ok(productService.getPublicProductFacets(shopId, category1Id, category2Id, nameKeyword));
+	}
+
 	/**
 	 * 獲取商品所有圖片
 	 */
@@ -2,7 +2,6 @@ package ourpkg.product.version2.controller_service;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -10,7 +9,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
@@ -18,6 +19,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import lombok.RequiredArgsConstructor;
 import ourpkg.category.Category1;
 import ourpkg.category.Category2;
@@ -28,6 +32,13 @@ import ourpkg.product.ProductImage;
 import ourpkg.product.ProductImageRepository;
 import ourpkg.product.ProductRepository;
 import ourpkg.product.ProductShopRepository;
+import ourpkg.product.cache.CachedJson;
+import ourpkg.product.cache.ProductDetailCache;
+import ourpkg.product.search.ProductChangedEvent;
+import ourpkg.product.search.ProductSearchFacetsDTO;
+import ourpkg.product.search.ProductSearchHits;
+import ourpkg.product.search.ProductSearchQuery;
+import ourpkg.product.search.ProductSearchService;
 import ourpkg.product.version2.dto.ProductDetailDTO;
 import ourpkg.product.version2.dto.ProductPublicDTO;
 import ourpkg.product.version2.dto.ProductResDTO;
@@ -63,6 +74,12 @@ public class ProductService {
 	
 	private final ReviewRepository reviewRepository;
 
+	private final ProductSearchService productSearchService;
+
+	private final ApplicationEventPublisher eventPublisher;
+
+	private final ProductDetailCache productDetailCache;
+
 	// 查詢類方法 開始========================================================
 
 	/**
@@ -95,8 +112,14 @@ public class ProductService {
 
 	/**
 	 * 根據商品ID查詢單一商品--僅包含活跃規格（不包含被软删除的SKU）
+	 *
+	 * 回傳快取中共用、已序列化的內容，直接作為回應輸出
 	 */
-	public ProductDetailDTO getProductActiveDetail(Integer id) {
+	public CachedJson<ProductDetailDTO> getProductActiveDetail(Integer id) {
+		return productDetailCache.getDetail(id, this::loadProductActiveDetail);
+	}
+
+	private ProductDetailDTO loadProductActiveDetail(Integer id) {
 		// 獲取商品基本信息
 		ProductResDTO product = getById(id);
 
@@ -189,6 +212,22 @@ public class ProductService {
 		// 驗證參數有效性
 		validateParameters(shopId, category1Id, category2Id);
 
+		// 有關鍵字或價格條件時改用搜尋索引（索引尚未建好時退回資料庫查詢）
+		ProductSearchQuery searchQuery = new ProductSearchQuery();
+		searchQuery.setShopId(shopId);
+		searchQuery.setCategory1Id(category1Id);
+		searchQuery.setCategory2Id(category2Id);
+		searchQuery.setNameKeyword(nameKeyword);
+		searchQuery.setDescKeyword(descKeyword);
+		searchQuery.setMinPrice(minPrice);
+		searchQuery.setMaxPrice(maxPrice);
+		if ((searchQuery.hasText() || searchQuery.hasPriceRange()) && productSearchService.isReady()) {
+			ProductSearchHits hits = productSearchService.search(searchQuery, page, size, false);
+			List<ProductResDTO> dtos = loadInOrder(hits.getProductIds(), false).stream().map(resMapper::toDto)
+					.collect(Collectors.toList());
+			return new PageImpl<>(dtos, pageable, hits.getTotal());
+		}
+
 		// 使用規範模式構建查詢條件
 		Specification<Product> spec = Specification.where(null);
 
@@ -222,18 +261,30 @@ public class ProductService {
 					"%" + descKeyword.toLowerCase() + "%"));
 		}
 
-		// 處理價格範圍查詢 (這部分較複雜，需要關聯SKU表)
+		// 價格範圍：至少一個未刪除的 SKU 價格落在區間內（和搜尋索引的 hasPriceBetween 相同）。
+		// 商品上的最低/最高價格區間與查詢區間有交集是必要條件，先用來縮小範圍再檢查 SKU
+		if (minPrice != null) {
+			spec = spec.and((root, query, cb) -> cb.greaterThanOrEqualTo(root.get("maxPrice"), minPrice));
+		}
+		if (maxPrice != null) {
+			spec = spec.and((root, query, cb) -> cb.lessThanOrEqualTo(root.get("minPrice"), maxPrice));
+		}
 		if (minPrice != null || maxPrice != null) {
-			// 查詢符合價格條件的商品ID
-			List<Integer> productIds = getProductIdsByPriceRange(minPrice, maxPrice);
-
-			if (productIds.isEmpty()) {
-				// 如果沒有符合價格條件的商品，直接返回空結果
-				return Page.empty(pageable);
-			}
-
-			// 添加商品ID條件
-			spec = spec.and((root, query, cb) -> root.get("productId").in(productIds));
+			spec = spec.and((root, query, cb) -> {
+				Subquery<Integer> skuInRange = query.subquery(Integer.class);
+				Root<Sku> sku = skuInRange.from(Sku.class);
+				List<Predicate> conditions = new ArrayList<>();
+				conditions.add(cb.equal(sku.get("product"), root));
+				conditions.add(cb.isFalse(sku.get("isDeleted")));
+				if (minPrice != null) {
+					conditions.add(cb.greaterThanOrEqualTo(sku.get("price"), minPrice));
+				}
+				if (maxPrice != null) {
+					conditions.add(cb.lessThanOrEqualTo(sku.get("price"), maxPrice));
+				}
+				skuInRange.select(cb.literal(1)).where(conditions.toArray(new Predicate[0]));
+				return cb.exists(skuInRange);
+			});
 		}
 
 		// 執行查詢
@@ -260,6 +311,15 @@ public class ProductService {
 		// 創建分頁請求
 		Pageable pageable = PageRequest.of(page, size);
 
+		// 有關鍵字時改用搜尋索引，比對名稱、描述、分類與規格並依相關度排序
+		if (nameKeyword != null && !nameKeyword.trim().isEmpty() && productSearchService.isReady()) {
+			ProductSearchQuery searchQuery = publicSearchQuery(shopId, category1Id, category2Id, nameKeyword);
+			ProductSearchHits hits = productSearchService.search(searchQuery, page, size, false);
+			List<ProductPublicDTO> dtos = loadInOrder(hits.getProductIds(), true).stream().map(ProductPublicDTO::new)
+					.collect(Collectors.toList());
+			return new PageImpl<>(dtos, pageable, hits.getTotal());
+		}
+
 		// 使用規範模式構建查詢條件
 		Specification<Product> spec = Specification.where(null);
 
@@ -296,6 +356,18 @@ public class ProductService {
 		return productPage.map(product -> new ProductPublicDTO(product));
 	}
 
+	/**
+	 * 公開商品搜尋結果依店鋪、分類、價格區間的商品數（參數同 findPublicProducts）
+	 */
+	public ProductSearchFacetsDTO getPublicProductFacets(Integer shopId, Integer category1Id, Integer category2Id,
+			String nameKeyword) {
+		if (!productSearchService.isReady()) {
+			return new ProductSearchFacetsDTO();
+		}
+		ProductSearchQuery searchQuery = publicSearchQuery(shopId, category1Id, category2Id, nameKeyword);
+		return productSearchService.search(searchQuery, 0, 0, true).getFacets();
+	}
+
 	/** 獲取商品所有圖片 */
 	public List<ProductImage> getProductImages(Integer productId) {
 		if (!repo.existsByProductIdAndIsDeletedFalse(productId)) {
@@ -413,6 +485,7 @@ public class ProductService {
 			// 重新查詢商品以獲取完整資訊（包含圖片）
 			Product finalProduct = repo.findById(savedProduct.getProductId())
 					.orElseThrow(() -> new RuntimeException("無法找到剛保存的商品"));
+			eventPublisher.publishEvent(new ProductChangedEvent(finalProduct.getProductId()));
 
 			return resMapper.toDto(finalProduct);
 		} catch (Exception e) {
@@ -552,6 +625,7 @@ public class ProductService {
 
 		// 保存更新後的商品
 		Product updatedProduct = repo.save(entity);
+		eventPublisher.publishEvent(new ProductChangedEvent(id));
 		return resMapper.toDto(updatedProduct);
 	}
 
@@ -577,6 +651,7 @@ public class ProductService {
 		entity.setActive(false);
 		entity.setIsDeleted(true);
 		repo.save(entity);
+		eventPublisher.publishEvent(new ProductChangedEvent(id));
 	}
 
 	// 商品管理類方法 結束========================================================
@@ -604,6 +679,7 @@ public class ProductService {
 		// 設置新的主圖
 		newPrimary.setIsPrimary(true);
 		productImageRepo.save(newPrimary);
+		eventPublisher.publishEvent(new ProductChangedEvent(productId));
 	}
 
 	/** 新增商品圖片 */
@@ -634,7 +710,9 @@ public class ProductService {
 			productImage.setImagePath(imagePath);
 			productImage.setIsPrimary(isPrimary != null && isPrimary);
 
-			return productImageRepo.save(productImage);
+			ProductImage savedImage = productImageRepo.save(productImage);
+			eventPublisher.publishEvent(new ProductChangedEvent(productId));
+			return savedImage;
 		} catch (Exception e) {
 			// 如果發生錯誤，刪除已上傳的圖片
 			if (imagePath != null) {
@@ -684,28 +762,48 @@ public class ProductService {
 				productImageRepo.save(newPrimary);
 			}
 		}
+		eventPublisher.publishEvent(new ProductChangedEvent(productId));
 	}
 
 	// 圖片管理類方法 結束========================================================
 	// 輔助類私有方法 開始========================================================
 
 	/**
-	 * 根據價格範圍查詢符合條件的商品ID
-	 * 
-	 * @param minPrice 最低價格 (可為空)
-	 * @param maxPrice 最高價格 (可為空)
-	 * @return 符合價格範圍的商品ID列表
+	 * 公開商品的搜尋條件
 	 */
-	private List<Integer> getProductIdsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
-		if (minPrice == null && maxPrice == null) {
-			return Collections.emptyList();
-		}
-
-		// 設置默認值，如果參數為null
-		BigDecimal min = minPrice != null ? minPrice : BigDecimal.ZERO;
-		BigDecimal max = maxPrice != null ? maxPrice : new BigDecimal("999999999");
+	private ProductSearchQuery publicSearchQuery(Integer shopId, Integer category1Id, Integer category2Id,
+			String keyword) {
+		ProductSearchQuery searchQuery = new ProductSearchQuery();
+		searchQuery.setShopId(shopId);
+		searchQuery.setCategory1Id(category1Id);
+		searchQuery.setCategory2Id(category2Id);
+		searchQuery.setKeyword(keyword);
+		searchQuery.setPublicOnly(true);
+		return searchQuery;
+	}
 
-		return skuRepo.findProductIdsByPriceRange(min, max);
+	/**
+	 * 依搜尋結果的順序載入商品（索引與資料庫之間有短暫落差，已刪除的略過；
+	 * publicOnly 時再以資料庫目前的上架與審核狀態過濾，剛下架的商品不會在索引更新前露出）
+	 */
+	private List<Product> loadInOrder(List<Integer> productIds, boolean publicOnly) {
+		Map<Integer, Product> byId = new HashMap<>();
+		for (Product product : repo.findAllById(productIds)) {
+			byId.put(product.getProductId(), product);
+		}
+		List<Product> products = new ArrayList<>();
+		for (Integer productId : productIds) {
+			Product product = byId.get(productId);
+			if (product == null || Boolean.TRUE.equals(product.getIsDeleted())) {
+				continue;
+			}
+			if (publicOnly && !(Boolean.TRUE.equals(product.getActive())
+					&& Boolean.TRUE.equals(product.getReviewStatus()))) {
+				continue;
+			}
+			products.add(product);
+		}
+		return products;
 	}
 
 	/**
@@ -0,0 +1,45 @@
+package ourpkg.referencedata;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * 訂單狀態英文代碼與 OrderStatusCorrespond 名稱的對應
+ */
+public enum OrderStatusCode {
+	PENDING("未付款"),
+	PAID("已付款"),
+	PREPARING("備貨中"),
+	PROCESSING("處理中"),
+	SHIPPED("已出貨"),
+	DELIVERED("已送達"),
+	CANCELLED("已取消"),
+	COMPLETED("已完成");
+
+	private final String displayName;
+
+	OrderStatusCode(String displayName) {
+		this.displayName = displayName;
+	}
+
+	/**
+	 * 資料表中的名稱
+	 */
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	/**
+	 * 依英文代碼查詢（忽略大小寫）
+	 */
+	public static Optional<OrderStatusCode> fromCode(String code) {
+		if (code == null) {
+			return Optional.empty();
+		}
+		try {
+			return Optional.of(valueOf(code.trim().toUpperCase(Locale.ROOT)));
+		} catch (IllegalArgumentException e) {
+			return Optional.empty();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package ourpkg.referencedata;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * 付款方式英文代碼與 PaymentMethod 名稱的對應（前端送英文代碼）
+ */
+public enum PaymentMethodCode {
+	CREDIT("信用卡"),
+	CASH_ON_DELIVERY("貨到付款"),
+	ATM("ATM"),
+	APPLE_PAY("Apple Pay"),
+	LINE_PAY("LINE Pay");
+
+	private final String displayName;
+
+	PaymentMethodCode(String displayName) {
+		this.displayName = displayName;
+	}
+
+	/**
+	 * 資料表中的名稱
+	 */
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	/**
+	 * 依英文代碼查詢（忽略大小寫）
+	 */
+	public static Optional<PaymentMethodCode> fromCode(String code) {
+		if (code == null) {
+			return Optional.empty();
+		}
+		try {
+			return Optional.of(valueOf(code.trim().toUpperCase(Locale.ROOT)));
+		} catch (IllegalArgumentException e) {
+			return Optional.empty();
+		}
+	}
+}
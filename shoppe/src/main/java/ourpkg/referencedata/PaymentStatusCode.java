@@ -0,0 +1,41 @@
+package ourpkg.referencedata;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * 付款狀態英文代碼與 PaymentStatus 名稱的對應
+ */
+public enum PaymentStatusCode {
+	UNPAID("未付款"),
+	AWAITING("待付款"),
+	PAID("已付款"),
+	FAILED("付款失敗");
+
+	private final String displayName;
+
+	PaymentStatusCode(String displayName) {
+		this.displayName = displayName;
+	}
+
+	/**
+	 * 資料表中的名稱
+	 */
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	/**
+	 * 依英文代碼查詢（忽略大小寫）
+	 */
+	public static Optional<PaymentStatusCode> fromCode(String code) {
+		if (code == null) {
+			return Optional.empty();
+		}
+		try {
+			return Optional.of(valueOf(code.trim().toUpperCase(Locale.ROOT)));
+		} catch (IllegalArgumentException e) {
+			return Optional.empty();
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package ourpkg.referencedata;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin/reference-data")
+public class ReferenceDataController {
+
+	@Autowired
+	private ReferenceDataRegistry referenceDataRegistry;
+
+	// 直接修改資料庫的對照表後，重新載入快取
+	@PreAuthorize("hasAnyRole('SUPER_ADMIN','ADMIN')")
+	@PostMapping("/reload")
+	public ResponseEntity<Map<String, Object>> reload() {
+		referenceDataRegistry.reload();
+		return ResponseEntity.ok(Map.of("success", true, "message", "對照表已重新載入"));
+	}
+}
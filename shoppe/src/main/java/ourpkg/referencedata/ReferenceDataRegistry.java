@@ -0,0 +1,397 @@
+package ourpkg.referencedata;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ourpkg.address.AddressTypeCorrespond;
+import ourpkg.address.AddressTypeRepository;
+import ourpkg.order.OrderStatusCorrespond;
+import ourpkg.order.OrderStatusCorrespondRepository;
+import ourpkg.payment.PaymentMethod;
+import ourpkg.payment.PaymentMethodRepository;
+import ourpkg.payment.PaymentStatus;
+import ourpkg.payment.PaymentStatusRepository;
+import ourpkg.shipment.ShipmentMethod;
+import ourpkg.shipment.ShipmentMethodRepository;
+import ourpkg.shipment.ShipmentStatus;
+import ourpkg.shipment.ShipmentStatusRepository;
+
+/**
+ * 訂單、付款、出貨流程用到的對照表（訂單狀態、付款方式、付款狀態、出貨方式、出貨狀態、地址類型）
+ *
+ * 啟動時整批載入成不可變的快照，依 ID 與名稱（忽略大小寫與前後空白）查詢，不必每次下單都查資料庫。
+ * 每次查詢回傳新的物件（只有 id 與 name），可直接設定到訂單等實體的關聯上，修改它不會影響快照。
+ * 對照表由管理介面修改後呼叫 {@link #reload()} 換上新的快照；查不到時會到資料庫確認一次，
+ * 找到就重新載入（例如資料是啟動後才由其他程式新增的）。
+ * 交易中補建或查到的新資料只在該交易內使用，交易提交後才換上新的快照，回滾時快照不會留下不存在的 ID。
+ */
+@Component
+public class ReferenceDataRegistry {
+
+	private static final Logger log = LoggerFactory.getLogger(ReferenceDataRegistry.class);
+
+	@Autowired
+	private OrderStatusCorrespondRepository orderStatusRepository;
+
+	@Autowired
+	private PaymentMethodRepository paymentMethodRepository;
+
+	@Autowired
+	private PaymentStatusRepository paymentStatusRepository;
+
+	@Autowired
+	private ShipmentMethodRepository shipmentMethodRepository;
+
+	@Autowired
+	private ShipmentStatusRepository shipmentStatusRepository;
+
+	@Autowired
+	private AddressTypeRepository addressTypeRepository;
+
+	private volatile Snapshot snapshot;
+
+	/**
+	 * 一張對照表：ID 與正規化名稱兩個索引
+	 */
+	private static final class Table<T> {
+		private final Map<Integer, String> namesById;
+		private final Map<String, Integer> idsByName;
+		private final BiFunction<Integer, String, T> factory;
+
+		private <E> Table(List<E> rows, Function<E, Integer> id, Function<E, String> name,
+				BiFunction<Integer, String, T> factory) {
+			Map<Integer, String> namesById = new HashMap<>();
+			Map<String, Integer> idsByName = new HashMap<>();
+			for (E row : rows) {
+				namesById.put(id.apply(row), name.apply(row));
+				idsByName.put(fold(name.apply(row)), id.apply(row));
+			}
+			this.namesById = Map.copyOf(namesById);
+			this.idsByName = Map.copyOf(idsByName);
+			this.factory = factory;
+		}
+
+		private Optional<T> byId(Integer id) {
+			String name = id == null ? null : namesById.get(id);
+			return name == null ? Optional.empty() : Optional.of(factory.apply(id, name));
+		}
+
+		private Optional<T> byName(String name) {
+			Integer id = name == null ? null : idsByName.get(fold(name));
+			return id == null ? Optional.empty() : Optional.of(factory.apply(id, namesById.get(id)));
+		}
+	}
+
+	private static final class Snapshot {
+		private final Table<OrderStatusCorrespond> orderStatuses;
+		private final Table<PaymentMethod> paymentMethods;
+		private final Table<PaymentStatus> paymentStatuses;
+		private final Table<ShipmentMethod> shipmentMethods;
+		private final Table<ShipmentStatus> shipmentStatuses;
+		private final Table<AddressTypeCorrespond> addressTypes;
+
+		private Snapshot(Table<OrderStatusCorrespond> orderStatuses, Table<PaymentMethod> paymentMethods,
+				Table<PaymentStatus> paymentStatuses, Table<ShipmentMethod> shipmentMethods,
+				Table<ShipmentStatus> shipmentStatuses, Table<AddressTypeCorrespond> addressTypes) {
+			this.orderStatuses = orderStatuses;
+			this.paymentMethods = paymentMethods;
+			this.paymentStatuses = paymentStatuses;
+			this.shipmentMethods = shipmentMethods;
+			this.shipmentStatuses = shipmentStatuses;
+			this.addressTypes = addressTypes;
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void initialize() {
+		try {
+			reload();
+		} catch (RuntimeException e) {
+			log.error("對照表載入失敗，第一次查詢時再試", e);
+		}
+	}
+
+	/**
+	 * 重新從資料庫載入全部對照表，載入完成後整個換掉
+	 */
+	public synchronized void reload() {
+		snapshot = load();
+		log.info("對照表已載入");
+	}
+
+	private Snapshot load() {
+		return new Snapshot(
+				new Table<>(orderStatusRepository.findAll(), OrderStatusCorrespond::getId,
+						OrderStatusCorrespond::getName, (id, name) -> {
+							OrderStatusCorrespond status = new OrderStatusCorrespond();
+							status.setId(id);
+							status.setName(name);
+							return status;
+						}),
+				new Table<>(paymentMethodRepository.findAll(), PaymentMethod::getId, PaymentMethod::getName,
+						(id, name) -> {
+							PaymentMethod method = new PaymentMethod();
+							method.setId(id);
+							method.setName(name);
+							return method;
+						}),
+				new Table<>(paymentStatusRepository.findAll(), PaymentStatus::getId, PaymentStatus::getName,
+						(id, name) -> {
+							PaymentStatus status = new PaymentStatus();
+							status.setId(id);
+							status.setName(name);
+							return status;
+						}),
+				new Table<>(shipmentMethodRepository.findAll(), ShipmentMethod::getId, ShipmentMethod::getName,
+						(id, name) -> {
+							ShipmentMethod method = new ShipmentMethod();
+							method.setId(id);
+							method.setName(name);
+							return method;
+						}),
+				new Table<>(shipmentStatusRepository.findAll(), ShipmentStatus::getId, ShipmentStatus::getName,
+						(id, name) -> {
+							ShipmentStatus status = new ShipmentStatus();
+							status.setId(id);
+							status.setName(name);
+							return status;
+						}),
+				new Table<>(addressTypeRepository.findAll(), AddressTypeCorrespond::getId,
+						AddressTypeCorrespond::getName, (id, name) -> {
+							AddressTypeCorrespond type = new AddressTypeCorrespond();
+							type.setId(id);
+							type.setName(name);
+							return type;
+						}));
+	}
+
+	/**
+	 * 交易中只登記提交後重新載入；沒有交易就立即重新載入
+	 */
+	private void reloadAfterCommit() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			reload();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				reload();
+			}
+		});
+	}
+
+	// --- 訂單狀態 ---
+
+	public Optional<OrderStatusCorrespond> findOrderStatus(Integer id) {
+		return lookup(id, s -> s.orderStatuses.byId(id),
+				() -> orderStatusRepository.existsById(id));
+	}
+
+	public Optional<OrderStatusCorrespond> findOrderStatus(String name) {
+		return lookup(name, s -> s.orderStatuses.byName(name),
+				() -> orderStatusRepository.findByName(name).isPresent());
+	}
+
+	/**
+	 * @throws IllegalStateException 資料庫沒有這個狀態
+	 */
+	public OrderStatusCorrespond orderStatus(OrderStatusCode code) {
+		return findOrderStatus(code.getDisplayName())
+				.orElseThrow(() -> new IllegalStateException("找不到訂單狀態：" + code.getDisplayName()));
+	}
+
+	/**
+	 * 依中文名稱或英文代碼（{@link OrderStatusCode}）查詢
+	 */
+	public Optional<OrderStatusCorrespond> resolveOrderStatus(String input) {
+		Optional<OrderStatusCorrespond> status = findOrderStatus(input);
+		if (status.isPresent() || input == null) {
+			return status;
+		}
+		return OrderStatusCode.fromCode(input).flatMap(code -> findOrderStatus(code.getDisplayName()));
+	}
+
+	/**
+	 * 查不到就新增（沿用原本付款、下單流程缺資料時自動補建的行為）
+	 *
+	 * 新增後以 ID 再查一次：快照沒有、資料庫有，就照 {@link #lookup} 的規則重新載入（交易中則提交後才載入）
+	 */
+	public OrderStatusCorrespond orderStatusOrCreate(String name) {
+		return findOrderStatus(name).orElseGet(() -> {
+			OrderStatusCorrespond status = new OrderStatusCorrespond();
+			status.setName(name);
+			OrderStatusCorrespond saved = orderStatusRepository.save(status);
+			return findOrderStatus(saved.getId()).orElse(saved);
+		});
+	}
+
+	// --- 付款方式 ---
+
+	public Optional<PaymentMethod> findPaymentMethod(Integer id) {
+		return lookup(id, s -> s.paymentMethods.byId(id),
+				() -> paymentMethodRepository.existsById(id));
+	}
+
+	public Optional<PaymentMethod> findPaymentMethod(String name) {
+		return lookup(name, s -> s.paymentMethods.byName(name),
+				() -> paymentMethodRepository.findByNameIgnoreCase(name).isPresent());
+	}
+
+	/**
+	 * 依名稱或英文代碼（{@link PaymentMethodCode}）查詢
+	 */
+	public Optional<PaymentMethod> resolvePaymentMethod(String input) {
+		Optional<PaymentMethod> method = findPaymentMethod(input);
+		if (method.isPresent() || input == null) {
+			return method;
+		}
+		return PaymentMethodCode.fromCode(input).flatMap(code -> findPaymentMethod(code.getDisplayName()));
+	}
+
+	public PaymentMethod paymentMethodOrCreate(String name) {
+		return findPaymentMethod(name).orElseGet(() -> {
+			PaymentMethod method = new PaymentMethod();
+			method.setName(name);
+			PaymentMethod saved = paymentMethodRepository.save(method);
+			return findPaymentMethod(saved.getId()).orElse(saved);
+		});
+	}
+
+	// --- 付款狀態 ---
+
+	public Optional<PaymentStatus> findPaymentStatus(Integer id) {
+		return lookup(id, s -> s.paymentStatuses.byId(id),
+				() -> paymentStatusRepository.existsById(id));
+	}
+
+	public Optional<PaymentStatus> findPaymentStatus(String name) {
+		return lookup(name, s -> s.paymentStatuses.byName(name),
+				() -> paymentStatusRepository.findByName(name).isPresent());
+	}
+
+	/**
+	 * @throws IllegalStateException 資料庫沒有這個狀態
+	 */
+	public PaymentStatus paymentStatus(PaymentStatusCode code) {
+		return findPaymentStatus(code.getDisplayName())
+				.orElseThrow(() -> new IllegalStateException("找不到付款狀態：" + code.getDisplayName()));
+	}
+
+	public PaymentStatus paymentStatusOrCreate(String name) {
+		return findPaymentStatus(name).orElseGet(() -> {
+			PaymentStatus status = new PaymentStatus();
+			status.setName(name);
+			PaymentStatus saved = paymentStatusRepository.save(status);
+			return findPaymentStatus(saved.getId()).orElse(saved);
+		});
+	}
+
+	// --- 出貨方式、出貨狀態 ---
+
+	public Optional<ShipmentMethod> findShipmentMethod(String name) {
+		return lookup(name, s -> s.shipmentMethods.byName(name),
+				() -> shipmentMethodRepository.findByName(name).isPresent());
+	}
+
+	public ShipmentMethod shipmentMethodOrCreate(String name) {
+		return findShipmentMethod(name).orElseGet(() -> {
+			ShipmentMethod method = new ShipmentMethod();
+			method.setName(name);
+			ShipmentMethod saved = shipmentMethodRepository.save(method);
+			reloadAfterCommit();
+			return current().shipmentMethods.byId(saved.getId()).orElse(saved);
+		});
+	}
+
+	public Optional<ShipmentStatus> findShipmentStatus(String name) {
+		return lookup(name, s -> s.shipmentStatuses.byName(name),
+				() -> shipmentStatusRepository.findByName(name).isPresent());
+	}
+
+	public ShipmentStatus shipmentStatusOrCreate(String name) {
+		return findShipmentStatus(name).orElseGet(() -> {
+			ShipmentStatus status = new ShipmentStatus();
+			status.setName(name);
+			ShipmentStatus saved = shipmentStatusRepository.save(status);
+			reloadAfterCommit();
+			return current().shipmentStatuses.byId(saved.getId()).orElse(saved);
+		});
+	}
+
+	// --- 地址類型 ---
+
+	public Optional<AddressTypeCorrespond> findAddressType(Integer id) {
+		return lookup(id, s -> s.addressTypes.byId(id),
+				() -> addressTypeRepository.existsById(id));
+	}
+
+	public Optional<AddressTypeCorrespond> findAddressType(String name) {
+		return lookup(name, s -> s.addressTypes.byName(name),
+				() -> addressTypeRepository.findByName(name).isPresent());
+	}
+
+	public AddressTypeCorrespond addressTypeOrCreate(String name) {
+		return findAddressType(name).orElseGet(() -> {
+			AddressTypeCorrespond type = new AddressTypeCorrespond();
+			type.setName(name);
+			AddressTypeCorrespond saved = addressTypeRepository.save(type);
+			return findAddressType(saved.getId()).orElse(saved);
+		});
+	}
+
+	private Snapshot current() {
+		Snapshot current = snapshot;
+		if (current == null) {
+			synchronized (this) {
+				if (snapshot == null) {
+					reload();
+				}
+				current = snapshot;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * 快照查不到時到資料庫確認一次，資料庫有就重新載入後再查
+	 */
+	private <T> Optional<T> lookup(Object key, Function<Snapshot, Optional<T>> find, BooleanSupplier existsInDatabase) {
+		if (key == null) {
+			return Optional.empty();
+		}
+		Optional<T> cached = find.apply(current());
+		if (cached.isPresent()) {
+			return cached;
+		}
+		if (!existsInDatabase.getAsBoolean()) {
+			return Optional.empty();
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			// 可能是這個交易還沒提交的資料，先用交易內讀到的查，提交後才換掉共用的快照
+			reloadAfterCommit();
+			return find.apply(load());
+		}
+		reload();
+		return find.apply(snapshot);
+	}
+
+	private static String fold(String name) {
+		return name.trim().toLowerCase(Locale.ROOT);
+	}
+}
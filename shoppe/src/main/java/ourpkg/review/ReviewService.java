@@ -5,6 +5,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -14,6 +15,7 @@ import ourpkg.order.OrderItemRepository;
 import ourpkg.product.Product;
 import ourpkg.product.ProductRepository;
 import ourpkg.product.ProductShopRepository;
+import ourpkg.product.search.ProductChangedEvent;
 import ourpkg.shop.Shop;
 import ourpkg.user_role_permission.user.User;
 import ourpkg.user_role_permission.user.UserRepository;
@@ -40,6 +42,9 @@ public class ReviewService {
     @Autowired
     private UserService UserService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * 新增評價（舊版）
      */
@@ -57,7 +62,9 @@ public class ReviewService {
         reviewData.setShop(shop);
         reviewData.setProduct(product);
 
-        return reviewRepository.save(reviewData);
+        Review saved = reviewRepository.save(reviewData);
+        publishProductChanged(saved);
+        return saved;
     }
 
     /**
@@ -89,7 +96,9 @@ public class ReviewService {
         review.setOrderItem(orderItem);
         review.setOrderItemId(request.getOrderItemId());
 
-        return reviewRepository.save(review);
+        Review saved = reviewRepository.save(review);
+        publishProductChanged(saved);
+        return saved;
     }
 
     public List<Review> getAllReviews() {
@@ -127,12 +136,15 @@ public class ReviewService {
         existingReview.setReviewContent(updatedData.getReviewContent());
         existingReview.setRating(updatedData.getRating());
 
-        return reviewRepository.save(existingReview);
+        Review saved = reviewRepository.save(existingReview);
+        publishProductChanged(existingReview);
+        return saved;
     }
 
     public boolean deleteReview(Integer reviewId) {
         Review review = getReviewById(reviewId);
         reviewRepository.delete(review);
+        publishProductChanged(review);
         return true;
     }
 
@@ -167,4 +179,11 @@ public class ReviewService {
         return reviewRepository.save(review);
     }
 
+    // 商品詳情包含評分與評論數，評價異動後通知商品快取作廢
+    private void publishProductChanged(Review review) {
+        if (review.getProduct() != null) {
+            eventPublisher.publishEvent(new ProductChangedEvent(review.getProduct().getProductId()));
+        }
+    }
+
 }
@@ -14,6 +14,7 @@ import ourpkg.shipment.dto.ShipmentMethodUpdateDTO;
 import ourpkg.shipment.mapper.ShipmentMethodCreateMapper;
 import ourpkg.shipment.mapper.ShipmentMethodResMapper;
 import ourpkg.shipment.mapper.ShipmentMethodUpdateMapper;
+import ourpkg.referencedata.ReferenceDataRegistry;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +25,7 @@ public class ShipmentMethodService {
 	private final ShipmentMethodCreateMapper createMapper;
 	private final ShipmentMethodUpdateMapper updateMapper;
 	private final ShipmentMethodResMapper resMapper;
+	private final ReferenceDataRegistry referenceData; // 異動後重新載入對照表快取
 	
 	/** 查詢所有配送方式（無條件） */
 	public List<ShipmentMethodResDTO> getAll() {
@@ -38,7 +40,9 @@ public class ShipmentMethodService {
 	/** 新增配送方式 */
 	public ShipmentMethodResDTO create(ShipmentMethodCreateDTO dto) {
 		ShipmentMethod entity = createMapper.toEntity(dto);
-		return resMapper.toDto(repo.save(entity));
+		ShipmentMethodResDTO saved = resMapper.toDto(repo.save(entity));
+		referenceData.reload();
+		return saved;
 	}
 
 	/** 更新配送方式 */
@@ -46,7 +50,9 @@ public class ShipmentMethodService {
 		ShipmentMethod entity = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("該配送方式 ID 不存在"));
 
 		entity = updateMapper.toEntity(entity, dto);
-		return resMapper.toDto(repo.save(entity));
+		ShipmentMethodResDTO saved = resMapper.toDto(repo.save(entity));
+		referenceData.reload();
+		return saved;
 	}
 
 	/** 刪除配送方式（需先檢查該配送方式 是否存在於 物流）*/
@@ -58,5 +64,6 @@ public class ShipmentMethodService {
 		}
 
 		repo.delete(entity);
+		referenceData.reload();
 	}
 }
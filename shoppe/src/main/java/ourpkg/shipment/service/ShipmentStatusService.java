@@ -14,6 +14,7 @@ import ourpkg.shipment.dto.ShipmentStatusUpdateDTO;
 import ourpkg.shipment.mapper.ShipmentStatusCreateMapper;
 import ourpkg.shipment.mapper.ShipmentStatusResMapper;
 import ourpkg.shipment.mapper.ShipmentStatusUpdateMapper;
+import ourpkg.referencedata.ReferenceDataRegistry;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +25,7 @@ public class ShipmentStatusService {
 	private final ShipmentStatusCreateMapper createMapper;
 	private final ShipmentStatusUpdateMapper updateMapper;
 	private final ShipmentStatusResMapper resMapper;
+	private final ReferenceDataRegistry referenceData; // 異動後重新載入對照表快取
 	
 	/** 查詢所有配送狀態（無條件） */
 	public List<ShipmentStatusResDTO> getAll() {
@@ -38,7 +40,9 @@ public class ShipmentStatusService {
 	/** 新增配送狀態 */
 	public ShipmentStatusResDTO create(ShipmentStatusCreateDTO dto) {
 		ShipmentStatus entity = createMapper.toEntity(dto);
-		return resMapper.toDto(repo.save(entity));
+		ShipmentStatusResDTO saved = resMapper.toDto(repo.save(entity));
+		referenceData.reload();
+		return saved;
 	}
 
 	/** 更新配送狀態 */
@@ -46,7 +50,9 @@ public class ShipmentStatusService {
 		ShipmentStatus entity = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("該配送狀態 ID 不存在"));
 
 		entity = updateMapper.toEntity(entity, dto);
-		return resMapper.toDto(repo.save(entity));
+		ShipmentStatusResDTO saved = resMapper.toDto(repo.save(entity));
+		referenceData.reload();
+		return saved;
 	}
 
 	/** 刪除配送狀態（需先檢查該配送狀態 是否存在於 物流）*/
@@ -58,5 +64,6 @@ public class ShipmentStatusService {
 		}
 
 		repo.delete(entity);
+		referenceData.reload();
 	}
 }
@@ -13,6 +13,7 @@ import org.springframework.stereotype.Service;
 import ourpkg.auth.SignInResponse;
 import ourpkg.auth.SignUpResponse;
 import ourpkg.auth.mail.EmailService;
+import ourpkg.jwt.PrincipalCache;
 import ourpkg.product.ProductShopRepository;
 import ourpkg.shop.Shop;
 import ourpkg.shop.application.ShopApplication.ApplicationStatus;
@@ -37,6 +38,9 @@ public class ShopApplicationService {
     
     @Autowired
     private EmailService emailService;
+
+    @Autowired
+    private PrincipalCache principalCache;
     
     /**
      * 提交或更新商店申請
@@ -157,6 +161,7 @@ public class ShopApplicationService {
 
         user.setRole(roles);
         userRepo.save(user);
+        principalCache.invalidateUser(user.getUserId());
 
         // 更新申請狀態
         application.setStatus(ApplicationStatus.APPROVED);
@@ -2,12 +2,14 @@ package ourpkg.sku;
 
 import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.springframework.data.annotation.Transient;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jakarta.persistence.Column;
@@ -17,12 +19,18 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import ourpkg.product.Product;
+import ourpkg.sku.spec.SpecPairs;
 
 @Entity
 @Table(name = "[SKU]")
@@ -53,21 +61,51 @@ public class Sku {
 	@Column(name = "[is_deleted]")
 	private Boolean isDeleted = false; //預設0
 
+	// 商品搜尋索引重啟與輪詢時用來找出價格、規格有異動的商品
+	@JsonIgnore
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "[updated_at]")
+	private Date updatedAt;
+
 	@Transient // 這個欄位不會存入資料庫(讓JPA不持久化它，純粹用於JAVA層的操作)
 	private static final ObjectMapper objectMapper = new ObjectMapper();
 
-	// 解析 JSON 字串為 Map<String, String> 接收前端 後端處理
-	public Map<String, String> getSpecPairsAsMap() {
-		if (specPairs == null || specPairs.isEmpty()) {
-			return Collections.emptyMap();
+	// 解析後的規格（Java transient 不會被 JPA 持久化），specPairs 字串換掉時重新解析
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private transient SpecPairs decodedSpecPairs;
+
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private transient String decodedFrom;
+
+	/**
+	 * 解析後的規格組合，每個實體只解析一次（相同 JSON 在不同實體間也共用解析結果）
+	 */
+	@JsonIgnore
+	public SpecPairs getSpecs() {
+		String current = specPairs;
+		SpecPairs decoded = decodedSpecPairs;
+		if (decoded != null && decodedFrom == current) {
+			return decoded;
 		}
 		try {
-			return objectMapper.readValue(specPairs, new TypeReference<Map<String, String>>() {
-			});
-		} catch (JsonProcessingException e) {
-			System.out.println(specPairs);
-			throw new RuntimeException("Failed to parse specPairs JSON: " + specPairs, e);
+			decoded = SpecPairs.parse(current);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException("Failed to parse specPairs JSON: " + current, e);
 		}
+		decodedFrom = current;
+		decodedSpecPairs = decoded;
+		return decoded;
+	}
+
+	// 解析 JSON 字串為 Map<String, String> 接收前端 後端處理（每次回傳新的 Map，順序與 JSON 相同）
+	public Map<String, String> getSpecPairsAsMap() {
+		SpecPairs specs = getSpecs();
+		if (specs.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		return new LinkedHashMap<>(specs.asMap());
 	}
 
 	// 將 Map<String, String> 轉為 JSON 字串(序列化) 存入資料庫
@@ -83,4 +121,10 @@ public class Sku {
 		}
 	}
 
+	@PrePersist // 新增一筆 Entity 到資料庫 之前調用
+	@PreUpdate // 更新一筆 Entity 到資料庫 之前調用
+	protected void touch() {
+		this.updatedAt = new Date();
+	}
+
 }
@@ -2,6 +2,7 @@ package ourpkg.sku;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Collection;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
@@ -84,5 +85,35 @@ public interface SkuRepository extends JpaRepository<Sku, Integer> {
 
 	List<Sku> findByProduct_Shop_ShopId(Integer shopId);
 
-	
+	/**
+	 * 條件扣庫存：只有庫存足夠時才扣，回傳 0 代表庫存不足
+	 */
+	@Modifying
+	@Query("UPDATE Sku s SET s.stock = s.stock - :qty WHERE s.skuId = :skuId AND s.stock >= :qty AND s.isDeleted = false")
+	int decreaseStockIfEnough(@Param("skuId") Integer skuId, @Param("qty") Integer qty);
+
+	/**
+	 * 歸還庫存（取消訂單、預留逾時）
+	 */
+	@Modifying
+	@Query("UPDATE Sku s SET s.stock = s.stock + :qty WHERE s.skuId = :skuId")
+	int increaseStock(@Param("skuId") Integer skuId, @Param("qty") Integer qty);
+
+	/**
+	 * 批次查詢多個商品的未刪除SKU欄位
+	 *
+	 * 欄位順序：productId, skuId, price, stock, specPairs
+	 */
+	@Query("SELECT s.product.productId, s.skuId, s.price, s.stock, s.specPairs FROM Sku s "
+			+ "WHERE s.product.productId IN :productIds AND s.isDeleted = false ORDER BY s.skuId")
+	List<Object[]> findSkuRowsByProductIds(@Param("productIds") Collection<Integer> productIds);
+
+	/**
+	 * 下單時一次查出多個SKU的價格與所屬商品、商店，不載入整個實體
+	 *
+	 * 欄位順序：skuId, price, productId, productName, shopId
+	 */
+	@Query("SELECT s.skuId, s.price, p.productId, p.productName, sh.shopId FROM Sku s "
+			+ "JOIN s.product p LEFT JOIN p.shop sh WHERE s.skuId IN :skuIds")
+	List<Object[]> findOrderLineRowsBySkuIds(@Param("skuIds") Collection<Integer> skuIds);
 }
@@ -0,0 +1,64 @@
+package ourpkg.sku.inventory;
+
+import java.util.Date;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 未付款訂單佔用的庫存（每個訂單、SKU 一列）
+ *
+ * 狀態只以條件式 UPDATE 變更（HELD -> CONFIRMED / RELEASED），多台伺服器或重啟後都只會歸還一次。
+ * expires_at 在產生綠界付款頁時才設定，只有這些訂單會被排程逾時取消。
+ */
+@Entity
+@Table(name = "stock_reservation", indexes = {
+		@Index(name = "ix_stock_reservation_order", columnList = "order_id, status"),
+		@Index(name = "ix_stock_reservation_expiry", columnList = "status, expires_at") })
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservation {
+
+	public static final String HELD = "HELD"; // 佔用中
+	public static final String CONFIRMED = "CONFIRMED"; // 已付款或改為不會逾時的付款方式
+	public static final String RELEASED = "RELEASED"; // 已歸還庫存
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "id")
+	private Long id;
+
+	@Column(name = "order_id", nullable = false)
+	private Integer orderId;
+
+	@Column(name = "sku_id", nullable = false)
+	private Integer skuId;
+
+	@Column(name = "quantity", nullable = false)
+	private Integer quantity;
+
+	@Column(name = "status", length = 20, nullable = false)
+	private String status;
+
+	// 付款期限，null 表示不會逾時
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "expires_at")
+	private Date expiresAt;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "created_at", nullable = false)
+	private Date createdAt;
+}
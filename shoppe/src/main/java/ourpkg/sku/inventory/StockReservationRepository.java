@@ -0,0 +1,31 @@
+package ourpkg.sku.inventory;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+	// 付款完成或改為不會逾時的付款方式
+	@Modifying
+	@Query("UPDATE StockReservation r SET r.status = 'CONFIRMED' WHERE r.orderId = :orderId AND r.status = 'HELD'")
+	int confirm(@Param("orderId") Integer orderId);
+
+	// 開始綠界付款：設定（或延長）付款期限
+	@Modifying
+	@Query("UPDATE StockReservation r SET r.expiresAt = :expiresAt WHERE r.orderId = :orderId AND r.status = 'HELD'")
+	int arm(@Param("orderId") Integer orderId, @Param("expiresAt") Date expiresAt);
+
+	@Query("SELECT DISTINCT r.orderId FROM StockReservation r WHERE r.status = 'HELD' AND r.expiresAt <= :now")
+	List<Integer> findExpiredOrderIds(@Param("now") Date now, Pageable pageable);
+
+	@Query("SELECT COALESCE(SUM(r.quantity), 0) FROM StockReservation r WHERE r.skuId = :skuId AND r.status = 'HELD'")
+	long sumHeldBySku(@Param("skuId") Integer skuId);
+
+	List<StockReservation> findByOrderIdAndStatus(Integer orderId, String status);
+}
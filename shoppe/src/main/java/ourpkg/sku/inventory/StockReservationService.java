@@ -0,0 +1,332 @@
+package ourpkg.sku.inventory;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ourpkg.dataAnalysis.rollup.SalesRollupService;
+import ourpkg.order.Order;
+import ourpkg.order.OrderRepository;
+import ourpkg.order.OrderStatusCorrespond;
+import ourpkg.order.OrderStatusHistory;
+import ourpkg.order.OrderStatusHistoryRepository;
+import ourpkg.referencedata.OrderStatusCode;
+import ourpkg.referencedata.ReferenceDataRegistry;
+import ourpkg.sku.SkuRepository;
+
+/**
+ * 庫存預留
+ *
+ * 下單時用條件式 UPDATE 直接在資料庫扣庫存（不再先讀 Sku 再 setStock），
+ * 並在 stock_reservation 記錄每筆未付款訂單佔用的數量（和訂單同一個交易）。
+ * 產生綠界付款頁時設定付款期限，逾時未付款（付款頁被放棄）的訂單由排程從資料表找出、取消並歸還庫存；
+ * 其他付款方式的未付款訂單不會被自動取消。預留狀態只以條件式 UPDATE 變更，多台伺服器或重啟後都只會歸還一次。
+ */
+@Service
+public class StockReservationService {
+
+	private static final Logger log = LoggerFactory.getLogger(StockReservationService.class);
+
+	private static final int UNPAID_STATUS_ID = 1; // 未付款
+
+	// 與 SkuRepository.decreaseStockIfEnough 相同的條件扣庫存
+	private static final String DECREASE_SQL = "UPDATE [SKU] SET [stock] = [stock] - ? "
+			+ "WHERE [sku_id] = ? AND [stock] >= ? AND [is_deleted] = 0";
+
+	private static final String HOLD_SQL = "INSERT INTO stock_reservation (order_id, sku_id, quantity, status, created_at) "
+			+ "VALUES (?, ?, ?, 'HELD', ?)";
+
+	// 只有還在佔用中的列會被改為已歸還，輸出實際要歸還的數量
+	private static final String RELEASE_SQL = "UPDATE stock_reservation SET status = 'RELEASED' "
+			+ "OUTPUT INSERTED.sku_id, INSERTED.quantity WHERE order_id = ? AND status = 'HELD'";
+
+	// 已取消的訂單恢復時，把取消時歸還的預留改回佔用中（付款期限清空，要重新開啟付款頁才會逾時）
+	private static final String REINSTATE_SQL = "UPDATE stock_reservation SET status = 'HELD', expires_at = NULL "
+			+ "OUTPUT INSERTED.sku_id, INSERTED.quantity WHERE order_id = ? AND status = 'RELEASED'";
+
+	@Autowired
+	private SkuRepository skuRepository;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private StockReservationRepository reservationRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private ReferenceDataRegistry referenceData;
+
+	@Autowired
+	private OrderStatusHistoryRepository orderStatusHistoryRepository;
+
+	@Autowired
+	private SalesRollupService salesRollupService;
+
+	@Value("${inventory.reservation.ttl-minutes:30}")
+	private long ttlMinutes;
+
+	@Value("${inventory.reservation.sold-out-hint-ms:2000}")
+	private long soldOutHintMillis;
+
+	@Value("${inventory.reservation.sweep-batch:200}")
+	private int sweepBatch;
+
+	// SKU ID -> 售完提示的到期時間，期間內直接拒絕，不再打資料庫（只是本機的提示，不影響正確性）
+	private final Map<Integer, Long> soldOutUntil = new ConcurrentHashMap<>();
+
+	/**
+	 * 扣庫存，任一 SKU 不足就丟例外讓整筆交易回滾
+	 *
+	 * @param quantities SKU ID -> 數量
+	 */
+	@Transactional
+	public void reserve(Map<Integer, Integer> quantities) {
+		long now = System.currentTimeMillis();
+		// 依 SKU ID 排序，避免兩筆訂單以相反順序鎖同樣的列而死結
+		List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(new TreeMap<>(quantities).entrySet());
+		for (Map.Entry<Integer, Integer> entry : entries) {
+			Integer qty = entry.getValue();
+			if (qty == null || qty <= 0) {
+				throw new RuntimeException("購買數量必須大於 0");
+			}
+
+			Long until = soldOutUntil.get(entry.getKey());
+			if (until != null && until > now) {
+				throw new RuntimeException("庫存不足，無法結帳 (SKU: " + entry.getKey() + ")");
+			}
+		}
+		if (entries.isEmpty()) {
+			return;
+		}
+
+		// 所有 SKU 的條件扣庫存以一次 JDBC 批次送出，依每筆的更新筆數判斷哪個 SKU 不足
+		int[] counts = jdbcTemplate.batchUpdate(DECREASE_SQL, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				Map.Entry<Integer, Integer> entry = entries.get(i);
+				ps.setInt(1, entry.getValue());
+				ps.setInt(2, entry.getKey());
+				ps.setInt(3, entry.getValue());
+			}
+
+			@Override
+			public int getBatchSize() {
+				return entries.size();
+			}
+		});
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0) {
+				Integer skuId = entries.get(i).getKey();
+				soldOutUntil.put(skuId, now + soldOutHintMillis);
+				throw new RuntimeException("庫存不足，無法結帳 (SKU: " + skuId + ")");
+			}
+		}
+	}
+
+	/**
+	 * 記錄訂單佔用的庫存，和訂單在同一個交易內寫入；這時還沒有付款期限，不會被自動取消
+	 */
+	public void hold(Integer orderId, Map<Integer, Integer> quantities) {
+		if (quantities.isEmpty()) {
+			return;
+		}
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(new TreeMap<>(quantities).entrySet());
+		jdbcTemplate.batchUpdate(HOLD_SQL, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				ps.setInt(1, orderId);
+				ps.setInt(2, entries.get(i).getKey());
+				ps.setInt(3, entries.get(i).getValue());
+				ps.setTimestamp(4, now);
+			}
+
+			@Override
+			public int getBatchSize() {
+				return entries.size();
+			}
+		});
+	}
+
+	/**
+	 * 產生綠界付款頁時設定（或延長）付款期限，逾時未付款會被排程取消並歸還庫存
+	 */
+	@Transactional
+	public void startPaymentWindow(Integer orderId) {
+		reservationRepository.arm(orderId, new Date(System.currentTimeMillis() + ttlMinutes * 60_000L));
+	}
+
+	/**
+	 * 付款完成（或改為貨到付款等不會逾時的方式），庫存正式賣出
+	 */
+	@Transactional
+	public void confirm(Integer orderId) {
+		reservationRepository.confirm(orderId);
+	}
+
+	/**
+	 * 取消訂單時把預留的庫存還回去；已歸還或已確認的預留不會重複處理
+	 */
+	@Transactional
+	public void release(Integer orderId) {
+		restore(releaseHeld(orderId));
+	}
+
+	/**
+	 * 已取消的訂單恢復時，重新扣回取消時歸還的庫存；庫存不足會丟例外讓整筆交易回滾
+	 *
+	 * @param confirmed 恢復後的訂單已不是未付款，預留直接確認
+	 */
+	@Transactional
+	public void reinstate(Integer orderId, boolean confirmed) {
+		Map<Integer, Integer> quantities = new TreeMap<>();
+		jdbcTemplate.query(REINSTATE_SQL, rs -> {
+			quantities.merge(rs.getInt(1), rs.getInt(2), Integer::sum);
+		}, orderId);
+		if (quantities.isEmpty()) {
+			return;
+		}
+		reserve(quantities);
+		if (confirmed) {
+			reservationRepository.confirm(orderId);
+		}
+	}
+
+	/**
+	 * 目前被未付款訂單佔用的數量
+	 */
+	public long getHeldQuantity(Integer skuId) {
+		return reservationRepository.sumHeldBySku(skuId);
+	}
+
+	/**
+	 * 定期取消逾時未付款的綠界訂單，每筆訂單各自一個交易，一筆失敗不影響其他筆
+	 */
+	@Scheduled(fixedDelayString = "${inventory.reservation.sweep-interval-ms:60000}")
+	public void releaseExpired() {
+		List<Integer> expired = reservationRepository.findExpiredOrderIds(new Date(), PageRequest.of(0, sweepBatch));
+		int canceled = 0;
+		for (Integer orderId : expired) {
+			try {
+				if (Boolean.TRUE.equals(transactionTemplate.execute(status -> cancelExpired(orderId)))) {
+					canceled++;
+				}
+			} catch (RuntimeException e) {
+				log.warn("取消逾時未付款訂單 {} 失敗，下次排程重試: {}", orderId, e.getMessage());
+			}
+		}
+		if (canceled > 0) {
+			log.info("取消逾時未付款訂單 {} 筆", canceled);
+		}
+	}
+
+	/**
+	 * 鎖住訂單列再判斷狀態（和付款通知的 markPaid 相同），避免同時付款與逾時取消
+	 *
+	 * @return 是否取消了訂單
+	 */
+	private boolean cancelExpired(Integer orderId) {
+		Order order = orderRepository.findByIdForUpdate(orderId).orElse(null);
+		if (order == null) {
+			restore(releaseHeld(orderId));
+			return false;
+		}
+		if (order.getOrderStatusCorrespond().getId() != UNPAID_STATUS_ID) {
+			// 訂單已付款或已被處理，庫存不用還
+			reservationRepository.confirm(orderId);
+			return false;
+		}
+		Map<Integer, Integer> released = releaseHeld(orderId);
+		if (released.isEmpty()) {
+			return false;
+		}
+
+		OrderStatusCorrespond canceledStatus = referenceData.findOrderStatus(OrderStatusCode.CANCELLED.getDisplayName())
+				.orElseThrow(() -> new IllegalStateException("訂單狀態 '已取消' 未定義"));
+		salesRollupService.revertOrder(order);
+		order.setOrderStatusCorrespond(canceledStatus);
+		orderRepository.save(order);
+
+		OrderStatusHistory history = new OrderStatusHistory();
+		history.setOrder(order);
+		history.setOrderStatusCorrespond(canceledStatus);
+		orderStatusHistoryRepository.save(history);
+
+		restore(released);
+		return true;
+	}
+
+	/**
+	 * 把訂單仍在佔用中的預留改為已歸還
+	 *
+	 * @return SKU ID -> 要歸還的數量（其他交易已處理過時為空）
+	 */
+	private Map<Integer, Integer> releaseHeld(Integer orderId) {
+		Map<Integer, Integer> released = new TreeMap<>();
+		jdbcTemplate.query(RELEASE_SQL, rs -> {
+			released.merge(rs.getInt(1), rs.getInt(2), Integer::sum);
+		}, orderId);
+		return released;
+	}
+
+	/**
+	 * 依 SKU ID 順序加回庫存，交易提交後才清掉售完提示
+	 */
+	private void restore(Map<Integer, Integer> quantities) {
+		if (quantities.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<Integer, Integer> entry : new TreeMap<>(quantities).entrySet()) {
+			skuRepository.increaseStock(entry.getKey(), entry.getValue());
+		}
+		Runnable clearHints = () -> quantities.keySet().forEach(soldOutUntil::remove);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					clearHints.run();
+				}
+			});
+		} else {
+			clearHints.run();
+		}
+	}
+
+	/**
+	 * 只讀檢視，供除錯或監控
+	 */
+	public Map<Integer, Integer> getReservedQuantities(Integer orderId) {
+		Map<Integer, Integer> quantities = new TreeMap<>();
+		for (StockReservation reservation : reservationRepository.findByOrderIdAndStatus(orderId, StockReservation.HELD)) {
+			quantities.merge(reservation.getSkuId(), reservation.getQuantity(), Integer::sum);
+		}
+		return Collections.unmodifiableMap(quantities);
+	}
+}
@@ -0,0 +1,43 @@
+package ourpkg.sku.spec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 規格名稱與規格值的字串字典
+ *
+ * 只收錄 Attribute / AttributeValue 的名稱（由 SpecDictionaryInitializer 在啟動時載入），
+ * 分類屬性的規格文字在所有 SpecPairs 間共用同一個字串實例。賣家自訂的規格文字不加入字典，
+ * 由 SpecPairs 自行保存，字典大小因此只跟屬性表有關，不會隨商品資料無限成長。
+ */
+public final class SpecDictionary {
+
+	private static final Map<String, String> strings = new ConcurrentHashMap<>();
+
+	private SpecDictionary() {
+	}
+
+	/**
+	 * 加入屬性名稱或屬性值（只供 SpecDictionaryInitializer 使用）
+	 */
+	public static void register(String value) {
+		if (value != null) {
+			strings.putIfAbsent(value, value);
+		}
+	}
+
+	/**
+	 * 字典中有這個字串時回傳共用的實例，沒有時原樣回傳
+	 */
+	public static String canonical(String value) {
+		if (value == null) {
+			return null;
+		}
+		String shared = strings.get(value);
+		return shared != null ? shared : value;
+	}
+
+	public static int size() {
+		return strings.size();
+	}
+}
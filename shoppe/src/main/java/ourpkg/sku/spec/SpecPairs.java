@@ -0,0 +1,276 @@
+package ourpkg.sku.spec;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * 解析後的 SKU 規格組合（例如 {"顏色":"紅色","尺寸":"M"}）
+ *
+ * 規格名稱與值存成兩個字串陣列，保留原本 JSON 的順序，建立後不可修改。屬性字典（SpecDictionary）裡有的文字
+ * 使用字典的共用實例，賣家自訂的文字直接保存在這裡。相同的 JSON 字串只解析一次（有上限的共用快取），
+ * 查詢 {@link #get(String)}、{@link #nameAt(int)}、{@link #valueAt(int)} 都不會配置物件。
+ * {@link #asMap()} 是唯讀的 Map 介面，需要可修改的 Map 時請自行複製。
+ */
+public final class SpecPairs {
+
+	public static final SpecPairs EMPTY = new SpecPairs(new String[0], new String[0]);
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	// 已解析過的 JSON 字串，超過上限時整個清空重來
+	private static final int PARSE_CACHE_LIMIT = 50_000;
+	private static final Map<String, SpecPairs> parseCache = new ConcurrentHashMap<>();
+
+	private final String[] names;
+	private final String[] values;
+	private final Map<String, String> mapView;
+
+	private SpecPairs(String[] names, String[] values) {
+		this.names = names;
+		this.values = values;
+		this.mapView = new MapView();
+	}
+
+	/**
+	 * 解析 Sku.specPairs 的 JSON 字串
+	 *
+	 * @throws IllegalArgumentException JSON 格式錯誤（不是字串對字串的物件）
+	 */
+	public static SpecPairs parse(String json) {
+		if (json == null || json.isEmpty()) {
+			return EMPTY;
+		}
+		SpecPairs cached = parseCache.get(json);
+		if (cached != null) {
+			return cached;
+		}
+		SpecPairs parsed = doParse(json);
+		if (parseCache.size() >= PARSE_CACHE_LIMIT) {
+			parseCache.clear();
+		}
+		parseCache.put(json, parsed);
+		return parsed;
+	}
+
+	/**
+	 * 由 Map 建立（新增或修改 SKU 時使用），依 Map 的迭代順序
+	 */
+	public static SpecPairs of(Map<String, String> pairs) {
+		if (pairs == null || pairs.isEmpty()) {
+			return EMPTY;
+		}
+		String[] names = new String[pairs.size()];
+		String[] values = new String[pairs.size()];
+		int count = 0;
+		for (Map.Entry<String, String> entry : pairs.entrySet()) {
+			if (entry.getKey() == null || entry.getValue() == null) {
+				continue;
+			}
+			names[count] = SpecDictionary.canonical(entry.getKey());
+			values[count] = SpecDictionary.canonical(entry.getValue());
+			count++;
+		}
+		return count == 0 ? EMPTY : new SpecPairs(Arrays.copyOf(names, count), Arrays.copyOf(values, count));
+	}
+
+	private static SpecPairs doParse(String json) {
+		String[] names = new String[4];
+		String[] values = new String[4];
+		int count = 0;
+		try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IllegalArgumentException("規格 JSON 必須是物件: " + json);
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.currentName();
+				JsonToken token = parser.nextToken();
+				if (token == null || !token.isScalarValue()) {
+					throw new IllegalArgumentException("規格值必須是字串: " + json);
+				}
+				String value = token == JsonToken.VALUE_NULL ? null : parser.getText();
+
+				// 重複的規格名稱以後出現的為準（與 Jackson 讀成 Map 的結果一致）
+				int existing = indexOf(names, count, name);
+				if (value == null) {
+					if (existing >= 0) {
+						count = remove(names, values, count, existing);
+					}
+					continue;
+				}
+				if (existing >= 0) {
+					values[existing] = SpecDictionary.canonical(value);
+					continue;
+				}
+				if (count == names.length) {
+					names = Arrays.copyOf(names, count * 2);
+					values = Arrays.copyOf(values, count * 2);
+				}
+				names[count] = SpecDictionary.canonical(name);
+				values[count] = SpecDictionary.canonical(value);
+				count++;
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("規格 JSON 解析失敗: " + json, e);
+		}
+		return count == 0 ? EMPTY : new SpecPairs(Arrays.copyOf(names, count), Arrays.copyOf(values, count));
+	}
+
+	private static int indexOf(String[] names, int count, String name) {
+		for (int i = 0; i < count; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int remove(String[] names, String[] values, int count, int index) {
+		System.arraycopy(names, index + 1, names, index, count - index - 1);
+		System.arraycopy(values, index + 1, values, index, count - index - 1);
+		return count - 1;
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public boolean isEmpty() {
+		return names.length == 0;
+	}
+
+	public String nameAt(int index) {
+		return names[index];
+	}
+
+	public String valueAt(int index) {
+		return values[index];
+	}
+
+	/**
+	 * 依規格名稱查規格值，沒有時回傳 null
+	 */
+	public String get(String name) {
+		if (name == null) {
+			return null;
+		}
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 規格值以 "/" 串接，例如 "紅色/M"
+	 */
+	public String describe() {
+		if (values.length == 0) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				sb.append('/');
+			}
+			sb.append(values[i]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 唯讀 Map 介面（同一個實例重複使用），順序與原 JSON 相同
+	 */
+	public Map<String, String> asMap() {
+		return mapView;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof SpecPairs other) || other.size() != size()) {
+			return false;
+		}
+		for (int i = 0; i < names.length; i++) {
+			if (!values[i].equals(other.get(names[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return mapView.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return mapView.toString();
+	}
+
+	private final class MapView extends AbstractMap<String, String> {
+
+		private final Set<Map.Entry<String, String>> entrySet = new AbstractSet<>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new Iterator<>() {
+					private int index = 0;
+
+					@Override
+					public boolean hasNext() {
+						return index < names.length;
+					}
+
+					@Override
+					public Map.Entry<String, String> next() {
+						if (index >= names.length) {
+							throw new NoSuchElementException();
+						}
+						Map.Entry<String, String> entry = new SimpleImmutableEntry<>(nameAt(index), valueAt(index));
+						index++;
+						return entry;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return names.length;
+			}
+		};
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return entrySet;
+		}
+
+		@Override
+		public int size() {
+			return names.length;
+		}
+
+		@Override
+		public String get(Object key) {
+			return key instanceof String name ? SpecPairs.this.get(name) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+	}
+}
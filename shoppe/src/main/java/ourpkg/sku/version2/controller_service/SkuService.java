@@ -1,9 +1,12 @@
 package ourpkg.sku.version2.controller_service;
 
 import java.math.BigDecimal;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -13,6 +16,7 @@ import org.springframework.transaction.annotation.Transactional;
 import lombok.RequiredArgsConstructor;
 import ourpkg.product.Product;
 import ourpkg.product.ProductRepository;
+import ourpkg.product.search.ProductChangedEvent;
 import ourpkg.sku.Sku;
 import ourpkg.sku.SkuRepository;
 import ourpkg.sku.version2.dto.SkuCreateDTO;
@@ -34,6 +38,7 @@ public class SkuService {
 	private final SkuCreateMapper createMapper;
 	private final SkuUpdateMapper updateMapper;
 	private final SkuResMapper resMapper;
+	private final ApplicationEventPublisher eventPublisher;
 
 	// 查詢類方法 開始 ========================================================
 
@@ -133,6 +138,8 @@ public class SkuService {
 
 		// 保存SKU
 		Sku savedSku = skuRepo.save(entity);
+		productRepo.refreshPriceRange(productId);
+		eventPublisher.publishEvent(new ProductChangedEvent(productId));
 
 		return resMapper.toDto(savedSku);
 	}
@@ -155,8 +162,10 @@ public class SkuService {
 		List<String> existingSpecPairs = skuRepo.findByProduct_ProductIdAndIsDeletedFalse(productId).stream()
 				.map(Sku::getSpecPairs).collect(Collectors.toList());
 
+		eventPublisher.publishEvent(new ProductChangedEvent(productId));
+
 		// 檢查並創建SKU
-		return dtos.stream().map(dto -> {
+		List<SkuResDTO> created = dtos.stream().map(dto -> {
 			// 檢查規格組合唯一性
 			if (dto.getSpecPairs() != null && !dto.getSpecPairs().isEmpty()) {
 				Sku tempSku = new Sku();
@@ -177,6 +186,9 @@ public class SkuService {
 			Sku savedSku = skuRepo.save(entity);
 			return resMapper.toDto(savedSku);
 		}).collect(Collectors.toList());
+
+		productRepo.refreshPriceRange(productId);
+		return created;
 	}
 
 	/**
@@ -210,6 +222,8 @@ public class SkuService {
 		// 更新SKU
 		Sku updatedEntity = updateMapper.toEntity(entity, dto);
 		Sku savedSku = skuRepo.save(updatedEntity);
+		productRepo.refreshPriceRange(savedSku.getProduct().getProductId());
+		eventPublisher.publishEvent(new ProductChangedEvent(savedSku.getProduct().getProductId()));
 
 		return resMapper.toDto(savedSku);
 	}
@@ -258,6 +272,8 @@ public class SkuService {
 
 		entity.setPrice(price);
 		Sku savedSku = skuRepo.save(entity);
+		productRepo.refreshPriceRange(entity.getProduct().getProductId());
+		eventPublisher.publishEvent(new ProductChangedEvent(entity.getProduct().getProductId()));
 
 		return resMapper.toDto(savedSku);
 	}
@@ -277,6 +293,8 @@ public class SkuService {
 		// 軟刪除
 		entity.setIsDeleted(true);
 		skuRepo.save(entity);
+		productRepo.refreshPriceRange(entity.getProduct().getProductId());
+		eventPublisher.publishEvent(new ProductChangedEvent(entity.getProduct().getProductId()));
 	}
 
 	/**
@@ -287,13 +305,20 @@ public class SkuService {
 	@Transactional
 	public void batchDelete(List<Integer> ids) {
 		List<Sku> skus = skuRepo.findAllById(ids);
+		Set<Integer> productIds = new HashSet<>();
 
 		for (Sku sku : skus) {
 			if (!sku.getIsDeleted()) {
 				sku.setIsDeleted(true);
 				skuRepo.save(sku);
+				productIds.add(sku.getProduct().getProductId());
 			}
 		}
+
+		for (Integer productId : productIds) {
+			productRepo.refreshPriceRange(productId);
+			eventPublisher.publishEvent(new ProductChangedEvent(productId));
+		}
 	}
 
 	/**
@@ -309,6 +334,8 @@ public class SkuService {
 			sku.setIsDeleted(true);
 			skuRepo.save(sku);
 		}
+		productRepo.refreshPriceRange(productId);
+		eventPublisher.publishEvent(new ProductChangedEvent(productId));
 	}
 
 	// 管理類方法 結束 ========================================================
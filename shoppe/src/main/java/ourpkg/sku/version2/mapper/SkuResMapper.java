@@ -1,7 +1,6 @@
 package ourpkg.sku.version2.mapper;
 
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.springframework.data.domain.Page;
@@ -9,6 +8,7 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.stereotype.Component;
 
 import ourpkg.sku.Sku;
+import ourpkg.sku.spec.SpecPairs;
 import ourpkg.sku.version2.dto.SkuResDTO;
 
 /**
@@ -38,13 +38,12 @@ public class SkuResMapper {
 		dto.setIsDeleted(entity.getIsDeleted());
 
 		// 設置規格鍵值對
-		Map<String, String> specPairs = entity.getSpecPairsAsMap();
-		dto.setSpecPairs(specPairs);
+		SpecPairs specs = entity.getSpecs();
+		dto.setSpecPairs(entity.getSpecPairsAsMap());
 
 		// 生成規格描述
-		if (specPairs != null && !specPairs.isEmpty()) {
-			String specDescription = specPairs.values().stream().collect(Collectors.joining("/"));
-			dto.setSpecDescription(specDescription);
+		if (!specs.isEmpty()) {
+			dto.setSpecDescription(specs.describe());
 		}
 
 		return dto;
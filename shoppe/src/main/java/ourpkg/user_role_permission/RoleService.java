@@ -7,6 +7,7 @@ import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import ourpkg.jwt.PrincipalCache;
 import ourpkg.product.ProductShopRepository;
 import ourpkg.shop.Shop;
 import ourpkg.user_role_permission.user.User;
@@ -20,6 +21,9 @@ public class RoleService {
 	
 	@Autowired
 	private UserRepository userRepository;
+
+	@Autowired
+	private PrincipalCache principalCache;
 	
 	public void updateAdminRoles(Integer userId, List<String> roleNames) {
 		Optional<User> op = userRepository.findByUserId(userId);
@@ -30,6 +34,7 @@ public class RoleService {
         // 更新使用者角色
         user.setRole(new HashSet<>(roles));
         userRepository.save(user);
+        principalCache.invalidateUser(userId);
     }
 
 	public Role insertRole(String name) {
@@ -64,11 +69,14 @@ public class RoleService {
 	}
 
 	public Role updateRole(Role role) {
-		return roleRepository.save(role);
+		Role saved = roleRepository.save(role);
+		principalCache.invalidateAll(); // 角色權限變更影響所有擁有此角色的使用者
+		return saved;
 	}
 
 	public void deleteRoleById(Integer id) {
 		roleRepository.deleteById(id);
+		principalCache.invalidateAll();
 	}
 	
     @Autowired
@@ -106,6 +114,7 @@ public class RoleService {
         // 更新使用者角色
         user.setRole(new HashSet<>(roles));
         userRepository.save(user);
+        principalCache.invalidateUser(userId);
     }
     
 }
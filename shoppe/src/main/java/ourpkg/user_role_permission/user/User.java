@@ -20,6 +20,7 @@ import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.FetchType;
@@ -50,6 +51,7 @@ import ourpkg.user_role_permission.Permission;
 import ourpkg.user_role_permission.Role;
 
 @Entity
+@EntityListeners(UserSecurityListener.class)
 @Table(name = "[User]")
 @Getter
 @Setter
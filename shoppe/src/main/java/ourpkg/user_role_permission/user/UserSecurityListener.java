@@ -0,0 +1,25 @@
+package ourpkg.user_role_permission.user;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import ourpkg.jwt.PrincipalCache;
+
+/**
+ * User 更新或刪除後（密碼、狀態、個人資料）作廢 JWT 認證用的使用者快取
+ * 由 Hibernate 透過 Spring 建立，因此可以注入 Bean
+ */
+public class UserSecurityListener {
+
+	@Autowired
+	private PrincipalCache principalCache;
+
+	@PostUpdate
+	@PostRemove
+	public void onUserChanged(User user) {
+		if (principalCache != null) {
+			principalCache.invalidateUser(user.getUserId());
+		}
+	}
+}
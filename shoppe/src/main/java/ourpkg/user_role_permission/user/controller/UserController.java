@@ -222,7 +222,8 @@ public class UserController {
 	
 	@GetMapping("/profile")
 	public ResponseEntity<?> getUserProfile(Authentication authentication) {
-	    User user = (User) authentication.getPrincipal();
+	    // principal 是快取的快照，完整資料從資料庫取
+	    User user = userService.getCurrentUser();
 	    
 	    Map<String, Object> response = new HashMap<>();
 	    response.put("userId", user.getUserId());
@@ -244,7 +245,7 @@ public class UserController {
 	    }
 
 	    // 取得當前登入使用者
-	    User user = (User) authentication.getPrincipal();
+	    User user = userService.getCurrentUser();
 	    
 	    UserProfilePhotoDTO dto = userService.saveUserAvatar(user, file);
 	    return ResponseEntity.ok(dto);
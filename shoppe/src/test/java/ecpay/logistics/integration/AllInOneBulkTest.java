@@ -0,0 +1,175 @@
+package ecpay.logistics.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ecpay.logistics.integration.AllInOne.BulkResult;
+import ecpay.logistics.integration.domain.QueryLogisticsTradeInfoObj;
+import ecpay.logistics.integration.ecpayOperator.HttpTransport;
+import ecpay.logistics.integration.exception.EcpayException;
+
+class AllInOneBulkTest {
+
+	/**
+	 * 不連網的傳輸層：非同步請求先掛著，由測試決定完成的順序
+	 */
+	private static final class StubTransport implements HttpTransport {
+		private final List<String> bodies = new ArrayList<>();
+		private final List<String> pendingIds = new ArrayList<>();
+		private final List<CompletableFuture<String>> pending = new ArrayList<>();
+		private int inFlight;
+		private int maxInFlight;
+
+		@Override
+		public String post(String url, String urlParameters, String encoding) {
+			bodies.add(urlParameters);
+			return "sync-" + logisticsId(urlParameters);
+		}
+
+		@Override
+		public CompletableFuture<String> postAsync(String url, String urlParameters, String encoding) {
+			bodies.add(urlParameters);
+			inFlight++;
+			maxInFlight = Math.max(maxInFlight, inFlight);
+			CompletableFuture<String> future = new CompletableFuture<>();
+			pendingIds.add(logisticsId(urlParameters));
+			pending.add(future);
+			return future;
+		}
+
+		/**
+		 * 完成最後送出的請求（倒序完成，讓完成順序與送出順序不同）
+		 */
+		private void completeLatest() {
+			int last = pending.size() - 1;
+			String id = pendingIds.remove(last);
+			CompletableFuture<String> future = pending.remove(last);
+			inFlight--;
+			if (id.endsWith("-fail")) {
+				future.completeExceptionally(new EcpayException("查詢失敗: " + id));
+			} else {
+				future.complete("resp-" + id);
+			}
+		}
+
+		private static String logisticsId(String body) {
+			for (String pair : body.split("&")) {
+				if (pair.startsWith("AllPayLogisticsID=")) {
+					return pair.substring("AllPayLogisticsID=".length());
+				}
+			}
+			throw new IllegalArgumentException(body);
+		}
+	}
+
+	private StubTransport transport;
+	private AllInOne allInOne;
+
+	@BeforeEach
+	void setUp() {
+		allInOne = new AllInOne("");
+		transport = new StubTransport();
+		AllInOneBase.setTransport(transport);
+	}
+
+	@AfterEach
+	void tearDown() {
+		AllInOneBase.setTransport(null);
+	}
+
+	private static List<QueryLogisticsTradeInfoObj> queries(String... ids) {
+		List<QueryLogisticsTradeInfoObj> objs = new ArrayList<>();
+		for (String id : ids) {
+			QueryLogisticsTradeInfoObj obj = new QueryLogisticsTradeInfoObj();
+			obj.setAllPayLogisticsID(id);
+			objs.add(obj);
+		}
+		return objs;
+	}
+
+	@Test
+	void keepsAtMostParallelismInFlightAndAnswersInInputOrder() {
+		List<QueryLogisticsTradeInfoObj> objs = queries("1", "2", "3", "4", "5", "6", "7", "8", "9", "10");
+
+		CompletableFuture<BulkResult<QueryLogisticsTradeInfoObj>> done = allInOne.bulk(objs,
+				allInOne::queryLogisticsTradeInfoAsync, 3);
+
+		assertEquals(3, transport.pending.size());
+		while (!transport.pending.isEmpty()) {
+			assertFalse(done.isDone());
+			transport.completeLatest();
+			assertTrue(transport.inFlight <= 3);
+		}
+
+		assertTrue(done.isDone());
+		assertEquals(3, transport.maxInFlight);
+		assertEquals(10, transport.bodies.size());
+		BulkResult<QueryLogisticsTradeInfoObj> result = done.join();
+		assertEquals(0, result.getFailureCount());
+		for (int i = 0; i < objs.size(); i++) {
+			assertEquals("resp-" + (i + 1), result.getResponse(i));
+			assertEquals(objs.get(i), result.getObj(i));
+		}
+	}
+
+	@Test
+	void failuresAreRecordedPerItem() {
+		// 第二筆超過長度限制，驗證失敗不會送出；第三筆由傳輸層回傳失敗
+		List<QueryLogisticsTradeInfoObj> objs = queries("1", "012345678901234567890", "3-fail", "4");
+
+		CompletableFuture<BulkResult<QueryLogisticsTradeInfoObj>> done = allInOne.bulk(objs,
+				allInOne::queryLogisticsTradeInfoAsync, 2);
+		while (!transport.pending.isEmpty()) {
+			transport.completeLatest();
+		}
+
+		BulkResult<QueryLogisticsTradeInfoObj> result = done.join();
+		assertEquals(3, transport.bodies.size());
+		assertEquals(2, result.getFailureCount());
+		assertEquals("resp-1", result.getResponse(0));
+		assertInstanceOf(EcpayException.class, result.getError(1));
+		assertNull(result.getResponse(1));
+		assertEquals("查詢失敗: 3-fail", ((EcpayException) result.getError(2)).getNewExceptionMessage());
+		assertTrue(result.isSuccess(3));
+		assertEquals("resp-4", result.getResponse(3));
+	}
+
+	@Test
+	void parallelismLargerThanTheListSendsEverythingAtOnce() {
+		CompletableFuture<BulkResult<QueryLogisticsTradeInfoObj>> done = allInOne.bulk(queries("1", "2"),
+				allInOne::queryLogisticsTradeInfoAsync, 16);
+
+		assertEquals(2, transport.pending.size());
+		transport.completeLatest();
+		transport.completeLatest();
+		assertEquals("resp-2", done.join().getResponse(1));
+	}
+
+	@Test
+	void emptyListCompletesImmediately() {
+		CompletableFuture<BulkResult<QueryLogisticsTradeInfoObj>> done = allInOne.bulk(queries(),
+				allInOne::queryLogisticsTradeInfoAsync, 4);
+
+		assertTrue(done.isDone());
+		assertEquals(0, done.join().size());
+	}
+
+	@Test
+	void synchronousCallUsesTheSameTransport() {
+		QueryLogisticsTradeInfoObj obj = queries("42").get(0);
+
+		assertEquals("sync-42", allInOne.queryLogisticsTradeInfo(obj));
+		assertTrue(transport.bodies.get(0).contains("CheckMacValue="));
+	}
+}
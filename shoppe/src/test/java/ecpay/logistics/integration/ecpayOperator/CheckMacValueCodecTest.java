@@ -0,0 +1,295 @@
+package ecpay.logistics.integration.ecpayOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import ecpay.logistics.integration.domain.CancelC2COrderObj;
+import ecpay.logistics.integration.exception.EcpayException;
+
+class CheckMacValueCodecTest {
+
+	private static final String HASH_KEY = "5294y06JbISpM5x9";
+	private static final String HASH_IV = "v77hoKGq4kWxNNIS";
+
+	/**
+	 * 逐字照綠界文件的做法：排序、組字串、URLEncoder、轉小寫、還原 ! ( )、MD5 轉大寫
+	 */
+	private static String reference(String hashKey, String hashIv, Map<String, String> params) throws Exception {
+		// 排序鍵：每個字元轉成不分大小寫的形式，相同時再比原字串
+		TreeMap<String, String> sorted = new TreeMap<>(
+				Comparator.comparing(CheckMacValueCodecTest::fold).thenComparing(Comparator.naturalOrder()));
+		sorted.putAll(params);
+		sorted.remove("CheckMacValue");
+		StringBuilder raw = new StringBuilder("HashKey=").append(hashKey);
+		for (Map.Entry<String, String> entry : sorted.entrySet()) {
+			raw.append('&').append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		raw.append("&HashIV=").append(hashIv);
+		String encoded = URLEncoder.encode(raw.toString(), StandardCharsets.UTF_8).toLowerCase(Locale.ROOT)
+				.replace("%21", "!").replace("%28", "(").replace("%29", ")");
+		byte[] md5 = MessageDigest.getInstance("MD5").digest(encoded.getBytes(StandardCharsets.UTF_8));
+		return HexFormat.of().withUpperCase().formatHex(md5);
+	}
+
+	private static String fold(String name) {
+		char[] chars = name.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		}
+		return new String(chars);
+	}
+
+	private static String randomText(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int length = random.nextInt(20);
+		for (int i = 0; i < length; i++) {
+			switch (random.nextInt(8)) {
+			case 0 -> sb.append((char) (0x20 + random.nextInt(0x5F))); // 可見 ASCII
+			case 1 -> sb.append((char) random.nextInt(0x80)); // 含控制字元
+			case 2 -> sb.append((char) (0x80 + random.nextInt(0x780))); // 兩位元組
+			case 3 -> sb.append((char) (0x4E00 + random.nextInt(0x5000))); // 中文
+			case 4 -> sb.appendCodePoint(0x1F600 + random.nextInt(0x50)); // emoji（成對代理字元）
+			case 5 -> sb.append((char) (0xD800 + random.nextInt(0x400))); // 不成對的高代理字元
+			case 6 -> sb.append((char) (0xDC00 + random.nextInt(0x400))); // 不成對的低代理字元
+			default -> sb.append("!()*-._ &=%+~'".charAt(random.nextInt(14)));
+			}
+		}
+		return sb.toString();
+	}
+
+	@Test
+	void matchesTheReferenceOnRandomMaps() throws Exception {
+		Random random = new Random(20240601L);
+		for (int round = 0; round < 5000; round++) {
+			Map<String, String> params = new HashMap<>();
+			int count = random.nextInt(40);
+			for (int i = 0; i < count; i++) {
+				params.put(randomText(random), randomText(random));
+			}
+			String hashKey = randomText(random);
+			String hashIv = randomText(random);
+
+			assertEquals(reference(hashKey, hashIv, params), CheckMacValueCodec.sign(hashKey, hashIv, params),
+					"round " + round);
+		}
+	}
+
+	@Test
+	void namesSortCaseInsensitively() throws Exception {
+		Map<String, String> params = new LinkedHashMap<>();
+		params.put("merchantTradeNo", "A1");
+		params.put("MerchantID", "2000132");
+		params.put("ChoosePayment", "ALL");
+		params.put("ItemName", "手機殼 (黑) x1!");
+
+		assertEquals(reference(HASH_KEY, HASH_IV, params), CheckMacValueCodec.sign(HASH_KEY, HASH_IV, params));
+	}
+
+	@Test
+	void signatureDoesNotDependOnMapOrder() {
+		// 這組名稱用 String.CASE_INSENSITIVE_ORDER 排序時不具遞移性
+		String[] names = { "\uD83D\uD83D\uDE41", "\uD9E3.", "\uD83D\uDE14", "A", "b", "\uDCE9&" };
+		Random random = new Random(1);
+		String expected = null;
+		for (int round = 0; round < 200; round++) {
+			List<String> shuffled = new ArrayList<>(List.of(names));
+			Collections.shuffle(shuffled, random);
+			Map<String, String> params = new LinkedHashMap<>();
+			for (String name : shuffled) {
+				params.put(name, "v");
+			}
+			String mac = CheckMacValueCodec.sign(HASH_KEY, HASH_IV, params);
+			if (expected == null) {
+				expected = mac;
+			}
+			assertEquals(expected, mac);
+		}
+	}
+
+	@Test
+	void checkMacValueParameterIsIgnored() {
+		Map<String, String> params = new HashMap<>(Map.of("MerchantID", "2000132", "RtnCode", "1"));
+		String expected = CheckMacValueCodec.sign(HASH_KEY, HASH_IV, params);
+
+		params.put("CheckMacValue", "whatever");
+		assertEquals(expected, CheckMacValueCodec.sign(HASH_KEY, HASH_IV, params));
+	}
+
+	@Test
+	void skipBlankDropsEmptyValues() {
+		Map<String, String> withBlank = new HashMap<>(Map.of("MerchantID", "2000132", "Remark", " "));
+		Map<String, String> withoutBlank = Map.of("MerchantID", "2000132");
+
+		assertEquals(CheckMacValueCodec.sign(HASH_KEY, HASH_IV, withoutBlank),
+				CheckMacValueCodec.sign(HASH_KEY, HASH_IV, withBlank, true));
+	}
+
+	@Test
+	void verifyAcceptsOnlyTheMatchingValue() {
+		Map<String, String> params = new HashMap<>(Map.of("MerchantID", "2000132", "RtnCode", "1", "TradeNo", "T123"));
+		String mac = CheckMacValueCodec.sign(HASH_KEY, HASH_IV, params);
+
+		params.put("CheckMacValue", mac);
+		assertTrue(CheckMacValueCodec.verify(HASH_KEY, HASH_IV, params));
+		params.put("CheckMacValue", " " + mac.toLowerCase(Locale.ROOT) + " ");
+		assertTrue(CheckMacValueCodec.verify(HASH_KEY, HASH_IV, params));
+
+		params.put("CheckMacValue", mac.substring(0, 31) + (mac.charAt(31) == '0' ? '1' : '0'));
+		assertFalse(CheckMacValueCodec.verify(HASH_KEY, HASH_IV, params));
+		params.put("CheckMacValue", mac.substring(1));
+		assertFalse(CheckMacValueCodec.verify(HASH_KEY, HASH_IV, params));
+		params.put("CheckMacValue", mac.substring(0, 31) + "G");
+		assertFalse(CheckMacValueCodec.verify(HASH_KEY, HASH_IV, params));
+		params.remove("CheckMacValue");
+		assertFalse(CheckMacValueCodec.verify(HASH_KEY, HASH_IV, params));
+	}
+
+	@Test
+	void objectCodecMatchesTheMapPath() throws Exception {
+		CancelC2COrderObj obj = new CancelC2COrderObj();
+		obj.setMerchantID("2000132");
+		obj.setAllPayLogisticsID("1718546");
+		obj.setCVSPaymentNo("C9000007");
+		obj.setCVSValidationNo("9785");
+
+		CheckMacValueCodec.ObjectCodec codec = CheckMacValueCodec.forClass(CancelC2COrderObj.class);
+		Map<String, String> params = codec.toHashtable(obj);
+		String mac = codec.checkMacValue(HASH_KEY, HASH_IV, obj);
+
+		assertEquals(reference(HASH_KEY, HASH_IV, params), mac);
+		assertEquals(mac, EcpayFunction.genCheckMacValue(HASH_KEY, HASH_IV, obj));
+
+		List<String> pairs = new ArrayList<>(List.of(codec.httpValue(obj, mac).split("&")));
+		assertEquals("CheckMacValue=" + mac, pairs.remove(pairs.size() - 1));
+		assertEquals(List.of("AllPayLogisticsID=1718546", "CVSPaymentNo=C9000007", "CVSValidationNo=9785",
+				"MerchantID=2000132", "PlatformID="), pairs);
+	}
+
+	@Test
+	void missingFieldValueFailsLikeTheSdk() {
+		CancelC2COrderObj obj = new CancelC2COrderObj();
+		obj.setMerchantID(null);
+
+		assertThrows(EcpayException.class,
+				() -> CheckMacValueCodec.forClass(CancelC2COrderObj.class).checkMacValue(HASH_KEY, HASH_IV, obj));
+	}
+
+	/**
+	 * 綠界付款結果通知的欄位（ReturnURL 收到的內容）
+	 */
+	private static Map<String, String> paymentNotification(int i) {
+		Map<String, String> params = new HashMap<>();
+		params.put("MerchantID", "3002607");
+		params.put("MerchantTradeNo", "ORD" + String.format("%06d", i % 1_000_000) + "1234");
+		params.put("StoreID", "");
+		params.put("RtnCode", "1");
+		params.put("RtnMsg", "交易成功");
+		params.put("TradeNo", "2406011200" + (100000 + i % 900000));
+		params.put("TradeAmt", String.valueOf(100 + i % 5000));
+		params.put("PaymentDate", "2024/06/01 12:00:00");
+		params.put("PaymentType", "Credit_CreditCard");
+		params.put("PaymentTypeChargeFee", "3");
+		params.put("TradeDate", "2024/06/01 11:58:30");
+		params.put("SimulatePaid", "0");
+		params.put("CustomField1", "");
+		params.put("CustomField2", "");
+		params.put("CustomField3", "");
+		params.put("CustomField4", "");
+		return params;
+	}
+
+	@Test
+	void signAndVerifyKeepUpWithFiftyThousandPerSecondOnOneThread() {
+		int count = 200_000;
+		List<Map<String, String>> maps = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			Map<String, String> params = paymentNotification(i);
+			params.put("CheckMacValue", CheckMacValueCodec.sign(HASH_KEY, HASH_IV, params));
+			maps.add(params);
+		}
+		// 暖機讓 JIT 編譯完成
+		for (int i = 0; i < 50_000; i++) {
+			CheckMacValueCodec.verify(HASH_KEY, HASH_IV, maps.get(i % maps.size()));
+		}
+
+		long start = System.nanoTime();
+		int blackhole = 0;
+		for (int i = 0; i < count; i++) {
+			blackhole += CheckMacValueCodec.sign(HASH_KEY, HASH_IV, maps.get(i % maps.size())).charAt(0);
+		}
+		double signPerSecond = count / ((System.nanoTime() - start) / 1e9);
+
+		start = System.nanoTime();
+		int verified = 0;
+		for (int i = 0; i < count; i++) {
+			if (CheckMacValueCodec.verify(HASH_KEY, HASH_IV, maps.get(i % maps.size()))) {
+				verified++;
+			}
+		}
+		double verifyPerSecond = count / ((System.nanoTime() - start) / 1e9);
+
+		assertTrue(blackhole > 0);
+		assertEquals(count, verified);
+		assertTrue(signPerSecond >= 50_000, "sign: " + (long) signPerSecond + " ops/s");
+		assertTrue(verifyPerSecond >= 50_000, "verify: " + (long) verifyPerSecond + " ops/s");
+	}
+
+	@Test
+	void perThreadBuffersDoNotMixConcurrentSignatures() throws Exception {
+		// 大小差很多的參數表交錯簽章，確認各執行緒的排序陣列與緩衝區不會互相影響
+		Random random = new Random(7);
+		List<Map<String, String>> maps = new ArrayList<>();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 400; i++) {
+			Map<String, String> params = new HashMap<>();
+			int size = i % 2 == 0 ? 1 : 60;
+			for (int j = 0; j < size; j++) {
+				params.put(randomText(random), randomText(random));
+			}
+			maps.add(params);
+			expected.add(reference(HASH_KEY, HASH_IV, params));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<Integer>> mismatches = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			int offset = t;
+			mismatches.add(pool.submit(() -> {
+				int wrong = 0;
+				for (int round = 0; round < 5000; round++) {
+					int i = (round * 7 + offset) % maps.size();
+					if (!expected.get(i).equals(CheckMacValueCodec.sign(HASH_KEY, HASH_IV, maps.get(i)))) {
+						wrong++;
+					}
+				}
+				return wrong;
+			}));
+		}
+		for (Future<Integer> future : mismatches) {
+			assertEquals(0, future.get());
+		}
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,216 @@
+package ecpay.logistics.integration.ecpayOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import ecpay.logistics.integration.exception.EcpayException;
+
+class PooledHttpTransportTest {
+
+	private static final Charset BIG5 = Charset.forName("Big5");
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private String baseUrl;
+
+	// 每個請求來自的用戶端連接埠，同一條連線的連接埠相同
+	private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+	private final List<String> requestBodies = new ArrayList<>();
+	private final CountDownLatch releaseSlow = new CountDownLatch(1);
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/echo", exchange -> {
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			String body = new String(exchange.getRequestBody().readAllBytes(), BIG5);
+			synchronized (requestBodies) {
+				requestBodies.add(body);
+			}
+			respond(exchange, 200, "1|OK\r\n" + body + "\n" + exchange.getRequestHeaders().getFirst("Content-Type"), BIG5);
+		});
+		server.createContext("/error", exchange -> respond(exchange, 500, "boom", StandardCharsets.UTF_8));
+		server.createContext("/slow", exchange -> {
+			try {
+				releaseSlow.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			respond(exchange, 200, "slow", StandardCharsets.UTF_8);
+		});
+		server.start();
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@AfterEach
+	void stopServer() {
+		releaseSlow.countDown();
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body, Charset charset) throws IOException {
+		byte[] bytes = body.getBytes(charset);
+		// 指定長度才能保持連線
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+
+	@Test
+	void sequentialRequestsReuseOneConnection() {
+		PooledHttpTransport transport = new PooledHttpTransport(1000, 5000);
+
+		for (int i = 0; i < 5; i++) {
+			transport.post(baseUrl + "/echo", "n=" + i, "UTF-8");
+		}
+
+		assertEquals(5, requestBodies.size());
+		assertEquals(1, clientPorts.size());
+	}
+
+	@Test
+	void formIsEncodedWithTheRequestedCharsetAndLineBreaksAreRemoved() {
+		PooledHttpTransport transport = new PooledHttpTransport(1000, 5000);
+
+		String response = transport.post(baseUrl + "/echo", "ReceiverName=王小明", "Big5");
+
+		assertEquals("1|OKReceiverName=王小明application/x-www-form-urlencoded", response);
+	}
+
+	@Test
+	void httpErrorStatusBecomesAnEcpayException() {
+		PooledHttpTransport transport = new PooledHttpTransport(1000, 5000);
+
+		EcpayException e = assertThrows(EcpayException.class, () -> transport.post(baseUrl + "/error", "", "UTF-8"));
+
+		assertEquals("Server returned HTTP response code: 500 for URL: " + baseUrl + "/error",
+				e.getNewExceptionMessage());
+	}
+
+	@Test
+	void requestTimeoutFailsWithoutWaitingForTheServer() {
+		PooledHttpTransport transport = new PooledHttpTransport(1000, 300);
+
+		long start = System.nanoTime();
+		assertThrows(EcpayException.class, () -> transport.post(baseUrl + "/slow", "", "UTF-8"));
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertTrue(elapsedMillis < 3000, "逾時花了 " + elapsedMillis + " ms");
+	}
+
+	@Test
+	void refusedConnectionBecomesAnEcpayException() throws IOException {
+		int closedPort;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			closedPort = socket.getLocalPort();
+		}
+		PooledHttpTransport transport = new PooledHttpTransport(1000, 5000);
+
+		assertThrows(EcpayException.class, () -> transport.post("http://127.0.0.1:" + closedPort + "/", "", "UTF-8"));
+	}
+
+	@Test
+	void asyncPostDoesNotBlockTheCaller() throws Exception {
+		PooledHttpTransport transport = new PooledHttpTransport(1000, 5000);
+
+		CompletableFuture<String> future = transport.postAsync(baseUrl + "/slow", "", "UTF-8");
+		assertFalse(future.isDone());
+
+		releaseSlow.countDown();
+		assertEquals("slow", future.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void concurrentAsyncPostsAllComplete() throws Exception {
+		PooledHttpTransport transport = new PooledHttpTransport(1000, 5000);
+
+		List<CompletableFuture<String>> futures = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			futures.add(transport.postAsync(baseUrl + "/echo", "n=" + i, "UTF-8"));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+		for (int i = 0; i < 50; i++) {
+			assertTrue(futures.get(i).get().contains("n=" + i));
+		}
+		assertEquals(50, requestBodies.size());
+	}
+
+	@Test
+	void untrustedCertificateIsRejected(@TempDir Path dir) throws Exception {
+		// 舊版 httpPost 會信任所有憑證，現在使用 JVM 預設的信任設定
+		Path keystore = dir.resolve("server.p12");
+		Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+				"-genkeypair", "-alias", "server", "-keyalg", "RSA", "-keysize", "2048", "-dname", "CN=127.0.0.1",
+				"-ext", "SAN=ip:127.0.0.1", "-validity", "1", "-storetype", "PKCS12", "-keystore",
+				keystore.toString(), "-storepass", "changeit", "-keypass", "changeit").redirectErrorStream(true).start();
+		assertTrue(keytool.waitFor(60, TimeUnit.SECONDS));
+		assertEquals(0, keytool.exitValue());
+
+		KeyStore store = KeyStore.getInstance("PKCS12");
+		try (InputStream in = new FileInputStream(keystore.toFile())) {
+			store.load(in, "changeit".toCharArray());
+		}
+		KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagers.init(store, "changeit".toCharArray());
+		SSLContext ssl = SSLContext.getInstance("TLS");
+		ssl.init(keyManagers.getKeyManagers(), null, null);
+
+		HttpsServer https = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		https.setHttpsConfigurator(new HttpsConfigurator(ssl));
+		HttpHandler ok = exchange -> respond(exchange, 200, "ok", StandardCharsets.UTF_8);
+		https.createContext("/", ok);
+		https.setExecutor(executor);
+		https.start();
+		try {
+			PooledHttpTransport transport = new PooledHttpTransport(1000, 5000);
+			String url = "https://127.0.0.1:" + https.getAddress().getPort() + "/";
+
+			ExecutionException e = assertThrows(ExecutionException.class,
+					() -> transport.postAsync(url, "", "UTF-8").get(10, TimeUnit.SECONDS));
+			assertInstanceOf(EcpayException.class, e.getCause());
+		} finally {
+			https.stop(0);
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package ourpkg.campaign.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ourpkg.campaign.entity.CampaignCoupon;
+import ourpkg.campaign.entity.MarketingCampaign;
+import ourpkg.campaign.repository.CampaignCouponRepository;
+import ourpkg.campaign.repository.MarketingCampaignRepository;
+import ourpkg.campaign.repository.UserCouponRepository;
+import ourpkg.campaign.service.MarketingCampaignService.ServiceResult;
+import ourpkg.user_role_permission.user.UserRepository;
+
+class CampaignCouponClaimServiceTest {
+
+    private CampaignCouponClaimService service;
+    private UserRepository userRepository;
+    private UserCouponRepository userCouponRepository;
+    private JdbcTemplate jdbcTemplate;
+
+    // 模擬資料庫中的剩餘數量與 UserCoupon
+    private final AtomicInteger dbRemaining = new AtomicInteger();
+    private final Set<Integer> dbClaimedUsers = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() {
+        service = new CampaignCouponClaimService();
+        userRepository = mock(UserRepository.class);
+        userCouponRepository = mock(UserCouponRepository.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        MarketingCampaignRepository campaignRepository = mock(MarketingCampaignRepository.class);
+        CampaignCouponRepository campaignCouponRepository = mock(CampaignCouponRepository.class);
+
+        MarketingCampaign campaign = new MarketingCampaign();
+        campaign.setCampaignId(1);
+        campaign.setStartDate(LocalDateTime.now().minusDays(1));
+        campaign.setEndDate(LocalDateTime.now().plusDays(1));
+        when(campaignRepository.findById(1)).thenReturn(Optional.of(campaign));
+        when(campaignCouponRepository.findByCampaignIdAndCouponId(1, 2)).thenAnswer(invocation -> {
+            CampaignCoupon campaignCoupon = new CampaignCoupon();
+            campaignCoupon.setRemainingQuantity(dbRemaining.get());
+            return Optional.of(campaignCoupon);
+        });
+        when(userCouponRepository.findUserIdsByCouponId(2)).thenAnswer(invocation -> List.copyOf(dbClaimedUsers));
+        when(userRepository.existsById(any())).thenReturn(true);
+
+        ReflectionTestUtils.setField(service, "marketingCampaignRepository", campaignRepository);
+        ReflectionTestUtils.setField(service, "campaignCouponRepository", campaignCouponRepository);
+        ReflectionTestUtils.setField(service, "userCouponRepository", userCouponRepository);
+        ReflectionTestUtils.setField(service, "userRepository", userRepository);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(service, "batchSize", 1000);
+        ReflectionTestUtils.setField(service, "flushIntervalMillis", 5L);
+        ReflectionTestUtils.setField(service, "awaitMillis", 30_000L);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (ReflectionTestUtils.getField(service, "writer") != null) {
+            service.stop();
+        }
+    }
+
+    /**
+     * 條件式扣減與插入都照資料庫語意執行；insertFailure 不為 null 時插入一律失敗
+     */
+    @SuppressWarnings("unchecked")
+    private void database(RuntimeException insertFailure) {
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            Object[] args = (Object[]) invocation.getRawArguments()[1];
+            if (sql.startsWith("UPDATE CampaignCoupon")) {
+                int quantity = (Integer) args[0];
+                synchronized (dbRemaining) {
+                    if (dbRemaining.get() < quantity) {
+                        return 0;
+                    }
+                    dbRemaining.addAndGet(-quantity);
+                    return 1;
+                }
+            }
+            if (insertFailure != null) {
+                throw insertFailure;
+            }
+            dbClaimedUsers.add((Integer) args[0]);
+            return 1;
+        });
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenAnswer(invocation -> {
+                    if (insertFailure != null) {
+                        throw insertFailure;
+                    }
+                    Collection<Object> claims = invocation.getArgument(1);
+                    for (Object claim : claims) {
+                        dbClaimedUsers.add((Integer) ReflectionTestUtils.getField(claim, "userId"));
+                    }
+                    return new int[][] { new int[claims.size()] };
+                });
+    }
+
+    @Test
+    void unknownUserIsRejectedAndGivesTheSlotBack() {
+        dbRemaining.set(1);
+        when(userRepository.existsById(99)).thenReturn(false);
+
+        ServiceResult<Boolean> result = service.claim(99, 1, 2);
+
+        assertFalse(result.isSuccess());
+        assertEquals("用戶不存在: 99", result.getMessage());
+        assertFalse(service.hasClaimed(99, 1, 2));
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+
+        // 名額還在，存在的用戶仍可領取
+        database(null);
+        service.start();
+        assertTrue(service.claim(7, 1, 2).isSuccess());
+        assertEquals(0, dbRemaining.get());
+    }
+
+    @Test
+    void foreignKeyFailureIsNotReportedAsADuplicate() {
+        dbRemaining.set(5);
+        database(new DataIntegrityViolationException("FK_UserCoupon_User",
+                new SQLException("The INSERT statement conflicted with the FOREIGN KEY constraint", "23000", 547)));
+        service.start();
+
+        ServiceResult<Boolean> result = service.claim(7, 1, 2);
+
+        assertFalse(result.isSuccess());
+        assertEquals("領取失敗，用戶或優惠券已不存在", result.getMessage());
+    }
+
+    @Test
+    void uniqueKeyFailureIsReportedAsADuplicate() {
+        dbRemaining.set(5);
+        database(new DuplicateKeyException("UQ_User_Coupon"));
+        service.start();
+
+        ServiceResult<Boolean> result = service.claim(7, 1, 2);
+
+        assertFalse(result.isSuccess());
+        assertEquals("您已領取過該優惠券", result.getMessage());
+    }
+
+    @Test
+    void tenThousandConcurrentClaimsPersistExactlyTheQuantity() throws Exception {
+        int quantity = 1000;
+        int claimants = 10_000;
+        dbRemaining.set(quantity);
+        database(null);
+        service.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(200);
+        List<Future<ServiceResult<Boolean>>> results = new ArrayList<>();
+        for (int i = 0; i < claimants; i++) {
+            // 每人領兩次，第二次應被擋下
+            int userId = i / 2;
+            results.add(pool.submit(() -> service.claim(userId, 1, 2)));
+        }
+        int accepted = 0;
+        int soldOut = 0;
+        int duplicate = 0;
+        for (Future<ServiceResult<Boolean>> future : results) {
+            ServiceResult<Boolean> result = future.get(60, TimeUnit.SECONDS);
+            if (result.isSuccess()) {
+                accepted++;
+            } else if ("該優惠券已被領完".equals(result.getMessage())) {
+                soldOut++;
+            } else if ("您已領取過該優惠券".equals(result.getMessage())) {
+                duplicate++;
+            }
+        }
+        pool.shutdown();
+
+        assertEquals(quantity, accepted);
+        assertEquals(claimants, accepted + soldOut + duplicate);
+        assertEquals(0, dbRemaining.get());
+        assertEquals(quantity, dbClaimedUsers.size());
+        // 用戶存在與否只在通過閘門後查詢
+        verify(userRepository, times(quantity)).existsById(any());
+    }
+}
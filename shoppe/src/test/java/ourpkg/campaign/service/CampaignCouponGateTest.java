@@ -0,0 +1,116 @@
+package ourpkg.campaign.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import ourpkg.campaign.service.CampaignCouponGate.Outcome;
+
+class CampaignCouponGateTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+    private static CampaignCouponGate gate(int remaining, List<Integer> claimed) {
+        return new CampaignCouponGate(true, NOW.minusDays(1), NOW.plusDays(1), remaining, claimed);
+    }
+
+    @Test
+    void claimsUntilExhausted() {
+        CampaignCouponGate gate = gate(2, List.of());
+
+        assertEquals(Outcome.ACCEPTED, gate.tryClaim(1, NOW));
+        assertEquals(Outcome.ACCEPTED, gate.tryClaim(2, NOW));
+        assertEquals(Outcome.SOLD_OUT, gate.tryClaim(3, NOW));
+        assertEquals(0, gate.remaining());
+        assertFalse(gate.hasClaimed(3));
+    }
+
+    @Test
+    void sameUserCannotClaimTwice() {
+        CampaignCouponGate gate = gate(5, List.of(7));
+
+        assertEquals(Outcome.ALREADY_CLAIMED, gate.tryClaim(7, NOW));
+        assertEquals(Outcome.ACCEPTED, gate.tryClaim(8, NOW));
+        assertEquals(Outcome.ALREADY_CLAIMED, gate.tryClaim(8, NOW));
+        assertEquals(4, gate.remaining());
+    }
+
+    @Test
+    void outsideTheWindowOrInactiveIsNotRunning() {
+        CampaignCouponGate gate = gate(5, List.of());
+        CampaignCouponGate inactive = new CampaignCouponGate(false, NOW.minusDays(1), NOW.plusDays(1), 5, List.of());
+
+        assertEquals(Outcome.NOT_RUNNING, gate.tryClaim(1, NOW.minusDays(2)));
+        assertEquals(Outcome.NOT_RUNNING, gate.tryClaim(1, NOW.plusDays(2)));
+        assertEquals(Outcome.NOT_RUNNING, inactive.tryClaim(1, NOW));
+        assertEquals(5, gate.remaining());
+    }
+
+    @Test
+    void negativeStockIsTreatedAsSoldOut() {
+        assertEquals(Outcome.SOLD_OUT, gate(-3, List.of()).tryClaim(1, NOW));
+    }
+
+    @Test
+    void releaseRestoresTheClaim() {
+        CampaignCouponGate gate = gate(1, List.of());
+        assertEquals(Outcome.ACCEPTED, gate.tryClaim(1, NOW));
+
+        gate.release(1);
+        gate.release(1);
+
+        assertEquals(1, gate.remaining());
+        assertFalse(gate.hasClaimed(1));
+        assertEquals(Outcome.ACCEPTED, gate.tryClaim(2, NOW));
+    }
+
+    @Test
+    void concurrentClaimsNeverOversell() throws InterruptedException {
+        int quantity = 1000;
+        int users = 10_000;
+        CampaignCouponGate gate = gate(quantity, List.of());
+        Map<Outcome, AtomicInteger> outcomes = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+
+        for (int i = 0; i < users; i++) {
+            int userId = i;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                // 每個使用者連點兩次
+                outcomes.computeIfAbsent(gate.tryClaim(userId, NOW), key -> new AtomicInteger()).incrementAndGet();
+                outcomes.computeIfAbsent(gate.tryClaim(userId, NOW), key -> new AtomicInteger()).incrementAndGet();
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(quantity, outcomes.get(Outcome.ACCEPTED).get());
+        assertEquals(0, gate.remaining());
+        int accepted = 0;
+        for (int i = 0; i < users; i++) {
+            if (gate.hasClaimed(i)) {
+                accepted++;
+            }
+        }
+        assertEquals(quantity, accepted);
+    }
+}
@@ -0,0 +1,133 @@
+package ourpkg.cart.cart_with_complete_product_info;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ourpkg.cart.CartRepository;
+import ourpkg.product.ProductImageRepository;
+import ourpkg.sku.SkuRepository;
+
+class CartService2Test {
+
+	private CartRepository cartRepository;
+	private ProductImageRepository productImageRepository;
+	private SkuRepository skuRepository;
+	private CartService2 service;
+
+	@BeforeEach
+	void setUp() {
+		cartRepository = mock(CartRepository.class);
+		productImageRepository = mock(ProductImageRepository.class);
+		skuRepository = mock(SkuRepository.class);
+		service = new CartService2();
+		ReflectionTestUtils.setField(service, "cartRepository", cartRepository);
+		ReflectionTestUtils.setField(service, "productImageRepository", productImageRepository);
+		ReflectionTestUtils.setField(service, "skuRepository", skuRepository);
+	}
+
+	/**
+	 * 與 findCartViewRows 相同的欄位順序
+	 */
+	private static Object[] row(int cartId, int quantity, int skuId, String price, int stock, String spec,
+			int productId, String productName, Integer shopId, String shopName) {
+		return new Object[] { cartId, quantity, skuId, new BigDecimal(price), stock, spec, productId, productName, shopId,
+				shopName };
+	}
+
+	@Test
+	void cartViewIsOneRowQueryPlusOneImageQuery() {
+		List<Object[]> rows = new ArrayList<>();
+		for (int i = 1; i <= 50; i++) {
+			rows.add(row(i, 1, 100 + i, "10", 5, null, 1000 + i % 7, "商品" + i, 1, "店"));
+		}
+		when(cartRepository.findCartViewRows(9)).thenReturn(rows);
+		when(productImageRepository.findCoverImageRowsByProductIds(any())).thenReturn(List.of());
+
+		assertEquals(50, service.getCartByUserId(9).size());
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Collection<Integer>> ids = ArgumentCaptor.forClass(Collection.class);
+		verify(cartRepository, times(1)).findCartViewRows(9);
+		verify(productImageRepository, times(1)).findCoverImageRowsByProductIds(ids.capture());
+		assertEquals(7, Set.copyOf(ids.getValue()).size());
+		verify(productImageRepository, never()).findFirstImageByProduct_ProductId(anyInt());
+		verifyNoInteractions(skuRepository);
+	}
+
+	@Test
+	void rowsAreMappedWithCoverImageSpecAndDefaults() {
+		List<Object[]> rows = List.of(
+				row(1, 2, 11, "199", 8, "{\"顏色\":\"黑\",\"尺寸\":\"M\"}", 101, "T恤", 5, "服飾店"),
+				row(2, 1, 12, "50", 3, null, 102, null, null, null));
+		when(cartRepository.findCartViewRows(9)).thenReturn(rows);
+		// 同一商品有多張圖時取第一張（查詢已依主圖排序）
+		when(productImageRepository.findCoverImageRowsByProductIds(any()))
+				.thenReturn(List.of(new Object[] { 101, "/uploads/a.jpg" }, new Object[] { 101, "/uploads/b.jpg" }));
+
+		List<CartItemDTO2> items = service.getCartByUserId(9);
+
+		CartItemDTO2 first = items.get(0);
+		assertEquals(1, first.getCartId());
+		assertEquals(11, first.getSkuId());
+		assertEquals("T恤", first.getName());
+		assertEquals(2, first.getQuantity());
+		assertEquals(new BigDecimal("199"), first.getPrice());
+		assertEquals("/uploads/a.jpg", first.getImageUrl());
+		assertEquals(Map.of("顏色", "黑", "尺寸", "M"), first.getSpecInfo());
+		assertEquals("服飾店", first.getShopName());
+		assertEquals(8, first.getStock());
+
+		CartItemDTO2 second = items.get(1);
+		assertEquals("未知商品", second.getName());
+		assertEquals("/img/default-product.jpg", second.getImageUrl());
+		assertEquals("未知店鋪", second.getShopName());
+		assertEquals(Map.of(), second.getSpecInfo());
+
+		// 回傳的規格可以修改，不影響共用的解析快取
+		first.getSpecInfo().put("顏色", "白");
+		assertEquals("黑", service.getCartByUserId(9).get(0).getSpecInfo().get("顏色"));
+	}
+
+	@Test
+	void groupsByShopInFirstSeenOrderWithSubtotals() {
+		when(cartRepository.findCartViewRows(9)).thenReturn(List.of(
+				row(1, 2, 11, "100", 9, null, 101, "A", 5, "五號店"),
+				row(2, 1, 12, "30", 9, null, 102, "B", 3, "三號店"),
+				row(3, 3, 13, "10.5", 9, null, 103, "C", 5, "五號店")));
+		when(productImageRepository.findCoverImageRowsByProductIds(any())).thenReturn(List.of());
+
+		List<CartShopGroupDTO2> groups = service.getCartGroupedByShop(9);
+
+		assertEquals(List.of(5, 3), groups.stream().map(CartShopGroupDTO2::getShopId).toList());
+		assertEquals(2, groups.get(0).getItems().size());
+		assertEquals(0, new BigDecimal("231.5").compareTo(groups.get(0).getSubtotal()));
+		assertEquals(0, new BigDecimal("30").compareTo(groups.get(1).getSubtotal()));
+	}
+
+	@Test
+	void emptyCartIsAnError() {
+		when(cartRepository.findCartViewRows(9)).thenReturn(List.of());
+
+		assertThrows(RuntimeException.class, () -> service.getCartByUserId(9));
+	}
+}
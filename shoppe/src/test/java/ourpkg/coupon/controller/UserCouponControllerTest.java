@@ -0,0 +1,96 @@
+package ourpkg.coupon.controller;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import ourpkg.campaign.repository.UserCouponRepository;
+import ourpkg.cart.CartRepository;
+import ourpkg.coupon.entity.Coupon;
+import ourpkg.coupon.model.CouponEvaluator;
+import ourpkg.coupon.service.CouponEvaluatorCache;
+import ourpkg.coupon.service.CouponPricingService;
+import ourpkg.shop.Shop;
+import ourpkg.user_role_permission.user.service.UserService;
+
+class UserCouponControllerTest {
+
+	private MockMvc mockMvc;
+	private CartRepository cartRepository;
+	private UserCouponRepository userCouponRepository;
+	private CouponEvaluatorCache couponEvaluatorCache;
+
+	@BeforeEach
+	void setUp() {
+		cartRepository = mock(CartRepository.class);
+		userCouponRepository = mock(UserCouponRepository.class);
+		couponEvaluatorCache = mock(CouponEvaluatorCache.class);
+		CouponPricingService pricingService = new CouponPricingService();
+		ReflectionTestUtils.setField(pricingService, "cartRepository", cartRepository);
+		ReflectionTestUtils.setField(pricingService, "userCouponRepository", userCouponRepository);
+		ReflectionTestUtils.setField(pricingService, "couponEvaluatorCache", couponEvaluatorCache);
+
+		UserService userService = mock(UserService.class);
+		when(userService.getCurrentUserId()).thenReturn(9);
+
+		UserCouponController controller = new UserCouponController();
+		ReflectionTestUtils.setField(controller, "userService", userService);
+		ReflectionTestUtils.setField(controller, "couponPricingService", pricingService);
+		mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	private void holds(int userCouponId, int couponId, String type, String value) {
+		Shop shop = new Shop();
+		shop.setShopId(3);
+		Coupon coupon = new Coupon();
+		coupon.setCouponId(couponId);
+		coupon.setCouponName("券" + couponId);
+		coupon.setShop(shop);
+		coupon.setDiscountType(type);
+		coupon.setDiscountValue(new BigDecimal(value));
+		coupon.setStartDate(new Date(0));
+		coupon.setEndDate(new Date(Long.MAX_VALUE));
+		when(couponEvaluatorCache.get(couponId)).thenReturn(CouponEvaluator.compile(coupon));
+	}
+
+	@Test
+	void bestForCartPricesTheCurrentUsersCart() throws Exception {
+		when(cartRepository.findCartViewRows(9)).thenReturn(List.<Object[]>of(
+				new Object[] { 1, 2, 11, new BigDecimal("300"), 5, "", 1, "商品", 3, "好店" }));
+		holds(501, 21, "PERCENTAGE", "20");
+		holds(502, 22, "FIXED_AMOUNT", "100");
+		when(userCouponRepository.findActiveCouponRows(9))
+				.thenReturn(List.<Object[]>of(new Object[] { 501, 21 }, new Object[] { 502, 22 }));
+
+		mockMvc.perform(get("/api/user-coupons/best-for-cart"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(1))
+				.andExpect(jsonPath("$[0].shopId").value(3))
+				.andExpect(jsonPath("$[0].shopName").value("好店"))
+				.andExpect(jsonPath("$[0].subtotal").value(600))
+				.andExpect(jsonPath("$[0].best.userCouponId").value(501))
+				.andExpect(jsonPath("$[0].best.finalTotal").value(480.00))
+				.andExpect(jsonPath("$[0].quotes[1].userCouponId").value(502));
+	}
+
+	@Test
+	void bestForCartWithAnEmptyCartReturnsAnEmptyList() throws Exception {
+		when(cartRepository.findCartViewRows(9)).thenReturn(List.of());
+
+		mockMvc.perform(get("/api/user-coupons/best-for-cart"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(0));
+	}
+}
@@ -0,0 +1,87 @@
+package ourpkg.coupon.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+import ourpkg.coupon.entity.Coupon;
+import ourpkg.shop.Shop;
+
+class CouponEvaluatorTest {
+
+	static Coupon coupon(int couponId, int shopId, String type, String value, long start, long end) {
+		Shop shop = new Shop();
+		shop.setShopId(shopId);
+		Coupon coupon = new Coupon();
+		coupon.setCouponId(couponId);
+		coupon.setCouponCode("CODE" + couponId);
+		coupon.setCouponName("券" + couponId);
+		coupon.setShop(shop);
+		coupon.setDiscountType(type);
+		coupon.setDiscountValue(new BigDecimal(value));
+		coupon.setStartDate(new Date(start));
+		coupon.setEndDate(new Date(end));
+		return coupon;
+	}
+
+	@Test
+	void percentageIsRoundedToCents() {
+		CouponEvaluator evaluator = CouponEvaluator.compile(coupon(1, 1, "PERCENTAGE", "15", 0, 1));
+
+		// 99.99 * 0.85 = 84.9915
+		assertEquals(new BigDecimal("84.99"), evaluator.discountedTotal(new BigDecimal("99.99")));
+		assertEquals(new BigDecimal("0.85"), evaluator.discountedTotal(BigDecimal.ONE));
+	}
+
+	@Test
+	void fixedAmountNeverGoesBelowZero() {
+		CouponEvaluator evaluator = CouponEvaluator.compile(coupon(1, 1, "FIXED_AMOUNT", "100", 0, 1));
+
+		assertEquals(new BigDecimal("150.00"), evaluator.discountedTotal(new BigDecimal("250")));
+		assertEquals(new BigDecimal("0.00"), evaluator.discountedTotal(new BigDecimal("60")));
+	}
+
+	@Test
+	void typeIsParsedOnceIgnoringCaseAndSpaces() {
+		CouponEvaluator evaluator = CouponEvaluator.compile(coupon(1, 1, " percentage ", "10", 0, 1));
+
+		assertEquals(DiscountType.PERCENTAGE, evaluator.getDiscountType());
+		assertEquals(" percentage ", evaluator.getDiscountTypeName());
+		assertEquals(new BigDecimal("90.00"), evaluator.discountedTotal(new BigDecimal("100")));
+	}
+
+	@Test
+	void unknownTypeCompilesButCannotPrice() {
+		CouponEvaluator evaluator = CouponEvaluator.compile(coupon(1, 1, "FREE_SHIPPING", "0", 0, 1));
+
+		assertFalse(evaluator.isSupported());
+		RuntimeException e = assertThrows(RuntimeException.class,
+				() -> evaluator.discountedTotal(BigDecimal.TEN));
+		assertEquals("❌ 不支援的折扣類型：FREE_SHIPPING", e.getMessage());
+	}
+
+	@Test
+	void validityWindowIncludesBothEnds() {
+		CouponEvaluator evaluator = CouponEvaluator.compile(coupon(1, 1, "PERCENTAGE", "10", 1_000, 2_000));
+
+		assertFalse(evaluator.isValidAt(999));
+		assertTrue(evaluator.isValidAt(1_000));
+		assertTrue(evaluator.isValidAt(2_000));
+		assertFalse(evaluator.isValidAt(2_001));
+	}
+
+	@Test
+	void appliesOnlyToItsOwnShop() {
+		CouponEvaluator evaluator = CouponEvaluator.compile(coupon(1, 7, "PERCENTAGE", "10", 0, 1));
+
+		assertTrue(evaluator.appliesToShop(7));
+		assertFalse(evaluator.appliesToShop(8));
+		assertFalse(evaluator.appliesToShop(null));
+	}
+}
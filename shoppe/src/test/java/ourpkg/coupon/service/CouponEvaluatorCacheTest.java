@@ -0,0 +1,144 @@
+package ourpkg.coupon.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ourpkg.coupon.entity.Coupon;
+import ourpkg.coupon.model.CouponEvaluator;
+import ourpkg.coupon.repository.CouponRepository;
+import ourpkg.shop.Shop;
+
+class CouponEvaluatorCacheTest {
+
+	private CouponEvaluatorCache cache;
+	private CouponRepository couponRepository;
+
+	@BeforeEach
+	void setUp() {
+		cache = new CouponEvaluatorCache();
+		couponRepository = mock(CouponRepository.class);
+		ReflectionTestUtils.setField(cache, "couponRepository", couponRepository);
+		ReflectionTestUtils.setField(cache, "maxSize", 100);
+	}
+
+	@AfterEach
+	void clearSynchronization() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	private static Coupon coupon(int couponId, String code, String value) {
+		Shop shop = new Shop();
+		shop.setShopId(1);
+		Coupon coupon = new Coupon();
+		coupon.setCouponId(couponId);
+		coupon.setCouponCode(code);
+		coupon.setShop(shop);
+		coupon.setDiscountType("FIXED_AMOUNT");
+		coupon.setDiscountValue(new BigDecimal(value));
+		coupon.setStartDate(new java.util.Date(0));
+		coupon.setEndDate(new java.util.Date(Long.MAX_VALUE));
+		return coupon;
+	}
+
+	@Test
+	void hitsDoNotReloadAndMissingCouponsAreNotCached() {
+		when(couponRepository.findById(1)).thenReturn(Optional.of(coupon(1, "A", "10")));
+
+		CouponEvaluator first = cache.get(1);
+		assertSame(first, cache.get(1));
+		verify(couponRepository, times(1)).findById(1);
+
+		assertNull(cache.get(2));
+		assertNull(cache.get(2));
+		verify(couponRepository, times(2)).findById(2);
+	}
+
+	@Test
+	void invalidateReloadsTheEditedCoupon() {
+		when(couponRepository.findById(1)).thenReturn(Optional.of(coupon(1, "A", "10")),
+				Optional.of(coupon(1, "A", "30")));
+		assertEquals(new BigDecimal("10"), cache.get(1).getDiscountValue());
+
+		cache.invalidate(1);
+
+		assertEquals(new BigDecimal("30"), cache.get(1).getDiscountValue());
+	}
+
+	@Test
+	void anyInvalidationClearsTheCodeIndex() {
+		when(couponRepository.findAllByCouponCode("A")).thenReturn(List.of(coupon(1, "A", "10")), List.of());
+		assertEquals(1, cache.getByCode("A").size());
+		cache.getByCode("A");
+		verify(couponRepository, times(1)).findAllByCouponCode("A");
+
+		// 另一張券改成代碼 A 時，只知道它自己的ID
+		cache.invalidate(2);
+
+		assertEquals(0, cache.getByCode("A").size());
+		verify(couponRepository, times(2)).findAllByCouponCode("A");
+	}
+
+	@Test
+	void invalidationInsideATransactionWaitsForCommit() {
+		when(couponRepository.findById(1)).thenReturn(Optional.of(coupon(1, "A", "10")),
+				Optional.of(coupon(1, "A", "30")));
+		cache.get(1);
+
+		TransactionSynchronizationManager.initSynchronization();
+		cache.invalidate(1);
+
+		// 提交前其他請求仍看到舊規則
+		assertEquals(new BigDecimal("10"), cache.get(1).getDiscountValue());
+
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		TransactionSynchronizationManager.clearSynchronization();
+		synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+		assertEquals(new BigDecimal("30"), cache.get(1).getDiscountValue());
+	}
+
+	@Test
+	void rolledBackTransactionKeepsTheCachedRule() {
+		when(couponRepository.findById(1)).thenReturn(Optional.of(coupon(1, "A", "10")));
+		CouponEvaluator cached = cache.get(1);
+
+		TransactionSynchronizationManager.initSynchronization();
+		cache.invalidate(1);
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		TransactionSynchronizationManager.clearSynchronization();
+		synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+		assertSame(cached, cache.get(1));
+	}
+
+	@Test
+	void loadRacingAnInvalidationIsNotCached() {
+		// 讀到舊資料後、放入快取前，另一個執行緒提交了修改
+		when(couponRepository.findById(1)).thenAnswer(invocation -> {
+			cache.invalidate(1);
+			return Optional.of(coupon(1, "A", "10"));
+		}).thenReturn(Optional.of(coupon(1, "A", "30")));
+
+		assertEquals(new BigDecimal("10"), cache.get(1).getDiscountValue());
+
+		assertEquals(new BigDecimal("30"), cache.get(1).getDiscountValue());
+	}
+}
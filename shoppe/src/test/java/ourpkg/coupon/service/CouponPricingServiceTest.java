@@ -0,0 +1,174 @@
+package ourpkg.coupon.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ourpkg.campaign.repository.UserCouponRepository;
+import ourpkg.cart.CartRepository;
+import ourpkg.coupon.dto.CartCouponQuoteDTO;
+import ourpkg.coupon.dto.CartCouponQuoteDTO.CouponQuote;
+import ourpkg.coupon.entity.Coupon;
+import ourpkg.coupon.model.CouponEvaluator;
+import ourpkg.shop.Shop;
+
+class CouponPricingServiceTest {
+
+	private static final long DAY = 86_400_000L;
+
+	private CouponPricingService service;
+	private CartRepository cartRepository;
+	private UserCouponRepository userCouponRepository;
+	private CouponEvaluatorCache couponEvaluatorCache;
+
+	private final List<Object[]> cartRows = new ArrayList<>();
+	private final List<Object[]> couponRows = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		service = new CouponPricingService();
+		cartRepository = mock(CartRepository.class);
+		userCouponRepository = mock(UserCouponRepository.class);
+		couponEvaluatorCache = mock(CouponEvaluatorCache.class);
+		ReflectionTestUtils.setField(service, "cartRepository", cartRepository);
+		ReflectionTestUtils.setField(service, "userCouponRepository", userCouponRepository);
+		ReflectionTestUtils.setField(service, "couponEvaluatorCache", couponEvaluatorCache);
+		when(cartRepository.findCartViewRows(9)).thenReturn(cartRows);
+		when(userCouponRepository.findActiveCouponRows(9)).thenReturn(couponRows);
+	}
+
+	/**
+	 * 購物車一列，欄位順序見 CartRepository.findCartViewRows
+	 */
+	private void inCart(int shopId, String price, int quantity) {
+		cartRows.add(new Object[] { cartRows.size() + 1, quantity, 100 + cartRows.size(), new BigDecimal(price), 99,
+				"", 1, "商品", shopId, "商店" + shopId });
+	}
+
+	/**
+	 * 用戶持有（ACTIVE）的優惠券，userCouponId 為 couponId + 1000
+	 */
+	private void holds(int couponId, int shopId, String type, String value, long start, long end) {
+		Shop shop = new Shop();
+		shop.setShopId(shopId);
+		Coupon coupon = new Coupon();
+		coupon.setCouponId(couponId);
+		coupon.setCouponName("券" + couponId);
+		coupon.setShop(shop);
+		coupon.setDiscountType(type);
+		coupon.setDiscountValue(new BigDecimal(value));
+		coupon.setStartDate(new java.util.Date(start));
+		coupon.setEndDate(new java.util.Date(end));
+		when(couponEvaluatorCache.get(couponId)).thenReturn(CouponEvaluator.compile(coupon));
+		couponRows.add(new Object[] { couponId + 1000, couponId });
+	}
+
+	private void holdsValid(int couponId, int shopId, String type, String value) {
+		long now = System.currentTimeMillis();
+		holds(couponId, shopId, type, value, now - DAY, now + DAY);
+	}
+
+	@Test
+	void fixedAmountWinsBelowTheThresholdAndPercentageAbove() {
+		// 打九折與折 100 元在小計 1000 元時相同
+		holdsValid(1, 1, "PERCENTAGE", "10");
+		holdsValid(2, 1, "FIXED_AMOUNT", "100");
+
+		inCart(1, "200", 2);
+		CartCouponQuoteDTO small = service.quoteCart(9).get(0);
+		assertEquals(new BigDecimal("400"), small.getSubtotal());
+		assertEquals(2, small.getBest().getCouponId());
+		assertEquals(new BigDecimal("300.00"), small.getBest().getFinalTotal());
+		assertEquals(List.of(2, 1), small.getQuotes().stream().map(CouponQuote::getCouponId).toList());
+
+		cartRows.clear();
+		inCart(1, "500", 3);
+		CartCouponQuoteDTO large = service.quoteCart(9).get(0);
+		assertEquals(1, large.getBest().getCouponId());
+		assertEquals(new BigDecimal("150.00"), large.getBest().getDiscount());
+		assertEquals(new BigDecimal("1350.00"), large.getBest().getFinalTotal());
+		assertEquals(1001, large.getBest().getUserCouponId());
+	}
+
+	@Test
+	void fixedAmountLargerThanTheSubtotalIsCappedAtTheSubtotal() {
+		holdsValid(1, 1, "FIXED_AMOUNT", "500");
+		holdsValid(2, 1, "PERCENTAGE", "30");
+		inCart(1, "120", 1);
+
+		CartCouponQuoteDTO shop = service.quoteCart(9).get(0);
+
+		assertEquals(1, shop.getBest().getCouponId());
+		assertEquals(new BigDecimal("120.00"), shop.getBest().getDiscount());
+		assertEquals(new BigDecimal("0.00"), shop.getBest().getFinalTotal());
+	}
+
+	@Test
+	void expiredNotStartedAndUnsupportedCouponsAreNotQuoted() {
+		long now = System.currentTimeMillis();
+		holds(1, 1, "FIXED_AMOUNT", "50", now - 2 * DAY, now - DAY);
+		holds(2, 1, "FIXED_AMOUNT", "60", now + DAY, now + 2 * DAY);
+		holdsValid(3, 1, "FREE_SHIPPING", "0");
+		holdsValid(4, 1, "FIXED_AMOUNT", "5");
+		inCart(1, "100", 1);
+
+		CartCouponQuoteDTO shop = service.quoteCart(9).get(0);
+
+		assertEquals(List.of(4), shop.getQuotes().stream().map(CouponQuote::getCouponId).toList());
+		assertEquals(new BigDecimal("95.00"), shop.getBest().getFinalTotal());
+	}
+
+	@Test
+	void usedOrDeletedCouponsAreNotQuoted() {
+		holdsValid(1, 1, "FIXED_AMOUNT", "10");
+		inCart(1, "100", 1);
+		// 已使用的券不在 findActiveCouponRows（status = 'ACTIVE'）結果中；已刪除的券在快取查不到
+		couponRows.add(new Object[] { 2002, 2 });
+
+		CartCouponQuoteDTO shop = service.quoteCart(9).get(0);
+
+		assertEquals(List.of(1), shop.getQuotes().stream().map(CouponQuote::getCouponId).toList());
+	}
+
+	@Test
+	void eachShopGetsItsOwnBestCoupon() {
+		holdsValid(1, 1, "FIXED_AMOUNT", "30");
+		holdsValid(2, 2, "PERCENTAGE", "50");
+		holdsValid(3, 3, "PERCENTAGE", "50");
+		inCart(1, "100", 1);
+		inCart(2, "80", 1);
+		inCart(1, "50", 2);
+		inCart(4, "10", 1);
+
+		List<CartCouponQuoteDTO> shops = service.quoteCart(9);
+
+		assertEquals(List.of(1, 2, 4), shops.stream().map(CartCouponQuoteDTO::getShopId).toList());
+		assertEquals(new BigDecimal("200"), shops.get(0).getSubtotal());
+		assertEquals(new BigDecimal("170.00"), shops.get(0).getBest().getFinalTotal());
+		assertEquals(new BigDecimal("40.00"), shops.get(1).getBest().getFinalTotal());
+		assertNull(shops.get(2).getBest());
+		assertTrue(shops.get(2).getQuotes().isEmpty());
+	}
+
+	@Test
+	void emptyCartSkipsTheCouponLookup() {
+		holdsValid(1, 1, "FIXED_AMOUNT", "10");
+		couponRows.clear();
+
+		assertTrue(service.quoteCart(9).isEmpty());
+		verify(userCouponRepository, never()).findActiveCouponRows(any());
+	}
+}
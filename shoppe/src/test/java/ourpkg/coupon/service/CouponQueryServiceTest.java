@@ -0,0 +1,261 @@
+package ourpkg.coupon.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import ourpkg.coupon.dto.CouponSearchCriteria;
+import ourpkg.coupon.dto.CouponSearchResult;
+import ourpkg.coupon.entity.Coupon;
+import ourpkg.shop.Shop;
+import ourpkg.user_role_permission.user.User;
+
+/**
+ * 在 H2（MSSQLServer 相容模式）上以 Hibernate 建表，驗證 keyset 分頁、總筆數快取與月統計
+ */
+class CouponQueryServiceTest {
+
+	private EntityManagerFactory entityManagerFactory;
+	private EntityManager entityManager;
+	private JdbcTemplate jdbcTemplate;
+	private CouponQueryService service;
+	private int shopId;
+
+	@BeforeEach
+	void setUp() {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:coupon-" + UUID.randomUUID() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1");
+		LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+		factory.setDataSource(dataSource);
+		factory.setPackagesToScan("ourpkg");
+		factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+		factory.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create"));
+		factory.afterPropertiesSet();
+		entityManagerFactory = factory.getObject();
+		entityManager = entityManagerFactory.createEntityManager();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+
+		User user = new User();
+		user.setUserName("seller");
+		Shop shop = new Shop();
+		shop.setUser(user);
+		shop.setShopName("店鋪");
+		shop.setIsActive(true);
+		entityManager.getTransaction().begin();
+		entityManager.persist(user);
+		entityManager.persist(shop);
+		entityManager.getTransaction().commit();
+		shopId = shop.getShopId();
+
+		service = new CouponQueryService();
+		ReflectionTestUtils.setField(service, "entityManager", entityManager);
+		ReflectionTestUtils.setField(service, "jdbcTemplate", new NamedParameterJdbcTemplate(dataSource));
+		ReflectionTestUtils.setField(service, "countTtlMillis", 60_000L);
+		ReflectionTestUtils.setField(service, "countMaxSize", 100);
+	}
+
+	@AfterEach
+	void tearDown() {
+		entityManager.close();
+		entityManagerFactory.close();
+	}
+
+	/**
+	 * 新增 count 張優惠券，名稱為「券N」；createdAt、startDate、endDate 為 null 時用現在時間
+	 */
+	private void coupons(int count, LocalDateTime createdAt, LocalDateTime startDate, LocalDateTime endDate) {
+		LocalDateTime now = LocalDateTime.now();
+		jdbcTemplate.update("INSERT INTO Coupon (coupon_shop_id, coupon_code, coupon_name, discount_type, "
+				+ "discount_value, start_date, end_date, created_at, redeemed) "
+				+ "SELECT ?, 'C' || X, '券' || X, 'fixed', 10, ?, ?, ?, 0 FROM SYSTEM_RANGE(1, ?)", shopId,
+				Timestamp.valueOf(startDate != null ? startDate : now),
+				Timestamp.valueOf(endDate != null ? endDate : now.plusDays(1)),
+				Timestamp.valueOf(createdAt != null ? createdAt : now), count);
+	}
+
+	private static CouponSearchCriteria page(Integer after, int size) {
+		CouponSearchCriteria criteria = new CouponSearchCriteria();
+		criteria.setAfterCouponId(after);
+		criteria.setSize(size);
+		return criteria;
+	}
+
+	private static List<Integer> ids(CouponSearchResult result) {
+		return result.getCoupons().stream().map(Coupon::getCouponId).collect(Collectors.toList());
+	}
+
+	@Test
+	void monthlyStatsRejectsMonthsOutOfRange() {
+		assertThrows(IllegalArgumentException.class, () -> service.monthlyStats(0));
+		assertThrows(IllegalArgumentException.class, () -> service.monthlyStats(-3));
+		assertThrows(IllegalArgumentException.class,
+				() -> service.monthlyStats(CouponQueryService.MAX_STATS_MONTHS + 1));
+	}
+
+	@Test
+	void keysetPagesWalkEveryCouponOnceNewestFirst() {
+		coupons(25, null, null, null);
+
+		List<Integer> seen = new ArrayList<>();
+		Integer cursor = null;
+		int pages = 0;
+		do {
+			CouponSearchResult result = service.search(page(cursor, 10), 0);
+			seen.addAll(ids(result));
+			cursor = result.getNextCursor();
+			pages++;
+		} while (cursor != null);
+
+		assertEquals(3, pages);
+		assertEquals(25, seen.size());
+		assertEquals(25, seen.stream().distinct().count());
+		for (int i = 1; i < seen.size(); i++) {
+			assertTrue(seen.get(i - 1) > seen.get(i));
+		}
+		// 舊的頁碼分頁得到相同的第二頁
+		assertEquals(seen.subList(10, 20), ids(service.search(page(null, 10), 10)));
+	}
+
+	@Test
+	void totalIsCountedOnTheFirstPageAndReusedAfterwards() {
+		coupons(25, null, null, null);
+		CouponSearchResult first = service.search(page(null, 10), 0);
+		assertEquals(25, first.getTotalItems());
+		assertFalse(first.isTotalApproximate());
+
+		coupons(5, null, null, null);
+		CouponSearchResult second = service.search(page(first.getNextCursor(), 10), 0);
+
+		// 之後的頁面沿用快取，不重新計數
+		assertEquals(25, second.getTotalItems());
+		assertTrue(second.isTotalApproximate());
+		// 回到第一頁重新計算
+		assertEquals(30, service.search(page(null, 10), 0).getTotalItems());
+	}
+
+	@Test
+	void filteredCountsAreCachedSeparately() {
+		coupons(12, null, null, null);
+		CouponSearchCriteria byName = page(null, 5);
+		byName.setSearchText("券1");
+
+		CouponSearchResult filtered = service.search(byName, 0);
+		// 沒有篩選條件的第二頁不能用到篩選後的快取
+		CouponSearchResult all = service.search(page(filtered.getCoupons().get(0).getCouponId(), 5), 0);
+
+		// 券1、券10、券11、券12
+		assertEquals(4, filtered.getTotalItems());
+		assertEquals(12, all.getTotalItems());
+		assertFalse(all.isTotalApproximate());
+	}
+
+	@Test
+	void lastPageHasNoCursor() {
+		coupons(3, null, null, null);
+
+		CouponSearchResult result = service.search(page(null, 10), 0);
+
+		assertEquals(3, result.getCoupons().size());
+		assertNull(result.getNextCursor());
+		assertEquals(3, result.getTotalItems());
+	}
+
+	@Test
+	void monthlyStatsCountsNewAndEndOfMonthActiveCoupons() {
+		YearMonth current = YearMonth.now();
+		LocalDateTime thisMonth = current.atDay(1).atStartOfDay();
+		LocalDateTime lastMonth = thisMonth.minusMonths(1);
+		LocalDateTime twoMonthsAgo = thisMonth.minusMonths(2);
+
+		// 兩個月前建立、一直有效到下個月
+		coupons(3, twoMonthsAgo.plusDays(2), twoMonthsAgo.plusDays(2), thisMonth.plusMonths(1).plusDays(5));
+		// 上個月建立、上個月中就結束
+		coupons(2, lastMonth.plusDays(1), lastMonth.plusDays(1), lastMonth.plusDays(10));
+		// 上個月建立、剛好在上個月最後一刻結束，仍算上個月月底有效
+		coupons(4, lastMonth.plusDays(3), lastMonth.plusDays(3), thisMonth.minusNanos(1_000_000));
+		// 本月建立，一年前就開始
+		coupons(1, thisMonth, thisMonth.minusYears(1), thisMonth.plusYears(1));
+		// 統計範圍之前建立且已結束
+		coupons(7, thisMonth.minusMonths(6), thisMonth.minusMonths(6), thisMonth.minusMonths(5));
+
+		Map<String, Object> stats = service.monthlyStats(3);
+
+		assertEquals(List.of(twoMonthsAgo, lastMonth, thisMonth).stream()
+				.map(month -> YearMonth.from(month).toString()).collect(Collectors.toList()), stats.get("labels"));
+		assertEquals(List.of(3L, 6L, 1L), stats.get("newCounts"));
+		assertEquals(List.of(4L, 8L, 4L), stats.get("currentCounts"));
+	}
+
+	@Test
+	void monthlyStatsMatchesPerMonthCountsOnAMillionCoupons() {
+		YearMonth first = YearMonth.now().minusMonths(11);
+		LocalDateTime from = first.atDay(1).atStartOfDay();
+		// 一百萬張，建立時間散布在 12 個月內、有效期間 0 到 119 天；先拿掉索引，新增完再建回來
+		for (String index : List.of("ix_coupon_shop", "ix_coupon_redeemed", "ix_coupon_dates", "ix_coupon_created_at")) {
+			jdbcTemplate.execute("DROP INDEX " + index);
+		}
+		jdbcTemplate.update("INSERT INTO Coupon (coupon_shop_id, coupon_code, coupon_name, discount_type, "
+				+ "discount_value, created_at, start_date, end_date, redeemed) "
+				+ "SELECT ?, 'C' || X, '券' || X, 'fixed', 10, t, t, DATEADD(DAY, MOD(X, 120), t), 0 FROM ("
+				+ "SELECT X, DATEADD(MINUTE, MOD(X * 7919, 525600), CAST(? AS TIMESTAMP)) AS t FROM SYSTEM_RANGE(1, 1000000))",
+				shopId, Timestamp.valueOf(from));
+		jdbcTemplate.execute("CREATE INDEX ix_coupon_dates ON Coupon (start_date, end_date)");
+		jdbcTemplate.execute("CREATE INDEX ix_coupon_created_at ON Coupon (created_at)");
+
+		long start = System.nanoTime();
+		Map<String, Object> stats = service.monthlyStats(12);
+		long statsMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		// 以每月各自計數的寫法對照
+		List<Long> expectedNew = new ArrayList<>();
+		List<Long> expectedActive = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			LocalDateTime monthStart = from.plusMonths(i);
+			Timestamp next = Timestamp.valueOf(monthStart.plusMonths(1));
+			Timestamp monthEnd = Timestamp.valueOf(monthStart.plusMonths(1).minusNanos(1_000_000));
+			expectedNew.add(jdbcTemplate.queryForObject(
+					"SELECT COUNT(*) FROM Coupon WHERE created_at >= ? AND created_at < ?", Long.class,
+					Timestamp.valueOf(monthStart), next));
+			expectedActive.add(jdbcTemplate.queryForObject(
+					"SELECT COUNT(*) FROM Coupon WHERE start_date <= ? AND end_date >= ?", Long.class, monthEnd,
+					monthEnd));
+		}
+		assertEquals(expectedNew, stats.get("newCounts"));
+		assertEquals(expectedActive, stats.get("currentCounts"));
+		assertTrue(statsMillis < 15_000, "月統計花了 " + statsMillis + " ms");
+
+		// 深頁以 keyset 只讀一頁
+		Integer deepCursor = jdbcTemplate.queryForObject("SELECT MIN(coupon_id) + 20 FROM Coupon", Integer.class);
+		service.search(page(null, 20), 0);
+		start = System.nanoTime();
+		CouponSearchResult deep = service.search(page(deepCursor, 20), 0);
+		long deepMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertEquals(20, deep.getCoupons().size());
+		assertTrue(deep.isTotalApproximate());
+		assertTrue(deepMillis < 2_000, "最後一頁花了 " + deepMillis + " ms");
+	}
+}
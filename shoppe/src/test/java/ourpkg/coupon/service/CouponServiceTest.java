@@ -0,0 +1,78 @@
+package ourpkg.coupon.service;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ourpkg.coupon.entity.Coupon;
+import ourpkg.coupon.repository.CouponRepository;
+
+class CouponServiceTest {
+
+	private CouponService service;
+	private CouponRepository couponRepository;
+	private CouponEvaluatorCache couponEvaluatorCache;
+
+	@BeforeEach
+	void setUp() {
+		service = new CouponService();
+		couponRepository = mock(CouponRepository.class);
+		couponEvaluatorCache = mock(CouponEvaluatorCache.class);
+		ReflectionTestUtils.setField(service, "couponRepository", couponRepository);
+		ReflectionTestUtils.setField(service, "couponEvaluatorCache", couponEvaluatorCache);
+	}
+
+	@Test
+	void modifyingACouponInvalidatesItsEvaluator() {
+		Coupon existing = new Coupon();
+		existing.setCouponId(5);
+		existing.setStartDate(new Date(0));
+		existing.setEndDate(new Date(1_000));
+		when(couponRepository.findById(5)).thenReturn(Optional.of(existing));
+		when(couponRepository.save(existing)).thenReturn(existing);
+
+		Coupon update = new Coupon();
+		update.setCouponId(5);
+		update.setDiscountValue(new BigDecimal("50"));
+		service.modifyCouponInternal(update, 1);
+
+		verify(couponEvaluatorCache).invalidate(5);
+	}
+
+	@Test
+	void deletingACouponInvalidatesItsEvaluator() {
+		when(couponRepository.existsById(5)).thenReturn(true);
+
+		service.deleteCouponInternal(5, 1);
+
+		verify(couponEvaluatorCache).invalidate(5);
+	}
+
+	@Test
+	void failedModificationLeavesTheCacheAlone() {
+		Coupon existing = new Coupon();
+		existing.setCouponId(5);
+		existing.setStartDate(new Date(1_000));
+		existing.setEndDate(new Date(1_000));
+		when(couponRepository.findById(5)).thenReturn(Optional.of(existing));
+
+		Coupon update = new Coupon();
+		update.setCouponId(5);
+		update.setEndDate(new Date(0));
+		// 結束日期早於開始日期
+		assertThrows(IllegalArgumentException.class, () -> service.modifyCouponInternal(update, 1));
+
+		verify(couponEvaluatorCache, never()).invalidate(any());
+	}
+}
@@ -0,0 +1,131 @@
+package ourpkg.customerService.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ourpkg.customerService.dto.ChatMessageDTO;
+
+class ChatHistoryBufferTest {
+
+	private static final Integer ROOM = 5;
+
+	private ChatHistoryBuffer buffer;
+
+	@BeforeEach
+	void setUp() {
+		buffer = new ChatHistoryBuffer();
+		ReflectionTestUtils.setField(buffer, "capacity", 4);
+		ReflectionTestUtils.setField(buffer, "maxRooms", 100);
+		ReflectionTestUtils.setField(buffer, "idleMillis", 60_000L);
+	}
+
+	private static ChatHistoryBuffer.BufferedMessage message(int id, int senderId) {
+		return new ChatHistoryBuffer.BufferedMessage(id, ROOM, "m" + id, LocalDateTime.now(), senderId, "u" + senderId,
+				false);
+	}
+
+	private static ChatMessageDTO dto(int id, int senderId) {
+		return ChatMessageDTO.builder().messageId(id).chatRoomId(ROOM).content("m" + id).userId(senderId)
+				.timestamp(LocalDateTime.now()).build();
+	}
+
+	// 由新到舊：newest, newest - 1, ..., oldest
+	private static List<ChatHistoryBuffer.BufferedMessage> newestFirst(int newest, int oldest) {
+		List<ChatHistoryBuffer.BufferedMessage> list = new ArrayList<>();
+		for (int id = newest; id >= oldest; id--) {
+			list.add(message(id, 1));
+		}
+		return list;
+	}
+
+	private static List<Integer> ids(List<ChatMessageDTO> page) {
+		List<Integer> ids = new ArrayList<>();
+		for (ChatMessageDTO message : page) {
+			ids.add(message.getMessageId());
+		}
+		return ids;
+	}
+
+	@Test
+	void unknownRoomFallsBackToDatabase() {
+		assertNull(buffer.readPage(ROOM, null, 10));
+	}
+
+	@Test
+	void completeRoomServesShortPages() {
+		buffer.seed(ROOM, newestFirst(3, 1), true, buffer.stamp(ROOM));
+
+		assertEquals(List.of(1, 2, 3), ids(buffer.readPage(ROOM, null, 10)));
+		assertEquals(List.of(1), ids(buffer.readPage(ROOM, 2, 10)));
+		assertTrue(buffer.readPage(ROOM, 1, 10).isEmpty());
+	}
+
+	@Test
+	void appendsWrapAroundAndDropTheOldest() {
+		buffer.seed(ROOM, newestFirst(3, 1), true, buffer.stamp(ROOM));
+		for (int id = 4; id <= 10; id++) {
+			buffer.append(dto(id, 2));
+		}
+
+		assertEquals(List.of(7, 8, 9, 10), ids(buffer.readPage(ROOM, null, 4)));
+		assertEquals(List.of(9, 10), ids(buffer.readPage(ROOM, null, 2)));
+		assertEquals(List.of(7, 8), ids(buffer.readPage(ROOM, 9, 2)));
+		// 丟掉舊訊息後緩衝區不再完整，超出範圍的頁要查資料庫
+		assertNull(buffer.readPage(ROOM, 9, 3));
+		assertNull(buffer.readPage(ROOM, null, 5));
+	}
+
+	@Test
+	void outOfOrderCommitsAreKeptSortedAndDeduplicated() {
+		buffer.seed(ROOM, newestFirst(2, 1), true, buffer.stamp(ROOM));
+		buffer.append(dto(4, 2));
+		buffer.append(dto(3, 2));
+		buffer.append(dto(4, 2));
+
+		assertEquals(List.of(1, 2, 3, 4), ids(buffer.readPage(ROOM, null, 4)));
+
+		buffer.append(dto(6, 2));
+		buffer.append(dto(5, 2));
+		assertEquals(List.of(3, 4, 5, 6), ids(buffer.readPage(ROOM, null, 4)));
+	}
+
+	@Test
+	void seedIsDiscardedWhenTheRoomChangedMeanwhile() {
+		long stamp = buffer.stamp(ROOM);
+		buffer.append(dto(4, 2));
+		buffer.seed(ROOM, newestFirst(3, 1), true, stamp);
+
+		assertNull(buffer.readPage(ROOM, null, 10));
+	}
+
+	@Test
+	void markReadOnlyFlagsOtherSendersMessages() {
+		List<ChatHistoryBuffer.BufferedMessage> seed = List.of(message(2, 2), message(1, 1));
+		buffer.seed(ROOM, seed, true, buffer.stamp(ROOM));
+		buffer.markRead(ROOM, 1);
+
+		List<ChatMessageDTO> page = buffer.readPage(ROOM, null, 10);
+		assertFalse(page.get(0).isRead());
+		assertTrue(page.get(1).isRead());
+	}
+
+	@Test
+	void changesAreReportedToTheListener() {
+		List<Integer> changed = new ArrayList<>();
+		buffer.onRoomChanged(changed::add);
+		buffer.append(dto(1, 2));
+		buffer.markRead(ROOM, 1);
+
+		assertEquals(List.of(ROOM, ROOM), changed);
+	}
+}
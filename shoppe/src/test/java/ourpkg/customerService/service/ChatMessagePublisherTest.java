@@ -0,0 +1,223 @@
+package ourpkg.customerService.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ourpkg.customerService.dto.ChatMessageDTO;
+
+class ChatMessagePublisherTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+	private final String cluster = "test-" + UUID.randomUUID();
+	private final List<InProcessChatFanout> fanouts = new ArrayList<>();
+
+	/**
+	 * 模擬一台伺服器：自己的 simple broker、聊天紀錄緩衝區與 fan-out 通道
+	 */
+	private final class Node {
+		private final SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+		private final ChatHistoryBuffer buffer = new ChatHistoryBuffer();
+		private final ChatMessagePublisher publisher = new ChatMessagePublisher();
+
+		@SuppressWarnings("unchecked")
+		private Node(String mode) {
+			ReflectionTestUtils.setField(buffer, "capacity", 10);
+			ReflectionTestUtils.setField(buffer, "maxRooms", 100);
+			ReflectionTestUtils.setField(buffer, "idleMillis", 60_000L);
+
+			InProcessChatFanout fanout = new InProcessChatFanout(cluster);
+			fanouts.add(fanout);
+			ObjectProvider<ChatFanout> provider = mock(ObjectProvider.class);
+			when(provider.getIfAvailable()).thenReturn(fanout);
+
+			ReflectionTestUtils.setField(publisher, "simpMessagingTemplate", template);
+			ReflectionTestUtils.setField(publisher, "objectMapper", objectMapper);
+			ReflectionTestUtils.setField(publisher, "fanoutProvider", provider);
+			ReflectionTestUtils.setField(publisher, "chatHistoryBuffer", buffer);
+			ReflectionTestUtils.setField(publisher, "mode", mode);
+			publisher.init();
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		fanouts.forEach(InProcessChatFanout::close);
+	}
+
+	@Test
+	void relayModeDeliversTopicsOnEveryNode() {
+		Node a = new Node("relay");
+		Node b = new Node("relay");
+		Map<String, Object> payload = Map.of("content", "hi");
+
+		a.publisher.sendToTopic("/topic/chat/1", payload);
+
+		verify(a.template).convertAndSend("/topic/chat/1", (Object) payload);
+		verify(b.template, timeout(2000)).convertAndSend(eq("/topic/chat/1"),
+				argThat((Object node) -> node instanceof JsonNode json && "hi".equals(json.get("content").asText())));
+		// 不會送回發送的伺服器
+		verify(a.template, never()).convertAndSend(eq("/topic/chat/1"), any(JsonNode.class));
+	}
+
+	@Test
+	void relayModeDeliversUserDestinationsOnEveryNode() {
+		Node a = new Node("relay");
+		Node b = new Node("relay");
+
+		a.publisher.sendToUser("seller", "/queue/unread-update", Map.of("count", 3));
+
+		verify(b.template, timeout(2000)).convertAndSendToUser(eq("seller"), eq("/queue/unread-update"),
+				argThat((Object node) -> node instanceof JsonNode json && json.get("count").asInt() == 3));
+	}
+
+	@Test
+	void roomChangesInvalidateOtherNodesHistory() throws InterruptedException {
+		Node a = new Node("relay");
+		Node b = new Node("relay");
+		b.buffer.seed(1, List.of(new ChatHistoryBuffer.BufferedMessage(1, 1, "m1", LocalDateTime.now(), 2, "u2", false)),
+				true, b.buffer.stamp(1));
+		assertNotNull(b.buffer.readPage(1, null, 10));
+
+		a.buffer.append(ChatMessageDTO.builder().messageId(2).chatRoomId(1).content("m2").userId(3).build());
+
+		long deadline = System.currentTimeMillis() + 2000;
+		while (b.buffer.readPage(1, null, 10) != null && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertNull(b.buffer.readPage(1, null, 10));
+	}
+
+	@Test
+	void simpleModeStaysLocal() throws InterruptedException {
+		Node a = new Node("simple");
+		Node b = new Node("relay");
+
+		a.publisher.sendToTopic("/topic/chat/1", Map.of("content", "hi"));
+		Thread.sleep(100);
+
+		verify(b.template, never()).convertAndSend(anyString(), any(Object.class));
+	}
+
+	@Test
+	void unknownModeIsRejected() {
+		assertThrows(IllegalStateException.class, () -> new Node("kafka"));
+	}
+
+	/**
+	 * 一台伺服器的真實 simple broker：訂閱由 SUBSCRIBE 訊息登記，推送給連線的訊息記在 outbound
+	 */
+	private final class BrokerNode {
+		private final List<Message<?>> outbound = new CopyOnWriteArrayList<>();
+		private final SimpleBrokerMessageHandler broker;
+		private final ChatMessagePublisher publisher = new ChatMessagePublisher();
+
+		@SuppressWarnings("unchecked")
+		private BrokerNode() {
+			ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+			MessageChannel clientOutbound = (message, timeout) -> outbound.add(message);
+			broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(), clientOutbound, brokerChannel,
+					List.of("/topic", "/queue"));
+			broker.start();
+
+			SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+			template.setMessageConverter(new MappingJackson2MessageConverter());
+			ChatHistoryBuffer buffer = new ChatHistoryBuffer();
+			InProcessChatFanout fanout = new InProcessChatFanout(cluster);
+			fanouts.add(fanout);
+			ObjectProvider<ChatFanout> provider = mock(ObjectProvider.class);
+			when(provider.getIfAvailable()).thenReturn(fanout);
+			ReflectionTestUtils.setField(publisher, "simpMessagingTemplate", template);
+			ReflectionTestUtils.setField(publisher, "objectMapper", objectMapper);
+			ReflectionTestUtils.setField(publisher, "fanoutProvider", provider);
+			ReflectionTestUtils.setField(publisher, "chatHistoryBuffer", buffer);
+			ReflectionTestUtils.setField(publisher, "mode", "relay");
+			publisher.init();
+		}
+
+		private void subscribe(String sessionId, String destination) {
+			// broker 只推送給已連線（CONNECT）的 session
+			SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+			connect.setSessionId(sessionId);
+			connect.setSessionAttributes(new HashMap<>());
+			broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+			SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+			accessor.setSessionId(sessionId);
+			accessor.setSubscriptionId("sub-" + sessionId);
+			accessor.setDestination(destination);
+			accessor.setSessionAttributes(new HashMap<>());
+			broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+		}
+
+		/**
+		 * 推送給某個連線的訊息內容
+		 */
+		private List<String> deliveredTo(String sessionId) {
+			return outbound.stream()
+					.filter(message -> SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE)
+					.filter(message -> sessionId.equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders())))
+					.map(message -> new String((byte[]) message.getPayload(), StandardCharsets.UTF_8))
+					.toList();
+		}
+	}
+
+	@Test
+	void subscriberOnAnotherNodeReceivesTheTopicExactlyOnce() throws InterruptedException {
+		BrokerNode a = new BrokerNode();
+		BrokerNode b = new BrokerNode();
+		BrokerNode c = new BrokerNode();
+		a.subscribe("seller-on-a", "/topic/chat/1");
+		b.subscribe("buyer-on-b", "/topic/chat/1");
+		c.subscribe("other-room-on-c", "/topic/chat/2");
+
+		a.publisher.sendToTopic("/topic/chat/1", Map.of("content", "你好"));
+
+		long deadline = System.currentTimeMillis() + 2000;
+		while (b.deliveredTo("buyer-on-b").isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		// 讓可能重複的轉送有時間送達
+		Thread.sleep(100);
+		assertEquals(List.of("{\"content\":\"你好\"}"), a.deliveredTo("seller-on-a"));
+		assertEquals(List.of("{\"content\":\"你好\"}"), b.deliveredTo("buyer-on-b"));
+		assertTrue(c.deliveredTo("other-room-on-c").isEmpty());
+	}
+}
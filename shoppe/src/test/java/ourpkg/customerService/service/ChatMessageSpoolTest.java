@@ -0,0 +1,154 @@
+package ourpkg.customerService.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ChatMessageSpoolTest {
+
+	@TempDir
+	Path dir;
+
+	private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+	private ChatMessageSpool open(long segmentBytes) {
+		return new ChatMessageSpool(dir, segmentBytes, objectMapper);
+	}
+
+	private static ChatMessageSpool.Entry entry(String content) {
+		return new ChatMessageSpool.Entry(0, 1, 2, "buyer", content, LocalDateTime.of(2024, 1, 1, 12, 0), "t-" + content);
+	}
+
+	private static List<String> contents(List<ChatMessageSpool.Entry> entries) {
+		List<String> contents = new ArrayList<>();
+		for (ChatMessageSpool.Entry entry : entries) {
+			contents.add(entry.getContent());
+		}
+		return contents;
+	}
+
+	private long segmentCount() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(path -> path.getFileName().toString().startsWith("chat-spool-")).count();
+		}
+	}
+
+	@Test
+	void recoverReplaysOnlyTheUncommittedTail() {
+		ChatMessageSpool spool = open(1 << 20);
+		assertTrue(spool.recover(0).isEmpty());
+		assertEquals(1, spool.append(entry("a")));
+		assertEquals(2, spool.append(entry("b")));
+		assertEquals(3, spool.append(entry("c")));
+		spool.close();
+
+		ChatMessageSpool reopened = open(1 << 20);
+		List<ChatMessageSpool.Entry> pending = reopened.recover(1);
+
+		assertEquals(List.of("b", "c"), contents(pending));
+		assertEquals(2L, pending.get(0).getSeq());
+		assertEquals(LocalDateTime.of(2024, 1, 1, 12, 0), pending.get(0).getSentAt());
+		// 序號從最大的已使用序號之後繼續
+		assertEquals(4, reopened.append(entry("d")));
+		reopened.close();
+	}
+
+	@Test
+	void committedSegmentsAreDeleted() throws IOException {
+		ChatMessageSpool spool = open(1);
+		spool.recover(0);
+		spool.append(entry("a"));
+		spool.committed(0);
+		spool.append(entry("b"));
+		spool.committed(1);
+		spool.append(entry("c"));
+		assertEquals(2, segmentCount());
+
+		spool.committed(3);
+		assertEquals(1, segmentCount());
+		spool.close();
+
+		assertTrue(open(1).recover(3).isEmpty());
+	}
+
+	@Test
+	void truncatedLastLineIsSkipped() throws IOException {
+		ChatMessageSpool spool = open(1 << 20);
+		spool.recover(0);
+		spool.append(entry("a"));
+		spool.close();
+		Files.writeString(dir.resolve("chat-spool-1.log"), "{\"seq\":2,\"cont", StandardOpenOption.APPEND);
+
+		assertEquals(List.of("a"), contents(open(1 << 20).recover(0)));
+	}
+
+	@Test
+	void deadLetteredEntriesAreNotReplayedFromTheSegment() {
+		ChatMessageSpool spool = open(1 << 20);
+		spool.recover(0);
+		ChatMessageSpool.Entry a = entry("a");
+		ChatMessageSpool.Entry b = entry("b");
+		spool.append(a);
+		spool.append(b);
+		spool.append(entry("c"));
+		spool.deadLetter(List.of(a, b));
+		spool.close();
+
+		ChatMessageSpool reopened = open(1 << 20);
+		assertEquals(List.of("c"), contents(reopened.recover(0)));
+		assertEquals(2, reopened.deadLetterCount());
+		reopened.close();
+	}
+
+	@Test
+	void requeuedDeadLettersGetNewSequencesAndAreDeletedAfterCommit() throws IOException {
+		ChatMessageSpool spool = open(1 << 20);
+		spool.recover(0);
+		ChatMessageSpool.Entry a = entry("a");
+		spool.append(a);
+		spool.deadLetter(List.of(a));
+
+		List<ChatMessageSpool.Entry> requeued = spool.requeueDeadLetters(100);
+		assertEquals(List.of("a"), contents(requeued));
+		assertEquals(2L, requeued.get(0).getSeq());
+		assertEquals(0, spool.deadLetterCount());
+
+		spool.committed(1);
+		try (Stream<Path> files = Files.list(dir.resolve("dead-letter"))) {
+			assertEquals(1, files.count());
+		}
+		spool.committed(2);
+		try (Stream<Path> files = Files.list(dir.resolve("dead-letter"))) {
+			assertEquals(0, files.count());
+		}
+		spool.close();
+	}
+
+	@Test
+	void requeueRespectsTheLimitPerFile() {
+		ChatMessageSpool spool = open(1 << 20);
+		spool.recover(0);
+		ChatMessageSpool.Entry a = entry("a");
+		ChatMessageSpool.Entry b = entry("b");
+		spool.append(a);
+		spool.append(b);
+		spool.deadLetter(List.of(a, b));
+
+		assertTrue(spool.requeueDeadLetters(1).isEmpty());
+		assertEquals(2, spool.requeueDeadLetters(2).size());
+		spool.close();
+	}
+}
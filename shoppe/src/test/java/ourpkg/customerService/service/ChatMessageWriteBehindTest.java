@@ -0,0 +1,256 @@
+package ourpkg.customerService.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import ourpkg.customerService.repository.ChatRoomRepository;
+import ourpkg.customerService.repository.ChatSpoolCheckpointRepository;
+
+class ChatMessageWriteBehindTest {
+
+	private static final int ROOMS = 50;
+
+	@TempDir
+	Path spoolDir;
+
+	private ChatMessageWriteBehind writeBehind;
+	private JdbcTemplate jdbcTemplate;
+	private ChatMessagePublisher publisher;
+
+	// MERGE 語法送出的次數與每則訊息取得的ID
+	private final AtomicInteger merges = new AtomicInteger();
+	private final AtomicInteger nextId = new AtomicInteger();
+	// tempId -> 收到的 ack
+	private final Map<String, String> acks = new ConcurrentHashMap<>();
+	private volatile CountDownLatch ackLatch = new CountDownLatch(0);
+
+	// 內容含有這個字串的訊息寫入時違反資料庫限制
+	private volatile String poison = "\u0000";
+
+	@BeforeEach
+	void setUp() {
+		jdbcTemplate = mock(JdbcTemplate.class);
+		// 不用 mock，壓測時不記錄每次呼叫
+		publisher = new ChatMessagePublisher() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public void sendToTopic(String destination, Object payload) {
+				if (destination.endsWith("/ack")) {
+					Map<String, Object> ack = (Map<String, Object>) payload;
+					acks.put((String) ack.get("tempId"), destination + " " + ack.get("id") + " " + ack.get("senderId"));
+					ackLatch.countDown();
+				}
+			}
+
+			@Override
+			public void sendToUser(String user, String destination, Object payload) {
+			}
+		};
+
+		doAnswer(invocation -> {
+			Object[] args = (Object[]) invocation.getRawArguments()[2];
+			for (int i = 3; i < args.length; i += 6) {
+				if (((String) args[i]).contains(poison)) {
+					throw new DataIntegrityViolationException("FK_ChatMessage_ChatRoom");
+				}
+			}
+			merges.incrementAndGet();
+			RowCallbackHandler handler = invocation.getArgument(1);
+			for (int i = 0; i < args.length; i += 6) {
+				handler.processRow(row((Long) args[i], nextId.incrementAndGet()));
+			}
+			return null;
+		}).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+		ChatRoomRepository chatRoomRepository = mock(ChatRoomRepository.class);
+		when(chatRoomRepository.findMembershipRows(any()))
+				.thenReturn(List.<Object[]>of(new Object[] { 1, "buyer", 2, "seller" }));
+		ChatRoomMembershipCache membershipCache = new ChatRoomMembershipCache();
+		ReflectionTestUtils.setField(membershipCache, "chatRoomRepository", chatRoomRepository);
+		ReflectionTestUtils.setField(membershipCache, "ttlMillis", 600_000L);
+		ReflectionTestUtils.setField(membershipCache, "maxSize", 1000);
+
+		ChatHistoryBuffer buffer = new ChatHistoryBuffer();
+		ReflectionTestUtils.setField(buffer, "capacity", 50);
+		ReflectionTestUtils.setField(buffer, "maxRooms", 1000);
+		ReflectionTestUtils.setField(buffer, "idleMillis", 60_000L);
+
+		writeBehind = new ChatMessageWriteBehind();
+		ReflectionTestUtils.setField(writeBehind, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(writeBehind, "transactionTemplate",
+				new TransactionTemplate(mock(PlatformTransactionManager.class)));
+		ReflectionTestUtils.setField(writeBehind, "checkpointRepository", mock(ChatSpoolCheckpointRepository.class));
+		ReflectionTestUtils.setField(writeBehind, "chatHistoryBuffer", buffer);
+		ReflectionTestUtils.setField(writeBehind, "membershipCache", membershipCache);
+		ReflectionTestUtils.setField(writeBehind, "chatService", mock(ChatService.class));
+		ReflectionTestUtils.setField(writeBehind, "chatMessagePublisher", publisher);
+		ReflectionTestUtils.setField(writeBehind, "objectMapper", new ObjectMapper().findAndRegisterModules());
+		ReflectionTestUtils.setField(writeBehind, "configuredNodeId", "");
+		ReflectionTestUtils.setField(writeBehind, "brokerMode", "simple");
+		ReflectionTestUtils.setField(writeBehind, "maxAttempts", 3);
+		ReflectionTestUtils.setField(writeBehind, "spoolDir", spoolDir.toString());
+		ReflectionTestUtils.setField(writeBehind, "segmentBytes", 64L * 1024 * 1024);
+		ReflectionTestUtils.setField(writeBehind, "queueCapacity", 100_000);
+		ReflectionTestUtils.setField(writeBehind, "batchSize", 2000);
+		ReflectionTestUtils.setField(writeBehind, "flushIntervalMillis", 50L);
+		ReflectionTestUtils.setField(writeBehind, "offerTimeoutMillis", 2000L);
+		writeBehind.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		writeBehind.shutdown();
+	}
+
+	/**
+	 * MERGE ... OUTPUT 的一列：來源序號、產生的訊息ID
+	 */
+	private static ResultSet row(long seq, int messageId) {
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+				(proxy, method, args) -> switch (method.getName()) {
+				case "getLong" -> seq;
+				case "getInt" -> messageId;
+				default -> throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	@Test
+	void sustainsTenThousandMessagesPerSecond() throws Exception {
+		int producers = 8;
+		int perProducer = 10_000;
+		int total = producers * perProducer;
+		ackLatch = new CountDownLatch(total);
+		ExecutorService executor = Executors.newFixedThreadPool(producers);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			int producer = p;
+			futures.add(executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < perProducer; i++) {
+					writeBehind.submit(1 + i % ROOMS, 1, "buyer", "訊息 " + i, producer + "-" + i);
+				}
+				return null;
+			}));
+		}
+
+		long startedAt = System.nanoTime();
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		assertTrue(ackLatch.await(30, TimeUnit.SECONDS), "未全部寫入: " + acks.size());
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+		executor.shutdownNow();
+
+		double perSecond = total * 1000.0 / Math.max(1, elapsedMillis);
+		System.out.printf("write-behind: %d 則訊息 %d ms（%.0f 則/秒），%d 次 MERGE%n", total, elapsedMillis, perSecond,
+				merges.get());
+		assertTrue(perSecond >= 10_000, "每秒只寫入 " + perSecond + " 則");
+		// 每次 MERGE 最多 300 列，批次大小 2000
+		assertTrue(merges.get() <= total / 100, "MERGE 次數過多: " + merges.get());
+		assertEquals(total, acks.size());
+	}
+
+	@Test
+	void skippedMessageIsLoggedWithoutItsContent() throws Exception {
+		Logger logger = (Logger) LoggerFactory.getLogger(ChatMessageWriteBehind.class);
+		ListAppender<ILoggingEvent> appender = new ListAppender<>();
+		appender.start();
+		logger.addAppender(appender);
+		try {
+			poison = "0912-345-678";
+			ackLatch = new CountDownLatch(2);
+			writeBehind.submit(1, 1, "buyer", "第一則", "a");
+			writeBehind.submit(1, 1, "buyer", "我的電話是 0912-345-678", "b");
+			writeBehind.submit(1, 1, "buyer", "第三則", "c");
+
+			assertTrue(ackLatch.await(10, TimeUnit.SECONDS));
+			assertEquals(Set.of("a", "c"), acks.keySet());
+
+			List<ILoggingEvent> events = new ArrayList<>(appender.list);
+			assertTrue(events.stream().anyMatch(e -> e.getFormattedMessage().contains("已略過")));
+			for (ILoggingEvent event : events) {
+				assertFalse(event.getFormattedMessage().contains("0912-345-678"), event.getFormattedMessage());
+				assertFalse(Arrays.toString(event.getArgumentArray()).contains("0912-345-678"));
+			}
+		} finally {
+			logger.detachAppender(appender);
+		}
+	}
+
+	@Test
+	void ackCarriesTheDatabaseIdForTheClientTempId() throws Exception {
+		ackLatch = new CountDownLatch(1);
+
+		writeBehind.submit(7, 1, "buyer", "hi", "temp-1");
+
+		assertTrue(ackLatch.await(10, TimeUnit.SECONDS));
+		assertEquals("/topic/chat/7/ack 1 1", acks.get("temp-1"));
+	}
+
+	private static String nodeId(String configured, String mode) {
+		ChatMessageWriteBehind node = new ChatMessageWriteBehind();
+		ReflectionTestUtils.setField(node, "configuredNodeId", configured);
+		ReflectionTestUtils.setField(node, "brokerMode", mode);
+		ReflectionTestUtils.setField(node, "serverPort", "8081");
+		return ReflectionTestUtils.invokeMethod(node, "resolveNodeId");
+	}
+
+	@Test
+	void relayNodesGetTheirOwnCheckpointKey() {
+		// 單機模式沿用既有的 default 進度
+		assertEquals("default", nodeId("", "simple"));
+		assertEquals("chat-2", nodeId(" chat-2 ", "relay"));
+
+		String derived = nodeId("", "relay");
+		assertTrue(derived.endsWith(":8081"), derived);
+		assertFalse(derived.startsWith("default"), derived);
+	}
+
+	@Test
+	void relayModeRefusesTheSharedDefaultKey() {
+		assertThrows(IllegalStateException.class, () -> nodeId("default", "relay"));
+		assertEquals("default", nodeId("default", "simple"));
+	}
+}
@@ -0,0 +1,169 @@
+package ourpkg.customerService.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ourpkg.customerService.dto.ChatMessageDTO;
+import ourpkg.customerService.repository.ChatMessageRepository;
+
+/**
+ * 10 萬則訊息的聊天室：最新一頁建立緩衝區，往回捲動在緩衝區內不查資料庫，之後以訊息ID做 keyset 分頁
+ */
+class ChatServiceMessagePageTest {
+
+	private static final Integer ROOM = 9;
+	private static final int MESSAGES = 100_000;
+	private static final int CAPACITY = 100;
+
+	private ChatService service;
+	private ChatHistoryBuffer buffer;
+
+	// 模擬資料表：訊息ID -> 列
+	private final NavigableMap<Integer, Object[]> table = new ConcurrentSkipListMap<>();
+	private final List<Pageable> latestQueries = new ArrayList<>();
+	private final List<Pageable> beforeQueries = new ArrayList<>();
+	private int rowsRead;
+	private Runnable duringLatestQuery = () -> {
+	};
+
+	@BeforeEach
+	void setUp() {
+		LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+		for (int id = 1; id <= MESSAGES; id++) {
+			table.put(id, row(id, base.plusSeconds(id)));
+		}
+
+		ChatMessageRepository repository = mock(ChatMessageRepository.class);
+		when(repository.findLatestMessageRows(eq(ROOM), any(Pageable.class))).thenAnswer(invocation -> {
+			Pageable pageable = invocation.getArgument(1);
+			latestQueries.add(pageable);
+			List<Object[]> rows = take(table.descendingMap().values(), pageable);
+			duringLatestQuery.run();
+			return rows;
+		});
+		when(repository.findMessageRowsBefore(eq(ROOM), any(Integer.class), any(Pageable.class))).thenAnswer(invocation -> {
+			Integer beforeId = invocation.getArgument(1);
+			Pageable pageable = invocation.getArgument(2);
+			beforeQueries.add(pageable);
+			return take(table.headMap(beforeId, false).descendingMap().values(), pageable);
+		});
+
+		buffer = new ChatHistoryBuffer();
+		ReflectionTestUtils.setField(buffer, "capacity", CAPACITY);
+		ReflectionTestUtils.setField(buffer, "maxRooms", 100);
+		ReflectionTestUtils.setField(buffer, "idleMillis", 60_000L);
+
+		service = new ChatService();
+		ReflectionTestUtils.setField(service, "chatMessageRepository", repository);
+		ReflectionTestUtils.setField(service, "chatHistoryBuffer", buffer);
+	}
+
+	private static Object[] row(int id, LocalDateTime timestamp) {
+		return new Object[] { id, "m" + id, timestamp, id % 2 == 0 ? 1 : 2, id % 2 == 0 ? "buyer" : "seller", false };
+	}
+
+	private List<Object[]> take(Iterable<Object[]> newestFirst, Pageable pageable) {
+		List<Object[]> rows = new ArrayList<>();
+		for (Object[] row : newestFirst) {
+			if (rows.size() == pageable.getPageSize()) {
+				break;
+			}
+			rows.add(row);
+		}
+		rowsRead += rows.size();
+		return rows;
+	}
+
+	private static List<Integer> ids(List<ChatMessageDTO> page) {
+		return page.stream().map(ChatMessageDTO::getMessageId).toList();
+	}
+
+	@Test
+	void scrollsBackThroughTheWholeRoomWithKeysetQueries() {
+		int limit = 50;
+		List<Integer> seen = new ArrayList<>();
+		Integer before = null;
+		while (true) {
+			List<ChatMessageDTO> page = service.getMessagePage(ROOM, before, limit);
+			if (page.isEmpty()) {
+				break;
+			}
+			List<Integer> pageIds = ids(page);
+			for (int i = 1; i < pageIds.size(); i++) {
+				assertTrue(pageIds.get(i - 1) < pageIds.get(i), "每頁由舊到新");
+			}
+			seen.addAll(0, pageIds);
+			before = pageIds.get(0);
+		}
+
+		assertEquals(MESSAGES, seen.size());
+		for (int i = 0; i < seen.size(); i++) {
+			assertEquals(i + 1, seen.get(i));
+		}
+
+		// 最新一頁多取一筆建立緩衝區，緩衝區內的兩頁不查資料庫，之後每頁一次 keyset 查詢
+		assertEquals(1, latestQueries.size());
+		assertEquals(CAPACITY + 1, latestQueries.get(0).getPageSize());
+		assertEquals((MESSAGES - CAPACITY) / limit + 1, beforeQueries.size());
+		for (Pageable pageable : beforeQueries) {
+			assertEquals(0, pageable.getOffset());
+			assertEquals(limit, pageable.getPageSize());
+		}
+		assertTrue(rowsRead <= MESSAGES + CAPACITY + 1, "讀取列數: " + rowsRead);
+	}
+
+	@Test
+	void newMessagesAfterSeedingAreServedFromTheBuffer() {
+		service.getMessagePage(ROOM, null, 20);
+
+		ChatMessageDTO incoming = ChatMessageDTO.builder().messageId(MESSAGES + 1).chatRoomId(ROOM).content("new")
+				.userId(1).timestamp(LocalDateTime.now()).build();
+		table.put(MESSAGES + 1, row(MESSAGES + 1, LocalDateTime.now()));
+		buffer.append(incoming);
+
+		List<Integer> page = ids(service.getMessagePage(ROOM, null, 20));
+
+		assertEquals(MESSAGES + 1, page.get(page.size() - 1));
+		assertEquals(MESSAGES - 18, page.get(0));
+		assertEquals(1, latestQueries.size());
+	}
+
+	@Test
+	void messageCommittedWhileLoadingKeepsTheStaleSeedOut() {
+		// 查詢已讀完但尚未放入緩衝區時，另一則訊息提交
+		duringLatestQuery = () -> {
+			duringLatestQuery = () -> {
+			};
+			table.put(MESSAGES + 1, row(MESSAGES + 1, LocalDateTime.now()));
+			buffer.append(ChatMessageDTO.builder().messageId(MESSAGES + 1).chatRoomId(ROOM).content("race").userId(2)
+					.timestamp(LocalDateTime.now()).build());
+		};
+
+		List<Integer> first = ids(service.getMessagePage(ROOM, null, 10));
+		assertEquals(MESSAGES, first.get(first.size() - 1));
+
+		// 過期的結果沒有放入緩衝區，下一次重新載入就看得到新訊息
+		List<Integer> second = ids(service.getMessagePage(ROOM, null, 10));
+		assertEquals(MESSAGES + 1, second.get(second.size() - 1));
+		assertEquals(2, latestQueries.size());
+
+		// 這次的載入沒有競爭，已放入緩衝區
+		service.getMessagePage(ROOM, null, 10);
+		assertEquals(2, latestQueries.size());
+	}
+}
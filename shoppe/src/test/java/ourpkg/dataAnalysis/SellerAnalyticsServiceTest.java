@@ -0,0 +1,176 @@
+package ourpkg.dataAnalysis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import ourpkg.dataAnalysis.DTOs.SellerStatisticsDTO;
+import ourpkg.dataAnalysis.rollup.SalesRollupService;
+
+/**
+ * 賣家統計在 H2（MSSQLServer 相容模式）上執行：彙總表與訂單明細兩種算法的結果要一致
+ */
+class SellerAnalyticsServiceTest {
+
+	private static final int PAID = 1;
+	private static final int CANCELED = 2;
+
+	private JdbcTemplate jdbcTemplate;
+	private SalesRollupService salesRollupService;
+	private SellerAnalyticsService service;
+
+	private final LocalDateTime currentMonthStart = LocalDate.now().withDayOfMonth(1).atStartOfDay();
+	private final LocalDateTime lastMonthStart = currentMonthStart.minusMonths(1);
+	private int nextOrderId = 1;
+
+	@BeforeEach
+	void setUp() {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:analytics-" + UUID.randomUUID() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE [Order] (order_id INT PRIMARY KEY, user_id INT, created_at DATETIME2, "
+				+ "order_status_id INT)");
+		jdbcTemplate.execute("CREATE TABLE OrderItem (order_id INT, shop_id INT, unit_price DECIMAL(18,2), quantity INT)");
+		jdbcTemplate.execute("CREATE TABLE OrderStatusCorrespond (id INT PRIMARY KEY, name NVARCHAR(20))");
+		jdbcTemplate.execute("CREATE TABLE Product (product_id INT PRIMARY KEY, shop_id INT, active BIT)");
+		jdbcTemplate.execute("CREATE TABLE shop_daily_sales (shop_id INT, sales_date DATE, order_count INT, "
+				+ "revenue DECIMAL(18,2), PRIMARY KEY (shop_id, sales_date))");
+		jdbcTemplate.update("INSERT INTO OrderStatusCorrespond VALUES (?, ?)", PAID, "已付款");
+		jdbcTemplate.update("INSERT INTO OrderStatusCorrespond VALUES (?, ?)", CANCELED, SalesRollupService.CANCELED_STATUS);
+		jdbcTemplate.update("INSERT INTO Product VALUES (1, 1, 1), (2, 1, 0), (3, 1, 1), (4, 2, 1)");
+
+		salesRollupService = mock(SalesRollupService.class);
+		service = new SellerAnalyticsService(dataSource, null, salesRollupService);
+	}
+
+	/**
+	 * 新增一筆訂單；未取消的訂單同時照 SalesRollupService 的規則計入 shop_daily_sales
+	 *
+	 * @param lines 每兩個數字一組：商店ID、金額（數量固定 1）
+	 */
+	private void order(int userId, LocalDateTime createdAt, int status, int... lines) {
+		int orderId = nextOrderId++;
+		jdbcTemplate.update("INSERT INTO [Order] VALUES (?, ?, ?, ?)", orderId, userId, createdAt, status);
+		Map<Integer, BigDecimal> revenueByShop = new HashMap<>();
+		for (int i = 0; i < lines.length; i += 2) {
+			BigDecimal price = BigDecimal.valueOf(lines[i + 1]);
+			jdbcTemplate.update("INSERT INTO OrderItem VALUES (?, ?, ?, 1)", orderId, lines[i], price);
+			revenueByShop.merge(lines[i], price, BigDecimal::add);
+		}
+		if (status == CANCELED) {
+			return;
+		}
+		LocalDate salesDate = createdAt.toLocalDate();
+		revenueByShop.forEach((shopId, revenue) -> {
+			int updated = jdbcTemplate.update("UPDATE shop_daily_sales SET order_count = order_count + 1, "
+					+ "revenue = revenue + ? WHERE shop_id = ? AND sales_date = ?", revenue, shopId, salesDate);
+			if (updated == 0) {
+				jdbcTemplate.update("INSERT INTO shop_daily_sales VALUES (?, ?, 1, ?)", shopId, salesDate, revenue);
+			}
+		});
+	}
+
+	private void history() {
+		// 本月
+		order(10, currentMonthStart.plusHours(9), PAID, 1, 100, 1, 50);
+		order(11, currentMonthStart.plusHours(10), PAID, 1, 300, 2, 999);
+		order(10, currentMonthStart.plusHours(11), PAID, 1, 20);
+		// 上個月
+		order(12, lastMonthStart.plusDays(3), PAID, 1, 200);
+		order(13, lastMonthStart.plusDays(20), PAID, 1, 80);
+		// 更早，不算活躍客戶
+		order(14, currentMonthStart.minusMonths(5), PAID, 1, 1000);
+		// 別的商店
+		order(15, currentMonthStart.plusHours(12), PAID, 2, 70);
+	}
+
+	private static void assertSameStatistics(SellerStatisticsDTO expected, SellerStatisticsDTO actual) {
+		assertEquals(expected.getTotalOrders(), actual.getTotalOrders());
+		assertEquals(0, expected.getTotalSales().compareTo(actual.getTotalSales()));
+		assertEquals(expected.getCurrentMonthOrders(), actual.getCurrentMonthOrders());
+		assertEquals(0, expected.getCurrentMonthSales().compareTo(actual.getCurrentMonthSales()));
+		assertEquals(expected.getLastMonthOrders(), actual.getLastMonthOrders());
+		assertEquals(0, expected.getLastMonthSales().compareTo(actual.getLastMonthSales()));
+		assertEquals(expected.getOrderGrowth(), actual.getOrderGrowth());
+		assertEquals(expected.getSalesGrowth(), actual.getSalesGrowth());
+		assertEquals(expected.getActiveCustomers(), actual.getActiveCustomers());
+		assertEquals(expected.getTotalProducts(), actual.getTotalProducts());
+		assertEquals(expected.getActiveProducts(), actual.getActiveProducts());
+	}
+
+	@Test
+	void rollupMatchesTheOrderScanWithoutCancellations() {
+		history();
+
+		when(salesRollupService.isBackfillCompleted()).thenReturn(false);
+		SellerStatisticsDTO fromOrders = service.getSellerStatistics(1);
+		service.evictSellerStatistics(1);
+		when(salesRollupService.isBackfillCompleted()).thenReturn(true);
+		SellerStatisticsDTO fromRollup = service.getSellerStatistics(1);
+
+		assertSameStatistics(fromOrders, fromRollup);
+		assertEquals(6, fromRollup.getTotalOrders());
+		assertEquals(0, new BigDecimal("1750").compareTo(fromRollup.getTotalSales()));
+		assertEquals(3, fromRollup.getCurrentMonthOrders());
+		assertEquals(0, new BigDecimal("470").compareTo(fromRollup.getCurrentMonthSales()));
+		assertEquals(2, fromRollup.getLastMonthOrders());
+		assertEquals(50.0, fromRollup.getOrderGrowth());
+		assertEquals(67.9, fromRollup.getSalesGrowth());
+		// 近三個月下單的 10、11、12、13
+		assertEquals(4, fromRollup.getActiveCustomers());
+		assertEquals(3, fromRollup.getTotalProducts());
+		assertEquals(2, fromRollup.getActiveProducts());
+	}
+
+	@Test
+	void rollupLeavesCanceledOrdersOut() {
+		history();
+		order(16, currentMonthStart.plusHours(13), CANCELED, 1, 5000);
+		when(salesRollupService.isBackfillCompleted()).thenReturn(true);
+
+		SellerStatisticsDTO statistics = service.getSellerStatistics(1);
+
+		assertEquals(6, statistics.getTotalOrders());
+		assertEquals(0, new BigDecimal("470").compareTo(statistics.getCurrentMonthSales()));
+		// 只有一筆已取消訂單的客戶不算活躍客戶
+		assertEquals(4, statistics.getActiveCustomers());
+	}
+
+	@Test
+	void ordersAreScannedUntilTheBackfillCompletes() {
+		history();
+		// 回補還沒跑完時彙總表只有部分資料
+		jdbcTemplate.update("DELETE FROM shop_daily_sales WHERE sales_date < ?", currentMonthStart.toLocalDate());
+		when(salesRollupService.isBackfillCompleted()).thenReturn(false);
+
+		SellerStatisticsDTO statistics = service.getSellerStatistics(1);
+
+		assertEquals(6, statistics.getTotalOrders());
+		assertEquals(2, statistics.getLastMonthOrders());
+	}
+
+	@Test
+	void shopWithoutSalesGetsZeros() {
+		when(salesRollupService.isBackfillCompleted()).thenReturn(true);
+
+		SellerStatisticsDTO statistics = service.getSellerStatistics(3);
+
+		assertEquals(0, statistics.getTotalOrders());
+		assertEquals(BigDecimal.ZERO, statistics.getTotalSales());
+		assertEquals(0.0, statistics.getOrderGrowth());
+		assertEquals(0, statistics.getActiveCustomers());
+		assertEquals(0, statistics.getTotalProducts());
+	}
+}
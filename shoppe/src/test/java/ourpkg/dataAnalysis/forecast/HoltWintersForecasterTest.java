@@ -0,0 +1,81 @@
+package ourpkg.dataAnalysis.forecast;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class HoltWintersForecasterTest {
+
+	private final HoltWintersForecaster forecaster = new HoltWintersForecaster();
+
+	@Test
+	void emptyHistoryOrHorizonGivesEmptyOrZeroForecast() {
+		assertEquals(0, forecaster.forecast(new double[] { 1, 2, 3 }, 0).length);
+		assertArrayEquals(new double[3], forecaster.forecast(new double[0], 3));
+	}
+
+	@Test
+	void shortHistoryFallsBackToMean() {
+		double[] out = forecaster.forecast(new double[] { 10, 20, 30 }, 4);
+
+		assertArrayEquals(new double[] { 20, 20, 20, 20 }, out, 1e-9);
+	}
+
+	@Test
+	void constantSeriesForecastsTheSameValue() {
+		double[] history = new double[56];
+		Arrays.fill(history, 500);
+
+		double[] out = forecaster.forecast(history, 14);
+
+		for (double value : out) {
+			assertEquals(500, value, 1e-6);
+		}
+	}
+
+	@Test
+	void weeklyPatternIsCarriedIntoTheForecast() {
+		double[] week = { 100, 120, 140, 160, 180, 400, 300 };
+		double[] history = new double[8 * 7];
+		for (int i = 0; i < history.length; i++) {
+			history[i] = week[i % 7];
+		}
+
+		double[] out = forecaster.forecast(history, 7);
+
+		// 預測從 history.length 這一天開始，對應的星期位置延續下去
+		for (int h = 0; h < 7; h++) {
+			assertEquals(week[(history.length + h) % 7], out[h], 1.0);
+		}
+	}
+
+	@Test
+	void downwardTrendNeverGoesNegative() {
+		double[] history = new double[28];
+		for (int i = 0; i < history.length; i++) {
+			history[i] = Math.max(0, 270 - 10 * i);
+		}
+
+		double[] out = forecaster.forecast(history, 30);
+
+		for (double value : out) {
+			assertTrue(value >= 0);
+		}
+	}
+
+	@Test
+	void sameInputGivesSameForecast() {
+		double[] history = new double[35];
+		Random random = new Random(42);
+		for (int i = 0; i < history.length; i++) {
+			history[i] = 100 + random.nextInt(50) + (i % 7 == 5 ? 200 : 0);
+		}
+
+		assertArrayEquals(forecaster.forecast(history, 10), forecaster.forecast(history.clone(), 10));
+	}
+}
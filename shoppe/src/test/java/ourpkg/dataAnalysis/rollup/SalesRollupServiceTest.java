@@ -0,0 +1,243 @@
+package ourpkg.dataAnalysis.rollup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ourpkg.order.Order;
+import ourpkg.order.OrderItem;
+import ourpkg.product.Product;
+import ourpkg.shop.Shop;
+import ourpkg.sku.Sku;
+import ourpkg.user_role_permission.user.User;
+
+class SalesRollupServiceTest {
+
+	private SalesRollupService service;
+	private SalesRollupCheckpointRepository checkpointRepository;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void setUp() {
+		service = new SalesRollupService();
+		checkpointRepository = mock(SalesRollupCheckpointRepository.class);
+		jdbcTemplate = mock(JdbcTemplate.class);
+		ReflectionTestUtils.setField(service, "checkpointRepository", checkpointRepository);
+		ReflectionTestUtils.setField(service, "shopDailySalesRepository", mock(ShopDailySalesRepository.class));
+		ReflectionTestUtils.setField(service, "skuDailySalesRepository", mock(SkuDailySalesRepository.class));
+		ReflectionTestUtils.setField(service, "shopCustomerOrdersRepository", mock(ShopCustomerOrdersRepository.class));
+		ReflectionTestUtils.setField(service, "eventPublisher", mock(ApplicationEventPublisher.class));
+		ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+	}
+
+	private void checkpoint(int lastOrderId, int cutoffOrderId, boolean completed) {
+		SalesRollupCheckpoint checkpoint = new SalesRollupCheckpoint("sales_rollup_backfill", cutoffOrderId, lastOrderId,
+				completed, new Date());
+		when(checkpointRepository.findById(anyString())).thenReturn(Optional.of(checkpoint));
+		when(checkpointRepository.findByIdForUpdate(anyString())).thenReturn(Optional.of(checkpoint));
+	}
+
+	private static OrderItem item(int shopId, int skuId, String unitPrice, int quantity) {
+		Shop shop = new Shop();
+		shop.setShopId(shopId);
+		Product product = new Product();
+		product.setProductId(skuId * 10);
+		Sku sku = new Sku();
+		sku.setSkuId(skuId);
+		sku.setProduct(product);
+		OrderItem item = new OrderItem();
+		item.setShop(shop);
+		item.setSku(sku);
+		item.setUnitPrice(new BigDecimal(unitPrice));
+		item.setQuantity(quantity);
+		return item;
+	}
+
+	private static Order order(int orderId) {
+		return order(orderId, List.of(item(3, 1, "100", 2)));
+	}
+
+	private static Order order(int orderId, List<OrderItem> items) {
+		Order order = new Order();
+		order.setOrderId(orderId);
+		order.setCreatedAt(new Date());
+		order.setOrderItem(items);
+		return order;
+	}
+
+	/**
+	 * 某張彙總表每次批次送出的資料列（依參數位置排列的值）
+	 */
+	@SuppressWarnings("unchecked")
+	private List<List<List<Object>>> batches(String sql) throws Exception {
+		ArgumentCaptor<Collection<Object>> rows = ArgumentCaptor.forClass(Collection.class);
+		ArgumentCaptor<ParameterizedPreparedStatementSetter<Object>> setters = ArgumentCaptor
+				.forClass(ParameterizedPreparedStatementSetter.class);
+		verify(jdbcTemplate, atLeast(0)).batchUpdate(eq(sql), rows.capture(), anyInt(), setters.capture());
+
+		List<List<List<Object>>> batches = new ArrayList<>();
+		for (int i = 0; i < rows.getAllValues().size(); i++) {
+			List<List<Object>> batch = new ArrayList<>();
+			for (Object row : rows.getAllValues().get(i)) {
+				Map<Integer, Object> values = new TreeMap<>();
+				PreparedStatement ps = mock(PreparedStatement.class, invocation -> {
+					values.put(invocation.getArgument(0), invocation.getArgument(1));
+					return null;
+				});
+				setters.getAllValues().get(i).setValues(ps, row);
+				batch.add(new ArrayList<>(values.values()));
+			}
+			batches.add(batch);
+		}
+		return batches;
+	}
+
+	private static List<Object> row(Object... values) {
+		return List.of(values);
+	}
+
+	private void verifyNoRollupWrites() {
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(),
+				any(ParameterizedPreparedStatementSetter.class));
+	}
+
+	private void record(int orderId) {
+		Order order = order(orderId);
+		service.recordOrder(order, order.getOrderItem());
+	}
+
+	@Test
+	void newOrdersDuringBackfillNeverLockTheCheckpoint() throws Exception {
+		checkpoint(50, 100, false);
+
+		for (int orderId = 101; orderId <= 110; orderId++) {
+			record(orderId);
+		}
+
+		verify(checkpointRepository, never()).findByIdForUpdate(anyString());
+		// 上限只讀一次
+		verify(checkpointRepository, times(1)).findById(anyString());
+		List<List<List<Object>>> batches = batches(SalesRollupService.SHOP_DAILY_SALES_UPSERT);
+		assertEquals(10, batches.size());
+		for (List<List<Object>> batch : batches) {
+			assertEquals(List.of(row(3, LocalDate.now(), 1, new BigDecimal("200"))), batch);
+		}
+	}
+
+	@Test
+	void oldOrdersNotYetBackfilledAreLeftToTheBackfill() {
+		checkpoint(50, 100, false);
+
+		record(80);
+
+		verify(checkpointRepository).findByIdForUpdate(anyString());
+		verifyNoRollupWrites();
+	}
+
+	@Test
+	void oldOrdersAlreadyBackfilledAreAppliedUnderTheLock() throws Exception {
+		checkpoint(50, 100, false);
+
+		service.revertOrder(order(30));
+
+		verify(checkpointRepository).findByIdForUpdate(anyString());
+		assertEquals(List.of(List.of(row(3, LocalDate.now(), -1, new BigDecimal("-200")))),
+				batches(SalesRollupService.SHOP_DAILY_SALES_UPSERT));
+		assertEquals(List.of(List.of(row(1, LocalDate.now(), 3, 10, -2, new BigDecimal("-200")))),
+				batches(SalesRollupService.SKU_DAILY_SALES_UPSERT));
+	}
+
+	@Test
+	void beforeTheBackfillStartsTheKeyRangeIsLocked() throws Exception {
+		when(checkpointRepository.findById(anyString())).thenReturn(Optional.empty());
+		when(checkpointRepository.findByIdForUpdate(anyString())).thenReturn(Optional.empty());
+
+		record(5);
+
+		verify(checkpointRepository).findByIdForUpdate(anyString());
+		assertEquals(1, batches(SalesRollupService.SHOP_DAILY_SALES_UPSERT).size());
+		assertFalse(service.isBackfillCompleted());
+	}
+
+	@Test
+	void completedBackfillIsRememberedInMemory() {
+		checkpoint(100, 100, true);
+
+		assertTrue(service.isBackfillCompleted());
+		record(5);
+		record(500);
+		assertTrue(service.isBackfillCompleted());
+
+		verify(checkpointRepository, times(1)).findById(anyString());
+		verify(checkpointRepository, never()).findByIdForUpdate(anyString());
+	}
+
+	@Test
+	void statementCountDoesNotGrowWithShopsAndSkus() throws Exception {
+		checkpoint(100, 100, true);
+		// 40 個 SKU 分屬 10 家商店，順序打亂
+		List<OrderItem> items = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			int skuId = (i * 17) % 40 + 1;
+			items.add(item(skuId % 10 + 1, skuId, "10", 1));
+		}
+		items.add(item(2, 1, "10", 3));
+		Order order = order(500, items);
+		User user = new User();
+		user.setUserId(9);
+		order.setUser(user);
+
+		service.recordOrder(order, items);
+
+		verify(jdbcTemplate, times(3)).batchUpdate(anyString(), anyCollection(), anyInt(),
+				any(ParameterizedPreparedStatementSetter.class));
+		List<List<Object>> shops = batches(SalesRollupService.SHOP_DAILY_SALES_UPSERT).get(0);
+		List<List<Object>> customers = batches(SalesRollupService.SHOP_CUSTOMER_ORDERS_UPSERT).get(0);
+		List<List<Object>> skus = batches(SalesRollupService.SKU_DAILY_SALES_UPSERT).get(0);
+		assertEquals(10, shops.size());
+		assertEquals(10, customers.size());
+		assertEquals(40, skus.size());
+		// 依鍵值排序，同時結帳的訂單以相同順序鎖列
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i + 1, shops.get(i).get(0));
+			assertEquals(row(i + 1, 9, 1), customers.get(i));
+		}
+		for (int i = 0; i < 40; i++) {
+			assertEquals(i + 1, skus.get(i).get(0));
+		}
+		// SKU 1 兩行合併：數量 1 + 3
+		assertEquals(row(1, LocalDate.now(), 2, 10, 4, new BigDecimal("40")), skus.get(0));
+		// 商店 2：SKU 1、11、21、31 各 10 元，加上 SKU 1 多買的 30 元
+		assertEquals(row(2, LocalDate.now(), 1, new BigDecimal("70")), shops.get(1));
+	}
+}
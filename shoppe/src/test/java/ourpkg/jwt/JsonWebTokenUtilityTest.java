@@ -0,0 +1,96 @@
+package ourpkg.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+class JsonWebTokenUtilityTest {
+
+	private JsonWebTokenUtility jwt;
+
+	@BeforeEach
+	void setUp() {
+		jwt = new JsonWebTokenUtility();
+		ReflectionTestUtils.setField(jwt, "secretKey", "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef");
+		ReflectionTestUtils.setField(jwt, "expire", 60L);
+		ReflectionTestUtils.setField(jwt, "resetExpire", 10L);
+		ReflectionTestUtils.setField(jwt, "verifiedCacheMaxSize", 100);
+		jwt.init();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, ?> verifiedTokens() {
+		return (Map<String, ?>) ReflectionTestUtils.getField(jwt, "verifiedTokens");
+	}
+
+	@Test
+	void cacheIsKeyedByTheDigestNotTheToken() throws Exception {
+		String token = jwt.createToken("alice", List.of("USER"), List.of(), 7);
+
+		JWTClaimsSet first = jwt.validateToken(token);
+		JWTClaimsSet second = jwt.validateToken(token);
+
+		assertNotNull(first);
+		assertSame(first, second);
+		assertEquals(7L, first.getLongClaim("userId"));
+		assertEquals(1, verifiedTokens().size());
+		assertTrue(verifiedTokens().containsKey(TokenDigest.sha256(token)));
+		assertFalse(verifiedTokens().containsKey(token));
+		for (String key : verifiedTokens().keySet()) {
+			assertFalse(key.contains(token.substring(0, 20)));
+		}
+	}
+
+	@Test
+	void tamperedTokenIsRejectedEvenWhenTheOriginalIsCached() {
+		String token = jwt.createToken("alice", List.of("USER"), List.of(), 7);
+		assertNotNull(jwt.validateToken(token));
+
+		String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+		assertNull(jwt.validateToken(tampered));
+		assertEquals(1, verifiedTokens().size());
+	}
+
+	@Test
+	void expiredTokenIsDroppedFromTheCache() {
+		ReflectionTestUtils.setField(jwt, "expire", 0L);
+		String token = jwt.createToken("alice", List.of("USER"), List.of(), 7);
+
+		assertNull(jwt.validateToken(token));
+		assertTrue(verifiedTokens().isEmpty());
+	}
+
+	@Test
+	void cachedValidationStaysFast() {
+		String token = jwt.createToken("alice", List.of("USER", "SELLER"), List.of("product:write"), 7);
+		jwt.validateToken(token);
+		int rounds = 200_000;
+		for (int i = 0; i < 20_000; i++) {
+			jwt.validateToken(token);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			assertNotNull(jwt.validateToken(token));
+		}
+		long elapsed = System.nanoTime() - start;
+
+		// 每次命中多算一次 SHA-256，仍遠比重新解析與計算 HMAC 便宜
+		double opsPerSecond = rounds / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+		assertTrue(opsPerSecond >= 50_000, "快取命中每秒 " + (long) opsPerSecond + " 次");
+	}
+}
@@ -0,0 +1,93 @@
+package ourpkg.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ourpkg.user_role_permission.user.User;
+
+class PrincipalCacheTest {
+
+	private PrincipalCache cache;
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private final Function<String, UserDetails> loader = username -> {
+		loads.incrementAndGet();
+		User user = new User();
+		user.setUserId(7);
+		user.setUserName(username);
+		return user;
+	};
+
+	@BeforeEach
+	void setUp() {
+		cache = new PrincipalCache();
+		ReflectionTestUtils.setField(cache, "ttlMillis", 60_000L);
+		ReflectionTestUtils.setField(cache, "maxSize", 100);
+	}
+
+	@Test
+	void sameTokenIsServedFromCache() {
+		CachedPrincipal first = cache.get("token-a", "alice", loader);
+		CachedPrincipal second = cache.get("token-a", "alice", loader);
+
+		assertSame(first, second);
+		assertEquals(1, loads.get());
+		assertEquals(7, first.getUserId());
+		assertEquals("alice", first.getUsername());
+	}
+
+	@Test
+	void eachTokenHasItsOwnEntry() {
+		CachedPrincipal first = cache.get("token-a", "alice", loader);
+		CachedPrincipal second = cache.get("token-b", "alice", loader);
+
+		assertNotSame(first, second);
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void invalidateUserForcesReload() {
+		cache.get("token-a", "alice", loader);
+		cache.invalidateUser(7);
+		cache.get("token-a", "alice", loader);
+
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void invalidateAllForcesReload() {
+		cache.get("token-a", "alice", loader);
+		cache.invalidateAll();
+		cache.get("token-a", "alice", loader);
+
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void snapshotAuthoritiesAreReadOnly() {
+		CachedPrincipal principal = cache.get("token-a", "alice",
+				username -> org.springframework.security.core.userdetails.User.withUsername(username).password("x")
+						.authorities("ROLE_BUYER").build());
+
+		@SuppressWarnings("unchecked")
+		java.util.Collection<GrantedAuthority> authorities = (java.util.Collection<GrantedAuthority>) principal
+				.getAuthorities();
+		assertEquals("ROLE_BUYER", authorities.iterator().next().getAuthority());
+		assertThrows(UnsupportedOperationException.class,
+				() -> authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN")));
+		assertEquals(null, principal.getPassword());
+	}
+}
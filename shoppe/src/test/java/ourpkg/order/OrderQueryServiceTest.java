@@ -0,0 +1,321 @@
+package ourpkg.order;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import ourpkg.address.AddressTypeCorrespond;
+import ourpkg.address.OrderAddress;
+import ourpkg.category.Category1;
+import ourpkg.category.Category2;
+import ourpkg.product.Product;
+import ourpkg.shop.Shop;
+import ourpkg.sku.Sku;
+import ourpkg.user_role_permission.user.User;
+
+/**
+ * 在 H2（MSSQLServer 相容模式）上以 Hibernate 建表，驗證訂單 keyset 分頁、逐頁處理與游標匯出
+ */
+class OrderQueryServiceTest {
+
+	private static final int ORDERS = 250;
+
+	private EntityManagerFactory entityManagerFactory;
+	private EntityManager entityManager;
+	private JdbcTemplate jdbcTemplate;
+	private OrderQueryService service;
+	private int sellerA;
+	private int shopB;
+
+	@BeforeEach
+	void setUp() {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:order-" + UUID.randomUUID() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1");
+		LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+		factory.setDataSource(dataSource);
+		factory.setPackagesToScan("ourpkg");
+		factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+		factory.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create"));
+		factory.afterPropertiesSet();
+		entityManagerFactory = factory.getObject();
+		entityManager = entityManagerFactory.createEntityManager();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+
+		entityManager.getTransaction().begin();
+		User buyer = user("buyer");
+		Shop a = shop(user("sellerA"), "A店");
+		Shop b = shop(user("sellerB"), "B店");
+		Category1 c1 = new Category1();
+		c1.setName("3C");
+		entityManager.persist(c1);
+		Category2 c2 = new Category2();
+		c2.setName("耳機");
+		entityManager.persist(c2);
+		Sku skuA = sku(product(a, c1, c2, "耳機"));
+		Sku skuB = sku(product(b, c1, c2, "喇叭"));
+		AddressTypeCorrespond addressType = new AddressTypeCorrespond();
+		addressType.setName("收件");
+		entityManager.persist(addressType);
+		OrderAddress address = new OrderAddress();
+		address.setAddressTypeCorrespond(addressType);
+		address.setCity("台北市");
+		entityManager.persist(address);
+		OrderStatusCorrespond pending = status("待付款");
+		OrderStatusCorrespond completed = status("已完成");
+		entityManager.getTransaction().commit();
+		sellerA = a.getUser().getUserId();
+		shopB = b.getShopId();
+
+		// 訂單 X：偶數買 A 店、奇數買 B 店，3 的倍數兩家都買；5 的倍數已完成；建立時間依序往後一分鐘
+		LocalDateTime start = LocalDateTime.of(2026, 1, 1, 0, 0);
+		jdbcTemplate.update("INSERT INTO [Order] ([order_id], [user_id], [order_address_id_billing], "
+				+ "[order_address_id_shipping], [order_status_id], [total_price], [created_at], [updated_at]) "
+				+ "SELECT X, ?, ?, ?, CASEWHEN(MOD(X, 5) = 0, ?, ?), 100, DATEADD(MINUTE, X, CAST(? AS TIMESTAMP)), "
+				+ "CAST(? AS TIMESTAMP) FROM SYSTEM_RANGE(1, ?)", buyer.getUserId(), address.getOrderAddressId(),
+				address.getOrderAddressId(), completed.getId(), pending.getId(), Timestamp.valueOf(start),
+				Timestamp.valueOf(start), ORDERS);
+		jdbcTemplate.update("INSERT INTO OrderItem (order_id, sku_id, shop_id, unit_price, quantity) "
+				+ "SELECT X, CASEWHEN(MOD(X, 2) = 0, ?, ?), CASEWHEN(MOD(X, 2) = 0, ?, ?), 100, 1 "
+				+ "FROM SYSTEM_RANGE(1, ?)", skuA.getSkuId(), skuB.getSkuId(), a.getShopId(), b.getShopId(), ORDERS);
+		jdbcTemplate.update("INSERT INTO OrderItem (order_id, sku_id, shop_id, unit_price, quantity) "
+				+ "SELECT X, CASEWHEN(MOD(X, 2) = 0, ?, ?), CASEWHEN(MOD(X, 2) = 0, ?, ?), 50, 2 "
+				+ "FROM SYSTEM_RANGE(1, ?) WHERE MOD(X, 3) = 0", skuB.getSkuId(), skuA.getSkuId(), b.getShopId(),
+				a.getShopId(), ORDERS);
+
+		service = new OrderQueryService();
+		ReflectionTestUtils.setField(service, "entityManager", entityManager);
+		ReflectionTestUtils.setField(service, "orderRepository",
+				new JpaRepositoryFactory(entityManager).getRepository(OrderRepository.class));
+		ReflectionTestUtils.setField(service, "dataSource", dataSource);
+		ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(service, "maxPageSize", 100);
+		ReflectionTestUtils.setField(service, "exportFetchSize", 50);
+	}
+
+	@AfterEach
+	void tearDown() {
+		entityManager.close();
+		entityManagerFactory.close();
+	}
+
+	private User user(String name) {
+		User user = new User();
+		user.setUserName(name);
+		user.setEmail(name + "@example.com");
+		entityManager.persist(user);
+		return user;
+	}
+
+	private Shop shop(User owner, String name) {
+		Shop shop = new Shop();
+		shop.setUser(owner);
+		shop.setShopName(name);
+		shop.setIsActive(true);
+		entityManager.persist(shop);
+		return shop;
+	}
+
+	private Product product(Shop shop, Category1 c1, Category2 c2, String name) {
+		Product product = new Product();
+		product.setShop(shop);
+		product.setCategory1(c1);
+		product.setCategory2(c2);
+		product.setProductName(name);
+		entityManager.persist(product);
+		return product;
+	}
+
+	private Sku sku(Product product) {
+		Sku sku = new Sku();
+		sku.setProduct(product);
+		sku.setPrice(BigDecimal.valueOf(100));
+		sku.setStock(10);
+		entityManager.persist(sku);
+		return sku;
+	}
+
+	private OrderStatusCorrespond status(String name) {
+		OrderStatusCorrespond status = new OrderStatusCorrespond();
+		status.setName(name);
+		entityManager.persist(status);
+		return status;
+	}
+
+	// 賣家 A 的訂單：偶數或 3 的倍數，由新到舊
+	private static List<Integer> sellerAOrders() {
+		List<Integer> ids = new ArrayList<>();
+		for (int id = ORDERS; id >= 1; id--) {
+			if (id % 2 == 0 || id % 3 == 0) {
+				ids.add(id);
+			}
+		}
+		return ids;
+	}
+
+	private static List<Integer> ids(List<Order> orders) {
+		return orders.stream().map(Order::getOrderId).collect(Collectors.toList());
+	}
+
+	private String export(OrderListCriteria criteria, String format) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		service.export(criteria, format, out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void cursorWalksEverySellerOrderOnceNewestFirst() {
+		OrderListCriteria criteria = new OrderListCriteria();
+		criteria.setSellerId(sellerA);
+		criteria.setSize(30);
+
+		List<Integer> seen = new ArrayList<>();
+		int pages = 0;
+		OrderQueryService.Slice slice;
+		do {
+			slice = service.findPage(criteria);
+			seen.addAll(ids(slice.getOrders()));
+			// 列表需要的明細、商品已一起載入
+			for (Order order : slice.getOrders()) {
+				assertFalse(order.getOrderItem().isEmpty());
+				assertTrue(order.getOrderItem().stream().allMatch(item -> item.getSku().getProduct() != null));
+			}
+			criteria.setAfterOrderId(slice.getNextCursor());
+			pages++;
+		} while (slice.getNextCursor() != null);
+
+		assertEquals(sellerAOrders(), seen);
+		assertEquals((seen.size() + 29) / 30, pages);
+	}
+
+	@Test
+	void pageSizeIsClampedToTheMaximum() {
+		OrderListCriteria criteria = new OrderListCriteria();
+		criteria.setSize(Integer.MAX_VALUE);
+
+		OrderQueryService.Slice slice = service.findPage(criteria);
+
+		assertEquals(100, slice.getOrders().size());
+		assertEquals(ORDERS, slice.getOrders().get(0).getOrderId());
+		assertEquals(151, slice.getNextCursor());
+	}
+
+	@Test
+	void filtersCombineWithTheCursor() {
+		OrderListCriteria criteria = new OrderListCriteria();
+		criteria.setShopId(shopB);
+		criteria.setStatus("已完成");
+		criteria.setFrom(Timestamp.valueOf(LocalDateTime.of(2026, 1, 1, 1, 0)));
+		criteria.setTo(Timestamp.valueOf(LocalDateTime.of(2026, 1, 1, 2, 0)));
+		criteria.setAfterOrderId(105);
+		criteria.setSize(3);
+
+		OrderQueryService.Slice slice = service.findPage(criteria);
+
+		// 60 ~ 119 分鐘、5 的倍數且含 B 店商品（奇數或 3 的倍數），排在 105 之後
+		assertEquals(List.of(95, 90, 85), ids(slice.getOrders()));
+		assertEquals(85, slice.getNextCursor());
+		criteria.setAfterOrderId(85);
+		assertEquals(List.of(75, 65, 60), ids(service.findPage(criteria).getOrders()));
+		criteria.setAfterOrderId(60);
+		OrderQueryService.Slice last = service.findPage(criteria);
+		assertTrue(last.getOrders().isEmpty());
+		assertNull(last.getNextCursor());
+	}
+
+	@Test
+	void forEachPageVisitsEveryOrderInBoundedPagesAndReleasesThem() {
+		OrderListCriteria criteria = new OrderListCriteria();
+		criteria.setSellerId(sellerA);
+		criteria.setAfterOrderId(10);
+		List<Integer> seen = new ArrayList<>();
+		List<Integer> pageSizes = new ArrayList<>();
+		List<Order> firstPage = new ArrayList<>();
+
+		service.forEachPage(criteria, orders -> {
+			if (firstPage.isEmpty()) {
+				firstPage.addAll(orders);
+			}
+			pageSizes.add(orders.size());
+			seen.addAll(ids(orders));
+		});
+
+		// 忽略傳入的游標，從最新一筆開始
+		assertEquals(sellerAOrders(), seen);
+		assertEquals(List.of(100, 67), pageSizes);
+		// 處理完的頁面不會留在持久化內容中
+		assertFalse(entityManager.contains(firstPage.get(0)));
+	}
+
+	@Test
+	void csvExportStreamsOneLinePerMatchingOrder() throws Exception {
+		OrderListCriteria criteria = new OrderListCriteria();
+		criteria.setSellerId(sellerA);
+
+		String[] lines = export(criteria, "csv").split("\n");
+
+		assertEquals("\uFEFF訂單ID,建立時間,狀態,用戶ID,用戶名稱,Email,總金額,商品數量", lines[0]);
+		List<Integer> exported = new ArrayList<>();
+		for (int i = 1; i < lines.length; i++) {
+			exported.add(Integer.valueOf(lines[i].split(",")[0]));
+		}
+		// 與分頁列表同樣的訂單與順序，匯出不受每頁筆數上限影響
+		assertEquals(sellerAOrders(), exported);
+		assertTrue(lines[1].startsWith("250,2026-01-01 04:10:00,已完成,"));
+		assertTrue(lines[1].endsWith(",buyer,buyer@example.com,100.00,1"));
+		// 訂單 240 兩家都買：數量 1 + 2
+		assertTrue(lines[1 + sellerAOrders().indexOf(240)].endsWith(",3"));
+	}
+
+	@Test
+	void ndjsonExportAppliesTheSameFilters() throws Exception {
+		OrderListCriteria criteria = new OrderListCriteria();
+		criteria.setShopId(shopB);
+		criteria.setStatus("已完成");
+		// 分頁參數不影響匯出
+		criteria.setAfterOrderId(20);
+		criteria.setSize(1);
+
+		ObjectMapper mapper = new ObjectMapper();
+		List<Integer> exported = new ArrayList<>();
+		for (String line : export(criteria, "ndjson").split("\n")) {
+			JsonNode row = mapper.readTree(line);
+			assertEquals("已完成", row.get("status").asText());
+			exported.add(row.get("orderId").asInt());
+		}
+
+		List<Integer> expected = new ArrayList<>();
+		for (int id = ORDERS; id >= 1; id--) {
+			if (id % 5 == 0 && (id % 2 == 1 || id % 3 == 0)) {
+				expected.add(id);
+			}
+		}
+		assertEquals(expected, exported);
+	}
+}
@@ -0,0 +1,216 @@
+package ourpkg.order;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import jakarta.persistence.EntityManager;
+import ourpkg.address.AddressTypeCorrespond;
+import ourpkg.address.OrderAddressRepository;
+import ourpkg.dataAnalysis.rollup.SalesRollupCheckpoint;
+import ourpkg.dataAnalysis.rollup.SalesRollupCheckpointRepository;
+import ourpkg.dataAnalysis.rollup.SalesRollupService;
+import ourpkg.payment.PaymentMethod;
+import ourpkg.payment.PaymentRepository;
+import ourpkg.payment.PaymentStatus;
+import ourpkg.referencedata.ReferenceDataRegistry;
+import ourpkg.sku.SkuRepository;
+import ourpkg.sku.inventory.StockReservationService;
+import ourpkg.user_role_permission.user.User;
+import ourpkg.user_role_permission.user.UserRepository;
+
+class OrderServiceCreateOrderTest {
+
+	private OrderService service;
+	private SkuRepository skuRepository;
+	private JdbcTemplate jdbcTemplate;
+	private StockReservationService stockReservationService;
+	private OrderRepository orderRepository;
+	private EntityManager entityManager;
+	private OrderAddressRepository orderAddressRepository;
+	private PaymentRepository paymentRepository;
+
+	@BeforeEach
+	void setUp() {
+		service = new OrderService();
+		skuRepository = mock(SkuRepository.class);
+		jdbcTemplate = mock(JdbcTemplate.class);
+		stockReservationService = mock(StockReservationService.class);
+		orderRepository = mock(OrderRepository.class);
+		entityManager = mock(EntityManager.class);
+		orderAddressRepository = mock(OrderAddressRepository.class);
+		paymentRepository = mock(PaymentRepository.class);
+		UserRepository userRepository = mock(UserRepository.class);
+		ReferenceDataRegistry referenceData = mock(ReferenceDataRegistry.class);
+
+		User user = new User();
+		user.setUserId(5);
+		user.setUserName("buyer");
+		when(userRepository.findByUserName("buyer")).thenReturn(Optional.of(user));
+		when(referenceData.findAddressType(2)).thenReturn(Optional.of(new AddressTypeCorrespond()));
+		when(referenceData.findOrderStatus(1)).thenReturn(Optional.of(new OrderStatusCorrespond()));
+		when(referenceData.findPaymentMethod(anyString())).thenReturn(Optional.of(new PaymentMethod()));
+		when(referenceData.findPaymentStatus(anyString())).thenReturn(Optional.of(new PaymentStatus()));
+		when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> {
+			Order order = invocation.getArgument(0);
+			order.setOrderId(77);
+			return order;
+		});
+
+		ReflectionTestUtils.setField(service, "skuRepository", skuRepository);
+		ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(service, "stockReservationService", stockReservationService);
+		ReflectionTestUtils.setField(service, "orderRepository", orderRepository);
+		ReflectionTestUtils.setField(service, "userRepository", userRepository);
+		ReflectionTestUtils.setField(service, "referenceData", referenceData);
+		ReflectionTestUtils.setField(service, "orderAddressRepository", orderAddressRepository);
+		ReflectionTestUtils.setField(service, "paymentRepository", paymentRepository);
+		ReflectionTestUtils.setField(service, "entityManager", entityManager);
+		ReflectionTestUtils.setField(service, "salesRollupService", mock(SalesRollupService.class));
+	}
+
+	private static OrderRequest request(int... skuIdAndQty) {
+		List<OrderItemRequest> items = new ArrayList<>();
+		for (int i = 0; i < skuIdAndQty.length; i += 2) {
+			OrderItemRequest item = new OrderItemRequest();
+			item.setSkuId(skuIdAndQty[i]);
+			item.setQuantity(skuIdAndQty[i + 1]);
+			items.add(item);
+		}
+		OrderRequest request = new OrderRequest();
+		request.setItems(items);
+		request.setPaymentMethod("貨到付款");
+		return request;
+	}
+
+	/**
+	 * 與 findOrderLineRowsBySkuIds 相同的欄位順序：skuId, price, productId, productName, shopId
+	 */
+	private static Object[] line(int skuId, String price, int productId, Integer shopId) {
+		return new Object[] { skuId, new BigDecimal(price), productId, "商品" + productId, shopId };
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void linesAreLoadedOnceAndWrittenInOneBatch() {
+		when(skuRepository.findOrderLineRowsBySkuIds(any()))
+				.thenReturn(List.of(line(1, "100", 10, 3), line(2, "50", 11, 3), line(3, "20", 12, 4)));
+
+		Order order = service.createOrderFromUser("buyer", request(1, 2, 2, 1, 3, 5, 1, 1));
+
+		ArgumentCaptor<List<Integer>> skuIds = ArgumentCaptor.forClass(List.class);
+		verify(skuRepository, times(1)).findOrderLineRowsBySkuIds(skuIds.capture());
+		assertEquals(List.of(1, 2, 3), skuIds.getValue());
+		verify(skuRepository, never()).findById(anyInt());
+
+		ArgumentCaptor<Collection<OrderItem>> items = ArgumentCaptor.forClass(Collection.class);
+		verify(jdbcTemplate, times(1)).batchUpdate(anyString(), items.capture(), eq(4),
+				any(ParameterizedPreparedStatementSetter.class));
+		assertEquals(4, items.getValue().size());
+		assertEquals(List.of(3, 3, 4, 3),
+				items.getValue().stream().map(item -> item.getShop().getShopId()).toList());
+
+		// 100*2 + 50 + 20*5 + 100
+		assertEquals(new BigDecimal("450"), order.getTotalPrice());
+		// 同一 SKU 合併後扣庫存，訂單存檔後才記錄預留
+		InOrder inOrder = inOrder(stockReservationService, orderRepository);
+		inOrder.verify(stockReservationService).reserve(Map.of(1, 3, 2, 1, 3, 5));
+		inOrder.verify(orderRepository).save(order);
+		inOrder.verify(stockReservationService).hold(77, Map.of(1, 3, 2, 1, 3, 5));
+
+		// 回傳的訂單帶著明細，且已移出持久化內容，提交時不會再 cascade 寫入
+		assertEquals(4, order.getOrderItem().size());
+		assertEquals(List.of(1, 2, 3, 1), order.getOrderItem().stream().map(item -> item.getSku().getSkuId()).toList());
+		InOrder detach = inOrder(entityManager);
+		detach.verify(entityManager).flush();
+		detach.verify(entityManager).detach(order);
+	}
+
+	/**
+	 * 一次結帳對資料庫的呼叫次數（每個 repository／JdbcTemplate 方法呼叫算一次往返）
+	 */
+	private int databaseCalls(int lines) {
+		List<Object[]> rows = new ArrayList<>();
+		int[] skuIdAndQty = new int[lines * 2];
+		for (int i = 0; i < lines; i++) {
+			rows.add(line(i + 1, "10", 100 + i, 3 + i % 7));
+			skuIdAndQty[i * 2] = i + 1;
+			skuIdAndQty[i * 2 + 1] = 1;
+		}
+		when(skuRepository.findOrderLineRowsBySkuIds(any())).thenReturn(rows);
+
+		Order order = service.createOrderFromUser("buyer", request(skuIdAndQty));
+
+		assertEquals(lines, order.getOrderItem().size());
+		int calls = Stream.of(skuRepository, jdbcTemplate, orderRepository, orderAddressRepository, paymentRepository)
+				.mapToInt(repository -> mockingDetails(repository).getInvocations().size()).sum();
+		Stream.of(skuRepository, jdbcTemplate, orderRepository, orderAddressRepository, paymentRepository)
+				.forEach(Mockito::clearInvocations);
+		return calls;
+	}
+
+	@Test
+	void databaseCallsDoNotGrowWithTheNumberOfLines() {
+		// 彙總表也用同一個 JdbcTemplate 寫入，一併計算
+		SalesRollupService salesRollupService = new SalesRollupService();
+		SalesRollupCheckpointRepository checkpointRepository = mock(SalesRollupCheckpointRepository.class);
+		when(checkpointRepository.findById(anyString())).thenReturn(
+				Optional.of(new SalesRollupCheckpoint("sales_rollup_backfill", 0, 0, true, new Date())));
+		ReflectionTestUtils.setField(salesRollupService, "checkpointRepository", checkpointRepository);
+		ReflectionTestUtils.setField(salesRollupService, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(salesRollupService, "eventPublisher", mock(ApplicationEventPublisher.class));
+		ReflectionTestUtils.setField(service, "salesRollupService", salesRollupService);
+		salesRollupService.isBackfillCompleted();
+
+		int single = databaseCalls(1);
+
+		assertEquals(single, databaseCalls(10));
+		assertEquals(single, databaseCalls(100));
+	}
+
+	@Test
+	void unknownSkuFailsBeforeTouchingStock() {
+		when(skuRepository.findOrderLineRowsBySkuIds(any())).thenReturn(List.<Object[]>of(line(1, "100", 10, 3)));
+
+		assertThrows(RuntimeException.class, () -> service.createOrderFromUser("buyer", request(1, 1, 9, 1)));
+		verify(stockReservationService, never()).reserve(any());
+		verify(orderRepository, never()).save(any());
+	}
+
+	@Test
+	void productWithoutShopIsRejected() {
+		when(skuRepository.findOrderLineRowsBySkuIds(any())).thenReturn(List.<Object[]>of(line(1, "100", 10, null)));
+
+		assertThrows(RuntimeException.class, () -> service.createOrderFromUser("buyer", request(1, 1)));
+		verify(stockReservationService, never()).reserve(any());
+	}
+}
@@ -0,0 +1,141 @@
+package ourpkg.order;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ourpkg.dataAnalysis.rollup.SalesRollupService;
+import ourpkg.referencedata.ReferenceDataRegistry;
+import ourpkg.sku.inventory.StockReservationService;
+
+class OrderServiceStatusChangeTest {
+
+	private static final int ORDER_ID = 42;
+
+	private OrderService service;
+	private OrderRepository orderRepository;
+	private StockReservationService stockReservationService;
+	private SalesRollupService salesRollupService;
+	private Order order;
+
+	@BeforeEach
+	void setUp() {
+		service = new OrderService();
+		orderRepository = mock(OrderRepository.class);
+		stockReservationService = mock(StockReservationService.class);
+		salesRollupService = mock(SalesRollupService.class);
+		ReferenceDataRegistry referenceData = mock(ReferenceDataRegistry.class);
+		when(referenceData.resolveOrderStatus("已取消")).thenReturn(Optional.of(status(7, "已取消")));
+		when(referenceData.resolveOrderStatus("未付款")).thenReturn(Optional.of(status(1, "未付款")));
+		when(referenceData.resolveOrderStatus("已付款")).thenReturn(Optional.of(status(2, "已付款")));
+
+		order = new Order();
+		order.setOrderId(ORDER_ID);
+		when(orderRepository.findById(ORDER_ID)).thenReturn(Optional.of(order));
+		when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+		ReflectionTestUtils.setField(service, "orderRepository", orderRepository);
+		ReflectionTestUtils.setField(service, "stockReservationService", stockReservationService);
+		ReflectionTestUtils.setField(service, "salesRollupService", salesRollupService);
+		ReflectionTestUtils.setField(service, "referenceData", referenceData);
+	}
+
+	private static OrderStatusCorrespond status(int id, String name) {
+		OrderStatusCorrespond status = new OrderStatusCorrespond();
+		status.setId(id);
+		status.setName(name);
+		return status;
+	}
+
+	private Order update(String status) {
+		UpdateOrderRequest request = new UpdateOrderRequest();
+		request.setStatus(status);
+		return service.updateOrder(ORDER_ID, request);
+	}
+
+	@Test
+	void cancellingReleasesTheHeldStock() {
+		order.setOrderStatusCorrespond(status(1, "未付款"));
+
+		update("已取消");
+
+		verify(salesRollupService).revertOrder(order);
+		verify(stockReservationService).release(ORDER_ID);
+		verify(stockReservationService, never()).reinstate(anyInt(), anyBoolean());
+	}
+
+	@Test
+	void cancellingTwiceReleasesOnce() {
+		order.setOrderStatusCorrespond(status(7, "已取消"));
+
+		update("已取消");
+
+		verify(stockReservationService, never()).release(any());
+	}
+
+	@Test
+	void uncancellingToUnpaidReservesAgainWithoutConfirming() {
+		order.setOrderStatusCorrespond(status(7, "已取消"));
+
+		update("未付款");
+
+		InOrder inOrder = inOrder(stockReservationService, salesRollupService);
+		inOrder.verify(stockReservationService).reinstate(ORDER_ID, false);
+		inOrder.verify(salesRollupService).recordOrder(any(), any());
+	}
+
+	@Test
+	void uncancellingToPaidConfirmsTheReservation() {
+		order.setOrderStatusCorrespond(status(7, "已取消"));
+
+		update("已付款");
+
+		verify(stockReservationService).reinstate(ORDER_ID, true);
+	}
+
+	@Test
+	void uncancellingWithoutStockFailsTheUpdate() {
+		order.setOrderStatusCorrespond(status(7, "已取消"));
+		doThrow(new RuntimeException("庫存不足，無法結帳 (SKU: 3)")).when(stockReservationService)
+				.reinstate(ORDER_ID, false);
+
+		assertThrows(RuntimeException.class, () -> update("未付款"));
+		verify(salesRollupService, never()).recordOrder(any(), any());
+		verify(orderRepository, never()).save(any());
+	}
+
+	@Test
+	void deletingAPendingOrderReleasesItsStock() {
+		order.setOrderStatusCorrespond(status(1, "未付款"));
+
+		service.deleteOrder(ORDER_ID);
+
+		InOrder inOrder = inOrder(stockReservationService, orderRepository);
+		inOrder.verify(stockReservationService).release(ORDER_ID);
+		inOrder.verify(orderRepository).delete(order);
+	}
+
+	@Test
+	void deletingACancelledOrderDoesNotReleaseAgain() {
+		order.setOrderStatusCorrespond(status(7, "已取消"));
+
+		service.deleteOrder(ORDER_ID);
+
+		verify(stockReservationService, never()).release(any());
+		verify(orderRepository).delete(order);
+	}
+}
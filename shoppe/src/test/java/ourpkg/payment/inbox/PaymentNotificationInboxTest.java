@@ -0,0 +1,195 @@
+package ourpkg.payment.inbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ourpkg.order.Order;
+import ourpkg.order.OrderRepository;
+import ourpkg.payment.ECPayController;
+import ourpkg.payment.EcpayProperties;
+import ourpkg.payment.MerchantTradeNo;
+import ourpkg.payment.Payment;
+import ourpkg.payment.PaymentMethod;
+import ourpkg.payment.PaymentRepository;
+import ourpkg.payment.PaymentStatus;
+import ourpkg.referencedata.ReferenceDataRegistry;
+import ourpkg.sku.inventory.StockReservationService;
+
+class PaymentNotificationInboxTest {
+
+	private static final int ORDER_ID = 123;
+
+	private PaymentNotificationRepository repository;
+	private PaymentTransitionService transitions;
+	private PaymentRepository paymentRepository;
+	private PaymentNotificationInbox inbox;
+	private final List<PaymentNotification> saved = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		repository = mock(PaymentNotificationRepository.class);
+		transitions = mock(PaymentTransitionService.class);
+		paymentRepository = mock(PaymentRepository.class);
+		AtomicLong ids = new AtomicLong();
+		when(repository.save(any(PaymentNotification.class))).thenAnswer(invocation -> {
+			PaymentNotification notification = invocation.getArgument(0);
+			notification.setId(ids.incrementAndGet());
+			saved.add(notification);
+			return notification;
+		});
+		when(repository.findAllById(any())).thenAnswer(invocation -> new ArrayList<>(saved));
+		when(transitions.markPaid(anyInt())).thenReturn(true);
+
+		inbox = new PaymentNotificationInbox();
+		ReflectionTestUtils.setField(inbox, "repository", repository);
+		ReflectionTestUtils.setField(inbox, "transitions", transitions);
+		ReflectionTestUtils.setField(inbox, "paymentRepository", paymentRepository);
+		ReflectionTestUtils.setField(inbox, "transactionTemplate",
+				new TransactionTemplate(mock(PlatformTransactionManager.class)));
+		ReflectionTestUtils.setField(inbox, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(inbox, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(inbox, "workerCount", 1);
+		ReflectionTestUtils.setField(inbox, "batchSize", 10);
+		ReflectionTestUtils.setField(inbox, "queueCapacity", 100);
+		ReflectionTestUtils.setField(inbox, "maxAttempts", 5);
+		ReflectionTestUtils.setField(inbox, "sweepBatch", 10);
+		inbox.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		inbox.shutdown();
+	}
+
+	/**
+	 * 走一次 ECPayController 建立付款表單的流程，取得實際送給綠界的 MerchantTradeNo 與存下的 payment
+	 */
+	@SuppressWarnings("unchecked")
+	private Payment redirectThroughController(Order order) throws Exception {
+		ECPayController controller = new ECPayController();
+		OrderRepository orderRepository = mock(OrderRepository.class);
+		ReferenceDataRegistry referenceData = mock(ReferenceDataRegistry.class);
+		EcpayProperties properties = mock(EcpayProperties.class);
+		PaymentRepository controllerPayments = mock(PaymentRepository.class);
+		when(orderRepository.findOrderWithItems(order.getOrderId())).thenReturn(Optional.of(order));
+		when(referenceData.findPaymentMethod(anyString())).thenReturn(Optional.of(new PaymentMethod()));
+		when(referenceData.findPaymentStatus(anyString())).thenReturn(Optional.of(new PaymentStatus()));
+		when(properties.getReturnUrl()).thenReturn("https://shop.example/api/payment/notify");
+		when(controllerPayments.findByOrderOrderId(order.getOrderId())).thenReturn(List.of());
+
+		ReflectionTestUtils.setField(controller, "merchantId", "3002607");
+		ReflectionTestUtils.setField(controller, "hashKey", "pwFHCqoQZGmho4w6");
+		ReflectionTestUtils.setField(controller, "hashIv", "EkRm7iFT261dpevs");
+		ReflectionTestUtils.setField(controller, "ecpayApiUrl", "https://payment-stage.ecpay.com.tw/Cashier/AioCheckOut/V5");
+		ReflectionTestUtils.setField(controller, "orderRepository", orderRepository);
+		ReflectionTestUtils.setField(controller, "referenceData", referenceData);
+		ReflectionTestUtils.setField(controller, "ecpayProperties", properties);
+		ReflectionTestUtils.setField(controller, "paymentRepository", controllerPayments);
+		ReflectionTestUtils.setField(controller, "stockReservationService", mock(StockReservationService.class));
+
+		ResponseEntity<?> response = controller.redirectToECPay(order.getOrderId(), null);
+		String merchantTradeNo = (String) ((Map<String, Object>) response.getBody()).get("merchantTradeNo");
+		assertNotNull(merchantTradeNo);
+
+		ArgumentCaptor<Payment> payment = ArgumentCaptor.forClass(Payment.class);
+		verify(controllerPayments).save(payment.capture());
+		assertEquals(merchantTradeNo, payment.getValue().getMerchantTradeNo());
+		return payment.getValue();
+	}
+
+	private static Order order(int orderId) {
+		Order order = new Order();
+		order.setOrderId(orderId);
+		order.setTotalPrice(new BigDecimal("500"));
+		return order;
+	}
+
+	private static Map<String, String> paid(String merchantTradeNo) {
+		return Map.of("MerchantTradeNo", merchantTradeNo, "TradeNo", "2410181234567890", "RtnCode", "1",
+				"TradeAmt", "500");
+	}
+
+	@Test
+	void controllerTradeNoResolvesThroughSavedPayment() throws Exception {
+		Payment payment = redirectThroughController(order(ORDER_ID));
+		when(paymentRepository.findFirstByMerchantTradeNoOrderByPaymentIdDesc(payment.getMerchantTradeNo()))
+				.thenReturn(Optional.of(payment));
+
+		inbox.accept(paid(payment.getMerchantTradeNo()));
+
+		verify(transitions, timeout(5000)).markPaid(ORDER_ID);
+		verify(repository, timeout(5000)).complete(eq(1L), eq(PaymentNotification.PROCESSED), isNull(), any());
+		assertEquals(ORDER_ID, saved.get(0).getOrderId());
+	}
+
+	@Test
+	void controllerTradeNoIsParsedWhenPaymentRowWasOverwritten() throws Exception {
+		// 同一訂單重新開啟付款頁，payment 上記的已是新的訂單號
+		Payment payment = redirectThroughController(order(ORDER_ID));
+		when(paymentRepository.findFirstByMerchantTradeNoOrderByPaymentIdDesc(anyString())).thenReturn(Optional.empty());
+
+		inbox.accept(paid(payment.getMerchantTradeNo()));
+
+		verify(transitions, timeout(5000)).markPaid(ORDER_ID);
+		verify(repository, timeout(5000)).complete(eq(1L), eq(PaymentNotification.PROCESSED), isNull(), any());
+	}
+
+	@Test
+	void orderIdsPastSixDigitsStillParse() {
+		String merchantTradeNo = MerchantTradeNo.forOrder(1_234_567, System.currentTimeMillis());
+
+		assertEquals(1_234_567, MerchantTradeNo.parseOrderId(merchantTradeNo));
+		assertEquals(ORDER_ID, MerchantTradeNo.parseOrderId("ORDER123_1729240000000"));
+	}
+
+	@Test
+	void unknownTradeNoIsMarkedFailedWithoutTouchingOrders() {
+		when(paymentRepository.findFirstByMerchantTradeNoOrderByPaymentIdDesc(anyString())).thenReturn(Optional.empty());
+
+		inbox.accept(paid("ORDER1729240000000"));
+
+		verify(repository, timeout(5000)).complete(eq(1L), eq(PaymentNotification.FAILED), anyString(), any());
+		verify(transitions, never()).markPaid(anyInt());
+	}
+
+	@Test
+	void failedPaymentIsIgnored() throws Exception {
+		Payment payment = redirectThroughController(order(ORDER_ID));
+		when(paymentRepository.findFirstByMerchantTradeNoOrderByPaymentIdDesc(payment.getMerchantTradeNo()))
+				.thenReturn(Optional.of(payment));
+
+		inbox.accept(Map.of("MerchantTradeNo", payment.getMerchantTradeNo(), "TradeNo", "1", "RtnCode", "10100058"));
+
+		verify(repository, timeout(5000)).complete(eq(1L), eq(PaymentNotification.IGNORED), anyString(), any());
+		verify(transitions, never()).markPaid(anyInt());
+	}
+}
@@ -0,0 +1,136 @@
+package ourpkg.product.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ourpkg.product.version2.complete_query.ProductCompleteResponseDTO4;
+import ourpkg.product.version2.dto.ProductDetailDTO;
+import ourpkg.product.version2.dto.ProductResDTO;
+import ourpkg.sku.version2.dto.SkuResDTO;
+
+class ProductDetailCacheTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+	private final ProductDetailCache cache = new ProductDetailCache(100, 0, objectMapper);
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private ProductDetailDTO load(Integer productId) {
+		loads.incrementAndGet();
+		ProductResDTO product = new ProductResDTO();
+		product.setProductId(productId);
+		product.setProductName("商品" + productId);
+		Map<String, String> specPairs = new HashMap<>();
+		specPairs.put("顏色", "紅色");
+		List<SkuResDTO> skus = new ArrayList<>();
+		skus.add(new SkuResDTO(1, productId, "商品" + productId, 5, new BigDecimal("99.00"), specPairs, "紅色", false));
+		return new ProductDetailDTO(product, skus, new ArrayList<>());
+	}
+
+	@Test
+	void hitsShareOneSnapshotWithoutCopying() throws Exception {
+		CachedJson<ProductDetailDTO> first = cache.getDetail(1, this::load);
+		CachedJson<ProductDetailDTO> second = cache.getDetail(1, this::load);
+
+		assertEquals(1, loads.get());
+		assertSame(first, second);
+		assertEquals(objectMapper.writeValueAsString(load(1)), first.json());
+	}
+
+	@Test
+	void snapshotIsTakenWhenLoaded() {
+		List<ProductDetailDTO> loaded = new ArrayList<>();
+		cache.getDetail(1, id -> {
+			ProductDetailDTO dto = load(id);
+			loaded.add(dto);
+			return dto;
+		});
+		// 載入後再修改原本的 DTO 不會影響快取內容
+		loaded.get(0).getProduct().setProductName("被改掉");
+		loaded.get(0).getSkus().clear();
+
+		ProductDetailDTO cached = cache.getDetail(1, this::load).read(objectMapper);
+
+		assertEquals("商品1", cached.getProduct().getProductName());
+		assertEquals(1, cached.getSkus().size());
+		assertEquals("紅色", cached.getSkus().get(0).getSpecPairs().get("顏色"));
+		assertEquals(new BigDecimal("99.00"), cached.getSkus().get(0).getPrice());
+	}
+
+	@Test
+	void readGivesIndependentCopies() {
+		CachedJson<ProductDetailDTO> cached = cache.getDetail(1, this::load);
+		ProductDetailDTO first = cached.read(objectMapper);
+		first.getSkus().get(0).getSpecPairs().put("顏色", "藍色");
+
+		ProductDetailDTO second = cached.read(objectMapper);
+
+		assertNotSame(first, second);
+		assertEquals("紅色", second.getSkus().get(0).getSpecPairs().get("顏色"));
+	}
+
+	@Test
+	void writesTheSameJsonAsTheDto() throws Exception {
+		CachedJson<ProductDetailDTO> cached = cache.getDetail(1, this::load);
+
+		// 作為回應本體或巢狀在其他物件中，都原樣輸出
+		assertEquals(objectMapper.writeValueAsString(load(1)), objectMapper.writeValueAsString(cached));
+		assertEquals("{\"data\":" + cached.json() + "}", objectMapper.writeValueAsString(Map.of("data", cached)));
+	}
+
+	@Test
+	void completeResponsesAreCachedTheSameWay() throws Exception {
+		AtomicInteger completeLoads = new AtomicInteger();
+		ProductCompleteResponseDTO4 dto = new ProductCompleteResponseDTO4();
+		dto.setSkus(new ArrayList<>());
+		dto.setImages(new ArrayList<>());
+		dto.setTotalStock(7);
+
+		CachedJson<ProductCompleteResponseDTO4> first = cache.getComplete(2, id -> {
+			completeLoads.incrementAndGet();
+			return dto;
+		});
+		CachedJson<ProductCompleteResponseDTO4> second = cache.getComplete(2, id -> {
+			completeLoads.incrementAndGet();
+			return dto;
+		});
+
+		assertEquals(1, completeLoads.get());
+		assertSame(first, second);
+		assertEquals(7, first.read(objectMapper).getTotalStock());
+	}
+
+	@Test
+	void missingProductIsNotCached() {
+		assertNull(cache.getDetail(1, id -> {
+			loads.incrementAndGet();
+			return null;
+		}));
+		cache.getDetail(1, this::load);
+
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void invalidateReloads() {
+		cache.getDetail(1, this::load);
+		cache.invalidate(1);
+		cache.getDetail(1, this::load);
+
+		assertEquals(2, loads.get());
+	}
+}
@@ -0,0 +1,151 @@
+package ourpkg.product.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class WTinyLfuCacheTest {
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private String load(Integer key) {
+		loads.incrementAndGet();
+		return "v" + key;
+	}
+
+	@Test
+	void hitDoesNotCallLoader() {
+		WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>(10, 0, v -> 1);
+
+		assertEquals("v1", cache.get(1, this::load));
+		assertEquals("v1", cache.get(1, this::load));
+
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.hitCount());
+		assertEquals(1, cache.missCount());
+	}
+
+	@Test
+	void weightNeverExceedsMaximum() {
+		WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>(50, 0, v -> 2);
+
+		for (int i = 0; i < 500; i++) {
+			cache.get(i, this::load);
+			assertTrue(cache.weight() <= cache.maxWeight());
+		}
+		assertTrue(cache.evictionCount() > 0);
+		assertEquals(cache.weight(), cache.size() * 2L);
+	}
+
+	@Test
+	void scanDoesNotEvictFrequentlyReadEntries() {
+		WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>(100, 0, v -> 1);
+		for (int i = 0; i < 50; i++) {
+			cache.get(i, this::load);
+		}
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 50; i++) {
+				cache.get(i, this::load);
+			}
+		}
+
+		// 容量 5 倍、只讀一次的鍵（例如爬蟲）
+		for (int i = 1000; i < 1500; i++) {
+			cache.get(i, this::load);
+		}
+
+		loads.set(0);
+		for (int i = 0; i < 50; i++) {
+			cache.get(i, this::load);
+		}
+		assertEquals(0, loads.get());
+	}
+
+	@Test
+	void invalidateDuringLoadSkipsStaleValue() {
+		WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>(10, 0, v -> 1);
+
+		cache.get(1, key -> {
+			cache.invalidate(key);
+			return "stale";
+		});
+
+		assertEquals("v1", cache.get(1, this::load));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	void nullIsNotCached() {
+		WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>(10, 0, v -> 1);
+
+		assertNull(cache.get(1, key -> null));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void entryExpiresAfterWrite() throws InterruptedException {
+		WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>(10, 5, v -> 1);
+
+		cache.get(1, this::load);
+		Thread.sleep(20);
+		cache.get(1, this::load);
+
+		assertEquals(2, loads.get());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void invalidateAllClearsEntries() {
+		WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>(10, 0, v -> 1);
+		for (int i = 0; i < 5; i++) {
+			cache.get(i, this::load);
+		}
+
+		cache.invalidateAll();
+
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.weight());
+		cache.get(1, this::load);
+		assertEquals(6, loads.get());
+	}
+
+	@Test
+	void concurrentReadsKeepStructureConsistent() throws Exception {
+		WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>(64, 0, v -> 1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(executor.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < 50_000; i++) {
+						// 一半集中在少數熱門鍵
+						int key = random.nextBoolean() ? random.nextInt(16) : random.nextInt(1000);
+						assertEquals("v" + key, cache.get(key, this::load));
+						if (i % 5000 == 0) {
+							cache.invalidate(random.nextInt(1000));
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertTrue(cache.weight() <= cache.maxWeight());
+		assertEquals(cache.weight(), cache.size());
+	}
+}
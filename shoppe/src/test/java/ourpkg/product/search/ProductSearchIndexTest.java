@@ -0,0 +1,144 @@
+package ourpkg.product.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProductSearchIndexTest {
+
+	private ProductSearchIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new ProductSearchIndex();
+		index.put(ProductSearchDocument.of(1, 10, 1, 11, true, true, new double[] { 1200 }, "藍芽耳機",
+				"降噪藍芽耳機，續航 30 小時", "耳機", "黑色"));
+		index.put(ProductSearchDocument.of(2, 10, 1, 11, true, true, new double[] { 300, 450 }, "耳機收納盒",
+				"適用各種耳機", "配件", "灰色"));
+		index.put(ProductSearchDocument.of(3, 20, 2, 21, true, true, new double[] { 80 }, "USB 充電線",
+				"可搭配藍芽耳機使用", "配件", "白色"));
+		index.put(ProductSearchDocument.of(4, 20, 2, 21, false, true, new double[] { 6000 }, "藍芽喇叭",
+				"戶外防水", "喇叭", "藍色"));
+	}
+
+	private static ProductSearchQuery keyword(String keyword) {
+		ProductSearchQuery query = new ProductSearchQuery();
+		query.setKeyword(keyword);
+		return query;
+	}
+
+	@Test
+	void nameMatchRanksAboveDescriptionMatch() {
+		ProductSearchHits hits = index.search(keyword("藍芽耳機"), 0, 10, false);
+
+		assertEquals(List.of(1, 3), hits.getProductIds());
+		assertEquals(2, hits.getTotal());
+	}
+
+	@Test
+	void allQueryTermsMustMatch() {
+		assertEquals(List.of(1), index.search(keyword("耳機 降噪"), 0, 10, false).getProductIds());
+		assertEquals(0, index.search(keyword("耳機 防水"), 0, 10, false).getTotal());
+	}
+
+	@Test
+	void unknownTermGivesNoHits() {
+		assertEquals(0, index.search(keyword("咖啡"), 0, 10, false).getTotal());
+	}
+
+	@Test
+	void lastLatinWordMatchesByPrefix() {
+		assertEquals(List.of(3), index.search(keyword("us"), 0, 10, false).getProductIds());
+	}
+
+	@Test
+	void nameKeywordOnlySearchesTheName() {
+		ProductSearchQuery query = new ProductSearchQuery();
+		query.setNameKeyword("藍芽");
+
+		assertEquals(List.of(1, 4), index.search(query, 0, 10, false).getProductIds());
+	}
+
+	@Test
+	void filtersApplyInsideTheIndex() {
+		ProductSearchQuery query = keyword("耳機");
+		query.setMinPrice(new BigDecimal("400"));
+		query.setMaxPrice(new BigDecimal("500"));
+		assertEquals(List.of(2), index.search(query, 0, 10, false).getProductIds());
+
+		ProductSearchQuery byShop = keyword("藍芽");
+		byShop.setShopId(20);
+		assertEquals(List.of(4, 3), index.search(byShop, 0, 10, false).getProductIds());
+
+		byShop.setPublicOnly(true);
+		assertEquals(List.of(3), index.search(byShop, 0, 10, false).getProductIds());
+	}
+
+	@Test
+	void pagesFollowTheRanking() {
+		ProductSearchHits first = index.search(keyword("耳機"), 0, 2, false);
+		ProductSearchHits second = index.search(keyword("耳機"), 1, 2, false);
+
+		assertEquals(3, first.getTotal());
+		assertEquals(2, first.getProductIds().size());
+		assertEquals(1, second.getProductIds().size());
+		assertFalse(first.getProductIds().contains(second.getProductIds().get(0)));
+	}
+
+	@Test
+	void facetsCountMatchedProducts() {
+		ProductSearchFacetsDTO facets = index.search(keyword("耳機"), 0, 1, true).getFacets();
+
+		assertEquals(2L, facets.getShops().get(10));
+		assertEquals(1L, facets.getShops().get(20));
+		assertEquals(1L, facets.getPriceRanges().get("0-100"));
+		assertEquals(1L, facets.getPriceRanges().get("100-500"));
+		assertEquals(1L, facets.getPriceRanges().get("1000-5000"));
+	}
+
+	@Test
+	void replacedAndRemovedProductsLeaveThePostings() {
+		index.put(ProductSearchDocument.of(1, 10, 1, 11, true, true, new double[] { 1200 }, "頭戴式喇叭", "", "", ""));
+		assertEquals(List.of(2, 3), index.search(keyword("耳機"), 0, 10, false).getProductIds());
+
+		index.remove(2);
+		assertEquals(List.of(3), index.search(keyword("耳機"), 0, 10, false).getProductIds());
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	void segmentRoundTripKeepsResults(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("products.seg");
+		index.writeSegment(file, new ProductSearchIndex.SegmentInfo(123L, 456));
+
+		ProductSearchIndex loaded = new ProductSearchIndex();
+		ProductSearchIndex.SegmentInfo info = ProductSearchIndex.readSegment(file, loaded);
+
+		assertEquals(123L, info.createdAt);
+		assertEquals(456, info.maxSkuId);
+		assertEquals(index.size(), loaded.size());
+		assertEquals(index.search(keyword("藍芽耳機"), 0, 10, true).getProductIds(),
+				loaded.search(keyword("藍芽耳機"), 0, 10, true).getProductIds());
+	}
+
+	@Test
+	void corruptedSegmentIsRejected(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("products.seg");
+		index.writeSegment(file, new ProductSearchIndex.SegmentInfo(1L, 1));
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[40] ^= 0x01;
+		Files.write(file, bytes);
+
+		assertThrows(IOException.class, () -> ProductSearchIndex.readSegment(file, new ProductSearchIndex()));
+	}
+}
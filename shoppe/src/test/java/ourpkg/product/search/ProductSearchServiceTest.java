@@ -0,0 +1,130 @@
+package ourpkg.product.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 搜尋索引與資料庫同步：重啟時補上 SKU 異動、輪詢補上其他節點的異動（H2，MSSQLServer 相容模式）
+ */
+class ProductSearchServiceTest {
+
+	@TempDir
+	Path indexDir;
+
+	private DriverManagerDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void setUp() {
+		dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:search-" + UUID.randomUUID() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE [Category1] (id INT PRIMARY KEY, name NVARCHAR(50))");
+		jdbcTemplate.execute("CREATE TABLE [Category2] (id INT PRIMARY KEY, name NVARCHAR(50))");
+		jdbcTemplate.execute("CREATE TABLE [Product] (product_id INT PRIMARY KEY, shop_id INT, c1_id INT, c2_id INT, "
+				+ "product_name NVARCHAR(255), description NVARCHAR(MAX), active BIT, review_status BIT, "
+				+ "is_deleted BIT, updated_at DATETIME2)");
+		jdbcTemplate.execute("CREATE TABLE [SKU] (sku_id INT PRIMARY KEY, product_id INT, price DECIMAL(10,2), "
+				+ "spec_pairs NVARCHAR(255), is_deleted BIT, updated_at DATETIME2)");
+		jdbcTemplate.update("INSERT INTO [Category1] VALUES (1, '3C')");
+		jdbcTemplate.update("INSERT INTO [Category2] VALUES (11, '耳機')");
+		// 舊資料沒有 updated_at
+		jdbcTemplate.update("INSERT INTO [Product] VALUES (1, 10, 1, 11, '藍芽耳機', '降噪', 1, 1, 0, NULL)");
+		jdbcTemplate.update("INSERT INTO [Product] VALUES (2, 10, 1, 11, '耳機收納盒', NULL, 1, 1, 0, NULL)");
+		jdbcTemplate.update("INSERT INTO [SKU] VALUES (1, 1, 1200, '{\"顏色\":\"黑色\"}', 0, NULL)");
+		jdbcTemplate.update("INSERT INTO [SKU] VALUES (2, 2, 300, NULL, 0, NULL)");
+	}
+
+	private ProductSearchService newNode() {
+		ProductSearchService service = new ProductSearchService();
+		ReflectionTestUtils.setField(service, "jdbcTemplate", new NamedParameterJdbcTemplate(dataSource));
+		ReflectionTestUtils.setField(service, "indexDir", indexDir.toString());
+		ReflectionTestUtils.setField(service, "batchSize", 500);
+		return service;
+	}
+
+	private static ProductSearchQuery keyword(String keyword) {
+		ProductSearchQuery query = new ProductSearchQuery();
+		query.setKeyword(keyword);
+		return query;
+	}
+
+	private static ProductSearchQuery priceBetween(int min, int max) {
+		ProductSearchQuery query = new ProductSearchQuery();
+		query.setMinPrice(BigDecimal.valueOf(min));
+		query.setMaxPrice(BigDecimal.valueOf(max));
+		return query;
+	}
+
+	private static List<Integer> ids(ProductSearchService service, ProductSearchQuery query) {
+		return service.search(query, 0, 10, false).getProductIds();
+	}
+
+	private void touchSku(int skuId, int price) {
+		jdbcTemplate.update("UPDATE [SKU] SET price = ?, updated_at = ? WHERE sku_id = ?", price,
+				new Timestamp(System.currentTimeMillis()), skuId);
+	}
+
+	@Test
+	void restartCatchesUpSkuPriceChangesMadeAfterTheSegment() {
+		newNode().rebuild();
+		// 停機期間只改了 SKU 價格，商品本身沒有異動
+		touchSku(1, 99);
+
+		ProductSearchService restarted = newNode();
+		assertTrue((Boolean) ReflectionTestUtils.invokeMethod(restarted, "loadLatestSegment"));
+
+		assertEquals(List.of(1), ids(restarted, priceBetween(50, 150)));
+		assertEquals(List.of(), ids(restarted, priceBetween(1000, 2000)));
+	}
+
+	@Test
+	void pollingPicksUpChangesMadeOnAnotherNode() {
+		ProductSearchService node = newNode();
+		node.rebuild();
+
+		// 另一個節點改了商品名稱與 SKU 價格，這個節點沒有收到事件
+		jdbcTemplate.update("UPDATE [Product] SET product_name = '無線喇叭', updated_at = ? WHERE product_id = 2",
+				new Timestamp(System.currentTimeMillis()));
+		touchSku(1, 99);
+		node.pollChanges();
+		node.applyPendingChanges();
+
+		assertEquals(List.of(2), ids(node, keyword("喇叭")));
+		assertEquals(List.of(1), ids(node, priceBetween(50, 150)));
+	}
+
+	@Test
+	void pollingRemovesProductsTakenDownOnAnotherNode() {
+		ProductSearchService node = newNode();
+		node.rebuild();
+		ProductSearchQuery publicQuery = keyword("耳機");
+		publicQuery.setPublicOnly(true);
+		assertEquals(2, node.search(publicQuery, 0, 10, false).getTotal());
+
+		jdbcTemplate.update("UPDATE [Product] SET review_status = 0, active = 0, updated_at = ? WHERE product_id = 1",
+				new Timestamp(System.currentTimeMillis()));
+		jdbcTemplate.update("UPDATE [Product] SET is_deleted = 1, updated_at = ? WHERE product_id = 2",
+				new Timestamp(System.currentTimeMillis()));
+		node.pollChanges();
+		node.applyPendingChanges();
+
+		assertEquals(0, node.search(publicQuery, 0, 10, false).getTotal());
+		// 下架的商品仍在索引中供賣家後台搜尋，刪除的則移除
+		assertEquals(List.of(1), ids(node, keyword("耳機")));
+	}
+}
@@ -0,0 +1,45 @@
+package ourpkg.product.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SearchTokenizerTest {
+
+	@Test
+	void indexTokensIncludeUnigramsAndBigrams() {
+		assertEquals(List.of("藍", "芽", "耳", "機", "藍芽", "芽耳", "耳機"), SearchTokenizer.tokenizeForIndex("藍芽耳機"));
+	}
+
+	@Test
+	void queryTokensUseOnlyBigramsForLongerRuns() {
+		assertEquals(List.of("藍芽", "芽耳", "耳機"), SearchTokenizer.tokenizeForQuery("藍芽耳機"));
+		assertEquals(List.of("機"), SearchTokenizer.tokenizeForQuery("機"));
+	}
+
+	@Test
+	void latinWordsAreLowercasedAndFullWidthIsNormalized() {
+		assertEquals(List.of("iphone", "15", "pro"), SearchTokenizer.tokenizeForQuery("ＩＰｈｏｎｅ 15-Pro"));
+	}
+
+	@Test
+	void mixedTextSplitsAtScriptBoundaries() {
+		assertEquals(List.of("usb", "充電", "電線"), SearchTokenizer.tokenizeForQuery("USB充電線"));
+	}
+
+	@Test
+	void blankInputGivesNoTokens() {
+		assertTrue(SearchTokenizer.tokenizeForQuery(null).isEmpty());
+		assertTrue(SearchTokenizer.tokenizeForQuery(" ,. ").isEmpty());
+	}
+
+	@Test
+	void onlyLatinTokensAreWords() {
+		assertTrue(SearchTokenizer.isWord("usb"));
+		assertFalse(SearchTokenizer.isWord("耳機"));
+	}
+}
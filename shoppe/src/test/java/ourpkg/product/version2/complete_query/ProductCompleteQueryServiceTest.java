@@ -0,0 +1,140 @@
+package ourpkg.product.version2.complete_query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ourpkg.order.OrderItemRepository;
+import ourpkg.product.ProductImageRepository;
+import ourpkg.product.ProductRepository;
+import ourpkg.product.cache.ProductDetailCache;
+import ourpkg.sku.SkuRepository;
+
+class ProductCompleteQueryServiceTest {
+
+	private ProductRepository productRepo;
+	private ProductImageRepository productImageRepo;
+	private SkuRepository skuRepo;
+	private OrderItemRepository orderItemRepo;
+	private ProductCompleteQueryService service;
+
+	@BeforeEach
+	void setUp() {
+		productRepo = mock(ProductRepository.class);
+		productImageRepo = mock(ProductImageRepository.class);
+		skuRepo = mock(SkuRepository.class);
+		orderItemRepo = mock(OrderItemRepository.class);
+		service = new ProductCompleteQueryService(productRepo, productImageRepo, skuRepo, orderItemRepo,
+				mock(ProductDetailCache.class));
+
+		// 商品 2 不存在；商品 3 沒有店鋪
+		when(productRepo.findCompleteInfoRows(any())).thenReturn(List.of(
+				info(1, "耳機", 10, "音響館"),
+				info(3, "喇叭", null, null)));
+		when(productImageRepo.findImageRowsByProductIds(any())).thenReturn(List.of(
+				new Object[] { 1, 100, "/uploads/1a.jpg", false, 1 },
+				new Object[] { 1, 101, "/uploads/1b.jpg", true, 2 },
+				new Object[] { 3, 300, "/uploads/3a.jpg", false, 1 }));
+		when(skuRepo.findSkuRowsByProductIds(any())).thenReturn(List.of(
+				new Object[] { 1, 11, new BigDecimal("990"), 5, "{\"顏色\":\"黑\"}" },
+				new Object[] { 1, 12, new BigDecimal("1290"), 2, "{\"顏色\":\"白\"}" },
+				new Object[] { 3, 31, new BigDecimal("500"), 7, "{壞掉的 JSON" }));
+	}
+
+	/**
+	 * 與 findCompleteInfoRows 相同的欄位順序
+	 */
+	private static Object[] info(int productId, String name, Integer shopId, String shopName) {
+		return new Object[] { productId, name, "描述", true, new Date(), new Date(), 1, "3C", 2, "音響", shopId, shopName,
+				"店鋪描述", shopId != null ? true : null };
+	}
+
+	@Test
+	void assemblesEveryProductWithAFixedNumberOfQueries() {
+		List<ProductCompleteResponseDTO4> result = service.loadComplete(List.of(3, 2, 1, 3), false);
+
+		verify(productRepo, times(1)).findCompleteInfoRows(any());
+		verify(productImageRepo, times(1)).findImageRowsByProductIds(any());
+		verify(skuRepo, times(1)).findSkuRowsByProductIds(any());
+		verifyNoInteractions(orderItemRepo);
+
+		// 依傳入順序，略過不存在與重複的ID
+		assertEquals(List.of(3, 1), result.stream().map(r -> r.getBasicInfo().getProductId()).toList());
+
+		ProductCompleteResponseDTO4 headphones = result.get(1);
+		assertEquals("音響館", headphones.getShop().getShopName());
+		assertEquals(2, headphones.getImages().size());
+		assertEquals(101, headphones.getPrimaryImage().getImageId());
+		assertEquals(new BigDecimal("990"), headphones.getBasicInfo().getPriceRange().getMinPrice());
+		assertEquals(new BigDecimal("1290"), headphones.getBasicInfo().getPriceRange().getMaxPrice());
+		assertEquals(7, headphones.getTotalStock());
+		assertEquals("顏色", headphones.getSpecifications().get(0).getSpecName());
+		assertEquals(2, headphones.getSpecifications().get(0).getValues().size());
+		assertNull(headphones.getSalesInfo());
+
+		// 規格 JSON 有誤的 SKU 仍然列出，只是沒有規格
+		ProductCompleteResponseDTO4 speaker = result.get(0);
+		assertNull(speaker.getShop());
+		assertNull(speaker.getPrimaryImage());
+		assertEquals(Map.of(), speaker.getSkus().get(0).getSpecPairs());
+		assertTrue(speaker.getSpecifications().isEmpty());
+	}
+
+	@Test
+	void salesInfoAddsTwoQueriesForTheWholeBatch() {
+		when(orderItemRepo.sumSalesBySkuForProducts(any())).thenReturn(List.of(
+				new Object[] { 1, 11, 4L, new BigDecimal("3960") },
+				new Object[] { 1, 99, 1L, new BigDecimal("800") })); // 已刪除的SKU
+		List<Object[]> daily = new ArrayList<>();
+		daily.add(new Object[] { 1, "2024-06-01", 3 });
+		daily.add(new Object[] { 1, "2024-06-02", 2 });
+		when(orderItemRepo.getDailySalesCountLast30DaysForProducts(any())).thenReturn(daily);
+
+		List<ProductCompleteResponseDTO4> result = service.loadComplete(List.of(1, 3), true);
+
+		verify(orderItemRepo, times(1)).sumSalesBySkuForProducts(any());
+		verify(orderItemRepo, times(1)).getDailySalesCountLast30DaysForProducts(any());
+
+		SalesInfoDTO4 headphones = result.get(0).getSalesInfo();
+		assertEquals(5, headphones.getTotalSoldCount());
+		assertEquals(new BigDecimal("4760"), headphones.getTotalSalesAmount());
+		assertEquals(List.of(4, 0), headphones.getSkuSalesDetails().stream().map(SkuSalesDTO4::getSoldCount).toList());
+		assertEquals(Map.of("2024-06-01", 3, "2024-06-02", 2), headphones.getDailySalesLast30Days());
+
+		SalesInfoDTO4 speaker = result.get(1).getSalesInfo();
+		assertEquals(0, speaker.getTotalSoldCount());
+		assertTrue(speaker.getDailySalesLast30Days().isEmpty());
+	}
+
+	@Test
+	void batchesLargerThanTheLimitAreRejected() {
+		List<Integer> ids = IntStream.rangeClosed(1, ProductCompleteQueryService.MAX_BATCH_SIZE + 1).boxed().toList();
+
+		assertThrows(IllegalArgumentException.class, () -> service.loadComplete(ids, false));
+		verifyNoInteractions(productRepo);
+	}
+
+	@Test
+	void missingSingleProductIsAnError() {
+		when(productRepo.findCompleteInfoRows(any())).thenReturn(List.of());
+
+		assertThrows(IllegalArgumentException.class, () -> service.loadComplete(2, true));
+	}
+}
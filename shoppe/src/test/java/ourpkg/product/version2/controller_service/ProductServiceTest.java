@@ -0,0 +1,76 @@
+package ourpkg.product.version2.controller_service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+
+import ourpkg.product.Product;
+import ourpkg.product.ProductRepository;
+import ourpkg.product.search.ProductSearchHits;
+import ourpkg.product.search.ProductSearchService;
+import ourpkg.product.version2.dto.ProductPublicDTO;
+
+class ProductServiceTest {
+
+	private ProductService service;
+	private ProductRepository repo;
+	private ProductSearchService productSearchService;
+
+	@BeforeEach
+	void setUp() {
+		repo = mock(ProductRepository.class);
+		productSearchService = mock(ProductSearchService.class);
+		service = new ProductService(repo, null, null, null, null, null, null, null, null, null, productSearchService,
+				null, null);
+		when(productSearchService.isReady()).thenReturn(true);
+	}
+
+	private static Product product(int id, boolean active, boolean reviewed, boolean deleted) {
+		Product product = new Product();
+		product.setProductId(id);
+		product.setProductName("商品" + id);
+		product.setActive(active);
+		product.setReviewStatus(reviewed);
+		product.setIsDeleted(deleted);
+		return product;
+	}
+
+	@Test
+	void publicSearchSkipsProductsTakenDownSinceTheIndexWasUpdated() {
+		// 索引還認為四個商品都可公開，資料庫中 2 已下架、3 審核不通過、4 已刪除
+		List<Integer> hits = List.of(4, 3, 2, 1, 5);
+		when(productSearchService.search(any(), eq(0), eq(10), eq(false)))
+				.thenReturn(new ProductSearchHits(hits, hits.size(), null));
+		when(repo.findAllById(hits)).thenReturn(List.of(product(1, true, true, false), product(2, false, true, false),
+				product(3, true, false, false), product(4, true, true, true), product(5, true, true, false)));
+
+		Page<ProductPublicDTO> page = service.findPublicProducts(null, null, null, "耳機", 0, 10);
+
+		assertEquals(List.of(1, 5),
+				page.getContent().stream().map(ProductPublicDTO::getProductId).collect(Collectors.toList()));
+	}
+
+	@Test
+	void publicSearchKeepsTheIndexOrder() {
+		List<Integer> hits = List.of(3, 1, 2);
+		when(productSearchService.search(any(), anyInt(), anyInt(), eq(false)))
+				.thenReturn(new ProductSearchHits(hits, hits.size(), null));
+		when(repo.findAllById(hits)).thenReturn(
+				List.of(product(1, true, true, false), product(2, true, true, false), product(3, true, true, false)));
+
+		Page<ProductPublicDTO> page = service.findPublicProducts(null, null, null, "耳機", 0, 10);
+
+		assertEquals(List.of(3, 1, 2),
+				page.getContent().stream().map(ProductPublicDTO::getProductId).collect(Collectors.toList()));
+	}
+}
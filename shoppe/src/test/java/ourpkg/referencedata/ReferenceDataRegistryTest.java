@@ -0,0 +1,186 @@
+package ourpkg.referencedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ourpkg.address.AddressTypeRepository;
+import ourpkg.order.OrderStatusCorrespond;
+import ourpkg.order.OrderStatusCorrespondRepository;
+import ourpkg.payment.PaymentMethodRepository;
+import ourpkg.payment.PaymentStatusRepository;
+import ourpkg.shipment.ShipmentMethod;
+import ourpkg.shipment.ShipmentMethodRepository;
+import ourpkg.shipment.ShipmentStatusRepository;
+
+class ReferenceDataRegistryTest {
+
+	private ReferenceDataRegistry registry;
+	private OrderStatusCorrespondRepository orderStatusRepository;
+	private ShipmentMethodRepository shipmentMethodRepository;
+
+	// 模擬資料庫中的資料列（不區分交易，回滾時由測試移除）
+	private final List<OrderStatusCorrespond> orderStatuses = new ArrayList<>();
+	private final List<ShipmentMethod> shipmentMethods = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		registry = new ReferenceDataRegistry();
+		orderStatusRepository = mock(OrderStatusCorrespondRepository.class);
+		shipmentMethodRepository = mock(ShipmentMethodRepository.class);
+		PaymentMethodRepository paymentMethodRepository = mock(PaymentMethodRepository.class);
+		PaymentStatusRepository paymentStatusRepository = mock(PaymentStatusRepository.class);
+		ShipmentStatusRepository shipmentStatusRepository = mock(ShipmentStatusRepository.class);
+		AddressTypeRepository addressTypeRepository = mock(AddressTypeRepository.class);
+
+		orderStatuses.add(orderStatus(1, "待付款"));
+		when(orderStatusRepository.findAll()).thenAnswer(invocation -> new ArrayList<>(orderStatuses));
+		when(orderStatusRepository.existsById(anyInt())).thenAnswer(invocation -> orderStatuses.stream()
+				.anyMatch(status -> status.getId().equals(invocation.getArgument(0))));
+		when(orderStatusRepository.findByName(anyString())).thenAnswer(invocation -> orderStatuses.stream()
+				.filter(status -> status.getName().equals(invocation.getArgument(0))).findFirst());
+		when(orderStatusRepository.save(any())).thenAnswer(invocation -> {
+			OrderStatusCorrespond status = invocation.getArgument(0);
+			status.setId(orderStatuses.size() + 1);
+			orderStatuses.add(status);
+			return status;
+		});
+		when(shipmentMethodRepository.findAll()).thenAnswer(invocation -> new ArrayList<>(shipmentMethods));
+		when(shipmentMethodRepository.findByName(anyString())).thenReturn(Optional.empty());
+		when(shipmentMethodRepository.save(any())).thenAnswer(invocation -> {
+			ShipmentMethod method = invocation.getArgument(0);
+			method.setId(shipmentMethods.size() + 1);
+			shipmentMethods.add(method);
+			return method;
+		});
+
+		ReflectionTestUtils.setField(registry, "orderStatusRepository", orderStatusRepository);
+		ReflectionTestUtils.setField(registry, "paymentMethodRepository", paymentMethodRepository);
+		ReflectionTestUtils.setField(registry, "paymentStatusRepository", paymentStatusRepository);
+		ReflectionTestUtils.setField(registry, "shipmentMethodRepository", shipmentMethodRepository);
+		ReflectionTestUtils.setField(registry, "shipmentStatusRepository", shipmentStatusRepository);
+		ReflectionTestUtils.setField(registry, "addressTypeRepository", addressTypeRepository);
+		registry.reload();
+	}
+
+	@AfterEach
+	void clearSynchronization() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	private static OrderStatusCorrespond orderStatus(int id, String name) {
+		OrderStatusCorrespond status = new OrderStatusCorrespond();
+		status.setId(id);
+		status.setName(name);
+		return status;
+	}
+
+	private Object snapshot() {
+		return ReflectionTestUtils.getField(registry, "snapshot");
+	}
+
+	private static List<TransactionSynchronization> endTransaction() {
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		TransactionSynchronizationManager.clearSynchronization();
+		return synchronizations;
+	}
+
+	@Test
+	void createdOutsideATransactionIsCachedImmediately() {
+		OrderStatusCorrespond created = registry.orderStatusOrCreate("已退款");
+		clearInvocations(orderStatusRepository);
+
+		assertEquals(2, created.getId());
+		assertEquals(2, registry.findOrderStatus("已退款").get().getId());
+		verify(orderStatusRepository, never()).findByName(anyString());
+	}
+
+	@Test
+	void createdInsideATransactionIsPublishedOnlyAfterCommit() {
+		Object before = snapshot();
+		TransactionSynchronizationManager.initSynchronization();
+
+		OrderStatusCorrespond created = registry.orderStatusOrCreate("已退款");
+
+		// 交易內可以使用新的狀態，共用的快照還沒換
+		assertEquals(2, created.getId());
+		assertEquals("已退款", created.getName());
+		assertSame(before, snapshot());
+
+		endTransaction().forEach(TransactionSynchronization::afterCommit);
+		clearInvocations(orderStatusRepository);
+
+		assertNotSame(before, snapshot());
+		assertEquals(2, registry.findOrderStatus("已退款").get().getId());
+		verify(orderStatusRepository, never()).findByName(anyString());
+	}
+
+	@Test
+	void rolledBackCreationNeverReachesTheSnapshot() {
+		Object before = snapshot();
+		TransactionSynchronizationManager.initSynchronization();
+		OrderStatusCorrespond created = registry.orderStatusOrCreate("已退款");
+
+		orderStatuses.removeIf(status -> status.getId().equals(created.getId()));
+		endTransaction().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+		assertSame(before, snapshot());
+		assertFalse(registry.findOrderStatus(created.getId()).isPresent());
+		assertFalse(registry.findOrderStatus("已退款").isPresent());
+	}
+
+	@Test
+	void lookupInsideATransactionDoesNotPublishUncommittedRows() {
+		Object before = snapshot();
+		TransactionSynchronizationManager.initSynchronization();
+		// 同一個交易先前以其他方式新增、尚未提交
+		orderStatuses.add(orderStatus(2, "已退款"));
+
+		assertTrue(registry.findOrderStatus("已退款").isPresent());
+		assertSame(before, snapshot());
+
+		orderStatuses.removeIf(status -> status.getId() == 2);
+		endTransaction().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+		assertFalse(registry.findOrderStatus("已退款").isPresent());
+	}
+
+	@Test
+	void shipmentMethodCreatedInATransactionIsReloadedAfterCommit() {
+		Object before = snapshot();
+		TransactionSynchronizationManager.initSynchronization();
+
+		ShipmentMethod created = registry.shipmentMethodOrCreate("宅配");
+
+		assertEquals(1, created.getId());
+		assertSame(before, snapshot());
+
+		endTransaction().forEach(TransactionSynchronization::afterCommit);
+		clearInvocations(shipmentMethodRepository);
+
+		assertEquals(1, registry.findShipmentMethod("宅配").get().getId());
+		verify(shipmentMethodRepository, never()).findByName(anyString());
+	}
+}
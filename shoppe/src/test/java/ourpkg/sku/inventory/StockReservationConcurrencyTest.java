@@ -0,0 +1,127 @@
+package ourpkg.sku.inventory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 多執行緒同時下單，對真的資料庫（H2 的 MSSQLServer 相容模式）跑條件式扣庫存，確認不會超賣
+ */
+class StockReservationConcurrencyTest {
+
+	private static final int THREADS = 32;
+
+	private StockReservationService service;
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate transactionTemplate;
+	private ExecutorService executor;
+
+	@BeforeEach
+	void setUp() {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:stock-" + UUID.randomUUID() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=30000");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE [SKU] ([sku_id] INT PRIMARY KEY, [stock] INT NOT NULL, "
+				+ "[is_deleted] BIT NOT NULL DEFAULT 0)");
+		transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+		service = new StockReservationService();
+		ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+		// 關掉售完提示，每一筆都要打到資料庫
+		ReflectionTestUtils.setField(service, "soldOutHintMillis", 0L);
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private void stock(int skuId, int stock) {
+		jdbcTemplate.update("INSERT INTO [SKU] ([sku_id], [stock]) VALUES (?, ?)", skuId, stock);
+	}
+
+	private int stockOf(int skuId) {
+		return jdbcTemplate.queryForObject("SELECT [stock] FROM [SKU] WHERE [sku_id] = ?", Integer.class, skuId);
+	}
+
+	/**
+	 * 所有執行緒就緒後一起開始下單，每筆訂單各自一個交易
+	 *
+	 * @return 成功的訂單數
+	 */
+	private int placeConcurrently(int orders, Map<Integer, Integer> quantities) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicInteger accepted = new AtomicInteger();
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < orders; i++) {
+			futures.add(executor.submit(() -> {
+				start.await();
+				try {
+					transactionTemplate.executeWithoutResult(status -> service.reserve(quantities));
+					accepted.incrementAndGet();
+				} catch (RuntimeException e) {
+					// 庫存不足
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+		return accepted.get();
+	}
+
+	@Test
+	void hotSkuNeverOversells() throws Exception {
+		stock(1, 500);
+
+		int accepted = placeConcurrently(2_000, Map.of(1, 1));
+
+		assertEquals(500, accepted);
+		assertEquals(0, stockOf(1));
+	}
+
+	@Test
+	void multiSkuOrdersRollBackTogether() throws Exception {
+		stock(1, 100);
+		stock(2, 150);
+
+		// 第二個 SKU 先賣完，失敗的訂單不能吃掉第一個 SKU 的庫存
+		int accepted = placeConcurrently(400, Map.of(1, 1, 2, 2));
+
+		assertEquals(75, accepted);
+		assertEquals(25, stockOf(1));
+		assertEquals(0, stockOf(2));
+	}
+
+	@Test
+	void releasedStockCanBeReservedAgain() throws Exception {
+		stock(1, 10);
+		assertEquals(10, placeConcurrently(50, Map.of(1, 1)));
+
+		jdbcTemplate.update("UPDATE [SKU] SET [stock] = [stock] + 4 WHERE [sku_id] = 1");
+
+		assertEquals(4, placeConcurrently(50, Map.of(1, 1)));
+		assertEquals(0, stockOf(1));
+	}
+}
@@ -0,0 +1,182 @@
+package ourpkg.sku.inventory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ourpkg.sku.SkuRepository;
+
+class StockReservationServiceTest {
+
+	private StockReservationService service;
+	private JdbcTemplate jdbcTemplate;
+	private SkuRepository skuRepository;
+
+	// 每次批次扣庫存送出的 (SKU ID, 數量)
+	private final List<int[]> decremented = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		service = new StockReservationService();
+		jdbcTemplate = mock(JdbcTemplate.class);
+		skuRepository = mock(SkuRepository.class);
+		ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(service, "skuRepository", skuRepository);
+		ReflectionTestUtils.setField(service, "soldOutHintMillis", 60_000L);
+	}
+
+	/**
+	 * 模擬資料庫的條件式扣庫存：數量不超過 stock 才更新
+	 */
+	private void stockIs(Map<Integer, Integer> stock) {
+		when(jdbcTemplate.batchUpdate(anyString(), any(BatchPreparedStatementSetter.class))).thenAnswer(invocation -> {
+			BatchPreparedStatementSetter setter = invocation.getArgument(1);
+			int[] counts = new int[setter.getBatchSize()];
+			for (int i = 0; i < counts.length; i++) {
+				int[] row = bind(setter, i);
+				decremented.add(new int[] { row[1], row[0] });
+				counts[i] = stock.getOrDefault(row[1], 0) >= row[0] ? 1 : 0;
+			}
+			return counts;
+		});
+	}
+
+	/**
+	 * 取出第 i 筆綁定的參數 1..3
+	 */
+	private static int[] bind(BatchPreparedStatementSetter setter, int i) throws SQLException {
+		int[] values = new int[3];
+		PreparedStatement ps = mock(PreparedStatement.class);
+		doAnswer(invocation -> {
+			values[(int) invocation.getArgument(0) - 1] = invocation.getArgument(1);
+			return null;
+		}).when(ps).setInt(any(Integer.class), any(Integer.class));
+		setter.setValues(ps, i);
+		return values;
+	}
+
+	@Test
+	void decrementsAreBatchedInSkuOrder() {
+		stockIs(Map.of(1, 10, 2, 10, 3, 10));
+		Map<Integer, Integer> quantities = new LinkedHashMap<>();
+		quantities.put(3, 1);
+		quantities.put(1, 2);
+		quantities.put(2, 3);
+
+		service.reserve(quantities);
+
+		verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+		assertEquals(List.of(1, 2, 3), decremented.stream().map(row -> row[0]).toList());
+		assertEquals(List.of(2, 3, 1), decremented.stream().map(row -> row[1]).toList());
+	}
+
+	@Test
+	void shortageFailsAndSetsTheSoldOutHint() {
+		stockIs(Map.of(1, 10, 2, 0));
+
+		RuntimeException e = assertThrows(RuntimeException.class, () -> service.reserve(Map.of(1, 1, 2, 1)));
+		assertEquals("庫存不足，無法結帳 (SKU: 2)", e.getMessage());
+
+		// 售完提示期間不再打資料庫
+		assertThrows(RuntimeException.class, () -> service.reserve(Map.of(2, 1)));
+		verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+	}
+
+	@Test
+	void nonPositiveQuantityIsRejectedBeforeTheDatabase() {
+		assertThrows(RuntimeException.class, () -> service.reserve(Map.of(1, 0)));
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+	}
+
+	@Test
+	void releaseRestoresMergedQuantitiesAndClearsTheHint() throws SQLException {
+		stockIs(Map.of());
+		assertThrows(RuntimeException.class, () -> service.reserve(Map.of(5, 1)));
+
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.getInt(1)).thenReturn(7, 5, 7);
+		when(rs.getInt(2)).thenReturn(1, 2, 3);
+		doAnswer(invocation -> {
+			RowCallbackHandler handler = invocation.getArgument(1);
+			for (int row = 0; row < 3; row++) {
+				handler.processRow(rs);
+			}
+			return null;
+		}).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(42));
+
+		service.release(42);
+
+		InOrder order = inOrder(skuRepository);
+		order.verify(skuRepository).increaseStock(5, 2);
+		order.verify(skuRepository).increaseStock(7, 4);
+
+		stockIs(Map.of(5, 2));
+		service.reserve(Map.of(5, 1));
+	}
+
+	@Test
+	void releasingAnAlreadyReleasedOrderRestoresNothing() {
+		service.release(42);
+
+		verify(skuRepository, never()).increaseStock(any(), any());
+	}
+
+	@Test
+	void reinstateTakesBackWhatCancellationReleased() throws SQLException {
+		stockIs(Map.of(5, 10, 7, 10));
+		StockReservationRepository reservationRepository = mock(StockReservationRepository.class);
+		ReflectionTestUtils.setField(service, "reservationRepository", reservationRepository);
+
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.getInt(1)).thenReturn(7, 5);
+		when(rs.getInt(2)).thenReturn(1, 2);
+		doAnswer(invocation -> {
+			RowCallbackHandler handler = invocation.getArgument(1);
+			handler.processRow(rs);
+			handler.processRow(rs);
+			return null;
+		}).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(42));
+
+		service.reinstate(42, true);
+
+		assertEquals(List.of(5, 7), decremented.stream().map(row -> row[0]).toList());
+		assertEquals(List.of(2, 1), decremented.stream().map(row -> row[1]).toList());
+		verify(reservationRepository).confirm(42);
+	}
+
+	@Test
+	void reinstateWithNothingReleasedTouchesNoStock() {
+		StockReservationRepository reservationRepository = mock(StockReservationRepository.class);
+		ReflectionTestUtils.setField(service, "reservationRepository", reservationRepository);
+
+		service.reinstate(42, true);
+
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+		verify(reservationRepository, never()).confirm(any());
+	}
+}
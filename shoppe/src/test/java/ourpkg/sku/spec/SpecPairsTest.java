@@ -0,0 +1,113 @@
+package ourpkg.sku.spec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ourpkg.sku.Sku;
+
+class SpecPairsTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final String[] WORDS = { "顏色", "尺寸", "紅色", "藍色", "M", "XL", "容量", "128GB", "😀", "a\"b", "\\", "" };
+
+	@Test
+	void parseMatchesJacksonOnRandomMaps() throws Exception {
+		Random random = new Random(42);
+		for (int round = 0; round < 500; round++) {
+			Map<String, String> expected = new LinkedHashMap<>();
+			int size = random.nextInt(5);
+			for (int i = 0; i < size; i++) {
+				expected.put(word(random) + random.nextInt(3), word(random));
+			}
+			String json = MAPPER.writeValueAsString(expected);
+
+			SpecPairs specs = SpecPairs.parse(json);
+
+			assertEquals(expected, specs.asMap());
+			assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(specs.asMap().keySet()));
+			assertEquals(MAPPER.readValue(json, new TypeReference<Map<String, String>>() {
+			}), SpecPairs.of(expected).asMap());
+			assertEquals(SpecPairs.of(expected), specs);
+			assertEquals(specs.hashCode(), SpecPairs.of(expected).hashCode());
+			assertEquals(String.join("/", expected.values()), specs.describe());
+		}
+	}
+
+	@Test
+	void duplicateNameKeepsLastValueAndNullRemoves() {
+		SpecPairs specs = SpecPairs.parse("{\"顏色\":\"紅色\",\"尺寸\":\"M\",\"顏色\":\"藍色\",\"尺寸\":null}");
+
+		assertEquals(1, specs.size());
+		assertEquals("藍色", specs.get("顏色"));
+		assertNull(specs.get("尺寸"));
+	}
+
+	@Test
+	void emptyInputsReturnEmpty() {
+		assertSame(SpecPairs.EMPTY, SpecPairs.parse(null));
+		assertSame(SpecPairs.EMPTY, SpecPairs.parse(""));
+		assertSame(SpecPairs.EMPTY, SpecPairs.parse("{}"));
+		assertSame(SpecPairs.EMPTY, SpecPairs.of(Map.of()));
+	}
+
+	@Test
+	void invalidJsonIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> SpecPairs.parse("[1,2]"));
+		assertThrows(IllegalArgumentException.class, () -> SpecPairs.parse("{\"顏色\":{\"a\":1}}"));
+		assertThrows(IllegalArgumentException.class, () -> SpecPairs.parse("{\"顏色\":"));
+	}
+
+	@Test
+	void mapViewIsReadOnly() {
+		Map<String, String> view = SpecPairs.parse("{\"顏色\":\"紅色\"}").asMap();
+
+		assertThrows(UnsupportedOperationException.class, () -> view.put("尺寸", "M"));
+	}
+
+	@Test
+	void onlyDictionaryValuesAreShared() {
+		String registered = new String("材質-棉");
+		SpecDictionary.register(registered);
+		int before = SpecDictionary.size();
+
+		SpecPairs specs = SpecPairs.parse("{\"材質\":\"材質-棉\",\"刻字\":\"自訂文字-" + System.nanoTime() + "\"}");
+
+		assertSame(registered, specs.valueAt(0));
+		assertEquals(before, SpecDictionary.size());
+	}
+
+	@Test
+	void skuReturnsMutableCopy() {
+		Sku sku = new Sku();
+		sku.setSpecPairs("{\"顏色\":\"紅色\",\"尺寸\":\"M\"}");
+
+		Map<String, String> first = sku.getSpecPairsAsMap();
+		first.put("顏色", "藍色");
+		Map<String, String> second = sku.getSpecPairsAsMap();
+
+		assertNotSame(first, second);
+		assertEquals("紅色", second.get("顏色"));
+		assertEquals(List.of("顏色", "尺寸"), new ArrayList<>(second.keySet()));
+		assertTrue(new Sku().getSpecPairsAsMap().isEmpty());
+	}
+
+	private static String word(Random random) {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+}
@@ -0,0 +1,102 @@
+package ourpkg.sku.version2.controller_service;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import ourpkg.product.Product;
+import ourpkg.product.ProductRepository;
+import ourpkg.sku.Sku;
+import ourpkg.sku.SkuRepository;
+import ourpkg.sku.version2.mapper.SkuCreateMapper;
+import ourpkg.sku.version2.mapper.SkuResMapper;
+import ourpkg.sku.version2.mapper.SkuUpdateMapper;
+
+/**
+ * 會改變價格或 SKU 是否有效的操作都要重算商品的 min_price / max_price
+ */
+class SkuServicePriceRangeTest {
+
+	private SkuRepository skuRepo;
+	private ProductRepository productRepo;
+	private SkuService service;
+
+	@BeforeEach
+	void setUp() {
+		skuRepo = mock(SkuRepository.class);
+		productRepo = mock(ProductRepository.class);
+		service = new SkuService(skuRepo, productRepo, mock(SkuCreateMapper.class), mock(SkuUpdateMapper.class),
+				mock(SkuResMapper.class), mock(ApplicationEventPublisher.class));
+		when(skuRepo.save(any(Sku.class))).thenAnswer(invocation -> invocation.getArgument(0));
+	}
+
+	private static Sku sku(int skuId, int productId) {
+		Product product = new Product();
+		product.setProductId(productId);
+		Sku sku = new Sku();
+		sku.setSkuId(skuId);
+		sku.setProduct(product);
+		sku.setIsDeleted(false);
+		sku.setPrice(new BigDecimal("100"));
+		sku.setStock(5);
+		return sku;
+	}
+
+	@Test
+	void updatePriceRefreshesTheRange() {
+		when(skuRepo.findById(1)).thenReturn(Optional.of(sku(1, 10)));
+
+		service.updatePrice(1, new BigDecimal("80"));
+
+		verify(productRepo).refreshPriceRange(10);
+	}
+
+	@Test
+	void deleteRefreshesTheRange() {
+		when(skuRepo.findById(1)).thenReturn(Optional.of(sku(1, 10)));
+
+		service.delete(1);
+
+		verify(productRepo).refreshPriceRange(10);
+	}
+
+	@Test
+	void batchDeleteRefreshesEachProductOnce() {
+		when(skuRepo.findAllById(List.of(1, 2, 3))).thenReturn(List.of(sku(1, 10), sku(2, 10), sku(3, 20)));
+
+		service.batchDelete(List.of(1, 2, 3));
+
+		verify(productRepo, times(1)).refreshPriceRange(10);
+		verify(productRepo, times(1)).refreshPriceRange(20);
+	}
+
+	@Test
+	void deleteByProductRefreshesTheRange() {
+		when(skuRepo.findByProduct_ProductIdAndIsDeletedFalse(10)).thenReturn(List.of(sku(1, 10), sku(2, 10)));
+
+		service.deleteByProductId(10);
+
+		verify(productRepo, times(1)).refreshPriceRange(10);
+	}
+
+	@Test
+	void stockChangeLeavesTheRangeAlone() {
+		when(skuRepo.findById(1)).thenReturn(Optional.of(sku(1, 10)));
+
+		service.updateStock(1, 3);
+
+		verify(productRepo, never()).refreshPriceRange(anyInt());
+	}
+}